@@ -0,0 +1,68 @@
+package com.distribuciones.omega.benchmark;
+
+import com.distribuciones.omega.utils.DBUtil;
+import org.h2.jdbcx.JdbcDataSource;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.sql.Connection;
+
+/**
+ * Base de datos embebida (H2 en modo MySQL, como en las pruebas) poblada con
+ * {@link GeneradorDatos} a la escala indicada en "filas". Se genera una vez por
+ * fork y el pool de DBUtil apunta a ella mientras dura el benchmark.
+ *
+ * La salida por consola de la aplicación se descarta para que no ensucie el
+ * informe de JMH; su costo de formateo sí se sigue midiendo. Con
+ * -Dbenchmark.consola=true se conserva.
+ */
+@State(Scope.Benchmark)
+public class BaseDatosBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int filas;
+
+    public GeneradorDatos generador;
+    public JdbcDataSource dataSource;
+
+    private PrintStream salidaOriginal;
+
+    @Setup(Level.Trial)
+    public void preparar() throws Exception {
+        if (!Boolean.getBoolean("benchmark.consola")) {
+            salidaOriginal = System.out;
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        }
+
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:benchmark_" + filas + ";MODE=MySQL;DB_CLOSE_DELAY=-1");
+        dataSource.setUser("sa");
+        DBUtil.usarDataSource(dataSource);
+
+        generador = new GeneradorDatos(filas);
+        long inicio = System.currentTimeMillis();
+        try (Connection conn = dataSource.getConnection()) {
+            generador.crearEsquema(conn);
+            generador.poblar(conn);
+        }
+        System.err.println("Base de datos de " + filas + " filas generada en " +
+                           (System.currentTimeMillis() - inicio) + " ms");
+    }
+
+    @TearDown(Level.Trial)
+    public void liberar() throws Exception {
+        DBUtil.cerrarPool();
+        try (Connection conn = dataSource.getConnection()) {
+            conn.createStatement().execute("SHUTDOWN");
+        }
+        if (salidaOriginal != null) {
+            System.setOut(salidaOriginal);
+        }
+    }
+}
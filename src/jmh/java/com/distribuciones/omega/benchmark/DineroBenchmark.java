@@ -0,0 +1,102 @@
+package com.distribuciones.omega.benchmark;
+
+import com.distribuciones.omega.utils.Dinero;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Totales de líneas de factura (bruto, descuento del 10 % e IVA del 12 %) con tres
+ * representaciones del dinero: double, BigDecimal y centavos en long. No usa la base
+ * de datos: precios con centavos y cantidades salen de la semilla del generador.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx3g"})
+public class DineroBenchmark {
+
+    private static final BigDecimal CIEN = BigDecimal.valueOf(100);
+    private static final BigDecimal DESCUENTO = BigDecimal.valueOf(10);
+    private static final BigDecimal IVA = BigDecimal.valueOf(12);
+
+    @State(Scope.Benchmark)
+    public static class Contexto {
+        @Param({"1000", "100000"})
+        public int lineas;
+
+        double[] precios;
+        BigDecimal[] preciosDecimales;
+        long[] preciosCentavos;
+        int[] cantidades;
+
+        @Setup(Level.Trial)
+        public void preparar() {
+            SplittableRandom aleatorio = new SplittableRandom(GeneradorDatos.SEMILLA);
+            precios = new double[lineas];
+            preciosDecimales = new BigDecimal[lineas];
+            preciosCentavos = new long[lineas];
+            cantidades = new int[lineas];
+            for (int i = 0; i < lineas; i++) {
+                long centavos = 100 + aleatorio.nextInt(2_500_000);
+                precios[i] = centavos / 100.0;
+                preciosDecimales[i] = BigDecimal.valueOf(centavos, 2);
+                preciosCentavos[i] = centavos;
+                cantidades[i] = 1 + aleatorio.nextInt(20);
+            }
+        }
+    }
+
+    @Benchmark
+    public double conDouble(Contexto contexto) {
+        double subtotal = 0;
+        double descuento = 0;
+        for (int i = 0; i < contexto.lineas; i++) {
+            double bruto = contexto.precios[i] * contexto.cantidades[i];
+            subtotal += bruto;
+            descuento += bruto * 0.10;
+        }
+        return subtotal - descuento + (subtotal - descuento) * 0.12;
+    }
+
+    @Benchmark
+    public BigDecimal conBigDecimal(Contexto contexto) {
+        BigDecimal subtotal = BigDecimal.ZERO;
+        BigDecimal descuento = BigDecimal.ZERO;
+        for (int i = 0; i < contexto.lineas; i++) {
+            BigDecimal bruto = contexto.preciosDecimales[i].multiply(BigDecimal.valueOf(contexto.cantidades[i]));
+            subtotal = subtotal.add(bruto);
+            descuento = descuento.add(bruto.multiply(DESCUENTO).divide(CIEN, 2, RoundingMode.HALF_UP));
+        }
+        BigDecimal base = subtotal.subtract(descuento);
+        return base.add(base.multiply(IVA).divide(CIEN, 2, RoundingMode.HALF_UP));
+    }
+
+    @Benchmark
+    public long conCentavos(Contexto contexto) {
+        long subtotal = 0;
+        long descuento = 0;
+        for (int i = 0; i < contexto.lineas; i++) {
+            long bruto = Dinero.multiplicar(contexto.preciosCentavos[i], contexto.cantidades[i]);
+            subtotal = Math.addExact(subtotal, bruto);
+            descuento = Math.addExact(descuento, Dinero.porcentaje(bruto, 1000, RoundingMode.HALF_UP));
+        }
+        long base = subtotal - descuento;
+        return base + Dinero.porcentaje(base, 1200, RoundingMode.HALF_UP);
+    }
+}
@@ -0,0 +1,67 @@
+package com.distribuciones.omega.benchmark;
+
+import com.distribuciones.omega.utils.ExportarUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exportación a Excel de un reporte de facturación. No usa la base de datos:
+ * las filas salen del generador a la misma escala.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx3g"})
+public class ExportarUtilBenchmark {
+
+    private static final String[] COLUMNAS = {
+            "Número", "Fecha", "Cliente", "Vendedor", "Subtotal", "IVA", "Total", "Forma de pago"};
+
+    @State(Scope.Benchmark)
+    public static class Contexto {
+        @Param({"1000", "100000", "1000000"})
+        public int filas;
+
+        List<Object[]> datos;
+        Map<String, String> estadisticas;
+        Path archivo;
+
+        @Setup(Level.Trial)
+        public void preparar() throws Exception {
+            datos = new GeneradorDatos(filas).filasReporte();
+            estadisticas = new LinkedHashMap<>();
+            estadisticas.put("Facturas", String.valueOf(filas));
+            archivo = Files.createTempFile("benchmark-reporte", ".xlsx");
+        }
+
+        @TearDown(Level.Trial)
+        public void liberar() throws Exception {
+            Files.deleteIfExists(archivo);
+        }
+    }
+
+    @Benchmark
+    public boolean exportarExcel(Contexto contexto) throws Exception {
+        return ExportarUtil.exportarExcel(contexto.archivo.toString(), "Reporte de facturación",
+                "Benchmark", contexto.estadisticas, COLUMNAS, contexto.datos);
+    }
+}
@@ -0,0 +1,110 @@
+package com.distribuciones.omega.benchmark;
+
+import com.distribuciones.omega.model.Cliente;
+import com.distribuciones.omega.model.Factura;
+import com.distribuciones.omega.model.ItemFactura;
+import com.distribuciones.omega.model.ProductoInventario;
+import com.distribuciones.omega.model.Usuario;
+import com.distribuciones.omega.repository.FacturaRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Guardado de facturas y consulta por rango de fechas (una semana del año generado), y
+ * reporte del año completo cargado entero frente a su primera página.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx3g"})
+public class FacturaRepositoryBenchmark {
+
+    @State(Scope.Thread)
+    public static class Contexto {
+        FacturaRepository repository;
+        SplittableRandom aleatorio;
+        GeneradorDatos generador;
+        long numero;
+
+        @Setup(Level.Trial)
+        public void preparar(BaseDatosBenchmark base) {
+            repository = new FacturaRepository();
+            aleatorio = new SplittableRandom(GeneradorDatos.SEMILLA);
+            generador = base.generador;
+        }
+    }
+
+    @Benchmark
+    public Factura guardarFactura(Contexto contexto) {
+        Cliente cliente = new Cliente();
+        cliente.setIdCliente((long) (1 + contexto.aleatorio.nextInt(contexto.generador.getClientes())));
+        cliente.setNombre("Cliente " + cliente.getIdCliente());
+        Usuario vendedor = new Usuario();
+        vendedor.setIdUsuario((long) (1 + contexto.aleatorio.nextInt(GeneradorDatos.VENDEDORES)));
+        vendedor.setNombre("Vendedor " + vendedor.getIdUsuario());
+
+        Factura factura = new Factura();
+        factura.setNumeroFactura("BENCH-" + (++contexto.numero));
+        factura.setCliente(cliente);
+        factura.setVendedor(vendedor);
+        factura.setFecha(LocalDateTime.of(2025, 1, 15, 10, 0));
+        factura.setFormaPago("EFECTIVO");
+
+        List<ItemFactura> items = new ArrayList<>();
+        double subtotal = 0;
+        for (int i = 0; i < 3; i++) {
+            int indice = contexto.aleatorio.nextInt(contexto.generador.getProductos());
+            ProductoInventario producto = new ProductoInventario(GeneradorDatos.codigoProducto(indice),
+                    "Producto " + indice, 10_000, GeneradorDatos.STOCK_INICIAL);
+            producto.setCategoria(GeneradorDatos.categoriaProducto(indice));
+            ItemFactura item = new ItemFactura();
+            item.setProducto(producto);
+            item.setCantidad(2);
+            item.setPrecioUnitario(10_000);
+            item.setSubtotal(20_000);
+            items.add(item);
+            subtotal += item.getSubtotal();
+        }
+        factura.setItems(items);
+        factura.setSubtotal(subtotal);
+        factura.setIva(subtotal * 0.19);
+        factura.setTotal(subtotal * 1.19);
+
+        return contexto.repository.save(factura);
+    }
+
+    @Benchmark
+    public List<Factura> buscarSemana(Contexto contexto) {
+        LocalDateTime inicio = GeneradorDatos.PRIMER_DIA
+                .plusDays(contexto.aleatorio.nextInt(GeneradorDatos.DIAS - 7)).atStartOfDay();
+        return contexto.repository.findByFechaBetween(inicio, inicio.plusDays(7).minusSeconds(1));
+    }
+
+    @Benchmark
+    public List<Factura> reporteAnualCompleto(Contexto contexto) {
+        LocalDateTime inicio = GeneradorDatos.PRIMER_DIA.atStartOfDay();
+        return contexto.repository.buscarFacturasPorRango(inicio, inicio.plusDays(GeneradorDatos.DIAS));
+    }
+
+    @Benchmark
+    public List<Factura> reporteAnualPrimeraPagina(Contexto contexto) {
+        LocalDateTime inicio = GeneradorDatos.PRIMER_DIA.atStartOfDay();
+        return contexto.repository.buscarPaginaPorRango(null, inicio, inicio.plusDays(GeneradorDatos.DIAS), null, 100);
+    }
+}
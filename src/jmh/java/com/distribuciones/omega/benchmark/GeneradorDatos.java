@@ -0,0 +1,355 @@
+package com.distribuciones.omega.benchmark;
+
+import com.distribuciones.omega.dao.ProductoDAO;
+import com.distribuciones.omega.repository.MovimientoContableRepository;
+import com.distribuciones.omega.repository.PagoRepository;
+import com.distribuciones.omega.repository.SecuenciaRepository;
+import com.distribuciones.omega.repository.VentasDiariasRepository;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Genera datos de prueba deterministas para los benchmarks: con la misma escala
+ * siempre produce las mismas filas, así dos corridas se pueden comparar.
+ *
+ * Para una escala de N filas crea N productos (repartidos entre las tres
+ * categorías), N facturas de 1 a 3 ítems a lo largo de un año, N/100 clientes
+ * y N/100 promociones (como mínimo 10 de cada uno).
+ */
+public final class GeneradorDatos {
+
+    public static final long SEMILLA = 20250301L;
+
+    /** Primer día con facturas; se reparten en los 365 días siguientes */
+    public static final LocalDate PRIMER_DIA = LocalDate.of(2024, 1, 1);
+    public static final int DIAS = 365;
+    public static final int VENDEDORES = 20;
+
+    /** Stock inicial, suficiente para que los benchmarks de venta no lo agoten */
+    public static final int STOCK_INICIAL = 1_000_000;
+
+    public static final String[] CATEGORIAS = {"INSUMO_OFICINA", "PRODUCTO_MOBILIARIO", "PRODUCTO_TECNOLOGICO"};
+    private static final String[] PREFIJOS = {"INS", "MOB", "TEC"};
+    private static final int LOTE = 5_000;
+
+    private final int filas;
+
+    public GeneradorDatos(int filas) {
+        this.filas = filas;
+    }
+
+    public int getProductos() {
+        return filas;
+    }
+
+    public int getFacturas() {
+        return filas;
+    }
+
+    public int getClientes() {
+        return Math.max(10, filas / 100);
+    }
+
+    public int getPromociones() {
+        return Math.max(10, filas / 100);
+    }
+
+    /**
+     * Código del producto i-ésimo (0 ≤ i < productos)
+     */
+    public static String codigoProducto(int i) {
+        return PREFIJOS[i % 3] + String.format("%07d", i);
+    }
+
+    public static String categoriaProducto(int i) {
+        return CATEGORIAS[i % 3];
+    }
+
+    /**
+     * Crea el esquema con la misma forma que las tablas de producción, incluidos
+     * sus índices (y la falta de ellos)
+     */
+    public void crearEsquema(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            st.execute("CREATE TABLE clientes (id_cliente BIGINT AUTO_INCREMENT PRIMARY KEY, nombre VARCHAR(100) NOT NULL, " +
+                    "id VARCHAR(20) NOT NULL, email VARCHAR(100), telefono VARCHAR(20), direccion VARCHAR(200), " +
+                    "activo BOOLEAN DEFAULT TRUE, mayorista BOOLEAN DEFAULT FALSE, limite_credito DOUBLE DEFAULT 0)");
+            st.execute("CREATE TABLE usuarios (id_usuario BIGINT AUTO_INCREMENT PRIMARY KEY, username VARCHAR(50), " +
+                    "password VARCHAR(100), nombre VARCHAR(100), rol VARCHAR(20), activo BOOLEAN DEFAULT TRUE)");
+            st.execute("CREATE TABLE facturas (id_factura BIGINT AUTO_INCREMENT PRIMARY KEY, numero_factura VARCHAR(50) NOT NULL, " +
+                    "cliente_id BIGINT NOT NULL, vendedor_id BIGINT NOT NULL, fecha TIMESTAMP NOT NULL, orden_id BIGINT, " +
+                    "subtotal DECIMAL(10,2) NOT NULL, descuento DECIMAL(10,2) NOT NULL DEFAULT 0, iva DECIMAL(10,2) NOT NULL, " +
+                    "total DECIMAL(10,2) NOT NULL, anulada BOOLEAN NOT NULL DEFAULT FALSE, motivo_anulacion VARCHAR(255), " +
+                    "fecha_anulacion TIMESTAMP NULL, forma_pago VARCHAR(50) NOT NULL DEFAULT 'EFECTIVO', " +
+                    "pagada BOOLEAN NOT NULL DEFAULT FALSE, fecha_pago TIMESTAMP NULL)");
+            st.execute("CREATE INDEX idx_facturas_cliente ON facturas (cliente_id)");
+            st.execute("CREATE INDEX idx_facturas_vendedor ON facturas (vendedor_id)");
+            // Como la migración 4 (índices de facturas por fecha)
+            st.execute("CREATE INDEX idx_facturas_fecha_id ON facturas (fecha, id_factura)");
+            st.execute("CREATE INDEX idx_facturas_vendedor_fecha_id ON facturas (vendedor_id, fecha, id_factura)");
+            st.execute("CREATE TABLE items_factura (id BIGINT AUTO_INCREMENT PRIMARY KEY, factura_id BIGINT NOT NULL, " +
+                    "producto_id VARCHAR(20) NOT NULL, cantidad INT NOT NULL, precio_unitario DECIMAL(10,2) NOT NULL, " +
+                    "descuento DECIMAL(10,2) DEFAULT 0, subtotal DECIMAL(10,2) NOT NULL)");
+            st.execute("CREATE INDEX idx_items_factura ON items_factura (factura_id)");
+            st.execute("CREATE INDEX idx_items_producto ON items_factura (producto_id)");
+            st.execute("CREATE TABLE detalle_factura (id_detalle BIGINT AUTO_INCREMENT PRIMARY KEY, id_factura BIGINT NOT NULL, " +
+                    "id VARCHAR(20) NOT NULL, cantidad INT NOT NULL, precio_unitario DECIMAL(10,2) NOT NULL, " +
+                    "subtotal DECIMAL(10,2) NOT NULL)");
+            st.execute("CREATE INDEX idx_detalle_factura ON detalle_factura (id_factura)");
+            st.execute("CREATE TABLE promociones (id BIGINT AUTO_INCREMENT PRIMARY KEY, descripcion VARCHAR(200) NOT NULL, " +
+                    "tipo VARCHAR(20) NOT NULL, valor DOUBLE NOT NULL, codigo_producto VARCHAR(500), " +
+                    "fecha_inicio DATE NOT NULL, fecha_fin DATE NOT NULL, activa BOOLEAN DEFAULT TRUE)");
+        }
+        // Productos y subtipos con la definición del DAO; los acumulados con la de su repositorio
+        new ProductoDAO(conn).createTableIfNotExists();
+        try (Statement st = conn.createStatement()) {
+            // Sin los productos de ejemplo que inserta el DAO en una tabla vacía
+            st.execute("DELETE FROM productos");
+        }
+        new VentasDiariasRepository().createTableIfNotExists();
+    }
+
+    /**
+     * Tablas del flujo de venta completo (cotización, orden, pago, numeración y
+     * contabilidad), usadas por el simulador de cajas. Las de cotizaciones y
+     * órdenes van a mano porque sus repositorios no traen una definición portable.
+     */
+    public void crearEsquemaVentas(Connection conn) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            st.execute("CREATE TABLE cotizaciones (id_cotizacion INT AUTO_INCREMENT PRIMARY KEY, " +
+                    "numero_cotizacion VARCHAR(50) NOT NULL UNIQUE, cliente_id INT NOT NULL, vendedor_id INT NOT NULL, " +
+                    "fecha TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP, subtotal DECIMAL(10,2) NOT NULL, " +
+                    "descuento DECIMAL(10,2) NOT NULL DEFAULT 0, iva DECIMAL(10,2) NOT NULL, total DECIMAL(10,2) NOT NULL, " +
+                    "convertida_a_orden BOOLEAN NOT NULL DEFAULT FALSE, vigencia_dias INT DEFAULT 30, observaciones TEXT)");
+            // El repositorio guarda aquí el idProducto numérico, no el código: sin clave foránea a productos
+            st.execute("CREATE TABLE items_cotizacion (id_item INT AUTO_INCREMENT PRIMARY KEY, cotizacion_id INT NOT NULL, " +
+                    "producto_id VARCHAR(20) NOT NULL, cantidad INT NOT NULL, precio_unitario DECIMAL(10,2) NOT NULL, " +
+                    "subtotal DECIMAL(10,2) NOT NULL, " +
+                    "FOREIGN KEY (cotizacion_id) REFERENCES cotizaciones(id_cotizacion))");
+            st.execute("CREATE TABLE ordenes (id BIGINT AUTO_INCREMENT PRIMARY KEY, numero_orden VARCHAR(50) NOT NULL UNIQUE, " +
+                    "cliente_id BIGINT NOT NULL, vendedor_id BIGINT NOT NULL, fecha TIMESTAMP NOT NULL, cotizacion_id BIGINT, " +
+                    "subtotal DECIMAL(10,2) NOT NULL, descuento DECIMAL(10,2) NOT NULL DEFAULT 0, iva DECIMAL(10,2) NOT NULL, " +
+                    "total DECIMAL(10,2) NOT NULL, facturada BOOLEAN NOT NULL DEFAULT FALSE, factura_id BIGINT)");
+            st.execute("CREATE TABLE items_orden (id BIGINT AUTO_INCREMENT PRIMARY KEY, orden_id BIGINT NOT NULL, " +
+                    "producto_id BIGINT NOT NULL, cantidad INT NOT NULL, precio_unitario DECIMAL(10,2) NOT NULL, " +
+                    "subtotal DECIMAL(10,2) NOT NULL)");
+            st.execute("CREATE INDEX idx_items_orden ON items_orden (orden_id)");
+        }
+        new PagoRepository().createTableIfNotExists();
+        new SecuenciaRepository().createTableIfNotExists();
+        new MovimientoContableRepository().createTableIfNotExists();
+    }
+
+    /**
+     * Inserta todas las filas de la escala
+     */
+    public void poblar(Connection conn) throws SQLException {
+        SplittableRandom aleatorio = new SplittableRandom(SEMILLA);
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            poblarPersonas(conn);
+            poblarProductos(conn, aleatorio.split());
+            poblarFacturas(conn, aleatorio.split());
+            poblarPromociones(conn, aleatorio.split());
+            conn.commit();
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    private void poblarPersonas(Connection conn) throws SQLException {
+        try (PreparedStatement cliente = conn.prepareStatement(
+                "INSERT INTO clientes (nombre, id, email, telefono, direccion) VALUES (?, ?, ?, ?, ?)")) {
+            for (int i = 1; i <= getClientes(); i++) {
+                cliente.setString(1, "Cliente " + i);
+                cliente.setString(2, String.valueOf(900000000L + i));
+                cliente.setString(3, "cliente" + i + "@omega.com");
+                cliente.setString(4, "300" + String.format("%07d", i));
+                cliente.setString(5, "Calle " + i);
+                agregar(cliente, i);
+            }
+            cliente.executeBatch();
+        }
+        try (PreparedStatement usuario = conn.prepareStatement(
+                "INSERT INTO usuarios (username, password, nombre, rol) VALUES (?, 'x', ?, 'VENDEDOR')")) {
+            for (int i = 1; i <= VENDEDORES; i++) {
+                usuario.setString(1, "vendedor" + i);
+                usuario.setString(2, "Vendedor " + i);
+                usuario.addBatch();
+            }
+            usuario.executeBatch();
+        }
+    }
+
+    private void poblarProductos(Connection conn, SplittableRandom aleatorio) throws SQLException {
+        try (PreparedStatement producto = conn.prepareStatement(
+                     "INSERT INTO productos (id, nombre, precio, cantidad, categoria) VALUES (?, ?, ?, ?, ?)");
+             PreparedStatement insumo = conn.prepareStatement(
+                     "INSERT INTO insumos_oficina (id, presentacion, tipo_papel, cantidad_por_paquete) VALUES (?, 'Caja', 'Bond 75g', ?)");
+             PreparedStatement mobiliario = conn.prepareStatement(
+                     "INSERT INTO productos_mobiliario (id, tipo_mobiliario, material, color, dimensiones) " +
+                     "VALUES (?, 'Escritorio', 'Madera', 'Roble', '120x60x75cm')");
+             PreparedStatement tecnologico = conn.prepareStatement(
+                     "INSERT INTO productos_tecnologicos (id, marca, modelo, numero_serie, garantia_meses, especificaciones) " +
+                     "VALUES (?, 'Omega', ?, ?, 12, 'Genérico')")) {
+            for (int i = 0; i < getProductos(); i++) {
+                String codigo = codigoProducto(i);
+                producto.setString(1, codigo);
+                producto.setString(2, "Producto " + codigo);
+                producto.setDouble(3, precio(aleatorio));
+                producto.setInt(4, STOCK_INICIAL);
+                producto.setString(5, categoriaProducto(i));
+                producto.addBatch();
+
+                switch (i % 3) {
+                    case 0:
+                        insumo.setString(1, codigo);
+                        insumo.setInt(2, 10 * (1 + aleatorio.nextInt(50)));
+                        insumo.addBatch();
+                        break;
+                    case 1:
+                        mobiliario.setString(1, codigo);
+                        mobiliario.addBatch();
+                        break;
+                    default:
+                        tecnologico.setString(1, codigo);
+                        tecnologico.setString(2, "M-" + i);
+                        tecnologico.setString(3, "SN" + i);
+                        tecnologico.addBatch();
+                        break;
+                }
+
+                if ((i + 1) % LOTE == 0) {
+                    producto.executeBatch();
+                    insumo.executeBatch();
+                    mobiliario.executeBatch();
+                    tecnologico.executeBatch();
+                }
+            }
+            producto.executeBatch();
+            insumo.executeBatch();
+            mobiliario.executeBatch();
+            tecnologico.executeBatch();
+        }
+    }
+
+    private void poblarFacturas(Connection conn, SplittableRandom aleatorio) throws SQLException {
+        try (PreparedStatement factura = conn.prepareStatement(
+                     "INSERT INTO facturas (id_factura, numero_factura, cliente_id, vendedor_id, fecha, subtotal, descuento, " +
+                     "iva, total, forma_pago, pagada) VALUES (?, ?, ?, ?, ?, ?, 0, ?, ?, ?, TRUE)");
+             PreparedStatement item = conn.prepareStatement(
+                     "INSERT INTO items_factura (factura_id, producto_id, cantidad, precio_unitario, descuento, subtotal) " +
+                     "VALUES (?, ?, ?, ?, 0, ?)")) {
+            // Las facturas se distribuyen uniformemente en el año, en orden de fecha como en producción
+            long segundosPorFactura = Math.max(1, DIAS * 86_400L / getFacturas());
+            LocalDateTime inicio = PRIMER_DIA.atTime(8, 0);
+            for (int n = 1; n <= getFacturas(); n++) {
+                int lineas = 1 + aleatorio.nextInt(3);
+                double subtotal = 0;
+                for (int l = 0; l < lineas; l++) {
+                    int cantidad = 1 + aleatorio.nextInt(5);
+                    double precio = precio(aleatorio);
+                    double importe = Math.round(precio * cantidad * 100) / 100.0;
+                    subtotal += importe;
+                    item.setLong(1, n);
+                    item.setString(2, codigoProducto(aleatorio.nextInt(getProductos())));
+                    item.setInt(3, cantidad);
+                    item.setDouble(4, precio);
+                    item.setDouble(5, importe);
+                    item.addBatch();
+                }
+                double iva = Math.round(subtotal * 19) / 100.0;
+                factura.setLong(1, n);
+                factura.setString(2, "FACT-" + String.format("%08d", n));
+                factura.setLong(3, 1 + aleatorio.nextInt(getClientes()));
+                factura.setLong(4, 1 + aleatorio.nextInt(VENDEDORES));
+                factura.setTimestamp(5, Timestamp.valueOf(inicio.plusSeconds((n - 1) * segundosPorFactura)));
+                factura.setDouble(6, subtotal);
+                factura.setDouble(7, iva);
+                factura.setDouble(8, subtotal + iva);
+                factura.setString(9, aleatorio.nextInt(4) == 0 ? "TARJETA" : "EFECTIVO");
+                factura.addBatch();
+
+                if (n % LOTE == 0) {
+                    factura.executeBatch();
+                    item.executeBatch();
+                }
+            }
+            factura.executeBatch();
+            item.executeBatch();
+        }
+        // Las inserciones fijaron el ID; la secuencia debe seguir desde el último
+        try (Statement st = conn.createStatement()) {
+            st.execute("ALTER TABLE facturas ALTER COLUMN id_factura RESTART WITH " + (getFacturas() + 1));
+        }
+    }
+
+    private void poblarPromociones(Connection conn, SplittableRandom aleatorio) throws SQLException {
+        Date desde = Date.valueOf(LocalDate.of(2000, 1, 1));
+        Date hasta = Date.valueOf(LocalDate.of(2099, 12, 31));
+        Date vencida = Date.valueOf(LocalDate.of(2020, 12, 31));
+        try (PreparedStatement promocion = conn.prepareStatement(
+                "INSERT INTO promociones (descripcion, tipo, valor, codigo_producto, fecha_inicio, fecha_fin, activa) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?)")) {
+            for (int i = 0; i < getPromociones(); i++) {
+                // 1 de cada 10 es por categoría; el resto, por producto. Un tercio está vencida o inactiva
+                boolean porCategoria = i % 10 == 9;
+                String aplica = porCategoria ? CATEGORIAS[i % 3] : codigoProducto(aleatorio.nextInt(getProductos()));
+                boolean porcentaje = aleatorio.nextBoolean();
+                promocion.setString(1, porcentaje ? "Descuento " + (5 + i % 30) + "%" : "Promoción 2x1");
+                promocion.setString(2, porcentaje ? "PORCENTAJE" : "2X1");
+                promocion.setDouble(3, porcentaje ? 5 + i % 30 : 0);
+                promocion.setString(4, aplica);
+                promocion.setDate(5, desde);
+                promocion.setDate(6, i % 3 == 2 ? vencida : hasta);
+                promocion.setBoolean(7, i % 7 != 6);
+                agregar(promocion, i + 1);
+            }
+            promocion.executeBatch();
+        }
+    }
+
+    /**
+     * Filas de un reporte de facturación, como las que arma ReporteFacturacionController
+     */
+    public List<Object[]> filasReporte() {
+        SplittableRandom aleatorio = new SplittableRandom(SEMILLA);
+        List<Object[]> filasReporte = new ArrayList<>(filas);
+        for (int n = 1; n <= filas; n++) {
+            double subtotal = precio(aleatorio) * (1 + aleatorio.nextInt(5));
+            filasReporte.add(new Object[] {
+                    "FACT-" + String.format("%08d", n),
+                    PRIMER_DIA.plusDays(n % DIAS).toString(),
+                    "Cliente " + (1 + aleatorio.nextInt(getClientes())),
+                    "Vendedor " + (1 + aleatorio.nextInt(VENDEDORES)),
+                    subtotal,
+                    subtotal * 0.19,
+                    subtotal * 1.19,
+                    aleatorio.nextInt(4) == 0 ? "TARJETA" : "EFECTIVO"
+            });
+        }
+        return filasReporte;
+    }
+
+    private static double precio(SplittableRandom aleatorio) {
+        return 1_000 + aleatorio.nextInt(2_500_000);
+    }
+
+    private static void agregar(PreparedStatement stmt, int fila) throws SQLException {
+        stmt.addBatch();
+        if (fila % LOTE == 0) {
+            stmt.executeBatch();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.distribuciones.omega.benchmark;
+
+import com.distribuciones.omega.model.ProductoInventario;
+import com.distribuciones.omega.service.InventarioService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Descuento de stock por venta de un producto al azar del catálogo.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx3g"})
+public class InventarioServiceBenchmark {
+
+    @State(Scope.Thread)
+    public static class Contexto {
+        InventarioService service;
+        SplittableRandom aleatorio;
+        int productos;
+
+        @Setup(Level.Trial)
+        public void preparar(BaseDatosBenchmark base) {
+            service = new InventarioService();
+            aleatorio = new SplittableRandom(GeneradorDatos.SEMILLA);
+            productos = base.generador.getProductos();
+        }
+    }
+
+    @Benchmark
+    public boolean actualizarStockProducto(Contexto contexto) {
+        int indice = contexto.aleatorio.nextInt(contexto.productos);
+        ProductoInventario producto = new ProductoInventario(GeneradorDatos.codigoProducto(indice),
+                "Producto " + indice, 10_000, GeneradorDatos.STOCK_INICIAL);
+        producto.setCategoria(GeneradorDatos.categoriaProducto(indice));
+        return contexto.service.actualizarStockProducto(producto, 1);
+    }
+}
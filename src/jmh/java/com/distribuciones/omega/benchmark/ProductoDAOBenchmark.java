@@ -0,0 +1,54 @@
+package com.distribuciones.omega.benchmark;
+
+import com.distribuciones.omega.dao.ProductoDAO;
+import com.distribuciones.omega.model.Producto;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Carga completa del catálogo con sus subtipos.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx3g"})
+public class ProductoDAOBenchmark {
+
+    @State(Scope.Thread)
+    public static class Contexto {
+        Connection conn;
+        ProductoDAO dao;
+
+        @Setup(Level.Trial)
+        public void preparar(BaseDatosBenchmark base) throws SQLException {
+            conn = base.dataSource.getConnection();
+            dao = new ProductoDAO(conn);
+        }
+
+        @TearDown(Level.Trial)
+        public void liberar() throws SQLException {
+            conn.close();
+        }
+    }
+
+    @Benchmark
+    public List<Producto> getAllProductos(Contexto contexto) throws SQLException {
+        return contexto.dao.getAllProductos();
+    }
+}
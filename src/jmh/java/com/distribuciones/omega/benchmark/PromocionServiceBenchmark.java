@@ -0,0 +1,51 @@
+package com.distribuciones.omega.benchmark;
+
+import com.distribuciones.omega.model.Promocion;
+import com.distribuciones.omega.service.PromocionService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Búsqueda de la promoción aplicable a un producto al azar, como al agregar una
+ * línea a una cotización.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx3g"})
+public class PromocionServiceBenchmark {
+
+    @State(Scope.Thread)
+    public static class Contexto {
+        PromocionService service;
+        SplittableRandom aleatorio;
+        int productos;
+
+        @Setup(Level.Trial)
+        public void preparar(BaseDatosBenchmark base) {
+            service = new PromocionService();
+            aleatorio = new SplittableRandom(GeneradorDatos.SEMILLA);
+            productos = base.generador.getProductos();
+        }
+    }
+
+    @Benchmark
+    public Promocion buscarPromocionAplicable(Contexto contexto) {
+        int indice = contexto.aleatorio.nextInt(contexto.productos);
+        return contexto.service.buscarPromocionAplicable(GeneradorDatos.codigoProducto(indice),
+                                                         GeneradorDatos.categoriaProducto(indice));
+    }
+}
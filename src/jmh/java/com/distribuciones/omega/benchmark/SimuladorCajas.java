@@ -0,0 +1,571 @@
+package com.distribuciones.omega.benchmark;
+
+import com.distribuciones.omega.model.Cliente;
+import com.distribuciones.omega.model.Cotizacion;
+import com.distribuciones.omega.model.Factura;
+import com.distribuciones.omega.model.ItemCotizacion;
+import com.distribuciones.omega.model.Orden;
+import com.distribuciones.omega.model.ProductoInventario;
+import com.distribuciones.omega.model.ResultadoStock;
+import com.distribuciones.omega.model.Usuario;
+import com.distribuciones.omega.service.CotizacionService;
+import com.distribuciones.omega.service.DiarioContable;
+import com.distribuciones.omega.service.FacturaService;
+import com.distribuciones.omega.service.PagoService;
+import com.distribuciones.omega.service.ReservaStockService;
+import com.distribuciones.omega.utils.DBUtil;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.h2.jdbcx.JdbcDataSource;
+
+import javax.sql.DataSource;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Simulador de cajas: varias terminales concurrentes ejecutan el flujo completo de
+ * venta (cotización, orden, factura con descuento de stock y pago en efectivo) a
+ * través de los servicios reales, contra una base H2 embebida en modo MySQL.
+ *
+ * Cada caja espera un tiempo aleatorio (exponencial) entre ventas y elige los
+ * productos con una distribución de Zipf, así unos pocos productos concentran la
+ * mayoría de las ventas y se disputan las mismas filas. Al final informa ventas por
+ * segundo, p50/p99 de cada paso, consultas a la base de datos por paso y compara
+ * el stock final con las unidades vendidas para detectar actualizaciones perdidas
+ * y sobreventas (en ese caso termina con código 2).
+ *
+ * Uso:
+ *   mvn -Pbenchmarks test-compile exec:exec -Dbenchmark.main=com.distribuciones.omega.benchmark.SimuladorCajas \
+ *       -Dbenchmark.args="--cajas 8 --duracion 30 --sesgo 1.2"
+ *
+ * Opciones: --cajas, --duracion (segundos), --pensar (pausa media en ms), --productos,
+ * --stock (unidades iniciales por producto), --sesgo (exponente de Zipf), --lineas
+ * (máximo de líneas por venta), --pool (conexiones), --semilla y --consola (no
+ * descarta la salida de la aplicación).
+ */
+public final class SimuladorCajas {
+
+    private static final double TASA_IVA = 0.19;
+
+    /**
+     * Pasos medidos de cada venta
+     */
+    enum Paso {
+        COTIZACION("Cotización"),
+        ORDEN("Orden"),
+        FACTURA("Factura"),
+        PAGO("Pago"),
+        VENTA("Venta completa");
+
+        private final String etiqueta;
+
+        Paso(String etiqueta) {
+            this.etiqueta = etiqueta;
+        }
+    }
+
+    private final Opciones opciones;
+    private final List<ProductoInventario> productos = new ArrayList<>();
+    private double[] popularidadAcumulada;
+    private int clientes;
+
+    private SimuladorCajas(Opciones opciones) {
+        this.opciones = opciones;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Opciones opciones = Opciones.leer(args);
+        PrintStream informe = System.out;
+        if (!opciones.consola) {
+            PrintStream nula = new PrintStream(OutputStream.nullOutputStream());
+            System.setOut(nula);
+            System.setErr(nula);
+        }
+
+        int codigo;
+        try {
+            codigo = new SimuladorCajas(opciones).ejecutar(informe);
+        } finally {
+            DBUtil.cerrarPool();
+        }
+        // Los servicios dejan hilos de fondo (diario contable, correo); no hace falta esperarlos
+        System.exit(codigo);
+    }
+
+    private int ejecutar(PrintStream informe) throws Exception {
+        JdbcDataSource h2 = new JdbcDataSource();
+        h2.setURL("jdbc:h2:mem:simulador;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000");
+        h2.setUser("sa");
+
+        HikariConfig config = new HikariConfig();
+        config.setDataSource(ContadorViajes.envolver(h2));
+        config.setMaximumPoolSize(opciones.pool);
+        config.setPoolName("simulador");
+        HikariDataSource pool = new HikariDataSource(config);
+        DBUtil.usarDataSource(pool);
+
+        long inicioCarga = System.currentTimeMillis();
+        prepararBase(h2);
+        informe.printf("Base de datos preparada en %d ms%n", System.currentTimeMillis() - inicioCarga);
+
+        // Cada caja con sus propios servicios, como cada terminal con su pantalla
+        List<Caja> cajas = new ArrayList<>();
+        for (int i = 0; i < opciones.cajas; i++) {
+            cajas.add(new Caja(i + 1, new SplittableRandom(opciones.semilla + i)));
+        }
+
+        long totalAntes = ContadorViajes.TOTAL.sum();
+        long inicio = System.nanoTime();
+        long fin = inicio + opciones.duracionSegundos * 1_000_000_000L;
+        List<Thread> hilos = new ArrayList<>();
+        for (Caja caja : cajas) {
+            Thread hilo = new Thread(() -> caja.atender(fin), "caja-" + caja.numero);
+            hilos.add(hilo);
+            hilo.start();
+        }
+        for (Thread hilo : hilos) {
+            hilo.join();
+        }
+        double segundos = (System.nanoTime() - inicio) / 1e9;
+        long viajesTotales = ContadorViajes.TOTAL.sum() - totalAntes;
+
+        DiarioContable.getInstance().esperarPendientes(30_000);
+
+        Resultados resultados = new Resultados();
+        for (Caja caja : cajas) {
+            resultados.unir(caja.resultados);
+        }
+        informar(informe, resultados, segundos, viajesTotales);
+        return verificarStock(informe, h2, resultados) ? 0 : 2;
+    }
+
+    /**
+     * Crea el esquema, lo puebla con el generador de los benchmarks y deja a todos
+     * los productos con el mismo stock inicial
+     */
+    private void prepararBase(DataSource h2) throws SQLException {
+        GeneradorDatos generador = new GeneradorDatos(opciones.productos);
+        clientes = generador.getClientes();
+        try (Connection conn = h2.getConnection()) {
+            generador.crearEsquema(conn);
+            generador.crearEsquemaVentas(conn);
+            generador.poblar(conn);
+            try (PreparedStatement st = conn.prepareStatement("UPDATE productos SET cantidad = ?")) {
+                st.setInt(1, opciones.stock);
+                st.executeUpdate();
+            }
+
+            Map<String, Double> precios = new HashMap<>();
+            try (Statement st = conn.createStatement();
+                 ResultSet rs = st.executeQuery("SELECT id, precio FROM productos")) {
+                while (rs.next()) {
+                    precios.put(rs.getString("id"), rs.getDouble("precio"));
+                }
+            }
+            for (int i = 0; i < generador.getProductos(); i++) {
+                String codigo = GeneradorDatos.codigoProducto(i);
+                ProductoInventario producto = new ProductoInventario(codigo, "Producto " + i,
+                        precios.getOrDefault(codigo, 1000.0), opciones.stock);
+                producto.setIdProducto(i + 1L);
+                productos.add(producto);
+            }
+        }
+
+        // Zipf: el producto de rango k se elige con peso 1/(k+1)^sesgo
+        popularidadAcumulada = new double[productos.size()];
+        double suma = 0;
+        for (int k = 0; k < popularidadAcumulada.length; k++) {
+            suma += 1.0 / Math.pow(k + 1, opciones.sesgo);
+            popularidadAcumulada[k] = suma;
+        }
+        for (int k = 0; k < popularidadAcumulada.length; k++) {
+            popularidadAcumulada[k] /= suma;
+        }
+    }
+
+    private int elegirProducto(SplittableRandom aleatorio) {
+        int i = Arrays.binarySearch(popularidadAcumulada, aleatorio.nextDouble());
+        return Math.min(i >= 0 ? i : -i - 1, popularidadAcumulada.length - 1);
+    }
+
+    /**
+     * Una terminal: arma ventas y las pasa por el mismo flujo que "Guardar y facturar"
+     */
+    private final class Caja {
+        private final int numero;
+        private final SplittableRandom aleatorio;
+        private final Resultados resultados = new Resultados();
+        private final CotizacionService cotizacionService = new CotizacionService();
+        private final FacturaService facturaService = new FacturaService();
+        private final PagoService pagoService = new PagoService();
+        private final ReservaStockService reservaStockService = ReservaStockService.getInstance();
+        private final Usuario vendedor = new Usuario();
+
+        Caja(int numero, SplittableRandom aleatorio) {
+            this.numero = numero;
+            this.aleatorio = aleatorio;
+            vendedor.setIdUsuario((long) ((numero - 1) % GeneradorDatos.VENDEDORES + 1));
+        }
+
+        void atender(long fin) {
+            while (System.nanoTime() < fin) {
+                pensar();
+                if (System.nanoTime() >= fin) {
+                    break;
+                }
+                try {
+                    vender();
+                } catch (RuntimeException e) {
+                    resultados.excepciones++;
+                }
+            }
+        }
+
+        private void pensar() {
+            if (opciones.pensarMs <= 0) {
+                return;
+            }
+            long pausa = (long) (-Math.log(1 - aleatorio.nextDouble()) * opciones.pensarMs);
+            try {
+                Thread.sleep(pausa);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void vender() {
+            Cotizacion cotizacion = armarCotizacion();
+            Medicion venta = new Medicion();
+
+            Medicion paso = new Medicion();
+            Cotizacion guardada = cotizacionService.guardarCotizacion(cotizacion);
+            if (!resultados.registrar(Paso.COTIZACION, paso, guardada != null)) {
+                return;
+            }
+
+            paso = new Medicion();
+            Orden orden = cotizacionService.convertirCotizacionAOrden(guardada);
+            if (!resultados.registrar(Paso.ORDEN, paso, orden != null)) {
+                return;
+            }
+
+            paso = new Medicion();
+            ResultadoStock reserva = reservaStockService.reservar(guardada);
+            if (!reserva.isExitoso()) {
+                resultados.sinStock++;
+                return;
+            }
+            Factura factura = facturaService.generarFacturaDesdeContizacion(guardada, null);
+            if (factura == null) {
+                reservaStockService.liberar(guardada);
+            }
+            if (!resultados.registrar(Paso.FACTURA, paso, factura != null)) {
+                return;
+            }
+            for (ItemCotizacion item : guardada.getItems()) {
+                int indice = (int) (item.getProducto().getIdProducto() - 1);
+                resultados.vendidas.merge(indice, item.getCantidad(), Integer::sum);
+            }
+
+            paso = new Medicion();
+            Map<String, Object> pago = pagoService.procesarPagoEfectivo(factura, factura.getTotal(),
+                    "Simulador, caja " + numero);
+            if (!resultados.registrar(Paso.PAGO, paso, Boolean.TRUE.equals(pago.get("exito")))) {
+                return;
+            }
+            resultados.registrar(Paso.VENTA, venta, true);
+        }
+
+        private Cotizacion armarCotizacion() {
+            Cliente cliente = new Cliente();
+            cliente.setIdCliente(1L + aleatorio.nextInt(clientes));
+
+            Cotizacion cotizacion = new Cotizacion();
+            cotizacion.setCliente(cliente);
+            cotizacion.setVendedor(vendedor);
+            cotizacion.setFecha(LocalDateTime.now());
+
+            int lineas = 1 + aleatorio.nextInt(opciones.lineas);
+            List<Integer> elegidos = new ArrayList<>();
+            while (elegidos.size() < lineas && elegidos.size() < productos.size()) {
+                int indice = elegirProducto(aleatorio);
+                if (!elegidos.contains(indice)) {
+                    elegidos.add(indice);
+                }
+            }
+            for (int indice : elegidos) {
+                // Copia: los servicios pueden actualizar la cantidad del producto de la línea
+                ProductoInventario producto = new ProductoInventario(productos.get(indice));
+                cotizacion.agregarItem(new ItemCotizacion(producto, 1 + aleatorio.nextInt(3), producto.getPrecio()));
+            }
+            cotizacion.calcularTotales();
+            cotizacion.setIva(Math.round(cotizacion.getSubtotal() * TASA_IVA * 100) / 100.0);
+            cotizacion.calcularTotales();
+            return cotizacion;
+        }
+    }
+
+    /**
+     * Compara el stock final de cada producto con el inicial menos lo facturado
+     * @return true si no hay diferencias
+     */
+    private boolean verificarStock(PrintStream informe, DataSource h2, Resultados resultados) throws SQLException {
+        Map<String, Integer> enBase = new HashMap<>();
+        try (Connection conn = h2.getConnection();
+             Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT id, cantidad FROM productos")) {
+            while (rs.next()) {
+                enBase.put(rs.getString("id"), rs.getInt("cantidad"));
+            }
+        }
+
+        long unidadesVendidas = 0;
+        int productosConDiferencia = 0;
+        long unidadesDescuadradas = 0;
+        int productosSobrevendidos = 0;
+        long unidadesSobrevendidas = 0;
+        for (int i = 0; i < productos.size(); i++) {
+            int vendidas = resultados.vendidas.getOrDefault(i, 0);
+            unidadesVendidas += vendidas;
+            int esperado = opciones.stock - vendidas;
+            int real = enBase.getOrDefault(GeneradorDatos.codigoProducto(i), 0);
+            if (real != esperado) {
+                productosConDiferencia++;
+                unidadesDescuadradas += Math.abs(real - esperado);
+            }
+            int faltante = Math.max(vendidas - opciones.stock, -Math.min(real, 0));
+            if (faltante > 0) {
+                productosSobrevendidos++;
+                unidadesSobrevendidas += faltante;
+            }
+        }
+
+        informe.printf("%nStock: %d unidades facturadas%n", unidadesVendidas);
+        informe.printf("  Actualizaciones perdidas: %d productos, %d unidades de diferencia%n",
+                productosConDiferencia, unidadesDescuadradas);
+        informe.printf("  Sobreventa: %d productos, %d unidades%n", productosSobrevendidos, unidadesSobrevendidas);
+        return productosConDiferencia == 0 && productosSobrevendidos == 0;
+    }
+
+    private void informar(PrintStream informe, Resultados resultados, double segundos, long viajesTotales) {
+        Muestras ventas = resultados.muestras.get(Paso.VENTA);
+        informe.printf("%nSimulador de cajas: %d cajas, %.1f s, %d productos (stock %d, sesgo %.2f), pausa media %d ms%n",
+                opciones.cajas, segundos, productos.size(), opciones.stock, opciones.sesgo, opciones.pensarMs);
+        informe.printf("Ventas completadas: %d (%.1f ventas/s), sin stock: %d, excepciones: %d%n%n",
+                ventas.cantidad, ventas.cantidad / segundos, resultados.sinStock, resultados.excepciones);
+
+        informe.printf("%-16s %8s %9s %9s %9s %11s %8s%n",
+                "Paso", "n", "p50 ms", "p99 ms", "máx ms", "consultas", "errores");
+        for (Paso paso : Paso.values()) {
+            Muestras m = resultados.muestras.get(paso);
+            m.ordenar();
+            informe.printf("%-16s %8d %9.2f %9.2f %9.2f %11.1f %8d%n", paso.etiqueta, m.cantidad,
+                    m.percentil(0.50) / 1e6, m.percentil(0.99) / 1e6, m.maximo() / 1e6,
+                    m.cantidad == 0 ? 0.0 : (double) m.viajes / m.cantidad, m.errores);
+        }
+
+        informe.printf("%nConsultas a la base de datos: %d (%.1f por venta completada, incluye hilos de fondo)%n",
+                viajesTotales, ventas.cantidad == 0 ? 0.0 : (double) viajesTotales / ventas.cantidad);
+        informe.printf("%s%n", DBUtil.getEstadisticasPool());
+    }
+
+    /**
+     * Tiempo y consultas de la caja actual desde que se crea
+     */
+    private static final class Medicion {
+        private final long inicio = System.nanoTime();
+        private final long viajes = ContadorViajes.delHilo();
+    }
+
+    /**
+     * Resultados de una caja (o de todas, tras unirlos)
+     */
+    private static final class Resultados {
+        private final Map<Paso, Muestras> muestras = new EnumMap<>(Paso.class);
+        private final Map<Integer, Integer> vendidas = new HashMap<>();
+        private int sinStock;
+        private int excepciones;
+
+        Resultados() {
+            for (Paso paso : Paso.values()) {
+                muestras.put(paso, new Muestras());
+            }
+        }
+
+        /**
+         * @return el mismo valor de exito, para cortar la venta si el paso falló
+         */
+        boolean registrar(Paso paso, Medicion medicion, boolean exito) {
+            Muestras m = muestras.get(paso);
+            if (exito) {
+                m.agregar(System.nanoTime() - medicion.inicio, ContadorViajes.delHilo() - medicion.viajes);
+            } else {
+                m.errores++;
+            }
+            return exito;
+        }
+
+        void unir(Resultados otro) {
+            for (Paso paso : Paso.values()) {
+                muestras.get(paso).unir(otro.muestras.get(paso));
+            }
+            otro.vendidas.forEach((indice, cantidad) -> vendidas.merge(indice, cantidad, Integer::sum));
+            sinStock += otro.sinStock;
+            excepciones += otro.excepciones;
+        }
+    }
+
+    /**
+     * Latencias en nanosegundos de un paso
+     */
+    private static final class Muestras {
+        private long[] valores = new long[1024];
+        private int cantidad;
+        private long viajes;
+        private int errores;
+
+        void agregar(long nanos, long viajesPaso) {
+            if (cantidad == valores.length) {
+                valores = Arrays.copyOf(valores, cantidad * 2);
+            }
+            valores[cantidad++] = nanos;
+            viajes += viajesPaso;
+        }
+
+        void unir(Muestras otra) {
+            for (int i = 0; i < otra.cantidad; i++) {
+                agregar(otra.valores[i], 0);
+            }
+            viajes += otra.viajes;
+            errores += otra.errores;
+        }
+
+        void ordenar() {
+            Arrays.sort(valores, 0, cantidad);
+        }
+
+        long percentil(double p) {
+            if (cantidad == 0) {
+                return 0;
+            }
+            return valores[Math.min(cantidad - 1, (int) Math.ceil(p * cantidad) - 1)];
+        }
+
+        long maximo() {
+            return cantidad == 0 ? 0 : valores[cantidad - 1];
+        }
+    }
+
+    /**
+     * Cuenta las idas a la base de datos (ejecuciones de sentencias, commits y
+     * rollbacks) envolviendo el DataSource de H2 antes de entregarlo al pool
+     */
+    static final class ContadorViajes {
+        static final LongAdder TOTAL = new LongAdder();
+        private static final ThreadLocal<long[]> POR_HILO = ThreadLocal.withInitial(() -> new long[1]);
+
+        private ContadorViajes() {
+        }
+
+        static long delHilo() {
+            return POR_HILO.get()[0];
+        }
+
+        static DataSource envolver(DataSource dataSource) {
+            return envolver(dataSource, DataSource.class);
+        }
+
+        private static <T> T envolver(Object destino, Class<T> interfaz) {
+            Object proxy = Proxy.newProxyInstance(SimuladorCajas.class.getClassLoader(), new Class<?>[] {interfaz},
+                    (p, metodo, args) -> {
+                        String nombre = metodo.getName();
+                        Object resultado;
+                        try {
+                            resultado = metodo.invoke(destino, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        } finally {
+                            if (nombre.startsWith("execute") || nombre.equals("commit") || nombre.equals("rollback")) {
+                                POR_HILO.get()[0]++;
+                                TOTAL.increment();
+                            }
+                        }
+                        if (resultado instanceof Connection && nombre.equals("getConnection")) {
+                            return envolver(resultado, Connection.class);
+                        }
+                        if (resultado instanceof CallableStatement) {
+                            return envolver(resultado, CallableStatement.class);
+                        }
+                        if (resultado instanceof PreparedStatement) {
+                            return envolver(resultado, PreparedStatement.class);
+                        }
+                        if (resultado instanceof Statement) {
+                            return envolver(resultado, Statement.class);
+                        }
+                        return resultado;
+                    });
+            return interfaz.cast(proxy);
+        }
+    }
+
+    /**
+     * Opciones de línea de comandos
+     */
+    private static final class Opciones {
+        int cajas = 8;
+        int duracionSegundos = 30;
+        int pensarMs = 50;
+        int productos = 1000;
+        int stock = 200;
+        double sesgo = 1.1;
+        int lineas = 3;
+        int pool = 10;
+        long semilla = GeneradorDatos.SEMILLA;
+        boolean consola;
+
+        static Opciones leer(String[] args) {
+            Opciones o = new Opciones();
+            for (int i = 0; i < args.length; i++) {
+                String opcion = args[i];
+                if (opcion.equals("--consola")) {
+                    o.consola = true;
+                    continue;
+                }
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Falta el valor de " + opcion);
+                }
+                String valor = args[++i];
+                switch (opcion) {
+                    case "--cajas": o.cajas = Math.max(1, Integer.parseInt(valor)); break;
+                    case "--duracion": o.duracionSegundos = Math.max(1, Integer.parseInt(valor)); break;
+                    case "--pensar": o.pensarMs = Math.max(0, Integer.parseInt(valor)); break;
+                    case "--productos": o.productos = Math.max(10, Integer.parseInt(valor)); break;
+                    case "--stock": o.stock = Math.max(0, Integer.parseInt(valor)); break;
+                    case "--sesgo": o.sesgo = Math.max(0, Double.parseDouble(valor)); break;
+                    case "--lineas": o.lineas = Math.max(1, Integer.parseInt(valor)); break;
+                    case "--pool": o.pool = Math.max(1, Integer.parseInt(valor)); break;
+                    case "--semilla": o.semilla = Long.parseLong(valor); break;
+                    default: throw new IllegalArgumentException("Opción desconocida: " + opcion);
+                }
+            }
+            return o;
+        }
+    }
+}
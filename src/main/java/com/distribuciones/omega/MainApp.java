@@ -1,8 +1,20 @@
 package com.distribuciones.omega;
 
-import com.distribuciones.omega.utils.DatabaseDiagnostic;
+import com.distribuciones.omega.repository.CatalogoProductosCache;
+import com.distribuciones.omega.service.DiarioContable;
+import com.distribuciones.omega.utils.Arranque;
+import com.distribuciones.omega.utils.BandejaSalidaCorreo;
+import com.distribuciones.omega.utils.DBUtil;
 import com.distribuciones.omega.utils.DatabaseInitializer;
+import com.distribuciones.omega.utils.ExportadorMetricas;
 import com.distribuciones.omega.utils.InventarioMonitor;
+import com.distribuciones.omega.utils.LogUtil;
+import com.distribuciones.omega.utils.MetricasBD;
+import com.distribuciones.omega.utils.MigradorEsquema;
+import com.distribuciones.omega.utils.PrecargaVistas;
+import com.distribuciones.omega.utils.PrintUtil;
+import com.distribuciones.omega.utils.SecuenciaDocumentos;
+import com.distribuciones.omega.utils.TareasUI;
 
 import javafx.application.Application;
 import javafx.application.Platform;
@@ -21,11 +33,9 @@ import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
 import javafx.fxml.JavaFXBuilderFactory;
 
-import java.io.ByteArrayInputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
-import java.net.URL;
-import java.nio.charset.StandardCharsets;
+import java.lang.management.ManagementFactory;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -42,7 +52,9 @@ public class MainApp extends Application {
 
     @Override
     public void start(Stage primaryStage) throws Exception {
-        DatabaseDiagnostic.analyzeAllTables();
+        // Medir desde el principio cuánto se bloquea el hilo de JavaFX
+        TareasUI.getInstance().iniciarMonitor();
+        
         // Mostrar pantalla de carga
         Label lblCarga = new Label("Inicializando base de datos...");
         ProgressIndicator progress = new ProgressIndicator();
@@ -74,35 +86,24 @@ public class MainApp extends Application {
         primaryStage.centerOnScreen();
         primaryStage.show();
         
-        // Inicializar DB en un hilo separado
+        Arranque arranque = crearArranque();
+        // Inicializar en segundo plano; las etapas independientes corren en paralelo
         Task<Void> initTask = new Task<>() {
             @Override
             protected Void call() throws Exception {
-                try {
-                    updateMessage("Conectando a la base de datos...");
-                    // Primera fase de inicialización
-                    Thread.sleep(500); // Breve pausa para mostrar los mensajes secuencialmente
-                    
-                    updateMessage("Verificando tablas existentes...");
-                    Thread.sleep(500);
-                    
-                    updateMessage("Creando/actualizando estructura de datos...");
-                    DatabaseInitializer.initialize();
-                    
-                    updateMessage("¡Inicialización completada!");
-                    Thread.sleep(500);
-                } catch (InterruptedException e) {
-                    // Manejo de interrupción del hilo
-                    Thread.currentThread().interrupt();
-                }
+                arranque.ejecutar((terminadas, total, mensaje) -> {
+                    updateMessage(mensaje);
+                    updateProgress(terminadas, total);
+                });
                 return null;
             }
         };
         
-        // Actualizar la etiqueta de carga cuando cambie el mensaje
+        // Mostrar el avance real de las etapas en la pantalla de carga
         initTask.messageProperty().addListener((obs, oldMsg, newMsg) -> {
             lblCarga.setText(newMsg);
         });
+        progress.progressProperty().bind(initTask.progressProperty());
         
         initTask.setOnSucceeded(e -> {
             try {
@@ -122,26 +123,75 @@ public class MainApp extends Application {
         new Thread(initTask).start();
     }
     
+    /**
+     * Etapas del arranque y sus dependencias. Lo que no necesita la base de datos
+     * (vistas, PDF, métricas) avanza mientras se conecta y se revisa el esquema.
+     */
+    private Arranque crearArranque() {
+        return new Arranque()
+                .etapa("conexion", "Conectando a la base de datos...", () -> {
+                    DatabaseInitializer.ensureDatabaseExists();
+                    // Abre el pool y su primera conexión
+                    DBUtil.getConnection().close();
+                })
+                .etapa("esquema", "Actualizando estructura de datos...",
+                        () -> MigradorEsquema.predeterminado().migrar(), "conexion")
+                .etapa("diarioContable", "Iniciando diario contable...",
+                        () -> DiarioContable.getInstance().iniciar(), "esquema")
+                .etapa("catalogo", "Cargando catálogo de productos...", () -> {
+                    CatalogoProductosCache.getInstance().obtenerTodos();
+                    CatalogoProductosCache.getInstance().iniciarRefresco();
+                }, "esquema")
+                .etapa("correo", "Iniciando bandeja de correo...",
+                        () -> BandejaSalidaCorreo.getInstance().iniciar(), "esquema")
+                .etapa("metricas", "Iniciando métricas...",
+                        () -> ExportadorMetricas.getInstance().iniciar())
+                .etapa("vistas", "Preparando pantallas...",
+                        () -> PrecargaVistas.precargar("/fxml/login.fxml", "/fxml/dashboard.fxml"))
+                .etapa("pdf", "Preparando impresión...", () -> {
+                    try {
+                        PrintUtil.precalentarPdf();
+                    } catch (RuntimeException e) {
+                        // Solo adelanta trabajo; la impresión se intentará igual
+                        LOGGER.log(Level.WARNING, "No se pudo precalentar la generación de PDF", e);
+                    }
+                });
+    }
+    
     @Override
     public void stop() throws Exception {
         // Detener el monitor al cerrar la aplicación
         InventarioMonitor.getInstance().detenerMonitoreo();
+        // Cancelar las consultas de las pantallas que sigan en curso
+        TareasUI.getInstance().detener();
+        LOGGER.info("Estadísticas finales de las pantallas: " + TareasUI.getInstance().getEstadisticas());
+        // Registrar los números de documento reservados que no se usaron
+        SecuenciaDocumentos.getInstance().cerrar();
+        // Detener el refresco del catálogo
+        CatalogoProductosCache.getInstance().detenerRefresco();
+        LOGGER.info("Estadísticas finales del catálogo: " + CatalogoProductosCache.getInstance().getEstadisticas());
+        // Guardar los movimientos contables en cola antes de cerrar el pool
+        DiarioContable.getInstance().cerrar();
+        LOGGER.info("Estadísticas finales del diario contable: " + DiarioContable.getInstance().getEstadisticas());
+        // Detener el envío de correos; lo pendiente queda en la bandeja para el próximo inicio
+        BandejaSalidaCorreo.getInstance().detener();
+        LOGGER.info("Estadísticas finales de correo: " + BandejaSalidaCorreo.getInstance().getEstadisticas());
+        // Última exportación de métricas y las sentencias que más tiempo ocuparon
+        ExportadorMetricas.getInstance().detener();
+        MetricasBD.getInstance().getEstadisticasSentencias().stream().limit(10)
+                .forEach(s -> LOGGER.info("Sentencia: " + s));
+        // Liberar las conexiones del pool
+        LOGGER.info("Estadísticas finales del pool: " + DBUtil.getEstadisticasPool());
+        DBUtil.cerrarPool();
+        // Vaciar las colas del registro asíncrono
+        LogUtil.cerrar();
         super.stop();
     }
     
     private void loadMainScene(Stage stage) throws Exception {
-        FXMLLoader loader = new FXMLLoader();
-        URL url = getClass().getResource("/fxml/login.fxml");
-        
-        // Si hay un error de formato de número, modifica el FXML en memoria
-        String fxmlContent = new String(url.openStream().readAllBytes(), StandardCharsets.UTF_8);
-        fxmlContent = fxmlContent.replace("width=\"100%\"", "width=\"-1\"")
-                                 .replace("height=\"100%\"", "height=\"-1\"")
-                                 .replace("javafx/23.0.1", "javafx/20");
-        
-        loader.setLocation(url);
+        FXMLLoader loader = new FXMLLoader(getClass().getResource("/fxml/login.fxml"));
         loader.setBuilderFactory(new JavaFXBuilderFactory());
-        Parent root = loader.load(new ByteArrayInputStream(fxmlContent.getBytes(StandardCharsets.UTF_8)));
+        Parent root = loader.load();
         
         Scene scene = new Scene(root);
         stage.setScene(scene);
@@ -157,6 +207,10 @@ public class MainApp extends Application {
         stage.setTitle("Distribuciones Ómega – Login");
         stage.setResizable(true);
         stage.setMaximized(true);
+        
+        long desdeInicioJvm = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+        MetricasBD.getInstance().registrarTiempoHastaLogin(desdeInicioJvm);
+        LOGGER.info("Login listo en " + desdeInicioJvm + " ms desde el inicio de la JVM");
     }
     
     private void mostrarError(Throwable ex) {
@@ -183,6 +237,7 @@ public class MainApp extends Application {
     }
 
     public static void main(String[] args) {
+        LogUtil.configurar();
         launch(args);
     }
 }
\ No newline at end of file
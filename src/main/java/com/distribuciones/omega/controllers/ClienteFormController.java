@@ -2,6 +2,7 @@ package com.distribuciones.omega.controllers;
 
 import com.distribuciones.omega.model.Cliente;
 import com.distribuciones.omega.service.ClienteService;
+import com.distribuciones.omega.utils.TareasUI;
 import javafx.fxml.FXML;
 import javafx.scene.control.Alert;
 import javafx.scene.control.CheckBox;
@@ -25,9 +26,12 @@ public class ClienteFormController {
     
     // Servicio para validaciones adicionales
     private final ClienteService clienteService = new ClienteService();
+    private final TareasUI tareas = TareasUI.getInstance();
 
     public void setDialogStage(Stage stage) {
         this.dialogStage = stage;
+        // Al cerrar el diálogo se descarta la validación en curso
+        tareas.vincular(this, tfId);
     }
 
     public void setCliente(Cliente c, boolean isEdit) {
@@ -55,31 +59,55 @@ public class ClienteFormController {
 
     @FXML
     private void onSave() {
-        if (isInputValid()) {
-            // Actualizar objeto cliente con valores del formulario
-            cliente.setId(tfId.getText());
-            cliente.setNombre(tfNombre.getText());
-            cliente.setEmail(tfEmail.getText());
-            cliente.setTelefono(tfTelefono.getText());
-            cliente.setDireccion(tfDireccion.getText());
-            
-            // Actualizar campos adicionales si existen
-            if (chkMayorista != null) {
-                cliente.setMayorista(chkMayorista.isSelected());
-            }
-            
-            if (tfLimiteCredito != null) {
-                try {
-                    double limiteCredito = Double.parseDouble(tfLimiteCredito.getText().trim());
-                    cliente.setLimiteCredito(limiteCredito);
-                } catch (NumberFormatException e) {
-                    cliente.setLimiteCredito(0.0);
-                }
+        String errores = validarCampos();
+        if (!errores.isEmpty()) {
+            mostrarErrores(errores);
+            return;
+        }
+        if (modoEdicion) {
+            aceptar();
+            return;
+        }
+        // Validar que el ID no esté duplicado en creación; la consulta corre en segundo plano
+        String id = tfId.getText().trim();
+        tareas.ejecutar(this, "validar-cliente",
+                () -> clienteService.existeCliente(id),
+                existe -> {
+                    if (existe) {
+                        mostrarErrores("Ya existe un cliente con este ID\n");
+                    } else {
+                        aceptar();
+                    }
+                });
+    }
+
+    /**
+     * Copia los valores del formulario al cliente y cierra el diálogo
+     */
+    private void aceptar() {
+        // Actualizar objeto cliente con valores del formulario
+        cliente.setId(tfId.getText());
+        cliente.setNombre(tfNombre.getText());
+        cliente.setEmail(tfEmail.getText());
+        cliente.setTelefono(tfTelefono.getText());
+        cliente.setDireccion(tfDireccion.getText());
+        
+        // Actualizar campos adicionales si existen
+        if (chkMayorista != null) {
+            cliente.setMayorista(chkMayorista.isSelected());
+        }
+        
+        if (tfLimiteCredito != null) {
+            try {
+                double limiteCredito = Double.parseDouble(tfLimiteCredito.getText().trim());
+                cliente.setLimiteCredito(limiteCredito);
+            } catch (NumberFormatException e) {
+                cliente.setLimiteCredito(0.0);
             }
-            
-            okClicked = true;
-            dialogStage.close();
         }
+        
+        okClicked = true;
+        dialogStage.close();
     }
 
     @FXML
@@ -88,10 +116,10 @@ public class ClienteFormController {
     }
     
     /**
-     * Valida la entrada del usuario en los campos
-     * @return true si la entrada es válida
+     * Valida la entrada del usuario en los campos (sin consultar la base de datos)
+     * @return Errores encontrados, vacío si la entrada es válida
      */
-    private boolean isInputValid() {
+    private String validarCampos() {
         String errorMessage = "";
 
         if (tfId.getText() == null || tfId.getText().trim().isEmpty()) {
@@ -109,13 +137,6 @@ public class ClienteFormController {
             }
         }
         
-        // Validar que el ID no esté duplicado en creación
-        if (!modoEdicion) {
-            if (clienteService.existeCliente(tfId.getText().trim())) {
-                errorMessage += "Ya existe un cliente con este ID\n";
-            }
-        }
-        
         // Validar límite de crédito si el campo existe
         if (tfLimiteCredito != null && !tfLimiteCredito.getText().trim().isEmpty()) {
             try {
@@ -128,18 +149,16 @@ public class ClienteFormController {
             }
         }
 
-        if (errorMessage.isEmpty()) {
-            return true;
-        } else {
-            // Mostrar mensaje de error
-            Alert alert = new Alert(Alert.AlertType.ERROR);
-            alert.initOwner(dialogStage);
-            alert.setTitle("Campos Inválidos");
-            alert.setHeaderText("Por favor corrija los campos inválidos");
-            alert.setContentText(errorMessage);
-            alert.showAndWait();
-            return false;
-        }
+        return errorMessage;
+    }
+
+    private void mostrarErrores(String errorMessage) {
+        Alert alert = new Alert(Alert.AlertType.ERROR);
+        alert.initOwner(dialogStage);
+        alert.setTitle("Campos Inválidos");
+        alert.setHeaderText("Por favor corrija los campos inválidos");
+        alert.setContentText(errorMessage);
+        alert.showAndWait();
     }
 
     public boolean isOkClicked() {
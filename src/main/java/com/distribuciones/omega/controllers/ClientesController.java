@@ -2,6 +2,7 @@ package com.distribuciones.omega.controllers;
 
 import com.distribuciones.omega.model.Cliente;
 import com.distribuciones.omega.service.ClienteService;
+import com.distribuciones.omega.utils.TareasUI;
 
 import java.util.List;
 
@@ -31,6 +32,7 @@ public class ClientesController {
 
     // Reemplazar DAO por Service
     private ClienteService clienteService;
+    private final TareasUI tareas = TareasUI.getInstance();
     private ObservableList<Cliente> clientesCompletos = FXCollections.observableArrayList();
     private FilteredList<Cliente> filteredList;
 
@@ -42,6 +44,7 @@ public class ClientesController {
             
             // Configurar tabla y cargar datos
             setupTable();
+            tareas.vincular(this, tableClientes);
             loadClients();
             setupSearch();
             
@@ -64,23 +67,19 @@ public class ClientesController {
     
     private void loadClients() {
         clientesCompletos.clear();
-        try {
-            // Usar el servicio para obtener todos los clientes
-            List<Cliente> clientes = clienteService.obtenerTodosClientes();
-            clientesCompletos.addAll(clientes);
-            
-            // Crear la lista filtrada basada en la lista completa
-            filteredList = new FilteredList<>(clientesCompletos, p -> true);
-            
-            // Establecer la lista filtrada como fuente de datos para la tabla
-            tableClientes.setItems(filteredList);
-            
-        } catch (Exception e) {
-            e.printStackTrace();
-            mostrarError("Error al cargar clientes", 
-                         "No se pudieron cargar los clientes", 
-                         e.getMessage());
-        }
+        // Crear la lista filtrada basada en la lista completa
+        filteredList = new FilteredList<>(clientesCompletos, p -> true);
+        
+        // Establecer la lista filtrada como fuente de datos para la tabla
+        tableClientes.setItems(filteredList);
+        
+        // La consulta corre en segundo plano; la tabla se llena al terminar
+        tareas.ejecutar(this, "cargar-clientes",
+            () -> clienteService.obtenerTodosClientes(),
+            (List<Cliente> clientes) -> clientesCompletos.setAll(clientes),
+            error -> mostrarError("Error al cargar clientes", 
+                                  "No se pudieron cargar los clientes", 
+                                  error.getMessage()));
     }
     
     // Configurar la búsqueda en tiempo real
@@ -127,14 +126,18 @@ public class ClientesController {
             boolean ok = showFormDialog(nuevo, false);
             if (ok) {
                 // Usar el servicio para guardar el cliente
-                Cliente clienteGuardado = clienteService.guardarCliente(nuevo);
-                if (clienteGuardado != null) {
-                    clientesCompletos.add(clienteGuardado);
-                    filtrarClientesEnTiempoReal(txtBuscar.getText()); // Actualizar filtro
-                } else {
-                    mostrarError("Error al guardar", "No se pudo guardar el cliente", 
-                                "Verifique que los datos sean correctos y que el cliente no exista");
-                }
+                tareas.ejecutar(this, "guardar-cliente",
+                    () -> clienteService.guardarCliente(nuevo),
+                    clienteGuardado -> {
+                        if (clienteGuardado != null) {
+                            clientesCompletos.add(clienteGuardado);
+                            filtrarClientesEnTiempoReal(txtBuscar.getText()); // Actualizar filtro
+                        } else {
+                            mostrarError("Error al guardar", "No se pudo guardar el cliente", 
+                                        "Verifique que los datos sean correctos y que el cliente no exista");
+                        }
+                    },
+                    error -> mostrarError("Error al agregar cliente", "No se pudo agregar el cliente", error.getMessage()));
             }
         } catch (Exception e) {
             e.printStackTrace();
@@ -150,13 +153,17 @@ public class ClientesController {
                 boolean ok = showFormDialog(sel, true);
                 if (ok) {
                     // Usar el servicio para actualizar el cliente
-                    boolean actualizado = clienteService.actualizarCliente(sel);
-                    if (actualizado) {
-                        tableClientes.refresh();
-                    } else {
-                        mostrarError("Error al actualizar", "No se pudo actualizar el cliente", 
-                                    "Verifique que los datos sean correctos");
-                    }
+                    tareas.ejecutar(this, "actualizar-cliente",
+                        () -> clienteService.actualizarCliente(sel),
+                        actualizado -> {
+                            if (actualizado) {
+                                tableClientes.refresh();
+                            } else {
+                                mostrarError("Error al actualizar", "No se pudo actualizar el cliente", 
+                                            "Verifique que los datos sean correctos");
+                            }
+                        },
+                        error -> mostrarError("Error al editar cliente", "No se pudo editar el cliente", error.getMessage()));
                 }
             } catch (Exception e) {
                 e.printStackTrace();
@@ -196,13 +203,17 @@ public class ClientesController {
                 
                 if (confirmar) {
                     // Usar el servicio para eliminar (soft delete) el cliente
-                    boolean eliminado = clienteService.eliminarCliente(sel.getIdCliente());
-                    if (eliminado) {
-                        clientesCompletos.remove(sel);
-                    } else {
-                        mostrarError("Error al eliminar", "No se pudo eliminar el cliente", 
-                                    "El cliente podría estar asociado a registros existentes");
-                    }
+                    tareas.ejecutar(this, "eliminar-cliente",
+                        () -> clienteService.eliminarCliente(sel.getIdCliente()),
+                        eliminado -> {
+                            if (eliminado) {
+                                clientesCompletos.remove(sel);
+                            } else {
+                                mostrarError("Error al eliminar", "No se pudo eliminar el cliente", 
+                                            "El cliente podría estar asociado a registros existentes");
+                            }
+                        },
+                        error -> mostrarError("Error al eliminar", "No se pudo eliminar el cliente", error.getMessage()));
                 }
             } catch (Exception e) {
                 e.printStackTrace();
@@ -2,6 +2,7 @@ package com.distribuciones.omega.controllers;
 
 import com.distribuciones.omega.service.AlertaStockService;
 import com.distribuciones.omega.utils.AlertUtils;
+import com.distribuciones.omega.utils.TareasUI;
 import javafx.fxml.FXML;
 import javafx.scene.control.Button;
 import javafx.scene.control.Spinner;
@@ -20,49 +21,59 @@ public class ConfiguracionAlertasController {
     @FXML private Button btnCancelar;
     
     private AlertaStockService alertaStockService;
+    private final TareasUI tareas = TareasUI.getInstance();
     
     @FXML
     private void initialize() {
-        alertaStockService = new AlertaStockService();
-        
-        // Configurar spinner de stock mínimo
-        SpinnerValueFactory<Integer> valueFactory = 
-                new SpinnerValueFactory.IntegerSpinnerValueFactory(1, 50, alertaStockService.getStockMinimo());
+        // Configurar spinner de stock mínimo; el valor actual llega al cargar la configuración
+        SpinnerValueFactory.IntegerSpinnerValueFactory valueFactory =
+                new SpinnerValueFactory.IntegerSpinnerValueFactory(1, 50, 1);
         spnStockMinimo.setValueFactory(valueFactory);
         
-        // Cargar email actual
-        txtEmailAdmin.setText(alertaStockService.getEmailAdmin());
-        
-        // Configurar botones
+        // Configurar botones; guardar espera a que se cargue la configuración actual
         btnGuardar.setOnAction(e -> guardarConfiguracion());
         btnCancelar.setOnAction(e -> cerrarVentana());
+        btnGuardar.setDisable(true);
+        tareas.vincular(this, btnGuardar);
+        
+        // Crear el servicio (abre el monitor de stock) en segundo plano
+        tareas.ejecutar(this, "cargar-alertas",
+                AlertaStockService::new,
+                servicio -> {
+                    alertaStockService = servicio;
+                    valueFactory.setValue(servicio.getStockMinimo());
+                    txtEmailAdmin.setText(servicio.getEmailAdmin());
+                    btnGuardar.setDisable(false);
+                });
     }
     
     /**
      * Guarda la configuración de alertas
      */
     private void guardarConfiguracion() {
-        try {
-            int stockMinimo = spnStockMinimo.getValue();
-            String email = txtEmailAdmin.getText().trim();
-            
-            // Validar email
-            if (!email.matches("^[\\w-\\.]+@([\\w-]+\\.)+[\\w-]{2,4}$")) {
-                AlertUtils.mostrarError("Error de validación", "El correo electrónico no es válido");
-                return;
-            }
-            
-            // Guardar configuración
-            alertaStockService.setStockMinimo(stockMinimo);
-            alertaStockService.setEmailAdmin(email);
-            
-            AlertUtils.mostrarInformacion("Configuración guardada", 
-                    "La configuración de alertas ha sido guardada correctamente.");
-            
-            cerrarVentana();
-        } catch (Exception e) {
-            AlertUtils.mostrarError("Error", "Ocurrió un error al guardar la configuración: " + e.getMessage());
+        int stockMinimo = spnStockMinimo.getValue();
+        String email = txtEmailAdmin.getText().trim();
+        
+        // Validar email
+        if (!email.matches("^[\\w-\\.]+@([\\w-]+\\.)+[\\w-]{2,4}$")) {
+            AlertUtils.mostrarError("Error de validación", "El correo electrónico no es válido");
+            return;
         }
+        
+        // Guardar configuración
+        tareas.ejecutar(this, "guardar-alertas",
+                () -> {
+                    alertaStockService.setStockMinimo(stockMinimo);
+                    alertaStockService.setEmailAdmin(email);
+                    return null;
+                },
+                resultado -> {
+                    AlertUtils.mostrarInformacion("Configuración guardada", 
+                            "La configuración de alertas ha sido guardada correctamente.");
+                    cerrarVentana();
+                },
+                error -> AlertUtils.mostrarError("Error",
+                        "Ocurrió un error al guardar la configuración: " + error.getMessage()));
     }
     
     /**
@@ -4,13 +4,15 @@ import com.distribuciones.omega.model.*;
 import com.distribuciones.omega.service.*;
 import com.distribuciones.omega.utils.AlertUtils;
 import com.distribuciones.omega.utils.SessionManager;
+import com.distribuciones.omega.utils.TareasUI;
+import com.distribuciones.omega.utils.Traza;
 
+import javafx.animation.PauseTransition;
 import javafx.beans.property.SimpleDoubleProperty;
 import javafx.beans.property.SimpleIntegerProperty;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
-import javafx.collections.transformation.FilteredList;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
@@ -22,6 +24,7 @@ import javafx.scene.layout.GridPane;
 import javafx.scene.layout.HBox;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 import javafx.util.StringConverter;
 
 import java.io.IOException;
@@ -32,12 +35,18 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Controlador para la generación de cotizaciones
  */
 public class CotizacionController {
 
+    /** Máximo de productos que se muestran en la tabla de búsqueda */
+    private static final Logger LOGGER = Logger.getLogger(CotizacionController.class.getName());
+    private static final int LIMITE_RESULTADOS_BUSQUEDA = 200;
+
     // Componentes de la interfaz
     @FXML private ComboBox<Cliente> cmbCliente;
     @FXML private ComboBox<String> cmbTipoVenta;
@@ -77,15 +86,18 @@ public class CotizacionController {
     
     // Servicios
     private final ClienteService clienteService = new ClienteService();
-    private final InventarioService inventarioService = new InventarioService();
     private final CotizacionService cotizacionService = new CotizacionService();
     private final PromocionService promocionService = new PromocionService();
     private final ContabilidadService contabilidadService = new ContabilidadService();
     private final FacturaService facturaService = new FacturaService();
+    private final PreciosService preciosService = new PreciosService();
+    private final ReservaStockService reservaStockService = ReservaStockService.getInstance();
+    private final BusquedaProductosService busquedaProductosService = BusquedaProductosService.getInstance();
+    private final TareasUI tareas = TareasUI.getInstance();
     
     // Datos
     private ObservableList<ProductoInventario> productosData;
-    private FilteredList<ProductoInventario> productosFiltrados;
+    private PauseTransition esperaBusqueda;
     private ObservableList<ItemCotizacion> itemsCotizacion;
     private List<Promocion> promocionesDisponibles;
     private NumberFormat currencyFormat;
@@ -94,7 +106,9 @@ public class CotizacionController {
     private double descuentoTotal = 0.0;
     private double iva = 0.0;
     private double total = 0.0;
-    private static final double IVA_RATE = 0.12;
+    // Promociones y descuento mayorista aplicados con los botones; se evalúan en cada recálculo
+    private Liquidacion.Ajustes ajustes = Liquidacion.Ajustes.ninguno();
+    private Liquidacion liquidacion;
     
     /**
      * Inicializa el controlador
@@ -127,6 +141,7 @@ public class CotizacionController {
         
         // Configurar tabla de items de cotización
         configurarTablaItems();
+        tareas.vincular(this, tblDetalleCotizacion);
         
         // Configurar búsqueda de productos
         configurarBusquedaProductos();
@@ -170,26 +185,24 @@ public class CotizacionController {
      * Carga la lista de clientes en el ComboBox
      */
     private void cargarClientes() {
-        try {
-            List<Cliente> clientes = clienteService.obtenerTodosClientes();
-            cmbCliente.setItems(FXCollections.observableArrayList(clientes));
+        // Configurar cómo se muestran los clientes en el ComboBox
+        cmbCliente.setConverter(new StringConverter<Cliente>() {
+            @Override
+            public String toString(Cliente cliente) {
+                return cliente == null ? "" : cliente.getNombre();
+            }
             
-            // Configurar cómo se muestran los clientes en el ComboBox
-            cmbCliente.setConverter(new StringConverter<Cliente>() {
-                @Override
-                public String toString(Cliente cliente) {
-                    return cliente == null ? "" : cliente.getNombre();
-                }
-                
-                @Override
-                public Cliente fromString(String string) {
-                    return null; // No es necesario para ComboBox
-                }
-            });
-        } catch (Exception e) {
-            AlertUtils.mostrarError("Error al cargar clientes", 
-                    "No se pudieron cargar los clientes. " + e.getMessage());
-        }
+            @Override
+            public Cliente fromString(String string) {
+                return null; // No es necesario para ComboBox
+            }
+        });
+        
+        tareas.ejecutar(this, "cargar-clientes",
+            () -> clienteService.obtenerTodosClientes(),
+            clientes -> cmbCliente.setItems(FXCollections.observableArrayList(clientes)),
+            error -> AlertUtils.mostrarError("Error al cargar clientes", 
+                    "No se pudieron cargar los clientes. " + error.getMessage()));
     }
     
     /**
@@ -386,56 +399,34 @@ public class CotizacionController {
     }
     
     /**
-     * Configura el filtro de búsqueda de productos
+     * Configura la búsqueda de productos: al escribir se espera una breve pausa
+     * antes de consultar el índice, y el filtro de disponibles se aplica al instante
      */
     private void configurarBusquedaProductos() {
-        productosFiltrados = new FilteredList<>(productosData, p -> true);
+        esperaBusqueda = new PauseTransition(Duration.millis(150));
+        esperaBusqueda.setOnFinished(e -> aplicarFiltroProductos());
         
         txtBuscarProducto.textProperty().addListener((observable, oldValue, newValue) -> {
-            productosFiltrados.setPredicate(producto -> {
-                if (newValue == null || newValue.isEmpty()) {
-                    return mostrarProductoSegunStock(producto);
-                }
-                
-                String lowerCaseFilter = newValue.toLowerCase();
-                
-                if (producto.getCodigo().toLowerCase().contains(lowerCaseFilter)) {
-                    return mostrarProductoSegunStock(producto);
-                } else if (producto.getDescripcion().toLowerCase().contains(lowerCaseFilter)) {
-                    return mostrarProductoSegunStock(producto);
-                }
-                return false;
-            });
+            esperaBusqueda.playFromStart();
         });
         
         chkMostrarSoloDisponibles.selectedProperty().addListener((observable, oldValue, newValue) -> {
-            productosFiltrados.setPredicate(producto -> {
-                if (txtBuscarProducto.getText() == null || txtBuscarProducto.getText().isEmpty()) {
-                    return mostrarProductoSegunStock(producto);
-                }
-                
-                String lowerCaseFilter = txtBuscarProducto.getText().toLowerCase();
-                
-                if (producto.getCodigo().toLowerCase().contains(lowerCaseFilter)) {
-                    return mostrarProductoSegunStock(producto);
-                } else if (producto.getDescripcion().toLowerCase().contains(lowerCaseFilter)) {
-                    return mostrarProductoSegunStock(producto);
-                }
-                return false;
-            });
+            aplicarFiltroProductos();
         });
         
-        tblProductos.setItems(productosFiltrados);
+        tblProductos.setItems(productosData);
     }
     
     /**
-     * Determina si un producto debe mostrarse según su disponibilidad de stock
+     * Muestra los productos que coinciden con el texto de búsqueda y el filtro de stock
      */
-    private boolean mostrarProductoSegunStock(ProductoInventario producto) {
-        if (chkMostrarSoloDisponibles.isSelected()) {
-            return producto.getStock() > 0;
+    private void aplicarFiltroProductos() {
+        if (esperaBusqueda != null) {
+            esperaBusqueda.stop();
         }
-        return true;
+        List<ProductoInventario> productos = busquedaProductosService.buscar(
+                txtBuscarProducto.getText(), chkMostrarSoloDisponibles.isSelected(), LIMITE_RESULTADOS_BUSQUEDA);
+        productosData.setAll(productos);
     }
     
     /**
@@ -443,9 +434,7 @@ public class CotizacionController {
      */
     private void cargarProductos() {
         try {
-            List<ProductoInventario> productos = inventarioService.obtenerProductosDisponibles();
-            productosData.clear();
-            productosData.addAll(productos);
+            aplicarFiltroProductos();
         } catch (Exception e) {
             AlertUtils.mostrarError("Error al cargar productos", 
                     "No se pudieron cargar los productos. " + e.getMessage());
@@ -490,6 +479,10 @@ public class CotizacionController {
         boolean esMayorista = cliente != null && cliente.isMayorista();
         boolean esVentaMayorista = "Venta Mayorista".equals(cmbTipoVenta.getValue());
         btnAplicarDescuentoMayorista.setDisable(!(esMayorista && esVentaMayorista));
+        // El descuento mayorista ya aplicado depende del cliente
+        if (ajustes.isDescuentoMayorista()) {
+            calcularTotales();
+        }
     }
     
     /**
@@ -612,7 +605,7 @@ public class CotizacionController {
             Spinner<Integer> spnCantidad = new Spinner<>(1, item.getProducto().getStock(), item.getCantidad());
             spnCantidad.setEditable(true);
             
-            TextField txtDescuento = new TextField(String.valueOf(item.getDescuento()));
+            TextField txtDescuento = new TextField(String.valueOf(item.getDescuentoManual()));
             txtDescuento.setPromptText("Valor del descuento");
             
             // Crear layout
@@ -679,19 +672,17 @@ public class CotizacionController {
     }
     
     /**
-     * Calcula los totales de la cotización
+     * Calcula los totales de la cotización con PreciosService; la liquidación se
+     * reutiliza al guardar y al facturar
      */
     private void calcularTotales() {
-        subtotal = 0.0;
-        descuentoTotal = 0.0;
-        
-        for (ItemCotizacion item : itemsCotizacion) {
-            subtotal += item.getPrecioUnitario() * item.getCantidad();
-            descuentoTotal += item.getDescuento();
-        }
-        
-        iva = (subtotal - descuentoTotal) * IVA_RATE;
-        total = subtotal - descuentoTotal + iva;
+        liquidacion = preciosService.liquidar(itemsCotizacion,
+                cmbCliente.getSelectionModel().getSelectedItem(), ajustes);
+        subtotal = liquidacion.getSubtotal();
+        descuentoTotal = liquidacion.getDescuento();
+        iva = liquidacion.getIva();
+        total = liquidacion.getTotal();
+        tblDetalleCotizacion.refresh();
         
         // Actualizar etiquetas
         lblSubtotal.setText(currencyFormat.format(subtotal));
@@ -728,18 +719,7 @@ public class CotizacionController {
      */
     @FXML
     private void buscarProductos() {
-        String termino = txtBuscarProducto.getText().trim();
-        if (termino.isEmpty()) {
-            productosFiltrados.setPredicate(producto -> mostrarProductoSegunStock(producto));
-        } else {
-            productosFiltrados.setPredicate(producto -> {
-                if (producto.getCodigo().toLowerCase().contains(termino.toLowerCase()) ||
-                    producto.getDescripcion().toLowerCase().contains(termino.toLowerCase())) {
-                    return mostrarProductoSegunStock(producto);
-                }
-                return false;
-            });
-        }
+        aplicarFiltroProductos();
     }
     
     /**
@@ -794,38 +774,9 @@ public class CotizacionController {
             return;
         }
         
-        // Verificar categorías aplicables
-        List<String> categoriasAplicables = Arrays.asList(
-                promocion.getCategoriasAplicables().split(","));
-        
-        for (ItemCotizacion item : itemsCotizacion) {
-            String categoriaItem = item.getProducto().getCategoria();
-            
-            // Si la promoción aplica a todas las categorías o a la categoría del item
-            if (categoriasAplicables.contains("TODAS") || 
-                    categoriasAplicables.contains(categoriaItem)) {
-                
-                double descuentoActual = item.getDescuento();
-                double nuevoDescuento;
-                
-                if (promocion.isPorcentaje()) {
-                    // Descuento porcentual
-                    double porcentaje = promocion.getValor() / 100.0;
-                    nuevoDescuento = item.getPrecioUnitario() * item.getCantidad() * porcentaje;
-                } else {
-                    // Descuento de valor fijo
-                    nuevoDescuento = promocion.getValor();
-                }
-                
-                // Aplicar el descuento mayor
-                if (nuevoDescuento > descuentoActual) {
-                    item.setDescuento(nuevoDescuento);
-                    item.calcularSubtotal();
-                }
-            }
-        }
-        
-        tblDetalleCotizacion.refresh();
+        // La promoción queda en los ajustes: cada línea de sus productos o categorías
+        // se queda con el mayor descuento, también al cambiar cantidades
+        ajustes = ajustes.conPromocion(promocion);
         calcularTotales();
         
         AlertUtils.mostrarInformacion("Promoción Aplicada", 
@@ -850,16 +801,7 @@ public class CotizacionController {
             return;
         }
         
-        // Aplicar descuento a todos los items (por ejemplo, 10%)
-        double porcentajeDescuento = 0.10; // 10% de descuento para mayoristas
-        
-        for (ItemCotizacion item : itemsCotizacion) {
-            double descuentoMayorista = item.getPrecioUnitario() * item.getCantidad() * porcentajeDescuento;
-            item.setDescuento(descuentoMayorista);
-            item.calcularSubtotal();
-        }
-        
-        tblDetalleCotizacion.refresh();
+        ajustes = ajustes.conDescuentoMayorista();
         calcularTotales();
         
         AlertUtils.mostrarInformacion("Descuento Aplicado", 
@@ -879,7 +821,7 @@ public class CotizacionController {
         }
         
         // Crear diálogo para ingresar descuento
-        TextInputDialog dialog = new TextInputDialog(String.valueOf(item.getDescuento()));
+        TextInputDialog dialog = new TextInputDialog(String.valueOf(item.getDescuentoManual()));
         dialog.setTitle("Descuento Manual");
         dialog.setHeaderText("Aplicar descuento manual para: " + item.getProducto().getDescripcion());
         dialog.setContentText("Valor del descuento:");
@@ -944,24 +886,44 @@ public class CotizacionController {
             return;
         }
         
-        try {
-            Cotizacion cotizacion = crearCotizacion();
-            cotizacion = cotizacionService.guardarCotizacion(cotizacion);
-            
-            // Registrar movimiento contable
-            registrarMovimientoContable(cotizacion, "COTIZACION");
-            
-            AlertUtils.mostrarInformacion("Cotización Guardada", 
-                    "La cotización se ha guardado exitosamente con el número: " + cotizacion.getId());
-            
-            cerrarVentana();
-            
-        } catch (Exception e) {
-            AlertUtils.mostrarError("Error al guardar", 
-                    "No se pudo guardar la cotización: " + e.getMessage());
-        }
+        Cotizacion nueva = crearCotizacion();
+        tareas.ejecutar(this, "guardar-cotizacion",
+            () -> {
+                Cotizacion cotizacion = cotizacionService.guardarCotizacion(nueva);
+                if (cotizacion == null) {
+                    throw new Exception("Error en la base de datos");
+                }
+                
+                // Registrar movimiento contable
+                registrarMovimientoContable(cotizacion, "COTIZACION");
+                
+                // Reservar el stock hasta facturarla, cancelarla o que venza la reserva
+                ResultadoStock reserva = reservaStockService.reservar(cotizacion);
+                return reserva.isExitoso() ? null : reserva.getMensajeFallos();
+            },
+            sinReserva -> {
+                if (sinReserva == null) {
+                    AlertUtils.mostrarInformacion("Cotización Guardada", 
+                            "La cotización se ha guardado exitosamente con el número: " + nueva.getId()
+                            + "\nEl stock queda reservado hasta " + formatearVencimiento(nueva) + ".");
+                } else {
+                    AlertUtils.mostrarAdvertencia("Cotización Guardada sin reserva", 
+                            "La cotización " + nueva.getId() + " se guardó, pero no se pudo reservar el stock:\n"
+                            + sinReserva);
+                }
+                
+                cerrarVentana();
+            },
+            error -> AlertUtils.mostrarError("Error al guardar", 
+                    "No se pudo guardar la cotización: " + error.getMessage()));
     }
  
+    private String formatearVencimiento(Cotizacion cotizacion) {
+        return cotizacion.getReservaVence() != null
+                ? cotizacion.getReservaVence().format(DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm"))
+                : "";
+    }
+    
     /**
      * Guarda la cotización y genera una factura
      */
@@ -971,170 +933,166 @@ public class CotizacionController {
             return;
         }
         
-        try {
+        // Los pasos con la base de datos corren en segundo plano; los diálogos, al terminar
+        Cotizacion nueva = crearCotizacion();
+        tareas.ejecutar(this, "guardar-y-facturar",
+            () -> facturar(nueva),
+            this::mostrarFacturacion,
+            this::mostrarErrorFacturacion);
+    }
+    
+    /**
+     * Resultado de guardar y facturar una cotización
+     */
+    private static final class Facturacion {
+        ResultadoStock reserva;
+        Factura factura;
+        List<ItemFactura> items;
+    }
+    
+    /**
+     * Guarda la cotización, reserva el stock y genera la factura. Corre fuera del hilo de JavaFX.
+     */
+    @SuppressWarnings("try") // Las trazas solo miden el bloque que encierran
+    private Facturacion facturar(Cotizacion cotizacion) throws Exception {
+        Facturacion facturacion = new Facturacion();
+        // Traza de la operación hasta tener la factura, sin los diálogos
+        try (Traza traza = Traza.iniciar("guardarYFacturar")) {
             // 1. Crear y guardar la cotización
-            Cotizacion cotizacion = crearCotizacion();
-            cotizacion = cotizacionService.guardarCotizacion(cotizacion);
+            try (Traza paso = Traza.iniciar("guardarCotizacion")) {
+                cotizacion = cotizacionService.guardarCotizacion(cotizacion);
+            }
             
             // 2. Actualizar la cotización como convertida a orden
             cotizacion.setConvertidaAOrden(true);
-            cotizacionService.actualizarCotizacion(cotizacion);
-            
-            // 3. Verificar disponibilidad de stock para todos los productos
-            boolean stockSuficiente = true;
-            StringBuilder mensajeError = new StringBuilder("No hay suficiente stock para los productos:\n");
-            
-            for (ItemCotizacion item : cotizacion.getItems()) {
-                ProductoInventario producto = item.getProducto();
-                
-                // Debug mejorado para claridad
-                System.out.println("Verificando producto: " + producto.getDescripcion() + 
-                                " (ID: " + producto.getIdProducto() + 
-                                ", Código: " + producto.getCodigo() + 
-                                ", Stock actual: " + producto.getStock() + 
-                                ", Solicitado: " + item.getCantidad() + ")");
-                
-                // Validar disponibilidad usando ambos identificadores para mayor seguridad
-                if (!inventarioService.verificarDisponibilidad(producto, item.getCantidad())) {
-                    stockSuficiente = false;
-                    mensajeError.append("- ").append(producto.getDescripcion())
-                            .append(" (Solicitado: ").append(item.getCantidad())
-                            .append(", Disponible: ").append(producto.getStock()).append(")\n");
-                }
+            try (Traza paso = Traza.iniciar("actualizarCotizacion")) {
+                cotizacionService.actualizarCotizacion(cotizacion);
             }
             
-            if (!stockSuficiente) {
-                Alert alert = new Alert(Alert.AlertType.WARNING);
-                alert.setTitle("Stock Insuficiente");
-                alert.setHeaderText("No hay suficiente stock");
-                alert.setContentText(mensajeError.toString());
-                alert.showAndWait();
-                return;
+            // 3. Reservar el stock de todas las líneas. Mientras la reserva esté vigente
+            //    esas unidades no se ofrecen a otras cotizaciones.
+            try (Traza paso = Traza.iniciar("reservarStock")) {
+                facturacion.reserva = reservaStockService.reservar(cotizacion);
             }
-            
-            // 4. Generar la factura a partir de la cotización
-            List<ItemFactura> itemsParaFactura = convertirItemsParaFactura();
-            Factura factura = facturaService.generarFacturaDesdeContizacion(cotizacion, itemsParaFactura);
-            if (factura == null || factura.getId() == 0) {
-                throw new Exception("No se pudo generar la factura. Verifique los datos e intente nuevamente.");
+            if (!facturacion.reserva.isExitoso()) {
+                return facturacion;
             }
             
-            // 5. Actualizar stock - Con corrección para usar el objeto producto completo
-            boolean todosActualizados = true;
-            for (ItemCotizacion item : cotizacion.getItems()) {
-                ProductoInventario producto = item.getProducto();
-                
-                // Actualizar usando el objeto producto completo
-                if (!inventarioService.actualizarStockProducto(producto, item.getCantidad())) {
-                    System.err.println("Error al actualizar stock para: " + producto.getDescripcion());
-                    todosActualizados = false;
-                } else {
-                    System.out.println("Stock actualizado correctamente para: " + producto.getDescripcion() + 
-                                    " (Nuevo stock: " + (producto.getStock() - item.getCantidad()) + ")");
-                }
+            // 4. Generar la factura: confirma la reserva descontando el stock en la base de datos
+            facturacion.items = convertirItemsParaFactura(cotizacion);
+            try (Traza paso = Traza.iniciar("generarFactura")) {
+                facturacion.factura = facturaService.generarFacturaDesdeContizacion(cotizacion, facturacion.items);
             }
-            
-            // 6. Mostrar mensaje de factura generada
-            Alert alert = new Alert(Alert.AlertType.INFORMATION);
-            alert.setTitle("Factura Generada");
-            alert.setHeaderText("Operación Exitosa");
-            alert.setContentText("La factura se ha generado exitosamente con el número: " + factura.getNumeroFactura());
-            
-            ButtonType btnProcederPago = new ButtonType("Proceder al Pago");
-            ButtonType btnCerrar = new ButtonType("Cerrar", ButtonBar.ButtonData.CANCEL_CLOSE);
-            alert.getButtonTypes().setAll(btnProcederPago, btnCerrar);
-            
-            Optional<ButtonType> result = alert.showAndWait();
-
-                        // Agregamos logs para depuración
-            System.out.println("\n============= ITEMS PARA FACTURA =============");
-            System.out.println("Preparando ítems para factura: " + factura.getNumeroFactura());
-               
-            
-            // Log de ítems para debug
-            System.out.println("Ítems convertidos: " + itemsParaFactura.size());
-            for (ItemFactura item : itemsParaFactura) {
-                System.out.println("Item: Producto=" + item.getProducto().getIdProducto() 
-                    + ", Desc=" + item.getProducto().getDescripcion()
-                    + ", Cantidad=" + item.getCantidad()
-                    + ", PrecioU=" + item.getPrecioUnitario()
-                    + ", Subtotal=" + item.getSubtotal());
+            if (facturacion.factura == null || facturacion.factura.getId() == 0) {
+                // 5. Si la factura no se generó, liberar lo que quede reservado
+                reservaStockService.liberar(cotizacion);
+                throw new Exception("No se pudo generar la factura. Verifique los datos e intente nuevamente.");
             }
-            System.out.println("=============================================\n");
-            
-            if (result.isPresent() && result.get() == btnProcederPago) {
-                // 7. Navegar a la pantalla de pago - IMPLEMENTACIÓN CORREGIDA
+        }
+        return facturacion;
+    }
+    
+    /**
+     * Muestra el resultado de la facturación y, si el usuario lo pide, la pantalla de pago
+     */
+    private void mostrarFacturacion(Facturacion facturacion) {
+        if (!facturacion.reserva.isExitoso()) {
+            Alert alert = new Alert(Alert.AlertType.WARNING);
+            alert.setTitle("Stock Insuficiente");
+            alert.setHeaderText("No hay suficiente stock");
+            alert.setContentText("No hay suficiente stock para los productos:\n" + facturacion.reserva.getMensajeFallos());
+            alert.showAndWait();
+            return;
+        }
+        
+        // 6. Mostrar mensaje de factura generada
+        Alert alert = new Alert(Alert.AlertType.INFORMATION);
+        alert.setTitle("Factura Generada");
+        alert.setHeaderText("Operación Exitosa");
+        alert.setContentText("La factura se ha generado exitosamente con el número: " + facturacion.factura.getNumeroFactura());
+        
+        ButtonType btnProcederPago = new ButtonType("Proceder al Pago");
+        ButtonType btnCerrar = new ButtonType("Cerrar", ButtonBar.ButtonData.CANCEL_CLOSE);
+        alert.getButtonTypes().setAll(btnProcederPago, btnCerrar);
+        
+        Optional<ButtonType> result = alert.showAndWait();
+
+        if (result.isPresent() && result.get() == btnProcederPago) {
+            // 7. Navegar a la pantalla de pago - IMPLEMENTACIÓN CORREGIDA
+            try {
+                // Cargar el FXML de pago con manejo explícito de errores
+                FXMLLoader loader = new FXMLLoader();
+                loader.setLocation(getClass().getResource("/fxml/pago.fxml"));
+                Parent root = loader.load();
+                
+                // Aplicar CSS programáticamente solo si existe
+                Scene scene = new Scene(root);
                 try {
-                    // Cargar el FXML de pago con manejo explícito de errores
-                    FXMLLoader loader = new FXMLLoader();
-                    loader.setLocation(getClass().getResource("/fxml/pago.fxml"));
-                    Parent root = loader.load();
-                    
-                    // Aplicar CSS programáticamente solo si existe
-                    Scene scene = new Scene(root);
-                    try {
-                        String cssPath = "/css/pago.css";
-                        if (getClass().getResource(cssPath) != null) {
-                            scene.getStylesheets().add(getClass().getResource(cssPath).toExternalForm());
-                        }
-                    } catch (Exception cssEx) {
-                        System.err.println("Advertencia: No se pudo cargar el CSS: " + cssEx.getMessage());
-                        // Continuar sin el CSS
-                    }
-                    
-                    // Obtener el controlador y pasarle la factura
-                    PagoController pagoController = loader.getController();
-                    pagoController.inicializarDatos(factura, itemsParaFactura);
-                    
-                    // Crear un nuevo Stage para mostrar la pantalla de pago
-                    Stage pagoStage = new Stage();
-                    pagoStage.setTitle("Pago de Factura");
-                    pagoStage.setScene(scene);
-                    pagoStage.initModality(Modality.APPLICATION_MODAL);
-                    pagoStage.initOwner(txtVendedor.getScene().getWindow());
-                    
-                    // Mostrar y esperar
-                    pagoStage.showAndWait();
-                    
-                    // Al cerrar la ventana de pago, limpiar formulario si el pago fue exitoso
-                    if (factura.isPagada()) {
-                        limpiarFormulario();
+                    String cssPath = "/css/pago.css";
+                    if (getClass().getResource(cssPath) != null) {
+                        scene.getStylesheets().add(getClass().getResource(cssPath).toExternalForm());
                     }
-                    
-                } catch (IOException e) {
-                    e.printStackTrace();
-                    AlertUtils.mostrarError("Error de navegación", 
-                            "No se pudo abrir la pantalla de pagos: " + e.getMessage());
+                } catch (Exception cssEx) {
+                    System.err.println("Advertencia: No se pudo cargar el CSS: " + cssEx.getMessage());
+                    // Continuar sin el CSS
                 }
-            } else {
-                // 8. Limpiar el formulario si no se va a pagar ahora
-                limpiarFormulario();
+                
+                // Obtener el controlador y pasarle la factura
+                PagoController pagoController = loader.getController();
+                pagoController.inicializarDatos(facturacion.factura, facturacion.items);
+                
+                // Crear un nuevo Stage para mostrar la pantalla de pago
+                Stage pagoStage = new Stage();
+                pagoStage.setTitle("Pago de Factura");
+                pagoStage.setScene(scene);
+                pagoStage.initModality(Modality.APPLICATION_MODAL);
+                pagoStage.initOwner(txtVendedor.getScene().getWindow());
+                
+                // Mostrar y esperar
+                pagoStage.showAndWait();
+                
+                // Al cerrar la ventana de pago, limpiar formulario si el pago fue exitoso
+                if (facturacion.factura.isPagada()) {
+                    limpiarFormulario();
+                }
+                
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "No se pudo abrir la pantalla de pagos", e);
+                AlertUtils.mostrarError("Error de navegación", 
+                        "No se pudo abrir la pantalla de pagos: " + e.getMessage());
             }
-            
-        } catch (Exception e) {
-            e.printStackTrace();
-            Alert alert = new Alert(Alert.AlertType.ERROR);
-            alert.setTitle("Error al Facturar");
-            alert.setHeaderText("Ha ocurrido un error");
-            alert.setContentText("No se pudo generar la factura: " + e.getMessage());
-            
-            StringWriter sw = new StringWriter();
-            PrintWriter pw = new PrintWriter(sw);
-            e.printStackTrace(pw);
-            String exceptionText = sw.toString();
-            
-            TextArea textArea = new TextArea(exceptionText);
-            textArea.setEditable(false);
-            textArea.setWrapText(true);
-            textArea.setMaxWidth(Double.MAX_VALUE);
-            textArea.setMaxHeight(Double.MAX_VALUE);
-            
-            alert.getDialogPane().setExpandableContent(textArea);
-            alert.getDialogPane().setExpanded(true);
-            alert.showAndWait();
+        } else {
+            // 8. Limpiar el formulario si no se va a pagar ahora
+            limpiarFormulario();
         }
     }
     
+    /**
+     * Muestra el error de la facturación con su traza
+     */
+    private void mostrarErrorFacturacion(Throwable e) {
+        LOGGER.log(Level.SEVERE, "No se pudo generar la factura", e);
+        Alert alert = new Alert(Alert.AlertType.ERROR);
+        alert.setTitle("Error al Facturar");
+        alert.setHeaderText("Ha ocurrido un error");
+        alert.setContentText("No se pudo generar la factura: " + e.getMessage());
+        
+        StringWriter sw = new StringWriter();
+        PrintWriter pw = new PrintWriter(sw);
+        e.printStackTrace(pw);
+        String exceptionText = sw.toString();
+        
+        TextArea textArea = new TextArea(exceptionText);
+        textArea.setEditable(false);
+        textArea.setWrapText(true);
+        textArea.setMaxWidth(Double.MAX_VALUE);
+        textArea.setMaxHeight(Double.MAX_VALUE);
+        
+        alert.getDialogPane().setExpandableContent(textArea);
+        alert.getDialogPane().setExpanded(true);
+        alert.showAndWait();
+    }
+    
     /**
      * Limpia todos los campos del formulario y restaura el estado inicial
      */
@@ -1148,7 +1106,6 @@ public class CotizacionController {
             // 2. Limpiar búsqueda de productos
             txtBuscarProducto.clear();
             chkMostrarSoloDisponibles.setSelected(true); // Valor predeterminado en FXML
-            productosFiltrados.setPredicate(producto -> mostrarProductoSegunStock(producto)); // Aplicar filtro original
             
             // 3. Limpiar tabla de detalle de cotización
             itemsCotizacion.clear();
@@ -1164,6 +1121,8 @@ public class CotizacionController {
             descuentoTotal = 0.0;
             iva = 0.0;
             total = 0.0;
+            ajustes = Liquidacion.Ajustes.ninguno();
+            liquidacion = null;
             
             lblSubtotal.setText(currencyFormat.format(0.0));
             lblDescuentoTotal.setText(currencyFormat.format(0.0));
@@ -1228,6 +1187,7 @@ public class CotizacionController {
         cotizacion.setDescuento(descuentoTotal); // Usar setDescuento en lugar de setDescuentoTotal
         cotizacion.setIva(iva);
         cotizacion.setTotal(total);
+        cotizacion.setLiquidacion(liquidacion);
         
         // Generar número de cotización basado en la fecha y un identificador aleatorio
         String numeroCotizacion = "COT-" + 
@@ -1256,7 +1216,7 @@ public class CotizacionController {
                 contabilidadService.registrarMovimientoFactura(factura);
             }
         } catch (Exception e) {
-            System.err.println("Error al registrar movimiento contable: " + e.getMessage());
+            LOGGER.log(Level.WARNING, "Error al registrar movimiento contable de " + tipoDocumento, e);
         }
     }
     
@@ -1271,19 +1231,7 @@ public class CotizacionController {
     /**
      * Convierte los items de cotización a items de factura
      */
-    private List<ItemFactura> convertirItemsParaFactura() {
-        List<ItemFactura> itemsFactura = new ArrayList<>();
-        
-        for (ItemCotizacion itemCotizacion : itemsCotizacion) {
-            ItemFactura itemFactura = new ItemFactura();
-            itemFactura.setProducto(itemCotizacion.getProducto());
-            itemFactura.setCantidad(itemCotizacion.getCantidad());
-            itemFactura.setPrecioUnitario(itemCotizacion.getPrecioUnitario());
-            itemFactura.setDescuento(itemCotizacion.getDescuento());
-            itemFactura.setSubtotal(itemCotizacion.getSubtotal());
-            itemsFactura.add(itemFactura);
-        }
-        
-        return itemsFactura;
+    private List<ItemFactura> convertirItemsParaFactura(Cotizacion cotizacion) {
+        return preciosService.liquidar(cotizacion).itemsFactura(cotizacion.getItems());
     }
 }
\ No newline at end of file
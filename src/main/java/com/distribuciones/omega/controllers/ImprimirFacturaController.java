@@ -3,8 +3,10 @@ package com.distribuciones.omega.controllers;
 import com.distribuciones.omega.model.Factura;
 import com.distribuciones.omega.model.ItemFactura;
 import com.distribuciones.omega.service.ConfiguracionService;
+import com.distribuciones.omega.service.FacturaService;
 import com.distribuciones.omega.utils.AlertUtils;
 import com.distribuciones.omega.utils.PrintUtil;
+import com.distribuciones.omega.utils.TareasUI;
 
 import javafx.beans.property.SimpleDoubleProperty;
 import javafx.beans.property.SimpleIntegerProperty;
@@ -53,6 +55,7 @@ public class ImprimirFacturaController {
     
     private Factura factura;
     private ConfiguracionService configService;
+    private final TareasUI tareas = TareasUI.getInstance();
     private NumberFormat currencyFormat;
     private DateTimeFormatter dateFormatter;
     
@@ -67,6 +70,7 @@ public class ImprimirFacturaController {
         
         // Configurar tabla de items
         configurarTabla();
+        tareas.vincular(this, tblItems);
     }
     
     /**
@@ -138,24 +142,6 @@ public class ImprimirFacturaController {
         lblRuc.setText(factura.getCliente().getId() != null ? factura.getCliente().getId() : "");
         lblVendedor.setText(factura.getVendedor().getNombre());
         
-        // Cargar items - Asegurarnos de que los items estén cargados
-        if (factura.getItems() == null || factura.getItems().isEmpty()) {
-            // Si no hay items, intentar cargarlos nuevamente desde la BD
-            try {
-                com.distribuciones.omega.service.FacturaService facturaService = new com.distribuciones.omega.service.FacturaService();
-                Factura facturaCompleta = facturaService.obtenerFacturaPorId(factura.getId());
-                if (facturaCompleta != null && facturaCompleta.getItems() != null) {
-                    this.factura = facturaCompleta;
-                }
-            } catch (Exception e) {
-                System.err.println("Error al cargar items de factura: " + e.getMessage());
-            }
-        }
-        
-        // Poblar la tabla con los items
-        ObservableList<ItemFactura> items = FXCollections.observableArrayList(this.factura.getItems());
-        tblItems.setItems(items);
-        
         // Actualizar totales
         lblSubtotal.setText(currencyFormat.format(factura.getSubtotal()));
         lblDescuento.setText(currencyFormat.format(factura.getDescuento()));
@@ -171,33 +157,62 @@ public class ImprimirFacturaController {
             lblEstadoPago.getStyleClass().add("estado-pendiente");
         }
         
-        // Preparar vista web para impresión
-        prepararVistaWeb();
+        // Los ítems faltantes y los datos de la empresa se leen en segundo plano
+        Factura mostrada = factura;
+        tareas.ejecutar(this, "preparar-impresion",
+                () -> prepararImpresion(mostrada),
+                this::mostrarImpresion,
+                error -> AlertUtils.mostrarError("Error",
+                        "No se pudo preparar la vista de impresión: " + error.getMessage()));
     }
     
     /**
-     * Prepara la vista web con el contenido de la factura para imprimir
+     * Datos de la vista de impresión leídos de la base de datos
      */
-    private void prepararVistaWeb() {
-        try {
-            // Cargar configuración de la empresa
-            Map<String, String> configEmpresa = new HashMap<>();
-            configEmpresa.put("nombre", configService.getConfiguracion("EMPRESA_NOMBRE", "Distribuciones Omega"));
-            configEmpresa.put("direccion", configService.getConfiguracion("EMPRESA_DIRECCION", "Dirección no configurada"));
-            configEmpresa.put("telefono", configService.getConfiguracion("EMPRESA_TELEFONO", "Teléfono no configurado"));
-            configEmpresa.put("email", configService.getConfiguracion("EMPRESA_EMAIL", "Email no configurado"));
-            configEmpresa.put("ruc", configService.getConfiguracion("EMPRESA_RUC", "RUC no configurado"));
-            
-            // Generar HTML para impresión
-            String htmlContent = generarHtmlFactura(configEmpresa);
-            
-            // Cargar HTML en WebView
-            webView.getEngine().loadContent(htmlContent);
-            
-        } catch (Exception e) {
-            e.printStackTrace();
-            AlertUtils.mostrarError("Error", "No se pudo preparar la vista de impresión: " + e.getMessage());
+    private static final class Impresion {
+        Factura factura;
+        Map<String, String> configEmpresa;
+    }
+    
+    /**
+     * Lee los ítems de la factura si no vienen cargados y la configuración de la
+     * empresa. Corre fuera del hilo de JavaFX.
+     */
+    private Impresion prepararImpresion(Factura factura) {
+        Impresion impresion = new Impresion();
+        impresion.factura = factura;
+        if (factura.getItems() == null || factura.getItems().isEmpty()) {
+            // Si no hay items, intentar cargarlos nuevamente desde la BD
+            Factura facturaCompleta = new FacturaService().obtenerFacturaPorId(factura.getId());
+            if (facturaCompleta != null && facturaCompleta.getItems() != null) {
+                impresion.factura = facturaCompleta;
+            }
         }
+        
+        Map<String, String> configEmpresa = new HashMap<>();
+        configEmpresa.put("nombre", configService.getConfiguracion("EMPRESA_NOMBRE", "Distribuciones Omega"));
+        configEmpresa.put("direccion", configService.getConfiguracion("EMPRESA_DIRECCION", "Dirección no configurada"));
+        configEmpresa.put("telefono", configService.getConfiguracion("EMPRESA_TELEFONO", "Teléfono no configurado"));
+        configEmpresa.put("email", configService.getConfiguracion("EMPRESA_EMAIL", "Email no configurado"));
+        configEmpresa.put("ruc", configService.getConfiguracion("EMPRESA_RUC", "RUC no configurado"));
+        impresion.configEmpresa = configEmpresa;
+        return impresion;
+    }
+    
+    /**
+     * Muestra los ítems y carga en la vista web el contenido de la factura para imprimir
+     */
+    private void mostrarImpresion(Impresion impresion) {
+        this.factura = impresion.factura;
+        
+        // Poblar la tabla con los items
+        ObservableList<ItemFactura> items = factura.getItems() != null
+                ? FXCollections.observableArrayList(factura.getItems())
+                : FXCollections.observableArrayList();
+        tblItems.setItems(items);
+        
+        // Generar HTML para impresión y cargarlo en el WebView
+        webView.getEngine().loadContent(generarHtmlFactura(impresion.configEmpresa));
     }
     
     /**
@@ -3,6 +3,7 @@ package com.distribuciones.omega.controllers;
 import com.distribuciones.omega.model.ProductoInventario;
 import com.distribuciones.omega.service.InventarioService;
 import com.distribuciones.omega.utils.AlertUtils;
+import com.distribuciones.omega.utils.TareasUI;
 import com.distribuciones.omega.service.AlertaStockService;
 
 import javafx.beans.property.SimpleStringProperty;
@@ -46,6 +47,7 @@ public class InventarioController {
     
     private InventarioService inventarioService;
     private AlertaStockService alertaStockService = new AlertaStockService();
+    private final TareasUI tareas = TareasUI.getInstance();
     private ObservableList<ProductoInventario> productosData;
     private FilteredList<ProductoInventario> productosFiltrados;
     private NumberFormat currencyFormatter = NumberFormat.getCurrencyInstance(new Locale("es", "MX"));
@@ -70,6 +72,7 @@ public class InventarioController {
             
             // Asegurarnos que la tabla tenga sus items asignados
             tableInventario.setItems(productosFiltrados);
+            tareas.vincular(this, tableInventario);
             
             // Cargar datos
             System.out.println("Cargando datos de inventario...");
@@ -113,19 +116,27 @@ public class InventarioController {
      * Carga los datos del inventario
      */
     private void loadInventario() {
-        try {
-            System.out.println("Método loadInventario() iniciado");
-            
-            // Obtener datos con manejo de excepciones
-            List<ProductoInventario> productos = new ArrayList<>();
-            try {
-                productos = inventarioService.obtenerProductosDisponibles();
+        System.out.println("Método loadInventario() iniciado");
+        
+        // Obtener datos en segundo plano; si falla se muestra el inventario vacío
+        tareas.ejecutar(this, "cargar-inventario",
+            () -> inventarioService.obtenerProductosDisponibles(),
+            productos -> {
                 System.out.println("Obtenidos " + productos.size() + " productos del servicio");
-            } catch (Exception e) {
-                System.err.println("Error obteniendo productos: " + e.getMessage());
-                e.printStackTrace();
-            }
-            
+                mostrarInventario(productos);
+            },
+            error -> {
+                System.err.println("Error obteniendo productos: " + error.getMessage());
+                error.printStackTrace();
+                mostrarInventario(new ArrayList<>());
+            });
+    }
+    
+    /**
+     * Muestra en la tabla los productos obtenidos
+     */
+    private void mostrarInventario(List<ProductoInventario> productos) {
+        try {
             // Limpiar y cargar datos
             if (productosData != null) {
                 productosData.clear();
@@ -242,15 +253,19 @@ public class InventarioController {
     // Modificación del método que actualiza el inventario
     private void actualizarInventario(ProductoInventario producto) {
         // Código existente para actualizar
-        if (inventarioService.actualizarProducto(producto)) {
-            AlertUtils.mostrarInformacion("Éxito", "Producto actualizado correctamente");
-            loadInventario(); // Reemplazar cargarDatos() con loadInventario()
-            
-            // Verificar stock después de actualizar
-            alertaStockService.verificarProducto(producto);
-        } else {
-            AlertUtils.mostrarError("Error", "No se pudo actualizar el producto");
-        }
+        tareas.ejecutar(this, "actualizar-producto",
+            () -> inventarioService.actualizarProducto(producto),
+            actualizado -> {
+                if (actualizado) {
+                    AlertUtils.mostrarInformacion("Éxito", "Producto actualizado correctamente");
+                    loadInventario(); // Reemplazar cargarDatos() con loadInventario()
+                    
+                    // Verificar stock después de actualizar
+                    alertaStockService.verificarProducto(producto);
+                } else {
+                    AlertUtils.mostrarError("Error", "No se pudo actualizar el producto");
+                }
+            });
     }
     
     @FXML
@@ -2,6 +2,7 @@ package com.distribuciones.omega.controllers;
 
 import com.distribuciones.omega.model.Usuario;
 import com.distribuciones.omega.service.UsuarioService;
+import com.distribuciones.omega.utils.TareasUI;
 import javafx.animation.FadeTransition;
 import javafx.fxml.FXML;
 import javafx.scene.control.Button;
@@ -24,10 +25,13 @@ public class LoginController {
     
     // Instancia del servicio
     private final UsuarioService usuarioService = new UsuarioService();
+    private final TareasUI tareas = TareasUI.getInstance();
 
     @FXML
     private void initialize() {
         btnLogin.setOnAction(evt -> doLogin());
+        // Mientras se verifica el usuario no se puede volver a pulsar
+        btnLogin.disableProperty().bind(tareas.ocupado(this));
         
         // Permitir presionar Enter para iniciar sesión
         txtPassword.setOnAction(evt -> doLogin());
@@ -47,9 +51,17 @@ public class LoginController {
             return;
         }
         
-        // Intento de autenticación usando el servicio
-        Usuario usuario = usuarioService.autenticar(user, pass);
-
+        // Intento de autenticación usando el servicio, fuera del hilo de JavaFX
+        tareas.ejecutar(this, "autenticar",
+            () -> usuarioService.autenticar(user, pass),
+            this::abrirDashboard);
+    }
+    
+    /**
+     * Abre el dashboard si la autenticación fue correcta
+     * @param usuario Usuario autenticado, o null si los datos no coinciden
+     */
+    private void abrirDashboard(Usuario usuario) {
         if (usuario != null) {
             try {
                 FXMLLoader loader = new FXMLLoader(
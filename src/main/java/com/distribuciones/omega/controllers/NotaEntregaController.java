@@ -6,6 +6,7 @@ import com.distribuciones.omega.service.ConfiguracionService;
 import com.distribuciones.omega.service.NotaEntregaService;
 import com.distribuciones.omega.utils.AlertUtils;
 import com.distribuciones.omega.utils.PrintUtil;
+import com.distribuciones.omega.utils.TareasUI;
 
 import javafx.collections.FXCollections;
 import javafx.fxml.FXML;
@@ -55,6 +56,7 @@ public class NotaEntregaController {
     private Factura factura;
     private NotaEntregaService notaEntregaService;
     private ConfiguracionService configuracionService;
+    private final TareasUI tareas = TareasUI.getInstance();
     private Document documentoGenerado;
     
     /**
@@ -69,6 +71,7 @@ public class NotaEntregaController {
         colCodigo.setCellValueFactory(new PropertyValueFactory<>("codigo"));
         colDescripcion.setCellValueFactory(new PropertyValueFactory<>("descripcion"));
         colCantidad.setCellValueFactory(new PropertyValueFactory<>("cantidad"));
+        tareas.vincular(this, webView);
         
         // Generar número de nota automáticamente
         generarNumeroNota();
@@ -100,7 +103,8 @@ public class NotaEntregaController {
     }
     
     /**
-     * Genera un número de nota de entrega automáticamente
+     * Genera un número de nota de entrega automáticamente. El botón de generar se
+     * habilita cuando llega el número; si no se puede obtener, se escribe a mano.
      */
     private void generarNumeroNota() {
         // Formato: NE-YYYYMMDD-XXX donde XXX es un número secuencial
@@ -108,10 +112,19 @@ public class NotaEntregaController {
         String fecha = dateFormat.format(new Date());
         
         // Obtener el último número secuencial y sumar 1
-        int ultimoNumero = notaEntregaService.obtenerUltimoNumeroSecuencial();
-        String numeroSecuencial = String.format("%03d", ultimoNumero + 1);
-        
-        txtNumeroNota.setText("NE-" + fecha + "-" + numeroSecuencial);
+        btnGenerar.setDisable(true);
+        tareas.ejecutar(this, "numero-nota",
+                () -> notaEntregaService.obtenerUltimoNumeroSecuencial(),
+                ultimoNumero -> {
+                    String numeroSecuencial = String.format("%03d", ultimoNumero + 1);
+                    txtNumeroNota.setText("NE-" + fecha + "-" + numeroSecuencial);
+                    btnGenerar.setDisable(false);
+                },
+                error -> {
+                    btnGenerar.setDisable(false);
+                    AlertUtils.mostrarAdvertencia("Número de nota",
+                            "No se pudo obtener el siguiente número; ingréselo manualmente.");
+                });
     }
     
     /**
@@ -132,15 +145,25 @@ public class NotaEntregaController {
             return;
         }
         
+        // Generar el documento HTML de la nota de entrega en segundo plano
+        String numeroNota = txtNumeroNota.getText();
+        String observaciones = txtObservaciones.getText();
+        String responsableEntrega = txtResponsableEntrega.getText();
+        String responsableRecepcion = txtResponsableRecepcion.getText();
+        tareas.ejecutar(this, "generar-nota",
+                () -> notaEntregaService.generarDocumentoNotaEntrega(
+                        numeroNota, factura, observaciones, responsableEntrega, responsableRecepcion),
+                this::mostrarNotaGenerada,
+                error -> AlertUtils.mostrarError("Error",
+                        "No se pudo generar la nota de entrega: " + error.getMessage()));
+    }
+    
+    /**
+     * Muestra la nota generada y deja la ventana lista para imprimir o guardar
+     */
+    private void mostrarNotaGenerada(Document documento) {
         try {
-            // Generar el documento HTML de la nota de entrega
-            documentoGenerado = notaEntregaService.generarDocumentoNotaEntrega(
-                    txtNumeroNota.getText(),
-                    factura,
-                    txtObservaciones.getText(),
-                    txtResponsableEntrega.getText(),
-                    txtResponsableRecepcion.getText()
-            );
+            documentoGenerado = documento;
             
             // Mostrar en el WebView
             WebEngine webEngine = webView.getEngine();
@@ -192,7 +215,10 @@ public class NotaEntregaController {
                                 "La nota de entrega se ha enviado a la impresora.");
                         
                         // Guardar registro de impresión
-                        notaEntregaService.registrarImpresion(txtNumeroNota.getText(), factura.getId());
+                        String numeroNota = txtNumeroNota.getText();
+                        tareas.ejecutar(this, "registrar-impresion",
+                                () -> notaEntregaService.registrarImpresion(numeroNota, factura.getId()),
+                                registrada -> { });
                     } else {
                         AlertUtils.mostrarAdvertencia("Error de impresión", 
                                 "No se pudo completar la impresión.");
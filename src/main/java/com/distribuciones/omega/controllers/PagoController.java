@@ -3,6 +3,8 @@ package com.distribuciones.omega.controllers;
 import com.distribuciones.omega.model.*;
 import com.distribuciones.omega.service.*;
 import com.distribuciones.omega.utils.AlertUtils;
+import com.distribuciones.omega.utils.TareasUI;
+import com.distribuciones.omega.utils.Traza;
 
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
@@ -17,11 +19,15 @@ import java.text.NumberFormat;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
 import java.util.Locale;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Controlador para la pantalla de pago de facturas
  */
 public class PagoController {
+
+    private static final Logger LOGGER = Logger.getLogger(PagoController.class.getName());
     
     // Campos para mostrar la información de la factura
     @FXML private Label lblNumeroFactura;
@@ -45,6 +51,7 @@ public class PagoController {
     
     // Servicios
     private final FacturaService facturaService = new FacturaService();
+    private final TareasUI tareas = TareasUI.getInstance();
     
     // Datos
     private Factura factura;
@@ -160,7 +167,8 @@ public class PagoController {
     }
     
     /**
-     * Inicializa los datos con la factura que se va a pagar
+     * Inicializa los datos con la factura que se va a pagar. Si la factura llegó sin
+     * ítems se reparan en segundo plano y se muestra al terminar.
      * @param factura Factura a pagar
      * @param itemsCompraActual Lista de ítems de la compra actual (si están disponibles)
      */
@@ -173,49 +181,78 @@ public class PagoController {
         this.factura = factura;
         
         // Verificar si la factura tiene ítems
-        if (factura.getItems() == null || factura.getItems().isEmpty()) {
-            try {
-                // Si tenemos los ítems de la compra actual, usarlos para reparar
-                if (itemsCompraActual != null && !itemsCompraActual.isEmpty()) {
-                    System.out.println("Reparando factura con los ítems de la compra actual...");
-                    boolean reparada = facturaService.repararFacturaConItems(factura.getId(), itemsCompraActual);
-                    
-                    if (reparada) {
-                        // Recargar la factura con los ítems reparados
-                        factura = facturaService.obtenerFacturaPorId(factura.getId());
-                        this.factura = factura;
-                        System.out.println("Factura reparada exitosamente con ítems reales.");
-                    } else {
-                        AlertUtils.mostrarAdvertencia("Advertencia", 
-                            "No se pudieron guardar los ítems reales de la compra. Se usarán ejemplos si están disponibles.");
-                        
-                        // Intentar reparar con datos de ejemplo como fallback
-                        boolean reparadaConEjemplos = facturaService.diagnosticarYRepararFactura(factura.getId());
-                        if (reparadaConEjemplos) {
-                            factura = facturaService.obtenerFacturaPorId(factura.getId());
-                            this.factura = factura;
-                        }
-                    }
-                } else {
-                    // Si no tenemos ítems actuales, usamos el método de diagnóstico y reparación normal
-                    System.out.println("La factura no tiene ítems y no hay compra actual. Intentando reparar con ejemplos...");
-                    boolean reparada = facturaService.diagnosticarYRepararFactura(factura.getId());
-                    
-                    if (reparada) {
-                        // Recargar la factura con los ítems reparados
-                        factura = facturaService.obtenerFacturaPorId(factura.getId());
-                        this.factura = factura;
-                    } else {
-                        AlertUtils.mostrarAdvertencia("Advertencia", 
-                            "No se pudieron cargar los ítems de la factura. Los datos mostrados pueden estar incompletos.");
-                    }
+        if (factura.getItems() != null && !factura.getItems().isEmpty()) {
+            mostrarFactura(factura);
+            return;
+        }
+        
+        tareas.ejecutar(this, "reparar-factura",
+            () -> repararItems(factura, itemsCompraActual),
+            reparacion -> {
+                if (reparacion.aviso != null) {
+                    AlertUtils.mostrarAdvertencia("Advertencia", reparacion.aviso);
                 }
-            } catch (Exception e) {
-                System.err.println("Error al intentar reparar la factura: " + e.getMessage());
-                e.printStackTrace();
+                this.factura = reparacion.factura;
+                mostrarFactura(reparacion.factura);
+            },
+            error -> {
+                LOGGER.log(Level.WARNING, "Error al intentar reparar la factura " + factura.getId(), error);
+                mostrarFactura(factura);
+            });
+    }
+    
+    /**
+     * Guarda los ítems de una factura que llegó sin ellos (los de la compra actual o,
+     * si no hay, los de ejemplo) y la vuelve a leer. Se ejecuta fuera del hilo de JavaFX.
+     */
+    private Reparacion repararItems(Factura factura, List<ItemFactura> itemsCompraActual) {
+        // Si tenemos los ítems de la compra actual, usarlos para reparar
+        if (itemsCompraActual != null && !itemsCompraActual.isEmpty()) {
+            LOGGER.info("Reparando la factura " + factura.getId() + " con los ítems de la compra actual");
+            if (facturaService.repararFacturaConItems(factura.getId(), itemsCompraActual)) {
+                LOGGER.info("Factura " + factura.getId() + " reparada con los ítems reales");
+                return new Reparacion(recargar(factura), null);
+            }
+            
+            // Intentar reparar con datos de ejemplo como fallback
+            String aviso = "No se pudieron guardar los ítems reales de la compra. Se usarán ejemplos si están disponibles.";
+            if (facturaService.diagnosticarYRepararFactura(factura.getId())) {
+                return new Reparacion(recargar(factura), aviso);
             }
+            return new Reparacion(factura, aviso);
         }
         
+        // Si no tenemos ítems actuales, usamos el método de diagnóstico y reparación normal
+        LOGGER.info("La factura " + factura.getId() + " no tiene ítems y no hay compra actual; se repara con ejemplos");
+        if (facturaService.diagnosticarYRepararFactura(factura.getId())) {
+            return new Reparacion(recargar(factura), null);
+        }
+        return new Reparacion(factura, 
+            "No se pudieron cargar los ítems de la factura. Los datos mostrados pueden estar incompletos.");
+    }
+    
+    private Factura recargar(Factura factura) {
+        Factura recargada = facturaService.obtenerFacturaPorId(factura.getId());
+        return recargada != null ? recargada : factura;
+    }
+    
+    /**
+     * Factura tras reparar sus ítems y, si algo falló, el aviso para el usuario
+     */
+    private static final class Reparacion {
+        private final Factura factura;
+        private final String aviso;
+        
+        Reparacion(Factura factura, String aviso) {
+            this.factura = factura;
+            this.aviso = aviso;
+        }
+    }
+    
+    /**
+     * Muestra los datos de la factura y habilita el pago
+     */
+    private void mostrarFactura(Factura factura) {
         // Formatear fecha
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm");
         String fechaFormateada = factura.getFecha().format(formatter);
@@ -284,6 +321,7 @@ public class PagoController {
      * Procesa el pago de la factura
      */
     @FXML
+    @SuppressWarnings("try") // La traza solo mide el bloque que encierra
     private void procesarPago() {
         try {
             // Validar entrada
@@ -319,36 +357,47 @@ public class PagoController {
                 }
             }
             
-            // 4. Actualizar la factura en la base de datos
+            // 4. Actualizar la factura en la base de datos, fuera del hilo de JavaFX
             factura.setFormaPago(formaPago);
-            boolean actualizado = facturaService.actualizarEstadoPago(factura.getId(), true);
-            
-            if (actualizado) {
-                AlertUtils.mostrarInformacion("Pago Procesado", 
-                        "El pago ha sido procesado correctamente");
+            tareas.ejecutar(this, "procesar-pago",
+                () -> {
+                    try (Traza traza = Traza.iniciar("procesarPago")) {
+                        return facturaService.actualizarEstadoPago(factura.getId(), true);
+                    }
+                },
+                actualizado -> {
+                    if (actualizado) {
+                        AlertUtils.mostrarInformacion("Pago Procesado", 
+                                "El pago ha sido procesado correctamente");
                 
-                // 5. Actualizar la interfaz
-                btnImprimir.setDisable(false);
-                btnProcesarPago.setDisable(true);
-                txtMontoPago.setDisable(true);
-                cmbFormaPago.setDisable(true);
+                        // 5. Actualizar la interfaz
+                        btnImprimir.setDisable(false);
+                        btnProcesarPago.setDisable(true);
+                        txtMontoPago.setDisable(true);
+                        cmbFormaPago.setDisable(true);
                 
-                // Mostrar fecha de pago
-                if (factura.getFechaPago() != null) {
-                    DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
-                    String fechaPagoFormateada = factura.getFechaPago().format(formatter);
-                    lblFechaPago.setText("Fecha de Pago: " + fechaPagoFormateada);
-                    lblFechaPago.setVisible(true);
-                }
-            } else {
-                AlertUtils.mostrarError("Error", 
-                        "No se pudo procesar el pago. Intente nuevamente");
-            }
+                        // Mostrar fecha de pago
+                        if (factura.getFechaPago() != null) {
+                            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
+                            String fechaPagoFormateada = factura.getFechaPago().format(formatter);
+                            lblFechaPago.setText("Fecha de Pago: " + fechaPagoFormateada);
+                            lblFechaPago.setVisible(true);
+                        }
+                    } else {
+                        AlertUtils.mostrarError("Error", 
+                                "No se pudo procesar el pago. Intente nuevamente");
+                    }
+                },
+                error -> {
+                    AlertUtils.mostrarError("Error", 
+                            "Error al procesar el pago: " + error.getMessage());
+                    LOGGER.log(Level.SEVERE, "Error al procesar el pago de la factura " + factura.getId(), error);
+                });
             
         } catch (Exception e) {
             AlertUtils.mostrarError("Error", 
                     "Error al procesar el pago: " + e.getMessage());
-            e.printStackTrace();
+            LOGGER.log(Level.SEVERE, "Error al procesar el pago", e);
         }
     }
     
@@ -357,10 +406,22 @@ public class PagoController {
      */
     @FXML
     private void imprimirFactura() {
+        // Obtener la factura actualizada de la base de datos
+        tareas.ejecutar(this, "imprimir-factura",
+            () -> facturaService.obtenerFacturaPorId(factura.getId()),
+            this::mostrarImpresion,
+            error -> {
+                AlertUtils.mostrarError("Error", 
+                        "Error al preparar la impresión: " + error.getMessage());
+                LOGGER.log(Level.SEVERE, "Error al obtener la factura " + factura.getId() + " para imprimir", error);
+            });
+    }
+    
+    /**
+     * Abre la ventana de impresión con la factura obtenida
+     */
+    private void mostrarImpresion(Factura facturaActualizada) {
         try {
-            // Obtener la factura actualizada de la base de datos
-            Factura facturaActualizada = facturaService.obtenerFacturaPorId(factura.getId());
-            
             if (facturaActualizada == null) {
                 AlertUtils.mostrarError("Error", "No se pudo obtener la información actualizada de la factura");
                 return;
@@ -385,7 +446,7 @@ public class PagoController {
         } catch (Exception e) {
             AlertUtils.mostrarError("Error", 
                     "Error al preparar la impresión: " + e.getMessage());
-            e.printStackTrace();
+            LOGGER.log(Level.SEVERE, "Error al abrir la impresión de la factura", e);
         }
     }
     
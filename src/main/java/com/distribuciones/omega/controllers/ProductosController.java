@@ -6,6 +6,7 @@ import com.distribuciones.omega.model.InsumoOficina;
 import com.distribuciones.omega.model.ProductoMobilario;
 import com.distribuciones.omega.model.ProductoTecnologico;
 import com.distribuciones.omega.service.ProductoService;
+import com.distribuciones.omega.utils.TareasUI;
 
 import javafx.beans.property.SimpleDoubleProperty;
 import javafx.beans.property.SimpleIntegerProperty;
@@ -45,6 +46,7 @@ public class ProductosController {
     @FXML private Label lblValorInventario;
     
     private ProductoService productoService;
+    private final TareasUI tareas = TareasUI.getInstance();
     private ObservableList<Producto> productosList = FXCollections.observableArrayList();
     private FilteredList<Producto> filteredProductos;
     
@@ -59,6 +61,7 @@ public class ProductosController {
             
             // Configurar la tabla
             setupTable();
+            tareas.vincular(this, tableProductos);
             
             // Cargar datos
             loadProductos();
@@ -98,15 +101,14 @@ public class ProductosController {
     }
     
     private void loadProductos() {
-        try {
-            productosList.clear();
-            productosList.addAll(productoService.getAllProductos());
-            
-            updateStats();
-        } catch (Exception e) {
-            e.printStackTrace();
-            showError("Error de carga", "No se pudieron cargar los productos", e.getMessage());
-        }
+        productosList.clear();
+        tareas.ejecutar(this, "cargar-productos",
+            () -> productoService.getAllProductos(),
+            productos -> {
+                productosList.setAll(productos);
+                updateStats();
+            },
+            error -> showError("Error de carga", "No se pudieron cargar los productos", error.getMessage()));
     }
     
     private void updateStats() {
@@ -164,40 +166,27 @@ public class ProductosController {
         Dialog<Producto> dialog = crearDialogoProducto(null, categoriaSeleccionada);
         
         Optional<Producto> result = dialog.showAndWait();
-        result.ifPresent(producto -> {
-            try {
-                productoService.saveProducto(producto);
-                productosList.add(producto);
-                updateStats();
-                
-                // Opción "añadir otro del mismo tipo"
-                boolean agregarOtro = mostrarConfirmacion(
-                    "Producto agregado", 
-                    "El producto " + producto.getNombre() + " ha sido agregado exitosamente.",
-                    "¿Desea agregar otro producto de tipo " + categoriaSeleccionada.getDisplayName() + "?"
-                );
-                
-                if (agregarOtro) {
-                    handleNuevoProductoMismaCategoria(categoriaSeleccionada);
-                }
-                
-            } catch (Exception e) {
-                e.printStackTrace();
-                showError("Error al agregar", "No se pudo agregar el producto", e.getMessage());
-            }
-        });
+        result.ifPresent(producto -> guardarProducto(producto, categoriaSeleccionada));
     }
     
     private void handleNuevoProductoMismaCategoria(Categoria categoria) {
         Dialog<Producto> dialog = crearDialogoProducto(null, categoria);
         
         Optional<Producto> result = dialog.showAndWait();
-        result.ifPresent(producto -> {
-            try {
-                productoService.saveProducto(producto);
+        result.ifPresent(producto -> guardarProducto(producto, categoria));
+    }
+    
+    /**
+     * Guarda el producto en segundo plano y, al terminar, ofrece agregar otro de la misma categoría
+     */
+    private void guardarProducto(Producto producto, Categoria categoria) {
+        tareas.ejecutar(this, "guardar-producto",
+            () -> productoService.saveProducto(producto),
+            guardado -> {
                 productosList.add(producto);
                 updateStats();
                 
+                // Opción "añadir otro del mismo tipo"
                 boolean agregarOtro = mostrarConfirmacion(
                     "Producto agregado", 
                     "El producto " + producto.getNombre() + " ha sido agregado exitosamente.",
@@ -207,12 +196,8 @@ public class ProductosController {
                 if (agregarOtro) {
                     handleNuevoProductoMismaCategoria(categoria);
                 }
-                
-            } catch (Exception e) {
-                e.printStackTrace();
-                showError("Error al agregar", "No se pudo agregar el producto", e.getMessage());
-            }
-        });
+            },
+            error -> showError("Error al agregar", "No se pudo agregar el producto", error.getMessage()));
     }
     
     private void handleEditarProducto() {
@@ -227,26 +212,23 @@ public class ProductosController {
         
         Optional<Producto> result = dialog.showAndWait();
         result.ifPresent(productoActualizado -> {
-            try {
-                boolean actualizado = productoService.updateProducto(productoActualizado);
-                
-                if (actualizado) {
-                    // Actualizar en la lista
-                    int index = productosList.indexOf(productoSeleccionado);
-                    if (index >= 0) {
-                        productosList.set(index, productoActualizado);
+            tareas.ejecutar(this, "actualizar-producto",
+                () -> productoService.updateProducto(productoActualizado),
+                actualizado -> {
+                    if (actualizado) {
+                        // Actualizar en la lista
+                        int index = productosList.indexOf(productoSeleccionado);
+                        if (index >= 0) {
+                            productosList.set(index, productoActualizado);
+                        }
+                        
+                        updateStats();
+                    } else {
+                        showError("Error al actualizar", "No se pudo actualizar el producto", 
+                                 "El producto con ID " + productoActualizado.getId() + " no existe.");
                     }
-                    
-                    updateStats();
-                } else {
-                    showError("Error al actualizar", "No se pudo actualizar el producto", 
-                             "El producto con ID " + productoActualizado.getId() + " no existe.");
-                }
-                
-            } catch (Exception e) {
-                e.printStackTrace();
-                showError("Error al actualizar", "No se pudo actualizar el producto", e.getMessage());
-            }
+                },
+                error -> showError("Error al actualizar", "No se pudo actualizar el producto", error.getMessage()));
         });
     }
     
@@ -265,20 +247,18 @@ public class ProductosController {
         );
         
         if (confirmar) {
-            try {
-                boolean eliminado = productoService.deleteProducto(productoSeleccionado.getId());
-                
-                if (eliminado) {
-                    productosList.remove(productoSeleccionado);
-                    updateStats();
-                } else {
-                    showError("Error al eliminar", "No se pudo eliminar el producto", 
-                             "El producto con ID " + productoSeleccionado.getId() + " no existe.");
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-                showError("Error al eliminar", "No se pudo eliminar el producto", e.getMessage());
-            }
+            tareas.ejecutar(this, "eliminar-producto",
+                () -> productoService.deleteProducto(productoSeleccionado.getId()),
+                eliminado -> {
+                    if (eliminado) {
+                        productosList.remove(productoSeleccionado);
+                        updateStats();
+                    } else {
+                        showError("Error al eliminar", "No se pudo eliminar el producto", 
+                                 "El producto con ID " + productoSeleccionado.getId() + " no existe.");
+                    }
+                },
+                error -> showError("Error al eliminar", "No se pudo eliminar el producto", error.getMessage()));
         }
     }
     
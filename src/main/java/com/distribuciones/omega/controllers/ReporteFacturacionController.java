@@ -1,17 +1,23 @@
 package com.distribuciones.omega.controllers;
 
 import com.distribuciones.omega.model.Factura;
+import com.distribuciones.omega.model.ItemFactura;
 import com.distribuciones.omega.model.Usuario;
 import com.distribuciones.omega.service.FacturaService;
 import com.distribuciones.omega.service.UsuarioService;
 import com.distribuciones.omega.utils.AlertUtils;
+import com.distribuciones.omega.utils.Dinero;
 import com.distribuciones.omega.utils.ExportarUtil;
 import com.distribuciones.omega.utils.GraficoUtil;
+import com.distribuciones.omega.utils.ListaPaginada;
+import com.distribuciones.omega.utils.TareasUI;
 
+import javafx.application.Platform;
 import javafx.beans.property.SimpleDoubleProperty;
+import javafx.beans.property.SimpleIntegerProperty;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
+import javafx.concurrent.Task;
 import javafx.fxml.FXML;
 import javafx.scene.Scene;
 import javafx.scene.chart.BarChart;
@@ -22,21 +28,47 @@ import javafx.stage.Modality;
 import javafx.stage.Stage;
 
 import java.io.File;
+import java.math.RoundingMode;
 import java.text.NumberFormat;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Controlador para generar reportes de facturación por vendedor
  */
 public class ReporteFacturacionController {
 
+    private static final Logger LOGGER = Logger.getLogger(ReporteFacturacionController.class.getName());
+
+    // Columnas del reporte exportado o impreso
+    private static final String[] COLUMNAS_REPORTE = {"Nº Factura", "Fecha", "Cliente", "Vendedor", "Total", "Estado"};
+    
+    // La tabla pide las facturas por páginas; se guardan las últimas usadas
+    private static final int FACTURAS_POR_PAGINA = 100;
+    private static final int PAGINAS_EN_MEMORIA = 20;
+    
+    // Cada cuántas facturas leídas se actualiza el avance del PDF o la impresión
+    private static final int FILAS_POR_AVANCE = 500;
+    
+    // Un solo hilo carga las páginas de todos los reportes, en orden
+    private static final ExecutorService CARGA_PAGINAS = Executors.newSingleThreadExecutor(r -> {
+        Thread hilo = new Thread(r, "paginas-reporte");
+        hilo.setDaemon(true);
+        return hilo;
+    });
+
     @FXML private ComboBox<Usuario> cmbVendedor;
     @FXML private DatePicker dpFechaInicio;
     @FXML private DatePicker dpFechaFin;
@@ -59,9 +91,16 @@ public class ReporteFacturacionController {
     
     private FacturaService facturaService;
     private UsuarioService usuarioService;
+    private final TareasUI tareas = TareasUI.getInstance();
     private DateTimeFormatter dateFormatter;
     private NumberFormat currencyFormat;
-    private ObservableList<Factura> facturasData;
+    private ListaPaginada<Factura> facturasData;
+    private int totalFacturas;
+    
+    // Filtros del último reporte generado, para exportarlo leyendo directamente de la BD
+    private LocalDateTime reporteDesde;
+    private LocalDateTime reporteHasta;
+    private Long reporteVendedorId;
     
     /**
      * Inicializa el controlador
@@ -72,7 +111,6 @@ public class ReporteFacturacionController {
         usuarioService = new UsuarioService();
         dateFormatter = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm");
         currencyFormat = NumberFormat.getCurrencyInstance(new Locale("es", "EC"));
-        facturasData = FXCollections.observableArrayList();
         
         // Configurar controles de fecha
         dpFechaInicio.setValue(LocalDate.now().minusMonths(1));
@@ -80,6 +118,7 @@ public class ReporteFacturacionController {
         
         // Configurar tabla
         configurarTabla();
+        tareas.vincular(this, tblFacturas);
         
         // Cargar vendedores
         cargarVendedores();
@@ -97,23 +136,29 @@ public class ReporteFacturacionController {
      * Configura las columnas de la tabla de facturas
      */
     private void configurarTabla() {
-        colNumeroFactura.setCellValueFactory(cellData -> 
-                new SimpleStringProperty(cellData.getValue().getNumeroFactura()));
+        // Las filas cuya página todavía se está cargando llegan como null
+        colNumeroFactura.setCellValueFactory(cellData -> new SimpleStringProperty(
+                cellData.getValue() != null ? cellData.getValue().getNumeroFactura() : "Cargando..."));
                 
-        colFecha.setCellValueFactory(cellData -> 
-                new SimpleStringProperty(cellData.getValue().getFecha().format(dateFormatter)));
+        colFecha.setCellValueFactory(cellData -> new SimpleStringProperty(
+                cellData.getValue() != null ? cellData.getValue().getFecha().format(dateFormatter) : null));
                 
-        colCliente.setCellValueFactory(cellData -> 
-                new SimpleStringProperty(cellData.getValue().getCliente().getNombre()));
+        colCliente.setCellValueFactory(cellData -> new SimpleStringProperty(
+                cellData.getValue() != null && cellData.getValue().getCliente() != null
+                        ? cellData.getValue().getCliente().getNombre() : null));
                 
-        colVendedor.setCellValueFactory(cellData -> 
-                new SimpleStringProperty(cellData.getValue().getVendedor().getNombre()));
+        colVendedor.setCellValueFactory(cellData -> new SimpleStringProperty(
+                cellData.getValue() != null && cellData.getValue().getVendedor() != null
+                        ? cellData.getValue().getVendedor().getNombre() : null));
                 
-        colTotal.setCellValueFactory(cellData -> 
-                new SimpleDoubleProperty(cellData.getValue().getTotal()).asObject());
+        colTotal.setCellValueFactory(cellData -> cellData.getValue() != null
+                ? new SimpleDoubleProperty(cellData.getValue().getTotal()).asObject() : null);
                 
-        colEstado.setCellValueFactory(cellData -> 
-                new SimpleStringProperty(cellData.getValue().isPagada() ? "Pagada" : "Pendiente"));
+        colEstado.setCellValueFactory(cellData -> cellData.getValue() != null
+                ? new SimpleStringProperty(cellData.getValue().isPagada() ? "Pagada" : "Pendiente") : null);
+        
+        // El orden lo da la consulta (fecha descendente); la lista paginada no se reordena
+        tblFacturas.getColumns().forEach(columna -> columna.setSortable(false));
                 
         // Formato de moneda para columna de total
         colTotal.setCellFactory(tc -> new TableCell<Factura, Double>() {
@@ -147,45 +192,51 @@ public class ReporteFacturacionController {
             }
         });
         
-        tblFacturas.setItems(facturasData);
+        // Doble clic: detalle de la factura, con sus ítems cargados en ese momento
+        tblFacturas.setRowFactory(tv -> {
+            TableRow<Factura> fila = new TableRow<>();
+            fila.setOnMouseClicked(e -> {
+                if (e.getClickCount() == 2 && fila.getItem() != null) {
+                    mostrarDetalleFactura(fila.getItem());
+                }
+            });
+            return fila;
+        });
     }
     
     /**
      * Carga los vendedores al ComboBox
      */
     private void cargarVendedores() {
-        try {
-            List<Usuario> vendedores = usuarioService.obtenerVendedores();
-            cmbVendedor.setItems(FXCollections.observableArrayList(vendedores));
-            
-            // Configurar visualización de vendedores
-            cmbVendedor.setCellFactory(lv -> new ListCell<Usuario>() {
-                @Override
-                protected void updateItem(Usuario usuario, boolean empty) {
-                    super.updateItem(usuario, empty);
-                    if (empty || usuario == null) {
-                        setText(null);
-                    } else {
-                        setText(usuario.getNombre());
-                    }
+        // Configurar visualización de vendedores
+        cmbVendedor.setCellFactory(lv -> new ListCell<Usuario>() {
+            @Override
+            protected void updateItem(Usuario usuario, boolean empty) {
+                super.updateItem(usuario, empty);
+                if (empty || usuario == null) {
+                    setText(null);
+                } else {
+                    setText(usuario.getNombre());
                 }
-            });
-            
-            cmbVendedor.setButtonCell(new ListCell<Usuario>() {
-                @Override
-                protected void updateItem(Usuario usuario, boolean empty) {
-                    super.updateItem(usuario, empty);
-                    if (empty || usuario == null) {
-                        setText(null);
-                    } else {
-                        setText(usuario.getNombre());
-                    }
+            }
+        });
+        
+        cmbVendedor.setButtonCell(new ListCell<Usuario>() {
+            @Override
+            protected void updateItem(Usuario usuario, boolean empty) {
+                super.updateItem(usuario, empty);
+                if (empty || usuario == null) {
+                    setText(null);
+                } else {
+                    setText(usuario.getNombre());
                 }
-            });
-            
-        } catch (Exception e) {
-            AlertUtils.mostrarError("Error", "No se pudieron cargar los vendedores: " + e.getMessage());
-        }
+            }
+        });
+        
+        tareas.ejecutar(this, "cargar-vendedores",
+            () -> usuarioService.obtenerVendedores(),
+            vendedores -> cmbVendedor.setItems(FXCollections.observableArrayList(vendedores)),
+            error -> AlertUtils.mostrarError("Error", "No se pudieron cargar los vendedores: " + error.getMessage()));
     }
     
     /**
@@ -217,22 +268,31 @@ public class ReporteFacturacionController {
                 vendedor = cmbVendedor.getSelectionModel().getSelectedItem();
             }
             
-            // Obtener facturas según filtros
-            List<Factura> facturas;
-            if (vendedor != null) {
-                facturas = facturaService.obtenerFacturasPorVendedorYRango(vendedor.getIdUsuario(), fechaInicio, fechaFin);
-            } else {
-                facturas = facturaService.obtenerFacturasPorRango(fechaInicio, fechaFin);
-            }
-            
-            facturasData.clear();
-            facturasData.addAll(facturas);
+            Long vendedorId = vendedor != null ? vendedor.getIdUsuario() : null;
             
-            // Calcular estadísticas
-            actualizarEstadisticasReporte(facturas);
+            // Solo se cuentan y suman en la base de datos; las filas las pide la tabla por páginas
+            Task<long[]> tarea = new Task<>() {
+                @Override
+                protected long[] call() {
+                    return new long[] {
+                            facturaService.contarFacturasPorRango(vendedorId, fechaInicio, fechaFin),
+                            facturaService.sumarTotalesPorRango(vendedorId, fechaInicio, fechaFin)};
+                }
+            };
+            tarea.setOnSucceeded(e -> {
+                long[] resumen = tarea.getValue();
+                mostrarReporte(vendedorId, fechaInicio, fechaFin, (int) resumen[0], resumen[1]);
+            });
+            tarea.setOnFailed(e -> {
+                Throwable error = tarea.getException();
+                AlertUtils.mostrarError("Error al generar reporte", 
+                        "No se pudo generar el reporte: " + (error != null ? error.getMessage() : ""));
+                if (error != null) {
+                    error.printStackTrace();
+                }
+            });
             
-            // Generar gráficos
-            generarGraficos(facturas);
+            tareas.ejecutar(this, "generar-reporte", tarea);
             
         } catch (Exception e) {
             AlertUtils.mostrarError("Error al generar reporte", 
@@ -241,38 +301,62 @@ public class ReporteFacturacionController {
         }
     }
     
+    /**
+     * Muestra un reporte ya contado: la tabla queda sobre una lista paginada que
+     * pide la primera página al instante y las demás a medida que se desplaza
+     */
+    private void mostrarReporte(Long vendedorId, LocalDateTime fechaInicio, LocalDateTime fechaFin,
+                                int cantidad, long totalCentavos) {
+        if (facturasData != null) {
+            facturasData.cerrar();
+        }
+        facturasData = new ListaPaginada<>(cantidad, FACTURAS_POR_PAGINA, PAGINAS_EN_MEMORIA,
+                (despuesDe, limite) -> facturaService.obtenerPaginaFacturasPorRango(
+                        vendedorId, fechaInicio, fechaFin, despuesDe, limite),
+                CARGA_PAGINAS, Platform::runLater);
+        tblFacturas.setItems(facturasData);
+        totalFacturas = cantidad;
+        reporteDesde = fechaInicio;
+        reporteHasta = fechaFin;
+        reporteVendedorId = vendedorId;
+        
+        // Calcular estadísticas
+        actualizarEstadisticasReporte(cantidad, totalCentavos);
+        
+        // Generar gráficos
+        generarGraficos(cantidad);
+    }
+    
     /**
      * Actualiza las estadísticas del reporte
-     * @param facturas Lista de facturas
+     * @param cantidad Número de facturas
+     * @param totalCentavos Total facturado en centavos
      */
-    private void actualizarEstadisticasReporte(List<Factura> facturas) {
-        if (facturas.isEmpty()) {
+    private void actualizarEstadisticasReporte(int cantidad, long totalCentavos) {
+        if (cantidad == 0) {
             lblTotalFacturado.setText(currencyFormat.format(0));
             lblTotalFacturas.setText("0");
             lblPromedioFactura.setText(currencyFormat.format(0));
             return;
         }
         
-        // Calcular total facturado
-        double totalFacturado = facturas.stream()
-                .mapToDouble(Factura::getTotal)
-                .sum();
+        double totalFacturado = Dinero.aDouble(totalCentavos);
                 
         // Calcular promedio por factura
-        double promedioFactura = totalFacturado / facturas.size();
+        double promedioFactura = Dinero.aDouble(Dinero.dividir(totalCentavos, cantidad, RoundingMode.HALF_UP));
         
         // Actualizar etiquetas
         lblTotalFacturado.setText(currencyFormat.format(totalFacturado));
-        lblTotalFacturas.setText(String.valueOf(facturas.size()));
+        lblTotalFacturas.setText(String.valueOf(cantidad));
         lblPromedioFactura.setText(currencyFormat.format(promedioFactura));
     }
     
     /**
      * Genera gráficos según los datos
-     * @param facturas Lista de facturas
+     * @param cantidad Número de facturas del reporte
      */
-    private void generarGraficos(List<Factura> facturas) {
-        if (facturas.isEmpty()) {
+    private void generarGraficos(int cantidad) {
+        if (cantidad == 0) {
             pnlGraficos.setVisible(false);
             return;
         }
@@ -281,121 +365,273 @@ public class ReporteFacturacionController {
         
         // Generar gráfico de barras por vendedor
         if (chkTodosVendedores.isSelected()) {
-            generarGraficoVendedores(facturas);
+            generarGraficoVendedores();
         } else {
-            generarGraficoVentasDiarias(facturas);
+            generarGraficoVentasDiarias();
         }
     }
     
     /**
-     * Genera gráfico comparativo de vendedores
-     * @param facturas Lista de facturas
+     * Genera gráfico comparativo de vendedores a partir de las ventas diarias acumuladas,
+     * consultadas en segundo plano
      */
-    private void generarGraficoVendedores(List<Factura> facturas) {
-        // Agrupar por vendedor
-        Map<String, Double> ventasPorVendedor = facturas.stream()
-                .collect(Collectors.groupingBy(
-                        f -> f.getVendedor().getNombre(),
-                        Collectors.summingDouble(Factura::getTotal)));
-        
-        // Generar gráfico
-        GraficoUtil.generarGraficoBarras(
-                chartFacturacion, 
-                "Facturación por Vendedor", 
-                "Vendedor", 
-                "Total Facturado ($)",
-                ventasPorVendedor);
+    private void generarGraficoVendedores() {
+        LocalDate desde = dpFechaInicio.getValue();
+        LocalDate hasta = dpFechaFin.getValue();
+        tareas.ejecutar(this, "grafico-vendedores-" + desde + "-" + hasta,
+                () -> facturaService.obtenerVentasPorVendedor(desde, hasta),
+                ventasPorVendedor -> GraficoUtil.generarGraficoBarras(
+                        chartFacturacion, 
+                        "Facturación por Vendedor", 
+                        "Vendedor", 
+                        "Total Facturado ($)",
+                        ventasPorVendedor));
     }
     
     /**
-     * Genera gráfico de ventas diarias para un vendedor
-     * @param facturas Lista de facturas
+     * Genera gráfico de ventas diarias para un vendedor a partir de las ventas diarias
+     * acumuladas, consultadas en segundo plano
      */
-    private void generarGraficoVentasDiarias(List<Factura> facturas) {
-        // Agrupar por fecha
+    private void generarGraficoVentasDiarias() {
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy");
-        Map<String, Double> ventasPorFecha = facturas.stream()
-                .collect(Collectors.groupingBy(
-                        f -> f.getFecha().toLocalDate().format(formatter),
-                        Collectors.summingDouble(Factura::getTotal)));
-        
-        // Generar gráfico
-        GraficoUtil.generarGraficoBarras(
-                chartFacturacion, 
-                "Ventas Diarias", 
-                "Fecha", 
-                "Total Facturado ($)",
-                ventasPorFecha);
+        Long vendedorId = reporteVendedorId;
+        LocalDate desde = dpFechaInicio.getValue();
+        LocalDate hasta = dpFechaFin.getValue();
+        tareas.ejecutar(this, "grafico-dias-" + vendedorId + "-" + desde + "-" + hasta,
+                () -> {
+                    Map<String, Double> ventasPorFecha = new LinkedHashMap<>();
+                    facturaService.obtenerVentasDiarias(vendedorId, desde, hasta)
+                            .forEach((dia, total) -> ventasPorFecha.put(dia.format(formatter), total));
+                    return ventasPorFecha;
+                },
+                ventasPorFecha -> GraficoUtil.generarGraficoBarras(
+                        chartFacturacion, 
+                        "Ventas Diarias", 
+                        "Fecha", 
+                        "Total Facturado ($)",
+                        ventasPorFecha));
     }
     
     /**
-     * Exporta el reporte a Excel
+     * Exporta el reporte a Excel o CSV. Las facturas se leen de la base de datos
+     * fila a fila y se escriben en streaming en segundo plano, mostrando el avance.
      */
     @FXML
     private void exportarReporte() {
-        if (facturasData.isEmpty()) {
+        if (totalFacturas == 0) {
             AlertUtils.mostrarAdvertencia("Sin datos", 
                     "No hay datos para exportar. Primero genere un reporte.");
             return;
         }
         
-        try {
-            FileChooser fileChooser = new FileChooser();
-            fileChooser.setTitle("Guardar Reporte");
-            fileChooser.getExtensionFilters().add(
-                    new FileChooser.ExtensionFilter("Archivos Excel", "*.xlsx"));
-            
-            // Sugerir nombre de archivo
-            String nombreArchivo = "Reporte_Facturacion_";
-            if (!chkTodosVendedores.isSelected() && cmbVendedor.getValue() != null) {
-                nombreArchivo += cmbVendedor.getValue().getNombre().replace(" ", "_") + "_";
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Guardar Reporte");
+        fileChooser.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter("Archivos Excel", "*.xlsx"),
+                new FileChooser.ExtensionFilter("Archivos CSV", "*.csv"));
+        
+        // Sugerir nombre de archivo
+        String nombreArchivo = "Reporte_Facturacion_";
+        if (!chkTodosVendedores.isSelected() && cmbVendedor.getValue() != null) {
+            nombreArchivo += cmbVendedor.getValue().getNombre().replace(" ", "_") + "_";
+        }
+        nombreArchivo += dpFechaInicio.getValue().toString() + "_a_" + dpFechaFin.getValue().toString();
+        
+        fileChooser.setInitialFileName(nombreArchivo + ".xlsx");
+        
+        File file = fileChooser.showSaveDialog(pnlGraficos.getScene().getWindow());
+        if (file == null) {
+            return;
+        }
+        boolean csv = file.getName().toLowerCase().endsWith(".csv");
+        
+        // Preparar datos para exportar
+        String titulo = "Reporte de Facturación";
+        String subtitulo = "Período: " + dpFechaInicio.getValue().toString() + " al " + dpFechaFin.getValue().toString();
+        if (!chkTodosVendedores.isSelected() && cmbVendedor.getValue() != null) {
+            subtitulo += " - Vendedor: " + cmbVendedor.getValue().getNombre();
+        }
+        String subtituloFinal = subtitulo;
+        
+        // Preparar estadísticas
+        Map<String, String> estadisticas = new HashMap<>();
+        estadisticas.put("Total Facturado", lblTotalFacturado.getText());
+        estadisticas.put("Cantidad de Facturas", lblTotalFacturas.getText());
+        estadisticas.put("Promedio por Factura", lblPromedioFactura.getText());
+        
+        LocalDateTime desde = reporteDesde;
+        LocalDateTime hasta = reporteHasta;
+        Long vendedorId = reporteVendedorId;
+        
+        Task<Long> tarea = new Task<>() {
+            @Override
+            protected Long call() throws Exception {
+                updateMessage("Contando facturas...");
+                long total = facturaService.contarFacturasPorRango(vendedorId, desde, hasta);
+                
+                ExportarUtil.OrigenFilas origen = destino ->
+                        facturaService.recorrerFacturasPorRango(vendedorId, desde, hasta, f -> {
+                            if (isCancelled()) {
+                                throw new CancellationException();
+                            }
+                            destino.accept(filaReporte(f));
+                        });
+                ExportarUtil.ProgresoExportacion progreso = (filas, totalFilas) -> {
+                    updateProgress(filas, totalFilas);
+                    updateMessage("Exportando " + filas + " de " + totalFilas + " facturas...");
+                };
+                
+                return csv
+                    ? ExportarUtil.exportarCSV(file.getAbsolutePath(), COLUMNAS_REPORTE, origen, total, progreso)
+                    : ExportarUtil.exportarExcel(file.getAbsolutePath(), titulo, subtituloFinal, estadisticas,
+                            COLUMNAS_REPORTE, origen, total, progreso);
             }
-            nombreArchivo += dpFechaInicio.getValue().toString() + "_a_" + dpFechaFin.getValue().toString();
-            
-            fileChooser.setInitialFileName(nombreArchivo + ".xlsx");
-            
-            File file = fileChooser.showSaveDialog(pnlGraficos.getScene().getWindow());
-            if (file == null) {
-                return;
+        };
+        
+        Stage dialogoProgreso = crearDialogoProgreso("Exportando reporte", tarea);
+        tarea.setOnSucceeded(e -> {
+            dialogoProgreso.close();
+            AlertUtils.mostrarInformacion("Exportación exitosa", 
+                    "Se exportaron " + tarea.getValue() + " facturas a:\n" + file.getAbsolutePath());
+        });
+        tarea.setOnFailed(e -> {
+            dialogoProgreso.close();
+            Throwable error = tarea.getException();
+            LOGGER.log(Level.WARNING, "No se pudo exportar el reporte", error);
+            AlertUtils.mostrarError("Error al exportar", 
+                    "No se pudo exportar el reporte: " + (error != null ? error.getMessage() : ""));
+        });
+        tarea.setOnCancelled(e -> dialogoProgreso.close());
+        
+        tareas.ejecutar(this, "exportar-reporte", tarea);
+        dialogoProgreso.show();
+    }
+    
+    /**
+     * Ventana modal con el avance de una exportación o impresión y un botón para cancelarla
+     */
+    private Stage crearDialogoProgreso(String titulo, Task<?> tarea) {
+        Stage dialogStage = new Stage();
+        dialogStage.setTitle(titulo);
+        dialogStage.initModality(Modality.WINDOW_MODAL);
+        dialogStage.initOwner(tblFacturas.getScene().getWindow());
+        
+        Label lblMensaje = new Label();
+        lblMensaje.textProperty().bind(tarea.messageProperty());
+        
+        ProgressBar barra = new ProgressBar();
+        barra.setPrefWidth(320);
+        barra.progressProperty().bind(tarea.progressProperty());
+        
+        Button btnCancelar = new Button("Cancelar");
+        btnCancelar.setOnAction(e -> tarea.cancel());
+        
+        VBox content = new VBox(10, lblMensaje, barra, btnCancelar);
+        content.setPadding(new javafx.geometry.Insets(20));
+        dialogStage.setScene(new Scene(content));
+        dialogStage.setOnCloseRequest(e -> tarea.cancel());
+        return dialogStage;
+    }
+    
+    /**
+     * Convierte una factura en la fila que se exporta o imprime
+     */
+    private Object[] filaReporte(Factura f) {
+        return new Object[]{
+            f.getNumeroFactura(),
+            f.getFecha().format(dateFormatter),
+            f.getCliente() != null ? f.getCliente().getNombre() : "",
+            f.getVendedor() != null ? f.getVendedor().getNombre() : "",
+            f.getTotal(),
+            f.isPagada() ? "Pagada" : "Pendiente"
+        };
+    }
+    
+    /**
+     * Tarea que lee las filas de todas las facturas del último reporte, recorriendo sus
+     * cabeceras en la BD con el avance, y se las pasa a la salida (PDF o impresión)
+     */
+    private Task<Void> tareaFilasReporte(String mensajeSalida, SalidaReporte salida) {
+        Long vendedorId = reporteVendedorId;
+        LocalDateTime desde = reporteDesde;
+        LocalDateTime hasta = reporteHasta;
+        int total = totalFacturas;
+        return new Task<>() {
+            @Override
+            protected Void call() throws Exception {
+                updateMessage("Leyendo facturas...");
+                List<Object[]> filas = new ArrayList<>(total);
+                facturaService.recorrerFacturasPorRango(vendedorId, desde, hasta, f -> {
+                    if (isCancelled()) {
+                        throw new CancellationException();
+                    }
+                    filas.add(filaReporte(f));
+                    if (filas.size() % FILAS_POR_AVANCE == 0) {
+                        updateProgress(filas.size(), total);
+                        updateMessage("Leyendo " + filas.size() + " de " + total + " facturas...");
+                    }
+                });
+                updateProgress(-1, 1);
+                updateMessage(mensajeSalida);
+                salida.escribir(filas);
+                return null;
             }
-            
-            // Preparar datos para exportar
-            String titulo = "Reporte de Facturación";
-            String subtitulo = "Período: " + dpFechaInicio.getValue().toString() + " al " + dpFechaFin.getValue().toString();
-            if (!chkTodosVendedores.isSelected() && cmbVendedor.getValue() != null) {
-                subtitulo += " - Vendedor: " + cmbVendedor.getValue().getNombre();
+        };
+    }
+    
+    /**
+     * Destino de las filas del reporte
+     */
+    @FunctionalInterface
+    private interface SalidaReporte {
+        void escribir(List<Object[]> filas) throws Exception;
+    }
+    
+    /**
+     * Muestra el detalle de una factura. Las páginas traen solo cabeceras: los ítems
+     * se consultan al abrir el detalle
+     */
+    private void mostrarDetalleFactura(Factura factura) {
+        Task<List<ItemFactura>> tarea = new Task<>() {
+            @Override
+            protected List<ItemFactura> call() {
+                facturaService.cargarItems(factura);
+                return factura.getItems();
             }
+        };
+        tarea.setOnSucceeded(e -> {
+            Stage dialogStage = new Stage();
+            dialogStage.setTitle("Factura " + factura.getNumeroFactura());
+            dialogStage.initModality(Modality.WINDOW_MODAL);
+            dialogStage.initOwner(tblFacturas.getScene().getWindow());
             
-            // Preparar estadísticas
-            Map<String, String> estadisticas = new HashMap<>();
-            estadisticas.put("Total Facturado", lblTotalFacturado.getText());
-            estadisticas.put("Cantidad de Facturas", lblTotalFacturas.getText());
-            estadisticas.put("Promedio por Factura", lblPromedioFactura.getText());
-            
-            // Columnas
-            String[] columnas = {"Nº Factura", "Fecha", "Cliente", "Vendedor", "Total", "Estado"};
-            
-            // Convertir datos a formato para exportar
-            List<Object[]> datos = facturasData.stream().map(f -> new Object[]{
-                f.getNumeroFactura(),
-                f.getFecha().format(dateFormatter),
-                f.getCliente().getNombre(),
-                f.getVendedor().getNombre(),
-                f.getTotal(),
-                f.isPagada() ? "Pagada" : "Pendiente"
-            }).collect(Collectors.toList());
-            
-            // Exportar
-            ExportarUtil.exportarExcel(file.getAbsolutePath(), titulo, subtitulo, estadisticas, columnas, datos);
-            
-            AlertUtils.mostrarInformacion("Exportación exitosa", 
-                    "El reporte ha sido exportado correctamente a:\n" + file.getAbsolutePath());
+            TableView<ItemFactura> tablaItems = new TableView<>(FXCollections.observableArrayList(tarea.getValue()));
+            TableColumn<ItemFactura, String> colProducto = new TableColumn<>("Producto");
+            colProducto.setCellValueFactory(data -> new SimpleStringProperty(
+                    data.getValue().getProducto() != null ? data.getValue().getProducto().getDescripcion() : ""));
+            TableColumn<ItemFactura, Number> colCantidad = new TableColumn<>("Cantidad");
+            colCantidad.setCellValueFactory(data -> new SimpleIntegerProperty(data.getValue().getCantidad()));
+            TableColumn<ItemFactura, String> colPrecio = new TableColumn<>("Precio");
+            colPrecio.setCellValueFactory(data -> new SimpleStringProperty(
+                    currencyFormat.format(data.getValue().getPrecioUnitario())));
+            TableColumn<ItemFactura, String> colSubtotal = new TableColumn<>("Subtotal");
+            colSubtotal.setCellValueFactory(data -> new SimpleStringProperty(
+                    currencyFormat.format(data.getValue().getSubtotal())));
+            tablaItems.getColumns().addAll(List.of(colProducto, colCantidad, colPrecio, colSubtotal));
+            
+            Label lblTotal = new Label("Total: " + currencyFormat.format(factura.getTotal()));
+            Button btnCerrar = new Button("Cerrar");
+            btnCerrar.setOnAction(ev -> dialogStage.close());
             
-        } catch (Exception e) {
-            AlertUtils.mostrarError("Error al exportar", 
-                    "No se pudo exportar el reporte: " + e.getMessage());
-            e.printStackTrace();
-        }
+            VBox content = new VBox(10, tablaItems, lblTotal, btnCerrar);
+            content.setPadding(new javafx.geometry.Insets(20));
+            dialogStage.setScene(new Scene(content, 520, 360));
+            dialogStage.show();
+        });
+        tarea.setOnFailed(e -> AlertUtils.mostrarError("Error", 
+                "No se pudieron cargar los ítems de la factura: " + tarea.getException().getMessage()));
+        
+        tareas.ejecutar(this, "detalle-factura-" + factura.getId(), tarea);
     }
     
     /**
@@ -403,69 +639,56 @@ public class ReporteFacturacionController {
      */
     @FXML
     private void exportarPDF() {
-        if (facturasData.isEmpty()) {
+        if (totalFacturas == 0) {
             AlertUtils.mostrarAdvertencia("Sin datos", 
                     "No hay datos para exportar. Primero genere un reporte.");
             return;
         }
         
-        try {
-            FileChooser fileChooser = new FileChooser();
-            fileChooser.setTitle("Guardar Reporte PDF");
-            fileChooser.getExtensionFilters().add(
-                    new FileChooser.ExtensionFilter("Archivos PDF", "*.pdf"));
-            
-            // Sugerir nombre de archivo
-            String nombreArchivo = "Reporte_Facturacion_";
-            if (!chkTodosVendedores.isSelected() && cmbVendedor.getValue() != null) {
-                nombreArchivo += cmbVendedor.getValue().getNombre().replace(" ", "_") + "_";
-            }
-            nombreArchivo += dpFechaInicio.getValue().toString() + "_a_" + dpFechaFin.getValue().toString();
-            
-            fileChooser.setInitialFileName(nombreArchivo + ".pdf");
-            
-            File file = fileChooser.showSaveDialog(pnlGraficos.getScene().getWindow());
-            if (file == null) {
-                return;
-            }
-            
-            // Preparar datos para exportar
-            String titulo = "Reporte de Facturación";
-            String subtitulo = "Período: " + dpFechaInicio.getValue().toString() + " al " + dpFechaFin.getValue().toString();
-            if (!chkTodosVendedores.isSelected() && cmbVendedor.getValue() != null) {
-                subtitulo += " - Vendedor: " + cmbVendedor.getValue().getNombre();
-            }
-            
-            // Preparar estadísticas
-            Map<String, String> estadisticas = new HashMap<>();
-            estadisticas.put("Total Facturado", lblTotalFacturado.getText());
-            estadisticas.put("Cantidad de Facturas", lblTotalFacturas.getText());
-            estadisticas.put("Promedio por Factura", lblPromedioFactura.getText());
-            
-            // Columnas
-            String[] columnas = {"Nº Factura", "Fecha", "Cliente", "Vendedor", "Total", "Estado"};
-            
-            // Convertir datos a formato para exportar
-            List<Object[]> datos = facturasData.stream().map(f -> new Object[]{
-                f.getNumeroFactura(),
-                f.getFecha().format(dateFormatter),
-                f.getCliente().getNombre(),
-                f.getVendedor().getNombre(),
-                f.getTotal(),
-                f.isPagada() ? "Pagada" : "Pendiente"
-            }).collect(Collectors.toList());
-            
-            // Exportar
-            ExportarUtil.exportarPDF(file.getAbsolutePath(), titulo, subtitulo, estadisticas, columnas, datos);
-            
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Guardar Reporte PDF");
+        fileChooser.getExtensionFilters().add(
+                new FileChooser.ExtensionFilter("Archivos PDF", "*.pdf"));
+        
+        // Sugerir nombre de archivo
+        String nombreArchivo = "Reporte_Facturacion_";
+        if (!chkTodosVendedores.isSelected() && cmbVendedor.getValue() != null) {
+            nombreArchivo += cmbVendedor.getValue().getNombre().replace(" ", "_") + "_";
+        }
+        nombreArchivo += dpFechaInicio.getValue().toString() + "_a_" + dpFechaFin.getValue().toString();
+        
+        fileChooser.setInitialFileName(nombreArchivo + ".pdf");
+        
+        File file = fileChooser.showSaveDialog(pnlGraficos.getScene().getWindow());
+        if (file == null) {
+            return;
+        }
+        
+        String titulo = "Reporte de Facturación";
+        String subtitulo = subtituloReporte();
+        Map<String, String> estadisticas = estadisticasReporte();
+        
+        // Las filas se leen de la BD (no de la tabla paginada) y el PDF se arma en segundo plano
+        Task<Void> tarea = tareaFilasReporte("Generando PDF...", datos ->
+                ExportarUtil.exportarPDF(file.getAbsolutePath(), titulo, subtitulo, estadisticas, COLUMNAS_REPORTE, datos));
+        
+        Stage dialogoProgreso = crearDialogoProgreso("Exportando reporte", tarea);
+        tarea.setOnSucceeded(e -> {
+            dialogoProgreso.close();
             AlertUtils.mostrarInformacion("Exportación exitosa", 
                     "El reporte ha sido exportado correctamente a:\n" + file.getAbsolutePath());
-            
-        } catch (Exception e) {
+        });
+        tarea.setOnFailed(e -> {
+            dialogoProgreso.close();
+            Throwable error = tarea.getException();
+            LOGGER.log(Level.WARNING, "No se pudo exportar el reporte a PDF", error);
             AlertUtils.mostrarError("Error al exportar", 
-                    "No se pudo exportar el reporte: " + e.getMessage());
-            e.printStackTrace();
-        }
+                    "No se pudo exportar el reporte: " + (error != null ? error.getMessage() : ""));
+        });
+        tarea.setOnCancelled(e -> dialogoProgreso.close());
+        
+        tareas.ejecutar(this, "exportar-pdf", tarea);
+        dialogoProgreso.show();
     }
     
     /**
@@ -473,47 +696,55 @@ public class ReporteFacturacionController {
      */
     @FXML
     private void imprimirReporte() {
-        if (facturasData.isEmpty()) {
+        if (totalFacturas == 0) {
             AlertUtils.mostrarAdvertencia("Sin datos", 
                     "No hay datos para imprimir. Primero genere un reporte.");
             return;
         }
         
-        try {
-            // Preparar datos para imprimir
-            String titulo = "Reporte de Facturación";
-            String subtitulo = "Período: " + dpFechaInicio.getValue().toString() + " al " + dpFechaFin.getValue().toString();
-            if (!chkTodosVendedores.isSelected() && cmbVendedor.getValue() != null) {
-                subtitulo += " - Vendedor: " + cmbVendedor.getValue().getNombre();
-            }
-            
-            // Preparar estadísticas
-            Map<String, String> estadisticas = new HashMap<>();
-            estadisticas.put("Total Facturado", lblTotalFacturado.getText());
-            estadisticas.put("Cantidad de Facturas", lblTotalFacturas.getText());
-            estadisticas.put("Promedio por Factura", lblPromedioFactura.getText());
-            
-            // Columnas
-            String[] columnas = {"Nº Factura", "Fecha", "Cliente", "Vendedor", "Total", "Estado"};
-            
-            // Convertir datos a formato para exportar
-            List<Object[]> datos = facturasData.stream().map(f -> new Object[]{
-                f.getNumeroFactura(),
-                f.getFecha().format(dateFormatter),
-                f.getCliente().getNombre(),
-                f.getVendedor().getNombre(),
-                f.getTotal(),
-                f.isPagada() ? "Pagada" : "Pendiente"
-            }).collect(Collectors.toList());
-            
-            // Imprimir usando utilidad de impresión
-            ExportarUtil.imprimirReporte(titulo, subtitulo, estadisticas, columnas, datos);
-            
-        } catch (Exception e) {
+        String titulo = "Reporte de Facturación";
+        String subtitulo = subtituloReporte();
+        Map<String, String> estadisticas = estadisticasReporte();
+        
+        // Las filas se leen de la BD (no de la tabla paginada) y el documento se arma en segundo plano
+        Task<Void> tarea = tareaFilasReporte("Preparando impresión...", datos ->
+                ExportarUtil.imprimirReporte(titulo, subtitulo, estadisticas, COLUMNAS_REPORTE, datos));
+        
+        Stage dialogoProgreso = crearDialogoProgreso("Imprimiendo reporte", tarea);
+        tarea.setOnSucceeded(e -> dialogoProgreso.close());
+        tarea.setOnFailed(e -> {
+            dialogoProgreso.close();
+            Throwable error = tarea.getException();
+            LOGGER.log(Level.WARNING, "No se pudo imprimir el reporte", error);
             AlertUtils.mostrarError("Error al imprimir", 
-                    "No se pudo imprimir el reporte: " + e.getMessage());
-            e.printStackTrace();
+                    "No se pudo imprimir el reporte: " + (error != null ? error.getMessage() : ""));
+        });
+        tarea.setOnCancelled(e -> dialogoProgreso.close());
+        
+        tareas.ejecutar(this, "imprimir-reporte", tarea);
+        dialogoProgreso.show();
+    }
+    
+    /**
+     * Subtítulo del reporte con el período y, si se filtró, el vendedor
+     */
+    private String subtituloReporte() {
+        String subtitulo = "Período: " + dpFechaInicio.getValue().toString() + " al " + dpFechaFin.getValue().toString();
+        if (!chkTodosVendedores.isSelected() && cmbVendedor.getValue() != null) {
+            subtitulo += " - Vendedor: " + cmbVendedor.getValue().getNombre();
         }
+        return subtitulo;
+    }
+    
+    /**
+     * Estadísticas que se muestran en el encabezado del reporte
+     */
+    private Map<String, String> estadisticasReporte() {
+        Map<String, String> estadisticas = new HashMap<>();
+        estadisticas.put("Total Facturado", lblTotalFacturado.getText());
+        estadisticas.put("Cantidad de Facturas", lblTotalFacturas.getText());
+        estadisticas.put("Promedio por Factura", lblPromedioFactura.getText());
+        return estadisticas;
     }
     
     /**
@@ -521,19 +752,14 @@ public class ReporteFacturacionController {
      */
     @FXML
     private void analizarMetodosPago() {
-        if (facturasData.isEmpty()) {
+        if (totalFacturas == 0) {
             AlertUtils.mostrarAdvertencia("Sin datos", 
                     "No hay datos para analizar. Primero genere un reporte.");
             return;
         }
         
         try {
-            // Obtenemos las IDs de las facturas para consultar sus pagos
-            List<Long> idsFacturas = facturasData.stream()
-                    .map(Factura::getId)
-                    .collect(Collectors.toList());
-            
-            // Aquí deberíamos obtener los pagos para estas facturas
+            // Aquí deberíamos obtener los pagos de las facturas del reporte
             // En un caso real, se consultaría a PagoService para obtener esta información
             
             Stage dialogStage = new Stage();
@@ -575,7 +801,7 @@ public class ReporteFacturacionController {
             colPorcentaje.setCellValueFactory(data -> 
                     new SimpleStringProperty(data.getValue().getValue() + "%"));
             
-            tablaPagos.getColumns().addAll(colMetodo, colPorcentaje);
+            tablaPagos.getColumns().addAll(List.of(colMetodo, colPorcentaje));
             tablaPagos.setItems(FXCollections.observableArrayList(distribucionPagos.entrySet()));
             
             // Agregar a la vista
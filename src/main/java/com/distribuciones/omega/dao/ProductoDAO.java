@@ -5,10 +5,12 @@ import com.distribuciones.omega.model.Categoria;
 import com.distribuciones.omega.model.InsumoOficina;
 import com.distribuciones.omega.model.ProductoMobilario;
 import com.distribuciones.omega.model.ProductoTecnologico;
+import com.distribuciones.omega.utils.DBUtil;
 
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
 
 public class ProductoDAO {
     private final Connection conn;
@@ -94,116 +96,74 @@ public class ProductoDAO {
 
     public List<Producto> getAllProductos() throws SQLException {
         List<Producto> productos = new ArrayList<>();
-        
-        // Consulta base para obtener todos los productos
-        String sql = "SELECT id, nombre, precio, cantidad, categoria FROM productos";
-        
-        try (Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-            
-            while (rs.next()) {
-                String id = rs.getString("id");
-                String nombre = rs.getString("nombre");
-                double precio = rs.getDouble("precio");
-                int cantidad = rs.getInt("cantidad");
-                Categoria categoria = Categoria.valueOf(rs.getString("categoria"));
-                
-                // Según la categoría, cargamos el tipo específico de producto
-                switch (categoria) {
-                    case INSUMO_OFICINA:
-                        InsumoOficina insumo = cargarInsumoOficina(id, nombre, precio, cantidad);
-                        if (insumo != null) {
-                            productos.add(insumo);
-                        } else {
-                            productos.add(new Producto(nombre, id, precio, cantidad, categoria));
-                        }
-                        break;
-                        
-                    case PRODUCTO_MOBILIARIO:
-                        ProductoMobilario mobiliario = cargarProductoMobiliario(id, nombre, precio, cantidad);
-                        if (mobiliario != null) {
-                            productos.add(mobiliario);
-                        } else {
-                            productos.add(new Producto(nombre, id, precio, cantidad, categoria));
-                        }
-                        break;
-                        
-                    case PRODUCTO_TECNOLOGICO:
-                        ProductoTecnologico tecnologico = cargarProductoTecnologico(id, nombre, precio, cantidad);
-                        if (tecnologico != null) {
-                            productos.add(tecnologico);
-                        } else {
-                            productos.add(new Producto(nombre, id, precio, cantidad, categoria));
-                        }
-                        break;
-                        
-                    default:
-                        productos.add(new Producto(nombre, id, precio, cantidad, categoria));
-                }
-            }
-        }
-        
+        recorrerProductos(productos::add);
         return productos;
     }
     
-    private InsumoOficina cargarInsumoOficina(String id, String nombre, double precio, int cantidad) throws SQLException {
-        String sql = "SELECT presentacion, tipo_papel, cantidad_por_paquete FROM insumos_oficina WHERE id = ?";
+    /**
+     * Recorre todos los productos en una sola consulta: las tablas de cada subtipo
+     * se unen con LEFT JOIN y las filas se entregan a medida que se leen, así que la
+     * memoria no crece con el catálogo. El consumidor no debe usar esta conexión.
+     * @param consumidor Acción a ejecutar con cada producto
+     */
+    public void recorrerProductos(Consumer<Producto> consumidor) throws SQLException {
+        String sql = "SELECT p.id, p.nombre, p.precio, p.cantidad, p.categoria, " +
+                     "i.id AS insumo_id, i.presentacion, i.tipo_papel, i.cantidad_por_paquete, " +
+                     "m.id AS mobiliario_id, m.tipo_mobiliario, m.material, m.color, m.dimensiones, " +
+                     "t.id AS tecnologico_id, t.marca, t.modelo, t.numero_serie, t.garantia_meses, t.especificaciones " +
+                     "FROM productos p " +
+                     "LEFT JOIN insumos_oficina i ON i.id = p.id " +
+                     "LEFT JOIN productos_mobiliario m ON m.id = p.id " +
+                     "LEFT JOIN productos_tecnologicos t ON t.id = p.id";
         
-        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, id);
-            ResultSet rs = pstmt.executeQuery();
+        try (Statement stmt = conn.createStatement()) {
+            DBUtil.habilitarLecturaContinua(stmt);
             
-            if (rs.next()) {
-                String presentacion = rs.getString("presentacion");
-                String tipoPapel = rs.getString("tipo_papel");
-                int cantidadPorPaquete = rs.getInt("cantidad_por_paquete");
-                
-                return new InsumoOficina(nombre, id, precio, cantidad, presentacion, tipoPapel, cantidadPorPaquete);
+            try (ResultSet rs = stmt.executeQuery(sql)) {
+                while (rs.next()) {
+                    consumidor.accept(mapearProducto(rs));
+                }
             }
         }
-        
-        return null;
     }
     
-    private ProductoMobilario cargarProductoMobiliario(String id, String nombre, double precio, int cantidad) throws SQLException {
-        String sql = "SELECT tipo_mobiliario, material, color, dimensiones FROM productos_mobiliario WHERE id = ?";
+    private Producto mapearProducto(ResultSet rs) throws SQLException {
+        String id = rs.getString("id");
+        String nombre = rs.getString("nombre");
+        double precio = rs.getDouble("precio");
+        int cantidad = rs.getInt("cantidad");
+        Categoria categoria = Categoria.valueOf(rs.getString("categoria"));
         
-        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, id);
-            ResultSet rs = pstmt.executeQuery();
-            
-            if (rs.next()) {
-                String tipoMobiliario = rs.getString("tipo_mobiliario");
-                String material = rs.getString("material");
-                String color = rs.getString("color");
-                String dimensiones = rs.getString("dimensiones");
+        // Según la categoría, se construye el tipo específico si tiene fila en su tabla
+        switch (categoria) {
+            case INSUMO_OFICINA:
+                if (rs.getString("insumo_id") != null) {
+                    return new InsumoOficina(nombre, id, precio, cantidad,
+                            rs.getString("presentacion"), rs.getString("tipo_papel"), rs.getInt("cantidad_por_paquete"));
+                }
+                break;
                 
-                return new ProductoMobilario(nombre, id, precio, cantidad, tipoMobiliario, material, color, dimensiones);
-            }
-        }
-        
-        return null;
-    }
-    
-    private ProductoTecnologico cargarProductoTecnologico(String id, String nombre, double precio, int cantidad) throws SQLException {
-        String sql = "SELECT marca, modelo, numero_serie, garantia_meses, especificaciones FROM productos_tecnologicos WHERE id = ?";
-        
-        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, id);
-            ResultSet rs = pstmt.executeQuery();
-            
-            if (rs.next()) {
-                String marca = rs.getString("marca");
-                String modelo = rs.getString("modelo");
-                String numeroSerie = rs.getString("numero_serie");
-                int garantiaMeses = rs.getInt("garantia_meses");
-                String especificaciones = rs.getString("especificaciones");
+            case PRODUCTO_MOBILIARIO:
+                if (rs.getString("mobiliario_id") != null) {
+                    return new ProductoMobilario(nombre, id, precio, cantidad,
+                            rs.getString("tipo_mobiliario"), rs.getString("material"),
+                            rs.getString("color"), rs.getString("dimensiones"));
+                }
+                break;
                 
-                return new ProductoTecnologico(nombre, id, precio, cantidad, marca, modelo, numeroSerie, garantiaMeses, especificaciones);
-            }
+            case PRODUCTO_TECNOLOGICO:
+                if (rs.getString("tecnologico_id") != null) {
+                    return new ProductoTecnologico(nombre, id, precio, cantidad,
+                            rs.getString("marca"), rs.getString("modelo"), rs.getString("numero_serie"),
+                            rs.getInt("garantia_meses"), rs.getString("especificaciones"));
+                }
+                break;
+                
+            default:
+                break;
         }
         
-        return null;
+        return new Producto(nombre, id, precio, cantidad, categoria);
     }
 
     public void addProducto(Producto producto) throws SQLException {
@@ -0,0 +1,97 @@
+package com.distribuciones.omega.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * Modelo que representa un correo en la bandeja de salida (correos_pendientes)
+ */
+public class CorreoPendiente {
+    private Long id;
+    private String destinatario;
+    private String asunto;
+    private String cuerpo;
+    private String clave;
+    private LocalDateTime creado;
+    private int intentos;
+
+    // Constructor vacío
+    public CorreoPendiente() {
+        this.creado = LocalDateTime.now();
+    }
+
+    // Constructor con campos principales
+    public CorreoPendiente(String destinatario, String asunto, String cuerpo, String clave) {
+        this.destinatario = destinatario;
+        this.asunto = asunto;
+        this.cuerpo = cuerpo;
+        this.clave = clave;
+        this.creado = LocalDateTime.now();
+    }
+
+    // Getters y Setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getDestinatario() {
+        return destinatario;
+    }
+
+    public void setDestinatario(String destinatario) {
+        this.destinatario = destinatario;
+    }
+
+    public String getAsunto() {
+        return asunto;
+    }
+
+    public void setAsunto(String asunto) {
+        this.asunto = asunto;
+    }
+
+    public String getCuerpo() {
+        return cuerpo;
+    }
+
+    public void setCuerpo(String cuerpo) {
+        this.cuerpo = cuerpo;
+    }
+
+    /**
+     * Clave opcional del aviso (por ejemplo "STOCK:TEC001"). Dentro de un mismo
+     * resumen solo se incluye el aviso más reciente de cada clave.
+     */
+    public String getClave() {
+        return clave;
+    }
+
+    public void setClave(String clave) {
+        this.clave = clave;
+    }
+
+    public LocalDateTime getCreado() {
+        return creado;
+    }
+
+    public void setCreado(LocalDateTime creado) {
+        this.creado = creado;
+    }
+
+    public int getIntentos() {
+        return intentos;
+    }
+
+    public void setIntentos(int intentos) {
+        this.intentos = intentos;
+    }
+
+    @Override
+    public String toString() {
+        return "CorreoPendiente{id=" + id + ", destinatario='" + destinatario + "', asunto='" + asunto +
+               "', intentos=" + intentos + "}";
+    }
+}
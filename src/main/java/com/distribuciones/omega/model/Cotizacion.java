@@ -18,6 +18,12 @@ public class Cotizacion {
     private double total;
     private boolean convertidaAOrden = false;
     private String observaciones;
+    // Reserva de stock en memoria (no se persiste)
+    private String codigoReserva;
+    private LocalDateTime reservaVence;
+    
+    // Precios calculados por PreciosService (no se persiste)
+    private Liquidacion liquidacion;
     
     public Cotizacion() {
         // Constructor vacío necesario para frameworks
@@ -120,6 +126,30 @@ public class Cotizacion {
         this.observaciones = observaciones;
     }
     
+    public String getCodigoReserva() {
+        return codigoReserva;
+    }
+    
+    public void setCodigoReserva(String codigoReserva) {
+        this.codigoReserva = codigoReserva;
+    }
+    
+    public LocalDateTime getReservaVence() {
+        return reservaVence;
+    }
+    
+    public void setReservaVence(LocalDateTime reservaVence) {
+        this.reservaVence = reservaVence;
+    }
+    
+    public Liquidacion getLiquidacion() {
+        return liquidacion;
+    }
+    
+    public void setLiquidacion(Liquidacion liquidacion) {
+        this.liquidacion = liquidacion;
+    }
+    
     /**
      * Agrega un item a la cotización
      */
@@ -1,5 +1,7 @@
 package com.distribuciones.omega.model;
 
+import com.distribuciones.omega.utils.Dinero;
+
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
@@ -194,15 +196,14 @@ public class Factura {
      * Calcula los totales de la factura
      */
     public void calcularTotales() {
-        // Calcular subtotal
-        subtotal = items.stream()
-                .mapToDouble(ItemFactura::getSubtotal)
-                .sum();
+        // Calcular subtotal en centavos
+        long subtotalCentavos = Dinero.sumar(items, ItemFactura::getSubtotal);
+        subtotal = Dinero.aDouble(subtotalCentavos);
         
         // Para descuentos e IVA se usarían los valores ya establecidos
         
         // Calcular total
-        total = subtotal - descuento + iva;
+        total = Dinero.aDouble(subtotalCentavos - Dinero.deDouble(descuento) + Dinero.deDouble(iva));
     }
     
     /**
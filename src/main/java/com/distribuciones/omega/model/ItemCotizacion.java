@@ -6,6 +6,7 @@ public class ItemCotizacion {
     private int cantidad;
     private double precioUnitario;
     private double descuento;
+    private double descuentoManual; // Descuento dado a mano (o el guardado); PreciosService parte de este
     private double subtotal;
     
     public ItemCotizacion() {
@@ -17,6 +18,7 @@ public class ItemCotizacion {
         this.cantidad = cantidad;
         this.precioUnitario = precioUnitario;
         this.descuento = 0.0;
+        this.descuentoManual = 0.0;
         calcularSubtotal();
     }
     
@@ -77,6 +79,20 @@ public class ItemCotizacion {
     }
     
     public void setDescuento(double descuento) {
+        this.descuento = descuento;
+        this.descuentoManual = descuento;
+        calcularSubtotal();
+    }
+    
+    public double getDescuentoManual() {
+        return descuentoManual;
+    }
+    
+    /**
+     * Deja el descuento calculado por PreciosService (promociones, mayorista)
+     * sin cambiar el descuento manual
+     */
+    public void aplicarDescuento(double descuento) {
         this.descuento = descuento;
         calcularSubtotal();
     }
@@ -0,0 +1,230 @@
+package com.distribuciones.omega.model;
+
+import com.distribuciones.omega.utils.Dinero;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Precios de una cotización calculados de una sola vez por PreciosService: por línea,
+ * el bruto (cantidad x precio), el descuento que quedó y el subtotal; y los totales
+ * de la cabecera. Es inmutable, así la pantalla, la factura y el movimiento contable
+ * usan exactamente los mismos valores. Los montos se guardan en centavos (ver
+ * {@link Dinero}); los getters en unidades los convierten.
+ *
+ * Guarda también los datos de entrada de cada línea para saber si sigue valiendo
+ * para unos ítems (ver {@link #vigentePara(List, boolean)}).
+ */
+public class Liquidacion {
+
+    private final String[] codigos;
+    private final int[] cantidades;
+    private final double[] precios;
+    private final double[] manuales;
+    private final long[] brutos;
+    private final long[] descuentos;
+    private final long[] subtotales;
+    private final boolean mayorista;
+    private final long subtotal;
+    private final long descuento;
+    private final long iva;
+    private final long total;
+    private final Ajustes ajustes;
+
+    public Liquidacion(String[] codigos, int[] cantidades, double[] precios, double[] manuales,
+                       long[] brutos, long[] descuentos, long[] subtotales, boolean mayorista,
+                       long subtotal, long descuento, long iva, Ajustes ajustes) {
+        this.codigos = codigos;
+        this.cantidades = cantidades;
+        this.precios = precios;
+        this.manuales = manuales;
+        this.brutos = brutos;
+        this.descuentos = descuentos;
+        this.subtotales = subtotales;
+        this.mayorista = mayorista;
+        this.subtotal = subtotal;
+        this.descuento = descuento;
+        this.iva = iva;
+        this.total = subtotal - descuento + iva;
+        this.ajustes = ajustes;
+    }
+
+    public int getLineas() {
+        return codigos.length;
+    }
+
+    public double getBruto(int linea) {
+        return Dinero.aDouble(brutos[linea]);
+    }
+
+    public double getDescuento(int linea) {
+        return Dinero.aDouble(descuentos[linea]);
+    }
+
+    public double getSubtotal(int linea) {
+        return Dinero.aDouble(subtotales[linea]);
+    }
+
+    /**
+     * Suma de los brutos de las líneas (antes de descuentos)
+     */
+    public double getSubtotal() {
+        return Dinero.aDouble(subtotal);
+    }
+
+    public double getDescuento() {
+        return Dinero.aDouble(descuento);
+    }
+
+    public double getIva() {
+        return Dinero.aDouble(iva);
+    }
+
+    public double getTotal() {
+        return Dinero.aDouble(total);
+    }
+
+    /**
+     * Total en centavos
+     */
+    public long getTotalCentavos() {
+        return total;
+    }
+
+    /**
+     * Ajustes (promociones, descuento mayorista) con los que se calculó
+     */
+    public Ajustes getAjustes() {
+        return ajustes;
+    }
+
+    /**
+     * Indica si la liquidación corresponde a estos ítems tal como están ahora:
+     * mismos productos, cantidades, precios y descuentos manuales, y mismo tipo de cliente
+     * @param items Ítems de la cotización
+     * @param clienteMayorista Si el cliente es mayorista
+     */
+    public boolean vigentePara(List<ItemCotizacion> items, boolean clienteMayorista) {
+        if (items.size() != codigos.length || clienteMayorista != mayorista) {
+            return false;
+        }
+        for (int i = 0; i < codigos.length; i++) {
+            ItemCotizacion item = items.get(i);
+            String codigo = item.getProducto() != null ? item.getProducto().getCodigo() : null;
+            if (item.getCantidad() != cantidades[i] || item.getPrecioUnitario() != precios[i]
+                    || item.getDescuentoManual() != manuales[i]
+                    || (codigo == null ? codigos[i] != null : !codigo.equals(codigos[i]))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Copia los totales a la cotización y el descuento y subtotal de cada línea a sus ítems
+     */
+    public void aplicarA(Cotizacion cotizacion) {
+        aplicarA(cotizacion.getItems());
+        cotizacion.setSubtotal(getSubtotal());
+        cotizacion.setDescuento(getDescuento());
+        cotizacion.setIva(getIva());
+        cotizacion.setTotal(getTotal());
+        cotizacion.setLiquidacion(this);
+    }
+
+    /**
+     * Copia el descuento y el subtotal de cada línea a los ítems (en el mismo orden)
+     */
+    public void aplicarA(List<ItemCotizacion> items) {
+        for (int i = 0; i < codigos.length; i++) {
+            items.get(i).aplicarDescuento(Dinero.aDouble(descuentos[i]));
+        }
+    }
+
+    /**
+     * Copia los totales a la factura
+     */
+    public void aplicarA(Factura factura) {
+        factura.setSubtotal(getSubtotal());
+        factura.setDescuento(getDescuento());
+        factura.setIva(getIva());
+        factura.setTotal(getTotal());
+    }
+
+    /**
+     * Ítems de factura con los valores de esta liquidación
+     * @param items Ítems de la cotización liquidada (aportan el producto)
+     */
+    public List<ItemFactura> itemsFactura(List<ItemCotizacion> items) {
+        List<ItemFactura> itemsFactura = new ArrayList<>(codigos.length);
+        for (int i = 0; i < codigos.length; i++) {
+            ItemFactura itemFactura = new ItemFactura();
+            itemFactura.setProducto(items.get(i).getProducto());
+            itemFactura.setCantidad(cantidades[i]);
+            itemFactura.setPrecioUnitario(precios[i]);
+            itemFactura.setDescuento(getDescuento(i));
+            itemFactura.setSubtotal(getSubtotal(i));
+            itemsFactura.add(itemFactura);
+        }
+        return itemsFactura;
+    }
+
+    /**
+     * Descuentos que se evalúan además del descuento manual de cada línea. En cada
+     * línea queda el mayor de todos, sin superar el bruto.
+     */
+    public static final class Ajustes {
+
+        private static final Ajustes NINGUNO = new Ajustes(null, false, false);
+
+        private final Promocion promocion;
+        private final boolean promocionesVigentes;
+        private final boolean descuentoMayorista;
+
+        private Ajustes(Promocion promocion, boolean promocionesVigentes, boolean descuentoMayorista) {
+            this.promocion = promocion;
+            this.promocionesVigentes = promocionesVigentes;
+            this.descuentoMayorista = descuentoMayorista;
+        }
+
+        /**
+         * Solo los descuentos manuales de las líneas
+         */
+        public static Ajustes ninguno() {
+            return NINGUNO;
+        }
+
+        /**
+         * Aplica una promoción elegida a las líneas de sus productos o categorías
+         */
+        public Ajustes conPromocion(Promocion promocion) {
+            return new Ajustes(promocion, promocionesVigentes, descuentoMayorista);
+        }
+
+        /**
+         * Busca para cada línea la mejor promoción vigente
+         */
+        public Ajustes conPromocionesVigentes() {
+            return new Ajustes(promocion, true, descuentoMayorista);
+        }
+
+        /**
+         * Aplica el descuento mayorista si el cliente lo es
+         */
+        public Ajustes conDescuentoMayorista() {
+            return new Ajustes(promocion, promocionesVigentes, true);
+        }
+
+        public Promocion getPromocion() {
+            return promocion;
+        }
+
+        public boolean isPromocionesVigentes() {
+            return promocionesVigentes;
+        }
+
+        public boolean isDescuentoMayorista() {
+            return descuentoMayorista;
+        }
+    }
+}
@@ -17,6 +17,7 @@ public class MovimientoContable {
     private String entidadRelacionada; // Cliente, Proveedor, Inventario, etc.
     private String referencia;        // Información adicional de referencia
     private String detalle;           // Detalles completos del movimiento
+    private String idDiario;          // Identificador único asignado al pasar por el diario contable
     
     // Constructores
     public MovimientoContable() {
@@ -121,6 +122,14 @@ public class MovimientoContable {
         this.detalle = detalle;
     }
     
+    public String getIdDiario() {
+        return idDiario;
+    }
+    
+    public void setIdDiario(String idDiario) {
+        this.idDiario = idDiario;
+    }
+    
     @Override
     public String toString() {
         return "MovimientoContable{" +
@@ -29,6 +29,22 @@ public class ProductoInventario {
         this.cantidad = cantidad;
     }
 
+    // Constructor de copia (el catálogo en memoria entrega copias para no compartir instancias)
+    public ProductoInventario(ProductoInventario otro) {
+        this.idProducto = otro.idProducto;
+        this.codigo = otro.codigo;
+        this.descripcion = otro.descripcion;
+        this.precio = otro.precio;
+        this.cantidad = otro.cantidad;
+        this.numeroSerie = otro.numeroSerie;
+        this.categoria = otro.categoria;
+        this.proveedor = otro.proveedor;
+        this.activo = otro.activo;
+        this.ubicacion = otro.ubicacion;
+        this.cantidadMinima = otro.cantidadMinima;
+        this.cantidadMaxima = otro.cantidadMaxima;
+    }
+
     // Getters y setters
     public Long getIdProducto() { return idProducto; }
     public void setIdProducto(Long idProducto) { this.idProducto = idProducto; }
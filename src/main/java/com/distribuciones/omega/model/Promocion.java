@@ -10,6 +10,7 @@ public class Promocion {
     private String descripcion;
     private double valor;
     private boolean porcentaje; // true si es un porcentaje, false si es un valor fijo
+    private boolean dosPorUno; // true si es un 2x1: una unidad gratis por cada dos (valor no se usa)
     private LocalDate fechaInicio;
     private LocalDate fechaFin;
     private boolean activa;
@@ -52,6 +53,14 @@ public class Promocion {
         this.porcentaje = porcentaje;
     }
     
+    public boolean isDosPorUno() {
+        return dosPorUno;
+    }
+    
+    public void setDosPorUno(boolean dosPorUno) {
+        this.dosPorUno = dosPorUno;
+    }
+    
     public LocalDate getFechaInicio() {
         return fechaInicio;
     }
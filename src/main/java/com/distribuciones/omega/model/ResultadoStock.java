@@ -0,0 +1,102 @@
+package com.distribuciones.omega.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resultado de descontar stock para varias líneas en una sola transacción.
+ * Si alguna línea falla no se descuenta nada y se informan todas las líneas fallidas.
+ */
+public class ResultadoStock {
+
+    private final Map<String, Integer> stockResultante = new LinkedHashMap<>();
+    private final List<LineaFallida> fallos = new ArrayList<>();
+    private String error;
+
+    public boolean isExitoso() {
+        return fallos.isEmpty() && error == null;
+    }
+
+    /**
+     * Error de base de datos que impidió procesar las líneas (null si no hubo)
+     */
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    /**
+     * Stock que quedó en base de datos por código de producto (solo si fue exitoso)
+     */
+    public Map<String, Integer> getStockResultante() {
+        return Collections.unmodifiableMap(stockResultante);
+    }
+
+    public List<LineaFallida> getFallos() {
+        return Collections.unmodifiableList(fallos);
+    }
+
+    public void registrarDescuento(String codigo, int stockRestante) {
+        stockResultante.put(codigo, stockRestante);
+    }
+
+    public void registrarFallo(LineaFallida fallo) {
+        fallos.add(fallo);
+    }
+
+    /**
+     * Limpia los descuentos registrados (cuando la transacción se revierte)
+     */
+    public void descartarDescuentos() {
+        stockResultante.clear();
+    }
+
+    /**
+     * Mensaje legible con todas las líneas que no pudieron descontarse
+     */
+    public String getMensajeFallos() {
+        StringBuilder mensaje = new StringBuilder();
+        if (error != null) {
+            mensaje.append("Error al actualizar el inventario: ").append(error).append("\n");
+        }
+        for (LineaFallida fallo : fallos) {
+            mensaje.append("- ").append(fallo.getDescripcion())
+                   .append(" (Solicitado: ").append(fallo.getSolicitado())
+                   .append(", Disponible: ").append(fallo.getDisponible()).append(")\n");
+        }
+        return mensaje.toString();
+    }
+
+    /**
+     * Línea que no pudo descontarse por falta de stock o porque el producto no existe
+     */
+    public static class LineaFallida {
+        private final String codigo;
+        private final String descripcion;
+        private final int solicitado;
+        private final int disponible;
+
+        public LineaFallida(String codigo, String descripcion, int solicitado, int disponible) {
+            this.codigo = codigo;
+            this.descripcion = descripcion;
+            this.solicitado = solicitado;
+            this.disponible = disponible;
+        }
+
+        public String getCodigo() { return codigo; }
+        public String getDescripcion() { return descripcion; }
+        public int getSolicitado() { return solicitado; }
+        public int getDisponible() { return disponible; }
+
+        @Override
+        public String toString() {
+            return codigo + " (Solicitado: " + solicitado + ", Disponible: " + disponible + ")";
+        }
+    }
+}
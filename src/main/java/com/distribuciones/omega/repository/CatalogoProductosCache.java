@@ -0,0 +1,598 @@
+package com.distribuciones.omega.repository;
+
+import com.distribuciones.omega.model.ProductoInventario;
+import io.github.cdimascio.dotenv.Dotenv;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.logging.Logger;
+
+/**
+ * Catálogo de productos en memoria compartido por todas las pantallas.
+ *
+ * Las entradas se indexan por código y por ID y llevan un número de versión que
+ * aumenta en cada cambio. Las escrituras de InventarioRepository y ProductoRepository
+ * invalidan la entrada afectada; un refresco periódico por diferencias (columna
+ * ultima_modificacion) recoge los cambios hechos desde otras terminales.
+ * Siempre se entregan copias para que las pantallas no modifiquen el catálogo.
+ *
+ * Las consultas a la base de datos (recargas, diferencias, productos invalidados o que
+ * faltan) se hacen fuera del monitor, que solo se toma para aplicar el resultado: una
+ * recarga lenta no detiene a las pantallas que leen el catálogo. Al aplicar se descarta
+ * lo leído de un producto que cambió o se invalidó mientras tanto.
+ */
+public class CatalogoProductosCache {
+
+    private static final Logger LOGGER = Logger.getLogger(CatalogoProductosCache.class.getName());
+
+    // Cada cuántos refrescos por diferencias se recarga todo (recoge productos eliminados)
+    private static final int REFRESCOS_POR_RECARGA = 20;
+
+    private static CatalogoProductosCache instance;
+
+    private final InventarioRepository repository;
+
+    // Estado protegido por el monitor de esta instancia
+    private final Map<String, Entrada> porCodigo = new LinkedHashMap<>();
+    private final Map<String, Entrada> porId = new HashMap<>();
+    // Claves invalidadas que falta volver a leer, con la versión de la invalidación
+    private final Map<String, Long> pendientes = new LinkedHashMap<>();
+    private final Map<String, Long> eliminados = new HashMap<>();
+    private long versionRecarga = 0;
+    // Versión del último invalidarTodo
+    private long recargaPedida = 0;
+    private boolean cargado = false;
+    private Timestamp marcaDelta;
+    // La columna la crea la migración 5; si falta, solo se hacen recargas completas
+    private boolean deltaDisponible = true;
+    private int refrescosDesdeRecarga = 0;
+
+    private final AtomicLong version = new AtomicLong();
+    private ScheduledExecutorService scheduler;
+    // Una sola recarga completa a la vez; se toma antes que el monitor, nunca dentro de él
+    private final Object bloqueoRecarga = new Object();
+
+    // Métricas
+    private final LongAdder aciertos = new LongAdder();
+    private final LongAdder fallos = new LongAdder();
+    private final LongAdder invalidaciones = new LongAdder();
+    private final LongAdder recargasCompletas = new LongAdder();
+    private final LongAdder refrescosDelta = new LongAdder();
+
+    CatalogoProductosCache(InventarioRepository repository) {
+        this.repository = repository;
+    }
+
+    /**
+     * Obtiene la instancia única del catálogo (Singleton)
+     * @return Catálogo compartido
+     */
+    public static synchronized CatalogoProductosCache getInstance() {
+        if (instance == null) {
+            instance = new CatalogoProductosCache(new InventarioRepository());
+        }
+        return instance;
+    }
+
+    /**
+     * Obtiene todos los productos del catálogo
+     * @return Copias de los productos, en el orden en que se cargaron
+     */
+    public List<ProductoInventario> obtenerTodos() {
+        prepararLectura(true);
+        synchronized (this) {
+            List<ProductoInventario> productos = new ArrayList<>(porCodigo.size());
+            for (Entrada entrada : porCodigo.values()) {
+                productos.add(new ProductoInventario(entrada.producto));
+            }
+            return productos;
+        }
+    }
+
+    /**
+     * Obtiene los productos que cumplen una condición sin copiar el resto
+     * @param filtro Condición sobre el producto
+     * @return Copias de los productos que cumplen la condición
+     */
+    public List<ProductoInventario> filtrar(Predicate<ProductoInventario> filtro) {
+        prepararLectura(true);
+        synchronized (this) {
+            List<ProductoInventario> productos = new ArrayList<>();
+            for (Entrada entrada : porCodigo.values()) {
+                if (filtro.test(entrada.producto)) {
+                    productos.add(new ProductoInventario(entrada.producto));
+                }
+            }
+            return productos;
+        }
+    }
+
+    /**
+     * Busca un producto por código (o por ID, igual que InventarioRepository.findByCodigo)
+     * @param codigo Código o ID del producto
+     * @return Copia del producto o null si no existe
+     */
+    public ProductoInventario obtenerPorCodigo(String codigo) {
+        if (codigo == null) {
+            return null;
+        }
+        refrescarPendientes();
+
+        long inicio;
+        synchronized (this) {
+            Entrada entrada = porId.get(codigo);
+            if (entrada == null) {
+                entrada = porCodigo.get(codigo);
+            }
+            if (entrada != null) {
+                aciertos.increment();
+                return new ProductoInventario(entrada.producto);
+            }
+            fallos.increment();
+            inicio = version.get();
+        }
+
+        ProductoInventario producto = repository.findByCodigo(codigo);
+        if (producto == null) {
+            return null;
+        }
+        synchronized (this) {
+            if (!porCodigo.containsKey(producto.getCodigo()) && puedeGuardar(producto, inicio)) {
+                guardar(producto);
+            }
+        }
+        return new ProductoInventario(producto);
+    }
+
+    /**
+     * Marca un producto como modificado; se vuelve a leer en el próximo acceso
+     * @param clave Código o ID del producto
+     */
+    public synchronized void invalidar(String clave) {
+        if (clave == null) {
+            return;
+        }
+        invalidaciones.increment();
+        Entrada entrada = porCodigo.get(clave);
+        if (entrada == null) {
+            entrada = porId.get(clave);
+        }
+        if (entrada != null) {
+            quitar(entrada);
+        }
+        pendientes.remove(clave);
+        pendientes.put(clave, version.incrementAndGet());
+    }
+
+    /**
+     * Descarta todo el catálogo; se recarga completo en el próximo acceso
+     */
+    public synchronized void invalidarTodo() {
+        invalidaciones.increment();
+        cargado = false;
+        recargaPedida = version.incrementAndGet();
+    }
+
+    /**
+     * Actualiza el stock de un producto ya confirmado en la base de datos
+     * @param codigo Código del producto
+     * @param cantidad Cantidad actual en stock
+     */
+    public synchronized void actualizarStock(String codigo, int cantidad) {
+        Entrada entrada = porCodigo.get(codigo);
+        if (entrada == null) {
+            entrada = porId.get(codigo);
+        }
+        if (entrada != null) {
+            ProductoInventario actualizado = new ProductoInventario(entrada.producto);
+            actualizado.setCantidad(cantidad);
+            guardar(actualizado);
+        }
+    }
+
+    /**
+     * Obtiene lo que cambió en el catálogo desde una versión (para índices derivados)
+     * @param desdeVersion Última versión que conoce quien consulta (0 para todo)
+     * @return Productos nuevos o modificados y códigos eliminados; si hubo una
+     *         recarga completa desde entonces, todos los productos
+     */
+    public CambiosCatalogo cambiosDesde(long desdeVersion) {
+        prepararLectura(false);
+        synchronized (this) {
+            return cambiosDesdeCargado(desdeVersion);
+        }
+    }
+
+    private CambiosCatalogo cambiosDesdeCargado(long desdeVersion) {
+        boolean completo = desdeVersion < versionRecarga;
+        List<ProductoInventario> productos = new ArrayList<>();
+        for (Entrada entrada : porCodigo.values()) {
+            if (completo || entrada.version > desdeVersion) {
+                productos.add(new ProductoInventario(entrada.producto));
+            }
+        }
+        List<String> codigosEliminados = new ArrayList<>();
+        if (!completo) {
+            for (Map.Entry<String, Long> eliminado : eliminados.entrySet()) {
+                if (eliminado.getValue() > desdeVersion) {
+                    codigosEliminados.add(eliminado.getKey());
+                }
+            }
+        }
+        return new CambiosCatalogo(version.get(), completo, productos, codigosEliminados);
+    }
+
+    /**
+     * Versión del catálogo; cambia con cada alta, modificación o invalidación
+     * @return Número de versión actual
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Inicia el refresco periódico con el intervalo de CATALOGO_REFRESCO_SEG (.env, 30 s por defecto)
+     */
+    public void iniciarRefresco() {
+        int intervalo = 30;
+        try {
+            String valor = Dotenv.configure().directory(".").ignoreIfMissing().load().get("CATALOGO_REFRESCO_SEG");
+            if (valor != null && !valor.isBlank()) {
+                intervalo = Math.max(1, Integer.parseInt(valor.trim()));
+            }
+        } catch (NumberFormatException e) {
+            LOGGER.warning("CATALOGO_REFRESCO_SEG inválido, usando " + intervalo);
+        }
+        iniciarRefresco(intervalo);
+    }
+
+    /**
+     * Inicia el refresco periódico por diferencias
+     * @param intervaloSegundos Segundos entre refrescos
+     */
+    public synchronized void iniciarRefresco(int intervaloSegundos) {
+        detenerRefresco();
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread hilo = new Thread(r, "catalogo-refresco");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        scheduler.scheduleWithFixedDelay(this::refrescar, intervaloSegundos, intervaloSegundos, TimeUnit.SECONDS);
+        LOGGER.info("Refresco del catálogo cada " + intervaloSegundos + " s (por diferencias: " + deltaDisponible + ")");
+    }
+
+    /**
+     * Detiene el refresco periódico
+     */
+    public synchronized void detenerRefresco() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Trae los productos modificados desde el último refresco. Sin la columna
+     * ultima_modificacion, o cada REFRESCOS_POR_RECARGA ciclos, recarga todo.
+     */
+    public void refrescar() {
+        try {
+            boolean completa;
+            synchronized (this) {
+                if (!cargado) {
+                    return; // Nadie lo ha usado todavía; se cargará en el primer acceso
+                }
+                completa = !deltaDisponible || marcaDelta == null || ++refrescosDesdeRecarga >= REFRESCOS_POR_RECARGA;
+            }
+            if (completa) {
+                recargar(false);
+                return;
+            }
+
+            // Consultas fuera del monitor para no bloquear las pantallas
+            Timestamp desde;
+            long inicio;
+            synchronized (this) {
+                desde = marcaDelta;
+                inicio = version.get();
+            }
+            Timestamp hasta = repository.obtenerUltimaModificacion();
+            if (hasta == null || !hasta.after(desde)) {
+                return;
+            }
+            List<ProductoInventario> modificados = repository.findModificadosEntre(desde, hasta);
+
+            synchronized (this) {
+                if (versionRecarga > inicio) {
+                    return; // Una recarga completa se adelantó; el próximo refresco sigue desde su marca
+                }
+                for (ProductoInventario producto : modificados) {
+                    if (puedeGuardar(producto, inicio)) {
+                        guardar(producto);
+                    }
+                }
+                marcaDelta = hasta;
+                refrescosDelta.increment();
+            }
+            if (!modificados.isEmpty()) {
+                LOGGER.fine("Catálogo: " + modificados.size() + " productos actualizados por diferencias");
+            }
+        } catch (SQLException e) {
+            LOGGER.warning("Error al refrescar el catálogo: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Obtiene las métricas actuales del catálogo
+     * @return Instantánea de las métricas
+     */
+    public synchronized EstadisticasCatalogo getEstadisticas() {
+        return new EstadisticasCatalogo(porCodigo.size(), version.get(), aciertos.sum(), fallos.sum(),
+                invalidaciones.sum(), recargasCompletas.sum(), refrescosDelta.sum());
+    }
+
+    /**
+     * Deja el catálogo listo para leer: lo carga si hace falta o vuelve a leer los
+     * productos invalidados. Se llama sin tener el monitor.
+     */
+    private void prepararLectura(boolean contarAcceso) {
+        boolean estabaCargado;
+        synchronized (this) {
+            estabaCargado = cargado;
+        }
+        if (contarAcceso) {
+            (estabaCargado ? aciertos : fallos).increment();
+        }
+        if (estabaCargado) {
+            refrescarPendientes();
+        } else {
+            recargar(true);
+        }
+    }
+
+    /**
+     * Lee todo el catálogo fuera del monitor y lo reemplaza de una vez
+     * @param soloSiFalta true para no recargar si otro hilo ya lo cargó mientras se esperaba
+     */
+    private void recargar(boolean soloSiFalta) {
+        synchronized (bloqueoRecarga) {
+            long inicio;
+            boolean consultarMarca;
+            synchronized (this) {
+                if (soloSiFalta && cargado) {
+                    return;
+                }
+                inicio = version.get();
+                consultarMarca = deltaDisponible;
+            }
+
+            Timestamp marca = null;
+            if (consultarMarca) {
+                try {
+                    // Tomar la marca antes de leer para no perder cambios concurrentes
+                    marca = repository.obtenerUltimaModificacion();
+                } catch (SQLException e) {
+                    synchronized (this) {
+                        deltaDisponible = false;
+                    }
+                    LOGGER.warning("No se pudo leer ultima_modificacion, el catálogo se recargará completo: "
+                            + e.getMessage());
+                }
+            }
+            List<ProductoInventario> productos = repository.findAll();
+
+            synchronized (this) {
+                reemplazar(productos, marca, inicio);
+            }
+        }
+    }
+
+    /**
+     * Reemplaza el catálogo por una lectura completa que empezó en la versión inicio.
+     * Lo que cambió desde entonces es más nuevo que esa lectura y se conserva.
+     */
+    private void reemplazar(List<ProductoInventario> productos, Timestamp marca, long inicio) {
+        List<Entrada> recientes = new ArrayList<>();
+        for (Entrada entrada : porCodigo.values()) {
+            if (entrada.version > inicio) {
+                recientes.add(entrada);
+            }
+        }
+        Map<String, Long> eliminadosRecientes = new HashMap<>();
+        eliminados.forEach((codigo, versionEliminado) -> {
+            if (versionEliminado > inicio) {
+                eliminadosRecientes.put(codigo, versionEliminado);
+            }
+        });
+        // Las invalidaciones anteriores a la lectura ya están en ella
+        pendientes.values().removeIf(versionInvalidacion -> versionInvalidacion <= inicio);
+
+        porCodigo.clear();
+        porId.clear();
+        eliminados.clear();
+        versionRecarga = version.incrementAndGet();
+        for (ProductoInventario producto : productos) {
+            if (!eliminadosRecientes.containsKey(producto.getCodigo()) && !pendientes.containsKey(producto.getCodigo())) {
+                guardar(producto);
+            }
+        }
+        for (Entrada entrada : recientes) {
+            guardar(entrada.producto);
+        }
+        eliminados.putAll(eliminadosRecientes);
+        marcaDelta = marca != null ? marca : new Timestamp(0);
+        refrescosDesdeRecarga = 0;
+        // Si se pidió otra recarga mientras se leía, se hará en el próximo acceso
+        cargado = recargaPedida <= inicio;
+        recargasCompletas.increment();
+    }
+
+    /**
+     * Vuelve a leer los productos invalidados, fuera del monitor. Una clave que se
+     * invalidó otra vez durante la lectura queda pendiente.
+     */
+    private void refrescarPendientes() {
+        List<String> claves;
+        long inicio;
+        synchronized (this) {
+            if (pendientes.isEmpty()) {
+                return;
+            }
+            claves = new ArrayList<>(pendientes.keySet());
+            inicio = version.get();
+        }
+
+        Map<String, ProductoInventario> leidos = new HashMap<>();
+        for (String clave : claves) {
+            leidos.put(clave, repository.findByCodigo(clave));
+        }
+
+        synchronized (this) {
+            for (String clave : claves) {
+                Long invalidada = pendientes.get(clave);
+                if (invalidada == null || invalidada > inicio) {
+                    continue; // Ya la refrescó otro hilo, o se invalidó de nuevo
+                }
+                pendientes.remove(clave);
+                ProductoInventario producto = leidos.get(clave);
+                if (producto != null) {
+                    guardar(producto);
+                } else {
+                    eliminados.put(clave, version.incrementAndGet());
+                }
+            }
+        }
+    }
+
+    /**
+     * Indica si una lectura que empezó en la versión inicio puede guardarse: el
+     * producto no se invalidó, modificó ni eliminó desde entonces
+     */
+    private boolean puedeGuardar(ProductoInventario producto, long inicio) {
+        String codigo = producto.getCodigo();
+        if (pendientes.containsKey(codigo)
+                || (tieneId(producto) && pendientes.containsKey(String.valueOf(producto.getIdProducto())))) {
+            return false;
+        }
+        Entrada actual = porCodigo.get(codigo);
+        if (actual != null && actual.version > inicio) {
+            return false;
+        }
+        return eliminados.getOrDefault(codigo, 0L) <= inicio && recargaPedida <= inicio;
+    }
+
+    private void guardar(ProductoInventario producto) {
+        Entrada anterior = porCodigo.get(producto.getCodigo());
+        if (anterior != null) {
+            quitar(anterior);
+        }
+        Entrada entrada = new Entrada(producto, version.incrementAndGet());
+        porCodigo.put(producto.getCodigo(), entrada);
+        eliminados.remove(producto.getCodigo());
+        if (tieneId(producto)) {
+            porId.put(String.valueOf(producto.getIdProducto()), entrada);
+        }
+    }
+
+    private void quitar(Entrada entrada) {
+        porCodigo.remove(entrada.producto.getCodigo());
+        if (tieneId(entrada.producto)) {
+            porId.remove(String.valueOf(entrada.producto.getIdProducto()));
+        }
+    }
+
+    // Con id VARCHAR el mapeo deja idProducto en 0; esos productos solo se indexan por código
+    private static boolean tieneId(ProductoInventario producto) {
+        return producto.getIdProducto() != null && producto.getIdProducto() != 0L;
+    }
+
+    private static class Entrada {
+        private final ProductoInventario producto;
+        private final long version;
+
+        Entrada(ProductoInventario producto, long version) {
+            this.producto = producto;
+            this.version = version;
+        }
+    }
+
+    /**
+     * Cambios del catálogo entre dos versiones
+     */
+    public static class CambiosCatalogo {
+        private final long version;
+        private final boolean completo;
+        private final List<ProductoInventario> productos;
+        private final List<String> eliminados;
+
+        public CambiosCatalogo(long version, boolean completo, List<ProductoInventario> productos, List<String> eliminados) {
+            this.version = version;
+            this.completo = completo;
+            this.productos = productos;
+            this.eliminados = eliminados;
+        }
+
+        /** Versión del catálogo a la que corresponden los cambios */
+        public long getVersion() { return version; }
+        /** true si hubo una recarga completa y se debe reconstruir todo */
+        public boolean isCompleto() { return completo; }
+        public List<ProductoInventario> getProductos() { return productos; }
+        public List<String> getEliminados() { return eliminados; }
+    }
+
+    /**
+     * Instantánea de las métricas del catálogo
+     */
+    public static class EstadisticasCatalogo {
+        private final int productos;
+        private final long version;
+        private final long aciertos;
+        private final long fallos;
+        private final long invalidaciones;
+        private final long recargasCompletas;
+        private final long refrescosDelta;
+
+        public EstadisticasCatalogo(int productos, long version, long aciertos, long fallos,
+                                    long invalidaciones, long recargasCompletas, long refrescosDelta) {
+            this.productos = productos;
+            this.version = version;
+            this.aciertos = aciertos;
+            this.fallos = fallos;
+            this.invalidaciones = invalidaciones;
+            this.recargasCompletas = recargasCompletas;
+            this.refrescosDelta = refrescosDelta;
+        }
+
+        public int getProductos() { return productos; }
+        public long getVersion() { return version; }
+        public long getAciertos() { return aciertos; }
+        public long getFallos() { return fallos; }
+        public long getInvalidaciones() { return invalidaciones; }
+        public long getRecargasCompletas() { return recargasCompletas; }
+        public long getRefrescosDelta() { return refrescosDelta; }
+
+        public double getTasaAciertos() {
+            long total = aciertos + fallos;
+            return total > 0 ? (double) aciertos / total : 0.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Catalogo{productos=%d, version=%d, aciertos=%d, fallos=%d, tasa=%.1f%%, " +
+                                 "invalidaciones=%d, recargas=%d, deltas=%d}",
+                                 productos, version, aciertos, fallos, getTasaAciertos() * 100,
+                                 invalidaciones, recargasCompletas, refrescosDelta);
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package com.distribuciones.omega.repository;
+
+import com.distribuciones.omega.model.CorreoPendiente;
+import com.distribuciones.omega.utils.DBUtil;
+
+import java.sql.*;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Repositorio de la bandeja de salida de correos (correos_pendientes).
+ *
+ * Los avisos se guardan aquí antes de enviarse, así no se pierden si el servidor
+ * SMTP no responde o la aplicación se cierra. El envío los reserva por lotes: cada
+ * fila reservada queda marcada con el identificador del lote y con una fecha de
+ * próximo intento en el futuro, de modo que si el proceso muere a mitad del envío
+ * vuelven a quedar disponibles cuando vence esa reserva.
+ */
+public class CorreoPendienteRepository {
+
+    private static final Logger LOGGER = Logger.getLogger(CorreoPendienteRepository.class.getName());
+
+    public static final String PENDIENTE = "PENDIENTE";
+    public static final String ENVIADO = "ENVIADO";
+    public static final String FALLIDO = "FALLIDO";
+
+    private static final String SELECT_CORREO =
+            "SELECT id, destinatario, asunto, cuerpo, clave, creado, intentos FROM correos_pendientes ";
+
+    /**
+     * Crea la tabla de la bandeja de salida si no existe
+     */
+    public void createTableIfNotExists() {
+        try (Connection conn = DBUtil.getConnection();
+             Statement stmt = conn.createStatement()) {
+
+            stmt.executeUpdate("CREATE TABLE IF NOT EXISTS correos_pendientes (" +
+                    "id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+                    "destinatario VARCHAR(255) NOT NULL, " +
+                    "asunto VARCHAR(255) NOT NULL, " +
+                    "cuerpo TEXT, " +
+                    "clave VARCHAR(100), " +
+                    "creado TIMESTAMP NOT NULL, " +
+                    "intentos INT NOT NULL DEFAULT 0, " +
+                    "proximo_intento TIMESTAMP NOT NULL, " +
+                    "estado VARCHAR(20) NOT NULL DEFAULT 'PENDIENTE', " +
+                    "lote VARCHAR(40), " +
+                    "enviado TIMESTAMP NULL, " +
+                    "ultimo_error VARCHAR(500))");
+
+            try {
+                stmt.executeUpdate("CREATE INDEX idx_correos_estado ON correos_pendientes (estado, proximo_intento)");
+            } catch (SQLException e) {
+                // El índice ya existe
+            }
+
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "Error al crear tabla correos_pendientes", e);
+        }
+    }
+
+    /**
+     * Guarda un correo para enviarlo lo antes posible
+     * @param correo Correo a encolar
+     * @return El correo con su ID asignado
+     * @throws SQLException Si no se pudo guardar
+     */
+    public CorreoPendiente encolar(CorreoPendiente correo) throws SQLException {
+        String sql = "INSERT INTO correos_pendientes (destinatario, asunto, cuerpo, clave, creado, proximo_intento, estado) " +
+                     "VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+        try (Connection conn = DBUtil.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+
+            Timestamp creado = Timestamp.valueOf(correo.getCreado());
+            stmt.setString(1, correo.getDestinatario());
+            stmt.setString(2, truncar(correo.getAsunto(), 255));
+            stmt.setString(3, correo.getCuerpo());
+            stmt.setString(4, correo.getClave());
+            stmt.setTimestamp(5, creado);
+            stmt.setTimestamp(6, creado);
+            stmt.setString(7, PENDIENTE);
+            stmt.executeUpdate();
+
+            try (ResultSet rs = stmt.getGeneratedKeys()) {
+                if (rs.next()) {
+                    correo.setId(rs.getLong(1));
+                }
+            }
+            return correo;
+        }
+    }
+
+    /**
+     * Reserva hasta {@code limite} correos pendientes cuyo intento ya venció.
+     * Las filas reservadas no vuelven a entregarse hasta que pasen
+     * {@code segundosReserva} segundos, salvo que se marquen o reprogramen antes.
+     * @param limite Máximo de correos a reservar
+     * @param segundosReserva Tiempo que dura la reserva
+     * @return Correos reservados, del más antiguo al más reciente
+     * @throws SQLException Si hubo un error de base de datos
+     */
+    public List<CorreoPendiente> reservarPendientes(int limite, int segundosReserva) throws SQLException {
+        LocalDateTime ahora = LocalDateTime.now();
+        String lote = UUID.randomUUID().toString();
+        List<Long> ids = new ArrayList<>();
+
+        try (Connection conn = DBUtil.getConnection()) {
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "SELECT id FROM correos_pendientes WHERE estado = ? AND proximo_intento <= ? ORDER BY id LIMIT ?")) {
+                stmt.setString(1, PENDIENTE);
+                stmt.setTimestamp(2, Timestamp.valueOf(ahora));
+                stmt.setInt(3, limite);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        ids.add(rs.getLong(1));
+                    }
+                }
+            }
+            if (ids.isEmpty()) {
+                return new ArrayList<>();
+            }
+
+            // La condición sobre proximo_intento evita tomar filas que otra instancia
+            // reservó entre la consulta y esta actualización
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "UPDATE correos_pendientes SET lote = ?, proximo_intento = ? " +
+                    "WHERE id IN (" + marcadores(ids.size()) + ") AND estado = ? AND proximo_intento <= ?")) {
+                int i = 1;
+                stmt.setString(i++, lote);
+                stmt.setTimestamp(i++, Timestamp.valueOf(ahora.plusSeconds(segundosReserva)));
+                for (Long id : ids) {
+                    stmt.setLong(i++, id);
+                }
+                stmt.setString(i++, PENDIENTE);
+                stmt.setTimestamp(i, Timestamp.valueOf(ahora));
+                stmt.executeUpdate();
+            }
+
+            List<CorreoPendiente> correos = new ArrayList<>();
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    SELECT_CORREO + "WHERE lote = ? AND estado = ? ORDER BY id")) {
+                stmt.setString(1, lote);
+                stmt.setString(2, PENDIENTE);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        correos.add(mapear(rs));
+                    }
+                }
+            }
+            return correos;
+        }
+    }
+
+    /**
+     * Marca como enviados los correos indicados
+     * @param ids IDs de los correos
+     * @throws SQLException Si hubo un error de base de datos
+     */
+    public void marcarEnviados(List<Long> ids) throws SQLException {
+        if (ids.isEmpty()) {
+            return;
+        }
+        String sql = "UPDATE correos_pendientes SET estado = ?, enviado = ?, lote = NULL, ultimo_error = NULL " +
+                     "WHERE id IN (" + marcadores(ids.size()) + ")";
+
+        try (Connection conn = DBUtil.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            int i = 1;
+            stmt.setString(i++, ENVIADO);
+            stmt.setTimestamp(i++, Timestamp.valueOf(LocalDateTime.now()));
+            for (Long id : ids) {
+                stmt.setLong(i++, id);
+            }
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Registra un intento fallido y programa el siguiente, o da el correo por
+     * fallido si ya no quedan intentos
+     * @param id ID del correo
+     * @param intentos Intentos realizados contando este
+     * @param proximoIntento Fecha del siguiente intento
+     * @param fallido true si no se debe volver a intentar
+     * @param error Descripción del error
+     * @throws SQLException Si hubo un error de base de datos
+     */
+    public void reprogramar(Long id, int intentos, LocalDateTime proximoIntento, boolean fallido, String error)
+            throws SQLException {
+        String sql = "UPDATE correos_pendientes SET intentos = ?, proximo_intento = ?, estado = ?, lote = NULL, " +
+                     "ultimo_error = ? WHERE id = ?";
+
+        try (Connection conn = DBUtil.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, intentos);
+            stmt.setTimestamp(2, Timestamp.valueOf(proximoIntento));
+            stmt.setString(3, fallido ? FALLIDO : PENDIENTE);
+            stmt.setString(4, truncar(error, 500));
+            stmt.setLong(5, id);
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Cuenta los correos que siguen pendientes de envío (incluidos los reservados
+     * y los que esperan un reintento)
+     * @return Cantidad de correos pendientes
+     * @throws SQLException Si hubo un error de base de datos
+     */
+    public int contarPendientes() throws SQLException {
+        try (Connection conn = DBUtil.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "SELECT COUNT(*) FROM correos_pendientes WHERE estado = ?")) {
+            stmt.setString(1, PENDIENTE);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    /**
+     * Borra los correos enviados antes de la fecha indicada
+     * @param antesDe Fecha límite
+     * @return Cantidad de filas borradas
+     * @throws SQLException Si hubo un error de base de datos
+     */
+    public int purgarEnviados(LocalDateTime antesDe) throws SQLException {
+        try (Connection conn = DBUtil.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "DELETE FROM correos_pendientes WHERE estado = ? AND enviado < ?")) {
+            stmt.setString(1, ENVIADO);
+            stmt.setTimestamp(2, Timestamp.valueOf(antesDe));
+            return stmt.executeUpdate();
+        }
+    }
+
+    private CorreoPendiente mapear(ResultSet rs) throws SQLException {
+        CorreoPendiente correo = new CorreoPendiente();
+        correo.setId(rs.getLong("id"));
+        correo.setDestinatario(rs.getString("destinatario"));
+        correo.setAsunto(rs.getString("asunto"));
+        correo.setCuerpo(rs.getString("cuerpo"));
+        correo.setClave(rs.getString("clave"));
+        Timestamp creado = rs.getTimestamp("creado");
+        correo.setCreado(creado != null ? creado.toLocalDateTime() : null);
+        correo.setIntentos(rs.getInt("intentos"));
+        return correo;
+    }
+
+    private static String marcadores(int cantidad) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < cantidad; i++) {
+            sb.append(i == 0 ? "?" : ", ?");
+        }
+        return sb.toString();
+    }
+
+    private static String truncar(String texto, int largo) {
+        return texto != null && texto.length() > largo ? texto.substring(0, largo) : texto;
+    }
+}
@@ -6,6 +6,7 @@ import com.distribuciones.omega.model.ItemCotizacion;
 import com.distribuciones.omega.model.ProductoInventario;
 import com.distribuciones.omega.model.Usuario;
 import com.distribuciones.omega.utils.DBUtil;
+import com.distribuciones.omega.utils.SecuenciaDocumentos;
 
 import java.sql.*;
 import java.time.LocalDateTime;
@@ -27,6 +28,85 @@ public class CotizacionRepository {
         this.inventarioRepository = new InventarioRepository();
     }
 
+    /**
+     * Tabla de ítems de cotización en uso (items_cotizacion o, en bases antiguas,
+     * detalle_cotizacion). Se resuelve en el primer guardado y se reutiliza, así
+     * cada cotización no paga consultas extra de metadatos.
+     */
+    private static volatile String tablaItems;
+    
+    private String resolverTablaItems(Connection conn) throws SQLException {
+        String tabla = tablaItems;
+        if (tabla != null) {
+            return tabla;
+        }
+        
+        synchronized (CotizacionRepository.class) {
+            if (tablaItems == null) {
+                if (existeTabla(conn, "items_cotizacion")) {
+                    tablaItems = "items_cotizacion";
+                } else if (existeTabla(conn, "detalle_cotizacion")) {
+                    tablaItems = "detalle_cotizacion";
+                } else {
+                    System.out.println("Creando tabla items_cotizacion...");
+                    crearTablaItems(conn);
+                    tablaItems = "items_cotizacion";
+                }
+                System.out.println("Usando tabla: " + tablaItems);
+            }
+            return tablaItems;
+        }
+    }
+    
+    private boolean existeTabla(Connection conn, String nombre) throws SQLException {
+        DatabaseMetaData meta = conn.getMetaData();
+        for (String candidato : new String[] {nombre, nombre.toUpperCase()}) {
+            try (ResultSet rs = meta.getTables(conn.getCatalog(), null, candidato, new String[] {"TABLE"})) {
+                if (rs.next()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    private void crearTablaItems(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            // Obtener el tipo y nombre de la clave primaria de productos
+            String idTipo = "VARCHAR(20)"; // Por defecto
+            String idColumna = "id"; // Por defecto
+
+            try (ResultSet rsColumns = stmt.executeQuery("DESCRIBE productos")) {
+                while (rsColumns.next()) {
+                    if ("PRI".equals(rsColumns.getString("Key"))) {
+                        idColumna = rsColumns.getString("Field");
+                        idTipo = rsColumns.getString("Type");
+                        break;
+                    }
+                }
+            }
+
+            String sql = "CREATE TABLE items_cotizacion (" +
+                        "id INT AUTO_INCREMENT PRIMARY KEY, " +
+                        "cotizacion_id INT NOT NULL, " +
+                        "producto_id " + idTipo + " NOT NULL, " +
+                        "cantidad INT NOT NULL, " +
+                        "precio_unitario DECIMAL(10,2) NOT NULL, " +
+                        "subtotal DECIMAL(10,2) NOT NULL, " +
+                        "INDEX (cotizacion_id), " +
+                        "INDEX (producto_id), " +
+                        "FOREIGN KEY (cotizacion_id) REFERENCES cotizaciones(id_cotizacion), " +
+                        "FOREIGN KEY (producto_id) REFERENCES productos(" + idColumna + ")" +
+                        ")";
+
+            stmt.executeUpdate(sql);
+            System.out.println("Tabla items_cotizacion creada exitosamente");
+        } catch (SQLException e) {
+            System.err.println("Error al verificar o crear tabla de items: " + e.getMessage());
+            throw e;
+        }
+    }
+
     /**
      * Guarda una nueva cotización en la base de datos
      * @param cotizacion Cotización a guardar
@@ -38,70 +118,7 @@ public class CotizacionRepository {
             conn = DBUtil.getConnection();
             conn.setAutoCommit(false);
             
-            // Verificar la existencia de la tabla items_cotizacion o detalle_cotizacion
-            boolean tablaExiste = false;
-            String nombreTablaItems = "";
-            
-            try (Statement stmt = conn.createStatement()) {
-                // Verificar si existe items_cotizacion
-                try (ResultSet rs = stmt.executeQuery("SHOW TABLES LIKE 'items_cotizacion'")) {
-                    if (rs.next()) {
-                        tablaExiste = true;
-                        nombreTablaItems = "items_cotizacion";
-                        System.out.println("Usando tabla: items_cotizacion");
-                    }
-                }
-                
-                // Si no existe, verificar si existe detalle_cotizacion
-                if (!tablaExiste) {
-                    try (ResultSet rs = stmt.executeQuery("SHOW TABLES LIKE 'detalle_cotizacion'")) {
-                        if (rs.next()) {
-                            tablaExiste = true;
-                            nombreTablaItems = "detalle_cotizacion";
-                            System.out.println("Usando tabla: detalle_cotizacion");
-                        }
-                    }
-                }
-                
-                // Si ninguna tabla existe, crearla
-                if (!tablaExiste) {
-                    System.out.println("Creando tabla items_cotizacion...");
-                    
-                    // Obtener el tipo y nombre de la clave primaria de productos
-                    String idTipo = "VARCHAR(20)"; // Por defecto
-                    String idColumna = "id"; // Por defecto
-                    
-                    try (ResultSet rsColumns = stmt.executeQuery("DESCRIBE productos")) {
-                        while (rsColumns.next()) {
-                            if ("PRI".equals(rsColumns.getString("Key"))) {
-                                idColumna = rsColumns.getString("Field");
-                                idTipo = rsColumns.getString("Type");
-                                break;
-                            }
-                        }
-                    }
-                    
-                    String sql = "CREATE TABLE items_cotizacion (" +
-                                "id INT AUTO_INCREMENT PRIMARY KEY, " +
-                                "cotizacion_id INT NOT NULL, " +
-                                "producto_id " + idTipo + " NOT NULL, " +
-                                "cantidad INT NOT NULL, " +
-                                "precio_unitario DECIMAL(10,2) NOT NULL, " +
-                                "subtotal DECIMAL(10,2) NOT NULL, " +
-                                "INDEX (cotizacion_id), " +
-                                "INDEX (producto_id), " +
-                                "FOREIGN KEY (cotizacion_id) REFERENCES cotizaciones(id_cotizacion), " +
-                                "FOREIGN KEY (producto_id) REFERENCES productos(" + idColumna + ")" +
-                                ")";
-                    
-                    stmt.executeUpdate(sql);
-                    nombreTablaItems = "items_cotizacion";
-                    System.out.println("Tabla items_cotizacion creada exitosamente");
-                }
-            } catch (SQLException e) {
-                System.err.println("Error al verificar o crear tabla de items: " + e.getMessage());
-                throw e;
-            }
+            String nombreTablaItems = resolverTablaItems(conn);
             
             // 1. Insertar la cotización
             String sqlCotizacion = "INSERT INTO cotizaciones (numero_cotizacion, cliente_id, vendedor_id, fecha, " +
@@ -109,7 +126,9 @@ public class CotizacionRepository {
                                  "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
             
             try (PreparedStatement stmt = conn.prepareStatement(sqlCotizacion, Statement.RETURN_GENERATED_KEYS)) {
-                stmt.setString(1, generarNumeroCotizacion());
+                String numero = generarNumeroCotizacion();
+                cotizacion.setNumeroCotizacion(numero);
+                stmt.setString(1, numero);
                 stmt.setLong(2, cotizacion.getCliente().getIdCliente());
                 stmt.setLong(3, cotizacion.getVendedor().getIdUsuario());
                 stmt.setTimestamp(4, Timestamp.valueOf(cotizacion.getFecha()));
@@ -492,45 +511,12 @@ public class CotizacionRepository {
     }
     
     /**
-     * Genera un número de cotización
-     * @return Número de cotización generado
+     * Genera un número de cotización desde los bloques de numeración reservados en la base de datos
+     * @return Número de cotización generado (formato COT-YYYYMMDD-XXXX)
+     * @throws SQLException Si no se pudo reservar numeración
      */
-    private String generarNumeroCotizacion() {
-        // Formato: COT-YYYYMMDD-XXXX donde XXXX es un número secuencial
-        LocalDateTime now = LocalDateTime.now();
-        String fecha = String.format("%04d%02d%02d", now.getYear(), now.getMonthValue(), now.getDayOfMonth());
-        
-        // Obtener el último número de cotización del día
-        String sql = "SELECT numero_cotizacion FROM cotizaciones " +
-                     "WHERE numero_cotizacion LIKE 'COT-" + fecha + "-%' " +
-                     "ORDER BY id_cotizacion DESC LIMIT 1";  // Cambiado de "id" a "id_cotizacion"
-        
-        try (Connection conn = DBUtil.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-            
-            int secuencia = 1;
-            
-            if (rs.next()) {
-                String ultimaCotizacion = rs.getString("numero_cotizacion");
-                String[] partes = ultimaCotizacion.split("-");
-                if (partes.length == 3) {
-                    try {
-                        secuencia = Integer.parseInt(partes[2]) + 1;
-                    } catch (NumberFormatException e) {
-                        // Si hay error de formato, usar 1
-                        secuencia = 1;
-                    }
-                }
-            }
-            
-            return String.format("COT-%s-%04d", fecha, secuencia);
-            
-        } catch (SQLException e) {
-            e.printStackTrace();
-            // En caso de error, generar un número aleatorio
-            return String.format("COT-%s-%04d", fecha, (int)(Math.random() * 9000) + 1000);
-        }
+    private String generarNumeroCotizacion() throws SQLException {
+        return SecuenciaDocumentos.getInstance().siguiente(SecuenciaDocumentos.TipoDocumento.COTIZACION);
     }
 
     /**
@@ -2,26 +2,51 @@ package com.distribuciones.omega.repository;
 
 import com.distribuciones.omega.model.*;
 import com.distribuciones.omega.utils.DBUtil;
+import com.distribuciones.omega.utils.Dinero;
+import com.distribuciones.omega.utils.LogUtil;
 
 import java.sql.*;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Repositorio para operaciones CRUD de Facturas
  */
 public class FacturaRepository {
 
+    private static final Logger LOGGER = Logger.getLogger(FacturaRepository.class.getName());
+
     private final InventarioRepository inventarioRepository;
     private final ClienteRepository clienteRepository;
     private final UsuarioRepository usuarioRepository;
+    private final VentasDiariasRepository ventasDiariasRepository;
+    
+    // Cabeceras de factura con su cliente y vendedor en una sola fila
+    private static final String SELECT_CABECERAS = "SELECT f.*, " +
+            "c.id_cliente AS c_id_cliente, c.nombre AS c_nombre, c.id AS c_id, c.email AS c_email, " +
+            "c.telefono AS c_telefono, c.direccion AS c_direccion, c.activo AS c_activo, " +
+            "c.mayorista AS c_mayorista, c.limite_credito AS c_limite_credito, " +
+            "u.id_usuario AS u_id_usuario, u.username AS u_username, u.nombre AS u_nombre, " +
+            "u.rol AS u_rol, u.activo AS u_activo " +
+            "FROM facturas f " +
+            "LEFT JOIN clientes c ON c.id_cliente = f.cliente_id " +
+            "LEFT JOIN usuarios u ON u.id_usuario = f.vendedor_id ";
     
     public FacturaRepository() {
         this.inventarioRepository = new InventarioRepository();
         this.clienteRepository = new ClienteRepository();
         this.usuarioRepository = new UsuarioRepository();
+        this.ventasDiariasRepository = new VentasDiariasRepository();
     }
     
     /**
@@ -35,20 +60,15 @@ public class FacturaRepository {
         PreparedStatement stmtItems = null;
         PreparedStatement stmtDetalle = null;
         
-        // Añadir diagnóstico
-        System.out.println("Guardando factura: " + factura.getNumeroFactura());
-        System.out.println("Número de ítems a guardar: " + (factura.getItems() != null ? factura.getItems().size() : 0));
-        
         if (factura.getItems() == null || factura.getItems().isEmpty()) {
-            System.out.println("ADVERTENCIA: La factura no tiene ítems para guardar!");
-        } else {
-            for (int i = 0; i < factura.getItems().size(); i++) {
-                ItemFactura item = factura.getItems().get(i);
-                System.out.println("Ítem " + (i+1) + ": " + 
-                                "Producto=" + (item.getProducto() != null ? item.getProducto().getDescripcion() : "NULL") + 
-                                ", Código=" + (item.getProducto() != null ? item.getProducto().getCodigo() : "NULL") +
-                                ", Cantidad=" + item.getCantidad() + 
-                                ", Subtotal=" + item.getSubtotal());
+            LOGGER.warning(() -> "La factura " + factura.getNumeroFactura() + " no tiene ítems para guardar");
+        } else if (LOGGER.isLoggable(Level.FINE)) {
+            for (ItemFactura item : factura.getItems()) {
+                LogUtil.evento(LOGGER, Level.FINE, "Ítem de factura",
+                        "factura", factura.getNumeroFactura(),
+                        "sku", item.getProducto() != null ? item.getProducto().getCodigo() : null,
+                        "cantidad", item.getCantidad(),
+                        "subtotal", item.getSubtotal());
             }
         }
         
@@ -74,10 +94,10 @@ public class FacturaRepository {
                 stmtFactura.setNull(5, Types.BIGINT);
             }
             
-            stmtFactura.setDouble(6, factura.getSubtotal());
-            stmtFactura.setDouble(7, factura.getDescuento());
-            stmtFactura.setDouble(8, factura.getIva());
-            stmtFactura.setDouble(9, factura.getTotal());
+            Dinero.escribir(stmtFactura, 6, factura.getSubtotal());
+            Dinero.escribir(stmtFactura, 7, factura.getDescuento());
+            Dinero.escribir(stmtFactura, 8, factura.getIva());
+            Dinero.escribir(stmtFactura, 9, factura.getTotal());
             stmtFactura.setBoolean(10, factura.isAnulada());
             
             // Campos de anulación pueden ser null
@@ -110,7 +130,6 @@ public class FacturaRepository {
             try (ResultSet generatedKeys = stmtFactura.getGeneratedKeys()) {
                 if (generatedKeys.next()) {
                     factura.setId(generatedKeys.getLong(1));
-                    System.out.println("Factura creada con ID: " + factura.getId());
                 } else {
                     throw new SQLException("La creación de la factura falló, no se obtuvo el ID.");
                 }
@@ -119,8 +138,6 @@ public class FacturaRepository {
             // Verificar si hay ítems para guardar
             if (factura.getItems() != null && !factura.getItems().isEmpty()) {
                 // 1. Insertar en items_factura
-                System.out.println("Intentando guardar " + factura.getItems().size() + " ítems en items_factura...");
-                
                 String sqlItems = "INSERT INTO items_factura (factura_id, producto_id, cantidad, precio_unitario, descuento, subtotal) " +
                             "VALUES (?, ?, ?, ?, ?, ?)";
                 
@@ -132,36 +149,31 @@ public class FacturaRepository {
                         
                         // Verificar que el producto no sea null y tenga un código válido
                         if (item.getProducto() == null) {
-                            System.out.println("ADVERTENCIA: Item con producto NULL, saltando...");
+                            LOGGER.warning(() -> "Ítem sin producto en la factura " + factura.getNumeroFactura() + ", se omite");
                             continue;
                         }
                         
                         // Preparar los campos usando getCodigo() en lugar de getId()
                         stmtItems.setString(2, item.getProducto().getCodigo());
                         stmtItems.setInt(3, item.getCantidad());
-                        stmtItems.setDouble(4, item.getPrecioUnitario());
-                        stmtItems.setDouble(6, item.getSubtotal());
+                        Dinero.escribir(stmtItems, 4, item.getPrecioUnitario());
+                        Dinero.escribir(stmtItems, 5, item.getDescuento());
+                        Dinero.escribir(stmtItems, 6, item.getSubtotal());
                         
                         stmtItems.addBatch();
-                        System.out.println("Ítem añadido al batch: producto=" + item.getProducto().getCodigo());
                     } catch (Exception e) {
-                        System.err.println("Error al preparar ítem para items_factura: " + e.getMessage());
-                        e.printStackTrace();
+                        LOGGER.log(Level.WARNING, "Error al preparar ítem para items_factura", e);
                     }
                 }
                 
                 try {
-                    int[] batchResults = stmtItems.executeBatch();
-                    System.out.println("Resultados del batch items_factura: " + Arrays.toString(batchResults));
+                    stmtItems.executeBatch();
                 } catch (SQLException e) {
-                    System.err.println("Error al ejecutar batch de items_factura: " + e.getMessage());
-                    e.printStackTrace();
+                    LOGGER.log(Level.SEVERE, "Error al ejecutar batch de items_factura", e);
                     // No lanzamos la excepción para permitir la segunda inserción
                 }
                 
                 // 2. También insertar en detalle_factura para compatibilidad
-                System.out.println("Intentando guardar " + factura.getItems().size() + " ítems en detalle_factura...");
-                
                 try {
                     String sqlDetalle = "INSERT INTO detalle_factura (id_factura, id, cantidad, precio_unitario, subtotal) " +
                                     "VALUES (?, ?, ?, ?, ?)";
@@ -171,44 +183,39 @@ public class FacturaRepository {
                     for (ItemFactura item : factura.getItems()) {
                         try {
                             if (item.getProducto() == null) {
-                                System.out.println("ADVERTENCIA: Item con producto NULL, saltando...");
                                 continue;
                             }
                             
                             stmtDetalle.setLong(1, factura.getId());
                             stmtDetalle.setString(2, item.getProducto().getCodigo());
                             stmtDetalle.setInt(3, item.getCantidad());
-                            stmtDetalle.setDouble(4, item.getPrecioUnitario());
-                            stmtDetalle.setDouble(5, item.getSubtotal());
+                            Dinero.escribir(stmtDetalle, 4, item.getPrecioUnitario());
+                            Dinero.escribir(stmtDetalle, 5, item.getSubtotal());
                             
                             stmtDetalle.addBatch();
-                            System.out.println("Ítem añadido al batch detalle_factura: producto=" + item.getProducto().getCodigo());
                         } catch (Exception e) {
-                            System.err.println("Error al preparar ítem para detalle_factura: " + e.getMessage());
-                            e.printStackTrace();
+                            LOGGER.log(Level.WARNING, "Error al preparar ítem para detalle_factura", e);
                         }
                     }
                     
                     try {
-                        int[] batchResults = stmtDetalle.executeBatch();
-                        System.out.println("Resultados del batch detalle_factura: " + Arrays.toString(batchResults));
+                        stmtDetalle.executeBatch();
                     } catch (SQLException e) {
-                        System.err.println("Error al ejecutar batch de detalle_factura: " + e.getMessage());
-                        e.printStackTrace();
+                        LOGGER.log(Level.WARNING, "Error al ejecutar batch de detalle_factura", e);
                         // Continuamos aunque falle detalle_factura
                     }
                 } catch (SQLException e) {
-                    System.err.println("Error al crear prepared statement para detalle_factura: " + e.getMessage());
-                    e.printStackTrace();
+                    LOGGER.log(Level.WARNING, "Error al crear prepared statement para detalle_factura", e);
                     // Continuamos aunque falle detalle_factura
                 }
-            } else {
-                System.out.println("No hay ítems para guardar en la factura " + factura.getNumeroFactura());
             }
             
+            // Acumulados diarios de ventas; si fallan no se pierde la factura, el día se recalcula luego
+            ventasDiariasRepository.registrarFactura(conn, factura);
+            
             // Confirmar la transacción
             conn.commit();
-            System.out.println("Transacción completada y confirmada exitosamente");
+            LOGGER.fine(() -> "Factura " + factura.getNumeroFactura() + " guardada con ID " + factura.getId());
             
             return factura;
             
@@ -216,14 +223,11 @@ public class FacturaRepository {
             try {
                 if (conn != null) {
                     conn.rollback();
-                    System.out.println("Transacción revertida debido a un error");
                 }
             } catch (SQLException ex) {
-                System.err.println("Error al revertir la transacción: " + ex.getMessage());
-                ex.printStackTrace();
+                LOGGER.log(Level.SEVERE, "Error al revertir la transacción", ex);
             }
-            System.err.println("Error al guardar factura: " + e.getMessage());
-            e.printStackTrace();
+            LOGGER.log(Level.SEVERE, "Error al guardar la factura " + factura.getNumeroFactura(), e);
             return null;
         } finally {
             try {
@@ -235,8 +239,7 @@ public class FacturaRepository {
                     conn.close();
                 }
             } catch (SQLException e) {
-                System.err.println("Error al cerrar recursos: " + e.getMessage());
-                e.printStackTrace();
+                LOGGER.log(Level.WARNING, "Error al cerrar recursos", e);
             }
         }
     }
@@ -531,9 +534,9 @@ public class FacturaRepository {
                 pstmt.setLong(1, facturaId);
                 pstmt.setString(2, codigo);
                 pstmt.setInt(3, cantidad);
-                pstmt.setDouble(4, precio);
-                pstmt.setDouble(5, descuento);
-                pstmt.setDouble(6, subtotal);
+                Dinero.escribir(pstmt, 4, precio);
+                Dinero.escribir(pstmt, 5, descuento);
+                Dinero.escribir(pstmt, 6, subtotal);
                 
                 pstmt.addBatch();
                 itemsCreados++;
@@ -569,8 +572,8 @@ public class FacturaRepository {
                     pstmtDetalle.setLong(1, facturaId);
                     pstmtDetalle.setString(2, codigo);
                     pstmtDetalle.setInt(3, cantidad);
-                    pstmtDetalle.setDouble(4, precio);
-                    pstmtDetalle.setDouble(5, subtotal);
+                    Dinero.escribir(pstmtDetalle, 4, precio);
+                    Dinero.escribir(pstmtDetalle, 5, subtotal);
                     
                     pstmtDetalle.addBatch();
                 }
@@ -632,10 +635,10 @@ public class FacturaRepository {
                 stmt.setNull(5, Types.BIGINT);
             }
             
-            stmt.setDouble(6, factura.getSubtotal());
-            stmt.setDouble(7, factura.getDescuento());
-            stmt.setDouble(8, factura.getIva());
-            stmt.setDouble(9, factura.getTotal());
+            Dinero.escribir(stmt, 6, factura.getSubtotal());
+            Dinero.escribir(stmt, 7, factura.getDescuento());
+            Dinero.escribir(stmt, 8, factura.getIva());
+            Dinero.escribir(stmt, 9, factura.getTotal());
             stmt.setBoolean(10, factura.isAnulada());
             
             // Motivo de anulación puede ser null
@@ -673,7 +676,7 @@ public class FacturaRepository {
             
             // Ejecutar la actualización
             int rowsAffected = stmt.executeUpdate();
-            System.out.println("Factura actualizada: " + factura.getId() + " - Filas afectadas: " + rowsAffected);
+            LOGGER.fine(() -> "Factura actualizada: " + factura.getId() + " - Filas afectadas: " + rowsAffected);
             
             return rowsAffected > 0;
             
@@ -684,6 +687,45 @@ public class FacturaRepository {
         }
     }
 
+    /**
+     * Anula una factura vigente y la descuenta de las ventas diarias en la misma
+     * transacción. La condición sobre anulada evita descontarla dos veces.
+     * @param facturaId ID de la factura
+     * @param motivo Motivo de la anulación
+     * @return true si la factura se anuló en esta llamada
+     */
+    public boolean anular(Long facturaId, String motivo) {
+        String sql = "UPDATE facturas SET anulada = true, motivo_anulacion = ?, fecha_anulacion = ? " +
+                    "WHERE id_factura = ? AND anulada = false";
+        
+        try (Connection conn = DBUtil.getConnection()) {
+            DBUtil.beginTransaction(conn);
+            try {
+                int filas;
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    stmt.setString(1, motivo);
+                    stmt.setTimestamp(2, Timestamp.valueOf(LocalDateTime.now()));
+                    stmt.setLong(3, facturaId);
+                    filas = stmt.executeUpdate();
+                }
+                
+                if (filas > 0) {
+                    // Si fallan los acumulados la anulación se guarda igual y el día se recalcula luego
+                    ventasDiariasRepository.registrarAnulacion(conn, facturaId);
+                }
+                
+                DBUtil.commitTransaction(conn);
+                return filas > 0;
+            } catch (SQLException e) {
+                DBUtil.rollbackTransaction(conn);
+                throw e;
+            }
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "Error al anular la factura " + facturaId, e);
+            return false;
+        }
+    }
+
     /**
      * Guarda un item de factura en la base de datos
      * @param item Item a guardar
@@ -699,9 +741,9 @@ public class FacturaRepository {
             stmt.setLong(1, item.getFacturaId());
             stmt.setString(2, item.getProducto().getCodigo());
             stmt.setInt(3, item.getCantidad());
-            stmt.setDouble(4, item.getPrecioUnitario());
-            stmt.setDouble(5, 0.0); // Descuento por defecto
-            stmt.setDouble(6, item.getSubtotal());
+            Dinero.escribir(stmt, 4, item.getPrecioUnitario());
+            Dinero.escribir(stmt, 5, 0.0); // Descuento por defecto
+            Dinero.escribir(stmt, 6, item.getSubtotal());
             
             int affectedRows = stmt.executeUpdate();
             return affectedRows > 0;
@@ -789,25 +831,25 @@ public class FacturaRepository {
                     ProductoInventario producto = new ProductoInventario();
                     producto.setCodigo(rs.getString("producto_id"));
                     producto.setDescripcion("Producto " + rs.getString("producto_id")); // Descripción genérica
-                    producto.setPrecio(rs.getDouble("precio_unitario"));
+                    producto.setPrecio(Dinero.leerMonto(rs, "precio_unitario"));
                     
                     item.setProducto(producto);
                     item.setCantidad(rs.getInt("cantidad"));
-                    item.setPrecioUnitario(rs.getDouble("precio_unitario"));
+                    item.setPrecioUnitario(Dinero.leerMonto(rs, "precio_unitario"));
                     
                     // Intentar obtener descuento si existe
                     try {
-                        item.setDescuento(rs.getDouble("descuento"));
+                        item.setDescuento(Dinero.leerMonto(rs, "descuento"));
                     } catch (SQLException e) {
                         item.setDescuento(0.0);
                     }
                     
-                    item.setSubtotal(rs.getDouble("subtotal"));
+                    item.setSubtotal(Dinero.leerMonto(rs, "subtotal"));
                     
                     items.add(item);
                 }
                 
-                System.out.println("Cargados " + items.size() + " items de factura ID: " + facturaId);
+                LOGGER.fine(() -> "Cargados " + items.size() + " ítems de factura ID: " + facturaId);
             }
             
         } catch (SQLException e) {
@@ -832,17 +874,17 @@ public class FacturaRepository {
                         ProductoInventario producto = new ProductoInventario();
                         producto.setCodigo(rs.getString("id"));
                         producto.setDescripcion("Producto " + rs.getString("id")); // Descripción genérica
-                        producto.setPrecio(rs.getDouble("precio_unitario"));
+                        producto.setPrecio(Dinero.leerMonto(rs, "precio_unitario"));
                         
                         item.setProducto(producto);
                         item.setCantidad(rs.getInt("cantidad"));
-                        item.setPrecioUnitario(rs.getDouble("precio_unitario"));
-                        item.setSubtotal(rs.getDouble("subtotal"));
+                        item.setPrecioUnitario(Dinero.leerMonto(rs, "precio_unitario"));
+                        item.setSubtotal(Dinero.leerMonto(rs, "subtotal"));
                         
                         items.add(item);
                     }
                     
-                    System.out.println("Fallback: Cargados " + items.size() + " items de detalle_factura ID: " + facturaId);
+                    LOGGER.fine(() -> "Cargados " + items.size() + " ítems desde detalle_factura para la factura ID: " + facturaId);
                 }
                 
             } catch (SQLException ex) {
@@ -917,28 +959,13 @@ public class FacturaRepository {
      * @return Lista de facturas en el rango
      */
     public List<Factura> findByFechaBetween(LocalDateTime fechaInicio, LocalDateTime fechaFin) {
-        List<Factura> facturas = new ArrayList<>();
-        String sql = "SELECT * FROM facturas WHERE fecha BETWEEN ? AND ? ORDER BY fecha DESC";
-        
-        try (Connection conn = DBUtil.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            
-            stmt.setTimestamp(1, Timestamp.valueOf(fechaInicio));
-            stmt.setTimestamp(2, Timestamp.valueOf(fechaFin));
-            
-            ResultSet rs = stmt.executeQuery();
-            
-            while (rs.next()) {
-                Factura factura = mapResultSetToFactura(rs);
-                factura.setItems(findItemsByFacturaId(factura.getId()));
-                facturas.add(factura);
-            }
-            
+        try {
+            return cargarFacturasEnLote("f.fecha BETWEEN ? AND ?",
+                    Timestamp.valueOf(fechaInicio), Timestamp.valueOf(fechaFin));
         } catch (SQLException e) {
             e.printStackTrace();
+            return new ArrayList<>();
         }
-        
-        return facturas;
     }
 
     
@@ -979,87 +1006,60 @@ public class FacturaRepository {
     private void cargarItemsFactura(Factura factura) {
         if (factura == null) return;
         
-        // Ejecutar diagnóstico primero
-        System.out.println("Diagnóstico antes de cargar ítems para factura ID: " + factura.getId());
-        diagnosticarTablas();
-        
         List<ItemFactura> items = new ArrayList<>();
-        boolean tablaItemsExiste = false;
-        boolean tablaDetalleExiste = false;
         
-        // Verificar si las tablas existen
-        try (Connection conn = DBUtil.getConnection()) {
-            DatabaseMetaData meta = conn.getMetaData();
-            
-            ResultSet tablas = meta.getTables(null, null, "items_factura", null);
-            tablaItemsExiste = tablas.next();
-            
-            tablas = meta.getTables(null, null, "detalle_factura", null);
-            tablaDetalleExiste = tablas.next();
-            
-            if (!tablaItemsExiste && !tablaDetalleExiste) {
-                System.out.println("ADVERTENCIA: Ninguna tabla de ítems existe. Creando tabla items_factura...");
-                crearTablaItemsFactura();
-                tablaItemsExiste = true;
-            }
-        } catch (SQLException e) {
-            System.err.println("Error al verificar tablas: " + e.getMessage());
-        }
+        // 1. Intentar cargar desde items_factura (las dos tablas de ítems las crea el
+        // esquema base, así que no se consultan los metadatos en cada carga)
+        String sqlSimple = "SELECT * FROM items_factura WHERE factura_id = ?";
         
-        // 1. Intentar cargar desde items_factura si existe
-        if (tablaItemsExiste) {
-            String sqlSimple = "SELECT * FROM items_factura WHERE factura_id = ?";
+        try (Connection conn = DBUtil.getConnection();
+            PreparedStatement pstmt = conn.prepareStatement(sqlSimple)) {
             
-            try (Connection conn = DBUtil.getConnection();
-                PreparedStatement pstmt = conn.prepareStatement(sqlSimple)) {
-                
-                pstmt.setLong(1, factura.getId());
-                
-                try (ResultSet rs = pstmt.executeQuery()) {
-                    while (rs.next()) {
-                        ItemFactura item = new ItemFactura();
-                        item.setId(rs.getLong("id"));
-                        item.setFacturaId(factura.getId());
-                        
-                        String codigoProducto = rs.getString("producto_id");
-                        
-                        // Buscar datos completos del producto
-                        ProductoInventario producto = inventarioRepository.buscarProductoPorCodigo(codigoProducto);
-                        
-                        if (producto == null) {
-                            // Si no se encontró, crear un producto básico
-                            producto = new ProductoInventario();
-                            producto.setCodigo(codigoProducto);
-                            producto.setDescripcion("Producto " + codigoProducto);
-                            producto.setPrecio(rs.getDouble("precio_unitario"));
-                        }
-                        
-                        item.setProducto(producto);
-                        item.setCantidad(rs.getInt("cantidad"));
-                        item.setPrecioUnitario(rs.getDouble("precio_unitario"));
-                        
-                        // Intentar obtener descuento si existe
-                        try {
-                            item.setDescuento(rs.getDouble("descuento"));
-                        } catch (SQLException e) {
-                            item.setDescuento(0.0);
-                        }
-                        
-                        item.setSubtotal(rs.getDouble("subtotal"));
-                        
-                        items.add(item);
+            pstmt.setLong(1, factura.getId());
+            
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    ItemFactura item = new ItemFactura();
+                    item.setId(rs.getLong("id"));
+                    item.setFacturaId(factura.getId());
+                    
+                    String codigoProducto = rs.getString("producto_id");
+                    
+                    // Buscar datos completos del producto
+                    ProductoInventario producto = inventarioRepository.buscarProductoPorCodigo(codigoProducto);
+                    
+                    if (producto == null) {
+                        // Si no se encontró, crear un producto básico
+                        producto = new ProductoInventario();
+                        producto.setCodigo(codigoProducto);
+                        producto.setDescripcion("Producto " + codigoProducto);
+                        producto.setPrecio(Dinero.leerMonto(rs, "precio_unitario"));
+                    }
+                    
+                    item.setProducto(producto);
+                    item.setCantidad(rs.getInt("cantidad"));
+                    item.setPrecioUnitario(Dinero.leerMonto(rs, "precio_unitario"));
+                    
+                    // Intentar obtener descuento si existe
+                    try {
+                        item.setDescuento(Dinero.leerMonto(rs, "descuento"));
+                    } catch (SQLException e) {
+                        item.setDescuento(0.0);
                     }
                     
-                    System.out.println("Cargados " + items.size() + " items desde items_factura para la factura ID: " + factura.getId());
+                    item.setSubtotal(Dinero.leerMonto(rs, "subtotal"));
+                    
+                    items.add(item);
                 }
                 
-            } catch (SQLException e) {
-                System.err.println("Error al cargar desde items_factura: " + e.getMessage());
             }
+            
+        } catch (SQLException e) {
+            LOGGER.warning("Error al cargar desde items_factura: " + e.getMessage());
         }
         
         // 2. Si no se encontraron items, intentar con detalle_factura
-        if (items.isEmpty() && tablaDetalleExiste) {
+        if (items.isEmpty()) {
             String sqlDetalle = "SELECT * FROM detalle_factura WHERE id_factura = ?";
             
             try (Connection conn = DBUtil.getConnection();
@@ -1110,7 +1110,7 @@ public class FacturaRepository {
                             producto.setDescripcion("Producto " + codigoProducto);
                             
                             try {
-                                producto.setPrecio(rs.getDouble("precio_unitario"));
+                                producto.setPrecio(Dinero.leerMonto(rs, "precio_unitario"));
                             } catch (SQLException e) {
                                 producto.setPrecio(0.0);
                             }
@@ -1125,13 +1125,13 @@ public class FacturaRepository {
                         }
                         
                         try {
-                            item.setPrecioUnitario(rs.getDouble("precio_unitario"));
+                            item.setPrecioUnitario(Dinero.leerMonto(rs, "precio_unitario"));
                         } catch (SQLException e) {
                             item.setPrecioUnitario(producto.getPrecio());
                         }
                         
                         try {
-                            item.setSubtotal(rs.getDouble("subtotal"));
+                            item.setSubtotal(Dinero.leerMonto(rs, "subtotal"));
                         } catch (SQLException e) {
                             item.setSubtotal(item.getCantidad() * item.getPrecioUnitario());
                         }
@@ -1139,11 +1139,10 @@ public class FacturaRepository {
                         items.add(item);
                     }
                     
-                    System.out.println("Cargados " + items.size() + " items desde detalle_factura para la factura ID: " + factura.getId());
                 }
                 
             } catch (SQLException e) {
-                System.err.println("Error al cargar desde detalle_factura: " + e.getMessage());
+                LOGGER.warning("Error al cargar desde detalle_factura: " + e.getMessage());
             }
         }
         
@@ -1158,7 +1157,9 @@ public class FacturaRepository {
             }
         }
         factura.setItems(items);
-        System.out.println("Total: Cargados " + items.size() + " items para la factura ID: " + factura.getId());
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Cargados " + items.size() + " ítems para la factura ID: " + factura.getId());
+        }
     }
     
     /**
@@ -1185,10 +1186,10 @@ public class FacturaRepository {
             factura.setOrdenId(rs.getLong("orden_id"));
         }
         
-        factura.setSubtotal(rs.getDouble("subtotal"));
-        factura.setDescuento(rs.getDouble("descuento"));
-        factura.setIva(rs.getDouble("iva"));
-        factura.setTotal(rs.getDouble("total"));
+        factura.setSubtotal(Dinero.leerMonto(rs, "subtotal"));
+        factura.setDescuento(Dinero.leerMonto(rs, "descuento"));
+        factura.setIva(Dinero.leerMonto(rs, "iva"));
+        factura.setTotal(Dinero.leerMonto(rs, "total"));
         factura.setAnulada(rs.getBoolean("anulada"));
         factura.setMotivoAnulacion(rs.getString("motivo_anulacion"));
         
@@ -1296,7 +1297,7 @@ public class FacturaRepository {
                     stmt.setLong(1, facturaId);
                     stmt.setString(2, item.getProducto().getCodigo());
                     stmt.setInt(3, item.getCantidad());
-                    stmt.setDouble(4, item.getPrecioUnitario());
+                    Dinero.escribir(stmt, 4, item.getPrecioUnitario());
                     
                     // Manejar descuento
                     double descuento = 0;
@@ -1305,9 +1306,9 @@ public class FacturaRepository {
                     } catch (NullPointerException e) {
                         // Usar valor por defecto 0
                     }
-                    stmt.setDouble(5, descuento);
+                    Dinero.escribir(stmt, 5, descuento);
                     
-                    stmt.setDouble(6, item.getSubtotal());
+                    Dinero.escribir(stmt, 6, item.getSubtotal());
                     
                     stmt.addBatch();
                 }
@@ -1324,8 +1325,8 @@ public class FacturaRepository {
                     stmt.setLong(1, facturaId);
                     stmt.setString(2, item.getProducto().getCodigo());
                     stmt.setInt(3, item.getCantidad());
-                    stmt.setDouble(4, item.getPrecioUnitario());
-                    stmt.setDouble(5, item.getSubtotal());
+                    Dinero.escribir(stmt, 4, item.getPrecioUnitario());
+                    Dinero.escribir(stmt, 5, item.getSubtotal());
                     
                     stmt.addBatch();
                 }
@@ -1355,29 +1356,13 @@ public class FacturaRepository {
      * @return Lista de facturas que cumplen con los criterios
      */
     public List<Factura> buscarFacturasPorVendedorYRango(Long vendedorId, LocalDateTime fechaInicio, LocalDateTime fechaFin) {
-        List<Factura> facturas = new ArrayList<>();
-        String sql = "SELECT * FROM facturas WHERE id_vendedor = ? AND fecha_emision BETWEEN ? AND ? ORDER BY fecha_emision DESC";
-        
-        try (Connection conn = DBUtil.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            
-            stmt.setLong(1, vendedorId);
-            stmt.setTimestamp(2, Timestamp.valueOf(fechaInicio));
-            stmt.setTimestamp(3, Timestamp.valueOf(fechaFin));
-            
-            try (ResultSet rs = stmt.executeQuery()) {
-                while (rs.next()) {
-                    Factura factura = mapearFacturaDesdeResultSet(rs);
-                    facturas.add(factura);
-                }
-            }
-            
+        try {
+            return cargarFacturasEnLote("f.vendedor_id = ? AND f.fecha BETWEEN ? AND ?",
+                    vendedorId, Timestamp.valueOf(fechaInicio), Timestamp.valueOf(fechaFin));
         } catch (SQLException e) {
             e.printStackTrace();
             throw new RuntimeException("Error al buscar facturas por vendedor y rango de fechas: " + e.getMessage());
         }
-        
-        return facturas;
     }
     
     /**
@@ -1387,69 +1372,386 @@ public class FacturaRepository {
      * @return Lista de facturas que cumplen con los criterios
      */
     public List<Factura> buscarFacturasPorRango(LocalDateTime fechaInicio, LocalDateTime fechaFin) {
-        List<Factura> facturas = new ArrayList<>();
-        String sql = "SELECT * FROM facturas WHERE fecha_emision BETWEEN ? AND ? ORDER BY fecha_emision DESC";
+        try {
+            return cargarFacturasEnLote("f.fecha BETWEEN ? AND ?",
+                    Timestamp.valueOf(fechaInicio), Timestamp.valueOf(fechaFin));
+        } catch (SQLException e) {
+            e.printStackTrace();
+            throw new RuntimeException("Error al buscar facturas por rango de fechas: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Carga un conjunto de facturas con sus clientes, vendedores e ítems usando
+     * un número fijo de consultas, independiente de cuántas facturas coincidan:
+     * una para cabeceras (JOIN con clientes y usuarios), una para items_factura
+     * y, solo si alguna factura quedó sin ítems, una para detalle_factura.
+     * @param condicion Condición SQL sobre el alias "f" de facturas
+     * @param parametros Parámetros de la condición, en orden
+     * @return Lista de facturas ordenadas por fecha descendente
+     * @throws SQLException Si hay error al consultar
+     */
+    private List<Factura> cargarFacturasEnLote(String condicion, Object... parametros) throws SQLException {
+        Map<Long, Factura> facturas = new LinkedHashMap<>();
+        Map<Long, Cliente> clientes = new HashMap<>();
+        Map<Long, Usuario> vendedores = new HashMap<>();
         
-        try (Connection conn = DBUtil.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
+        String sqlCabeceras = SELECT_CABECERAS + "WHERE " + condicion + " ORDER BY f.fecha DESC, f.id_factura DESC";
+        
+        try (Connection conn = DBUtil.getConnection()) {
+            // 1. Cabeceras con cliente y vendedor en una sola consulta
+            try (PreparedStatement stmt = prepararConsultaLote(conn, sqlCabeceras, parametros);
+                 ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    Factura factura = mapearCabeceraLote(rs, clientes, vendedores);
+                    facturas.put(factura.getId(), factura);
+                }
+            }
             
-            stmt.setTimestamp(1, Timestamp.valueOf(fechaInicio));
-            stmt.setTimestamp(2, Timestamp.valueOf(fechaFin));
+            if (facturas.isEmpty()) {
+                return new ArrayList<>();
+            }
             
+            cargarItemsEnLote(conn, facturas, condicion, parametros);
+        }
+        
+        return new ArrayList<>(facturas.values());
+    }
+    
+    /**
+     * Carga los ítems de un conjunto de facturas con una consulta a items_factura y,
+     * solo si alguna quedó sin ítems, otra a detalle_factura
+     * @param conn Conexión abierta
+     * @param facturas Facturas por ID, con la lista de ítems vacía
+     * @param condicion Condición SQL sobre el alias "f" de facturas que las selecciona
+     * @param parametros Parámetros de la condición, en orden
+     */
+    private void cargarItemsEnLote(Connection conn, Map<Long, Factura> facturas, String condicion,
+                                   Object... parametros) throws SQLException {
+        Map<String, ProductoInventario> productos = new HashMap<>();
+        
+        String sqlItems = "SELECT i.*, p.nombre AS p_nombre, p.precio AS p_precio, p.cantidad AS p_cantidad " +
+                "FROM items_factura i " +
+                "JOIN facturas f ON f.id_factura = i.factura_id " +
+                "LEFT JOIN productos p ON p.id = i.producto_id " +
+                "WHERE " + condicion + " ORDER BY i.factura_id, i.id";
+        
+        String sqlDetalle = "SELECT d.*, p.nombre AS p_nombre, p.precio AS p_precio, p.cantidad AS p_cantidad " +
+                "FROM detalle_factura d " +
+                "JOIN facturas f ON f.id_factura = d.id_factura " +
+                "LEFT JOIN productos p ON p.id = d.id " +
+                "WHERE " + condicion + " ORDER BY d.id_factura, d.id_detalle";
+        
+        // 2. Ítems de todas las facturas del conjunto
+        try (PreparedStatement stmt = prepararConsultaLote(conn, sqlItems, parametros);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                Factura factura = facturas.get(rs.getLong("factura_id"));
+                if (factura == null) continue;
+                
+                ItemFactura item = new ItemFactura();
+                item.setId(rs.getLong("id"));
+                item.setFacturaId(factura.getId());
+                item.setProducto(obtenerProductoLote(rs, rs.getString("producto_id"), productos));
+                item.setCantidad(rs.getInt("cantidad"));
+                item.setPrecioUnitario(Dinero.leerMonto(rs, "precio_unitario"));
+                try {
+                    item.setDescuento(Dinero.leerMonto(rs, "descuento"));
+                } catch (SQLException e) {
+                    item.setDescuento(0.0);
+                }
+                item.setSubtotal(Dinero.leerMonto(rs, "subtotal"));
+                factura.getItems().add(item);
+            }
+        } catch (SQLException e) {
+            System.err.println("Error al cargar desde items_factura: " + e.getMessage());
+        }
+        
+        // 3. Respaldo en detalle_factura solo para las facturas que quedaron sin ítems
+        Set<Long> sinItems = new HashSet<>();
+        facturas.values().stream().filter(f -> f.getItems().isEmpty()).forEach(f -> sinItems.add(f.getId()));
+        if (!sinItems.isEmpty()) {
+            try (PreparedStatement stmt = prepararConsultaLote(conn, sqlDetalle, parametros);
+                 ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    long facturaId = rs.getLong("id_factura");
+                    if (!sinItems.contains(facturaId)) continue;
+                    Factura factura = facturas.get(facturaId);
+                    
+                    ItemFactura item = new ItemFactura();
+                    item.setId(rs.getLong("id_detalle"));
+                    item.setFacturaId(factura.getId());
+                    item.setProducto(obtenerProductoLote(rs, rs.getString("id"), productos));
+                    item.setCantidad(rs.getInt("cantidad"));
+                    item.setPrecioUnitario(Dinero.leerMonto(rs, "precio_unitario"));
+                    item.setSubtotal(Dinero.leerMonto(rs, "subtotal"));
+                    factura.getItems().add(item);
+                }
+            } catch (SQLException e) {
+                System.err.println("Error al cargar desde detalle_factura: " + e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * Recorre las cabeceras de las facturas de un rango (con cliente y vendedor, sin ítems)
+     * fila a fila, sin acumularlas en memoria. Pensado para exportaciones de periodos largos.
+     * @param vendedorId ID del vendedor, o null para todos
+     * @param fechaInicio Fecha de inicio del rango
+     * @param fechaFin Fecha de fin del rango
+     * @param consumidor Recibe cada factura en orden de fecha descendente
+     * @return Número de facturas recorridas
+     */
+    public int recorrerCabecerasPorRango(Long vendedorId, LocalDateTime fechaInicio, LocalDateTime fechaFin,
+                                         Consumer<Factura> consumidor) {
+        Object[] parametros = parametrosRango(vendedorId, fechaInicio, fechaFin);
+        String sql = SELECT_CABECERAS + "WHERE " + condicionRango(vendedorId) +
+                " ORDER BY f.fecha DESC, f.id_factura DESC";
+        
+        // Los mapas solo comparten las instancias de clientes y vendedores, que son pocos
+        Map<Long, Cliente> clientes = new HashMap<>();
+        Map<Long, Usuario> vendedores = new HashMap<>();
+        int total = 0;
+        try (Connection conn = DBUtil.getConnection();
+             PreparedStatement stmt = prepararConsultaLote(conn, sql, parametros)) {
+            DBUtil.habilitarLecturaContinua(stmt);
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
-                    Factura factura = mapearFacturaDesdeResultSet(rs);
-                    facturas.add(factura);
+                    consumidor.accept(mapearCabeceraLote(rs, clientes, vendedores));
+                    total++;
                 }
             }
-            
         } catch (SQLException e) {
             e.printStackTrace();
-            throw new RuntimeException("Error al buscar facturas por rango de fechas: " + e.getMessage());
+            throw new RuntimeException("Error al recorrer facturas por rango de fechas: " + e.getMessage());
+        }
+        return total;
+    }
+    
+    /**
+     * Página de cabeceras de un rango (con cliente y vendedor, sin ítems), en orden de
+     * fecha e ID descendente. Se pagina por clave: la página siguiente empieza después
+     * de la última factura de la anterior, así el costo no crece con el número de página
+     * como con OFFSET.
+     * @param vendedorId ID del vendedor, o null para todos
+     * @param fechaInicio Fecha de inicio del rango
+     * @param fechaFin Fecha de fin del rango
+     * @param despuesDe Última factura de la página anterior, o null para la primera
+     * @param limite Número máximo de facturas
+     * @return Facturas de la página (menos de {@code limite} si es la última)
+     */
+    public List<Factura> buscarPaginaPorRango(Long vendedorId, LocalDateTime fechaInicio, LocalDateTime fechaFin,
+                                              Factura despuesDe, int limite) {
+        List<Object> parametros = new ArrayList<>(List.of(parametrosRango(vendedorId, fechaInicio, fechaFin)));
+        StringBuilder sql = new StringBuilder(SELECT_CABECERAS).append("WHERE ").append(condicionRango(vendedorId));
+        if (despuesDe != null) {
+            Timestamp fecha = Timestamp.valueOf(despuesDe.getFecha());
+            sql.append(" AND (f.fecha < ? OR (f.fecha = ? AND f.id_factura < ?))");
+            parametros.add(fecha);
+            parametros.add(fecha);
+            parametros.add(despuesDe.getId());
         }
+        sql.append(" ORDER BY f.fecha DESC, f.id_factura DESC LIMIT ?");
+        parametros.add(limite);
         
-        return facturas;
+        Map<Long, Cliente> clientes = new HashMap<>();
+        Map<Long, Usuario> vendedores = new HashMap<>();
+        List<Factura> pagina = new ArrayList<>(limite);
+        try (Connection conn = DBUtil.getConnection();
+             PreparedStatement stmt = prepararConsultaLote(conn, sql.toString(), parametros.toArray());
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                pagina.add(mapearCabeceraLote(rs, clientes, vendedores));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            throw new RuntimeException("Error al buscar página de facturas por rango de fechas: " + e.getMessage());
+        }
+        return pagina;
+    }
+    
+    /**
+     * Carga los ítems de facturas obtenidas sin ellos (páginas o recorridos de cabeceras),
+     * con una o dos consultas para todas. Reemplaza los ítems que tuvieran.
+     * @param facturas Facturas con ID
+     */
+    public void cargarItems(List<Factura> facturas) {
+        if (facturas.isEmpty()) {
+            return;
+        }
+        Map<Long, Factura> porId = new LinkedHashMap<>();
+        for (Factura factura : facturas) {
+            factura.setItems(new ArrayList<>());
+            porId.put(factura.getId(), factura);
+        }
+        String condicion = "f.id_factura IN (" + String.join(", ", Collections.nCopies(porId.size(), "?")) + ")";
+        try (Connection conn = DBUtil.getConnection()) {
+            cargarItemsEnLote(conn, porId, condicion, porId.keySet().toArray());
+        } catch (SQLException e) {
+            e.printStackTrace();
+            throw new RuntimeException("Error al cargar ítems de facturas: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Suma de los totales de las facturas de un rango, calculada en la base de datos
+     * @param vendedorId ID del vendedor, o null para todos
+     * @param fechaInicio Fecha de inicio del rango
+     * @param fechaFin Fecha de fin del rango
+     * @return Total facturado en centavos
+     */
+    public long sumarTotalesPorRango(Long vendedorId, LocalDateTime fechaInicio, LocalDateTime fechaFin) {
+        String sql = "SELECT SUM(f.total) FROM facturas f WHERE " + condicionRango(vendedorId);
+        try (Connection conn = DBUtil.getConnection();
+             PreparedStatement stmt = prepararConsultaLote(conn, sql, parametrosRango(vendedorId, fechaInicio, fechaFin));
+             ResultSet rs = stmt.executeQuery()) {
+            return rs.next() ? Dinero.leer(rs, 1) : 0;
+        } catch (SQLException e) {
+            e.printStackTrace();
+            throw new RuntimeException("Error al sumar facturas por rango de fechas: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Cuenta las facturas de un rango sin cargarlas
+     * @param vendedorId ID del vendedor, o null para todos
+     * @param fechaInicio Fecha de inicio del rango
+     * @param fechaFin Fecha de fin del rango
+     * @return Número de facturas
+     */
+    public int contarFacturasPorRango(Long vendedorId, LocalDateTime fechaInicio, LocalDateTime fechaFin) {
+        String sql = "SELECT COUNT(*) FROM facturas f WHERE " + condicionRango(vendedorId);
+        try (Connection conn = DBUtil.getConnection();
+             PreparedStatement stmt = prepararConsultaLote(conn, sql, parametrosRango(vendedorId, fechaInicio, fechaFin));
+             ResultSet rs = stmt.executeQuery()) {
+            return rs.next() ? rs.getInt(1) : 0;
+        } catch (SQLException e) {
+            e.printStackTrace();
+            throw new RuntimeException("Error al contar facturas por rango de fechas: " + e.getMessage());
+        }
+    }
+    
+    private String condicionRango(Long vendedorId) {
+        return vendedorId != null ? "f.vendedor_id = ? AND f.fecha BETWEEN ? AND ?" : "f.fecha BETWEEN ? AND ?";
+    }
+    
+    private Object[] parametrosRango(Long vendedorId, LocalDateTime fechaInicio, LocalDateTime fechaFin) {
+        return vendedorId != null
+            ? new Object[] {vendedorId, Timestamp.valueOf(fechaInicio), Timestamp.valueOf(fechaFin)}
+            : new Object[] {Timestamp.valueOf(fechaInicio), Timestamp.valueOf(fechaFin)};
+    }
+    
+    private PreparedStatement prepararConsultaLote(Connection conn, String sql, Object... parametros) throws SQLException {
+        PreparedStatement stmt = conn.prepareStatement(sql);
+        for (int i = 0; i < parametros.length; i++) {
+            stmt.setObject(i + 1, parametros[i]);
+        }
+        return stmt;
     }
     
     /**
-     * Mapea una factura desde un ResultSet
-     * @param rs ResultSet con datos de la factura
-     * @return Objeto Factura mapeado
-     * @throws SQLException Si hay error al acceder a los datos
+     * Mapea la cabecera de una factura desde la consulta con JOIN,
+     * reutilizando las instancias de cliente y vendedor ya cargadas
      */
-    private Factura mapearFacturaDesdeResultSet(ResultSet rs) throws SQLException {
+    private Factura mapearCabeceraLote(ResultSet rs, Map<Long, Cliente> clientes,
+                                       Map<Long, Usuario> vendedores) throws SQLException {
         Factura factura = new Factura();
         factura.setId(rs.getLong("id_factura"));
         factura.setNumeroFactura(rs.getString("numero_factura"));
-        factura.setFecha(rs.getTimestamp("fecha_emision").toLocalDateTime());
+        factura.setFecha(rs.getTimestamp("fecha").toLocalDateTime());
         
-        // Cargar cliente
-        Long clienteId = rs.getLong("id_cliente");
-        Cliente cliente = clienteRepository.findById(clienteId);
-        factura.setCliente(cliente);
+        long clienteId = rs.getLong("c_id_cliente");
+        if (!rs.wasNull()) {
+            Cliente cliente = clientes.get(clienteId);
+            if (cliente == null) {
+                cliente = new Cliente();
+                cliente.setIdCliente(clienteId);
+                cliente.setNombre(rs.getString("c_nombre"));
+                cliente.setId(rs.getString("c_id"));
+                cliente.setEmail(rs.getString("c_email"));
+                cliente.setTelefono(rs.getString("c_telefono"));
+                cliente.setDireccion(rs.getString("c_direccion"));
+                cliente.setActive(rs.getBoolean("c_activo"));
+                cliente.setMayorista(rs.getBoolean("c_mayorista"));
+                cliente.setLimiteCredito(rs.getDouble("c_limite_credito"));
+                clientes.put(clienteId, cliente);
+            }
+            factura.setCliente(cliente);
+        }
         
-        // Cargar vendedor
-        Long vendedorId = rs.getLong("id_vendedor");
-        Usuario vendedor = usuarioRepository.findById(vendedorId);
-        factura.setVendedor(vendedor);
+        long vendedorId = rs.getLong("u_id_usuario");
+        if (!rs.wasNull()) {
+            Usuario vendedor = vendedores.get(vendedorId);
+            if (vendedor == null) {
+                vendedor = new Usuario();
+                vendedor.setIdUsuario(vendedorId);
+                vendedor.setUsername(rs.getString("u_username"));
+                vendedor.setNombre(rs.getString("u_nombre"));
+                vendedor.setRol(rs.getString("u_rol"));
+                vendedor.setActivo(rs.getBoolean("u_activo"));
+                vendedores.put(vendedorId, vendedor);
+            }
+            factura.setVendedor(vendedor);
+        }
         
-        // Cargar otros campos
-        factura.setSubtotal(rs.getDouble("subtotal"));
-        factura.setDescuento(rs.getDouble("descuento"));
-        factura.setIva(rs.getDouble("iva"));
-        factura.setTotal(rs.getDouble("total"));
+        Object ordenId = rs.getObject("orden_id");
+        if (ordenId != null) {
+            factura.setOrdenId(rs.getLong("orden_id"));
+        }
+        
+        factura.setSubtotal(Dinero.leerMonto(rs, "subtotal"));
+        factura.setDescuento(Dinero.leerMonto(rs, "descuento"));
+        factura.setIva(Dinero.leerMonto(rs, "iva"));
+        factura.setTotal(Dinero.leerMonto(rs, "total"));
         factura.setAnulada(rs.getBoolean("anulada"));
+        factura.setMotivoAnulacion(rs.getString("motivo_anulacion"));
         
-        if (rs.getString("motivo_anulacion") != null) {
-            factura.setMotivoAnulacion(rs.getString("motivo_anulacion"));
+        Timestamp fechaAnulacion = rs.getTimestamp("fecha_anulacion");
+        if (fechaAnulacion != null) {
+            factura.setFechaAnulacion(fechaAnulacion.toLocalDateTime());
         }
         
-        // Cargar items de la factura
-        cargarItemsFactura(factura);
+        factura.setFormaPago(rs.getString("forma_pago"));
         
+        Timestamp fechaPago = rs.getTimestamp("fecha_pago");
+        if (fechaPago != null) {
+            factura.setFechaPago(fechaPago.toLocalDateTime());
+        } else {
+            factura.setPagada(rs.getBoolean("pagada"));
+        }
+        
+        factura.setItems(new ArrayList<>());
         return factura;
     }
     
+    /**
+     * Obtiene el producto de un ítem a partir de las columnas p_* de la consulta,
+     * compartiendo la instancia entre ítems del mismo producto
+     */
+    private ProductoInventario obtenerProductoLote(ResultSet rs, String codigoProducto,
+                                                  Map<String, ProductoInventario> productos) throws SQLException {
+        ProductoInventario producto = productos.get(codigoProducto);
+        if (producto != null) {
+            return producto;
+        }
+        
+        producto = new ProductoInventario();
+        producto.setCodigo(codigoProducto);
+        String nombre = rs.getString("p_nombre");
+        if (nombre != null) {
+            producto.setDescripcion(nombre);
+            producto.setPrecio(rs.getDouble("p_precio"));
+            producto.setCantidad(rs.getInt("p_cantidad"));
+        } else {
+            // El producto ya no existe en el catálogo
+            producto.setDescripcion("Producto " + codigoProducto);
+            producto.setPrecio(Dinero.leerMonto(rs, "precio_unitario"));
+        }
+        
+        productos.put(codigoProducto, producto);
+        return producto;
+    }
+    
     /**
      * Crea la tabla de facturas si no existe
      */
@@ -1605,33 +1907,4 @@ public class FacturaRepository {
             }
         }
     }
-
-        /**
-     * Obtiene el último número de factura que coincida con un patrón de fecha
-     * @param fechaPattern Patrón de fecha en formato YYYYMMDD
-     * @return Último número de factura o null si no existe ninguno
-     */
-    public String obtenerUltimoNumeroFactura(String fechaPattern) {
-        String sql = "SELECT numero_factura FROM facturas WHERE numero_factura LIKE ? " +
-                    "ORDER BY id_factura DESC LIMIT 1";
-        
-        try (Connection conn = DBUtil.getConnection();
-            PreparedStatement stmt = conn.prepareStatement(sql)) {
-            
-            // Patrón para buscar facturas del día específico
-            stmt.setString(1, "FACT-" + fechaPattern + "-%");
-            
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getString("numero_factura");
-                }
-            }
-            
-        } catch (SQLException e) {
-            System.err.println("Error al obtener último número de factura: " + e.getMessage());
-            e.printStackTrace();
-        }
-        
-        return null;
-    }
 }
@@ -2,16 +2,20 @@ package com.distribuciones.omega.repository;
 
 import com.distribuciones.omega.model.ProductoInventario;
 import com.distribuciones.omega.utils.DBUtil;
+import com.distribuciones.omega.utils.LogUtil;
 
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Repositorio para operaciones CRUD de Productos en Inventario
  */
 public class InventarioRepository {
 
+    private static final Logger LOGGER = Logger.getLogger(InventarioRepository.class.getName());
 
     /**
      * Crea la tabla de inventario si no existe
@@ -134,14 +138,11 @@ public class InventarioRepository {
     public List<ProductoInventario> findAll() {
         List<ProductoInventario> productos = new ArrayList<>();
         
-        System.out.println("DEBUG: InventarioRepository.findAll() - Buscando todos los productos");
-        
         // Verificar primero si la tabla inventario existe
         boolean inventarioExists = false;
         try (Connection conn = DBUtil.getConnection();
              ResultSet tables = conn.getMetaData().getTables(null, null, "inventario", null)) {
             inventarioExists = tables.next();
-            System.out.println("¿Tabla inventario existe? " + (inventarioExists ? "SÍ" : "NO"));
         } catch (SQLException e) {
             System.err.println("Error al verificar tabla inventario: " + e.getMessage());
         }
@@ -165,17 +166,12 @@ public class InventarioRepository {
              Statement stmt = conn.createStatement();
              ResultSet rs = stmt.executeQuery(sql)) {
             
-            System.out.println("Ejecutando consulta para inventario...");
-            
             while (rs.next()) {
                 ProductoInventario producto = mapResultSetToProducto(rs);
                 productos.add(producto);
-                System.out.println("Producto encontrado: " + producto.getDescripcion() + 
-                                   " (ID: " + producto.getCodigo() + 
-                                   ", Stock: " + producto.getStock() + ")");
             }
             
-            System.out.println("Total de productos procesados: " + productos.size());
+            LOGGER.fine(() -> "Productos cargados: " + productos.size());
             
         } catch (SQLException e) {
             e.printStackTrace();
@@ -185,6 +181,45 @@ public class InventarioRepository {
         return productos;
     }
     
+    /**
+     * Obtiene la fecha de la última modificación registrada en productos
+     * @return Marca de tiempo más reciente o null si no hay productos
+     * @throws SQLException Si hay error en la base de datos
+     */
+    public Timestamp obtenerUltimaModificacion() throws SQLException {
+        try (Connection conn = DBUtil.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT MAX(ultima_modificacion) FROM productos")) {
+            return rs.next() ? rs.getTimestamp(1) : null;
+        }
+    }
+    
+    /**
+     * Busca los productos modificados en un intervalo (refresco por diferencias del catálogo)
+     * @param desde Inicio del intervalo (inclusive)
+     * @param hasta Fin del intervalo (inclusive)
+     * @return Productos modificados
+     * @throws SQLException Si hay error en la base de datos
+     */
+    public List<ProductoInventario> findModificadosEntre(Timestamp desde, Timestamp hasta) throws SQLException {
+        List<ProductoInventario> productos = new ArrayList<>();
+        String sql = "SELECT p.* FROM productos p WHERE p.ultima_modificacion >= ? AND p.ultima_modificacion <= ?";
+        
+        try (Connection conn = DBUtil.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setTimestamp(1, desde);
+            stmt.setTimestamp(2, hasta);
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    productos.add(mapResultSetToProducto(rs));
+                }
+            }
+        }
+        
+        return productos;
+    }
+    
     /**
      * Busca un producto por su código
      * @param codigo Código del producto
@@ -194,14 +229,16 @@ public class InventarioRepository {
         // Primero intentamos buscar por la columna id_producto
         String sql = "SELECT * FROM productos WHERE id_producto = ?";
         
-        try (Connection conn = DBUtil.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            
-            stmt.setString(1, codigo);
-            ResultSet rs = stmt.executeQuery();
-            
-            if (rs.next()) {
-                return mapResultSetToProducto(rs);
+        try (Connection conn = DBUtil.getConnection()) {
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setString(1, codigo);
+                ResultSet rs = stmt.executeQuery();
+                
+                if (rs.next()) {
+                    return mapResultSetToProducto(rs);
+                }
+            } catch (SQLException e) {
+                // La tabla puede no tener la columna id_producto; se busca por id
             }
             
             // Si no encontramos por id_producto, intentamos con id
@@ -284,6 +321,7 @@ public class InventarioRepository {
                 }
             }
             
+            CatalogoProductosCache.getInstance().invalidar(producto.getCodigo());
             return producto;
             
         } catch (SQLException e) {
@@ -366,21 +404,21 @@ public class InventarioRepository {
             // Basado en la estructura de tabla que se mostró en el diagnóstico
             // Usamos 'id' como clave primaria (no 'codigo')
             String sql = "UPDATE productos SET cantidad = ? WHERE id = ?";
-            System.out.println("Ejecutando consulta: " + sql);
-            System.out.println("Actualizando producto: ID=" + producto.getCodigo() + ", Nuevo stock=" + producto.getStock());
+            LogUtil.evento(LOGGER, Level.FINE, "Actualizando stock",
+                    "sku", producto.getCodigo(), "stock", producto.getStock());
             
             try (PreparedStatement stmt = conn.prepareStatement(sql)) {
                 stmt.setInt(1, producto.getStock());
                 stmt.setString(2, producto.getCodigo()); // Asumiendo que 'codigo' en tu objeto corresponde a 'id' en la BD
                 
                 int filasAfectadas = stmt.executeUpdate();
-                System.out.println("Filas afectadas: " + filasAfectadas);
                 
                 if (filasAfectadas == 0) {
                     System.err.println("No se encontró el producto con ID=" + producto.getCodigo());
                     return false;
                 }
                 
+                CatalogoProductosCache.getInstance().invalidar(producto.getCodigo());
                 return filasAfectadas > 0;
             }
         } catch (SQLException e) {
@@ -406,6 +444,9 @@ public class InventarioRepository {
             stmt.setString(2, codigo);
             
             int affectedRows = stmt.executeUpdate();
+            if (affectedRows > 0) {
+                CatalogoProductosCache.getInstance().invalidar(codigo);
+            }
             return affectedRows > 0;
             
         } catch (SQLException e) {
@@ -414,6 +455,62 @@ public class InventarioRepository {
         }
     }
     
+    /**
+     * Descuenta stock de forma atómica: la fila solo se modifica si la cantidad
+     * disponible alcanza, usando el bloqueo de fila del propio UPDATE
+     * @param conn Conexión a usar (permite agrupar varias líneas en una transacción)
+     * @param codigo Código del producto (columna id)
+     * @param cantidad Unidades a descontar
+     * @return true si se descontó; false si el producto no existe o no hay stock suficiente
+     * @throws SQLException Si hay error en la base de datos
+     */
+    public boolean descontarStock(Connection conn, String codigo, int cantidad) throws SQLException {
+        String sql = "UPDATE productos SET cantidad = cantidad - ? WHERE id = ? AND cantidad >= ?";
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, cantidad);
+            stmt.setString(2, codigo);
+            stmt.setInt(3, cantidad);
+            return stmt.executeUpdate() > 0;
+        }
+    }
+
+    /**
+     * Devuelve unidades al stock de un producto (anulaciones o compensaciones)
+     * @param conn Conexión a usar
+     * @param codigo Código del producto (columna id)
+     * @param cantidad Unidades a reponer
+     * @return true si el producto existe y se actualizó
+     * @throws SQLException Si hay error en la base de datos
+     */
+    public boolean reponerStock(Connection conn, String codigo, int cantidad) throws SQLException {
+        String sql = "UPDATE productos SET cantidad = cantidad + ? WHERE id = ?";
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, cantidad);
+            stmt.setString(2, codigo);
+            return stmt.executeUpdate() > 0;
+        }
+    }
+
+    /**
+     * Lee la cantidad actual de un producto
+     * @param conn Conexión a usar
+     * @param codigo Código del producto (columna id)
+     * @return Cantidad en stock o null si el producto no existe
+     * @throws SQLException Si hay error en la base de datos
+     */
+    public Integer obtenerCantidad(Connection conn, String codigo) throws SQLException {
+        String sql = "SELECT cantidad FROM productos WHERE id = ?";
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, codigo);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : null;
+            }
+        }
+    }
+
     /**
      * Busca productos con stock menor a un umbral
      * @param umbral Nivel mínimo de stock
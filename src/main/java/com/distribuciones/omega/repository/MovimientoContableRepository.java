@@ -2,6 +2,7 @@ package com.distribuciones.omega.repository;
 
 import com.distribuciones.omega.model.MovimientoContable;
 import com.distribuciones.omega.utils.DBUtil;
+import com.distribuciones.omega.utils.Dinero;
 
 import java.sql.*;
 import java.time.LocalDateTime;
@@ -13,12 +14,19 @@ import java.util.List;
  */
 public class MovimientoContableRepository {
 
+    private final SaldosContablesRepository saldosRepository = new SaldosContablesRepository();
+
+    private static final String INSERT_MOVIMIENTO = "INSERT INTO movimientos_contables " +
+            "(fecha, tipo_documento, numero_documento, descripcion, monto, tipo_movimiento, " +
+            "usuario, entidad_relacionada, referencia, detalle, id_diario) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
     /**
      * Crea la tabla de movimientos contables si no existe
      */
     public void createTableIfNotExists() throws SQLException {
         String sql = "CREATE TABLE IF NOT EXISTS movimientos_contables (" +
-                "id INTEGER PRIMARY KEY AUTOINCREMENT," +
+                "id BIGINT AUTO_INCREMENT PRIMARY KEY," +
                 "fecha TIMESTAMP NOT NULL," +
                 "tipo_documento VARCHAR(50) NOT NULL," +
                 "numero_documento VARCHAR(50) NOT NULL," +
@@ -28,13 +36,30 @@ public class MovimientoContableRepository {
                 "usuario VARCHAR(100) NOT NULL," +
                 "entidad_relacionada VARCHAR(100) NOT NULL," +
                 "referencia VARCHAR(100)," +
-                "detalle TEXT" +
+                "detalle TEXT," +
+                "id_diario VARCHAR(36)" +
                 ")";
         
         try (Connection conn = DBUtil.getConnection();
              Statement stmt = conn.createStatement()) {
             stmt.execute(sql);
+            
+            // Tablas creadas antes del diario contable
+            try {
+                stmt.execute("ALTER TABLE movimientos_contables ADD COLUMN id_diario VARCHAR(36)");
+            } catch (SQLException e) {
+                // La columna ya existe
+            }
+            // Evita duplicar movimientos al reprocesar el archivo del diario
+            try {
+                stmt.execute("CREATE UNIQUE INDEX idx_movimientos_id_diario ON movimientos_contables (id_diario)");
+            } catch (SQLException e) {
+                // El índice ya existe
+            }
         }
+        
+        // Los saldos se actualizan junto con cada inserción
+        saldosRepository.createTableIfNotExists();
     }
     
     /**
@@ -45,24 +70,35 @@ public class MovimientoContableRepository {
      * @throws SQLException Si ocurre un error en la base de datos
      */
     public MovimientoContable save(MovimientoContable movimiento) throws SQLException {
-        String sql = "INSERT INTO movimientos_contables " +
-                "(fecha, tipo_documento, numero_documento, descripcion, monto, tipo_movimiento, " +
-                "usuario, entidad_relacionada, referencia, detalle) " +
-                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        try (Connection conn = DBUtil.getConnection()) {
+            DBUtil.beginTransaction(conn);
+            try {
+                save(conn, movimiento);
+                DBUtil.commitTransaction(conn);
+            } catch (SQLException e) {
+                DBUtil.rollbackTransaction(conn);
+                throw e;
+            }
+        }
         
-        try (Connection conn = DBUtil.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+        return movimiento;
+    }
+    
+    /**
+     * Guarda un movimiento contable dentro de una transacción existente,
+     * actualizando los saldos en la misma transacción
+     * 
+     * @param conn Conexión de la transacción en curso
+     * @param movimiento El movimiento a guardar
+     * @return El movimiento con ID asignado
+     * @throws SQLException Si ocurre un error en la base de datos
+     */
+    public MovimientoContable save(Connection conn, MovimientoContable movimiento) throws SQLException {
+        // Los saldos se bloquean antes de que el INSERT asigne el ID (ver SaldosContablesRepository.bloquear)
+        saldosRepository.bloquear(conn, List.of(movimiento));
+        try (PreparedStatement pstmt = conn.prepareStatement(INSERT_MOVIMIENTO, Statement.RETURN_GENERATED_KEYS)) {
             
-            pstmt.setTimestamp(1, Timestamp.valueOf(movimiento.getFecha()));
-            pstmt.setString(2, movimiento.getTipoDocumento());
-            pstmt.setString(3, movimiento.getNumeroDocumento());
-            pstmt.setString(4, movimiento.getDescripcion());
-            pstmt.setDouble(5, movimiento.getMonto());
-            pstmt.setString(6, movimiento.getTipoMovimiento());
-            pstmt.setString(7, movimiento.getUsuario());
-            pstmt.setString(8, movimiento.getEntidadRelacionada());
-            pstmt.setString(9, movimiento.getReferencia());
-            pstmt.setString(10, movimiento.getDetalle());
+            asignarParametros(pstmt, movimiento);
             
             int affectedRows = pstmt.executeUpdate();
             if (affectedRows == 0) {
@@ -78,9 +114,100 @@ public class MovimientoContableRepository {
             }
         }
         
+        saldosRepository.acumular(conn, List.of(movimiento));
         return movimiento;
     }
     
+    /**
+     * Guarda varios movimientos en una sola transacción con un INSERT por lotes.
+     * Los que ya estaban guardados (mismo id_diario, por ejemplo al reprocesar el
+     * archivo del diario tras una caída) se omiten.
+     * 
+     * @param movimientos Movimientos a guardar
+     * @return Cantidad de movimientos insertados
+     * @throws SQLException Si ocurre un error en la base de datos
+     */
+    public int guardarLote(List<MovimientoContable> movimientos) throws SQLException {
+        if (movimientos.isEmpty()) {
+            return 0;
+        }
+        
+        try (Connection conn = DBUtil.getConnection()) {
+            DBUtil.beginTransaction(conn);
+            try (PreparedStatement pstmt = conn.prepareStatement(INSERT_MOVIMIENTO)) {
+                // Los saldos se bloquean antes de que el INSERT asigne los IDs, para no quedar
+                // detrás de un cierre en curso (ver SaldosContablesRepository.bloquear)
+                saldosRepository.bloquear(conn, movimientos);
+                for (MovimientoContable movimiento : movimientos) {
+                    asignarParametros(pstmt, movimiento);
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+                saldosRepository.acumular(conn, movimientos);
+                DBUtil.commitTransaction(conn);
+                return movimientos.size();
+            } catch (SQLException e) {
+                DBUtil.rollbackTransaction(conn);
+                if (!esDuplicado(e)) {
+                    throw e;
+                }
+            }
+            
+            // Alguno ya existía: se insertan uno a uno omitiendo los repetidos
+            List<MovimientoContable> insertados = new ArrayList<>();
+            DBUtil.beginTransaction(conn);
+            try (PreparedStatement pstmt = conn.prepareStatement(INSERT_MOVIMIENTO)) {
+                saldosRepository.bloquear(conn, movimientos);
+                for (MovimientoContable movimiento : movimientos) {
+                    asignarParametros(pstmt, movimiento);
+                    try {
+                        pstmt.executeUpdate();
+                        insertados.add(movimiento);
+                    } catch (SQLException e) {
+                        if (!esDuplicado(e)) {
+                            throw e;
+                        }
+                    }
+                }
+                saldosRepository.acumular(conn, insertados);
+                DBUtil.commitTransaction(conn);
+            } catch (SQLException e) {
+                DBUtil.rollbackTransaction(conn);
+                throw e;
+            }
+            return insertados.size();
+        }
+    }
+    
+    private void asignarParametros(PreparedStatement pstmt, MovimientoContable movimiento) throws SQLException {
+        pstmt.setTimestamp(1, Timestamp.valueOf(movimiento.getFecha()));
+        pstmt.setString(2, movimiento.getTipoDocumento());
+        pstmt.setString(3, movimiento.getNumeroDocumento());
+        pstmt.setString(4, movimiento.getDescripcion());
+        Dinero.escribir(pstmt, 5, movimiento.getMonto());
+        pstmt.setString(6, movimiento.getTipoMovimiento());
+        pstmt.setString(7, movimiento.getUsuario());
+        pstmt.setString(8, movimiento.getEntidadRelacionada());
+        pstmt.setString(9, movimiento.getReferencia());
+        pstmt.setString(10, movimiento.getDetalle());
+        pstmt.setString(11, movimiento.getIdDiario());
+    }
+    
+    private boolean esDuplicado(SQLException e) {
+        // Los drivers informan el error de un lote en la causa o en la cadena de excepciones
+        for (Throwable causa = e; causa != null; causa = causa.getCause()) {
+            if (causa instanceof SQLException) {
+                for (SQLException actual = (SQLException) causa; actual != null; actual = actual.getNextException()) {
+                    if (actual instanceof SQLIntegrityConstraintViolationException
+                            || (actual.getSQLState() != null && actual.getSQLState().startsWith("23"))) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+    
     /**
      * Busca movimientos contables por tipo y rango de fechas
      * 
@@ -166,7 +293,7 @@ public class MovimientoContableRepository {
             
             try (ResultSet rs = pstmt.executeQuery()) {
                 if (rs.next()) {
-                    return rs.getDouble(1);
+                    return Dinero.leerMonto(rs, 1);
                 }
             }
         }
@@ -210,12 +337,13 @@ public class MovimientoContableRepository {
         movimiento.setTipoDocumento(rs.getString("tipo_documento"));
         movimiento.setNumeroDocumento(rs.getString("numero_documento"));
         movimiento.setDescripcion(rs.getString("descripcion"));
-        movimiento.setMonto(rs.getDouble("monto"));
+        movimiento.setMonto(Dinero.leerMonto(rs, "monto"));
         movimiento.setTipoMovimiento(rs.getString("tipo_movimiento"));
         movimiento.setUsuario(rs.getString("usuario"));
         movimiento.setEntidadRelacionada(rs.getString("entidad_relacionada"));
         movimiento.setReferencia(rs.getString("referencia"));
         movimiento.setDetalle(rs.getString("detalle"));
+        movimiento.setIdDiario(rs.getString("id_diario"));
         
         return movimiento;
     }
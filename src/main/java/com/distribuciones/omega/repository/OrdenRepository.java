@@ -6,6 +6,7 @@ import com.distribuciones.omega.model.Orden;
 import com.distribuciones.omega.model.ProductoInventario;
 import com.distribuciones.omega.model.Usuario;
 import com.distribuciones.omega.utils.DBUtil;
+import com.distribuciones.omega.utils.SecuenciaDocumentos;
 
 import java.sql.*;
 import java.time.LocalDateTime;
@@ -44,7 +45,9 @@ public class OrdenRepository {
                             "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
             
             try (PreparedStatement stmt = conn.prepareStatement(sqlOrden, Statement.RETURN_GENERATED_KEYS)) {
-                stmt.setString(1, generarNumeroOrden());
+                String numero = generarNumeroOrden();
+                orden.setNumeroOrden(numero);
+                stmt.setString(1, numero);
                 stmt.setLong(2, orden.getCliente().getIdCliente());
                 stmt.setLong(3, orden.getVendedor().getIdUsuario());
                 stmt.setTimestamp(4, Timestamp.valueOf(orden.getFecha()));
@@ -87,7 +90,7 @@ public class OrdenRepository {
             
             // 3. Si hay un ID de cotización, marcarla como convertida
             if (orden.getCotizacionId() != null) {
-                String sqlUpdate = "UPDATE cotizaciones SET convertida_a_orden = true WHERE id = ?";
+                String sqlUpdate = "UPDATE cotizaciones SET convertida_a_orden = true WHERE id_cotizacion = ?";
                 try (PreparedStatement stmt = conn.prepareStatement(sqlUpdate)) {
                     stmt.setLong(1, orden.getCotizacionId());
                     stmt.executeUpdate();
@@ -262,45 +265,12 @@ public class OrdenRepository {
     }
     
     /**
-     * Genera un número de orden
-     * @return Número de orden generado
+     * Genera un número de orden desde los bloques de numeración reservados en la base de datos
+     * @return Número de orden generado (formato ORD-YYYYMMDD-XXXX)
+     * @throws SQLException Si no se pudo reservar numeración
      */
-    private String generarNumeroOrden() {
-        // Formato: ORD-YYYYMMDD-XXXX donde XXXX es un número secuencial
-        LocalDateTime now = LocalDateTime.now();
-        String fecha = String.format("%04d%02d%02d", now.getYear(), now.getMonthValue(), now.getDayOfMonth());
-        
-        // Obtener el último número de orden del día
-        String sql = "SELECT numero_orden FROM ordenes " +
-                     "WHERE numero_orden LIKE 'ORD-" + fecha + "-%' " +
-                     "ORDER BY id DESC LIMIT 1";
-        
-        try (Connection conn = DBUtil.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-            
-            int secuencia = 1;
-            
-            if (rs.next()) {
-                String ultimaOrden = rs.getString("numero_orden");
-                String[] partes = ultimaOrden.split("-");
-                if (partes.length == 3) {
-                    try {
-                        secuencia = Integer.parseInt(partes[2]) + 1;
-                    } catch (NumberFormatException e) {
-                        // Si hay error de formato, usar 1
-                        secuencia = 1;
-                    }
-                }
-            }
-            
-            return String.format("ORD-%s-%04d", fecha, secuencia);
-            
-        } catch (SQLException e) {
-            e.printStackTrace();
-            // En caso de error, generar un número aleatorio
-            return String.format("ORD-%s-%04d", fecha, (int)(Math.random() * 9000) + 1000);
-        }
+    private String generarNumeroOrden() throws SQLException {
+        return SecuenciaDocumentos.getInstance().siguiente(SecuenciaDocumentos.TipoDocumento.ORDEN);
     }
     
     /**
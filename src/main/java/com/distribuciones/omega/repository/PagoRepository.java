@@ -4,6 +4,7 @@ import com.distribuciones.omega.model.Factura;
 import com.distribuciones.omega.model.MetodoPago;
 import com.distribuciones.omega.model.Pago;
 import com.distribuciones.omega.utils.DBUtil;
+import com.distribuciones.omega.utils.Dinero;
 
 import java.sql.*;
 import java.time.LocalDateTime;
@@ -85,7 +86,7 @@ public class PagoRepository {
              PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
             
             pstmt.setLong(1, pago.getFactura().getId());
-            pstmt.setDouble(2, pago.getMonto());
+            Dinero.escribir(pstmt, 2, pago.getMonto());
             pstmt.setString(3, pago.getMetodoPago().name());
             pstmt.setString(4, pago.getReferencia());
             pstmt.setTimestamp(5, Timestamp.valueOf(pago.getFechaPago()));
@@ -199,7 +200,7 @@ public class PagoRepository {
     private Pago mapResultSetToPago(ResultSet rs) throws SQLException {
         Pago pago = new Pago();
         pago.setId(rs.getLong("id"));
-        pago.setMonto(rs.getDouble("monto"));
+        pago.setMonto(Dinero.leerMonto(rs, "monto"));
         pago.setMetodoPago(MetodoPago.valueOf(rs.getString("metodo_pago")));
         pago.setReferencia(rs.getString("referencia"));
         pago.setFechaPago(rs.getTimestamp("fecha_pago").toLocalDateTime());
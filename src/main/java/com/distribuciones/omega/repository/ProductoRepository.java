@@ -6,12 +6,17 @@ import com.distribuciones.omega.utils.DBUtil;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Repositorio para operaciones CRUD de Productos
  */
 public class ProductoRepository {
 
+    private static final Logger LOGGER = Logger.getLogger(ProductoRepository.class.getName());
+
     /**
      * Inicializa la tabla si no existe
      */
@@ -204,6 +209,7 @@ public class ProductoRepository {
             }
             
             DBUtil.commitTransaction(conn);
+            CatalogoProductosCache.getInstance().invalidar(producto.getId());
             return producto;
             
         } catch (SQLException e) {
@@ -311,6 +317,7 @@ public class ProductoRepository {
             }
             
             DBUtil.commitTransaction(conn);
+            CatalogoProductosCache.getInstance().invalidar(producto.getId());
             return true;
             
         } catch (SQLException e) {
@@ -338,7 +345,11 @@ public class ProductoRepository {
              PreparedStatement stmt = conn.prepareStatement("DELETE FROM productos WHERE id = ?")) {
             
             stmt.setString(1, id);
-            return stmt.executeUpdate() > 0;
+            boolean eliminado = stmt.executeUpdate() > 0;
+            if (eliminado) {
+                CatalogoProductosCache.getInstance().invalidar(id);
+            }
+            return eliminado;
             
         } catch (SQLException e) {
             e.printStackTrace();
@@ -346,117 +357,34 @@ public class ProductoRepository {
         }
     }
     
+    /**
+     * Consulta base con las tablas de cada subtipo unidas por LEFT JOIN, para
+     * construir la jerarquía de productos en una sola pasada
+     */
+    private static final String SELECT_CON_SUBTIPOS =
+        "SELECT p.id, p.nombre, p.precio, p.cantidad, p.categoria, p.tipo_producto, " +
+        "i.producto_id AS insumo_id, i.presentacion, i.tipo_papel, i.cantidad_por_paquete, " +
+        "m.producto_id AS mobiliario_id, m.tipo_mobiliario, m.material, m.color, m.dimensiones, " +
+        "t.producto_id AS tecnologico_id, t.marca, t.modelo, t.numero_serie, t.garantia_meses, " +
+        "t.especificaciones_tecnicas " +
+        "FROM productos p " +
+        "LEFT JOIN insumos_oficina i ON i.producto_id = p.id " +
+        "LEFT JOIN productos_mobiliarios m ON m.producto_id = p.id " +
+        "LEFT JOIN productos_tecnologicos t ON t.producto_id = p.id";
+    
     /**
      * Busca un producto por su ID
      * @param id ID del producto
      * @return Producto encontrado o null si no existe
      */
     public Producto findById(String id) {
-        try (Connection conn = DBUtil.getConnection()) {
-            // 1. Obtener datos básicos del producto
-            String sql = "SELECT * FROM productos WHERE id = ?";
+        try (Connection conn = DBUtil.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(SELECT_CON_SUBTIPOS + " WHERE p.id = ?")) {
             
-            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
-                stmt.setString(1, id);
-                
-                try (ResultSet rs = stmt.executeQuery()) {
-                    if (!rs.next()) {
-                        return null;
-                    }
-                    
-                    String tipoProducto = rs.getString("tipo_producto");
-                    Producto producto = null;
-                    
-                    // 2. Según el tipo, obtener datos específicos
-                    switch (tipoProducto) {
-                        case "InsumoOficina":
-                            String sqlInsumo = "SELECT p.*, i.* FROM productos p " +
-                                             "JOIN insumos_oficina i ON p.id = i.producto_id " +
-                                             "WHERE p.id = ?";
-                            try (PreparedStatement stmtInsumo = conn.prepareStatement(sqlInsumo)) {
-                                stmtInsumo.setString(1, id);
-                                try (ResultSet rsInsumo = stmtInsumo.executeQuery()) {
-                                    if (rsInsumo.next()) {
-                                        InsumoOficina insumo = new InsumoOficina(
-                                            rsInsumo.getString("nombre"),
-                                            rsInsumo.getString("id"),
-                                            rsInsumo.getDouble("precio"),
-                                            rsInsumo.getInt("cantidad"),
-                                            rsInsumo.getString("presentacion"),
-                                            rsInsumo.getString("tipo_papel"),
-                                            rsInsumo.getInt("cantidad_por_paquete")
-                                        );
-                                        insumo.setCategoria(Categoria.valueOf(rsInsumo.getString("categoria")));
-                                        producto = insumo;
-                                    }
-                                }
-                            }
-                            break;
-                        
-                        case "ProductoMobiliario":
-                            String sqlMobiliario = "SELECT p.*, m.* FROM productos p " +
-                                                   "JOIN productos_mobiliarios m ON p.id = m.producto_id " +
-                                                   "WHERE p.id = ?";
-                            try (PreparedStatement stmtMobiliario = conn.prepareStatement(sqlMobiliario)) {
-                                stmtMobiliario.setString(1, id);
-                                try (ResultSet rsMobiliario = stmtMobiliario.executeQuery()) {
-                                    if (rsMobiliario.next()) {
-                                        ProductoMobilario mobiliario = new ProductoMobilario(
-                                            rsMobiliario.getString("nombre"),
-                                            rsMobiliario.getString("id"),
-                                            rsMobiliario.getDouble("precio"),
-                                            rsMobiliario.getInt("cantidad"),
-                                            rsMobiliario.getString("tipo_mobiliario"),
-                                            rsMobiliario.getString("material"),
-                                            rsMobiliario.getString("color"),
-                                            rsMobiliario.getString("dimensiones")
-                                        );
-                                        mobiliario.setCategoria(Categoria.valueOf(rsMobiliario.getString("categoria")));
-                                        producto = mobiliario;
-                                    }
-                                }
-                            }                       
-                            break;
-                            
-                        case "ProductoTecnologico":
-                            String sqlTecnologico = "SELECT p.*, t.* FROM productos p " +
-                                                    "JOIN productos_tecnologicos t ON p.id = t.producto_id " +
-                                                    "WHERE p.id = ?";
-                            try (PreparedStatement stmtTecnologico = conn.prepareStatement(sqlTecnologico)) {
-                                stmtTecnologico.setString(1, id);
-                                try (ResultSet rsTecnologico = stmtTecnologico.executeQuery()) {
-                                    if (rsTecnologico.next()) {
-                                        ProductoTecnologico tecno = new ProductoTecnologico(
-                                            rsTecnologico.getString("nombre"),
-                                            rsTecnologico.getString("id"),
-                                            rsTecnologico.getDouble("precio"),
-                                            rsTecnologico.getInt("cantidad"),
-                                            rsTecnologico.getString("marca"),
-                                            rsTecnologico.getString("modelo"),
-                                            rsTecnologico.getString("numero_serie"),
-                                            rsTecnologico.getInt("garantia_meses"),
-                                            rsTecnologico.getString("especificaciones_tecnicas")
-                                        );
-                                        tecno.setCategoria(Categoria.valueOf(rsTecnologico.getString("categoria")));
-                                        producto = tecno;
-                                    }
-                                }
-                            }
-                            break;
-                            
-                        default:
-                            // Producto básico
-                            producto = new Producto(
-                                rs.getString("nombre"),
-                                rs.getString("id"),
-                                rs.getDouble("precio"),
-                                rs.getInt("cantidad"),
-                                Categoria.valueOf(rs.getString("categoria"))
-                            );
-                    }
-                    
-                    return producto;
-                }
+            stmt.setString(1, id);
+            
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? mapResultSetToProducto(rs) : null;
             }
         } catch (SQLException e) {
             e.printStackTrace();
@@ -470,41 +398,44 @@ public class ProductoRepository {
      */
     public List<Producto> findAll() {
         List<Producto> productos = new ArrayList<>();
+        recorrerTodos(productos::add);
+        LOGGER.fine(() -> "Productos obtenidos: " + productos.size());
+        return productos;
+    }
+    
+    /**
+     * Recorre todos los productos con una sola consulta, entregándolos uno a uno
+     * a medida que se leen (la memoria no crece con el tamaño del catálogo).
+     * El consumidor no debe consultar la base de datos con la misma conexión.
+     * @param consumidor Acción a ejecutar con cada producto
+     * @return Número de productos recorridos
+     */
+    public int recorrerTodos(Consumer<Producto> consumidor) {
+        int total = 0;
         
-        try (Connection conn = DBUtil.getConnection()) {
-            // Debug: Print number of rows in productos table
-            try (Statement countStmt = conn.createStatement();
-                 ResultSet countRs = countStmt.executeQuery("SELECT COUNT(*) as count FROM productos")) {
-                if (countRs.next()) {
-                    System.out.println("DEBUG: Productos count in database: " + countRs.getInt("count"));
-                }
-            }
+        try (Connection conn = DBUtil.getConnection();
+             Statement stmt = conn.createStatement()) {
             
-            try (Statement stmt = conn.createStatement();
-                 ResultSet rs = stmt.executeQuery("SELECT id FROM productos")) {
-                
-                System.out.println("DEBUG: Retrieving products from database...");
+            DBUtil.habilitarLecturaContinua(stmt);
+            
+            try (ResultSet rs = stmt.executeQuery(SELECT_CON_SUBTIPOS)) {
                 while (rs.next()) {
-                    String id = rs.getString("id");
-                    System.out.println("DEBUG: Found product ID: " + id);
-                    // Usar findById que ya maneja los JOINs correctamente
-                    Producto producto = findById(id);
+                    Producto producto = mapResultSetToProducto(rs);
                     if (producto != null) {
-                        productos.add(producto);
-                        System.out.println("DEBUG: Added product: " + producto.getNombre());
+                        consumidor.accept(producto);
+                        total++;
                     } else {
-                        System.out.println("DEBUG: Product with ID " + id + " could not be fully loaded");
+                        String id = rs.getString("id");
+                        LOGGER.fine(() -> "No se pudo cargar completo el producto " + id);
                     }
                 }
-                
-                System.out.println("DEBUG: Total products retrieved: " + productos.size());
             }
         } catch (SQLException e) {
-            e.printStackTrace();
+            LOGGER.log(Level.SEVERE, "Error al obtener todos los productos", e);
             throw new RuntimeException("Error al obtener todos los productos", e);
         }
         
-        return productos;
+        return total;
     }
     
     /**
@@ -562,13 +493,16 @@ public class ProductoRepository {
         
         try (Connection conn = DBUtil.getConnection();
              PreparedStatement stmt = conn.prepareStatement(
-                 "SELECT * FROM productos WHERE nombre LIKE ?")) {
+                 SELECT_CON_SUBTIPOS + " WHERE p.nombre LIKE ?")) {
             
             stmt.setString(1, "%" + nombre + "%");
             
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
-                    productos.add(mapResultSetToProducto(rs));
+                    Producto producto = mapResultSetToProducto(rs);
+                    if (producto != null) {
+                        productos.add(producto);
+                    }
                 }
             }
         } catch (SQLException e) {
@@ -589,13 +523,16 @@ public class ProductoRepository {
         
         try (Connection conn = DBUtil.getConnection();
              PreparedStatement stmt = conn.prepareStatement(
-                 "SELECT * FROM productos WHERE categoria = ?")) {
+                 SELECT_CON_SUBTIPOS + " WHERE p.categoria = ?")) {
             
             stmt.setString(1, categoria.name());
             
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
-                    productos.add(mapResultSetToProducto(rs));
+                    Producto producto = mapResultSetToProducto(rs);
+                    if (producto != null) {
+                        productos.add(producto);
+                    }
                 }
             }
         } catch (SQLException e) {
@@ -607,30 +544,75 @@ public class ProductoRepository {
     }
     
     /**
-     * Convierte un ResultSet en un objeto Producto del tipo correcto
+     * Convierte una fila de SELECT_CON_SUBTIPOS en un objeto Producto del tipo correcto
+     * @return Producto, o null si es de un subtipo sin fila en su tabla específica
      */
     private Producto mapResultSetToProducto(ResultSet rs) throws SQLException {
         String id = rs.getString("id");
         String tipoProducto = rs.getString("tipo_producto");
+        Producto producto;
         
-        // No podemos obtener los campos de las tablas relacionadas directamente
-        // Necesitamos hacer una query adicional para cada tipo de producto
-        
-        if (tipoProducto.equals("InsumoOficina")) {
-            return findById(id); // Esto ya hace el JOIN adecuado
-        } else if (tipoProducto.equals("ProductoMobiliario")) {
-            return findById(id);
-        } else if (tipoProducto.equals("ProductoTecnologico")) {
-            return findById(id);
-        } else {
-            // Producto básico
-            return new Producto(
-                rs.getString("nombre"),
-                id,
-                rs.getDouble("precio"),
-                rs.getInt("cantidad"),
-                Categoria.valueOf(rs.getString("categoria"))
-            );
+        switch (tipoProducto != null ? tipoProducto : "") {
+            case "InsumoOficina":
+                if (rs.getString("insumo_id") == null) {
+                    return null;
+                }
+                producto = new InsumoOficina(
+                    rs.getString("nombre"),
+                    id,
+                    rs.getDouble("precio"),
+                    rs.getInt("cantidad"),
+                    rs.getString("presentacion"),
+                    rs.getString("tipo_papel"),
+                    rs.getInt("cantidad_por_paquete")
+                );
+                break;
+                
+            case "ProductoMobiliario":
+                if (rs.getString("mobiliario_id") == null) {
+                    return null;
+                }
+                producto = new ProductoMobilario(
+                    rs.getString("nombre"),
+                    id,
+                    rs.getDouble("precio"),
+                    rs.getInt("cantidad"),
+                    rs.getString("tipo_mobiliario"),
+                    rs.getString("material"),
+                    rs.getString("color"),
+                    rs.getString("dimensiones")
+                );
+                break;
+                
+            case "ProductoTecnologico":
+                if (rs.getString("tecnologico_id") == null) {
+                    return null;
+                }
+                producto = new ProductoTecnologico(
+                    rs.getString("nombre"),
+                    id,
+                    rs.getDouble("precio"),
+                    rs.getInt("cantidad"),
+                    rs.getString("marca"),
+                    rs.getString("modelo"),
+                    rs.getString("numero_serie"),
+                    rs.getInt("garantia_meses"),
+                    rs.getString("especificaciones_tecnicas")
+                );
+                break;
+                
+            default:
+                // Producto básico
+                return new Producto(
+                    rs.getString("nombre"),
+                    id,
+                    rs.getDouble("precio"),
+                    rs.getInt("cantidad"),
+                    Categoria.valueOf(rs.getString("categoria"))
+                );
         }
+        
+        producto.setCategoria(Categoria.valueOf(rs.getString("categoria")));
+        return producto;
     }
-}
\ No newline at end of file
+}
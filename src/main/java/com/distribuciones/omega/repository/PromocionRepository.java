@@ -14,6 +14,10 @@ import java.util.List;
  */
 public class PromocionRepository {
 
+    private static final String TIPO_PORCENTAJE = "PORCENTAJE";
+    private static final String TIPO_VALOR_FIJO = "VALOR_FIJO";
+    private static final String TIPO_2X1 = "2X1";
+
     /**
      * Guarda una nueva promoción en la base de datos
      * @param promocion Promoción a guardar
@@ -27,11 +31,10 @@ public class PromocionRepository {
              PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
             
             stmt.setString(1, promocion.getDescripcion());
-            // Usar isPorcentaje para determinar el tipo
-            stmt.setString(2, promocion.isPorcentaje() ? "PORCENTAJE" : "VALOR_FIJO");
+            stmt.setString(2, tipo(promocion));
             stmt.setDouble(3, promocion.getValor());
-            // Usar categoriasAplicables como código_producto temporal
-            stmt.setString(4, getFirstCategory(promocion.getCategoriasAplicables()));
+            // codigo_producto guarda la lista de códigos y categorías a los que aplica
+            stmt.setString(4, listaAplicables(promocion.getCategoriasAplicables()));
             stmt.setDate(5, promocion.getFechaInicio() != null ? 
                           Date.valueOf(promocion.getFechaInicio()) : 
                           Date.valueOf(LocalDate.now()));
@@ -76,11 +79,10 @@ public class PromocionRepository {
              PreparedStatement stmt = conn.prepareStatement(sql)) {
             
             stmt.setString(1, promocion.getDescripcion());
-            // Usar isPorcentaje para determinar el tipo
-            stmt.setString(2, promocion.isPorcentaje() ? "PORCENTAJE" : "VALOR_FIJO");
+            stmt.setString(2, tipo(promocion));
             stmt.setDouble(3, promocion.getValor());
-            // Usar categoriasAplicables como código_producto temporal
-            stmt.setString(4, getFirstCategory(promocion.getCategoriasAplicables()));
+            // codigo_producto guarda la lista de códigos y categorías a los que aplica
+            stmt.setString(4, listaAplicables(promocion.getCategoriasAplicables()));
             stmt.setDate(5, promocion.getFechaInicio() != null ? 
                           Date.valueOf(promocion.getFechaInicio()) : 
                           Date.valueOf(LocalDate.now()));
@@ -148,8 +150,9 @@ public class PromocionRepository {
     /**
      * Obtiene todas las promociones
      * @return Lista de todas las promociones
+     * @throws SQLException Si no se pudo consultar; una lista vacía significa que no hay promociones
      */
-    public List<Promocion> findAll() {
+    public List<Promocion> findAll() throws SQLException {
         List<Promocion> promociones = new ArrayList<>();
         String sql = "SELECT * FROM promociones";
         
@@ -160,9 +163,6 @@ public class PromocionRepository {
             while (rs.next()) {
                 promociones.add(mapResultSetToPromocion(rs));
             }
-            
-        } catch (SQLException e) {
-            e.printStackTrace();
         }
         
         return promociones;
@@ -239,9 +239,10 @@ public class PromocionRepository {
         promocion.setId((int)rs.getLong("id"));
         promocion.setDescripcion(rs.getString("descripcion"));
         
-        // Mapear el "tipo" de la DB al atributo "porcentaje" del modelo
+        // Mapear el "tipo" de la DB a los atributos "porcentaje" y "dosPorUno" del modelo
         String tipo = rs.getString("tipo");
-        promocion.setPorcentaje("PORCENTAJE".equals(tipo));
+        promocion.setPorcentaje(TIPO_PORCENTAJE.equals(tipo));
+        promocion.setDosPorUno(TIPO_2X1.equals(tipo));
         
         promocion.setValor(rs.getDouble("valor"));
         
@@ -271,18 +272,24 @@ public class PromocionRepository {
     }
     
     /**
-     * Obtiene la primera categoría de una lista separada por comas
-     * o devuelve la cadena completa si no hay comas
+     * Tipo con el que se guarda la promoción en la columna "tipo"
      */
-    private String getFirstCategory(String categorias) {
-        if (categorias == null || categorias.isEmpty()) {
-            return "TODAS";
+    private String tipo(Promocion promocion) {
+        if (promocion.isDosPorUno()) {
+            return TIPO_2X1;
         }
-        
-        if (categorias.contains(",")) {
-            return categorias.split(",")[0];
+        return promocion.isPorcentaje() ? TIPO_PORCENTAJE : TIPO_VALOR_FIJO;
+    }
+    
+    /**
+     * Normaliza la lista de códigos y categorías separada por comas
+     * o devuelve "TODAS" si está vacía
+     */
+    private String listaAplicables(String categorias) {
+        if (categorias == null || categorias.isBlank()) {
+            return "TODAS";
         }
         
-        return categorias;
+        return String.join(",", categorias.trim().split("\\s*,\\s*"));
     }
 }
\ No newline at end of file
@@ -0,0 +1,500 @@
+package com.distribuciones.omega.repository;
+
+import com.distribuciones.omega.model.MovimientoContable;
+import com.distribuciones.omega.utils.DBUtil;
+import com.distribuciones.omega.utils.Dinero;
+
+import java.math.BigDecimal;
+import java.sql.*;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Repositorio de los saldos contables.
+ *
+ * saldos_contables guarda los totales acumulados de todo el libro por tipo de
+ * movimiento (DEBITO/CREDITO) y por tipo de documento; se actualizan en la misma
+ * transacción que inserta cada movimiento, así el resumen contable lee unas pocas
+ * filas en lugar de sumar todo el historial. En cada cierre de período se guarda
+ * una foto de esos totales (cierres_contables y saldos_cierre) junto con el último
+ * movimiento incluido; a partir de ella cualquier saldo se obtiene como la foto más
+ * los movimientos posteriores, que es lo que usa la verificación.
+ */
+public class SaldosContablesRepository {
+
+    public static final String MOVIMIENTO = "MOVIMIENTO";
+    public static final String DOCUMENTO = "DOCUMENTO";
+
+    private static final String AGREGADO_MOVIMIENTOS =
+            "SELECT 'MOVIMIENTO' AS dimension, tipo_movimiento AS clave, SUM(monto) AS total, COUNT(*) AS cantidad " +
+            "FROM movimientos_contables WHERE id > ? AND id <= ? GROUP BY tipo_movimiento " +
+            "UNION ALL " +
+            "SELECT 'DOCUMENTO', tipo_documento, SUM(monto), COUNT(*) " +
+            "FROM movimientos_contables WHERE id > ? AND id <= ? GROUP BY tipo_documento";
+
+    /**
+     * Crea las tablas de saldos si no existen y, la primera vez, calcula los
+     * saldos de los movimientos ya registrados
+     */
+    public void createTableIfNotExists() throws SQLException {
+        try (Connection conn = DBUtil.getConnection();
+             Statement stmt = conn.createStatement()) {
+
+            stmt.execute("CREATE TABLE IF NOT EXISTS saldos_contables (" +
+                    "dimension VARCHAR(20) NOT NULL, " +
+                    "clave VARCHAR(50) NOT NULL, " +
+                    "total DECIMAL(15, 2) NOT NULL DEFAULT 0, " +
+                    "cantidad BIGINT NOT NULL DEFAULT 0, " +
+                    "PRIMARY KEY (dimension, clave))");
+
+            stmt.execute("CREATE TABLE IF NOT EXISTS cierres_contables (" +
+                    "id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+                    "periodo VARCHAR(7) NOT NULL, " +
+                    "fecha_cierre TIMESTAMP NOT NULL, " +
+                    "hasta_movimiento_id BIGINT NOT NULL, " +
+                    "movimiento_cierre_id BIGINT)");
+
+            stmt.execute("CREATE TABLE IF NOT EXISTS saldos_cierre (" +
+                    "cierre_id BIGINT NOT NULL, " +
+                    "dimension VARCHAR(20) NOT NULL, " +
+                    "clave VARCHAR(50) NOT NULL, " +
+                    "total DECIMAL(15, 2) NOT NULL, " +
+                    "cantidad BIGINT NOT NULL, " +
+                    "PRIMARY KEY (cierre_id, dimension, clave))");
+        }
+
+        // Libro con movimientos anteriores a los saldos: se calculan una vez
+        try (Connection conn = DBUtil.getConnection()) {
+            if (leerSaldos(conn, false).estaVacio() && existenMovimientos(conn)) {
+                DBUtil.beginTransaction(conn);
+                try {
+                    reemplazarSaldos(conn, calcularActuales(conn));
+                    DBUtil.commitTransaction(conn);
+                    System.out.println("Saldos contables calculados a partir de los movimientos existentes");
+                } catch (SQLException e) {
+                    DBUtil.rollbackTransaction(conn);
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Bloquea hasta el fin de la transacción las filas de saldos que actualizarán los
+     * movimientos, creándolas en cero si faltan. Se llama antes de insertarlos: así un
+     * movimiento no toma su ID mientras un cierre tiene los saldos bloqueados, y no
+     * puede quedar con un ID anterior al del cierre pero fuera de su foto.
+     * @param conn Conexión de la transacción en curso
+     * @param movimientos Movimientos a insertar
+     * @throws SQLException Si no se pudieron bloquear los saldos
+     */
+    public void bloquear(Connection conn, List<MovimientoContable> movimientos) throws SQLException {
+        Saldos filas = new Saldos();
+        for (MovimientoContable movimiento : movimientos) {
+            filas.sumar(MOVIMIENTO, movimiento.getTipoMovimiento(), 0, 0);
+            filas.sumar(DOCUMENTO, movimiento.getTipoDocumento(), 0, 0);
+        }
+        actualizar(conn, filas);
+    }
+
+    /**
+     * Suma los movimientos recién insertados a los saldos. Se ejecuta dentro de la
+     * transacción que inserta los movimientos.
+     * @param conn Conexión de la transacción en curso
+     * @param movimientos Movimientos insertados
+     * @throws SQLException Si no se pudieron actualizar los saldos
+     */
+    public void acumular(Connection conn, List<MovimientoContable> movimientos) throws SQLException {
+        Saldos delta = new Saldos();
+        for (MovimientoContable movimiento : movimientos) {
+            long monto = Dinero.deDouble(movimiento.getMonto());
+            delta.sumar(MOVIMIENTO, movimiento.getTipoMovimiento(), monto, 1);
+            delta.sumar(DOCUMENTO, movimiento.getTipoDocumento(), monto, 1);
+        }
+        actualizar(conn, delta);
+    }
+
+    /**
+     * Bloquea todos los saldos para un cierre y los devuelve. Las filas de DEBITO y
+     * CREDITO se crean en cero si faltan: todo movimiento bloquea una de ellas antes de
+     * insertarse (ver {@link #bloquear}), así ninguno toma un ID hasta que el cierre termina.
+     * @param conn Conexión de la transacción del cierre
+     * @return Saldos actuales, bloqueados hasta el fin de la transacción
+     * @throws SQLException Si hubo un error de base de datos
+     */
+    public Saldos bloquearParaCierre(Connection conn) throws SQLException {
+        Saldos saldos = leerSaldos(conn, true);
+        Saldos faltantes = new Saldos();
+        for (String tipo : new String[] {"DEBITO", "CREDITO"}) {
+            if (!saldos.filas.containsKey(MOVIMIENTO + "|" + tipo)) {
+                faltantes.sumar(MOVIMIENTO, tipo, 0, 0);
+            }
+        }
+        if (faltantes.estaVacio()) {
+            return saldos;
+        }
+        actualizar(conn, faltantes);
+        return leerSaldos(conn, true);
+    }
+
+    private void actualizar(Connection conn, Saldos delta) throws SQLException {
+        String update = "UPDATE saldos_contables SET total = total + ?, cantidad = cantidad + ? " +
+                        "WHERE dimension = ? AND clave = ?";
+        String insert = "INSERT INTO saldos_contables (dimension, clave, total, cantidad) VALUES (?, ?, ?, ?)";
+
+        // Orden fijo de filas para que dos transacciones no se bloqueen mutuamente
+        for (Map.Entry<String, Acumulado> fila : delta.filas.entrySet()) {
+            String[] clave = fila.getKey().split("\\|", 2);
+            Acumulado acumulado = fila.getValue();
+            try (PreparedStatement stmt = conn.prepareStatement(update)) {
+                Dinero.escribir(stmt, 1, acumulado.centavos);
+                stmt.setLong(2, acumulado.cantidad);
+                stmt.setString(3, clave[0]);
+                stmt.setString(4, clave[1]);
+                if (stmt.executeUpdate() > 0) {
+                    continue;
+                }
+            }
+            try (PreparedStatement stmt = conn.prepareStatement(insert)) {
+                stmt.setString(1, clave[0]);
+                stmt.setString(2, clave[1]);
+                Dinero.escribir(stmt, 3, acumulado.centavos);
+                stmt.setLong(4, acumulado.cantidad);
+                stmt.executeUpdate();
+            } catch (SQLIntegrityConstraintViolationException e) {
+                // Otra transacción creó la fila entre el UPDATE y el INSERT
+                try (PreparedStatement stmt = conn.prepareStatement(update)) {
+                    Dinero.escribir(stmt, 1, acumulado.centavos);
+                    stmt.setLong(2, acumulado.cantidad);
+                    stmt.setString(3, clave[0]);
+                    stmt.setString(4, clave[1]);
+                    stmt.executeUpdate();
+                }
+            }
+        }
+    }
+
+    /**
+     * Lee los saldos acumulados de todo el libro
+     * @return Saldos actuales
+     * @throws SQLException Si hubo un error de base de datos
+     */
+    public Saldos leerSaldos() throws SQLException {
+        try (Connection conn = DBUtil.getConnection()) {
+            return leerSaldos(conn, false);
+        }
+    }
+
+    /**
+     * Lee los saldos acumulados con la conexión indicada
+     * @param conn Conexión (dentro de una transacción si se bloquea)
+     * @param bloquear true para bloquear las filas hasta el fin de la transacción
+     * @return Saldos actuales
+     * @throws SQLException Si hubo un error de base de datos
+     */
+    public Saldos leerSaldos(Connection conn, boolean bloquear) throws SQLException {
+        String sql = "SELECT dimension, clave, total, cantidad FROM saldos_contables ORDER BY dimension, clave" +
+                     (bloquear ? " FOR UPDATE" : "");
+        Saldos saldos = new Saldos();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            while (rs.next()) {
+                saldos.sumar(rs.getString(1), rs.getString(2), Dinero.leer(rs, 3), rs.getLong(4));
+            }
+        }
+        return saldos;
+    }
+
+    /**
+     * Guarda la foto de los saldos al cerrar un período
+     * @param conn Conexión de la transacción del cierre
+     * @param periodo Período cerrado (yyyy-MM)
+     * @param fechaCierre Fecha del cierre
+     * @param hastaMovimientoId Último movimiento incluido en los saldos
+     * @param movimientoCierreId Movimiento de cierre generado
+     * @param saldos Saldos a guardar
+     * @return ID del cierre
+     * @throws SQLException Si hubo un error de base de datos
+     */
+    public long registrarCierre(Connection conn, String periodo, LocalDateTime fechaCierre, long hastaMovimientoId,
+                                Long movimientoCierreId, Saldos saldos) throws SQLException {
+        long cierreId;
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "INSERT INTO cierres_contables (periodo, fecha_cierre, hasta_movimiento_id, movimiento_cierre_id) " +
+                "VALUES (?, ?, ?, ?)", Statement.RETURN_GENERATED_KEYS)) {
+            stmt.setString(1, periodo);
+            stmt.setTimestamp(2, Timestamp.valueOf(fechaCierre));
+            stmt.setLong(3, hastaMovimientoId);
+            if (movimientoCierreId != null) {
+                stmt.setLong(4, movimientoCierreId);
+            } else {
+                stmt.setNull(4, Types.BIGINT);
+            }
+            stmt.executeUpdate();
+            try (ResultSet rs = stmt.getGeneratedKeys()) {
+                if (!rs.next()) {
+                    throw new SQLException("No se pudo obtener el ID del cierre contable");
+                }
+                cierreId = rs.getLong(1);
+            }
+        }
+
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "INSERT INTO saldos_cierre (cierre_id, dimension, clave, total, cantidad) VALUES (?, ?, ?, ?, ?)")) {
+            for (Map.Entry<String, Acumulado> fila : saldos.filas.entrySet()) {
+                String[] clave = fila.getKey().split("\\|", 2);
+                stmt.setLong(1, cierreId);
+                stmt.setString(2, clave[0]);
+                stmt.setString(3, clave[1]);
+                Dinero.escribir(stmt, 4, fila.getValue().centavos);
+                stmt.setLong(5, fila.getValue().cantidad);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+        return cierreId;
+    }
+
+    /**
+     * Lista los cierres registrados, del más antiguo al más reciente
+     */
+    public List<CierreContable> listarCierres() throws SQLException {
+        try (Connection conn = DBUtil.getConnection()) {
+            return listarCierres(conn);
+        }
+    }
+
+    private List<CierreContable> listarCierres(Connection conn) throws SQLException {
+        List<CierreContable> cierres = new ArrayList<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT id, periodo, fecha_cierre, hasta_movimiento_id " +
+                                              "FROM cierres_contables ORDER BY hasta_movimiento_id, id")) {
+            while (rs.next()) {
+                cierres.add(new CierreContable(rs.getLong(1), rs.getString(2),
+                        rs.getTimestamp(3).toLocalDateTime(), rs.getLong(4)));
+            }
+        }
+        return cierres;
+    }
+
+    /**
+     * Saldos calculados como la foto del último cierre más los movimientos posteriores
+     * @return Saldos actuales según los movimientos
+     * @throws SQLException Si hubo un error de base de datos
+     */
+    public Saldos calcularActuales() throws SQLException {
+        try (Connection conn = DBUtil.getConnection()) {
+            return calcularActuales(conn);
+        }
+    }
+
+    private Saldos calcularActuales(Connection conn) throws SQLException {
+        List<CierreContable> cierres = listarCierres(conn);
+        if (cierres.isEmpty()) {
+            return agregarMovimientos(conn, 0, Long.MAX_VALUE);
+        }
+        CierreContable ultimo = cierres.get(cierres.size() - 1);
+        Saldos saldos = leerSaldosCierre(conn, ultimo.getId());
+        saldos.sumar(agregarMovimientos(conn, ultimo.getHastaMovimientoId(), Long.MAX_VALUE));
+        return saldos;
+    }
+
+    /**
+     * Compara los saldos con los movimientos, recorriendo el libro una sola vez por
+     * tramos entre cierres: cada foto contra los movimientos hasta su cierre y los
+     * saldos acumulados contra todos los movimientos
+     * @param reparar true para recalcular los saldos acumulados desde los movimientos si no coinciden
+     * @return Diferencias encontradas (vacía si todo cuadra)
+     * @throws SQLException Si hubo un error de base de datos
+     */
+    public List<String> verificar(boolean reparar) throws SQLException {
+        List<String> diferencias = new ArrayList<>();
+        try (Connection conn = DBUtil.getConnection()) {
+            Saldos esperado = new Saldos();
+            long desde = 0;
+            for (CierreContable cierre : listarCierres(conn)) {
+                esperado.sumar(agregarMovimientos(conn, desde, cierre.getHastaMovimientoId()));
+                Saldos foto = leerSaldosCierre(conn, cierre.getId());
+                for (String diferencia : esperado.diferenciasCon(foto)) {
+                    diferencias.add("Cierre " + cierre.getPeriodo() + " (#" + cierre.getId() + "): " + diferencia);
+                }
+                desde = cierre.getHastaMovimientoId();
+            }
+            esperado.sumar(agregarMovimientos(conn, desde, Long.MAX_VALUE));
+
+            Saldos acumulados = leerSaldos(conn, false);
+            List<String> diferenciasAcumulados = esperado.diferenciasCon(acumulados);
+            for (String diferencia : diferenciasAcumulados) {
+                diferencias.add("Saldos acumulados: " + diferencia);
+            }
+
+            if (reparar && !diferenciasAcumulados.isEmpty()) {
+                DBUtil.beginTransaction(conn);
+                try {
+                    reemplazarSaldos(conn, esperado);
+                    DBUtil.commitTransaction(conn);
+                } catch (SQLException e) {
+                    DBUtil.rollbackTransaction(conn);
+                    throw e;
+                }
+            }
+        }
+        return diferencias;
+    }
+
+    private Saldos leerSaldosCierre(Connection conn, long cierreId) throws SQLException {
+        Saldos saldos = new Saldos();
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "SELECT dimension, clave, total, cantidad FROM saldos_cierre WHERE cierre_id = ?")) {
+            stmt.setLong(1, cierreId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    saldos.sumar(rs.getString(1), rs.getString(2), Dinero.leer(rs, 3), rs.getLong(4));
+                }
+            }
+        }
+        return saldos;
+    }
+
+    /**
+     * Totales de los movimientos con ID en (desdeExclusivo, hastaInclusivo]
+     */
+    private Saldos agregarMovimientos(Connection conn, long desdeExclusivo, long hastaInclusivo) throws SQLException {
+        Saldos saldos = new Saldos();
+        try (PreparedStatement stmt = conn.prepareStatement(AGREGADO_MOVIMIENTOS)) {
+            stmt.setLong(1, desdeExclusivo);
+            stmt.setLong(2, hastaInclusivo);
+            stmt.setLong(3, desdeExclusivo);
+            stmt.setLong(4, hastaInclusivo);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    saldos.sumar(rs.getString(1), rs.getString(2), Dinero.leer(rs, 3), rs.getLong(4));
+                }
+            }
+        }
+        return saldos;
+    }
+
+    private void reemplazarSaldos(Connection conn, Saldos saldos) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("DELETE FROM saldos_contables");
+        }
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "INSERT INTO saldos_contables (dimension, clave, total, cantidad) VALUES (?, ?, ?, ?)")) {
+            for (Map.Entry<String, Acumulado> fila : saldos.filas.entrySet()) {
+                String[] clave = fila.getKey().split("\\|", 2);
+                stmt.setString(1, clave[0]);
+                stmt.setString(2, clave[1]);
+                Dinero.escribir(stmt, 3, fila.getValue().centavos);
+                stmt.setLong(4, fila.getValue().cantidad);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+    }
+
+    private boolean existenMovimientos(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT 1 FROM movimientos_contables LIMIT 1")) {
+            return rs.next();
+        } catch (SQLException e) {
+            // La tabla de movimientos todavía no existe
+            return false;
+        }
+    }
+
+    /**
+     * Total y cantidad de movimientos de una clave
+     */
+    public static class Acumulado {
+        // Total en centavos (ver Dinero)
+        private long centavos;
+        private long cantidad;
+
+        public BigDecimal getTotal() { return Dinero.aDecimal(centavos); }
+        public long getCantidad() { return cantidad; }
+    }
+
+    /**
+     * Conjunto de saldos por dimensión y clave
+     */
+    public static class Saldos {
+        // Clave "dimension|clave", ordenada para actualizar siempre en el mismo orden
+        private final Map<String, Acumulado> filas = new TreeMap<>();
+
+        void sumar(String dimension, String clave, long centavos, long cantidad) {
+            Acumulado acumulado = filas.computeIfAbsent(dimension + "|" + (clave != null ? clave : ""),
+                                                        k -> new Acumulado());
+            acumulado.centavos = Math.addExact(acumulado.centavos, centavos);
+            acumulado.cantidad += cantidad;
+        }
+
+        void sumar(Saldos otros) {
+            for (Map.Entry<String, Acumulado> fila : otros.filas.entrySet()) {
+                String[] clave = fila.getKey().split("\\|", 2);
+                sumar(clave[0], clave[1], fila.getValue().centavos, fila.getValue().cantidad);
+            }
+        }
+
+        public boolean estaVacio() {
+            return filas.isEmpty();
+        }
+
+        /**
+         * Total de los movimientos de un tipo (DEBITO o CREDITO)
+         */
+        public double getTotalMovimiento(String tipoMovimiento) {
+            Acumulado acumulado = filas.get(MOVIMIENTO + "|" + tipoMovimiento);
+            return acumulado != null ? Dinero.aDouble(acumulado.centavos) : 0.0;
+        }
+
+        /**
+         * Cantidad de movimientos de un tipo de documento (FACTURA, COTIZACION, ...)
+         */
+        public int getCantidadDocumentos(String tipoDocumento) {
+            Acumulado acumulado = filas.get(DOCUMENTO + "|" + tipoDocumento);
+            return acumulado != null ? (int) acumulado.cantidad : 0;
+        }
+
+        List<String> diferenciasCon(Saldos otros) {
+            List<String> diferencias = new ArrayList<>();
+            TreeSet<String> claves = new TreeSet<>(filas.keySet());
+            claves.addAll(otros.filas.keySet());
+            for (String clave : claves) {
+                Acumulado esperado = filas.getOrDefault(clave, new Acumulado());
+                Acumulado registrado = otros.filas.getOrDefault(clave, new Acumulado());
+                if (esperado.centavos != registrado.centavos || esperado.cantidad != registrado.cantidad) {
+                    diferencias.add(clave.replace('|', ' ') + " esperado " + esperado.getTotal() + " (" + esperado.cantidad +
+                                    ") registrado " + registrado.getTotal() + " (" + registrado.cantidad + ")");
+                }
+            }
+            return diferencias;
+        }
+    }
+
+    /**
+     * Cabecera de un cierre de período
+     */
+    public static class CierreContable {
+        private final long id;
+        private final String periodo;
+        private final LocalDateTime fechaCierre;
+        private final long hastaMovimientoId;
+
+        public CierreContable(long id, String periodo, LocalDateTime fechaCierre, long hastaMovimientoId) {
+            this.id = id;
+            this.periodo = periodo;
+            this.fechaCierre = fechaCierre;
+            this.hastaMovimientoId = hastaMovimientoId;
+        }
+
+        public long getId() { return id; }
+        public String getPeriodo() { return periodo; }
+        public LocalDateTime getFechaCierre() { return fechaCierre; }
+        public long getHastaMovimientoId() { return hastaMovimientoId; }
+    }
+}
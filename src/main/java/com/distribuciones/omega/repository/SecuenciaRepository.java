@@ -0,0 +1,252 @@
+package com.distribuciones.omega.repository;
+
+import com.distribuciones.omega.utils.DBUtil;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Repositorio de secuencias de numeración de documentos (FACT-, ORD-, COT-).
+ *
+ * Cada fila de secuencias_documentos guarda el siguiente número libre para un prefijo
+ * y un día. Las terminales no piden números uno a uno: reservan bloques consecutivos,
+ * y cada bloque queda registrado en bloques_secuencia para poder auditar huecos.
+ */
+public class SecuenciaRepository {
+
+    /**
+     * Crea las tablas de secuencias si no existen
+     */
+    public void createTableIfNotExists() {
+        try (Connection conn = DBUtil.getConnection();
+             Statement stmt = conn.createStatement()) {
+
+            stmt.executeUpdate("CREATE TABLE IF NOT EXISTS secuencias_documentos (" +
+                    "prefijo VARCHAR(10) NOT NULL, " +
+                    "fecha CHAR(8) NOT NULL, " +
+                    "siguiente INT NOT NULL, " +
+                    "PRIMARY KEY (prefijo, fecha))");
+
+            stmt.executeUpdate("CREATE TABLE IF NOT EXISTS bloques_secuencia (" +
+                    "id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+                    "prefijo VARCHAR(10) NOT NULL, " +
+                    "fecha CHAR(8) NOT NULL, " +
+                    "terminal VARCHAR(64) NOT NULL, " +
+                    "desde INT NOT NULL, " +
+                    "hasta INT NOT NULL, " +
+                    "ultimo_usado INT NULL, " +
+                    "asignado TIMESTAMP DEFAULT CURRENT_TIMESTAMP)");
+
+        } catch (SQLException e) {
+            System.err.println("Error al crear tablas de secuencias: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Reserva un bloque de números consecutivos para una terminal
+     * @param prefijo Prefijo del documento (FACT, ORD, COT)
+     * @param fecha Día en formato yyyyMMdd
+     * @param terminal Identificador de la terminal que reserva
+     * @param tamano Cantidad de números del bloque
+     * @param tablaDocumento Tabla donde se guardan los documentos (para continuar la numeración existente)
+     * @param columnaNumero Columna con el número del documento
+     * @return Bloque reservado
+     * @throws SQLException Si no se pudo reservar el bloque
+     */
+    public Bloque reservarBloque(String prefijo, String fecha, String terminal, int tamano,
+                                 String tablaDocumento, String columnaNumero) throws SQLException {
+        try (Connection conn = DBUtil.getConnection()) {
+            DBUtil.beginTransaction(conn);
+            try {
+                Integer siguiente = leerSiguienteParaActualizar(conn, prefijo, fecha);
+
+                if (siguiente == null) {
+                    // Primer bloque del día: continuar después del último número ya emitido
+                    int inicial = ultimoNumeroEmitido(conn, prefijo, fecha, tablaDocumento, columnaNumero) + 1;
+                    try (PreparedStatement stmt = conn.prepareStatement(
+                            "INSERT INTO secuencias_documentos (prefijo, fecha, siguiente) VALUES (?, ?, ?)")) {
+                        stmt.setString(1, prefijo);
+                        stmt.setString(2, fecha);
+                        stmt.setInt(3, inicial);
+                        stmt.executeUpdate();
+                    } catch (SQLException e) {
+                        if (!esClaveDuplicada(e)) {
+                            throw e;
+                        }
+                        // Otra terminal creó la fila al mismo tiempo; usar la suya
+                        DBUtil.rollbackTransaction(conn);
+                        DBUtil.beginTransaction(conn);
+                    }
+                    siguiente = leerSiguienteParaActualizar(conn, prefijo, fecha);
+                    if (siguiente == null) {
+                        throw new SQLException("No se encontró la secuencia " + prefijo + " del " + fecha
+                                + " después de crearla");
+                    }
+                }
+
+                int desde = siguiente;
+                int hasta = desde + tamano - 1;
+
+                try (PreparedStatement stmt = conn.prepareStatement(
+                        "UPDATE secuencias_documentos SET siguiente = ? WHERE prefijo = ? AND fecha = ?")) {
+                    stmt.setInt(1, hasta + 1);
+                    stmt.setString(2, prefijo);
+                    stmt.setString(3, fecha);
+                    stmt.executeUpdate();
+                }
+
+                long idBloque;
+                try (PreparedStatement stmt = conn.prepareStatement(
+                        "INSERT INTO bloques_secuencia (prefijo, fecha, terminal, desde, hasta) VALUES (?, ?, ?, ?, ?)",
+                        Statement.RETURN_GENERATED_KEYS)) {
+                    stmt.setString(1, prefijo);
+                    stmt.setString(2, fecha);
+                    stmt.setString(3, terminal);
+                    stmt.setInt(4, desde);
+                    stmt.setInt(5, hasta);
+                    stmt.executeUpdate();
+
+                    try (ResultSet keys = stmt.getGeneratedKeys()) {
+                        if (!keys.next()) {
+                            throw new SQLException("No se obtuvo el ID del bloque de secuencia");
+                        }
+                        idBloque = keys.getLong(1);
+                    }
+                }
+
+                DBUtil.commitTransaction(conn);
+                return new Bloque(idBloque, prefijo, fecha, terminal, desde, hasta, null);
+
+            } catch (SQLException e) {
+                DBUtil.rollbackTransaction(conn);
+                throw e;
+            }
+        }
+    }
+
+    // Clave primaria repetida: 1062 en MySQL, 23505 en el estándar (H2)
+    private static boolean esClaveDuplicada(SQLException e) {
+        return e.getErrorCode() == 1062 || "23505".equals(e.getSQLState());
+    }
+
+    /**
+     * Registra el último número usado de un bloque (al agotarlo o al cerrar la aplicación).
+     * Los números entre ultimo_usado y hasta quedan documentados como no emitidos.
+     * @param idBloque ID del bloque
+     * @param ultimoUsado Último número emitido del bloque (desde - 1 si no se usó ninguno)
+     */
+    public void registrarUltimoUsado(long idBloque, int ultimoUsado) {
+        try (Connection conn = DBUtil.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "UPDATE bloques_secuencia SET ultimo_usado = ? WHERE id = ?")) {
+            stmt.setInt(1, ultimoUsado);
+            stmt.setLong(2, idBloque);
+            stmt.executeUpdate();
+        } catch (SQLException e) {
+            System.err.println("Error al registrar último número del bloque " + idBloque + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Obtiene los bloques asignados para un prefijo y día (auditoría de huecos)
+     * @param prefijo Prefijo del documento
+     * @param fecha Día en formato yyyyMMdd
+     * @return Bloques ordenados por número inicial
+     */
+    public List<Bloque> findBloques(String prefijo, String fecha) {
+        List<Bloque> bloques = new ArrayList<>();
+        String sql = "SELECT * FROM bloques_secuencia WHERE prefijo = ? AND fecha = ? ORDER BY desde";
+
+        try (Connection conn = DBUtil.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, prefijo);
+            stmt.setString(2, fecha);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    int ultimo = rs.getInt("ultimo_usado");
+                    bloques.add(new Bloque(rs.getLong("id"), rs.getString("prefijo"), rs.getString("fecha"),
+                            rs.getString("terminal"), rs.getInt("desde"), rs.getInt("hasta"),
+                            rs.wasNull() ? null : ultimo));
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error al consultar bloques de secuencia: " + e.getMessage());
+            e.printStackTrace();
+        }
+
+        return bloques;
+    }
+
+    private Integer leerSiguienteParaActualizar(Connection conn, String prefijo, String fecha) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "SELECT siguiente FROM secuencias_documentos WHERE prefijo = ? AND fecha = ? FOR UPDATE")) {
+            stmt.setString(1, prefijo);
+            stmt.setString(2, fecha);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : null;
+            }
+        }
+    }
+
+    /**
+     * Último número emitido antes de usar secuencias (una sola consulta por prefijo y día)
+     */
+    private int ultimoNumeroEmitido(Connection conn, String prefijo, String fecha,
+                                    String tablaDocumento, String columnaNumero) {
+        String patron = prefijo + "-" + fecha + "-";
+        String sql = "SELECT " + columnaNumero + " FROM " + tablaDocumento + " WHERE " + columnaNumero + " LIKE ?";
+        int maximo = 0;
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, patron + "%");
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    try {
+                        maximo = Math.max(maximo, Integer.parseInt(rs.getString(1).substring(patron.length())));
+                    } catch (NumberFormatException e) {
+                        // Número con formato no secuencial (p. ej. generado al azar); se ignora
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            // La tabla del documento puede no existir todavía
+            System.err.println("No se pudo leer la numeración existente de " + tablaDocumento + ": " + e.getMessage());
+        }
+
+        return maximo;
+    }
+
+    /**
+     * Rango de números reservado por una terminal
+     */
+    public static class Bloque {
+        private final long id;
+        private final String prefijo;
+        private final String fecha;
+        private final String terminal;
+        private final int desde;
+        private final int hasta;
+        private final Integer ultimoUsado;
+
+        public Bloque(long id, String prefijo, String fecha, String terminal, int desde, int hasta, Integer ultimoUsado) {
+            this.id = id;
+            this.prefijo = prefijo;
+            this.fecha = fecha;
+            this.terminal = terminal;
+            this.desde = desde;
+            this.hasta = hasta;
+            this.ultimoUsado = ultimoUsado;
+        }
+
+        public long getId() { return id; }
+        public String getPrefijo() { return prefijo; }
+        public String getFecha() { return fecha; }
+        public String getTerminal() { return terminal; }
+        public int getDesde() { return desde; }
+        public int getHasta() { return hasta; }
+        public Integer getUltimoUsado() { return ultimoUsado; }
+    }
+}
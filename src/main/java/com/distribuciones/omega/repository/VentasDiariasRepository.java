@@ -0,0 +1,457 @@
+package com.distribuciones.omega.repository;
+
+import com.distribuciones.omega.model.Factura;
+import com.distribuciones.omega.utils.DBUtil;
+import com.distribuciones.omega.utils.Dinero;
+
+import java.sql.*;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Repositorio de los acumulados diarios de ventas (ventas_diarias).
+ *
+ * Cada fila resume un día para una clave de una dimensión: un vendedor, un cliente,
+ * una categoría de producto o un método de pago. Las facturas, anulaciones y pagos
+ * aprobados los actualizan al registrarse, de modo que los reportes leen una fila por
+ * día y clave en lugar de recorrer todas las facturas. Si los acumulados se desfasan
+ * (por ejemplo, tras cargar datos a mano) se recalculan con {@link #reconstruir}.
+ * Los días en los que no se pudo acumular una factura, una anulación o un pago quedan
+ * pendientes y se recalculan antes de la siguiente consulta.
+ */
+public class VentasDiariasRepository {
+
+    private static final Logger LOGGER = Logger.getLogger(VentasDiariasRepository.class.getName());
+
+    // Compartido entre instancias: cada servicio crea su propio repositorio
+    private static final Set<LocalDate> DIAS_PENDIENTES = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Dimensiones por las que se acumulan las ventas
+     */
+    public enum Dimension {
+        VENDEDOR, CLIENTE, CATEGORIA, METODO_PAGO
+    }
+
+    private static final String SIN_CATEGORIA = "SIN_CATEGORIA";
+
+    // Líneas de las facturas con su categoría: items_factura y, para las facturas
+    // que no tienen filas ahí, detalle_factura (mismo criterio que al leer los ítems)
+    private static final String SELECT_LINEAS =
+            "SELECT i.factura_id AS factura_id, i.cantidad AS cantidad, i.subtotal AS subtotal, p.categoria AS categoria " +
+            "FROM items_factura i LEFT JOIN productos p ON p.id = i.producto_id " +
+            "UNION ALL " +
+            "SELECT d.id_factura, d.cantidad, d.subtotal, p.categoria " +
+            "FROM detalle_factura d LEFT JOIN productos p ON p.id = d.id " +
+            "WHERE NOT EXISTS (SELECT 1 FROM items_factura i2 WHERE i2.factura_id = d.id_factura)";
+
+    /**
+     * Crea la tabla de acumulados si no existe
+     */
+    public void createTableIfNotExists() {
+        try (Connection conn = DBUtil.getConnection();
+             Statement stmt = conn.createStatement()) {
+
+            stmt.executeUpdate("CREATE TABLE IF NOT EXISTS ventas_diarias (" +
+                    "fecha DATE NOT NULL, " +
+                    "dimension VARCHAR(20) NOT NULL, " +
+                    "clave VARCHAR(100) NOT NULL, " +
+                    "etiqueta VARCHAR(150), " +
+                    "facturas INT NOT NULL DEFAULT 0, " +
+                    "unidades INT NOT NULL DEFAULT 0, " +
+                    "total DECIMAL(15,2) NOT NULL DEFAULT 0, " +
+                    "facturas_anuladas INT NOT NULL DEFAULT 0, " +
+                    "total_anulado DECIMAL(15,2) NOT NULL DEFAULT 0, " +
+                    "PRIMARY KEY (fecha, dimension, clave))");
+
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "Error al crear tabla ventas_diarias", e);
+        }
+    }
+
+    /**
+     * Suma una factura recién guardada a los acumulados de su día (por vendedor,
+     * cliente y categoría). Se ejecuta dentro de la transacción que guarda la factura,
+     * después de insertar sus ítems. Si falla se deshace solo lo acumulado (la factura
+     * se guarda igual) y el día queda pendiente de reconstruir.
+     * @param conn Conexión de la transacción en curso
+     * @param factura Factura con ID asignado
+     * @return true si se actualizaron los acumulados
+     * @throws SQLException Si no se pudo deshacer lo acumulado; la transacción debe revertirse
+     */
+    public boolean registrarFactura(Connection conn, Factura factura) throws SQLException {
+        LocalDate dia = factura.getFecha() != null ? factura.getFecha().toLocalDate() : LocalDate.now();
+        return acumularEnTransaccion(conn, dia, () -> acumularFactura(conn, factura, dia));
+    }
+
+    private void acumularFactura(Connection conn, Factura factura, LocalDate dia) throws SQLException {
+        boolean anulada = factura.isAnulada();
+        int facturas = anulada ? 0 : 1;
+        long totalFactura = Dinero.deDouble(factura.getTotal());
+        long total = anulada ? 0 : totalFactura;
+        int anuladas = anulada ? 1 : 0;
+        long totalAnulado = anulada ? totalFactura : 0;
+
+        int unidades = acumularCategorias(conn, factura.getId(), dia, facturas, anuladas);
+
+        if (factura.getVendedor() != null) {
+            acumular(conn, dia, Dimension.VENDEDOR, String.valueOf(factura.getVendedor().getIdUsuario()),
+                    factura.getVendedor().getNombre(), facturas, anulada ? 0 : unidades, total, anuladas, totalAnulado);
+        }
+        if (factura.getCliente() != null) {
+            acumular(conn, dia, Dimension.CLIENTE, String.valueOf(factura.getCliente().getIdCliente()),
+                    factura.getCliente().getNombre(), facturas, anulada ? 0 : unidades, total, anuladas, totalAnulado);
+        }
+    }
+
+    /**
+     * Pasa una factura de vigente a anulada en los acumulados del día en que se emitió.
+     * Se ejecuta dentro de la transacción que marca la factura como anulada. Si falla
+     * se deshace solo lo acumulado y el día queda pendiente de reconstruir.
+     * @param conn Conexión de la transacción en curso
+     * @param facturaId ID de la factura anulada
+     * @return true si se actualizaron los acumulados
+     * @throws SQLException Si no se pudo leer la factura o deshacer lo acumulado; la
+     *         transacción debe revertirse
+     */
+    public boolean registrarAnulacion(Connection conn, long facturaId) throws SQLException {
+        LocalDate dia;
+        long vendedorId;
+        long clienteId;
+        long total;
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "SELECT fecha, vendedor_id, cliente_id, total FROM facturas WHERE id_factura = ?")) {
+            stmt.setLong(1, facturaId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return true;
+                }
+                dia = rs.getTimestamp("fecha").toLocalDateTime().toLocalDate();
+                vendedorId = rs.getLong("vendedor_id");
+                clienteId = rs.getLong("cliente_id");
+                total = Dinero.leer(rs, "total");
+            }
+        }
+
+        return acumularEnTransaccion(conn, dia, () -> {
+            int unidades = acumularCategorias(conn, facturaId, dia, -1, 1);
+            acumular(conn, dia, Dimension.VENDEDOR, String.valueOf(vendedorId), null, -1, -unidades, -total, 1, total);
+            acumular(conn, dia, Dimension.CLIENTE, String.valueOf(clienteId), null, -1, -unidades, -total, 1, total);
+        });
+    }
+
+    /**
+     * Ejecuta una actualización de acumulados dentro de la transacción del documento,
+     * tras un punto de guardado: si falla vuelve a ese punto, para no confirmar una
+     * parte de los incrementos, y deja el día pendiente de reconstruir
+     * @throws SQLException Si no se pudo volver al punto de guardado
+     */
+    private boolean acumularEnTransaccion(Connection conn, LocalDate dia, Acumulacion acumulacion) throws SQLException {
+        Savepoint punto = conn.setSavepoint();
+        try {
+            acumulacion.ejecutar();
+            return true;
+        } catch (SQLException e) {
+            conn.rollback(punto);
+            DIAS_PENDIENTES.add(dia);
+            LOGGER.log(Level.WARNING, "No se pudieron actualizar las ventas diarias, se reconstruirá el " + dia, e);
+            return false;
+        }
+    }
+
+    @FunctionalInterface
+    private interface Acumulacion {
+        void ejecutar() throws SQLException;
+    }
+
+    /**
+     * Suma un pago aprobado a los acumulados de su método de pago
+     * @param metodoPago Método de pago (EFECTIVO, TARJETA_CREDITO, ...)
+     * @param monto Monto aprobado
+     * @param fecha Fecha de la aprobación
+     * @return true si se actualizaron los acumulados; si no, el día queda pendiente de reconstruir
+     */
+    public boolean registrarPago(String metodoPago, double monto, LocalDateTime fecha) {
+        LocalDate dia = fecha.toLocalDate();
+        try (Connection conn = DBUtil.getConnection()) {
+            acumular(conn, dia, Dimension.METODO_PAGO, metodoPago, metodoPago, 1, 0, Dinero.deDouble(monto), 0, 0);
+            return true;
+        } catch (SQLException e) {
+            DIAS_PENDIENTES.add(dia);
+            LOGGER.log(Level.WARNING, "No se pudo acumular el pago en ventas_diarias, se reconstruirá el " + dia, e);
+            return false;
+        }
+    }
+
+    /**
+     * Recalcula los días en los que no se pudo acumular un pago. Los que vuelven a
+     * fallar siguen pendientes para la próxima vez.
+     * @return Días reconstruidos
+     */
+    public int reconstruirPendientes() {
+        int reconstruidos = 0;
+        for (LocalDate dia : new ArrayList<>(DIAS_PENDIENTES)) {
+            try {
+                reconstruir(dia, dia);
+                DIAS_PENDIENTES.remove(dia);
+                reconstruidos++;
+            } catch (SQLException e) {
+                LOGGER.log(Level.WARNING, "No se pudieron reconstruir las ventas diarias del " + dia, e);
+            }
+        }
+        return reconstruidos;
+    }
+
+    /**
+     * Días con acumulados pendientes de reconstruir
+     */
+    public List<LocalDate> getDiasPendientes() {
+        return new ArrayList<>(DIAS_PENDIENTES);
+    }
+
+    /**
+     * Recalcula desde cero los acumulados de un rango de días a partir de facturas,
+     * ítems y pagos. Sirve para poblar la tabla la primera vez y para corregirla.
+     * @param desde Primer día a recalcular
+     * @param hasta Último día a recalcular (incluido)
+     * @return Número de filas de acumulados generadas
+     * @throws SQLException Si hay error al recalcular (no se deja el rango a medias)
+     */
+    public int reconstruir(LocalDate desde, LocalDate hasta) throws SQLException {
+        Timestamp inicio = Timestamp.valueOf(desde.atStartOfDay());
+        Timestamp fin = Timestamp.valueOf(hasta.plusDays(1).atStartOfDay());
+
+        String[] inserciones = {
+            // Por vendedor y por cliente
+            "INSERT INTO ventas_diarias (fecha, dimension, clave, etiqueta, facturas, unidades, total, " +
+            "facturas_anuladas, total_anulado) " +
+            "SELECT CAST(f.fecha AS DATE), 'VENDEDOR', CONCAT('', f.vendedor_id), MAX(u.nombre), " +
+            "SUM(CASE WHEN f.anulada THEN 0 ELSE 1 END), SUM(CASE WHEN f.anulada THEN 0 ELSE COALESCE(lu.unidades, 0) END), " +
+            "SUM(CASE WHEN f.anulada THEN 0 ELSE f.total END), " +
+            "SUM(CASE WHEN f.anulada THEN 1 ELSE 0 END), SUM(CASE WHEN f.anulada THEN f.total ELSE 0 END) " +
+            "FROM facturas f LEFT JOIN usuarios u ON u.id_usuario = f.vendedor_id " +
+            "LEFT JOIN (SELECT l.factura_id, SUM(l.cantidad) AS unidades FROM (" + SELECT_LINEAS + ") l " +
+            "GROUP BY l.factura_id) lu ON lu.factura_id = f.id_factura " +
+            "WHERE f.fecha >= ? AND f.fecha < ? AND f.vendedor_id IS NOT NULL " +
+            "GROUP BY CAST(f.fecha AS DATE), f.vendedor_id",
+
+            "INSERT INTO ventas_diarias (fecha, dimension, clave, etiqueta, facturas, unidades, total, " +
+            "facturas_anuladas, total_anulado) " +
+            "SELECT CAST(f.fecha AS DATE), 'CLIENTE', CONCAT('', f.cliente_id), MAX(c.nombre), " +
+            "SUM(CASE WHEN f.anulada THEN 0 ELSE 1 END), SUM(CASE WHEN f.anulada THEN 0 ELSE COALESCE(lu.unidades, 0) END), " +
+            "SUM(CASE WHEN f.anulada THEN 0 ELSE f.total END), " +
+            "SUM(CASE WHEN f.anulada THEN 1 ELSE 0 END), SUM(CASE WHEN f.anulada THEN f.total ELSE 0 END) " +
+            "FROM facturas f LEFT JOIN clientes c ON c.id_cliente = f.cliente_id " +
+            "LEFT JOIN (SELECT l.factura_id, SUM(l.cantidad) AS unidades FROM (" + SELECT_LINEAS + ") l " +
+            "GROUP BY l.factura_id) lu ON lu.factura_id = f.id_factura " +
+            "WHERE f.fecha >= ? AND f.fecha < ? AND f.cliente_id IS NOT NULL " +
+            "GROUP BY CAST(f.fecha AS DATE), f.cliente_id",
+
+            // Por categoría, a partir de las líneas de cada factura
+            "INSERT INTO ventas_diarias (fecha, dimension, clave, etiqueta, facturas, unidades, total, " +
+            "facturas_anuladas, total_anulado) " +
+            "SELECT CAST(f.fecha AS DATE), 'CATEGORIA', COALESCE(l.categoria, '" + SIN_CATEGORIA + "'), " +
+            "COALESCE(l.categoria, '" + SIN_CATEGORIA + "'), " +
+            "COUNT(DISTINCT CASE WHEN f.anulada THEN NULL ELSE f.id_factura END), " +
+            "SUM(CASE WHEN f.anulada THEN 0 ELSE l.cantidad END), " +
+            "SUM(CASE WHEN f.anulada THEN 0 ELSE l.subtotal END), " +
+            "COUNT(DISTINCT CASE WHEN f.anulada THEN f.id_factura ELSE NULL END), " +
+            "SUM(CASE WHEN f.anulada THEN l.subtotal ELSE 0 END) " +
+            "FROM facturas f JOIN (" + SELECT_LINEAS + ") l ON l.factura_id = f.id_factura " +
+            "WHERE f.fecha >= ? AND f.fecha < ? " +
+            "GROUP BY CAST(f.fecha AS DATE), COALESCE(l.categoria, '" + SIN_CATEGORIA + "')",
+
+            // Por método de pago, según el día del pago aprobado
+            "INSERT INTO ventas_diarias (fecha, dimension, clave, etiqueta, facturas, unidades, total, " +
+            "facturas_anuladas, total_anulado) " +
+            "SELECT CAST(p.fecha_pago AS DATE), 'METODO_PAGO', p.metodo_pago, p.metodo_pago, " +
+            "COUNT(*), 0, SUM(p.monto), 0, 0 " +
+            "FROM pagos p " +
+            "WHERE p.fecha_pago >= ? AND p.fecha_pago < ? AND p.aprobado = true " +
+            "GROUP BY CAST(p.fecha_pago AS DATE), p.metodo_pago"
+        };
+
+        try (Connection conn = DBUtil.getConnection()) {
+            DBUtil.beginTransaction(conn);
+            try {
+                try (PreparedStatement stmt = conn.prepareStatement(
+                        "DELETE FROM ventas_diarias WHERE fecha >= ? AND fecha <= ?")) {
+                    stmt.setDate(1, Date.valueOf(desde));
+                    stmt.setDate(2, Date.valueOf(hasta));
+                    stmt.executeUpdate();
+                }
+
+                int filas = 0;
+                for (String sql : inserciones) {
+                    try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                        stmt.setTimestamp(1, inicio);
+                        stmt.setTimestamp(2, fin);
+                        filas += stmt.executeUpdate();
+                    }
+                }
+
+                DBUtil.commitTransaction(conn);
+                return filas;
+            } catch (SQLException e) {
+                DBUtil.rollbackTransaction(conn);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Total vendido por clave de una dimensión en un rango de días
+     * @param dimension Dimensión a consultar
+     * @param desde Primer día
+     * @param hasta Último día (incluido)
+     * @return Mapa etiqueta -> total (sin facturas anuladas), de mayor a menor
+     */
+    public Map<String, Double> totalesPorClave(Dimension dimension, LocalDate desde, LocalDate hasta) {
+        String sql = "SELECT clave, MAX(etiqueta) AS etiqueta, SUM(total) AS total FROM ventas_diarias " +
+                "WHERE dimension = ? AND fecha BETWEEN ? AND ? GROUP BY clave ORDER BY total DESC";
+
+        reconstruirPendientes();
+        Map<String, Double> totales = new LinkedHashMap<>();
+        try (Connection conn = DBUtil.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, dimension.name());
+            stmt.setDate(2, Date.valueOf(desde));
+            stmt.setDate(3, Date.valueOf(hasta));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    String etiqueta = rs.getString("etiqueta");
+                    // Vendedores con el mismo nombre se suman en centavos
+                    totales.merge(etiqueta != null ? etiqueta : rs.getString("clave"), Dinero.leerMonto(rs, "total"),
+                            (a, b) -> Dinero.aDouble(Dinero.deDouble(a) + Dinero.deDouble(b)));
+                }
+            }
+        } catch (SQLException e) {
+            LOGGER.log(Level.WARNING, "Error al consultar ventas_diarias", e);
+        }
+        return totales;
+    }
+
+    /**
+     * Total vendido por día en un rango, para una clave o para toda la dimensión
+     * @param dimension Dimensión a consultar
+     * @param clave Clave (ID de vendedor, categoría, ...) o null para todas
+     * @param desde Primer día
+     * @param hasta Último día (incluido)
+     * @return Mapa día -> total (sin facturas anuladas), en orden cronológico
+     */
+    public Map<LocalDate, Double> totalesPorDia(Dimension dimension, String clave, LocalDate desde, LocalDate hasta) {
+        String sql = "SELECT fecha, SUM(total) AS total FROM ventas_diarias " +
+                "WHERE dimension = ? AND fecha BETWEEN ? AND ?" + (clave != null ? " AND clave = ?" : "") +
+                " GROUP BY fecha ORDER BY fecha";
+
+        reconstruirPendientes();
+        Map<LocalDate, Double> totales = new LinkedHashMap<>();
+        try (Connection conn = DBUtil.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, dimension.name());
+            stmt.setDate(2, Date.valueOf(desde));
+            stmt.setDate(3, Date.valueOf(hasta));
+            if (clave != null) {
+                stmt.setString(4, clave);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    totales.put(rs.getDate("fecha").toLocalDate(), Dinero.leerMonto(rs, "total"));
+                }
+            }
+        } catch (SQLException e) {
+            LOGGER.log(Level.WARNING, "Error al consultar ventas_diarias", e);
+        }
+        return totales;
+    }
+
+    /**
+     * Acumula las líneas de una factura por categoría
+     * @param signo 1 para sumar la venta, -1 para restarla, 0 para no tocar lo vigente
+     * @param anuladas 1 si se cuenta como anulada
+     * @return Unidades vendidas en la factura
+     */
+    private int acumularCategorias(Connection conn, long facturaId, LocalDate dia, int signo, int anuladas)
+            throws SQLException {
+        String sql = "SELECT COALESCE(l.categoria, '" + SIN_CATEGORIA + "') AS categoria, " +
+                "SUM(l.cantidad) AS unidades, SUM(l.subtotal) AS total " +
+                "FROM (" + SELECT_LINEAS + ") l WHERE l.factura_id = ? " +
+                "GROUP BY COALESCE(l.categoria, '" + SIN_CATEGORIA + "')";
+
+        int unidades = 0;
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setLong(1, facturaId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    String categoria = rs.getString("categoria");
+                    int cantidad = rs.getInt("unidades");
+                    long total = Dinero.leer(rs, "total");
+                    unidades += cantidad;
+                    acumular(conn, dia, Dimension.CATEGORIA, categoria, categoria,
+                            signo, signo * cantidad, signo * total, anuladas, anuladas * total);
+                }
+            }
+        }
+        return unidades;
+    }
+
+    /**
+     * Suma las diferencias (montos en centavos) a la fila del día y clave, creándola si no existe
+     */
+    private void acumular(Connection conn, LocalDate dia, Dimension dimension, String clave, String etiqueta,
+                          int facturas, int unidades, long total, int anuladas, long totalAnulado)
+            throws SQLException {
+        if (actualizarAcumulado(conn, dia, dimension, clave, etiqueta, facturas, unidades, total, anuladas, totalAnulado)) {
+            return;
+        }
+
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "INSERT INTO ventas_diarias (fecha, dimension, clave, etiqueta, facturas, unidades, total, " +
+                "facturas_anuladas, total_anulado) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+            stmt.setDate(1, Date.valueOf(dia));
+            stmt.setString(2, dimension.name());
+            stmt.setString(3, clave);
+            stmt.setString(4, etiqueta);
+            stmt.setInt(5, facturas);
+            stmt.setInt(6, unidades);
+            Dinero.escribir(stmt, 7, total);
+            stmt.setInt(8, anuladas);
+            Dinero.escribir(stmt, 9, totalAnulado);
+            stmt.executeUpdate();
+        } catch (SQLIntegrityConstraintViolationException e) {
+            // Otra terminal creó la fila al mismo tiempo; sumar sobre la suya
+            if (!actualizarAcumulado(conn, dia, dimension, clave, etiqueta, facturas, unidades, total, anuladas, totalAnulado)) {
+                throw e;
+            }
+        }
+    }
+
+    private boolean actualizarAcumulado(Connection conn, LocalDate dia, Dimension dimension, String clave,
+                                        String etiqueta, int facturas, int unidades, long total,
+                                        int anuladas, long totalAnulado) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "UPDATE ventas_diarias SET facturas = facturas + ?, unidades = unidades + ?, total = total + ?, " +
+                "facturas_anuladas = facturas_anuladas + ?, total_anulado = total_anulado + ?, " +
+                "etiqueta = COALESCE(?, etiqueta) " +
+                "WHERE fecha = ? AND dimension = ? AND clave = ?")) {
+            stmt.setInt(1, facturas);
+            stmt.setInt(2, unidades);
+            Dinero.escribir(stmt, 3, total);
+            stmt.setInt(4, anuladas);
+            Dinero.escribir(stmt, 5, totalAnulado);
+            stmt.setString(6, etiqueta);
+            stmt.setDate(7, Date.valueOf(dia));
+            stmt.setString(8, dimension.name());
+            stmt.setString(9, clave);
+            return stmt.executeUpdate() > 0;
+        }
+    }
+}
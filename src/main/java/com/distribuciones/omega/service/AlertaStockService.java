@@ -1,15 +1,13 @@
 package com.distribuciones.omega.service;
 
 import com.distribuciones.omega.model.ProductoInventario;
-import com.distribuciones.omega.utils.EmailUtil;
+import com.distribuciones.omega.utils.BandejaSalidaCorreo;
 import io.github.cdimascio.dotenv.Dotenv;
 import javafx.application.Platform;
 import javafx.scene.control.Alert;
 import javafx.scene.control.ButtonType;
 
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 /**
  * Servicio para gestionar alertas de stock bajo
@@ -26,34 +24,36 @@ public class AlertaStockService {
     private static String emailAdmin = EMAIL; // Valor por defecto
     
     private final InventarioService inventarioService;
-    private final Set<String> alertasEnviadas; // Para evitar duplicados
+    private final MonitorUmbralesStock monitor;
     
     public AlertaStockService() {
         this.inventarioService = new InventarioService();
-        this.alertasEnviadas = new HashSet<>();
+        this.monitor = MonitorUmbralesStock.getInstance();
     }
     
     /**
-     * Verifica si hay productos con stock bajo y genera alertas
+     * Revisa todo el catálogo y avisa de los productos bajo mínimo que aún no se
+     * habían detectado. Las ventas ya avisan al cruzar el mínimo, así que esto solo
+     * recoge lo que cambió por otras vías (otras terminales, cambios en la base).
      */
     public void verificarStockBajo() {
-        // Usando el método específico de InventarioService para obtener productos con stock bajo
-        List<ProductoInventario> productosStockBajo = inventarioService.obtenerProductosStockBajo(stockMinimo);
-        
-        if (!productosStockBajo.isEmpty()) {
-            // Filtrar productos que no han sido alertados aún
-            productosStockBajo.removeIf(p -> alertasEnviadas.contains(p.getCodigo()));
-            
-            if (!productosStockBajo.isEmpty()) {
-                // Mostrar alerta visual
-                mostrarAlertaVisual(productosStockBajo);
-                
-                // Enviar correo electrónico
-                enviarAlertaPorCorreo(productosStockBajo);
-                
-                // Registrar las alertas enviadas
-                productosStockBajo.forEach(p -> alertasEnviadas.add(p.getCodigo()));
-            }
+        monitor.reconciliar();
+    }
+    
+    /**
+     * Avisa (ventana y correo) de productos que acaban de quedar bajo mínimo.
+     * Lo invoca {@link MonitorUmbralesStock} en su propio hilo.
+     * @param productos Productos bajo mínimo
+     */
+    public void notificarStockBajo(List<ProductoInventario> productos) {
+        if (productos.isEmpty()) {
+            return;
+        }
+        if (productos.size() == 1) {
+            notificarProducto(productos.get(0));
+        } else {
+            mostrarAlertaVisual(productos);
+            enviarAlertaPorCorreo(productos);
         }
     }
     
@@ -61,7 +61,7 @@ public class AlertaStockService {
      * Muestra una alerta visual para productos con stock bajo
      */
     private void mostrarAlertaVisual(List<ProductoInventario> productos) {
-        Platform.runLater(() -> {
+        ejecutarEnInterfaz(() -> {
             StringBuilder mensaje = new StringBuilder("Los siguientes productos tienen stock bajo:\n\n");
             
             for (ProductoInventario producto : productos) {
@@ -71,7 +71,9 @@ public class AlertaStockService {
                        .append(producto.getIdProducto())
                        .append(") - Stock actual: ")
                        .append(producto.getStock())
-                       .append("\n");
+                       .append(" (mínimo: ")
+                       .append(monitor.umbral(producto))
+                       .append(")\n");
             }
             
             Alert alert = new Alert(Alert.AlertType.WARNING, mensaje.toString(), ButtonType.OK);
@@ -87,7 +89,7 @@ public class AlertaStockService {
     private void enviarAlertaPorCorreo(List<ProductoInventario> productos) {
         String subject = "ALERTA: Productos con stock bajo";
         
-        StringBuilder body = new StringBuilder("Se han detectado los siguientes productos con stock por debajo del mínimo (" + stockMinimo + "):\n\n");
+        StringBuilder body = new StringBuilder("Se han detectado los siguientes productos con stock por debajo del mínimo:\n\n");
         
         for (ProductoInventario producto : productos) {
             body.append("- ")
@@ -97,46 +99,53 @@ public class AlertaStockService {
                 .append(")\n")
                 .append("  Stock actual: ")
                 .append(producto.getStock())
-                .append("\n");
+                .append(" (mínimo: ")
+                .append(monitor.umbral(producto))
+                .append(")\n");
         }
         
         body.append("\n\nPor favor, reponga estos productos pronto para evitar problemas de inventario.")
             .append("\n\nEste es un mensaje automático del sistema de inventario de Distribuciones Omega.");
         
-        // Enviar en un hilo separado para no bloquear la interfaz
-        new Thread(() -> {
-            EmailUtil.sendEmail(emailAdmin, subject, body.toString());
-        }).start();
+        // Se guarda en la bandeja de salida; el envío lo hace su propio hilo
+        BandejaSalidaCorreo.getInstance().encolar(emailAdmin, subject, body.toString(), null);
     }
     
     /**
-     * Verifica un producto específico al actualizar el inventario
+     * Verifica un producto específico al actualizar el inventario. Solo avisa si
+     * el producto acaba de cruzar su mínimo.
      */
     public void verificarProducto(ProductoInventario producto) {
-        if (producto.getStock() < stockMinimo && !alertasEnviadas.contains(producto.getCodigo())) {
-            // Mostrar alerta visual
-            Platform.runLater(() -> {
-                Alert alert = new Alert(Alert.AlertType.WARNING,
-                        "El producto " + producto.getCodigo() + " (Código: " + producto.getIdProducto() + 
-                        ") tiene un stock bajo: " + producto.getStock() + " unidades.", 
-                        ButtonType.OK);
-                alert.setTitle("Alerta de Stock Bajo");
-                alert.setHeaderText("¡Atención! Stock bajo detectado");
-                alert.showAndWait();
-            });
-            
-            // Enviar correo
-            final String subject = "ALERTA: Stock bajo para " + producto.getCodigo();
-            final String body = "El producto " + producto.getCodigo() + " (Código: " + producto.getIdProducto() + 
-                    ") tiene un stock bajo: " + producto.getStock() + " unidades.\n\n" +
-                    "Por favor, reponga este producto pronto para evitar problemas de inventario.";
-            
-            new Thread(() -> {
-                EmailUtil.sendEmail(emailAdmin, subject, body);
-            }).start();
-            
-            // Registrar alerta
-            alertasEnviadas.add(producto.getCodigo());
+        monitor.registrarCambioStock(producto);
+    }
+    
+    private void notificarProducto(ProductoInventario producto) {
+        // Mostrar alerta visual
+        ejecutarEnInterfaz(() -> {
+            Alert alert = new Alert(Alert.AlertType.WARNING,
+                    "El producto " + producto.getCodigo() + " (Código: " + producto.getIdProducto() + 
+                    ") tiene un stock bajo: " + producto.getStock() + " unidades.", 
+                    ButtonType.OK);
+            alert.setTitle("Alerta de Stock Bajo");
+            alert.setHeaderText("¡Atención! Stock bajo detectado");
+            alert.showAndWait();
+        });
+        
+        // Enviar correo
+        final String subject = "ALERTA: Stock bajo para " + producto.getCodigo();
+        final String body = "El producto " + producto.getCodigo() + " (Código: " + producto.getIdProducto() + 
+                ") tiene un stock bajo: " + producto.getStock() + " unidades (mínimo: " +
+                monitor.umbral(producto) + ").\n\n" +
+                "Por favor, reponga este producto pronto para evitar problemas de inventario.";
+        
+        BandejaSalidaCorreo.getInstance().encolar(emailAdmin, subject, body, "STOCK:" + producto.getCodigo());
+    }
+    
+    private void ejecutarEnInterfaz(Runnable accion) {
+        try {
+            Platform.runLater(accion);
+        } catch (IllegalStateException e) {
+            // Sin interfaz gráfica (procesos por lotes): queda solo el aviso por correo
         }
     }
     
@@ -154,7 +163,7 @@ public class AlertaStockService {
      * Reinicia la lista de alertas enviadas (útil para casos de prueba o reinicio diario)
      */
     public void limpiarAlertasEnviadas() {
-        alertasEnviadas.clear();
+        monitor.reiniciar();
     }
     
     // Getters y setters para la configuración
@@ -164,6 +173,7 @@ public class AlertaStockService {
     
     public void setStockMinimo(int stockMinimo) {
         AlertaStockService.stockMinimo = stockMinimo;
+        monitor.setUmbralGeneral(stockMinimo);
     }
     
     public String getEmailAdmin() {
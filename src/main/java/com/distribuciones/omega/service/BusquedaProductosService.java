@@ -0,0 +1,460 @@
+package com.distribuciones.omega.service;
+
+import com.distribuciones.omega.model.ProductoInventario;
+import com.distribuciones.omega.repository.CatalogoProductosCache;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+/**
+ * Índice de búsqueda de productos para la pantalla de cotizaciones.
+ *
+ * Combina un trie de prefijos sobre los códigos y un índice de trigramas sobre
+ * código y descripción (búsqueda por fragmento). Los términos de menos de 3 letras
+ * no tienen trigramas: se buscan como fragmento recorriendo el catálogo, igual que
+ * el filtro con contains() de antes. Todo el texto se normaliza sin tildes ni
+ * mayúsculas, así que "camara" encuentra "Cámara". El índice se mantiene al día
+ * con los cambios del catálogo en memoria (CatalogoProductosCache) sin reconstruirse.
+ */
+public class BusquedaProductosService {
+
+    private static final Pattern MARCAS_DIACRITICAS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARADORES = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    // Puntajes de relevancia
+    private static final int PUNTOS_CODIGO_EXACTO = 100;
+    private static final int PUNTOS_PREFIJO_CODIGO = 60;
+    private static final int PUNTOS_PREFIJO_PALABRA = 20;
+    private static final int PUNTOS_FRAGMENTO = 10;
+
+    // Las listas del índice se recorren en el orden del catálogo
+    private static final Comparator<Documento> POR_ORDEN = Comparator.comparingInt(d -> d.orden);
+
+    // Mayor puntaje primero; a igual puntaje, el orden del catálogo
+    private static final Comparator<Resultado> POR_RELEVANCIA = (a, b) -> a.puntos != b.puntos
+            ? Integer.compare(b.puntos, a.puntos)
+            : Integer.compare(a.doc.orden, b.doc.orden);
+
+    private static BusquedaProductosService instance;
+
+    private final CatalogoProductosCache catalogo;
+    private long versionIndexada = -1;
+    private int secuencia = 0;
+
+    // Estado protegido por el monitor de esta instancia
+    private final Map<String, Documento> documentos = new LinkedHashMap<>();
+    private final NodoTrie raizCodigos = new NodoTrie();
+    private final Map<String, Set<Documento>> trigramas = new HashMap<>();
+
+    BusquedaProductosService(CatalogoProductosCache catalogo) {
+        this.catalogo = catalogo;
+    }
+
+    /**
+     * Obtiene la instancia única del índice (Singleton)
+     * @return Índice compartido
+     */
+    public static synchronized BusquedaProductosService getInstance() {
+        if (instance == null) {
+            instance = new BusquedaProductosService(CatalogoProductosCache.getInstance());
+        }
+        return instance;
+    }
+
+    /**
+     * Busca productos por código o descripción, ordenados por relevancia.
+     * Un producto coincide si su código empieza con el texto, o si cada palabra
+     * del texto aparece en su código o descripción.
+     * @param texto Texto escrito por el usuario (vacío para listar todos)
+     * @param soloDisponibles true para excluir productos sin stock
+     * @param limite Máximo de resultados (0 para no limitar)
+     * @return Copias de los productos encontrados
+     */
+    public synchronized List<ProductoInventario> buscar(String texto, boolean soloDisponibles, int limite) {
+        sincronizar();
+        int maximo = limite > 0 ? limite : Integer.MAX_VALUE;
+        String consulta = normalizar(texto);
+
+        List<ProductoInventario> resultados = new ArrayList<>();
+        if (consulta.isEmpty()) {
+            for (Documento doc : documentos.values()) {
+                if (resultados.size() >= maximo) {
+                    break;
+                }
+                if (!soloDisponibles || doc.producto.getStock() > 0) {
+                    resultados.add(new ProductoInventario(doc.producto));
+                }
+            }
+            return resultados;
+        }
+
+        List<String> terminos = new ArrayList<>();
+        for (String termino : SEPARADORES.split(consulta)) {
+            if (!termino.isEmpty()) {
+                terminos.add(termino);
+            }
+        }
+        String codigoBuscado = consulta.replace(" ", "");
+
+        // Candidatos: los del término más selectivo más los que tienen el código como prefijo;
+        // cada candidato se verifica contra todos los términos
+        Set<Documento> porCodigo = new HashSet<>();
+        NodoTrie nodo = raizCodigos.buscar(codigoBuscado);
+        if (nodo != null) {
+            nodo.recolectar(porCodigo);
+        }
+
+        Seleccion seleccion = new Seleccion(limite);
+        for (Documento doc : porCodigo) {
+            if (!soloDisponibles || doc.producto.getStock() > 0) {
+                seleccion.considerar(doc, puntuar(doc, terminos, codigoBuscado));
+            }
+        }
+
+        // El resto solo puede puntuar por términos; como la lista está en el orden del
+        // catálogo, al tener el cupo lleno con el puntaje máximo ya no hay mejores
+        int maximoPorTerminos = PUNTOS_PREFIJO_PALABRA * terminos.size();
+        for (Documento doc : candidatosMasSelectivos(terminos)) {
+            if (seleccion.completa(maximoPorTerminos)) {
+                break;
+            }
+            if (!porCodigo.contains(doc) && (!soloDisponibles || doc.producto.getStock() > 0)) {
+                seleccion.considerar(doc, puntuar(doc, terminos, codigoBuscado));
+            }
+        }
+
+        List<Resultado> ordenados = seleccion.ordenados();
+        for (Resultado resultado : ordenados) {
+            resultados.add(new ProductoInventario(resultado.doc.producto));
+        }
+        return resultados;
+    }
+
+    /**
+     * Aplica al índice los cambios del catálogo desde la última sincronización
+     */
+    public synchronized void sincronizar() {
+        if (catalogo == null) {
+            return;
+        }
+        CatalogoProductosCache.CambiosCatalogo cambios = catalogo.cambiosDesde(Math.max(versionIndexada, 0));
+        if (cambios.isCompleto() || versionIndexada < 0) {
+            limpiar();
+        }
+        for (String codigo : cambios.getEliminados()) {
+            quitar(codigo);
+        }
+        for (ProductoInventario producto : cambios.getProductos()) {
+            indexar(producto);
+        }
+        versionIndexada = cambios.getVersion();
+    }
+
+    /**
+     * Agrega o reemplaza un producto en el índice
+     * @param producto Producto a indexar
+     */
+    synchronized void indexar(ProductoInventario producto) {
+        if (producto.getCodigo() == null) {
+            return;
+        }
+        Documento anterior = documentos.get(producto.getCodigo());
+        if (anterior != null) {
+            desindexar(anterior);
+        }
+
+        // Reemplazar en la misma posición para conservar el orden del catálogo
+        Documento doc = new Documento(producto, anterior != null ? anterior.orden : secuencia++);
+        documentos.put(producto.getCodigo(), doc);
+        raizCodigos.agregar(doc.codigo, doc);
+        for (String trigrama : trigramasDe(doc.codigo + " " + doc.descripcion)) {
+            trigramas.computeIfAbsent(trigrama, k -> new TreeSet<>(POR_ORDEN)).add(doc);
+        }
+    }
+
+    /**
+     * Quita un producto del índice
+     * @param codigo Código del producto
+     */
+    synchronized void quitar(String codigo) {
+        Documento doc = documentos.remove(codigo);
+        if (doc != null) {
+            desindexar(doc);
+        }
+    }
+
+    /**
+     * Número de productos indexados
+     */
+    public synchronized int getTamano() {
+        return documentos.size();
+    }
+
+    /**
+     * Nodos del trie de códigos, incluida la raíz
+     */
+    synchronized int getNodosTrie() {
+        return raizCodigos.contarNodos();
+    }
+
+    /**
+     * Normaliza texto para búsqueda: sin tildes, en minúsculas y sin espacios sobrantes
+     * @param texto Texto original
+     * @return Texto normalizado (vacío si es null)
+     */
+    public static String normalizar(String texto) {
+        if (texto == null) {
+            return "";
+        }
+        String sinTildes = MARCAS_DIACRITICAS.matcher(Normalizer.normalize(texto, Normalizer.Form.NFD)).replaceAll("");
+        return sinTildes.toLowerCase(Locale.ROOT).trim();
+    }
+
+    /**
+     * Documentos que pueden contener el término más selectivo de la consulta. Para
+     * términos de 3 o más letras basta la lista de trigramas más corta; los cortos
+     * pueden aparecer en cualquier parte, así que su candidato es todo el catálogo.
+     */
+    private Collection<Documento> candidatosMasSelectivos(List<String> terminos) {
+        Collection<Documento> mejor = null;
+        for (String termino : terminos) {
+            Collection<Documento> candidatos = termino.length() >= 3
+                    ? trigramaMasSelectivo(termino)
+                    : documentos.values();
+            if (mejor == null || candidatos.size() < mejor.size()) {
+                mejor = candidatos;
+            }
+            if (mejor.isEmpty()) {
+                break;
+            }
+        }
+        return mejor != null ? mejor : Collections.emptySet();
+    }
+
+    private Set<Documento> trigramaMasSelectivo(String termino) {
+        Set<Documento> mejor = null;
+        for (String trigrama : trigramasDe(termino)) {
+            Set<Documento> lista = trigramas.get(trigrama);
+            if (lista == null) {
+                return Collections.emptySet();
+            }
+            if (mejor == null || lista.size() < mejor.size()) {
+                mejor = lista;
+            }
+        }
+        return mejor;
+    }
+
+    /**
+     * Puntaje de un candidato: prefijo de código, más la suma por término (una palabra
+     * que empieza con el término vale más que un fragmento). 0 si no coincide.
+     */
+    private static int puntuar(Documento doc, List<String> terminos, String codigoBuscado) {
+        int puntosCodigo = 0;
+        if (doc.codigo.equals(codigoBuscado)) {
+            puntosCodigo = PUNTOS_CODIGO_EXACTO;
+        } else if (doc.codigo.startsWith(codigoBuscado)) {
+            puntosCodigo = PUNTOS_PREFIJO_CODIGO;
+        }
+
+        int puntosTerminos = 0;
+        for (String termino : terminos) {
+            int puntos = puntuarTermino(doc, termino);
+            if (puntos == 0) {
+                puntosTerminos = 0;
+                break;
+            }
+            puntosTerminos += puntos;
+        }
+        return puntosCodigo + puntosTerminos;
+    }
+
+    private static int puntuarTermino(Documento doc, String termino) {
+        for (String palabra : doc.palabras) {
+            if (palabra.startsWith(termino)) {
+                return PUNTOS_PREFIJO_PALABRA;
+            }
+        }
+        if (doc.descripcion.contains(termino) || doc.codigo.contains(termino)) {
+            return PUNTOS_FRAGMENTO;
+        }
+        return 0;
+    }
+
+    private void desindexar(Documento doc) {
+        raizCodigos.quitar(doc.codigo, 0, doc);
+        for (String trigrama : trigramasDe(doc.codigo + " " + doc.descripcion)) {
+            Set<Documento> docs = trigramas.get(trigrama);
+            if (docs != null && docs.remove(doc) && docs.isEmpty()) {
+                trigramas.remove(trigrama);
+            }
+        }
+    }
+
+    private void limpiar() {
+        documentos.clear();
+        raizCodigos.hijos.clear();
+        raizCodigos.documentos.clear();
+        trigramas.clear();
+        secuencia = 0;
+    }
+
+    private static Set<String> trigramasDe(String texto) {
+        Set<String> resultado = new HashSet<>();
+        for (int i = 0; i + 3 <= texto.length(); i++) {
+            resultado.add(texto.substring(i, i + 3));
+        }
+        return resultado;
+    }
+
+    /**
+     * Producto indexado con sus textos normalizados
+     */
+    private static class Documento {
+        private final ProductoInventario producto;
+        private final int orden;
+        private final String codigo;
+        private final String descripcion;
+        private final String[] palabras;
+
+        Documento(ProductoInventario producto, int orden) {
+            this.producto = producto;
+            this.orden = orden;
+            this.codigo = normalizar(producto.getCodigo());
+            this.descripcion = normalizar(producto.getDescripcion());
+
+            Set<String> unicas = new LinkedHashSet<>();
+            for (String texto : new String[] {codigo, descripcion}) {
+                for (String palabra : SEPARADORES.split(texto)) {
+                    if (!palabra.isEmpty()) {
+                        unicas.add(palabra);
+                    }
+                }
+            }
+            this.palabras = unicas.toArray(new String[0]);
+        }
+    }
+
+    private static class Resultado {
+        private final Documento doc;
+        private final int puntos;
+
+        Resultado(Documento doc, int puntos) {
+            this.doc = doc;
+            this.puntos = puntos;
+        }
+    }
+
+    /**
+     * Conserva los mejores resultados; con límite usa un montículo del tamaño del límite
+     */
+    private static class Seleccion {
+        private final int limite;
+        private final PriorityQueue<Resultado> mejores = new PriorityQueue<>(POR_RELEVANCIA.reversed());
+        private final List<Resultado> todos = new ArrayList<>();
+
+        Seleccion(int limite) {
+            this.limite = limite;
+        }
+
+        void considerar(Documento doc, int puntos) {
+            if (puntos == 0) {
+                return;
+            }
+            if (limite <= 0) {
+                todos.add(new Resultado(doc, puntos));
+            } else if (mejores.size() < limite) {
+                mejores.add(new Resultado(doc, puntos));
+            } else {
+                // Solo se crea el resultado si desplaza al peor de los conservados
+                Resultado peor = mejores.peek();
+                if (puntos > peor.puntos || (puntos == peor.puntos && doc.orden < peor.doc.orden)) {
+                    mejores.poll();
+                    mejores.add(new Resultado(doc, puntos));
+                }
+            }
+        }
+
+        /** true si ya hay tantos resultados como el límite y ninguno puntúa menos que el máximo dado */
+        boolean completa(int puntosMaximos) {
+            return limite > 0 && mejores.size() >= limite && mejores.peek().puntos >= puntosMaximos;
+        }
+
+        List<Resultado> ordenados() {
+            List<Resultado> lista = limite > 0 ? new ArrayList<>(mejores) : todos;
+            lista.sort(POR_RELEVANCIA);
+            return lista;
+        }
+    }
+
+    /**
+     * Nodo del trie de códigos; cada nodo guarda los productos cuyo código termina en él
+     */
+    private static class NodoTrie {
+        private final Map<Character, NodoTrie> hijos = new HashMap<>();
+        private final Set<Documento> documentos = new HashSet<>();
+
+        void agregar(String clave, Documento doc) {
+            NodoTrie nodo = this;
+            for (int i = 0; i < clave.length(); i++) {
+                nodo = nodo.hijos.computeIfAbsent(clave.charAt(i), k -> new NodoTrie());
+            }
+            nodo.documentos.add(doc);
+        }
+
+        /**
+         * Quita el documento y los nodos que quedan vacíos en su camino
+         * @return true si este nodo quedó sin documentos ni hijos
+         */
+        boolean quitar(String clave, int posicion, Documento doc) {
+            if (posicion == clave.length()) {
+                documentos.remove(doc);
+            } else {
+                char letra = clave.charAt(posicion);
+                NodoTrie hijo = hijos.get(letra);
+                if (hijo != null && hijo.quitar(clave, posicion + 1, doc)) {
+                    hijos.remove(letra);
+                }
+            }
+            return documentos.isEmpty() && hijos.isEmpty();
+        }
+
+        int contarNodos() {
+            int total = 1;
+            for (NodoTrie hijo : hijos.values()) {
+                total += hijo.contarNodos();
+            }
+            return total;
+        }
+
+        NodoTrie buscar(String prefijo) {
+            NodoTrie nodo = this;
+            for (int i = 0; i < prefijo.length() && nodo != null; i++) {
+                nodo = nodo.hijos.get(prefijo.charAt(i));
+            }
+            return nodo;
+        }
+
+        /** Recolecta los documentos de este nodo y de todos sus descendientes */
+        void recolectar(Collection<Documento> destino) {
+            destino.addAll(documentos);
+            for (NodoTrie hijo : hijos.values()) {
+                hijo.recolectar(destino);
+            }
+        }
+    }
+}
@@ -2,24 +2,45 @@ package com.distribuciones.omega.service;
 
 import com.distribuciones.omega.model.*;
 import com.distribuciones.omega.repository.MovimientoContableRepository;
+import com.distribuciones.omega.repository.SaldosContablesRepository;
 import com.distribuciones.omega.utils.DBUtil;
+import com.distribuciones.omega.utils.Dinero;
 
+import java.math.RoundingMode;
 import java.sql.Connection;
+import java.sql.SQLException;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.List;
+import java.util.logging.Logger;
 
 /**
  * Servicio para gestionar operaciones contables del sistema
  */
 public class ContabilidadService {
 
+    private static final Logger LOGGER = Logger.getLogger(ContabilidadService.class.getName());
+
+    // Espera máxima para que el diario guarde lo pendiente antes de una consulta o cierre
+    private static final long ESPERA_DIARIO_MS = 5000;
+
+    private static final DateTimeFormatter FORMATO_PERIODO = DateTimeFormatter.ofPattern("yyyy-MM");
+
     private final MovimientoContableRepository movimientoRepository;
+    private final SaldosContablesRepository saldosRepository;
+    private final DiarioContable diario;
     
     /**
      * Constructor que inicializa el repositorio
      */
     public ContabilidadService() {
-        this.movimientoRepository = new MovimientoContableRepository();
+        this(new MovimientoContableRepository(), DiarioContable.getInstance());
+    }
+    
+    ContabilidadService(MovimientoContableRepository movimientoRepository, DiarioContable diario) {
+        this.movimientoRepository = movimientoRepository;
+        this.saldosRepository = new SaldosContablesRepository();
+        this.diario = diario;
     }
     
     /**
@@ -60,8 +81,9 @@ public class ContabilidadService {
         }
         movimiento.setDetalle(detalle.toString());
         
-        // Registrar en base de datos
-        return movimientoRepository.save(movimiento);
+        // Registrar en el diario (se guarda en segundo plano)
+        diario.registrar(movimiento);
+        return movimiento;
     }
     
     /**
@@ -105,8 +127,9 @@ public class ContabilidadService {
         // Efectuar también los movimientos de inventario
         registrarMovimientoInventario(factura);
         
-        // Registrar en base de datos
-        return movimientoRepository.save(movimiento);
+        // Registrar en el diario (se guarda en segundo plano)
+        diario.registrar(movimiento);
+        return movimiento;
     }
     
     /**
@@ -126,13 +149,15 @@ public class ContabilidadService {
         movimiento.setDescripcion("Salida de inventario por factura: " + factura.getNumeroFactura());
         
         // Calcular costo total de productos vendidos
-        double costoTotal = 0.0;
+        long costoTotal = 0;
         StringBuilder detalle = new StringBuilder();
         
         for (ItemFactura item : factura.getItems()) {
             ProductoInventario producto = item.getProducto();
-            double costoItem = producto.getPrecio() * 0.7 * item.getCantidad(); // Estimación de costo como 70% del precio
-            costoTotal += costoItem;
+            // Estimación de costo como 70% del precio
+            long costoItem = Dinero.porcentaje(Dinero.multiplicar(Dinero.deDouble(producto.getPrecio()), item.getCantidad()),
+                                               7000, RoundingMode.HALF_UP);
+            costoTotal = Math.addExact(costoTotal, costoItem);
             
             detalle.append("Salida: ")
                    .append(producto.getCodigo())
@@ -141,19 +166,19 @@ public class ContabilidadService {
                    .append(" x ")
                    .append(item.getCantidad())
                    .append(" = ")
-                   .append(costoItem)
+                   .append(Dinero.aDecimal(costoItem))
                    .append("\n");
         }
         
-        movimiento.setMonto(costoTotal);
+        movimiento.setMonto(Dinero.aDouble(costoTotal));
         movimiento.setTipoMovimiento("CREDITO"); // Salida de inventario
         movimiento.setUsuario(factura.getVendedor().getNombre());
         movimiento.setEntidadRelacionada("INVENTARIO");
         movimiento.setReferencia("Salida inventario por Factura #" + factura.getNumeroFactura());
         movimiento.setDetalle(detalle.toString());
         
-        // Registrar en base de datos
-        movimientoRepository.save(movimiento);
+        // Registrar en el diario (se guarda en segundo plano)
+        diario.registrar(movimiento);
     }
     
     /**
@@ -167,6 +192,7 @@ public class ContabilidadService {
      */
     public List<MovimientoContable> consultarMovimientos(
             String tipoMovimiento, LocalDateTime fechaInicio, LocalDateTime fechaFin) throws Exception {
+        esperarDiario();
         return movimientoRepository.buscarPorTipoYFechas(tipoMovimiento, fechaInicio, fechaFin);
     }
     
@@ -177,11 +203,13 @@ public class ContabilidadService {
      * @throws Exception Si ocurre un error al generar el resumen
      */
     public ResumenContable generarResumenContable() throws Exception {
+        esperarDiario();
         ResumenContable resumen = new ResumenContable();
         
-        // Obtener totales de movimientos
-        double totalDebitos = movimientoRepository.calcularTotalPorTipo("DEBITO");
-        double totalCreditos = movimientoRepository.calcularTotalPorTipo("CREDITO");
+        // Saldos acumulados: se mantienen al guardar cada movimiento
+        SaldosContablesRepository.Saldos saldos = saldosRepository.leerSaldos();
+        double totalDebitos = saldos.getTotalMovimiento("DEBITO");
+        double totalCreditos = saldos.getTotalMovimiento("CREDITO");
         
         resumen.setTotalIngresos(totalDebitos);
         resumen.setTotalEgresos(totalCreditos);
@@ -189,8 +217,8 @@ public class ContabilidadService {
         resumen.setFechaGeneracion(LocalDateTime.now());
         
         // Obtener conteos por tipo de documento
-        resumen.setTotalFacturas(movimientoRepository.contarPorTipoDocumento("FACTURA"));
-        resumen.setTotalCotizaciones(movimientoRepository.contarPorTipoDocumento("COTIZACION"));
+        resumen.setTotalFacturas(saldos.getCantidadDocumentos("FACTURA"));
+        resumen.setTotalCotizaciones(saldos.getCantidadDocumentos("COTIZACION"));
         
         return resumen;
     }
@@ -206,6 +234,7 @@ public class ContabilidadService {
         LocalDateTime inicioDia = fecha.toLocalDate().atStartOfDay();
         LocalDateTime finDia = inicioDia.plusDays(1).minusSeconds(1);
         
+        esperarDiario();
         return movimientoRepository.buscarPorFechas(inicioDia, finDia);
     }
     
@@ -218,53 +247,66 @@ public class ContabilidadService {
      * @throws Exception Si ocurre un error durante el cierre
      */
     public MovimientoContable realizarCierrePeriodo(LocalDateTime fechaCierre, String observaciones) throws Exception {
-        Connection conn = null;
+        // El cierre debe incluir todos los movimientos registrados hasta ahora
+        if (!diario.esperarPendientes(ESPERA_DIARIO_MS)) {
+            throw new IllegalStateException("El diario contable tiene movimientos sin guardar; reintente el cierre");
+        }
         
-        try {
-            conn = DBUtil.getConnection();
-            conn.setAutoCommit(false);
-            
-            // Obtener saldos
-            double totalDebitos = movimientoRepository.calcularTotalPorTipo("DEBITO");
-            double totalCreditos = movimientoRepository.calcularTotalPorTipo("CREDITO");
-            double saldoFinal = totalDebitos - totalCreditos;
-            
-            // Crear movimiento de cierre
-            MovimientoContable movimientoCierre = new MovimientoContable();
-            movimientoCierre.setFecha(fechaCierre);
-            movimientoCierre.setTipoDocumento("CIERRE_PERIODO");
-            movimientoCierre.setNumeroDocumento("CIERRE-" + fechaCierre.getYear() + "-" + fechaCierre.getMonthValue());
-            movimientoCierre.setDescripcion("Cierre contable de período: " + 
-                    fechaCierre.getMonth() + "/" + fechaCierre.getYear());
-            movimientoCierre.setMonto(saldoFinal);
-            movimientoCierre.setTipoMovimiento(saldoFinal >= 0 ? "DEBITO" : "CREDITO");
-            movimientoCierre.setUsuario("SISTEMA");
-            movimientoCierre.setEntidadRelacionada("SISTEMA");
-            movimientoCierre.setReferencia("Cierre automático");
-            movimientoCierre.setDetalle("Saldo final del período: " + saldoFinal + "\n" +
-                    "Total Débitos: " + totalDebitos + "\n" +
-                    "Total Créditos: " + totalCreditos + "\n\n" +
-                    "Observaciones: " + observaciones);
-            
-            // Guardar movimiento de cierre
-            MovimientoContable cierreGuardado = movimientoRepository.save(movimientoCierre);
-            
-            // Confirmar transacción
-            conn.commit();
-            
-            return cierreGuardado;
-        } catch (Exception e) {
-            if (conn != null) {
-                conn.rollback();
-            }
-            throw e;
-        } finally {
-            if (conn != null) {
-                conn.setAutoCommit(true);
-                conn.close();
+        try (Connection conn = DBUtil.getConnection()) {
+            DBUtil.beginTransaction(conn);
+            try {
+                // Obtener saldos, bloqueándolos hasta terminar el cierre: los movimientos que
+                // lleguen mientras tanto esperan y toman un ID posterior al del cierre
+                SaldosContablesRepository.Saldos saldos = saldosRepository.bloquearParaCierre(conn);
+                double totalDebitos = saldos.getTotalMovimiento("DEBITO");
+                double totalCreditos = saldos.getTotalMovimiento("CREDITO");
+                double saldoFinal = totalDebitos - totalCreditos;
+                
+                // Crear movimiento de cierre
+                MovimientoContable movimientoCierre = new MovimientoContable();
+                movimientoCierre.setFecha(fechaCierre);
+                movimientoCierre.setTipoDocumento("CIERRE_PERIODO");
+                movimientoCierre.setNumeroDocumento("CIERRE-" + fechaCierre.getYear() + "-" + fechaCierre.getMonthValue());
+                movimientoCierre.setDescripcion("Cierre contable de período: " + 
+                        fechaCierre.getMonth() + "/" + fechaCierre.getYear());
+                movimientoCierre.setMonto(saldoFinal);
+                movimientoCierre.setTipoMovimiento(saldoFinal >= 0 ? "DEBITO" : "CREDITO");
+                movimientoCierre.setUsuario("SISTEMA");
+                movimientoCierre.setEntidadRelacionada("SISTEMA");
+                movimientoCierre.setReferencia("Cierre automático");
+                movimientoCierre.setDetalle("Saldo final del período: " + saldoFinal + "\n" +
+                        "Total Débitos: " + totalDebitos + "\n" +
+                        "Total Créditos: " + totalCreditos + "\n\n" +
+                        "Observaciones: " + observaciones);
+                
+                // Guardar movimiento de cierre y la foto de los saldos que lo incluyen
+                MovimientoContable cierreGuardado = movimientoRepository.save(conn, movimientoCierre);
+                saldosRepository.registrarCierre(conn, fechaCierre.format(FORMATO_PERIODO), fechaCierre,
+                        cierreGuardado.getId(), cierreGuardado.getId(), saldosRepository.leerSaldos(conn, false));
+                
+                // Confirmar transacción
+                DBUtil.commitTransaction(conn);
+                
+                return cierreGuardado;
+            } catch (Exception e) {
+                DBUtil.rollbackTransaction(conn);
+                throw e;
             }
         }
     }
+    
+    /**
+     * Concilia los saldos acumulados y las fotos de cada cierre contra los
+     * movimientos registrados
+     * 
+     * @param reparar true para recalcular los saldos acumulados si no coinciden
+     * @return Diferencias encontradas (vacía si todo cuadra)
+     * @throws SQLException Si ocurre un error en la base de datos
+     */
+    public List<String> verificarSaldos(boolean reparar) throws SQLException {
+        esperarDiario();
+        return saldosRepository.verificar(reparar);
+    }
 
     /**
      * Registra un ingreso en el sistema contable
@@ -293,8 +335,9 @@ public class ContabilidadService {
             movimiento.setReferencia("Ingreso - " + tipoIngreso);
             movimiento.setDetalle("Ingreso por " + tipoIngreso + ": " + descripcion + "\nMonto: " + monto);
             
-            // Registrar en base de datos
-            return movimientoRepository.save(movimiento);
+            // Registrar en el diario (se guarda en segundo plano)
+            diario.registrar(movimiento);
+            return movimiento;
             
         } catch (Exception e) {
             System.err.println("Error al registrar ingreso: " + e.getMessage());
@@ -303,6 +346,12 @@ public class ContabilidadService {
         }
     }
     
+    private void esperarDiario() {
+        if (!diario.esperarPendientes(ESPERA_DIARIO_MS)) {
+            LOGGER.warning("El diario contable aún tiene movimientos sin guardar; la consulta puede no incluirlos");
+        }
+    }
+    
     /**
      * Clase interna para manejar resúmenes contables
      */
@@ -0,0 +1,575 @@
+package com.distribuciones.omega.service;
+
+import com.distribuciones.omega.model.MovimientoContable;
+import com.distribuciones.omega.repository.MovimientoContableRepository;
+import io.github.cdimascio.dotenv.Dotenv;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Diario contable: registra los movimientos sin que la venta espere a la base de datos.
+ *
+ * Cada movimiento se anota primero en un archivo local de solo agregado (y se fuerza
+ * a disco), luego pasa a una cola acotada y un hilo escritor los guarda por lotes en
+ * una sola transacción. Cuando un lote queda guardado se anota su confirmación en el
+ * archivo; si la aplicación se cae antes, al iniciar se vuelven a guardar los
+ * movimientos sin confirmar. El id_diario de cada movimiento es único en la tabla,
+ * así que reprocesar uno que sí alcanzó a guardarse no lo duplica.
+ *
+ * Lo que no se pudo guardar (un guardado directo con la cola llena o los pendientes
+ * del inicio con la base caída) vuelve al hilo escritor, que lo reintenta junto con
+ * los lotes. Si el archivo queda cerrado (por ejemplo, al interrumpir un hilo que
+ * escribía en él) se vuelve a abrir en la siguiente anotación.
+ */
+public class DiarioContable {
+
+    private static final Logger LOGGER = Logger.getLogger(DiarioContable.class.getName());
+
+    private static final int CAPACIDAD_COLA = 10_000;
+    private static final int TAMANO_LOTE = 500;
+    private static final long ESPERA_REINTENTO_INICIAL_MS = 500;
+    private static final long ESPERA_REINTENTO_MAXIMA_MS = 30_000;
+
+    // Registros del archivo: movimiento anotado y movimiento confirmado
+    private static final String MOVIMIENTO = "M";
+    private static final String CONFIRMADO = "C";
+    private static final String NULO = "\\N";
+    private static final int CAMPOS_MOVIMIENTO = 12;
+
+    private static DiarioContable instance;
+
+    private final MovimientoContableRepository repository;
+    private final Path rutaArchivo;
+    private final BlockingQueue<MovimientoContable> cola;
+    // Movimientos que fallaron fuera del hilo escritor y este debe reintentar
+    private final Queue<MovimientoContable> reintentos = new ConcurrentLinkedQueue<>();
+
+    private final Object bloqueoArchivo = new Object();
+    private FileChannel archivo;
+    // id_diario de los movimientos anotados en el archivo que aún no tienen confirmación
+    private final Set<String> sinConfirmar = new HashSet<>();
+
+    private Thread escritor;
+    private volatile boolean activo;
+    private volatile boolean iniciado;
+
+    // Métricas
+    private final AtomicLong enProceso = new AtomicLong();
+    private final LongAdder registrados = new LongAdder();
+    private final LongAdder escritos = new LongAdder();
+    private final LongAdder escritosDirectos = new LongAdder();
+    private final LongAdder lotes = new LongAdder();
+    private final LongAdder fallos = new LongAdder();
+    private final LongAdder reprocesados = new LongAdder();
+    private final AtomicLong loteMaximo = new AtomicLong();
+
+    DiarioContable(MovimientoContableRepository repository, Path rutaArchivo, int capacidadCola) {
+        this.repository = repository;
+        this.rutaArchivo = rutaArchivo;
+        this.cola = new ArrayBlockingQueue<>(capacidadCola);
+    }
+
+    public static synchronized DiarioContable getInstance() {
+        if (instance == null) {
+            String ruta = Dotenv.configure().directory(".").ignoreIfMissing().load()
+                                .get("DIARIO_CONTABLE_ARCHIVO", "diario-contable.wal");
+            instance = new DiarioContable(new MovimientoContableRepository(), Paths.get(ruta), CAPACIDAD_COLA);
+        }
+        return instance;
+    }
+
+    /**
+     * Reprocesa lo que quedó sin confirmar en el archivo e inicia el hilo escritor.
+     * Si no se llamó antes, lo hace el primer {@link #registrar}.
+     */
+    public synchronized void iniciar() {
+        if (iniciado) {
+            return;
+        }
+        try {
+            reprocesarArchivo();
+            synchronized (bloqueoArchivo) {
+                archivo = abrirArchivo();
+            }
+        } catch (IOException e) {
+            LOGGER.severe("No se pudo abrir el archivo del diario contable " + rutaArchivo +
+                          "; los movimientos no sobrevivirán a una caída: " + e.getMessage());
+            archivo = null;
+        }
+
+        activo = true;
+        escritor = new Thread(this::escribirEnLotes, "diario-contable");
+        escritor.setDaemon(true);
+        escritor.start();
+        iniciado = true;
+        LOGGER.info("Diario contable iniciado (" + rutaArchivo.toAbsolutePath() + ")");
+    }
+
+    /**
+     * Registra un movimiento. Vuelve en cuanto queda anotado en el archivo; el
+     * guardado en la base de datos lo hace el hilo escritor.
+     * @param movimiento Movimiento a registrar (se le asigna id_diario)
+     */
+    public void registrar(MovimientoContable movimiento) {
+        if (!iniciado) {
+            iniciar();
+        }
+        if (movimiento.getIdDiario() == null) {
+            movimiento.setIdDiario(UUID.randomUUID().toString());
+        }
+        anotar(movimiento);
+        registrados.increment();
+        enProceso.incrementAndGet();
+
+        if (!activo || !cola.offer(movimiento)) {
+            // Cola llena o diario detenido: se guarda en el momento
+            escribirDirecto(movimiento);
+        }
+    }
+
+    /**
+     * Espera a que se guarden los movimientos registrados hasta ahora (para
+     * consultas y cierres que deben verlos)
+     * @param timeoutMs Espera máxima
+     * @return true si no quedó nada pendiente
+     */
+    public boolean esperarPendientes(long timeoutMs) {
+        long limite = System.currentTimeMillis() + timeoutMs;
+        while (enProceso.get() > 0) {
+            if (System.currentTimeMillis() >= limite) {
+                return false;
+            }
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Guarda lo que quede en la cola y detiene el hilo escritor. Lo que no se pueda
+     * guardar queda en el archivo para el próximo inicio.
+     */
+    public synchronized void cerrar() {
+        if (!iniciado) {
+            return;
+        }
+        activo = false;
+        try {
+            escritor.join(10_000);
+            if (escritor.isAlive()) {
+                escritor.interrupt();
+                escritor.join(1_000);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (bloqueoArchivo) {
+            if (archivo != null) {
+                try {
+                    archivo.close();
+                } catch (IOException e) {
+                    LOGGER.warning("Error al cerrar el archivo del diario contable: " + e.getMessage());
+                }
+                archivo = null;
+            }
+        }
+        iniciado = false;
+    }
+
+    private void escribirEnLotes() {
+        List<MovimientoContable> lote = new ArrayList<>();
+        long espera = ESPERA_REINTENTO_INICIAL_MS;
+
+        while (activo || !cola.isEmpty() || !reintentos.isEmpty() || !lote.isEmpty()) {
+            try {
+                MovimientoContable pendiente;
+                while (lote.size() < TAMANO_LOTE && (pendiente = reintentos.poll()) != null) {
+                    lote.add(pendiente);
+                }
+                if (lote.isEmpty()) {
+                    MovimientoContable primero = cola.poll(200, TimeUnit.MILLISECONDS);
+                    if (primero == null) {
+                        continue;
+                    }
+                    lote.add(primero);
+                }
+                // Todo lo que llegó mientras tanto va en la misma transacción
+                cola.drainTo(lote, TAMANO_LOTE - lote.size());
+
+                repository.guardarLote(lote);
+                confirmar(lote);
+                escritos.add(lote.size());
+                lotes.increment();
+                loteMaximo.accumulateAndGet(lote.size(), Math::max);
+                enProceso.addAndGet(-lote.size());
+                lote.clear();
+                espera = ESPERA_REINTENTO_INICIAL_MS;
+
+            } catch (SQLException e) {
+                fallos.increment();
+                if (!activo) {
+                    // Cerrando sin base de datos: todo queda en el archivo para el próximo inicio
+                    int sinGuardar = lote.size() + cola.size() + reintentos.size();
+                    LOGGER.severe("Diario contable cerrado con " + sinGuardar +
+                                  " movimientos sin guardar: " + e.getMessage());
+                    enProceso.addAndGet(-sinGuardar);
+                    cola.clear();
+                    reintentos.clear();
+                    return;
+                }
+                LOGGER.warning("No se pudo guardar un lote de " + lote.size() + " movimientos contables, " +
+                               "reintentando en " + espera + " ms: " + e.getMessage());
+                try {
+                    Thread.sleep(espera);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+                espera = Math.min(espera * 2, ESPERA_REINTENTO_MAXIMA_MS);
+
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void escribirDirecto(MovimientoContable movimiento) {
+        List<MovimientoContable> uno = List.of(movimiento);
+        try {
+            repository.guardarLote(uno);
+            confirmar(uno);
+            escritos.increment();
+            escritosDirectos.increment();
+            enProceso.decrementAndGet();
+        } catch (SQLException e) {
+            fallos.increment();
+            if (activo) {
+                // Lo reintenta el hilo escritor; sigue pendiente hasta que quede guardado
+                LOGGER.warning("No se pudo guardar el movimiento " + movimiento.getIdDiario() +
+                               "; se reintentará con el próximo lote: " + e.getMessage());
+                reintentos.add(movimiento);
+            } else {
+                LOGGER.severe("No se pudo guardar el movimiento " + movimiento.getIdDiario() +
+                              "; queda en el archivo del diario para el próximo inicio: " + e.getMessage());
+                enProceso.decrementAndGet();
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // Archivo del diario
+    // ---------------------------------------------------------------------
+
+    private void anotar(MovimientoContable movimiento) {
+        synchronized (bloqueoArchivo) {
+            if (archivo == null) {
+                return;
+            }
+            try {
+                String registro = serializar(movimiento);
+                escribirEnArchivo(() -> {
+                    escribir(registro);
+                    archivo.force(false);
+                });
+                sinConfirmar.add(movimiento.getIdDiario());
+            } catch (IOException e) {
+                LOGGER.severe("No se pudo anotar el movimiento en el diario contable: " + e.getMessage());
+            }
+        }
+    }
+
+    private void confirmar(List<MovimientoContable> movimientos) {
+        synchronized (bloqueoArchivo) {
+            if (archivo == null) {
+                return;
+            }
+            try {
+                StringBuilder registros = new StringBuilder();
+                for (MovimientoContable movimiento : movimientos) {
+                    registros.append(CONFIRMADO).append('\t').append(movimiento.getIdDiario()).append('\n');
+                }
+                movimientos.forEach(movimiento -> sinConfirmar.remove(movimiento.getIdDiario()));
+                escribirEnArchivo(() -> {
+                    escribir(registros.toString());
+                    // Todo lo anotado ya está en la base de datos: el archivo vuelve a empezar
+                    if (sinConfirmar.isEmpty()) {
+                        archivo.truncate(0);
+                    }
+                });
+            } catch (IOException e) {
+                // Sin la confirmación se reprocesará al iniciar; id_diario evita duplicarlo
+                LOGGER.warning("No se pudo confirmar en el diario contable: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Ejecuta una escritura en el archivo (con bloqueoArchivo tomado). El hilo escribe
+     * sin su marca de interrupción, porque interrumpirlo cerraría el canal para todos,
+     * y si el canal ya estaba cerrado se vuelve a abrir y se reintenta una vez.
+     */
+    private void escribirEnArchivo(EscrituraArchivo escritura) throws IOException {
+        boolean interrumpido = Thread.interrupted();
+        try {
+            try {
+                escritura.ejecutar();
+            } catch (ClosedChannelException e) {
+                interrumpido |= Thread.interrupted();
+                LOGGER.warning("El archivo del diario contable estaba cerrado; se vuelve a abrir");
+                try {
+                    archivo.close();
+                } catch (IOException ignorada) {
+                    // Ya estaba cerrado
+                }
+                archivo = abrirArchivo();
+                escritura.ejecutar();
+            }
+        } finally {
+            if (interrumpido) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Abre el archivo para agregar. Si la última línea quedó a medio escribir se cierra
+     * con un salto para que lo siguiente no se pegue a ella (al reprocesar se descarta).
+     */
+    private FileChannel abrirArchivo() throws IOException {
+        boolean lineaAbierta = false;
+        if (Files.exists(rutaArchivo)) {
+            try (FileChannel lectura = FileChannel.open(rutaArchivo, StandardOpenOption.READ)) {
+                long tamano = lectura.size();
+                if (tamano > 0) {
+                    ByteBuffer ultimo = ByteBuffer.allocate(1);
+                    lectura.read(ultimo, tamano - 1);
+                    lineaAbierta = ultimo.get(0) != '\n';
+                }
+            }
+        }
+        FileChannel canal = FileChannel.open(rutaArchivo, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                             StandardOpenOption.APPEND);
+        if (lineaAbierta) {
+            canal.write(ByteBuffer.wrap(new byte[] {'\n'}));
+        }
+        return canal;
+    }
+
+    @FunctionalInterface
+    private interface EscrituraArchivo {
+        void ejecutar() throws IOException;
+    }
+
+    private void escribir(String registros) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(registros.getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            archivo.write(buffer);
+        }
+    }
+
+    /**
+     * Guarda los movimientos anotados sin confirmación (caída anterior) y vacía el archivo
+     */
+    private void reprocesarArchivo() throws IOException {
+        if (!Files.exists(rutaArchivo)) {
+            return;
+        }
+        Map<String, MovimientoContable> pendientes = new LinkedHashMap<>();
+        String contenido = new String(Files.readAllBytes(rutaArchivo), StandardCharsets.UTF_8);
+        for (String linea : contenido.split("\n")) {
+            String[] campos = linea.split("\t", -1);
+            if (campos.length == CAMPOS_MOVIMIENTO && MOVIMIENTO.equals(campos[0])) {
+                MovimientoContable movimiento = deserializar(campos);
+                pendientes.put(movimiento.getIdDiario(), movimiento);
+            } else if (campos.length == 2 && CONFIRMADO.equals(campos[0])) {
+                pendientes.remove(campos[1]);
+            } else if (!linea.isEmpty()) {
+                // Última línea a medio escribir cuando se cortó la aplicación
+                LOGGER.warning("Registro incompleto en el diario contable descartado");
+            }
+        }
+
+        if (!pendientes.isEmpty()) {
+            List<MovimientoContable> movimientos = new ArrayList<>(pendientes.values());
+            try {
+                for (int i = 0; i < movimientos.size(); i += TAMANO_LOTE) {
+                    int insertados = repository.guardarLote(
+                            movimientos.subList(i, Math.min(i + TAMANO_LOTE, movimientos.size())));
+                    reprocesados.add(insertados);
+                }
+                LOGGER.info("Diario contable: " + reprocesados.sum() + " movimientos recuperados de " +
+                            movimientos.size() + " sin confirmar");
+            } catch (SQLException e) {
+                // Siguen anotados en el archivo y los reintenta el hilo escritor; id_diario
+                // evita duplicar los que alcanzaron a guardarse antes del error
+                LOGGER.severe("No se pudieron recuperar " + movimientos.size() +
+                              " movimientos del diario contable; se reintentarán: " + e.getMessage());
+                synchronized (bloqueoArchivo) {
+                    sinConfirmar.addAll(pendientes.keySet());
+                }
+                reintentos.addAll(movimientos);
+                enProceso.addAndGet(movimientos.size());
+                return;
+            }
+        }
+        Files.write(rutaArchivo, new byte[0]);
+    }
+
+    private static String serializar(MovimientoContable m) {
+        String[] campos = {
+                MOVIMIENTO, m.getIdDiario(), m.getFecha() != null ? m.getFecha().toString() : null,
+                m.getTipoDocumento(), m.getNumeroDocumento(), m.getDescripcion(), Double.toString(m.getMonto()),
+                m.getTipoMovimiento(), m.getUsuario(), m.getEntidadRelacionada(), m.getReferencia(), m.getDetalle()
+        };
+        StringBuilder linea = new StringBuilder();
+        for (int i = 0; i < campos.length; i++) {
+            if (i > 0) {
+                linea.append('\t');
+            }
+            linea.append(escapar(campos[i]));
+        }
+        return linea.append('\n').toString();
+    }
+
+    private static MovimientoContable deserializar(String[] campos) {
+        MovimientoContable m = new MovimientoContable();
+        m.setIdDiario(desescapar(campos[1]));
+        String fecha = desescapar(campos[2]);
+        m.setFecha(fecha != null ? LocalDateTime.parse(fecha) : LocalDateTime.now());
+        m.setTipoDocumento(desescapar(campos[3]));
+        m.setNumeroDocumento(desescapar(campos[4]));
+        m.setDescripcion(desescapar(campos[5]));
+        m.setMonto(Double.parseDouble(desescapar(campos[6])));
+        m.setTipoMovimiento(desescapar(campos[7]));
+        m.setUsuario(desescapar(campos[8]));
+        m.setEntidadRelacionada(desescapar(campos[9]));
+        m.setReferencia(desescapar(campos[10]));
+        m.setDetalle(desescapar(campos[11]));
+        return m;
+    }
+
+    private static String escapar(String valor) {
+        if (valor == null) {
+            return NULO;
+        }
+        StringBuilder sb = new StringBuilder(valor.length());
+        for (char c : valor.toCharArray()) {
+            switch (c) {
+                case '\\': sb.append("\\\\"); break;
+                case '\t': sb.append("\\t"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                default: sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String desescapar(String valor) {
+        if (NULO.equals(valor)) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder(valor.length());
+        for (int i = 0; i < valor.length(); i++) {
+            char c = valor.charAt(i);
+            if (c == '\\' && i + 1 < valor.length()) {
+                char siguiente = valor.charAt(++i);
+                switch (siguiente) {
+                    case 't': sb.append('\t'); break;
+                    case 'n': sb.append('\n'); break;
+                    case 'r': sb.append('\r'); break;
+                    default: sb.append(siguiente);
+                }
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Devuelve las métricas del diario contable
+     */
+    public EstadisticasDiario getEstadisticas() {
+        return new EstadisticasDiario(cola.size(), enProceso.get(), registrados.sum(), escritos.sum(),
+                escritosDirectos.sum(), lotes.sum(), loteMaximo.get(), fallos.sum(), reprocesados.sum());
+    }
+
+    /**
+     * Instantánea de las métricas del diario contable
+     */
+    public static class EstadisticasDiario {
+        private final int enCola;
+        private final long pendientes;
+        private final long registrados;
+        private final long escritos;
+        private final long escritosDirectos;
+        private final long lotes;
+        private final long loteMaximo;
+        private final long fallos;
+        private final long reprocesados;
+
+        public EstadisticasDiario(int enCola, long pendientes, long registrados, long escritos, long escritosDirectos,
+                                  long lotes, long loteMaximo, long fallos, long reprocesados) {
+            this.enCola = enCola;
+            this.pendientes = pendientes;
+            this.registrados = registrados;
+            this.escritos = escritos;
+            this.escritosDirectos = escritosDirectos;
+            this.lotes = lotes;
+            this.loteMaximo = loteMaximo;
+            this.fallos = fallos;
+            this.reprocesados = reprocesados;
+        }
+
+        public int getEnCola() { return enCola; }
+        public long getPendientes() { return pendientes; }
+        public long getRegistrados() { return registrados; }
+        public long getEscritos() { return escritos; }
+        public long getEscritosDirectos() { return escritosDirectos; }
+        public long getLotes() { return lotes; }
+        public long getLoteMaximo() { return loteMaximo; }
+        public long getFallos() { return fallos; }
+        public long getReprocesados() { return reprocesados; }
+
+        public double getPromedioPorLote() {
+            return lotes > 0 ? (double) (escritos - escritosDirectos) / lotes : 0.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("DiarioContable{enCola=%d, pendientes=%d, registrados=%d, escritos=%d, directos=%d, " +
+                                 "lotes=%d, promedioLote=%.1f, loteMax=%d, fallos=%d, reprocesados=%d}",
+                                 enCola, pendientes, registrados, escritos, escritosDirectos, lotes,
+                                 getPromedioPorLote(), loteMaximo, fallos, reprocesados);
+        }
+    }
+}
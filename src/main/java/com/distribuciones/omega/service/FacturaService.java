@@ -2,24 +2,42 @@ package com.distribuciones.omega.service;
 
 import com.distribuciones.omega.model.*;
 import com.distribuciones.omega.repository.FacturaRepository;
+import com.distribuciones.omega.repository.VentasDiariasRepository;
+import com.distribuciones.omega.utils.LogUtil;
 import com.distribuciones.omega.utils.NumeroFacturaGenerator;
 
+import java.sql.SQLException;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Servicio para gestionar las operaciones relacionadas con facturas
  */
 public class FacturaService {
     
+    private static final Logger LOGGER = Logger.getLogger(FacturaService.class.getName());
+    
     private final FacturaRepository facturaRepository;
     private final CotizacionService cotizacionService;
+    private final InventarioService inventarioService;
+    private final ReservaStockService reservaStockService;
+    private final VentasDiariasRepository ventasDiariasRepository;
+    private final PreciosService preciosService;
     
     public FacturaService() {
         this.facturaRepository = new FacturaRepository();
         this.cotizacionService = new CotizacionService();
+        this.inventarioService = new InventarioService();
+        this.reservaStockService = ReservaStockService.getInstance();
+        this.ventasDiariasRepository = new VentasDiariasRepository();
+        this.preciosService = new PreciosService();
     }
     
     /**
@@ -78,67 +96,7 @@ public class FacturaService {
      * @return Factura generada
      */
     public Factura generarFacturaDesdeContizacion(Cotizacion cotizacion) {
-        try {
-            if (cotizacion == null) {
-                throw new IllegalArgumentException("La cotización no puede ser nula");
-            }
-            
-            // Crear la factura
-            Factura factura = new Factura();
-            factura.setCliente(cotizacion.getCliente());
-            factura.setVendedor(cotizacion.getVendedor());
-            factura.setFecha(LocalDateTime.now());
-            factura.setSubtotal(cotizacion.getSubtotal());
-            factura.setDescuento(cotizacion.getDescuento());
-            factura.setIva(cotizacion.getIva());
-            factura.setTotal(cotizacion.getTotal());
-            factura.setPagada(false);
-            
-            // Generar número de factura
-            String numeroFactura = "FACT-" + 
-                LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd")) + 
-                "-" + String.format("%04d", obtenerSiguienteNumeroFactura());
-            factura.setNumeroFactura(numeroFactura);
-            
-            // Transferir items desde la cotización
-            List<ItemFactura> itemsFactura = new ArrayList<>();
-            
-            // Esto es clave: Convertir los ítems de cotización a ítems de factura
-            for (ItemCotizacion itemCotizacion : cotizacion.getItems()) {
-                ItemFactura itemFactura = new ItemFactura();
-                itemFactura.setProducto(itemCotizacion.getProducto());
-                itemFactura.setCantidad(itemCotizacion.getCantidad());
-                itemFactura.setPrecioUnitario(itemCotizacion.getPrecioUnitario());
-                itemFactura.setDescuento(itemCotizacion.getDescuento());
-                itemFactura.setSubtotal(itemCotizacion.getSubtotal());
-                itemsFactura.add(itemFactura);
-            }
-            
-            // Añadir los ítems a la factura
-            factura.setItems(itemsFactura);
-            
-            // Guardar la factura
-            FacturaRepository repo = new FacturaRepository();
-            Factura facturaGuardada = repo.save(factura);
-            
-            // IMPORTANTE: Guardar los ítems en la base de datos
-            System.out.println("Guardando ítems de factura: " + itemsFactura.size() + " ítems");
-            for (ItemFactura item : itemsFactura) {
-                System.out.println("Item: " + item.getProducto().getDescripcion() + 
-                                " - Cantidad: " + item.getCantidad() + 
-                                " - Precio: " + item.getPrecioUnitario());
-            }
-            
-            // Guardar los ítems en la base de datos
-            repo.guardarItemsFactura(facturaGuardada.getId(), itemsFactura);
-            
-            return facturaGuardada;
-            
-        } catch (Exception e) {
-            System.err.println("Error al generar factura desde cotización: " + e.getMessage());
-            e.printStackTrace();
-            return null;
-        }
+        return generarFacturaDesdeContizacion(cotizacion, null);
     }
 
         /**
@@ -147,139 +105,72 @@ public class FacturaService {
      * @param itemsFactura Ítems ya convertidos 
      * @return Factura generada
      */
+    @SuppressWarnings("try") // El contexto de log solo rodea el guardado
     public Factura generarFacturaDesdeContizacion(Cotizacion cotizacion, List<ItemFactura> itemsFactura) {
+        boolean stockConfirmado = false;
         try {
             if (cotizacion == null) {
                 throw new IllegalArgumentException("La cotización no puede ser nula");
             }
             
+            // Confirmar la reserva de stock de la cotización (descuento atómico en BD)
+            ResultadoStock stock = reservaStockService.confirmar(cotizacion);
+            if (!stock.isExitoso()) {
+                throw new IllegalStateException("No hay suficiente stock para facturar:\n" + stock.getMensajeFallos());
+            }
+            stockConfirmado = true;
+            
             // Crear la factura
             Factura factura = new Factura();
             factura.setCliente(cotizacion.getCliente());
             factura.setVendedor(cotizacion.getVendedor());
             factura.setFecha(LocalDateTime.now());
-            factura.setSubtotal(cotizacion.getSubtotal());
-            factura.setDescuento(cotizacion.getDescuento());
-            factura.setIva(cotizacion.getIva());
-            factura.setTotal(cotizacion.getTotal());
+            // Totales de la liquidación de la cotización (la misma que vio la pantalla)
+            Liquidacion liquidacion = preciosService.liquidar(cotizacion);
+            liquidacion.aplicarA(factura);
             factura.setPagada(false);
             
             // Generar número de factura
-            String numeroFactura = "FACT-" + 
-                LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd")) + 
-                "-" + String.format("%04d", obtenerSiguienteNumeroFactura());
-            factura.setNumeroFactura(numeroFactura);
+            factura.setNumeroFactura(NumeroFacturaGenerator.generarNumeroFactura());
             
-            // Usar los ítems preconvertidos si se proporcionan, sino convertir desde la cotización
+            // Usar los ítems preconvertidos si se proporcionan, sino tomarlos de la liquidación
             if (itemsFactura == null || itemsFactura.isEmpty()) {
-                itemsFactura = new ArrayList<>();
-                
-                // Convertir los ítems de cotización a ítems de factura
-                for (ItemCotizacion itemCotizacion : cotizacion.getItems()) {
-                    ItemFactura itemFactura = new ItemFactura();
-                    itemFactura.setProducto(itemCotizacion.getProducto());
-                    itemFactura.setCantidad(itemCotizacion.getCantidad());
-                    itemFactura.setPrecioUnitario(itemCotizacion.getPrecioUnitario());
-                    itemFactura.setDescuento(itemCotizacion.getDescuento());
-                    itemFactura.setSubtotal(itemCotizacion.getSubtotal());
-                    itemsFactura.add(itemFactura);
-                }
+                itemsFactura = liquidacion.itemsFactura(cotizacion.getItems());
             }
             
             // Añadir los ítems a la factura
             factura.setItems(itemsFactura);
             
-            // Guardar la factura
+            // Guardar la factura y sus ítems; los registros de ambos pasos llevan el número de factura
             FacturaRepository repo = new FacturaRepository();
-            Factura facturaGuardada = repo.save(factura);
-            
-            // IMPORTANTE: Guardar los ítems en la base de datos
-            System.out.println("Guardando ítems de factura: " + itemsFactura.size() + " ítems");
-            for (ItemFactura item : itemsFactura) {
-                System.out.println("Item: " + item.getProducto().getDescripcion() + 
-                                " - Cantidad: " + item.getCantidad() + 
-                                " - Precio: " + item.getPrecioUnitario());
+            Factura facturaGuardada;
+            try (LogUtil.Contexto contexto = LogUtil.con("factura", factura.getNumeroFactura())) {
+                facturaGuardada = repo.save(factura);
+                LogUtil.evento(LOGGER, Level.FINE, "Guardando ítems de factura", "items", itemsFactura.size());
+                repo.guardarItemsFactura(facturaGuardada.getId(), itemsFactura);
             }
             
-            // Guardar los ítems en la base de datos
-            repo.guardarItemsFactura(facturaGuardada.getId(), itemsFactura);
-            
             return facturaGuardada;
             
         } catch (Exception e) {
-            System.err.println("Error al generar factura desde cotización: " + e.getMessage());
-            e.printStackTrace();
-            return null;
-        }
-    }
-
-        /**
-     * Obtiene el siguiente número secuencial para facturas
-     * @return Número secuencial
-     */
-    private int obtenerSiguienteNumeroFactura() {
-        try {
-            // Obtener la fecha actual en formato YYYYMMDD
-            String fechaHoy = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd"));
-            
-            // Buscar la última factura del día
-            String ultimoNumero = facturaRepository.obtenerUltimoNumeroFactura(fechaHoy);
-            
-            // Si hay una factura existente, incrementar el contador
-            if (ultimoNumero != null && !ultimoNumero.isEmpty()) {
-                try {
-                    // Extraer el número secuencial del formato FACT-YYYYMMDD-XXXX
-                    String[] partes = ultimoNumero.split("-");
-                    if (partes.length == 3) {
-                        return Integer.parseInt(partes[2]) + 1;
-                    }
-                } catch (NumberFormatException e) {
-                    System.err.println("Error al parsear número de secuencia: " + e.getMessage());
-                }
+            LOGGER.log(Level.SEVERE, "Error al generar factura desde cotización " + cotizacion.getNumeroCotizacion(), e);
+            if (stockConfirmado) {
+                reponerStockCotizacion(cotizacion);
             }
-            
-            // Si no hay facturas hoy o hubo error, empezar con 1
-            return 1;
-        } catch (Exception e) {
-            System.err.println("Error al obtener siguiente número de factura: " + e.getMessage());
-            // En caso de error, usar un número basado en el timestamp
-            return (int)(System.currentTimeMillis() % 1000) + 1;
+            return null;
         }
     }
 
     /**
-     * Genera un número de factura único
-     * @return Número de factura generado
+     * Devuelve al inventario las unidades de una cotización cuya factura no se pudo guardar
      */
-    private String generarNumeroFactura() {
-        // Formato: FACT-YYYYMMDD-XXXX donde XXXX es un número secuencial
-        LocalDateTime now = LocalDateTime.now();
-        String fecha = String.format("%04d%02d%02d", now.getYear(), now.getMonthValue(), now.getDayOfMonth());
-        
-        try {
-            // Obtener el último número de factura del día
-            String ultimoNumero = facturaRepository.obtenerUltimoNumeroFactura(fecha);
-            
-            int secuencia = 1;
-            if (ultimoNumero != null && !ultimoNumero.isEmpty()) {
-                try {
-                    // Extraer el número secuencial del formato FACT-YYYYMMDD-XXXX
-                    String[] partes = ultimoNumero.split("-");
-                    if (partes.length == 3) {
-                        secuencia = Integer.parseInt(partes[2]) + 1;
-                    }
-                } catch (NumberFormatException e) {
-                    System.err.println("Error al parsear número de secuencia: " + e.getMessage());
-                    // Si hay error, usar una secuencia basada en el tiempo como respaldo
-                    secuencia = (int)(System.currentTimeMillis() % 10000);
-                }
-            }
-            
-            return String.format("FACT-%s-%04d", fecha, secuencia);
-        } catch (Exception e) {
-            System.err.println("Error al generar número de factura: " + e.getMessage());
-            // En caso de error, usar timestamp como secuencia
-            return String.format("FACT-%s-%04d", fecha, (int)(System.currentTimeMillis() % 10000));
+    private void reponerStockCotizacion(Cotizacion cotizacion) {
+        Map<String, Integer> cantidades = new HashMap<>();
+        for (ItemCotizacion item : cotizacion.getItems()) {
+            cantidades.merge(item.getProducto().getCodigo(), item.getCantidad(), Integer::sum);
+        }
+        if (!inventarioService.reponerStock(cantidades)) {
+            LOGGER.warning("No se pudo reponer el stock de la cotización " + cotizacion.getNumeroCotizacion());
         }
     }
 
@@ -294,7 +185,7 @@ public class FacturaService {
             // 1. Verificar que la factura existe
             Factura factura = facturaRepository.findById(facturaId);
             if (factura == null) {
-                System.err.println("No se pudo actualizar el estado de pago: Factura no encontrada (ID: " + facturaId + ")");
+                LOGGER.warning("No se pudo actualizar el estado de pago: Factura no encontrada (ID: " + facturaId + ")");
                 return false;
             }
             
@@ -302,17 +193,15 @@ public class FacturaService {
             boolean actualizado = facturaRepository.actualizarEstadoPago(facturaId, pagada);
             
             if (actualizado) {
-                System.out.println("Estado de pago actualizado correctamente para factura ID: " + 
-                                   facturaId + " - Pagada: " + pagada + " - Fecha de pago: " + 
-                                   (pagada ? LocalDateTime.now() : "N/A"));
+                LogUtil.evento(LOGGER, Level.FINE, "Estado de pago actualizado",
+                        "factura", factura.getNumeroFactura(), "pagada", pagada);
                 return true;
             } else {
-                System.err.println("Error técnico al actualizar el estado de pago para factura ID: " + facturaId);
+                LOGGER.warning("Error técnico al actualizar el estado de pago para factura ID: " + facturaId);
                 return false;
             }
         } catch (Exception e) {
-            e.printStackTrace();
-            System.err.println("Error al actualizar estado de pago: " + e.getMessage());
+            LOGGER.log(Level.SEVERE, "Error al actualizar estado de pago de la factura ID: " + facturaId, e);
             return false;
         }
     }
@@ -348,8 +237,7 @@ public class FacturaService {
             }
             return true;
         } catch (Exception e) {
-            System.err.println("Error al copiar items de cotización a factura: " + e.getMessage());
-            e.printStackTrace();
+            LOGGER.log(Level.SEVERE, "Error al copiar items de cotización a factura", e);
             return false;
         }
     }
@@ -422,6 +310,100 @@ public class FacturaService {
         return facturaRepository.buscarFacturasPorRango(fechaInicio, fechaFin);
     }
     
+    /**
+     * Recorre las facturas de un rango (sin ítems) una a una, sin cargarlas todas en memoria
+     * @param vendedorId ID del vendedor, o null para todos
+     * @param fechaInicio Fecha inicio del rango
+     * @param fechaFin Fecha fin del rango
+     * @param consumidor Recibe cada factura
+     * @return Número de facturas recorridas
+     */
+    public int recorrerFacturasPorRango(Long vendedorId, LocalDateTime fechaInicio, LocalDateTime fechaFin,
+                                        Consumer<Factura> consumidor) {
+        return facturaRepository.recorrerCabecerasPorRango(vendedorId, fechaInicio, fechaFin, consumidor);
+    }
+    
+    /**
+     * Obtiene una página de facturas de un rango (sin ítems), paginando por fecha e ID
+     * @param vendedorId ID del vendedor, o null para todos
+     * @param fechaInicio Fecha inicio del rango
+     * @param fechaFin Fecha fin del rango
+     * @param despuesDe Última factura de la página anterior, o null para la primera
+     * @param limite Tamaño de la página
+     * @return Facturas de la página
+     */
+    public List<Factura> obtenerPaginaFacturasPorRango(Long vendedorId, LocalDateTime fechaInicio, LocalDateTime fechaFin,
+                                                       Factura despuesDe, int limite) {
+        return facturaRepository.buscarPaginaPorRango(vendedorId, fechaInicio, fechaFin, despuesDe, limite);
+    }
+    
+    /**
+     * Carga los ítems de una factura obtenida sin ellos (por ejemplo, desde una página)
+     * @param factura Factura
+     */
+    public void cargarItems(Factura factura) {
+        facturaRepository.cargarItems(List.of(factura));
+    }
+    
+    /**
+     * Total facturado en un rango, sin cargar las facturas
+     * @param vendedorId ID del vendedor, o null para todos
+     * @param fechaInicio Fecha inicio del rango
+     * @param fechaFin Fecha fin del rango
+     * @return Total en centavos
+     */
+    public long sumarTotalesPorRango(Long vendedorId, LocalDateTime fechaInicio, LocalDateTime fechaFin) {
+        return facturaRepository.sumarTotalesPorRango(vendedorId, fechaInicio, fechaFin);
+    }
+    
+    /**
+     * Cuenta las facturas de un rango
+     * @param vendedorId ID del vendedor, o null para todos
+     * @param fechaInicio Fecha inicio del rango
+     * @param fechaFin Fecha fin del rango
+     * @return Número de facturas
+     */
+    public int contarFacturasPorRango(Long vendedorId, LocalDateTime fechaInicio, LocalDateTime fechaFin) {
+        return facturaRepository.contarFacturasPorRango(vendedorId, fechaInicio, fechaFin);
+    }
+    
+    /**
+     * Total vendido por vendedor en un rango de días, leído de los acumulados diarios
+     * @param desde Primer día
+     * @param hasta Último día (incluido)
+     * @return Mapa nombre del vendedor -> total facturado (sin anuladas)
+     */
+    public Map<String, Double> obtenerVentasPorVendedor(LocalDate desde, LocalDate hasta) {
+        return ventasDiariasRepository.totalesPorClave(VentasDiariasRepository.Dimension.VENDEDOR, desde, hasta);
+    }
+    
+    /**
+     * Total vendido por día en un rango, de un vendedor o de todos
+     * @param vendedorId ID del vendedor, o null para todos
+     * @param desde Primer día
+     * @param hasta Último día (incluido)
+     * @return Mapa día -> total facturado (sin anuladas), en orden cronológico
+     */
+    public Map<LocalDate, Double> obtenerVentasDiarias(Long vendedorId, LocalDate desde, LocalDate hasta) {
+        return ventasDiariasRepository.totalesPorDia(VentasDiariasRepository.Dimension.VENDEDOR,
+                vendedorId != null ? String.valueOf(vendedorId) : null, desde, hasta);
+    }
+    
+    /**
+     * Recalcula los acumulados diarios de ventas de un rango de días
+     * @param desde Primer día
+     * @param hasta Último día (incluido)
+     * @return Número de filas de acumulados generadas
+     */
+    public int reconstruirVentasDiarias(LocalDate desde, LocalDate hasta) {
+        try {
+            return ventasDiariasRepository.reconstruir(desde, hasta);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            throw new RuntimeException("Error al reconstruir las ventas diarias: " + e.getMessage());
+        }
+    }
+    
     /**
      * Anula una factura (en casos de devolución)
      * @param facturaId ID de la factura a anular
@@ -434,11 +416,11 @@ public class FacturaService {
             return false;
         }
         
-        factura.setAnulada(true);
-        factura.setMotivoAnulacion(motivo);
-        factura.setFechaAnulacion(LocalDateTime.now());
+        if (factura.isAnulada()) {
+            return true;
+        }
         
-        return facturaRepository.update(factura);
+        return facturaRepository.anular(facturaId, motivo);
     }
 
     /**
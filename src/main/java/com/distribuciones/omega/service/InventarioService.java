@@ -1,37 +1,59 @@
 package com.distribuciones.omega.service;
 
+import com.distribuciones.omega.model.Cotizacion;
+import com.distribuciones.omega.model.ItemCotizacion;
 import com.distribuciones.omega.model.ProductoInventario;
+import com.distribuciones.omega.model.ResultadoStock;
+import com.distribuciones.omega.repository.CatalogoProductosCache;
 import com.distribuciones.omega.repository.InventarioRepository;
-import com.distribuciones.omega.service.AlertaStockService;
+import com.distribuciones.omega.utils.DBUtil;
+import com.distribuciones.omega.utils.LogUtil;
 
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Servicio para gestionar las operaciones relacionadas con el inventario
  */
 public class InventarioService {
     
+    private static final Logger LOGGER = Logger.getLogger(InventarioService.class.getName());
+    
+    // Reintentos ante bloqueo mutuo o espera de bloqueo agotada entre terminales
+    private static final int MAX_REINTENTOS = 3;
+    
     private final InventarioRepository inventarioRepository;
+    private final CatalogoProductosCache catalogo;
+    private final MonitorUmbralesStock umbrales;
     
     public InventarioService() {
         this.inventarioRepository = new InventarioRepository();
+        this.catalogo = CatalogoProductosCache.getInstance();
+        this.umbrales = MonitorUmbralesStock.getInstance();
     }
     
     /**
-     * Obtiene todos los productos disponibles en inventario
+     * Obtiene todos los productos disponibles en inventario (desde el catálogo en memoria)
      * @return Lista de productos en inventario
      */
     public List<ProductoInventario> obtenerProductosDisponibles() {
-        return inventarioRepository.findAll();
+        return catalogo.obtenerTodos();
     }
     
     /**
-     * Busca un producto específico por su código
+     * Busca un producto específico por su código (desde el catálogo en memoria)
      * @param codigo Código único del producto
      * @return Producto encontrado o null si no existe
      */
     public ProductoInventario obtenerProductoPorCodigo(String codigo) {
-        return inventarioRepository.findByCodigo(codigo);
+        return catalogo.obtenerPorCodigo(codigo);
     }
 
     /**
@@ -43,49 +65,26 @@ public class InventarioService {
     public boolean actualizarStockProducto(ProductoInventario producto, int cantidadVendida) {
         try {
             if (producto == null) {
-                System.err.println("ERROR: Producto nulo al intentar actualizar stock");
-                return false;
-            }
-            
-            // Verificar disponibilidad primero
-            System.out.println("Verificando disponibilidad para producto: " + producto.getDescripcion() + 
-                              " (Cantidad disponible: " + producto.getStock() + ", Solicitado: " + cantidadVendida + ")");
-            
-            if (!verificarDisponibilidad(producto, cantidadVendida)) {
-                System.err.println("ERROR: Stock insuficiente para el producto: " + producto.getDescripcion());
+                LOGGER.warning("Producto nulo al intentar actualizar stock");
                 return false;
             }
             
-            // Calcular nuevo stock
-            int nuevoStock = producto.getStock() - cantidadVendida;
-            System.out.println("Actualizando cantidad para producto: " + producto.getDescripcion() + 
-                              " (ID: " + producto.getIdProducto() + ", Código: " + producto.getCodigo() + "), Nueva cantidad: " + nuevoStock);
-            
-            // Actualizar el objeto producto
-            producto.setStock(nuevoStock);
-            
-            // Imprimir la estructura de la tabla para diagnosticar el problema
-            System.out.println("======= DIAGNÓSTICO DE ESTRUCTURA DE BASE DE DATOS =======");
-            inventarioRepository.imprimirEstructuraTablaProductos();
-            System.out.println("==========================================================");
+            LogUtil.evento(LOGGER, Level.FINE, "Descontando stock",
+                    "sku", producto.getCodigo(), "cantidad", cantidadVendida);
             
-            // Intentar actualizar usando el código
-            System.out.println("Actualizando producto por código: " + producto.getCodigo());
-            boolean resultado = inventarioRepository.update(producto);
+            // Descuento condicional: no se lee y reescribe el stock, así dos terminales no se pisan
+            ResultadoStock resultadoStock = descontarStock(producto, cantidadVendida);
+            boolean resultado = resultadoStock.isExitoso();
             
             if (!resultado) {
-                System.err.println("Error al actualizar stock para: " + producto.getDescripcion());
-            } else {
-                // Verificar si el stock actualizado está por debajo del mínimo
-                AlertaStockService alertaService = new AlertaStockService();
-                alertaService.verificarProducto(producto);
+                LOGGER.warning(() -> "No se pudo descontar stock de " + producto.getCodigo() + ":\n"
+                        + resultadoStock.getMensajeFallos());
             }
             
             return resultado;
             
         } catch (Exception e) {
-            System.err.println("Error en actualizarStockProducto: " + e.getMessage());
-            e.printStackTrace();
+            LOGGER.log(Level.SEVERE, "Error al descontar stock de " + producto.getCodigo(), e);
             return false;
         }
     }
@@ -111,37 +110,207 @@ public class InventarioService {
             }
             
             if (producto == null) {
-                System.err.println("Producto no encontrado: " + productoId);
+                LOGGER.warning(() -> "Producto no encontrado: " + productoId);
                 return false;
             }
             
-            // 2. Verificar stock suficiente
-            if (producto.getStock() < cantidad) {
-                System.err.println("Stock insuficiente para el producto: " + productoId);
-                return false;
-            }
+            // 2. Descontar de forma atómica (falla si no hay stock suficiente)
+            ResultadoStock resultadoStock = descontarStock(producto, cantidad);
+            boolean resultado = resultadoStock.isExitoso();
             
-            // 3. Actualizar stock
-            int nuevoStock = producto.getStock() - cantidad;
-            producto.setStock(nuevoStock);
-            
-            // 4. Guardar cambios
-            boolean resultado = inventarioRepository.update(producto);
-            
-            // 5. Verificar si el stock actualizado está por debajo del mínimo
-            if (resultado) {
-                AlertaStockService alertaService = new AlertaStockService();
-                alertaService.verificarProducto(producto);
+            if (!resultado) {
+                LOGGER.warning(() -> "No se pudo descontar stock para el producto " + productoId + ":\n"
+                        + resultadoStock.getMensajeFallos());
             }
             
             return resultado;
             
         } catch (Exception e) {
-            System.err.println("Error al actualizar stock: " + e.getMessage());
-            e.printStackTrace();
+            LOGGER.log(Level.SEVERE, "Error al actualizar stock de " + productoId, e);
+            return false;
+        }
+    }
+
+    /**
+     * Descuenta en una sola transacción el stock de todas las líneas de una cotización.
+     * Si alguna línea no tiene stock suficiente no se descuenta ninguna y el resultado
+     * informa cada línea fallida con lo solicitado y lo disponible.
+     * @param cotizacion Cotización con los ítems a vender
+     * @return Resultado con el stock resultante o las líneas fallidas
+     */
+    public ResultadoStock descontarStockCotizacion(Cotizacion cotizacion) {
+        Map<String, ProductoInventario> productos = new HashMap<>();
+        Map<String, Integer> cantidades = new HashMap<>();
+        
+        for (ItemCotizacion item : cotizacion.getItems()) {
+            ProductoInventario producto = item.getProducto();
+            productos.putIfAbsent(producto.getCodigo(), producto);
+            // Varias líneas del mismo producto se descuentan juntas
+            cantidades.merge(producto.getCodigo(), item.getCantidad(), Integer::sum);
+        }
+        
+        return descontarStock(productos, cantidades);
+    }
+    
+    /**
+     * Descuenta stock de un único producto de forma atómica
+     * @param producto Producto a descontar
+     * @param cantidad Unidades vendidas
+     * @return Resultado del descuento
+     */
+    public ResultadoStock descontarStock(ProductoInventario producto, int cantidad) {
+        Map<String, ProductoInventario> productos = new HashMap<>();
+        productos.put(producto.getCodigo(), producto);
+        Map<String, Integer> cantidades = new HashMap<>();
+        cantidades.put(producto.getCodigo(), cantidad);
+        return descontarStock(productos, cantidades);
+    }
+    
+    /**
+     * Descuenta varias líneas en una transacción con UPDATE condicionales por fila.
+     * Las filas se bloquean siempre en el mismo orden (por código) para evitar bloqueos
+     * mutuos entre terminales; si aun así ocurren, la transacción se reintenta.
+     * @param productos Productos por código (para descripción y para actualizar el stock en memoria)
+     * @param cantidades Unidades a descontar por código
+     * @return Resultado con el stock resultante o las líneas fallidas
+     */
+    public ResultadoStock descontarStock(Map<String, ProductoInventario> productos, Map<String, Integer> cantidades) {
+        Map<String, Integer> ordenadas = new TreeMap<>(cantidades);
+        
+        for (int intento = 1; ; intento++) {
+            try {
+                ResultadoStock resultado = descontarEnTransaccion(productos, ordenadas);
+                
+                if (resultado.isExitoso()) {
+                    for (Map.Entry<String, Integer> stock : resultado.getStockResultante().entrySet()) {
+                        catalogo.actualizarStock(stock.getKey(), stock.getValue());
+                        ProductoInventario producto = productos.get(stock.getKey());
+                        if (producto != null) {
+                            producto.setCantidad(stock.getValue());
+                            notificarStockBajo(producto);
+                        }
+                    }
+                }
+                return resultado;
+                
+            } catch (SQLException e) {
+                if (esConflictoDeBloqueo(e) && intento < MAX_REINTENTOS) {
+                    LOGGER.warning("Conflicto de bloqueo al descontar stock, reintentando (" + intento + ")");
+                    continue;
+                }
+                LOGGER.log(Level.SEVERE, "Error al descontar stock", e);
+                ResultadoStock resultado = new ResultadoStock();
+                resultado.setError(e.getMessage());
+                return resultado;
+            }
+        }
+    }
+    
+    /**
+     * Lee de la base de datos el stock actual de varios productos y actualiza el catálogo
+     * @param codigos Códigos de los productos
+     * @return Stock por código (los que no existen no aparecen; vacío si la consulta falla)
+     */
+    public Map<String, Integer> leerStock(Collection<String> codigos) {
+        Map<String, Integer> stock = new HashMap<>();
+        try (Connection conn = DBUtil.getConnection()) {
+            for (String codigo : codigos) {
+                Integer cantidad = inventarioRepository.obtenerCantidad(conn, codigo);
+                if (cantidad != null) {
+                    stock.put(codigo, cantidad);
+                }
+            }
+        } catch (SQLException e) {
+            LOGGER.log(Level.WARNING, "No se pudo leer el stock de " + codigos, e);
+            return new HashMap<>();
+        }
+        stock.forEach(catalogo::actualizarStock);
+        return stock;
+    }
+    
+    /**
+     * Devuelve al stock las unidades indicadas (compensación si la venta no se completa)
+     * @param cantidades Unidades a reponer por código de producto
+     * @return true si todas las líneas se repusieron
+     */
+    public boolean reponerStock(Map<String, Integer> cantidades) {
+        try (Connection conn = DBUtil.getConnection()) {
+            DBUtil.beginTransaction(conn);
+            try {
+                boolean todas = true;
+                for (Map.Entry<String, Integer> linea : new TreeMap<>(cantidades).entrySet()) {
+                    todas &= inventarioRepository.reponerStock(conn, linea.getKey(), linea.getValue());
+                }
+                DBUtil.commitTransaction(conn);
+                for (String codigo : cantidades.keySet()) {
+                    catalogo.invalidar(codigo);
+                    notificarStockBajo(catalogo.obtenerPorCodigo(codigo));
+                }
+                return todas;
+            } catch (SQLException e) {
+                DBUtil.rollbackTransaction(conn);
+                throw e;
+            }
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "Error al reponer stock", e);
             return false;
         }
     }
+    
+    private ResultadoStock descontarEnTransaccion(Map<String, ProductoInventario> productos,
+                                                  Map<String, Integer> cantidades) throws SQLException {
+        ResultadoStock resultado = new ResultadoStock();
+        
+        try (Connection conn = DBUtil.getConnection()) {
+            DBUtil.beginTransaction(conn);
+            try {
+                for (Map.Entry<String, Integer> linea : cantidades.entrySet()) {
+                    String codigo = linea.getKey();
+                    int cantidad = linea.getValue();
+                    
+                    if (cantidad > 0 && inventarioRepository.descontarStock(conn, codigo, cantidad)) {
+                        resultado.registrarDescuento(codigo, inventarioRepository.obtenerCantidad(conn, codigo));
+                    } else {
+                        // Se siguen evaluando las demás líneas para informar todas las que fallan
+                        Integer disponible = inventarioRepository.obtenerCantidad(conn, codigo);
+                        ProductoInventario producto = productos.get(codigo);
+                        String descripcion = producto != null && producto.getDescripcion() != null
+                                ? producto.getDescripcion() : codigo;
+                        resultado.registrarFallo(new ResultadoStock.LineaFallida(
+                                codigo, descripcion, cantidad, disponible != null ? disponible : 0));
+                    }
+                }
+                
+                if (resultado.isExitoso()) {
+                    DBUtil.commitTransaction(conn);
+                } else {
+                    DBUtil.rollbackTransaction(conn);
+                    resultado.descartarDescuentos();
+                }
+            } catch (SQLException e) {
+                DBUtil.rollbackTransaction(conn);
+                throw e;
+            }
+        }
+        
+        return resultado;
+    }
+    
+    /**
+     * Bloqueo mutuo (MySQL 1213) o tiempo de espera de bloqueo agotado (1205)
+     */
+    private boolean esConflictoDeBloqueo(SQLException e) {
+        return "40001".equals(e.getSQLState()) || e.getErrorCode() == 1213 || e.getErrorCode() == 1205;
+    }
+    
+    private void notificarStockBajo(ProductoInventario producto) {
+        try {
+            umbrales.registrarCambioStock(producto);
+        } catch (Exception e) {
+            // La venta ya quedó registrada; un fallo en la alerta no debe revertirla
+            LOGGER.log(Level.WARNING, "No se pudo verificar la alerta de stock de " + producto.getCodigo(), e);
+        }
+    }
 
     /**
      * Verifica la disponibilidad de cantidad (stock) de un producto
@@ -151,14 +320,12 @@ public class InventarioService {
      */
     public boolean verificarDisponibilidad(ProductoInventario producto, int cantidad) {
         if (producto == null) {
-            System.err.println("Verificación de disponibilidad: producto es null");
+            LOGGER.warning("Verificación de disponibilidad: producto es null");
             return false;
         }
         
-        System.out.println("Verificando disponibilidad para producto: " + 
-                        producto.getDescripcion() + 
-                        " (Cantidad disponible: " + producto.getCantidad() + 
-                        ", Solicitado: " + cantidad + ")");
+        LogUtil.evento(LOGGER, Level.FINE, "Verificando disponibilidad",
+                "sku", producto.getCodigo(), "disponible", producto.getCantidad(), "cantidad", cantidad);
         
         return producto.getCantidad() >= cantidad;  // Usamos getCantidad()
     }
@@ -177,17 +344,15 @@ public class InventarioService {
             try {
                 idProductoLong = Long.parseLong(productoId);
             } catch (NumberFormatException e) {
-                System.out.println("ID de producto no es un número válido: " + productoId);
-                
                 // Si no es un Long válido, intentar buscar por código
                 ProductoInventario producto = inventarioRepository.findByCodigo(productoId);
                 if (producto == null) {
-                    System.out.println("Producto con código " + productoId + " no encontrado");
+                    LOGGER.fine(() -> "Producto con código " + productoId + " no encontrado");
                     return false;
                 }
                 
-                System.out.println("Verificando disponibilidad para producto con código " + productoId + 
-                    ": Disponible=" + producto.getStock() + ", Solicitado=" + cantidad);
+                LogUtil.evento(LOGGER, Level.FINE, "Verificando disponibilidad",
+                        "sku", productoId, "disponible", producto.getStock(), "cantidad", cantidad);
                 
                 return producto.getStock() >= cantidad;
             }
@@ -196,16 +361,16 @@ public class InventarioService {
             ProductoInventario producto = inventarioRepository.findById(idProductoLong);
             
             if (producto == null) {
-                System.out.println("Producto con ID " + idProductoLong + " no encontrado");
+                LOGGER.fine(() -> "Producto con ID " + idProductoLong + " no encontrado");
                 return false;
             }
             
-            System.out.println("Verificando disponibilidad para producto con ID " + idProductoLong + 
-                ": Disponible=" + producto.getStock() + ", Solicitado=" + cantidad);
+            LogUtil.evento(LOGGER, Level.FINE, "Verificando disponibilidad",
+                    "sku", producto.getCodigo(), "disponible", producto.getStock(), "cantidad", cantidad);
             
             return producto.getStock() >= cantidad;
         } catch (Exception e) {
-            e.printStackTrace();
+            LOGGER.log(Level.WARNING, "Error al verificar disponibilidad de " + productoId, e);
             return false;
         }
     }
@@ -229,8 +394,7 @@ public class InventarioService {
         
         // Verificar si el stock actualizado está por debajo del mínimo
         if (resultado) {
-            AlertaStockService alertaService = new AlertaStockService();
-            alertaService.verificarProducto(producto);
+            notificarStockBajo(producto);
         }
         
         return resultado;
@@ -0,0 +1,240 @@
+package com.distribuciones.omega.service;
+
+import com.distribuciones.omega.model.ProductoInventario;
+import com.distribuciones.omega.repository.CatalogoProductosCache;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Detecta los productos que quedan por debajo de su cantidad mínima.
+ *
+ * Cada cambio de stock (venta, reposición o edición) se informa con
+ * {@link #registrarCambioStock}, que compara el stock nuevo con el umbral del
+ * producto y actualiza el conjunto de productos bajo mínimo en tiempo constante.
+ * Solo se avisa cuando un producto cruza el umbral hacia abajo; si se repone por
+ * encima sale del conjunto y puede volver a avisar. {@link #reconciliar} recorre
+ * el catálogo completo para recoger los cambios hechos desde otras terminales y
+ * se ejecuta con baja frecuencia.
+ */
+public class MonitorUmbralesStock {
+
+    private static final Logger LOGGER = Logger.getLogger(MonitorUmbralesStock.class.getName());
+
+    private static MonitorUmbralesStock instance;
+
+    private final Supplier<List<ProductoInventario>> fuente;
+    // Productos bajo mínimo por código (copias con el stock al momento del cruce)
+    private final Map<String, ProductoInventario> bajoMinimo = new ConcurrentHashMap<>();
+    private final List<Consumer<List<ProductoInventario>>> oyentes = new CopyOnWriteArrayList<>();
+    private final ExecutorService notificador;
+    private volatile int umbralGeneral = 1;
+
+    // Métricas
+    private final LongAdder eventos = new LongAdder();
+    private final LongAdder cruces = new LongAdder();
+    private final LongAdder reconciliaciones = new LongAdder();
+    private final LongAdder detectadosEnReconciliacion = new LongAdder();
+
+    MonitorUmbralesStock(Supplier<List<ProductoInventario>> fuente) {
+        this.fuente = fuente;
+        // Los avisos (ventana y correo) no deben demorar la venta que los provoca
+        this.notificador = Executors.newSingleThreadExecutor(r -> {
+            Thread hilo = new Thread(r, "alertas-stock");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+    }
+
+    public static synchronized MonitorUmbralesStock getInstance() {
+        if (instance == null) {
+            instance = new MonitorUmbralesStock(() -> CatalogoProductosCache.getInstance().obtenerTodos());
+        }
+        return instance;
+    }
+
+    /**
+     * Registra a quien recibe los productos que acaban de quedar bajo mínimo.
+     * Se invoca en un hilo propio del monitor, nunca en el de la venta.
+     */
+    public void agregarOyente(Consumer<List<ProductoInventario>> oyente) {
+        oyentes.add(oyente);
+    }
+
+    public void quitarOyente(Consumer<List<ProductoInventario>> oyente) {
+        oyentes.remove(oyente);
+    }
+
+    /**
+     * Umbral de un producto: su cantidad mínima, sin bajar del mínimo general
+     * configurado en las alertas
+     */
+    public int umbral(ProductoInventario producto) {
+        return Math.max(umbralGeneral, producto.getCantidadMinima());
+    }
+
+    /**
+     * Informa el stock actual de un producto tras un cambio
+     * @param producto Producto con la cantidad ya actualizada
+     * @return true si el producto acaba de quedar bajo mínimo (se avisó)
+     */
+    public boolean registrarCambioStock(ProductoInventario producto) {
+        if (producto == null || producto.getCodigo() == null) {
+            return false;
+        }
+        eventos.increment();
+
+        if (producto.getStock() < umbral(producto)) {
+            ProductoInventario copia = new ProductoInventario(producto);
+            if (bajoMinimo.put(producto.getCodigo(), copia) == null) {
+                cruces.increment();
+                notificar(List.of(copia));
+                return true;
+            }
+        } else {
+            bajoMinimo.remove(producto.getCodigo());
+        }
+        return false;
+    }
+
+    /**
+     * Recorre el catálogo completo y corrige el conjunto de productos bajo mínimo.
+     * Avisa de los que quedaron bajo mínimo sin pasar por {@link #registrarCambioStock}
+     * (ventas de otras terminales, cambios hechos directamente en la base de datos).
+     * @return Cantidad de productos que se detectaron en esta reconciliación
+     */
+    public int reconciliar() {
+        long inicio = System.currentTimeMillis();
+        List<ProductoInventario> nuevos = new ArrayList<>();
+        Set<String> existentes = new HashSet<>();
+
+        for (ProductoInventario producto : fuente.get()) {
+            if (producto.getCodigo() == null) {
+                continue;
+            }
+            existentes.add(producto.getCodigo());
+            if (producto.getStock() < umbral(producto)) {
+                ProductoInventario copia = new ProductoInventario(producto);
+                if (bajoMinimo.put(producto.getCodigo(), copia) == null) {
+                    nuevos.add(copia);
+                }
+            } else {
+                bajoMinimo.remove(producto.getCodigo());
+            }
+        }
+        // Productos eliminados del catálogo
+        bajoMinimo.keySet().retainAll(existentes);
+
+        reconciliaciones.increment();
+        detectadosEnReconciliacion.add(nuevos.size());
+        if (!nuevos.isEmpty()) {
+            notificar(nuevos);
+        }
+        LOGGER.fine("Reconciliación de stock: " + existentes.size() + " productos, " + nuevos.size() +
+                    " nuevos bajo mínimo en " + (System.currentTimeMillis() - inicio) + " ms");
+        return nuevos.size();
+    }
+
+    /**
+     * Indica si el producto está actualmente bajo su mínimo
+     */
+    public boolean estaBajoMinimo(String codigo) {
+        return codigo != null && bajoMinimo.containsKey(codigo);
+    }
+
+    /**
+     * Productos bajo mínimo, primero los de mayor faltante
+     */
+    public List<ProductoInventario> obtenerBajoMinimo() {
+        List<ProductoInventario> productos = new ArrayList<>();
+        for (ProductoInventario producto : bajoMinimo.values()) {
+            productos.add(new ProductoInventario(producto));
+        }
+        productos.sort(Comparator.comparingInt((ProductoInventario p) -> p.getStock() - umbral(p))
+                                 .thenComparing(ProductoInventario::getCodigo));
+        return productos;
+    }
+
+    /**
+     * Olvida los productos bajo mínimo; la próxima reconciliación vuelve a avisar de todos
+     */
+    public void reiniciar() {
+        bajoMinimo.clear();
+    }
+
+    public int getUmbralGeneral() {
+        return umbralGeneral;
+    }
+
+    public void setUmbralGeneral(int umbralGeneral) {
+        this.umbralGeneral = umbralGeneral;
+    }
+
+    private void notificar(List<ProductoInventario> productos) {
+        if (oyentes.isEmpty()) {
+            return;
+        }
+        notificador.execute(() -> {
+            for (Consumer<List<ProductoInventario>> oyente : oyentes) {
+                try {
+                    oyente.accept(productos);
+                } catch (RuntimeException e) {
+                    LOGGER.warning("Error al avisar stock bajo: " + e.getMessage());
+                }
+            }
+        });
+    }
+
+    /**
+     * Devuelve las métricas del monitor
+     */
+    public EstadisticasUmbrales getEstadisticas() {
+        return new EstadisticasUmbrales(bajoMinimo.size(), eventos.sum(), cruces.sum(),
+                reconciliaciones.sum(), detectadosEnReconciliacion.sum());
+    }
+
+    /**
+     * Instantánea de las métricas del monitor de umbrales
+     */
+    public static class EstadisticasUmbrales {
+        private final int bajoMinimo;
+        private final long eventos;
+        private final long cruces;
+        private final long reconciliaciones;
+        private final long detectadosEnReconciliacion;
+
+        public EstadisticasUmbrales(int bajoMinimo, long eventos, long cruces, long reconciliaciones,
+                                    long detectadosEnReconciliacion) {
+            this.bajoMinimo = bajoMinimo;
+            this.eventos = eventos;
+            this.cruces = cruces;
+            this.reconciliaciones = reconciliaciones;
+            this.detectadosEnReconciliacion = detectadosEnReconciliacion;
+        }
+
+        public int getBajoMinimo() { return bajoMinimo; }
+        public long getEventos() { return eventos; }
+        public long getCruces() { return cruces; }
+        public long getReconciliaciones() { return reconciliaciones; }
+        public long getDetectadosEnReconciliacion() { return detectadosEnReconciliacion; }
+
+        @Override
+        public String toString() {
+            return String.format("UmbralesStock{bajoMinimo=%d, eventos=%d, cruces=%d, reconciliaciones=%d, " +
+                                 "detectadosEnReconciliacion=%d}",
+                                 bajoMinimo, eventos, cruces, reconciliaciones, detectadosEnReconciliacion);
+        }
+    }
+}
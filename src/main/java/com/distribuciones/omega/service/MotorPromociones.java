@@ -0,0 +1,349 @@
+package com.distribuciones.omega.service;
+
+import com.distribuciones.omega.model.Promocion;
+import com.distribuciones.omega.repository.PromocionRepository;
+import io.github.cdimascio.dotenv.Dotenv;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Promociones activas compiladas en un índice en memoria.
+ *
+ * Cada promoción se convierte en una regla con su ventana de vigencia y el conjunto
+ * de claves a las que aplica (códigos de producto o categorías, separados por comas
+ * en codigo_producto; "TODAS" aplica a cualquier producto). Resolver la promoción de
+ * una línea no consulta la base de datos: se buscan las reglas del código y de la
+ * categoría por igualdad exacta y se elige la de mayor descuento.
+ *
+ * El índice es inmutable; una recarga arma uno nuevo con una sola consulta y lo
+ * reemplaza de una vez, así quien está resolviendo nunca ve un índice a medias.
+ * PromocionService recarga después de cada cambio y, para recoger los cambios de
+ * otras terminales, el índice se recarga solo al cumplir PROMOCIONES_RECARGA_SEG
+ * (.env, 300 s por defecto). Esa recarga corre en un hilo aparte: quien está
+ * cotizando sigue usando el índice anterior mientras tanto. Si la consulta falla
+ * se conserva el índice anterior y se reintenta pasados REINTENTO_MS.
+ */
+public class MotorPromociones {
+
+    private static final Logger LOGGER = Logger.getLogger(MotorPromociones.class.getName());
+
+    static final String TODAS = "TODAS";
+
+    // Precedencia cuando dos reglas dan el mismo descuento
+    private static final int NIVEL_PRODUCTO = 0;
+    private static final int NIVEL_CATEGORIA = 1;
+    private static final int NIVEL_GENERAL = 2;
+
+    /** Espera antes de volver a consultar después de una recarga fallida */
+    static final long REINTENTO_MS = 30_000;
+
+    private static MotorPromociones instance;
+
+    private final PromocionRepository repository;
+    private final long vigenciaIndiceMs;
+    private volatile Indice indice;
+    private volatile long ultimoFallo;
+    private final AtomicBoolean recargaPendiente = new AtomicBoolean();
+    private final ExecutorService recargador;
+
+    MotorPromociones(PromocionRepository repository, long vigenciaIndiceMs) {
+        this.repository = repository;
+        this.vigenciaIndiceMs = vigenciaIndiceMs;
+        this.recargador = Executors.newSingleThreadExecutor(r -> {
+            Thread hilo = new Thread(r, "promociones-recarga");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+    }
+
+    /**
+     * Obtiene la instancia única del motor (Singleton)
+     * @return Motor compartido
+     */
+    public static synchronized MotorPromociones getInstance() {
+        if (instance == null) {
+            instance = new MotorPromociones(new PromocionRepository(), leerVigenciaIndice() * 1000L);
+        }
+        return instance;
+    }
+
+    private static int leerVigenciaIndice() {
+        int segundos = 300;
+        try {
+            String valor = Dotenv.configure().directory(".").ignoreIfMissing().load().get("PROMOCIONES_RECARGA_SEG");
+            if (valor != null && !valor.isBlank()) {
+                segundos = Math.max(1, Integer.parseInt(valor.trim()));
+            }
+        } catch (NumberFormatException e) {
+            LOGGER.warning("PROMOCIONES_RECARGA_SEG inválido, usando " + segundos);
+        }
+        return segundos;
+    }
+
+    /**
+     * Vuelve a compilar el índice con las promociones de la base de datos. Si la
+     * consulta falla se conserva el índice anterior.
+     * @return true si se recargó
+     */
+    public synchronized boolean recargar() {
+        try {
+            cargar(repository.findAll());
+            ultimoFallo = 0;
+            return true;
+        } catch (SQLException e) {
+            ultimoFallo = System.currentTimeMillis();
+            LOGGER.log(Level.WARNING, "No se pudieron recargar las promociones, se conserva el índice anterior", e);
+            return false;
+        }
+    }
+
+    /**
+     * Compila las promociones dadas y reemplaza el índice
+     */
+    void cargar(List<Promocion> promociones) {
+        LocalDate hoy = LocalDate.now();
+        Map<String, List<Regla>> porClave = new HashMap<>();
+        List<Regla> generales = new ArrayList<>();
+        int reglas = 0;
+        for (Promocion promocion : promociones) {
+            // Las inactivas y las vencidas no pueden aplicar; las futuras sí se indexan
+            if (!promocion.isActiva() || (promocion.getFechaFin() != null && promocion.getFechaFin().isBefore(hoy))) {
+                continue;
+            }
+            Regla regla = new Regla(promocion);
+            for (String clave : claves(promocion.getCategoriasAplicables())) {
+                if (TODAS.equals(clave)) {
+                    generales.add(regla);
+                } else {
+                    porClave.computeIfAbsent(clave, k -> new ArrayList<>()).add(regla);
+                }
+            }
+            reglas++;
+        }
+        indice = new Indice(porClave, generales, System.currentTimeMillis());
+        int compiladas = reglas;
+        LOGGER.fine(() -> "Índice de promociones: " + compiladas + " reglas de " + promociones.size() + " promociones");
+    }
+
+    /**
+     * Separa la lista de códigos y categorías de una promoción. Sin lista aplica a todas.
+     */
+    static Set<String> claves(String categoriasAplicables) {
+        Set<String> claves = new LinkedHashSet<>();
+        if (categoriasAplicables != null) {
+            for (String clave : categoriasAplicables.split(",")) {
+                String normalizada = normalizar(clave);
+                if (normalizada != null) {
+                    claves.add(normalizada);
+                }
+            }
+        }
+        if (claves.isEmpty()) {
+            claves.add(TODAS);
+        }
+        return claves;
+    }
+
+    private static String normalizar(String clave) {
+        if (clave == null || clave.isBlank()) {
+            return null;
+        }
+        return clave.trim().toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * Promociones vigentes que aplican a un producto, en orden de precedencia:
+     * primero las del código, luego las de la categoría y al final las generales
+     * @param codigoProducto Código del producto
+     * @param categoria Categoría del producto (puede ser null)
+     * @param fecha Fecha en la que se vende
+     * @return Promociones aplicables, sin repetidas
+     */
+    public List<Promocion> candidatas(String codigoProducto, String categoria, LocalDate fecha) {
+        List<Promocion> promociones = new ArrayList<>();
+        for (Candidata candidata : buscar(codigoProducto, categoria, fecha)) {
+            promociones.add(candidata.regla.promocion);
+        }
+        return promociones;
+    }
+
+    /**
+     * Elige la promoción que da el mayor descuento a una línea. Con descuentos iguales
+     * gana la del producto sobre la de la categoría y esta sobre las generales.
+     * @param codigoProducto Código del producto
+     * @param categoria Categoría del producto (puede ser null)
+     * @param cantidad Unidades de la línea
+     * @param precioUnitario Precio unitario de la línea
+     * @param fecha Fecha en la que se vende
+     * @return Promoción y descuento, o null si ninguna da descuento
+     */
+    public Resultado resolver(String codigoProducto, String categoria, int cantidad,
+                              double precioUnitario, LocalDate fecha) {
+        Regla mejor = null;
+        double mayorDescuento = 0;
+        // Las candidatas ya vienen por precedencia: solo un descuento estrictamente mayor desplaza
+        for (Candidata candidata : buscar(codigoProducto, categoria, fecha)) {
+            double descuento = candidata.regla.descuento(cantidad, precioUnitario);
+            if (descuento > mayorDescuento) {
+                mejor = candidata.regla;
+                mayorDescuento = descuento;
+            }
+        }
+        return mejor == null ? null : new Resultado(mejor.promocion, mayorDescuento);
+    }
+
+    private List<Candidata> buscar(String codigoProducto, String categoria, LocalDate fecha) {
+        Indice actual = indiceVigente();
+        List<Candidata> candidatas = new ArrayList<>();
+        Set<Regla> vistas = Collections.newSetFromMap(new IdentityHashMap<>());
+        agregar(candidatas, vistas, actual.porClave.get(normalizar(codigoProducto)), NIVEL_PRODUCTO, fecha);
+        agregar(candidatas, vistas, actual.porClave.get(normalizar(categoria)), NIVEL_CATEGORIA, fecha);
+        agregar(candidatas, vistas, actual.generales, NIVEL_GENERAL, fecha);
+        candidatas.sort(Comparator.comparingInt((Candidata c) -> c.nivel)
+                                  .thenComparingInt(c -> c.regla.promocion.getId()));
+        return candidatas;
+    }
+
+    private static void agregar(List<Candidata> candidatas, Set<Regla> vistas, List<Regla> reglas,
+                                int nivel, LocalDate fecha) {
+        if (reglas == null) {
+            return;
+        }
+        for (Regla regla : reglas) {
+            if (regla.vigente(fecha) && vistas.add(regla)) {
+                candidatas.add(new Candidata(regla, nivel));
+            }
+        }
+    }
+
+    /**
+     * Índice para resolver. Solo la primera carga espera a la base de datos; un
+     * índice vencido se sigue usando mientras se recarga en segundo plano.
+     */
+    private Indice indiceVigente() {
+        Indice actual = indice;
+        if (actual == null) {
+            synchronized (this) {
+                if (indice == null && puedeReintentar()) {
+                    recargar();
+                }
+                actual = indice;
+            }
+            return actual != null ? actual : Indice.VACIO;
+        }
+        if (System.currentTimeMillis() - actual.compiladoEn >= vigenciaIndiceMs && puedeReintentar()
+                && recargaPendiente.compareAndSet(false, true)) {
+            recargador.execute(() -> {
+                try {
+                    recargar();
+                } finally {
+                    recargaPendiente.set(false);
+                }
+            });
+        }
+        return actual;
+    }
+
+    private boolean puedeReintentar() {
+        return System.currentTimeMillis() - ultimoFallo >= REINTENTO_MS;
+    }
+
+    /**
+     * Descuento que da una promoción a una línea, sin superar el total de la línea:
+     * porcentaje sobre el total, una unidad gratis por cada dos en el 2x1, o el valor fijo
+     */
+    public static double descuento(Promocion promocion, int cantidad, double precioUnitario) {
+        double totalLinea = cantidad * precioUnitario;
+        double descuento;
+        if (promocion.isDosPorUno()) {
+            descuento = (cantidad / 2) * precioUnitario;
+        } else if (promocion.isPorcentaje()) {
+            descuento = totalLinea * promocion.getValor() / 100.0;
+        } else {
+            descuento = promocion.getValor();
+        }
+        return Math.max(0, Math.min(descuento, totalLinea));
+    }
+
+    /**
+     * Promoción elegida para una línea y el descuento que le da
+     */
+    public static final class Resultado {
+        private final Promocion promocion;
+        private final double descuento;
+
+        Resultado(Promocion promocion, double descuento) {
+            this.promocion = promocion;
+            this.descuento = descuento;
+        }
+
+        public Promocion getPromocion() {
+            return promocion;
+        }
+
+        public double getDescuento() {
+            return descuento;
+        }
+    }
+
+    private static final class Regla {
+        private final Promocion promocion;
+        private final LocalDate desde;
+        private final LocalDate hasta;
+
+        Regla(Promocion promocion) {
+            this.promocion = promocion;
+            this.desde = promocion.getFechaInicio();
+            this.hasta = promocion.getFechaFin();
+        }
+
+        boolean vigente(LocalDate fecha) {
+            return (desde == null || !fecha.isBefore(desde)) && (hasta == null || !fecha.isAfter(hasta));
+        }
+
+        double descuento(int cantidad, double precioUnitario) {
+            return MotorPromociones.descuento(promocion, cantidad, precioUnitario);
+        }
+    }
+
+    private static final class Candidata {
+        private final Regla regla;
+        private final int nivel;
+
+        Candidata(Regla regla, int nivel) {
+            this.regla = regla;
+            this.nivel = nivel;
+        }
+    }
+
+    private static final class Indice {
+        private static final Indice VACIO = new Indice(Collections.emptyMap(), Collections.emptyList(), 0);
+
+        // Códigos de producto y categorías comparten el índice: ambos se buscan por igualdad
+        private final Map<String, List<Regla>> porClave;
+        private final List<Regla> generales;
+        private final long compiladoEn;
+
+        Indice(Map<String, List<Regla>> porClave, List<Regla> generales, long compiladoEn) {
+            this.porClave = porClave;
+            this.generales = generales;
+            this.compiladoEn = compiladoEn;
+        }
+    }
+}
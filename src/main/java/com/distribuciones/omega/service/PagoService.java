@@ -5,7 +5,9 @@ import com.distribuciones.omega.model.MetodoPago;
 import com.distribuciones.omega.model.Pago;
 import com.distribuciones.omega.repository.FacturaRepository;
 import com.distribuciones.omega.repository.PagoRepository;
+import com.distribuciones.omega.repository.VentasDiariasRepository;
 import com.distribuciones.omega.utils.DBUtil;
+import com.distribuciones.omega.utils.Dinero;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -25,17 +27,14 @@ public class PagoService {
     private final PagoRepository pagoRepository;
     private final FacturaRepository facturaRepository;
     private final ContabilidadService contabilidadService;
+    private final VentasDiariasRepository ventasDiariasRepository;
     
     public PagoService() {
         facturaRepository = new FacturaRepository();
         pagoRepository = new PagoRepository();
-        
-        // Primero crear tabla facturas
-        facturaRepository.createTableIfNotExists();
-        // Luego crear tabla pagos
-        pagoRepository.createTableIfNotExists();
-        
+        // Las tablas las crean las migraciones al iniciar (MigradorEsquema)
         this.contabilidadService = new ContabilidadService();
+        this.ventasDiariasRepository = new VentasDiariasRepository();
     }
     
     /**
@@ -48,14 +47,16 @@ public class PagoService {
     public Map<String, Object> procesarPagoEfectivo(Factura factura, double monto, String observaciones) {
         Map<String, Object> resultado = new HashMap<>();
         
-        if (monto < factura.getTotal()) {
+        long entregado = Dinero.deDouble(monto);
+        long total = Dinero.deDouble(factura.getTotal());
+        if (entregado < total) {
             resultado.put("exito", false);
             resultado.put("mensaje", "El monto entregado es insuficiente para cubrir el total de la factura");
             return resultado;
         }
         
         // Calcular cambio
-        double cambio = monto - factura.getTotal();
+        double cambio = Dinero.aDouble(entregado - total);
         
         Pago pago = new Pago();
         pago.setFactura(factura);
@@ -72,6 +73,7 @@ public class PagoService {
         
         // Registrar en contabilidad
         contabilidadService.registrarIngreso(factura.getTotal(), "Pago de factura: " + factura.getNumeroFactura(), "EFECTIVO");
+        acumularPago(pago);
         
         resultado.put("exito", true);
         resultado.put("pago", pagoProcesado);
@@ -128,6 +130,7 @@ public class PagoService {
                     factura.getTotal(), 
                     "Pago de factura: " + factura.getNumeroFactura(), 
                     tipoTarjeta.name());
+            acumularPago(pago);
             
             resultado.put("exito", true);
             resultado.put("pago", pagoProcesado);
@@ -189,6 +192,7 @@ public class PagoService {
                     factura.getTotal(), 
                     "Pago de factura: " + factura.getNumeroFactura(), 
                     "TRANSFERENCIA");
+            acumularPago(pago);
             
             resultado.put("exito", true);
             resultado.put("pendienteVerificacion", false);
@@ -227,6 +231,7 @@ public class PagoService {
                     pago.getMonto(), 
                     "Pago verificado de factura: " + pago.getFactura().getNumeroFactura(), 
                     pago.getMetodoPago().name());
+            acumularPago(pago);
         }
         
         return actualizado;
@@ -277,6 +282,14 @@ public class PagoService {
         return pagos.stream().anyMatch(Pago::isAprobado);
     }
     
+    /**
+     * Suma un pago aprobado a las ventas diarias por método de pago, en el día en que se registró
+     */
+    private void acumularPago(Pago pago) {
+        LocalDateTime fecha = pago.getFechaPago() != null ? pago.getFechaPago() : LocalDateTime.now();
+        ventasDiariasRepository.registrarPago(pago.getMetodoPago().name(), pago.getMonto(), fecha);
+    }
+    
     /**
      * Simula la validación de un pago con tarjeta con un procesador externo
      */
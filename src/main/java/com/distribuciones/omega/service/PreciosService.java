@@ -0,0 +1,175 @@
+package com.distribuciones.omega.service;
+
+import com.distribuciones.omega.model.Cliente;
+import com.distribuciones.omega.model.Cotizacion;
+import com.distribuciones.omega.model.ItemCotizacion;
+import com.distribuciones.omega.model.Liquidacion;
+import com.distribuciones.omega.model.Liquidacion.Ajustes;
+import com.distribuciones.omega.model.ProductoInventario;
+import com.distribuciones.omega.model.Promocion;
+
+import com.distribuciones.omega.utils.Dinero;
+
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Calcula los precios de una cotización completa en una sola pasada: descuento manual,
+ * promociones, descuento mayorista e IVA de todas las líneas y los totales de la cabecera.
+ * Todo se calcula en centavos: cada descuento se redondea a centavos (mitad hacia arriba)
+ * y el IVA una sola vez sobre la base de la cotización.
+ *
+ * El resultado ({@link Liquidacion}) queda en la cotización. La pantalla, la factura y
+ * el movimiento contable lo reutilizan mientras los ítems no cambien, en lugar de
+ * volver a sumar cada uno por su cuenta.
+ */
+public class PreciosService {
+
+    /** IVA sobre el subtotal con descuentos, en puntos básicos (12 %) */
+    public static final long PUNTOS_IVA = 1200;
+    /** Descuento para clientes mayoristas sobre el bruto de cada línea, en puntos básicos (10 %) */
+    public static final long PUNTOS_MAYORISTA = 1000;
+    public static final double TASA_IVA = PUNTOS_IVA / (double) Dinero.PUNTOS_BASICOS;
+    public static final double TASA_MAYORISTA = PUNTOS_MAYORISTA / (double) Dinero.PUNTOS_BASICOS;
+    private static final RoundingMode REDONDEO = RoundingMode.HALF_UP;
+
+    private final MotorPromociones motor;
+
+    private final LongAdder calculos = new LongAdder();
+    private final LongAdder reutilizadas = new LongAdder();
+
+    public PreciosService() {
+        this(MotorPromociones.getInstance());
+    }
+
+    PreciosService(MotorPromociones motor) {
+        this.motor = motor;
+    }
+
+    /**
+     * Precios de una cotización. Si la liquidación que ya tiene sigue valiendo para sus
+     * ítems se devuelve esa; si no, se recalcula con los mismos ajustes y se aplica.
+     * @param cotizacion Cotización con ítems y cliente
+     * @return Liquidación aplicada a la cotización y sus ítems
+     */
+    public Liquidacion liquidar(Cotizacion cotizacion) {
+        Liquidacion actual = cotizacion.getLiquidacion();
+        if (actual != null && actual.vigentePara(cotizacion.getItems(), esMayorista(cotizacion.getCliente()))) {
+            reutilizadas.increment();
+            return actual;
+        }
+        Ajustes ajustes = actual != null ? actual.getAjustes() : Ajustes.ninguno();
+        return liquidar(cotizacion, ajustes);
+    }
+
+    /**
+     * Recalcula los precios de una cotización con otros ajustes y los aplica
+     * @param cotizacion Cotización con ítems y cliente
+     * @param ajustes Promociones y descuento mayorista a evaluar
+     * @return Liquidación aplicada a la cotización y sus ítems
+     */
+    public Liquidacion liquidar(Cotizacion cotizacion, Ajustes ajustes) {
+        Liquidacion liquidacion = liquidar(cotizacion.getItems(), cotizacion.getCliente(), ajustes);
+        liquidacion.aplicarA(cotizacion);
+        return liquidacion;
+    }
+
+    /**
+     * Calcula los precios de unos ítems y deja en cada uno su descuento y subtotal.
+     * En cada línea queda el mayor entre su descuento manual, la promoción y el
+     * descuento mayorista, sin superar el bruto de la línea.
+     * @param items Ítems en el orden de la cotización
+     * @param cliente Cliente (puede ser null)
+     * @param ajustes Promociones y descuento mayorista a evaluar
+     * @return Liquidación de los ítems
+     */
+    public Liquidacion liquidar(List<ItemCotizacion> items, Cliente cliente, Ajustes ajustes) {
+        calculos.increment();
+        int n = items.size();
+        String[] codigos = new String[n];
+        int[] cantidades = new int[n];
+        double[] precios = new double[n];
+        double[] manuales = new double[n];
+        long[] brutos = new long[n];
+        long[] descuentos = new long[n];
+        long[] subtotales = new long[n];
+
+        boolean mayorista = esMayorista(cliente);
+        long puntosMayorista = mayorista && ajustes.isDescuentoMayorista() ? PUNTOS_MAYORISTA : 0;
+        Promocion promocion = ajustes.getPromocion();
+        Set<String> alcancePromocion = promocion != null ? MotorPromociones.claves(promocion.getCategoriasAplicables()) : null;
+        LocalDate hoy = LocalDate.now();
+
+        long subtotal = 0;
+        long descuento = 0;
+        for (int i = 0; i < n; i++) {
+            ItemCotizacion item = items.get(i);
+            ProductoInventario producto = item.getProducto();
+            String codigo = producto != null ? producto.getCodigo() : null;
+            String categoria = producto != null ? producto.getCategoria() : null;
+            int cantidad = item.getCantidad();
+            double precio = item.getPrecioUnitario();
+            long bruto = Dinero.multiplicar(Dinero.deDouble(precio, REDONDEO), cantidad);
+
+            long descuentoLinea = Dinero.deDouble(item.getDescuentoManual(), REDONDEO);
+            if (puntosMayorista > 0) {
+                descuentoLinea = Math.max(descuentoLinea, Dinero.porcentaje(bruto, puntosMayorista, REDONDEO));
+            }
+            if (alcancePromocion != null && aplica(alcancePromocion, codigo, categoria)) {
+                descuentoLinea = Math.max(descuentoLinea,
+                        Dinero.deDouble(MotorPromociones.descuento(promocion, cantidad, precio), REDONDEO));
+            }
+            if (ajustes.isPromocionesVigentes()) {
+                MotorPromociones.Resultado mejor = motor.resolver(codigo, categoria, cantidad, precio, hoy);
+                if (mejor != null) {
+                    descuentoLinea = Math.max(descuentoLinea, Dinero.deDouble(mejor.getDescuento(), REDONDEO));
+                }
+            }
+            descuentoLinea = Math.max(0, Math.min(descuentoLinea, bruto));
+
+            codigos[i] = codigo;
+            cantidades[i] = cantidad;
+            precios[i] = precio;
+            manuales[i] = item.getDescuentoManual();
+            brutos[i] = bruto;
+            descuentos[i] = descuentoLinea;
+            subtotales[i] = bruto - descuentoLinea;
+            subtotal = Math.addExact(subtotal, bruto);
+            descuento = Math.addExact(descuento, descuentoLinea);
+        }
+
+        long iva = Dinero.porcentaje(subtotal - descuento, PUNTOS_IVA, REDONDEO);
+        Liquidacion liquidacion = new Liquidacion(codigos, cantidades, precios, manuales, brutos, descuentos, subtotales,
+                                                  mayorista, subtotal, descuento, iva, ajustes);
+        liquidacion.aplicarA(items);
+        return liquidacion;
+    }
+
+    private static boolean aplica(Set<String> alcance, String codigo, String categoria) {
+        return alcance.contains(MotorPromociones.TODAS)
+                || (codigo != null && alcance.contains(codigo.trim().toUpperCase(Locale.ROOT)))
+                || (categoria != null && alcance.contains(categoria.trim().toUpperCase(Locale.ROOT)));
+    }
+
+    private static boolean esMayorista(Cliente cliente) {
+        return cliente != null && cliente.isMayorista();
+    }
+
+    /**
+     * Liquidaciones calculadas desde cero
+     */
+    public long getCalculos() {
+        return calculos.sum();
+    }
+
+    /**
+     * Veces que se reutilizó la liquidación que ya tenía la cotización
+     */
+    public long getReutilizadas() {
+        return reutilizadas.sum();
+    }
+}
@@ -3,34 +3,43 @@ package com.distribuciones.omega.service;
 import com.distribuciones.omega.model.Promocion;
 import com.distribuciones.omega.repository.PromocionRepository;
 
+import java.sql.SQLException;
 import java.time.LocalDate;
 import java.util.List;
 
 /**
- * Servicio para gestionar las operaciones relacionadas con promociones
+ * Servicio para gestionar las operaciones relacionadas con promociones.
+ * Las búsquedas de la promoción de un producto se resuelven en memoria con
+ * MotorPromociones; los cambios recargan su índice.
  */
 public class PromocionService {
     
     private final PromocionRepository promocionRepository;
+    private final MotorPromociones motor;
     
     public PromocionService() {
-        this.promocionRepository = new PromocionRepository();
+        this(new PromocionRepository(), MotorPromociones.getInstance());
+    }
+    
+    PromocionService(PromocionRepository promocionRepository, MotorPromociones motor) {
+        this.promocionRepository = promocionRepository;
+        this.motor = motor;
     }
     
     /**
-     * Busca una promoción vigente para un producto específico
+     * Busca una promoción vigente para un producto específico (no las de su categoría)
      * @param codigoProducto Código del producto
      * @return Promoción vigente o null si no hay
      */
     public Promocion buscarPromocionPorProducto(String codigoProducto) {
-        // Obtener todas las promociones vigentes para el producto
-        List<Promocion> promociones = promocionRepository.findByProductoAndFechas(
-                codigoProducto, 
-                LocalDate.now(), 
-                LocalDate.now());
-        
-        // Devolver la primera promoción encontrada (si hay varias, se podría implementar lógica para elegir la mejor)
-        return promociones.isEmpty() ? null : promociones.get(0);
+        List<Promocion> promociones = motor.candidatas(codigoProducto, null, LocalDate.now());
+        // Sin categoría, las primeras candidatas son las del producto; después vienen las generales
+        for (Promocion promocion : promociones) {
+            if (!MotorPromociones.claves(promocion.getCategoriasAplicables()).contains(MotorPromociones.TODAS)) {
+                return promocion;
+            }
+        }
+        return null;
     }
     
     /**
@@ -39,7 +48,11 @@ public class PromocionService {
      * @return Promoción guardada con ID asignado
      */
     public Promocion guardarPromocion(Promocion promocion) {
-        return promocionRepository.save(promocion);
+        Promocion guardada = promocionRepository.save(promocion);
+        if (guardada != null) {
+            motor.recargar();
+        }
+        return guardada;
     }
     
     /**
@@ -53,8 +66,9 @@ public class PromocionService {
     /**
      * Obtiene todas las promociones (vigentes y no vigentes)
      * @return Lista de todas las promociones
+     * @throws SQLException Si no se pudo consultar la base de datos
      */
-    public List<Promocion> obtenerTodasPromociones() {
+    public List<Promocion> obtenerTodasPromociones() throws SQLException {
         return promocionRepository.findAll();
     }
     
@@ -64,7 +78,11 @@ public class PromocionService {
      * @return true si la actualización fue exitosa
      */
     public boolean actualizarPromocion(Promocion promocion) {
-        return promocionRepository.update(promocion);
+        boolean actualizada = promocionRepository.update(promocion);
+        if (actualizada) {
+            motor.recargar();
+        }
+        return actualizada;
     }
     
     /**
@@ -73,7 +91,11 @@ public class PromocionService {
      * @return true si la eliminación fue exitosa
      */
     public boolean eliminarPromocion(int id) {  // Cambiado de Long a int
-        return promocionRepository.delete(id);
+        boolean eliminada = promocionRepository.delete(id);
+        if (eliminada) {
+            motor.recargar();
+        }
+        return eliminada;
     }
     
     /**
@@ -83,8 +105,7 @@ public class PromocionService {
      */
     public boolean tienePromocion2x1(String codigoProducto) {
         Promocion promocion = buscarPromocionPorProducto(codigoProducto);
-        // Verificar si es una promoción 2x1 basada en la descripción
-        return promocion != null && promocion.getDescripcion().toUpperCase().contains("2X1");
+        return promocion != null && promocion.isDosPorUno();
     }
     
     /**
@@ -101,31 +122,28 @@ public class PromocionService {
     }
     
     /**
-     * Verifica si un producto o categoría tiene alguna promoción aplicable
+     * Verifica si un producto o categoría tiene alguna promoción aplicable.
+     * Las del producto tienen prioridad sobre las de su categoría y estas sobre
+     * las que aplican a todas.
      * @param codigoProducto Código del producto
      * @param categoria Categoría del producto
      * @return Promoción aplicable o null si no hay
      */
     public Promocion buscarPromocionAplicable(String codigoProducto, String categoria) {
-        // Primero buscar por producto específico
-        Promocion promocionProducto = buscarPromocionPorProducto(codigoProducto);
-        if (promocionProducto != null) {
-            return promocionProducto;
-        }
-        
-        // Si no hay promoción específica para el producto, buscar por su categoría
-        List<Promocion> todasPromociones = obtenerPromocionesVigentes();
-        for (Promocion promocion : todasPromociones) {
-            String categoriasAplicables = promocion.getCategoriasAplicables();
-            
-            // Si aplica a todas las categorías o a la categoría específica
-            if (categoriasAplicables != null && 
-                (categoriasAplicables.equals("TODAS") || 
-                 categoriasAplicables.contains(categoria))) {
-                return promocion;
-            }
-        }
-        
-        return null;
+        List<Promocion> promociones = motor.candidatas(codigoProducto, categoria, LocalDate.now());
+        return promociones.isEmpty() ? null : promociones.get(0);
+    }
+    
+    /**
+     * Busca la promoción que da el mayor descuento a una línea de venta
+     * @param codigoProducto Código del producto
+     * @param categoria Categoría del producto
+     * @param cantidad Unidades de la línea
+     * @param precioUnitario Precio unitario
+     * @return Promoción y descuento, o null si ninguna aplica
+     */
+    public MotorPromociones.Resultado buscarMejorPromocion(String codigoProducto, String categoria,
+                                                          int cantidad, double precioUnitario) {
+        return motor.resolver(codigoProducto, categoria, cantidad, precioUnitario, LocalDate.now());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,347 @@
+package com.distribuciones.omega.service;
+
+import com.distribuciones.omega.model.Cotizacion;
+import com.distribuciones.omega.model.ItemCotizacion;
+import com.distribuciones.omega.model.ProductoInventario;
+import com.distribuciones.omega.model.ResultadoStock;
+import io.github.cdimascio.dotenv.Dotenv;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+/**
+ * Reservas de stock en memoria entre la cotización y la factura.
+ *
+ * Una cotización reserva sus cantidades por código de producto al guardarse y las
+ * mantiene durante un tiempo (TTL, RESERVA_STOCK_MIN en .env). Mientras la reserva está
+ * vigente esas unidades no están disponibles para otras cotizaciones de esta aplicación.
+ * La reserva se confirma al generar la factura (descuento atómico en base de datos), se
+ * libera si la cotización se cancela o vence.
+ *
+ * La disponibilidad se calcula sin consultar la base de datos: se usa el último stock
+ * conocido de cada producto menos lo reservado. Ese stock es solo una pista: si una
+ * reserva se rechaza se relee el stock de la base (pudo haber reposiciones), y el
+ * descuento condicional en base de datos es la comprobación final frente a otras terminales.
+ */
+public class ReservaStockService {
+
+    private static final Logger LOGGER = Logger.getLogger(ReservaStockService.class.getName());
+    
+    private static final int TTL_POR_DEFECTO_MIN = 60;
+
+    private static ReservaStockService instance;
+
+    private final InventarioService inventarioService;
+    private final Clock reloj;
+    private final Duration ttl;
+
+    // Estado por código de producto y reservas vigentes (protegidos por el monitor de esta clase)
+    private final Map<String, EstadoProducto> productos = new HashMap<>();
+    private final Map<String, Reserva> reservas = new HashMap<>();
+    private final Map<Long, String> reservaPorCotizacion = new HashMap<>();
+    private final PriorityQueue<Reserva> porVencimiento =
+            new PriorityQueue<>((a, b) -> Long.compare(a.venceEn, b.venceEn));
+
+    ReservaStockService(InventarioService inventarioService, Clock reloj, Duration ttl) {
+        this.inventarioService = inventarioService;
+        this.reloj = reloj;
+        this.ttl = ttl;
+    }
+
+    /**
+     * Obtiene la instancia compartida por todas las pantallas (Singleton)
+     * @return Instancia del servicio de reservas
+     */
+    public static synchronized ReservaStockService getInstance() {
+        if (instance == null) {
+            instance = new ReservaStockService(new InventarioService(), Clock.systemDefaultZone(),
+                    Duration.ofMinutes(leerTtlMinutos()));
+        }
+        return instance;
+    }
+
+    private static int leerTtlMinutos() {
+        int minutos = TTL_POR_DEFECTO_MIN;
+        try {
+            String valor = Dotenv.configure().directory(".").ignoreIfMissing().load().get("RESERVA_STOCK_MIN");
+            if (valor != null && !valor.isBlank()) {
+                minutos = Math.max(1, Integer.parseInt(valor.trim()));
+            }
+        } catch (NumberFormatException e) {
+            LOGGER.warning("RESERVA_STOCK_MIN inválido, usando " + minutos);
+        }
+        return minutos;
+    }
+
+    /**
+     * Reserva todas las líneas de la cotización o ninguna. Si la cotización ya tenía
+     * una reserva vigente se reemplaza por las cantidades actuales.
+     * Si alguna línea no alcanza con el stock en memoria se relee su stock de la base
+     * de datos y se intenta una vez más.
+     * @param cotizacion Cotización a reservar
+     * @return Resultado con las líneas sin disponibilidad, si las hay
+     */
+    public ResultadoStock reservar(Cotizacion cotizacion) {
+        ResultadoStock resultado = intentarReservar(cotizacion);
+        if (resultado.isExitoso()) {
+            return resultado;
+        }
+
+        // El stock en memoria pudo quedar viejo (reposiciones, ediciones): se relee fuera del monitor
+        List<String> codigos = new ArrayList<>();
+        for (ResultadoStock.LineaFallida fallo : resultado.getFallos()) {
+            codigos.add(fallo.getCodigo());
+        }
+        Map<String, Integer> enBase = inventarioService.leerStock(codigos);
+        if (enBase.isEmpty()) {
+            return resultado;
+        }
+        synchronized (this) {
+            enBase.forEach(this::actualizarStockConocido);
+        }
+        return intentarReservar(cotizacion);
+    }
+
+    private synchronized ResultadoStock intentarReservar(Cotizacion cotizacion) {
+        purgarVencidas();
+
+        Reserva anterior = buscarReserva(cotizacion);
+        if (anterior != null) {
+            liberarInterno(anterior.codigo);
+        }
+
+        Map<String, Integer> cantidades = agruparCantidades(cotizacion);
+        ResultadoStock resultado = new ResultadoStock();
+
+        for (ItemCotizacion item : cotizacion.getItems()) {
+            ProductoInventario producto = item.getProducto();
+            String codigo = producto.getCodigo();
+            Integer cantidad = cantidades.get(codigo);
+            if (cantidad == null) {
+                continue; // Ya evaluado en una línea anterior del mismo producto
+            }
+
+            EstadoProducto estado = productos.computeIfAbsent(codigo, c -> new EstadoProducto(producto.getCantidad()));
+            int disponible = estado.disponible();
+            if (cantidad <= 0 || disponible < cantidad) {
+                resultado.registrarFallo(new ResultadoStock.LineaFallida(
+                        codigo, producto.getDescripcion(), cantidad, Math.max(disponible, 0)));
+            }
+            cantidades.remove(codigo);
+        }
+
+        if (!resultado.isExitoso()) {
+            return resultado;
+        }
+
+        Reserva reserva = new Reserva(UUID.randomUUID().toString(), cotizacion.getId(),
+                agruparCantidades(cotizacion), reloj.millis() + ttl.toMillis());
+        for (Map.Entry<String, Integer> linea : reserva.cantidades.entrySet()) {
+            productos.get(linea.getKey()).reservado += linea.getValue();
+        }
+        reservas.put(reserva.codigo, reserva);
+        if (reserva.cotizacionId != null) {
+            reservaPorCotizacion.put(reserva.cotizacionId, reserva.codigo);
+        }
+        porVencimiento.add(reserva);
+
+        cotizacion.setCodigoReserva(reserva.codigo);
+        cotizacion.setReservaVence(LocalDateTime.now(reloj).plus(ttl));
+        return resultado;
+    }
+
+    /**
+     * Confirma la reserva de la cotización descontando el stock en base de datos.
+     * Si la reserva venció se intenta reservar de nuevo antes de descontar.
+     * @param cotizacion Cotización a facturar
+     * @return Resultado del descuento en base de datos
+     */
+    public ResultadoStock confirmar(Cotizacion cotizacion) {
+        Reserva reserva = tomarReserva(cotizacion);
+        if (reserva == null) {
+            ResultadoStock nueva = reservar(cotizacion);
+            if (!nueva.isExitoso()) {
+                return nueva;
+            }
+            reserva = tomarReserva(cotizacion);
+            if (reserva == null) {
+                ResultadoStock vencida = new ResultadoStock();
+                vencida.setError("La reserva de stock venció antes de facturar");
+                return vencida;
+            }
+        }
+
+        Map<String, ProductoInventario> productosCotizacion = new HashMap<>();
+        for (ItemCotizacion item : cotizacion.getItems()) {
+            productosCotizacion.putIfAbsent(item.getProducto().getCodigo(), item.getProducto());
+        }
+        ResultadoStock resultado = inventarioService.descontarStock(productosCotizacion, reserva.cantidades);
+
+        synchronized (this) {
+            liberarInterno(reserva.codigo);
+            if (resultado.isExitoso()) {
+                resultado.getStockResultante().forEach(this::actualizarStockConocido);
+            } else {
+                for (ResultadoStock.LineaFallida fallo : resultado.getFallos()) {
+                    actualizarStockConocido(fallo.getCodigo(), fallo.getDisponible());
+                }
+            }
+        }
+
+        cotizacion.setCodigoReserva(null);
+        cotizacion.setReservaVence(null);
+        return resultado;
+    }
+
+    /**
+     * Reserva vigente de la cotización, retirada de la cola de vencimiento para que no
+     * venza mientras se descuenta en base de datos
+     */
+    private synchronized Reserva tomarReserva(Cotizacion cotizacion) {
+        purgarVencidas();
+        Reserva reserva = buscarReserva(cotizacion);
+        if (reserva != null) {
+            porVencimiento.remove(reserva);
+        }
+        return reserva;
+    }
+
+    /**
+     * Libera la reserva de una cotización (cancelación o error al facturar)
+     * @param cotizacion Cotización cuya reserva se libera
+     */
+    public synchronized void liberar(Cotizacion cotizacion) {
+        Reserva reserva = buscarReserva(cotizacion);
+        if (reserva != null) {
+            liberarInterno(reserva.codigo);
+        }
+        cotizacion.setCodigoReserva(null);
+        cotizacion.setReservaVence(null);
+    }
+
+    /**
+     * Indica si la cotización tiene una reserva vigente
+     * @param cotizacion Cotización a consultar
+     * @return true si sus unidades siguen reservadas
+     */
+    public synchronized boolean tieneReserva(Cotizacion cotizacion) {
+        purgarVencidas();
+        return buscarReserva(cotizacion) != null;
+    }
+
+    // Por el código guardado en la cotización o, si es otra instancia de la misma cotización, por su id
+    private Reserva buscarReserva(Cotizacion cotizacion) {
+        Reserva reserva = cotizacion.getCodigoReserva() != null ? reservas.get(cotizacion.getCodigoReserva()) : null;
+        if (reserva == null && cotizacion.getId() != null) {
+            String codigo = reservaPorCotizacion.get(cotizacion.getId());
+            reserva = codigo != null ? reservas.get(codigo) : null;
+        }
+        return reserva;
+    }
+
+    /**
+     * Registra el stock real de un producto leído de la base de datos
+     * @param codigo Código del producto
+     * @param cantidad Cantidad en stock
+     */
+    public synchronized void actualizarStockConocido(String codigo, int cantidad) {
+        EstadoProducto estado = productos.get(codigo);
+        if (estado == null) {
+            productos.put(codigo, new EstadoProducto(cantidad));
+        } else {
+            estado.stockConocido = cantidad;
+        }
+    }
+
+    /**
+     * Unidades de un producto disponibles para nuevas reservas
+     * @param producto Producto a consultar
+     * @return Stock conocido menos unidades reservadas
+     */
+    public synchronized int obtenerDisponible(ProductoInventario producto) {
+        purgarVencidas();
+        EstadoProducto estado = productos.get(producto.getCodigo());
+        return estado != null ? estado.disponible() : producto.getCantidad();
+    }
+
+    /**
+     * Unidades reservadas actualmente para un producto
+     * @param codigo Código del producto
+     * @return Unidades reservadas por cotizaciones vigentes
+     */
+    public synchronized int obtenerReservado(String codigo) {
+        purgarVencidas();
+        EstadoProducto estado = productos.get(codigo);
+        return estado != null ? estado.reservado : 0;
+    }
+
+    private void liberarInterno(String codigoReserva) {
+        Reserva reserva = reservas.remove(codigoReserva);
+        if (reserva == null) {
+            return;
+        }
+        porVencimiento.remove(reserva);
+        if (reserva.cotizacionId != null) {
+            reservaPorCotizacion.remove(reserva.cotizacionId, reserva.codigo);
+        }
+        for (Map.Entry<String, Integer> linea : reserva.cantidades.entrySet()) {
+            EstadoProducto estado = productos.get(linea.getKey());
+            if (estado != null) {
+                estado.reservado = Math.max(0, estado.reservado - linea.getValue());
+            }
+        }
+    }
+
+    private void purgarVencidas() {
+        long ahora = reloj.millis();
+        while (!porVencimiento.isEmpty() && porVencimiento.peek().venceEn <= ahora) {
+            Reserva vencida = porVencimiento.poll();
+            LOGGER.info(() -> "Reserva de stock vencida: " + vencida.codigo
+                    + (vencida.cotizacionId != null ? " (cotización " + vencida.cotizacionId + ")" : ""));
+            liberarInterno(vencida.codigo);
+        }
+    }
+
+    private static Map<String, Integer> agruparCantidades(Cotizacion cotizacion) {
+        Map<String, Integer> cantidades = new HashMap<>();
+        for (ItemCotizacion item : cotizacion.getItems()) {
+            cantidades.merge(item.getProducto().getCodigo(), item.getCantidad(), Integer::sum);
+        }
+        return cantidades;
+    }
+
+    private static class EstadoProducto {
+        private int stockConocido;
+        private int reservado;
+
+        EstadoProducto(int stockConocido) {
+            this.stockConocido = stockConocido;
+        }
+
+        int disponible() {
+            return stockConocido - reservado;
+        }
+    }
+
+    private static class Reserva {
+        private final String codigo;
+        private final Long cotizacionId;
+        private final Map<String, Integer> cantidades;
+        private final long venceEn;
+
+        Reserva(String codigo, Long cotizacionId, Map<String, Integer> cantidades, long venceEn) {
+            this.codigo = codigo;
+            this.cotizacionId = cotizacionId;
+            this.cantidades = cantidades;
+            this.venceEn = venceEn;
+        }
+    }
+}
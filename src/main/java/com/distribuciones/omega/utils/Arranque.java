@@ -0,0 +1,211 @@
+package com.distribuciones.omega.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Arranque de la aplicación por etapas. Cada etapa declara de cuáles depende y
+ * empieza en cuanto terminan esas; las independientes corren en paralelo.
+ *
+ * <pre>
+ * Arranque arranque = new Arranque();
+ * arranque.etapa("conexion", "Conectando a la base de datos...", () -> ...);
+ * arranque.etapa("esquema", "Actualizando estructura de datos...", () -> ..., "conexion");
+ * arranque.ejecutar((terminadas, total, mensaje) -> ...);
+ * </pre>
+ *
+ * Cada etapa se mide con una {@link Traza} (duración y consultas SQL), así los tiempos
+ * quedan en las métricas como operaciones "arranque.&lt;etapa&gt;" y en un resumen del log.
+ */
+public class Arranque {
+
+    private static final Logger LOGGER = Logger.getLogger(Arranque.class.getName());
+    private static final int HILOS = 4;
+
+    /**
+     * Trabajo de una etapa
+     */
+    @FunctionalInterface
+    public interface Tarea {
+        void ejecutar() throws Exception;
+    }
+
+    /**
+     * Recibe el avance: etapas terminadas, total y mensaje de la última etapa iniciada
+     */
+    @FunctionalInterface
+    public interface Progreso {
+        void actualizar(int terminadas, int total, String mensaje);
+    }
+
+    private final Map<String, Etapa> etapas = new LinkedHashMap<>();
+    private final List<TiempoEtapa> tiempos = Collections.synchronizedList(new ArrayList<>());
+    private long inicioNanos;
+
+    /**
+     * Declara una etapa. Las dependencias deben estar declaradas antes, lo que
+     * impide los ciclos.
+     * @param nombre Nombre corto (aparece en el log y en las métricas)
+     * @param mensaje Texto para la pantalla de carga
+     * @param tarea Trabajo de la etapa
+     * @param dependencias Etapas que deben terminar antes
+     */
+    public Arranque etapa(String nombre, String mensaje, Tarea tarea, String... dependencias) {
+        if (etapas.containsKey(nombre)) {
+            throw new IllegalArgumentException("Etapa repetida: " + nombre);
+        }
+        for (String dependencia : dependencias) {
+            if (!etapas.containsKey(dependencia)) {
+                throw new IllegalArgumentException("La etapa " + nombre + " depende de " + dependencia +
+                                                   ", que no está declarada antes");
+            }
+        }
+        etapas.put(nombre, new Etapa(nombre, mensaje, tarea, dependencias));
+        return this;
+    }
+
+    /**
+     * Ejecuta todas las etapas y espera a que terminen
+     * @param progreso Avance (se llama desde los hilos del arranque)
+     * @throws Exception el error de la primera etapa que falló; las que dependen de
+     *         ella no se ejecutan
+     */
+    public void ejecutar(Progreso progreso) throws Exception {
+        AtomicInteger contadorHilos = new AtomicInteger();
+        ExecutorService hilos = Executors.newFixedThreadPool(HILOS, r -> {
+            Thread hilo = new Thread(r, "arranque-" + contadorHilos.incrementAndGet());
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        int total = etapas.size();
+        AtomicInteger terminadas = new AtomicInteger();
+        inicioNanos = System.nanoTime();
+        tiempos.clear();
+        try {
+            Map<String, CompletableFuture<Void>> futuros = new LinkedHashMap<>();
+            for (Etapa etapa : etapas.values()) {
+                CompletableFuture<?>[] previas = new CompletableFuture<?>[etapa.dependencias.length];
+                for (int i = 0; i < previas.length; i++) {
+                    previas[i] = futuros.get(etapa.dependencias[i]);
+                }
+                futuros.put(etapa.nombre, CompletableFuture.allOf(previas).thenRunAsync(() -> {
+                    progreso.actualizar(terminadas.get(), total, etapa.mensaje);
+                    ejecutarEtapa(etapa);
+                    progreso.actualizar(terminadas.incrementAndGet(), total, etapa.mensaje);
+                }, hilos));
+            }
+            try {
+                CompletableFuture.allOf(futuros.values().toArray(new CompletableFuture<?>[0])).join();
+            } catch (CompletionException e) {
+                Throwable causa = e.getCause();
+                throw causa instanceof Exception ? (Exception) causa : e;
+            }
+        } finally {
+            hilos.shutdownNow();
+        }
+        LOGGER.info(resumen());
+    }
+
+    private void ejecutarEtapa(Etapa etapa) {
+        long desde = System.nanoTime() - inicioNanos;
+        Traza traza = Traza.iniciarSinResumen("arranque." + etapa.nombre);
+        try {
+            etapa.tarea.ejecutar();
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        } finally {
+            traza.close();
+            tiempos.add(new TiempoEtapa(etapa.nombre, desde / 1_000_000,
+                    (long) traza.getDuracionMs(), traza.getConsultas(), Thread.currentThread().getName()));
+        }
+    }
+
+    /**
+     * Tiempos de las etapas terminadas, en el orden en que terminaron
+     */
+    public List<TiempoEtapa> getTiempos() {
+        synchronized (tiempos) {
+            return new ArrayList<>(tiempos);
+        }
+    }
+
+    /**
+     * "Arranque en 850 ms: conexion 0+120 ms (1), esquema 120+6 ms (1), ..." (inicio relativo + duración, consultas)
+     */
+    public String resumen() {
+        long totalMs = 0;
+        StringBuilder detalle = new StringBuilder();
+        for (TiempoEtapa tiempo : getTiempos()) {
+            totalMs = Math.max(totalMs, tiempo.getInicioMs() + tiempo.getDuracionMs());
+            detalle.append(detalle.length() == 0 ? "" : ", ").append(tiempo);
+        }
+        return "Arranque en " + totalMs + " ms: " + detalle;
+    }
+
+    private static final class Etapa {
+        private final String nombre;
+        private final String mensaje;
+        private final Tarea tarea;
+        private final String[] dependencias;
+
+        Etapa(String nombre, String mensaje, Tarea tarea, String[] dependencias) {
+            this.nombre = nombre;
+            this.mensaje = mensaje;
+            this.tarea = tarea;
+            this.dependencias = dependencias;
+        }
+    }
+
+    /**
+     * Tiempo de una etapa, relativo al inicio del arranque
+     */
+    public static final class TiempoEtapa {
+        private final String etapa;
+        private final long inicioMs;
+        private final long duracionMs;
+        private final long consultas;
+        private final String hilo;
+
+        TiempoEtapa(String etapa, long inicioMs, long duracionMs, long consultas, String hilo) {
+            this.etapa = etapa;
+            this.inicioMs = inicioMs;
+            this.duracionMs = duracionMs;
+            this.consultas = consultas;
+            this.hilo = hilo;
+        }
+
+        public String getEtapa() {
+            return etapa;
+        }
+
+        public long getInicioMs() {
+            return inicioMs;
+        }
+
+        public long getDuracionMs() {
+            return duracionMs;
+        }
+
+        public long getConsultas() {
+            return consultas;
+        }
+
+        public String getHilo() {
+            return hilo;
+        }
+
+        @Override
+        public String toString() {
+            return etapa + " " + inicioMs + "+" + duracionMs + " ms (" + consultas + ")";
+        }
+    }
+}
@@ -0,0 +1,456 @@
+package com.distribuciones.omega.utils;
+
+import com.distribuciones.omega.model.CorreoPendiente;
+import com.distribuciones.omega.repository.CorreoPendienteRepository;
+import io.github.cdimascio.dotenv.Dotenv;
+
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.internet.MimeMessage;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Bandeja de salida de los correos del sistema.
+ *
+ * Los avisos se guardan en correos_pendientes y un único hilo los envía: junta los
+ * de un mismo destinatario en un resumen, reutiliza una sola conexión SMTP durante
+ * cada pasada y, si el envío falla, los reprograma con espera exponencial. Encolar
+ * solo escribe una fila, por lo que no bloquea la venta ni la interfaz. Los correos
+ * enviados se conservan CORREO_RETENCION_DIAS (30 por defecto) y luego se borran.
+ */
+public class BandejaSalidaCorreo {
+
+    private static final Logger LOGGER = Logger.getLogger(BandejaSalidaCorreo.class.getName());
+
+    private static final int TAMANO_LOTE = 100;
+    private static final int SEGUNDOS_RESERVA = 300;
+    private static final int MAXIMO_INTENTOS = 8;
+    private static final long ESPERA_BASE_SEG = 30;
+    private static final long ESPERA_MAXIMA_SEG = 3600;
+    // Tiempo que se espera tras encolar para juntar los avisos que llegan seguidos
+    private static final long VENTANA_AGRUPACION_MS = 5000;
+    private static final int DIAS_RETENCION = 30;
+    // La purga recorre los enviados; basta con hacerla una vez por hora aunque haya más pasadas
+    private static final long PURGA_CADA_MS = TimeUnit.HOURS.toMillis(1);
+
+    /**
+     * Forma de entregar un correo ya armado (SMTP en la aplicación)
+     */
+    public interface Envio {
+        void enviar(String destinatario, String asunto, String cuerpo) throws MessagingException;
+
+        /**
+         * Cierra la conexión abierta, si la hay
+         */
+        void cerrar();
+    }
+
+    private static BandejaSalidaCorreo instance;
+
+    private final CorreoPendienteRepository repository;
+    private final Envio envio;
+    private final long ventanaAgrupacionMs;
+    private final int diasRetencion;
+    private long ultimaPurgaMs;
+    private final AtomicBoolean pasadaProgramada = new AtomicBoolean(false);
+    // Separado del monitor de la instancia para que detener() pueda esperar la pasada en curso
+    private final Object bloqueoEnvio = new Object();
+    private volatile ScheduledExecutorService worker;
+
+    // Métricas
+    private final LongAdder encolados = new LongAdder();
+    private final LongAdder avisosEnviados = new LongAdder();
+    private final LongAdder correosEnviados = new LongAdder();
+    private final LongAdder resumenes = new LongAdder();
+    private final LongAdder fallosEnvio = new LongAdder();
+    private final LongAdder descartados = new LongAdder();
+    private final LongAdder latenciaTotalMs = new LongAdder();
+    private final AtomicLong latenciaMaximaMs = new AtomicLong();
+    private volatile int pendientes = -1;
+
+    BandejaSalidaCorreo(CorreoPendienteRepository repository, Envio envio, long ventanaAgrupacionMs) {
+        this(repository, envio, ventanaAgrupacionMs, DIAS_RETENCION);
+    }
+
+    BandejaSalidaCorreo(CorreoPendienteRepository repository, Envio envio, long ventanaAgrupacionMs,
+                        int diasRetencion) {
+        this.repository = repository;
+        this.envio = envio;
+        this.ventanaAgrupacionMs = ventanaAgrupacionMs;
+        this.diasRetencion = diasRetencion;
+    }
+
+    public static synchronized BandejaSalidaCorreo getInstance() {
+        if (instance == null) {
+            instance = new BandejaSalidaCorreo(new CorreoPendienteRepository(),
+                    new TransporteSmtp(EmailUtil.crearSesion()), VENTANA_AGRUPACION_MS,
+                    leerConfiguracion("CORREO_RETENCION_DIAS", DIAS_RETENCION));
+        }
+        return instance;
+    }
+
+    /**
+     * Guarda un correo en la bandeja de salida y avisa al hilo de envío
+     * @param destinatario Dirección del destinatario
+     * @param asunto Asunto
+     * @param cuerpo Cuerpo en texto plano
+     * @param clave Clave del aviso para descartar repetidos dentro de un resumen, o null
+     * @return true si quedó guardado
+     */
+    public boolean encolar(String destinatario, String asunto, String cuerpo, String clave) {
+        if (destinatario == null || destinatario.isBlank()) {
+            LOGGER.warning("Correo sin destinatario descartado: " + asunto);
+            return false;
+        }
+        try {
+            repository.encolar(new CorreoPendiente(destinatario.trim(), asunto, cuerpo, clave));
+            encolados.increment();
+            despertar();
+            return true;
+        } catch (SQLException e) {
+            LOGGER.warning("No se pudo encolar el correo '" + asunto + "': " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Inicia el hilo de envío con el intervalo de CORREO_INTERVALO_SEG (60 s por defecto)
+     */
+    public void iniciar() {
+        iniciar(leerConfiguracion("CORREO_INTERVALO_SEG", 60));
+    }
+
+    /**
+     * Lee un entero positivo del .env
+     * @param clave Nombre de la variable
+     * @param porDefecto Valor si falta o no es válido
+     */
+    private static int leerConfiguracion(String clave, int porDefecto) {
+        try {
+            String valor = Dotenv.configure().directory(".").ignoreIfMissing().load().get(clave);
+            if (valor != null && !valor.isBlank()) {
+                return Math.max(1, Integer.parseInt(valor.trim()));
+            }
+        } catch (NumberFormatException e) {
+            LOGGER.warning(clave + " inválido, usando " + porDefecto);
+        }
+        return porDefecto;
+    }
+
+    /**
+     * Inicia el hilo de envío. Revisa la bandeja cada {@code intervaloSegundos} y,
+     * además, poco después de cada correo encolado.
+     * @param intervaloSegundos Segundos entre revisiones
+     */
+    public synchronized void iniciar(int intervaloSegundos) {
+        detener();
+        worker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread hilo = new Thread(r, "correo-salida");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        worker.scheduleWithFixedDelay(this::procesarSeguro, 0, intervaloSegundos, TimeUnit.SECONDS);
+        LOGGER.info("Bandeja de salida de correo revisada cada " + intervaloSegundos + " s");
+    }
+
+    /**
+     * Detiene el hilo de envío, esperando a que termine la pasada en curso, y
+     * cierra la conexión SMTP. Lo que quede pendiente se envía en el próximo inicio.
+     */
+    public synchronized void detener() {
+        if (worker != null) {
+            worker.shutdown();
+            try {
+                if (!worker.awaitTermination(10, TimeUnit.SECONDS)) {
+                    worker.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                worker.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+            worker = null;
+            pasadaProgramada.set(false);
+        }
+        envio.cerrar();
+    }
+
+    private void despertar() {
+        ScheduledExecutorService actual = worker;
+        if (actual != null && pasadaProgramada.compareAndSet(false, true)) {
+            try {
+                actual.schedule(() -> {
+                    pasadaProgramada.set(false);
+                    procesarSeguro();
+                }, ventanaAgrupacionMs, TimeUnit.MILLISECONDS);
+            } catch (RuntimeException e) {
+                // El hilo se está deteniendo; el correo queda guardado para el próximo inicio
+                pasadaProgramada.set(false);
+            }
+        }
+    }
+
+    private void procesarSeguro() {
+        try {
+            procesar();
+        } catch (RuntimeException e) {
+            LOGGER.warning("Error en la bandeja de salida de correo: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Envía los correos pendientes cuyo intento ya venció. Lo ejecuta el hilo de
+     * envío; es público para poder vaciar la bandeja a pedido.
+     * @return Cantidad de avisos entregados en esta pasada
+     */
+    public int procesar() {
+        synchronized (bloqueoEnvio) {
+            return procesarLotes();
+        }
+    }
+
+    private int procesarLotes() {
+        int entregados = 0;
+        try {
+            List<CorreoPendiente> lote;
+            do {
+                lote = repository.reservarPendientes(TAMANO_LOTE, SEGUNDOS_RESERVA);
+                Map<String, List<CorreoPendiente>> porDestinatario = new LinkedHashMap<>();
+                for (CorreoPendiente correo : lote) {
+                    porDestinatario.computeIfAbsent(correo.getDestinatario().toLowerCase(), k -> new ArrayList<>())
+                                   .add(correo);
+                }
+                for (List<CorreoPendiente> correos : porDestinatario.values()) {
+                    entregados += enviarGrupo(correos);
+                }
+            } while (lote.size() == TAMANO_LOTE);
+        } catch (SQLException e) {
+            LOGGER.warning("No se pudo leer la bandeja de salida de correo: " + e.getMessage());
+        } finally {
+            // La conexión solo se mantiene durante la pasada
+            envio.cerrar();
+            purgarEnviados();
+            actualizarPendientes();
+        }
+        return entregados;
+    }
+
+    /**
+     * Borra los correos enviados hace más de diasRetencion días, como mucho una vez
+     * por hora. Se llama con bloqueoEnvio tomado.
+     */
+    private void purgarEnviados() {
+        long ahora = System.currentTimeMillis();
+        if (ultimaPurgaMs != 0 && ahora - ultimaPurgaMs < PURGA_CADA_MS) {
+            return;
+        }
+        ultimaPurgaMs = ahora;
+        try {
+            int borrados = repository.purgarEnviados(LocalDateTime.now().minusDays(diasRetencion));
+            if (borrados > 0) {
+                LOGGER.fine("Correos enviados purgados de la bandeja: " + borrados);
+            }
+        } catch (SQLException e) {
+            LOGGER.warning("No se pudieron purgar los correos enviados: " + e.getMessage());
+        }
+    }
+
+    private int enviarGrupo(List<CorreoPendiente> correos) throws SQLException {
+        List<Long> ids = new ArrayList<>();
+        for (CorreoPendiente correo : correos) {
+            ids.add(correo.getId());
+        }
+        List<CorreoPendiente> avisos = sinRepetidos(correos);
+        String destinatario = correos.get(0).getDestinatario();
+
+        String asunto;
+        String cuerpo;
+        if (avisos.size() == 1) {
+            asunto = avisos.get(0).getAsunto();
+            cuerpo = avisos.get(0).getCuerpo();
+        } else {
+            asunto = "Resumen de alertas de Distribuciones Omega (" + avisos.size() + ")";
+            cuerpo = componerResumen(avisos);
+        }
+
+        try {
+            envio.enviar(destinatario, asunto, cuerpo);
+        } catch (MessagingException | RuntimeException e) {
+            fallosEnvio.increment();
+            reprogramar(correos, e);
+            LOGGER.warning("No se pudo enviar el correo a " + destinatario + ": " + e.getMessage());
+            return 0;
+        }
+
+        repository.marcarEnviados(ids);
+        correosEnviados.increment();
+        avisosEnviados.add(correos.size());
+        descartados.add(correos.size() - avisos.size());
+        if (avisos.size() > 1) {
+            resumenes.increment();
+        }
+        LocalDateTime ahora = LocalDateTime.now();
+        for (CorreoPendiente correo : correos) {
+            long latencia = Duration.between(correo.getCreado(), ahora).toMillis();
+            latenciaTotalMs.add(latencia);
+            latenciaMaximaMs.accumulateAndGet(latencia, Math::max);
+        }
+        return correos.size();
+    }
+
+    /**
+     * Deja solo el último aviso de cada clave, conservando el orden de llegada
+     */
+    private static List<CorreoPendiente> sinRepetidos(List<CorreoPendiente> correos) {
+        Map<Object, CorreoPendiente> porClave = new LinkedHashMap<>();
+        for (CorreoPendiente correo : correos) {
+            Object clave = correo.getClave() != null ? correo.getClave() : correo.getId();
+            porClave.remove(clave);
+            porClave.put(clave, correo);
+        }
+        return new ArrayList<>(porClave.values());
+    }
+
+    private static String componerResumen(List<CorreoPendiente> avisos) {
+        StringBuilder cuerpo = new StringBuilder("Se registraron " + avisos.size() + " avisos:\n\n");
+        for (CorreoPendiente aviso : avisos) {
+            cuerpo.append("--- ").append(aviso.getAsunto()).append(" ---\n")
+                  .append(aviso.getCuerpo() != null ? aviso.getCuerpo() : "")
+                  .append("\n\n");
+        }
+        cuerpo.append("Este es un mensaje automático del sistema de Distribuciones Omega.");
+        return cuerpo.toString();
+    }
+
+    private void reprogramar(List<CorreoPendiente> correos, Exception error) throws SQLException {
+        LocalDateTime ahora = LocalDateTime.now();
+        for (CorreoPendiente correo : correos) {
+            int intentos = correo.getIntentos() + 1;
+            boolean fallido = intentos >= MAXIMO_INTENTOS;
+            long espera = Math.min(ESPERA_MAXIMA_SEG, ESPERA_BASE_SEG << Math.min(intentos - 1, 20));
+            repository.reprogramar(correo.getId(), intentos, ahora.plusSeconds(espera), fallido, error.getMessage());
+            if (fallido) {
+                LOGGER.severe("Correo " + correo.getId() + " descartado tras " + intentos + " intentos");
+            }
+        }
+    }
+
+    private void actualizarPendientes() {
+        try {
+            pendientes = repository.contarPendientes();
+        } catch (SQLException e) {
+            LOGGER.fine("No se pudo contar la bandeja de salida: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Devuelve las métricas de la bandeja de salida
+     */
+    public EstadisticasCorreo getEstadisticas() {
+        long avisos = avisosEnviados.sum();
+        return new EstadisticasCorreo(pendientes, encolados.sum(), avisos, correosEnviados.sum(),
+                resumenes.sum(), fallosEnvio.sum(), descartados.sum(),
+                avisos > 0 ? latenciaTotalMs.sum() / avisos : 0, latenciaMaximaMs.get());
+    }
+
+    /**
+     * Envío por SMTP que mantiene abierta una sola conexión mientras se usa
+     */
+    public static class TransporteSmtp implements Envio {
+        private final Session session;
+        private Transport transport;
+
+        public TransporteSmtp(Session session) {
+            this.session = session;
+        }
+
+        @Override
+        public synchronized void enviar(String destinatario, String asunto, String cuerpo) throws MessagingException {
+            MimeMessage mensaje = EmailUtil.crearMensaje(session, destinatario, asunto, cuerpo);
+            try {
+                if (transport == null || !transport.isConnected()) {
+                    transport = session.getTransport("smtp");
+                    transport.connect();
+                }
+                transport.sendMessage(mensaje, mensaje.getAllRecipients());
+            } catch (MessagingException e) {
+                // Se reconecta en el próximo envío
+                cerrar();
+                throw e;
+            }
+        }
+
+        @Override
+        public synchronized void cerrar() {
+            if (transport != null) {
+                try {
+                    transport.close();
+                } catch (MessagingException e) {
+                    // La conexión ya estaba cerrada
+                }
+                transport = null;
+            }
+        }
+    }
+
+    /**
+     * Instantánea de las métricas de la bandeja de salida
+     */
+    public static class EstadisticasCorreo {
+        private final int pendientes;
+        private final long encolados;
+        private final long avisosEnviados;
+        private final long correosEnviados;
+        private final long resumenes;
+        private final long fallosEnvio;
+        private final long descartados;
+        private final long latenciaPromedioMs;
+        private final long latenciaMaximaMs;
+
+        public EstadisticasCorreo(int pendientes, long encolados, long avisosEnviados, long correosEnviados,
+                                  long resumenes, long fallosEnvio, long descartados,
+                                  long latenciaPromedioMs, long latenciaMaximaMs) {
+            this.pendientes = pendientes;
+            this.encolados = encolados;
+            this.avisosEnviados = avisosEnviados;
+            this.correosEnviados = correosEnviados;
+            this.resumenes = resumenes;
+            this.fallosEnvio = fallosEnvio;
+            this.descartados = descartados;
+            this.latenciaPromedioMs = latenciaPromedioMs;
+            this.latenciaMaximaMs = latenciaMaximaMs;
+        }
+
+        /** Correos en la bandeja tras la última pasada (-1 si aún no se revisó) */
+        public int getPendientes() { return pendientes; }
+        public long getEncolados() { return encolados; }
+        public long getAvisosEnviados() { return avisosEnviados; }
+        public long getCorreosEnviados() { return correosEnviados; }
+        public long getResumenes() { return resumenes; }
+        public long getFallosEnvio() { return fallosEnvio; }
+        public long getDescartados() { return descartados; }
+        public long getLatenciaPromedioMs() { return latenciaPromedioMs; }
+        public long getLatenciaMaximaMs() { return latenciaMaximaMs; }
+
+        @Override
+        public String toString() {
+            return String.format("Correo{pendientes=%d, encolados=%d, avisos=%d, correos=%d, resumenes=%d, " +
+                                 "fallos=%d, descartados=%d, latenciaProm=%dms, latenciaMax=%dms}",
+                                 pendientes, encolados, avisosEnviados, correosEnviados, resumenes,
+                                 fallosEnvio, descartados, latenciaPromedioMs, latenciaMaximaMs);
+        }
+    }
+}
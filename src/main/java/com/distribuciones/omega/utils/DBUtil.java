@@ -1,34 +1,60 @@
 package com.distribuciones.omega.utils;
 
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
 import io.github.cdimascio.dotenv.Dotenv;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+import javax.sql.DataSource;
 
 /**
- * Clase utilitaria para gestionar conexiones a la base de datos
+ * Clase utilitaria para gestionar conexiones a la base de datos.
+ * Todas las conexiones salen de un pool compartido (HikariCP), por lo que
+ * los repositorios y DAOs solo deben cerrar la conexión para devolverla.
  */
 public class DBUtil {
-    
+
+    private static final Logger LOGGER = Logger.getLogger(DBUtil.class.getName());
+
     // Cargar variables desde .env
     private static final Dotenv dotenv = Dotenv.configure()
                                            .directory(".")
                                            .ignoreIfMissing()
                                            .load();
-    
+
     // Método para limpiar los valores de espacios
     private static String cleanValue(String value) {
         return value != null ? value.trim() : null;
     }
-    
+
     // Variables para la conexión a la BD - Con limpieza de espacios
     public static final String URL = cleanValue(dotenv.get("DB_URL"));
     public static final String USER = cleanValue(dotenv.get("DB_USER"));
     public static final String PASSWORD = cleanValue(dotenv.get("DB_PASS"));
-    
+
     // Driver de MySQL
     private static final String DRIVER = "com.mysql.cj.jdbc.Driver";
-    
+
+    // Parámetros del pool (sobrescribibles desde .env)
+    private static final int POOL_MAX = getInt("DB_POOL_MAX", 10);
+    private static final int POOL_MIN_IDLE = getInt("DB_POOL_MIN_IDLE", 2);
+    private static final long POOL_CONNECTION_TIMEOUT_MS = getInt("DB_POOL_TIMEOUT_MS", 10000);
+    private static final long POOL_LEAK_DETECTION_MS = getInt("DB_POOL_LEAK_MS", 30000);
+
+    private static volatile DataSource dataSource;
+
+    // Métricas de espera al obtener conexiones
+    private static final LongAdder solicitudes = new LongAdder();
+    private static final LongAdder esperaTotalNanos = new LongAdder();
+    private static final AtomicLong esperaMaximaNanos = new AtomicLong();
+    private static final LongAdder fallos = new LongAdder();
+
     static {
         try {
             // Registrar el driver
@@ -38,60 +64,178 @@ public class DBUtil {
             System.err.println("Error al cargar el driver de MySQL: " + e.getMessage());
         }
     }
-    
+
     // Métodos adicionales para el DatabaseInitializer
     public static String getDBUrl() {
         return cleanValue(URL);
     }
-    
+
     public static String getDBUser() {
         return cleanValue(USER);
     }
-    
+
     public static String getDBPassword() {
         return cleanValue(PASSWORD);
     }
-    
+
     /**
-     * Obtiene una conexión a la base de datos
-     * @return Conexión a la BD
-     * @throws SQLException Si ocurre un error al conectar
+     * Obtiene una conexión del pool de la base de datos
+     * @return Conexión a la BD (al cerrarla vuelve al pool)
+     * @throws SQLException Si ocurre un error al conectar o se agota el tiempo de espera
      */
     public static Connection getConnection() throws SQLException {
-        // Limpiar explícitamente los valores para asegurar que no haya espacios
+        MetricasBD metricas = MetricasBD.getInstance();
+        long inicio = System.nanoTime();
+        boolean exitosa = false;
+        try {
+            Connection conexion = getDataSource().getConnection();
+            exitosa = true;
+            // Instrumentada para medir cada sentencia (ver MetricasBD)
+            return metricas.instrumentar(conexion);
+        } catch (SQLException e) {
+            fallos.increment();
+            throw e;
+        } finally {
+            long espera = System.nanoTime() - inicio;
+            solicitudes.increment();
+            esperaTotalNanos.add(espera);
+            esperaMaximaNanos.accumulateAndGet(espera, Math::max);
+            metricas.registrarEsperaConexion(espera, exitosa);
+        }
+    }
+
+    /**
+     * Devuelve el pool compartido, creándolo en el primer uso
+     */
+    private static DataSource getDataSource() {
+        DataSource ds = dataSource;
+        if (ds == null) {
+            synchronized (DBUtil.class) {
+                ds = dataSource;
+                if (ds == null) {
+                    ds = crearDataSource();
+                    dataSource = ds;
+                }
+            }
+        }
+        return ds;
+    }
+
+    private static HikariDataSource crearDataSource() {
         String cleanUrl = cleanValue(URL);
-        String cleanUser = cleanValue(USER);
-        String cleanPassword = cleanValue(PASSWORD);
-        
-        // Imprimir depuración con corchetes para ver espacios
-        System.out.println("DEBUG - Conexión a base de datos:");
-        System.out.println("URL: [" + cleanUrl + "]");
-        System.out.println("Usuario: [" + cleanUser + "]");
-        
+
         // Añadir parámetro allowPublicKeyRetrieval=true si no está incluido
         if (cleanUrl != null && !cleanUrl.contains("allowPublicKeyRetrieval=")) {
-            cleanUrl = cleanUrl.contains("?") 
-                ? cleanUrl + "&allowPublicKeyRetrieval=true" 
+            cleanUrl = cleanUrl.contains("?")
+                ? cleanUrl + "&allowPublicKeyRetrieval=true"
                 : cleanUrl + "?allowPublicKeyRetrieval=true";
         }
-        
-        return DriverManager.getConnection(cleanUrl, cleanUser, cleanPassword);
+
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("omega-pool");
+        config.setDriverClassName(DRIVER);
+        config.setJdbcUrl(cleanUrl);
+        config.setUsername(cleanValue(USER));
+        config.setPassword(cleanValue(PASSWORD));
+        config.setMaximumPoolSize(POOL_MAX);
+        config.setMinimumIdle(Math.min(POOL_MIN_IDLE, POOL_MAX));
+        config.setConnectionTimeout(POOL_CONNECTION_TIMEOUT_MS);
+        config.setValidationTimeout(3000);
+        config.setIdleTimeout(TimeUnit.MINUTES.toMillis(5));
+        config.setMaxLifetime(TimeUnit.MINUTES.toMillis(25));
+        config.setLeakDetectionThreshold(POOL_LEAK_DETECTION_MS);
+        // No fallar al crear el pool si la BD aún no está disponible
+        config.setInitializationFailTimeout(-1);
+
+        // Cache de sentencias preparadas del driver de MySQL
+        config.addDataSourceProperty("cachePrepStmts", "true");
+        config.addDataSourceProperty("prepStmtCacheSize", "250");
+        config.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
+        config.addDataSourceProperty("useServerPrepStmts", "true");
+        config.addDataSourceProperty("rewriteBatchedStatements", "true");
+
+        LOGGER.info("Creando pool de conexiones (max=" + POOL_MAX + ", minIdle=" + config.getMinimumIdle() + ")");
+        return new HikariDataSource(config);
+    }
+
+    /**
+     * Sustituye el origen de conexiones por uno externo (pruebas y benchmarks
+     * contra una base de datos embebida). El pool anterior, si existía, se cierra.
+     * @param externo DataSource a utilizar
+     */
+    public static void usarDataSource(DataSource externo) {
+        synchronized (DBUtil.class) {
+            cerrarPool();
+            dataSource = externo;
+        }
+    }
+
+    /**
+     * Obtiene las estadísticas actuales del pool de conexiones
+     * @return Instantánea de las estadísticas
+     */
+    public static EstadisticasPool getEstadisticasPool() {
+        DataSource ds = dataSource;
+        HikariPoolMXBean pool = ds instanceof HikariDataSource
+            ? ((HikariDataSource) ds).getHikariPoolMXBean()
+            : null;
+
+        long total = solicitudes.sum();
+        return new EstadisticasPool(
+            pool != null ? pool.getActiveConnections() : 0,
+            pool != null ? pool.getIdleConnections() : 0,
+            pool != null ? pool.getTotalConnections() : 0,
+            pool != null ? pool.getThreadsAwaitingConnection() : 0,
+            POOL_MAX,
+            total,
+            fallos.sum(),
+            total > 0 ? esperaTotalNanos.sum() / total / 1_000_000.0 : 0.0,
+            esperaMaximaNanos.get() / 1_000_000.0
+        );
+    }
+
+    /**
+     * Cierra el pool de conexiones (al salir de la aplicación)
+     */
+    public static void cerrarPool() {
+        synchronized (DBUtil.class) {
+            if (dataSource instanceof HikariDataSource) {
+                ((HikariDataSource) dataSource).close();
+                LOGGER.info("Pool de conexiones cerrado");
+            }
+            dataSource = null;
+        }
     }
 
     public static void beginTransaction(Connection conn) throws SQLException {
         conn.setAutoCommit(false);
     }
-    
+
     public static void commitTransaction(Connection conn) throws SQLException {
         conn.commit();
         conn.setAutoCommit(true);
     }
-    
+
     public static void rollbackTransaction(Connection conn) throws SQLException {
         conn.rollback();
         conn.setAutoCommit(true);
     }
 
+    /**
+     * Configura una sentencia para recorrer el resultado fila a fila sin cargarlo
+     * completo en memoria. Con MySQL Connector/J esto requiere fetchSize MIN_VALUE
+     * (y no usar la misma conexión para otras consultas mientras se recorre).
+     * @param stmt Sentencia de solo lectura y avance hacia adelante
+     */
+    public static void habilitarLecturaContinua(Statement stmt) throws SQLException {
+        String motor = stmt.getConnection().getMetaData().getDatabaseProductName();
+        if (motor != null && motor.toLowerCase().contains("mysql")) {
+            stmt.setFetchSize(Integer.MIN_VALUE);
+        } else {
+            stmt.setFetchSize(500);
+        }
+    }
+
     public static void closeQuietly(AutoCloseable... resources) {
         for (AutoCloseable resource : resources) {
             if (resource != null) {
@@ -104,4 +248,63 @@ public class DBUtil {
             }
         }
     }
-}
\ No newline at end of file
+
+    private static int getInt(String clave, int valorPorDefecto) {
+        String valor = cleanValue(dotenv.get(clave));
+        if (valor == null || valor.isEmpty()) {
+            return valorPorDefecto;
+        }
+        try {
+            return Integer.parseInt(valor);
+        } catch (NumberFormatException e) {
+            LOGGER.warning("Valor inválido para " + clave + ": " + valor + ". Usando " + valorPorDefecto);
+            return valorPorDefecto;
+        }
+    }
+
+    /**
+     * Instantánea de las estadísticas del pool de conexiones
+     */
+    public static class EstadisticasPool {
+        private final int activas;
+        private final int inactivas;
+        private final int total;
+        private final int hilosEsperando;
+        private final int maximo;
+        private final long solicitudes;
+        private final long fallos;
+        private final double esperaPromedioMs;
+        private final double esperaMaximaMs;
+
+        public EstadisticasPool(int activas, int inactivas, int total, int hilosEsperando, int maximo,
+                                long solicitudes, long fallos, double esperaPromedioMs, double esperaMaximaMs) {
+            this.activas = activas;
+            this.inactivas = inactivas;
+            this.total = total;
+            this.hilosEsperando = hilosEsperando;
+            this.maximo = maximo;
+            this.solicitudes = solicitudes;
+            this.fallos = fallos;
+            this.esperaPromedioMs = esperaPromedioMs;
+            this.esperaMaximaMs = esperaMaximaMs;
+        }
+
+        public int getActivas() { return activas; }
+        public int getInactivas() { return inactivas; }
+        public int getTotal() { return total; }
+        public int getHilosEsperando() { return hilosEsperando; }
+        public int getMaximo() { return maximo; }
+        public long getSolicitudes() { return solicitudes; }
+        public long getFallos() { return fallos; }
+        public double getEsperaPromedioMs() { return esperaPromedioMs; }
+        public double getEsperaMaximaMs() { return esperaMaximaMs; }
+
+        @Override
+        public String toString() {
+            return String.format("Pool{activas=%d, inactivas=%d, total=%d/%d, esperando=%d, " +
+                                 "solicitudes=%d, fallos=%d, esperaPromedio=%.2fms, esperaMaxima=%.2fms}",
+                                 activas, inactivas, total, maximo, hilosEsperando,
+                                 solicitudes, fallos, esperaPromedioMs, esperaMaximaMs);
+        }
+    }
+}
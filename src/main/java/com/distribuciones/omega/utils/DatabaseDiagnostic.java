@@ -1,15 +1,53 @@
 package com.distribuciones.omega.utils;
 
+import com.distribuciones.omega.repository.FacturaRepository;
+import com.distribuciones.omega.repository.InventarioRepository;
+
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
+/**
+ * Diagnóstico de la estructura de la base de datos, bajo demanda (ya no se ejecuta
+ * al iniciar la aplicación ni en cada venta).
+ *
+ * Uso: DatabaseDiagnostic [--todas] [--facturas] [--productos]
+ * Sin opciones analiza las tablas principales y las referencias a productos.
+ * --todas analiza todas las tablas, --facturas revisa las tablas de facturas e ítems
+ * y --productos muestra la estructura y algunos registros de productos.
+ */
 public class DatabaseDiagnostic {
     
     public static void main(String[] args) {
+        List<String> opciones = Arrays.asList(args);
+        try {
+            if (opciones.isEmpty()) {
+                analizarTablasPrincipales();
+            }
+            if (opciones.contains("--todas")) {
+                analyzeAllTables();
+            }
+            if (opciones.contains("--facturas")) {
+                FacturaRepository facturas = new FacturaRepository();
+                facturas.diagnosticarTablas();
+                facturas.imprimirEstructuraTablaFacturas();
+            }
+            if (opciones.contains("--productos")) {
+                new InventarioRepository().imprimirEstructuraTablaProductos();
+            }
+        } finally {
+            DBUtil.cerrarPool();
+        }
+    }
+    
+    /**
+     * Analiza las tablas principales y las referencias hacia productos
+     */
+    private static void analizarTablasPrincipales() {
         try (Connection conn = DBUtil.getConnection();
              Statement stmt = conn.createStatement()) {
             
@@ -94,7 +132,7 @@ public class DatabaseDiagnostic {
      * Método para facilitar el diagnóstico desde otras partes del código
      */
     public static void runDiagnostic() {
-        main(new String[]{});
+        analizarTablasPrincipales();
     }
     
     /**
@@ -12,6 +12,10 @@ import com.distribuciones.omega.repository.InventarioRepository;
 import com.distribuciones.omega.repository.FacturaRepository;
 import com.distribuciones.omega.repository.PagoRepository;
 import com.distribuciones.omega.repository.CotizacionRepository;
+import com.distribuciones.omega.repository.SecuenciaRepository;
+import com.distribuciones.omega.repository.CorreoPendienteRepository;
+import com.distribuciones.omega.repository.MovimientoContableRepository;
+import com.distribuciones.omega.repository.VentasDiariasRepository;
 
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
@@ -19,6 +23,7 @@ import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -32,22 +37,25 @@ import java.util.logging.Logger;
 public class DatabaseInitializer {
     
     private static final Logger LOGGER = Logger.getLogger(DatabaseInitializer.class.getName());
-    private static boolean initialized = false;
     
     /**
-     * Inicializa la base de datos verificando y creando tablas según sea necesario.
-     * Las tablas se crean en orden de dependencia para respetar las relaciones.
+     * Prepara la base de datos al iniciar: la crea si no existe y aplica las
+     * migraciones pendientes del esquema. Con el esquema al día solo consulta
+     * la versión aplicada (ver {@link MigradorEsquema}).
+     * @throws SQLException si no se pudo aplicar alguna migración
      */
-    public static void initialize() {
-        // Check if already initialized in this session
-        if (initialized) {
-            System.out.println("Database already initialized in this session. Skipping.");
-            System.out.println("Verificando consistencia de la base de datos...");
-            unificarCollations();
-            return;
-        }
+    public static void initialize() throws SQLException {
         ensureDatabaseExists();
-        
+        MigradorEsquema.predeterminado().migrar();
+    }
+    
+    /**
+     * Crea las tablas que falten, en orden de dependencia para respetar las relaciones,
+     * y las llena con datos iniciales. Es la migración 1 (esquema base): corre una sola
+     * vez por base de datos y, sobre una instalación anterior, solo agrega lo que falte.
+     * @throws SQLException si no se pudo crear alguna tabla
+     */
+    static void crearEsquemaBase() throws SQLException {
         try {
             Connection conn = DBUtil.getConnection();
             
@@ -100,6 +108,23 @@ public class DatabaseInitializer {
                     System.out.println("Tablas de productos ya existen y tienen estructura correcta.");
                 }
                 
+                // 1.3 Tablas de numeración de documentos (FACT-, ORD-, COT-)
+                if (!tableExists("secuencias_documentos") || !tableExists("bloques_secuencia")) {
+                    System.out.println("Creando tablas de secuencias de documentos...");
+                    new SecuenciaRepository().createTableIfNotExists();
+                } else {
+                    System.out.println("Tablas de secuencias de documentos ya existen.");
+                }
+                
+                // 1.4 Bandeja de salida de correos (alertas de stock)
+                if (!tableExists("correos_pendientes")) {
+                    System.out.println("Creando tabla correos_pendientes...");
+                    new CorreoPendienteRepository().createTableIfNotExists();
+                }
+                
+                // 1.5 Movimientos contables y saldos (agrega id_diario y calcula los saldos de tablas anteriores)
+                new MovimientoContableRepository().createTableIfNotExists();
+                
                 // 2. TABLAS CON DEPENDENCIAS NIVEL 1 (NIVEL 2)
                 System.out.println("Inicializando tablas de nivel 2 (con dependencias simples)...");
                 
@@ -162,9 +187,19 @@ public class DatabaseInitializer {
                     System.out.println("Tabla de items_factura ya existe.");
                 }
                 
+                // 3.5 Acumulados diarios de ventas (se calculan desde las facturas existentes)
+                if (!tableExists("ventas_diarias")) {
+                    System.out.println("Creando tabla de ventas diarias...");
+                    VentasDiariasRepository ventasDiarias = new VentasDiariasRepository();
+                    ventasDiarias.createTableIfNotExists();
+                    int filas = ventasDiarias.reconstruir(LocalDate.of(2000, 1, 1), LocalDate.now().plusDays(1));
+                    System.out.println("Ventas diarias calculadas: " + filas + " filas.");
+                } else {
+                    System.out.println("Tabla de ventas diarias ya existe.");
+                }
+                
                 // Si llegamos aquí, todo se creó correctamente
                 conn.commit();
-                initialized = true;
                 System.out.println("Inicialización de base de datos completada con éxito.");
                 
             } catch (Exception e) {
@@ -178,9 +213,10 @@ public class DatabaseInitializer {
             }
             
         } catch (Exception e) {
-            LOGGER.log(Level.SEVERE, "Error durante la inicialización de la base de datos", e);
-            e.printStackTrace();
+            throw new SQLException("Error al crear el esquema base de la base de datos", e);
         }
+        
+        unificarCollations();
     }
 
     private static void unificarCollations() {
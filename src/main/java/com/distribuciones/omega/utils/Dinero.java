@@ -0,0 +1,217 @@
+package com.distribuciones.omega.utils;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Aritmética de dinero en centavos ({@code long}), con el modo de redondeo explícito.
+ *
+ * Los montos de facturas, pagos y movimientos contables se calculan sumando centavos
+ * en lugar de {@code double}, así los totales no acumulan error, y sin crear un
+ * {@link BigDecimal} por operación. Los {@code BigDecimal} solo aparecen al leer y
+ * escribir columnas DECIMAL(…,2), donde el valor se guarda exacto.
+ *
+ * <pre>
+ * long bruto = Dinero.multiplicar(Dinero.deDouble(precio), cantidad);
+ * long iva = Dinero.porcentaje(bruto - descuento, 1200, RoundingMode.HALF_UP); // 12 %
+ * Dinero.escribir(stmt, 4, bruto - descuento + iva);
+ * </pre>
+ */
+public final class Dinero {
+
+    /** Decimales de las columnas de dinero */
+    public static final int ESCALA = 2;
+    /** Puntos básicos en un 100 % */
+    public static final long PUNTOS_BASICOS = 10_000;
+
+    private static final double CENTAVOS_POR_UNIDAD = 100.0;
+    // Diferencia (en centavos) por debajo de la cual un double se toma como centavos exactos
+    private static final double TOLERANCIA = 1e-6;
+
+    private Dinero() {
+    }
+
+    /**
+     * Centavos de un monto en unidades, redondeando la mitad hacia arriba
+     */
+    public static long deDouble(double monto) {
+        return deDouble(monto, RoundingMode.HALF_UP);
+    }
+
+    /**
+     * Centavos de un monto en unidades
+     * @param monto Monto (por ejemplo 12.345)
+     * @param modo Redondeo cuando el monto tiene más de dos decimales
+     */
+    public static long deDouble(double monto, RoundingMode modo) {
+        double escalado = monto * CENTAVOS_POR_UNIDAD;
+        long entero = Math.round(escalado);
+        // Caso común: el monto ya tiene dos decimales y solo difiere por la representación binaria
+        if (Math.abs(escalado - entero) < TOLERANCIA) {
+            return entero;
+        }
+        if (Double.isNaN(monto) || Double.isInfinite(monto)) {
+            throw new ArithmeticException("Monto inválido: " + monto);
+        }
+        // Más de dos decimales: redondeo exacto sobre la representación decimal del double
+        return deDecimal(BigDecimal.valueOf(monto), modo);
+    }
+
+    /**
+     * Monto en unidades (el double más cercano a los centavos)
+     */
+    public static double aDouble(long centavos) {
+        return centavos / CENTAVOS_POR_UNIDAD;
+    }
+
+    /**
+     * Centavos de un decimal
+     * @throws ArithmeticException si no cabe en un long
+     */
+    public static long deDecimal(BigDecimal monto, RoundingMode modo) {
+        return monto.setScale(ESCALA, modo).unscaledValue().longValueExact();
+    }
+
+    /**
+     * Decimal exacto con dos decimales
+     */
+    public static BigDecimal aDecimal(long centavos) {
+        return BigDecimal.valueOf(centavos, ESCALA);
+    }
+
+    /**
+     * Multiplica un precio en centavos por una cantidad
+     * @throws ArithmeticException si el resultado no cabe en un long
+     */
+    public static long multiplicar(long centavos, long cantidad) {
+        return Math.multiplyExact(centavos, cantidad);
+    }
+
+    /**
+     * Porcentaje de un monto
+     * @param centavos Monto
+     * @param puntosBasicos Tasa en puntos básicos (1200 = 12 %)
+     * @param modo Redondeo de la fracción de centavo
+     */
+    public static long porcentaje(long centavos, long puntosBasicos, RoundingMode modo) {
+        return dividir(Math.multiplyExact(centavos, puntosBasicos), PUNTOS_BASICOS, modo);
+    }
+
+    /**
+     * Puntos básicos de una tasa expresada como fracción (0.12 = 1200)
+     */
+    public static long puntosBasicos(double tasa) {
+        return Math.round(tasa * PUNTOS_BASICOS);
+    }
+
+    /**
+     * División entera con el modo de redondeo indicado, igual que
+     * {@link BigDecimal#divide(BigDecimal, int, RoundingMode)} con escala 0
+     * @throws ArithmeticException si el divisor es 0, o si el modo es UNNECESSARY y hay resto
+     */
+    public static long dividir(long dividendo, long divisor, RoundingMode modo) {
+        long cociente = dividendo / divisor;
+        long resto = dividendo % divisor;
+        if (resto == 0) {
+            return cociente;
+        }
+        int signo = (dividendo < 0) == (divisor < 0) ? 1 : -1;
+        boolean alejar;
+        switch (modo) {
+            case UP:
+                alejar = true;
+                break;
+            case DOWN:
+                alejar = false;
+                break;
+            case CEILING:
+                alejar = signo > 0;
+                break;
+            case FLOOR:
+                alejar = signo < 0;
+                break;
+            case HALF_UP:
+            case HALF_DOWN:
+            case HALF_EVEN:
+                // Compara el doble del resto con el divisor sin desbordar
+                long restoAbs = Math.abs(resto);
+                long mitad = Math.abs(divisor) - restoAbs;
+                if (restoAbs > mitad) {
+                    alejar = true;
+                } else if (restoAbs < mitad) {
+                    alejar = false;
+                } else {
+                    alejar = modo == RoundingMode.HALF_UP
+                             || (modo == RoundingMode.HALF_EVEN && (cociente & 1) != 0);
+                }
+                break;
+            case UNNECESSARY:
+            default:
+                throw new ArithmeticException("La división de " + dividendo + " entre " + divisor + " no es exacta");
+        }
+        return alejar ? cociente + signo : cociente;
+    }
+
+    /**
+     * Suma en centavos los montos de una colección, redondeando cada uno a centavos
+     * @param elementos Facturas, pagos, movimientos...
+     * @param monto Monto de cada elemento en unidades
+     */
+    public static <T> long sumar(Collection<T> elementos, ToDoubleFunction<? super T> monto) {
+        long total = 0;
+        for (T elemento : elementos) {
+            total = Math.addExact(total, deDouble(monto.applyAsDouble(elemento)));
+        }
+        return total;
+    }
+
+    /**
+     * Lee una columna DECIMAL como centavos (0 si es NULL)
+     */
+    public static long leer(ResultSet rs, String columna) throws SQLException {
+        BigDecimal monto = rs.getBigDecimal(columna);
+        return monto != null ? deDecimal(monto, RoundingMode.HALF_UP) : 0;
+    }
+
+    /**
+     * Lee una columna DECIMAL (por posición) como centavos (0 si es NULL)
+     */
+    public static long leer(ResultSet rs, int columna) throws SQLException {
+        BigDecimal monto = rs.getBigDecimal(columna);
+        return monto != null ? deDecimal(monto, RoundingMode.HALF_UP) : 0;
+    }
+
+    /**
+     * Lee una columna de dinero en unidades, redondeada a centavos, para los modelos
+     * que guardan el monto como double
+     */
+    public static double leerMonto(ResultSet rs, String columna) throws SQLException {
+        return aDouble(leer(rs, columna));
+    }
+
+    /**
+     * Lee una columna de dinero (por posición) en unidades, redondeada a centavos
+     */
+    public static double leerMonto(ResultSet rs, int columna) throws SQLException {
+        return aDouble(leer(rs, columna));
+    }
+
+    /**
+     * Escribe centavos en un parámetro DECIMAL sin pasar por double
+     */
+    public static void escribir(PreparedStatement stmt, int indice, long centavos) throws SQLException {
+        stmt.setBigDecimal(indice, aDecimal(centavos));
+    }
+
+    /**
+     * Escribe un monto en unidades en un parámetro DECIMAL, redondeado a centavos
+     */
+    public static void escribir(PreparedStatement stmt, int indice, double monto) throws SQLException {
+        escribir(stmt, indice, deDouble(monto));
+    }
+}
@@ -11,7 +11,7 @@ import java.util.Properties;
  * Utilidad para enviar correos electrónicos
  */
 public class EmailUtil {
-    // Configuración del servidor SMTP de Gmail
+    // Configuración del servidor SMTP (Gmail por defecto)
     private static final Dotenv dotenv = Dotenv.configure()
                                            .directory(".")
                                            .ignoreIfMissing()
@@ -19,45 +19,95 @@ public class EmailUtil {
     private static final String EMAIL = dotenv.get("EMAIL");
     private static final String APP_PASS = dotenv.get("APP_PASS");
     
-    private static final String HOST = "smtp.gmail.com";
-    private static final int PORT = 587;
+    private static final String HOST = dotenv.get("SMTP_HOST", "smtp.gmail.com");
+    private static final int PORT = Integer.parseInt(dotenv.get("SMTP_PORT", "587"));
     private static final String USERNAME = EMAIL; 
     private static final String PASSWORD = APP_PASS; 
     private static final String FROM_NAME = "Distribuciones Omega";
     
     /**
-     * Envía un correo electrónico de alerta
-     * @param to Dirección de correo del destinatario
-     * @param subject Asunto del correo
-     * @param body Cuerpo del mensaje
-     * @return true si el envío fue exitoso
+     * Crea una sesión SMTP con la configuración del archivo .env
+     * @return Sesión lista para obtener un Transport
      */
-    public static boolean sendEmail(String to, String subject, String body) {
+    public static Session crearSesion() {
+        return crearSesion(HOST, PORT, USERNAME, PASSWORD);
+    }
+    
+    /**
+     * Crea una sesión SMTP para el servidor indicado. Sin usuario no se
+     * autentica ni se exige STARTTLS (útil para un servidor local de pruebas).
+     * @param host Servidor SMTP
+     * @param port Puerto
+     * @param usuario Usuario (y remitente), o null
+     * @param password Contraseña de aplicación
+     * @return Sesión lista para obtener un Transport
+     */
+    public static Session crearSesion(String host, int port, String usuario, String password) {
         Properties properties = new Properties();
-        properties.put("mail.smtp.auth", "true");
-        properties.put("mail.smtp.starttls.enable", "true");
-        properties.put("mail.smtp.host", HOST);
-        properties.put("mail.smtp.port", PORT);
+        boolean autenticar = usuario != null && !usuario.isEmpty();
+        properties.put("mail.smtp.auth", String.valueOf(autenticar));
+        properties.put("mail.smtp.starttls.enable", String.valueOf(autenticar));
+        properties.put("mail.smtp.host", host);
+        properties.put("mail.smtp.port", String.valueOf(port));
+        properties.put("mail.smtp.connectiontimeout", "10000");
+        properties.put("mail.smtp.timeout", "20000");
+        if (autenticar) {
+            properties.put("mail.smtp.user", usuario);
+        } else {
+            properties.put("mail.smtp.from", "alertas@localhost");
+        }
         
-        Session session = Session.getInstance(properties, new Authenticator() {
+        return Session.getInstance(properties, new Authenticator() {
             @Override
             protected PasswordAuthentication getPasswordAuthentication() {
-                return new PasswordAuthentication(USERNAME, PASSWORD);
+                return new PasswordAuthentication(usuario, password);
             }
         });
-        
+    }
+    
+    /**
+     * Arma un mensaje de texto plano para la sesión indicada
+     * @param session Sesión SMTP
+     * @param to Dirección de correo del destinatario
+     * @param subject Asunto del correo
+     * @param body Cuerpo del mensaje
+     * @return Mensaje listo para enviar
+     * @throws MessagingException Si alguna dirección no es válida
+     */
+    public static MimeMessage crearMensaje(Session session, String to, String subject, String body)
+            throws MessagingException {
+        MimeMessage message = new MimeMessage(session);
+        String remitente = session.getProperty("mail.smtp.user");
+        if (remitente == null) {
+            remitente = session.getProperty("mail.smtp.from");
+        }
+        try {
+            message.setFrom(new InternetAddress(remitente, FROM_NAME, "UTF-8"));
+        } catch (java.io.UnsupportedEncodingException e) {
+            message.setFrom(new InternetAddress(remitente));
+        }
+        message.setRecipients(Message.RecipientType.TO, InternetAddress.parse(to));
+        message.setSubject(subject, "UTF-8");
+        message.setText(body, "UTF-8");
+        return message;
+    }
+    
+    /**
+     * Envía un correo electrónico de alerta abriendo una conexión solo para él.
+     * Para avisos del sistema conviene usar {@link BandejaSalidaCorreo}, que los
+     * guarda, los agrupa y reutiliza la conexión.
+     * @param to Dirección de correo del destinatario
+     * @param subject Asunto del correo
+     * @param body Cuerpo del mensaje
+     * @return true si el envío fue exitoso
+     */
+    public static boolean sendEmail(String to, String subject, String body) {
         try {
-            Message message = new MimeMessage(session);
-            message.setFrom(new InternetAddress(USERNAME));
-            message.setRecipients(Message.RecipientType.TO, InternetAddress.parse(to));
-            message.setSubject(subject);
-            message.setText(body);
-            
-            Transport.send(message);
+            Transport.send(crearMensaje(crearSesion(), to, subject, body));
             return true;
         } catch (MessagingException e) {
             e.printStackTrace();
             return false;
         }
     }
-}
\ No newline at end of file
+}
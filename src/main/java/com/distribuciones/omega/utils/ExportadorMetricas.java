@@ -0,0 +1,159 @@
+package com.distribuciones.omega.utils;
+
+import com.sun.net.httpserver.HttpServer;
+import io.github.cdimascio.dotenv.Dotenv;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Publica las métricas de {@link MetricasBD}, de {@link TareasUI} y del pool en formato Prometheus.
+ *
+ * Con METRICAS_ARCHIVO se reescribe ese archivo cada METRICAS_INTERVALO_SEG (15 s
+ * por defecto), para el textfile collector de node_exporter o para revisarlo a mano.
+ * Con METRICAS_PUERTO se atiende http://localhost:PUERTO/metrics. Sin ninguna de
+ * las dos no se inicia nada.
+ */
+public class ExportadorMetricas {
+
+    private static final Logger LOGGER = Logger.getLogger(ExportadorMetricas.class.getName());
+    private static final String TIPO_CONTENIDO = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static ExportadorMetricas instance;
+
+    private ScheduledExecutorService worker;
+    private HttpServer servidor;
+    private Path archivo;
+
+    private ExportadorMetricas() {
+    }
+
+    public static synchronized ExportadorMetricas getInstance() {
+        if (instance == null) {
+            instance = new ExportadorMetricas();
+        }
+        return instance;
+    }
+
+    /**
+     * Inicia la exportación según la configuración del .env
+     */
+    public synchronized void iniciar() {
+        detener();
+        Dotenv dotenv = Dotenv.configure().directory(".").ignoreIfMissing().load();
+        String rutaArchivo = dotenv.get("METRICAS_ARCHIVO");
+        String puerto = dotenv.get("METRICAS_PUERTO");
+        int intervalo = 15;
+        try {
+            String valor = dotenv.get("METRICAS_INTERVALO_SEG");
+            if (valor != null && !valor.isBlank()) {
+                intervalo = Math.max(1, Integer.parseInt(valor.trim()));
+            }
+        } catch (NumberFormatException e) {
+            LOGGER.warning("METRICAS_INTERVALO_SEG inválido, usando " + intervalo);
+        }
+
+        if (rutaArchivo != null && !rutaArchivo.isBlank()) {
+            archivo = Paths.get(rutaArchivo.trim());
+            worker = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "exportador-metricas");
+                t.setDaemon(true);
+                return t;
+            });
+            worker.scheduleWithFixedDelay(this::escribirArchivo, intervalo, intervalo, TimeUnit.SECONDS);
+            LOGGER.info("Métricas en " + archivo.toAbsolutePath() + " cada " + intervalo + " s");
+        }
+
+        if (puerto != null && !puerto.isBlank()) {
+            try {
+                iniciarServidor(Integer.parseInt(puerto.trim()));
+            } catch (NumberFormatException | IOException e) {
+                LOGGER.warning("No se pudo iniciar el endpoint de métricas en el puerto " + puerto + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void iniciarServidor(int puerto) throws IOException {
+        servidor = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), puerto), 0);
+        servidor.createContext("/metrics", intercambio -> {
+            byte[] cuerpo = exportar().getBytes(StandardCharsets.UTF_8);
+            intercambio.getResponseHeaders().set("Content-Type", TIPO_CONTENIDO);
+            intercambio.sendResponseHeaders(200, cuerpo.length);
+            try (OutputStream salida = intercambio.getResponseBody()) {
+                salida.write(cuerpo);
+            }
+        });
+        servidor.setExecutor(Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "endpoint-metricas");
+            t.setDaemon(true);
+            return t;
+        }));
+        servidor.start();
+        LOGGER.info("Métricas disponibles en http://localhost:" + puerto + "/metrics");
+    }
+
+    /**
+     * Detiene la exportación, escribiendo el archivo una última vez
+     */
+    public synchronized void detener() {
+        if (worker != null) {
+            worker.shutdownNow();
+            worker = null;
+            escribirArchivo();
+        }
+        if (servidor != null) {
+            servidor.stop(0);
+            servidor = null;
+        }
+    }
+
+    /**
+     * Todas las métricas en formato de texto de Prometheus
+     */
+    public static String exportar() {
+        StringBuilder sb = new StringBuilder(16 * 1024);
+        MetricasBD.getInstance().exportarPrometheus(sb);
+        TareasUI.getInstance().exportarPrometheus(sb);
+
+        DBUtil.EstadisticasPool pool = DBUtil.getEstadisticasPool();
+        sb.append("# HELP omega_pool_conexiones Conexiones del pool por estado\n");
+        sb.append("# TYPE omega_pool_conexiones gauge\n");
+        sb.append("omega_pool_conexiones{estado=\"activas\"} ").append(pool.getActivas()).append('\n');
+        sb.append("omega_pool_conexiones{estado=\"inactivas\"} ").append(pool.getInactivas()).append('\n');
+        sb.append("omega_pool_conexiones{estado=\"maximo\"} ").append(pool.getMaximo()).append('\n');
+        sb.append("# HELP omega_pool_hilos_esperando Hilos esperando una conexión\n");
+        sb.append("# TYPE omega_pool_hilos_esperando gauge\n");
+        sb.append("omega_pool_hilos_esperando ").append(pool.getHilosEsperando()).append('\n');
+        return sb.toString();
+    }
+
+    private void escribirArchivo() {
+        Path destino = archivo;
+        if (destino == null) {
+            return;
+        }
+        try {
+            Path absoluto = destino.toAbsolutePath();
+            if (absoluto.getParent() != null) {
+                Files.createDirectories(absoluto.getParent());
+            }
+            // Escribir aparte y renombrar, para que quien lo lea nunca vea un archivo a medias
+            Path temporal = absoluto.resolveSibling(absoluto.getFileName() + ".tmp");
+            Files.writeString(temporal, exportar(), StandardCharsets.UTF_8);
+            Files.move(temporal, absoluto, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.warning("No se pudieron escribir las métricas en " + destino + ": " + e.getMessage());
+        }
+    }
+}
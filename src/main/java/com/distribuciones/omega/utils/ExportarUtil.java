@@ -1,24 +1,62 @@
 package com.distribuciones.omega.utils;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileOutputStream;
-import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 import org.apache.poi.ss.usermodel.*;
 import org.apache.poi.ss.util.CellRangeAddress;
-import org.apache.poi.xssf.usermodel.*;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 
 /**
- * Utilidad para exportar datos en diferentes formatos
+ * Utilidad para exportar datos en diferentes formatos.
+ * Las exportaciones a Excel y CSV se escriben en streaming: las filas se piden a un
+ * {@link OrigenFilas} y se vuelcan al archivo a medida que llegan, de modo que la
+ * memoria usada no depende de la cantidad de filas.
  */
 public class ExportarUtil {
     
+    // Filas de Excel que se mantienen en memoria; las anteriores se vuelcan a disco
+    private static final int VENTANA_FILAS_EXCEL = 200;
+    
+    // Cada cuántas filas se notifica el avance
+    private static final int INTERVALO_PROGRESO = 1000;
+    
+    // Ancho máximo de columna en caracteres al ajustar el Excel
+    private static final int ANCHO_MAXIMO_COLUMNA = 60;
+    
+    /**
+     * Origen de filas para una exportación. Se recorre una sola vez y entrega cada
+     * fila al destino, por ejemplo mientras lee un ResultSet.
+     */
+    @FunctionalInterface
+    public interface OrigenFilas {
+        void recorrer(Consumer<Object[]> destino) throws Exception;
+    }
+    
+    /**
+     * Recibe el avance de una exportación. Si lanza una excepción (por ejemplo al
+     * cancelar), la exportación se interrumpe y se borra el archivo incompleto.
+     */
+    @FunctionalInterface
+    public interface ProgresoExportacion {
+        void actualizar(long filasEscritas, long totalFilas);
+    }
+    
     /**
      * Exporta datos a un archivo CSV
      * @param datos Lista de datos a exportar
@@ -39,21 +77,8 @@ public class ExportarUtil {
                 return null;
             }
             
-            // Generar contenido CSV
-            StringBuilder csv = new StringBuilder();
-            
-            // Agregar encabezados
-            csv.append(String.join(",", encabezados)).append("\n");
-            
-            // Agregar datos
-            for (List<String> fila : datos) {
-                csv.append(String.join(",", fila)).append("\n");
-            }
-            
-            // Escribir a archivo
-            try (FileWriter writer = new FileWriter(file)) {
-                writer.write(csv.toString());
-            }
+            exportarCSV(file.getAbsolutePath(), encabezados.toArray(new String[0]),
+                    destino -> datos.forEach(fila -> destino.accept(fila.toArray())), datos.size(), null);
             
             return file.getAbsolutePath();
         } catch (Exception e) {
@@ -62,6 +87,50 @@ public class ExportarUtil {
         }
     }
     
+    /**
+     * Exporta filas a un archivo CSV (UTF-8) escribiéndolas a medida que llegan
+     * @param rutaArchivo Ruta donde se guardará el archivo
+     * @param columnas Nombres de las columnas
+     * @param origen Origen de las filas
+     * @param totalFilas Total esperado de filas (para el progreso), o -1 si se desconoce
+     * @param progreso Receptor del avance, puede ser null
+     * @return Número de filas escritas
+     * @throws Exception Si ocurre un error durante la exportación
+     */
+    public static long exportarCSV(
+            String rutaArchivo,
+            String[] columnas,
+            OrigenFilas origen,
+            long totalFilas,
+            ProgresoExportacion progreso) throws Exception {
+        
+        Path ruta = Path.of(rutaArchivo);
+        long[] escritas = {0};
+        try (Writer writer = new BufferedWriter(
+                new OutputStreamWriter(Files.newOutputStream(ruta), StandardCharsets.UTF_8), 64 * 1024)) {
+            // BOM para que Excel reconozca las tildes al abrir el CSV
+            writer.write('\uFEFF');
+            escribirFilaCSV(writer, columnas);
+            
+            origen.recorrer(fila -> {
+                try {
+                    escribirFilaCSV(writer, fila);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                notificarAvance(progreso, ++escritas[0], totalFilas);
+            });
+        } catch (Exception e) {
+            Files.deleteIfExists(ruta);
+            throw e;
+        }
+        
+        if (progreso != null) {
+            progreso.actualizar(escritas[0], totalFilas);
+        }
+        return escritas[0];
+    }
+    
     /**
      * Exporta datos a un archivo Excel (XLSX)
      * @param rutaArchivo Ruta donde se guardará el archivo
@@ -81,9 +150,40 @@ public class ExportarUtil {
             String[] columnas, 
             List<Object[]> datos) throws Exception {
         
-        try (XSSFWorkbook workbook = new XSSFWorkbook()) {
+        exportarExcel(rutaArchivo, titulo, subtitulo, estadisticas, columnas,
+                destino -> datos.forEach(destino), datos.size(), null);
+        return true;
+    }
+    
+    /**
+     * Exporta filas a un archivo Excel (XLSX) en streaming: solo se mantiene en
+     * memoria una ventana de filas y el resto se vuelca a un temporal comprimido.
+     * @param rutaArchivo Ruta donde se guardará el archivo
+     * @param titulo Título del reporte
+     * @param subtitulo Subtítulo o descripción del reporte
+     * @param estadisticas Mapa de estadísticas a incluir (clave-valor)
+     * @param columnas Nombres de las columnas
+     * @param origen Origen de las filas
+     * @param totalFilas Total esperado de filas (para el progreso), o -1 si se desconoce
+     * @param progreso Receptor del avance, puede ser null
+     * @return Número de filas de datos escritas
+     * @throws Exception Si ocurre un error durante la exportación
+     */
+    public static long exportarExcel(
+            String rutaArchivo,
+            String titulo,
+            String subtitulo,
+            Map<String, String> estadisticas,
+            String[] columnas,
+            OrigenFilas origen,
+            long totalFilas,
+            ProgresoExportacion progreso) throws Exception {
+        
+        SXSSFWorkbook workbook = new SXSSFWorkbook(VENTANA_FILAS_EXCEL);
+        workbook.setCompressTempFiles(true);
+        try {
             // Crear hoja de cálculo
-            XSSFSheet sheet = workbook.createSheet("Reporte");
+            Sheet sheet = workbook.createSheet("Reporte");
             
             // Estilos
             CellStyle estiloTitulo = crearEstiloTitulo(workbook);
@@ -134,16 +234,20 @@ public class ExportarUtil {
             }
             
             // Encabezados de columna
+            int[] anchos = new int[columnas.length];
             Row filaEncabezados = sheet.createRow(filaActual++);
             for (int i = 0; i < columnas.length; i++) {
                 Cell celda = filaEncabezados.createCell(i);
                 celda.setCellValue(columnas[i]);
                 celda.setCellStyle(estiloEncabezado);
+                anchos[i] = columnas[i].length();
             }
             
-            // Datos
-            for (Object[] fila : datos) {
-                Row filaExcel = sheet.createRow(filaActual++);
+            // Datos: se escriben a medida que el origen los entrega
+            int[] siguienteFila = {filaActual};
+            long[] escritas = {0};
+            origen.recorrer(fila -> {
+                Row filaExcel = sheet.createRow(siguienteFila[0]++);
                 
                 for (int i = 0; i < fila.length; i++) {
                     Cell celda = filaExcel.createCell(i);
@@ -168,23 +272,37 @@ public class ExportarUtil {
                     if (i != 4) { // No aplicar estilo a columnas con formato especial
                         celda.setCellStyle(estiloDato);
                     }
+                    
+                    // autoSizeColumn necesitaría todas las filas en memoria; se estima por longitud
+                    if (i < anchos.length && fila[i] != null) {
+                        anchos[i] = Math.max(anchos[i], fila[i].toString().length());
+                    }
                 }
-            }
+                notificarAvance(progreso, ++escritas[0], totalFilas);
+            });
             
             // Ajustar ancho de columnas
             for (int i = 0; i < columnas.length; i++) {
-                sheet.autoSizeColumn(i);
+                sheet.setColumnWidth(i, (Math.min(anchos[i], ANCHO_MAXIMO_COLUMNA) + 3) * 256);
             }
             
             // Guardar archivo
-            try (FileOutputStream outputStream = new FileOutputStream(rutaArchivo)) {
+            try (OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(rutaArchivo))) {
                 workbook.write(outputStream);
             }
             
-            return true;
+            if (progreso != null) {
+                progreso.actualizar(escritas[0], totalFilas);
+            }
+            return escritas[0];
         } catch (Exception e) {
+            Files.deleteIfExists(Path.of(rutaArchivo));
             e.printStackTrace();
             throw e;
+        } finally {
+            // Borra los temporales de las filas ya volcadas
+            workbook.dispose();
+            workbook.close();
         }
     }
     
@@ -338,9 +456,9 @@ public class ExportarUtil {
     
     // Métodos auxiliares para crear estilos en Excel
     
-    private static CellStyle crearEstiloTitulo(XSSFWorkbook workbook) {
+    private static CellStyle crearEstiloTitulo(Workbook workbook) {
         CellStyle estilo = workbook.createCellStyle();
-        XSSFFont fuente = workbook.createFont();
+        Font fuente = workbook.createFont();
         fuente.setBold(true);
         fuente.setFontHeightInPoints((short) 16);
         estilo.setFont(fuente);
@@ -348,18 +466,18 @@ public class ExportarUtil {
         return estilo;
     }
     
-    private static CellStyle crearEstiloSubtitulo(XSSFWorkbook workbook) {
+    private static CellStyle crearEstiloSubtitulo(Workbook workbook) {
         CellStyle estilo = workbook.createCellStyle();
-        XSSFFont fuente = workbook.createFont();
+        Font fuente = workbook.createFont();
         fuente.setFontHeightInPoints((short) 12);
         estilo.setFont(fuente);
         estilo.setAlignment(HorizontalAlignment.CENTER);
         return estilo;
     }
     
-    private static CellStyle crearEstiloEncabezado(XSSFWorkbook workbook) {
+    private static CellStyle crearEstiloEncabezado(Workbook workbook) {
         CellStyle estilo = workbook.createCellStyle();
-        XSSFFont fuente = workbook.createFont();
+        Font fuente = workbook.createFont();
         fuente.setBold(true);
         estilo.setFont(fuente);
         estilo.setFillForegroundColor(IndexedColors.GREY_25_PERCENT.getIndex());
@@ -371,7 +489,7 @@ public class ExportarUtil {
         return estilo;
     }
     
-    private static CellStyle crearEstiloDato(XSSFWorkbook workbook) {
+    private static CellStyle crearEstiloDato(Workbook workbook) {
         CellStyle estilo = workbook.createCellStyle();
         estilo.setBorderBottom(BorderStyle.THIN);
         estilo.setBorderTop(BorderStyle.THIN);
@@ -380,7 +498,7 @@ public class ExportarUtil {
         return estilo;
     }
     
-    private static CellStyle crearEstiloMoneda(XSSFWorkbook workbook) {
+    private static CellStyle crearEstiloMoneda(Workbook workbook) {
         CellStyle estilo = workbook.createCellStyle();
         estilo.setBorderBottom(BorderStyle.THIN);
         estilo.setBorderTop(BorderStyle.THIN);
@@ -390,11 +508,42 @@ public class ExportarUtil {
         return estilo;
     }
     
-    private static CellStyle crearEstiloEstadistica(XSSFWorkbook workbook) {
+    private static CellStyle crearEstiloEstadistica(Workbook workbook) {
         CellStyle estilo = workbook.createCellStyle();
-        XSSFFont fuente = workbook.createFont();
+        Font fuente = workbook.createFont();
         fuente.setBold(true);
         estilo.setFont(fuente);
         return estilo;
     }
+    
+    private static void notificarAvance(ProgresoExportacion progreso, long escritas, long totalFilas) {
+        if (progreso != null && escritas % INTERVALO_PROGRESO == 0) {
+            progreso.actualizar(escritas, totalFilas);
+        }
+    }
+    
+    private static void escribirFilaCSV(Writer writer, Object[] fila) throws IOException {
+        for (int i = 0; i < fila.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            if (fila[i] != null) {
+                writer.write(escaparCSV(fila[i].toString()));
+            }
+        }
+        writer.write('\n');
+    }
+    
+    /**
+     * Encierra el valor entre comillas si contiene separadores, comillas o saltos de línea
+     */
+    static String escaparCSV(String valor) {
+        for (int i = 0; i < valor.length(); i++) {
+            char c = valor.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return '"' + valor.replace("\"", "\"\"") + '"';
+            }
+        }
+        return valor;
+    }
 }
\ No newline at end of file
@@ -1,24 +1,36 @@
 package com.distribuciones.omega.utils;
 
 import com.distribuciones.omega.service.AlertaStockService;
+import com.distribuciones.omega.service.MonitorUmbralesStock;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
- * Monitor de inventario que verifica periódicamente el stock bajo
+ * Monitor de inventario. Conecta las alertas de stock con el detector de umbrales
+ * (que avisa en cada venta que deja un producto bajo mínimo) y concilia
+ * periódicamente contra el catálogo completo para recoger los cambios hechos
+ * desde otras terminales.
  */
 public class InventarioMonitor {
-    
+
+    private static final Logger LOGGER = Logger.getLogger(InventarioMonitor.class.getName());
+
     private static InventarioMonitor instance;
     private final AlertaStockService alertaStockService;
+    private final MonitorUmbralesStock umbrales;
     private ScheduledExecutorService scheduler;
     private boolean running = false;
-    
+
     private InventarioMonitor() {
         this.alertaStockService = new AlertaStockService();
+        this.umbrales = MonitorUmbralesStock.getInstance();
+        this.umbrales.agregarOyente(alertaStockService::notificarStockBajo);
     }
-    
+
     /**
      * Obtiene la instancia única del monitor (Singleton)
      * @return Instancia del monitor
@@ -29,43 +41,62 @@ public class InventarioMonitor {
         }
         return instance;
     }
-    
+
     /**
-     * Inicia el monitoreo periódico del inventario
-     * @param intervalHours Intervalo de verificación en horas
+     * Inicia la conciliación periódica del inventario
+     * @param intervalHours Intervalo de conciliación en horas
      */
-    public void iniciarMonitoreo(int intervalHours) {
+    public synchronized void iniciarMonitoreo(int intervalHours) {
         if (running) {
             detenerMonitoreo();
         }
-        
-        scheduler = Executors.newScheduledThreadPool(1);
-        scheduler.scheduleAtFixedRate(
-            () -> alertaStockService.verificarStockBajo(),
-            1,                 // Delay inicial (1 hora)
-            intervalHours,     // Periodo entre ejecuciones
-            TimeUnit.HOURS
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread hilo = new Thread(r, "inventario-conciliacion");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        scheduler.scheduleWithFixedDelay(
+            this::conciliar,
+            1,                       // Primera conciliación al minuto (arma el conjunto de productos bajo mínimo)
+            intervalHours * 60L,     // Periodo entre conciliaciones
+            TimeUnit.MINUTES
         );
-        
+
         running = true;
-        System.out.println("Monitoreo de inventario iniciado con intervalo de " + intervalHours + " horas");
+        LOGGER.info("Conciliación de inventario iniciada con intervalo de " + intervalHours + " horas");
     }
-    
+
     /**
      * Detiene el monitoreo del inventario
      */
-    public void detenerMonitoreo() {
+    public synchronized void detenerMonitoreo() {
         if (scheduler != null && !scheduler.isShutdown()) {
-            scheduler.shutdown();
+            scheduler.shutdownNow();
             running = false;
-            System.out.println("Monitoreo de inventario detenido");
+            LOGGER.info("Monitoreo de inventario detenido. " + umbrales.getEstadisticas());
         }
     }
-    
+
     /**
-     * Verifica inmediatamente el inventario
+     * Concilia inmediatamente el inventario
      */
-    public void verificarAhora() {
-        new Thread(() -> alertaStockService.verificarStockBajo()).start();
+    public synchronized void verificarAhora() {
+        if (running) {
+            scheduler.execute(this::conciliar);
+        } else {
+            CompletableFuture.runAsync(this::conciliar);
+        }
+    }
+
+    private void conciliar() {
+        try {
+            int detectados = umbrales.reconciliar();
+            if (detectados > 0) {
+                LOGGER.info("Conciliación de inventario: " + detectados + " productos bajo mínimo");
+            }
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Error al conciliar el inventario", e);
+        }
     }
-}
\ No newline at end of file
+}
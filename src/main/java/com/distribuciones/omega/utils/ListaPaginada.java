@@ -0,0 +1,196 @@
+package com.distribuciones.omega.utils;
+
+import javafx.collections.ObservableListBase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Lista de solo lectura para una TableView con muchas filas que se cargan por páginas.
+ *
+ * La tabla solo pide las filas visibles; si la página de una fila no está en memoria se
+ * devuelve null (la fila queda vacía), se pide la página en segundo plano y, al llegar,
+ * se avisa a la tabla para que la pinte. También se piden las páginas vecinas, así al
+ * desplazarse la siguiente suele estar lista. Solo se guardan las últimas páginas usadas.
+ *
+ * El cargador pagina por clave: recibe la última fila de la página anterior. Por eso
+ * se recuerda la última fila de cada página cargada, aunque la página se descarte, y
+ * para llegar a una página lejana se cargan antes las que faltan.
+ *
+ * <pre>
+ * ListaPaginada&lt;Factura&gt; lista = new ListaPaginada&lt;&gt;(total, 100, 20,
+ *         (despuesDe, limite) -&gt; service.obtenerPagina(..., despuesDe, limite),
+ *         ejecutor, Platform::runLater);
+ * tabla.setItems(lista);
+ * </pre>
+ *
+ * @param <T> Tipo de fila
+ */
+public class ListaPaginada<T> extends ObservableListBase<T> {
+
+    private static final Logger LOGGER = Logger.getLogger(ListaPaginada.class.getName());
+
+    /**
+     * Carga una página a partir de la última fila de la anterior
+     */
+    @FunctionalInterface
+    public interface CargadorPagina<T> {
+        /**
+         * @param despuesDe Última fila de la página anterior, o null para la primera
+         * @param limite Filas por página
+         * @return Filas de la página, en orden
+         */
+        List<T> cargar(T despuesDe, int limite);
+    }
+
+    private final int total;
+    private final int tamanoPagina;
+    private final CargadorPagina<T> cargador;
+    private final Executor ejecutor;
+    private final Executor entrega;
+
+    // Estado protegido por el monitor de esta instancia
+    private final Map<Integer, List<T>> paginas;
+    private final List<T> ultimas = new ArrayList<>();
+    private final Set<Integer> pendientes = new HashSet<>();
+    private volatile boolean cerrada;
+
+    // Métricas
+    private final LongAdder cargas = new LongAdder();
+
+    /**
+     * @param total Número de filas (por ejemplo, un COUNT previo)
+     * @param tamanoPagina Filas por página
+     * @param maxPaginas Páginas que se guardan en memoria
+     * @param cargador Consulta de una página
+     * @param ejecutor Hilo donde se cargan las páginas; uno solo para que se carguen en orden
+     * @param entrega Hilo donde se avisa a la tabla (Platform::runLater)
+     */
+    public ListaPaginada(int total, int tamanoPagina, int maxPaginas, CargadorPagina<T> cargador,
+                         Executor ejecutor, Executor entrega) {
+        this.total = total;
+        this.tamanoPagina = tamanoPagina;
+        this.cargador = cargador;
+        this.ejecutor = ejecutor;
+        this.entrega = entrega;
+        this.paginas = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, List<T>> eldest) {
+                return size() > maxPaginas;
+            }
+        };
+    }
+
+    /**
+     * Fila en la posición indicada, o null si su página todavía se está cargando
+     */
+    @Override
+    public T get(int indice) {
+        if (indice < 0 || indice >= total) {
+            throw new IndexOutOfBoundsException("Índice " + indice + " fuera de la lista de " + total);
+        }
+        int pagina = indice / tamanoPagina;
+        T fila;
+        synchronized (this) {
+            List<T> filas = paginas.get(pagina);
+            if (filas == null) {
+                solicitar(pagina);
+                filas = paginas.get(pagina);
+            }
+            fila = filas != null && indice % tamanoPagina < filas.size() ? filas.get(indice % tamanoPagina) : null;
+            // Las vecinas, para que estén listas al desplazarse
+            solicitar(pagina + 1);
+            solicitar(pagina - 1);
+        }
+        return fila;
+    }
+
+    @Override
+    public int size() {
+        return total;
+    }
+
+    /**
+     * Deja de cargar páginas y de avisar a la tabla (al generar otro reporte)
+     */
+    public void cerrar() {
+        cerrada = true;
+    }
+
+    /**
+     * Páginas consultadas al cargador
+     */
+    public long getCargas() {
+        return cargas.sum();
+    }
+
+    private synchronized void solicitar(int pagina) {
+        if (cerrada || pagina < 0 || (long) pagina * tamanoPagina >= total
+                || paginas.containsKey(pagina) || !pendientes.add(pagina)) {
+            return;
+        }
+        ejecutor.execute(() -> cargar(pagina));
+    }
+
+    private void cargar(int pagina) {
+        try {
+            // Para pedir la página hace falta la última fila de la anterior: se cargan
+            // primero las que falten hasta ella
+            while (!cerrada) {
+                int siguiente;
+                T despuesDe;
+                synchronized (this) {
+                    if (paginas.containsKey(pagina)) {
+                        return;
+                    }
+                    siguiente = Math.min(ultimas.size(), pagina);
+                    despuesDe = siguiente > 0 ? ultimas.get(siguiente - 1) : null;
+                }
+                List<T> filas = cargador.cargar(despuesDe, tamanoPagina);
+                cargas.increment();
+                synchronized (this) {
+                    paginas.put(siguiente, filas);
+                    if (ultimas.size() == siguiente && !filas.isEmpty()) {
+                        ultimas.add(filas.get(filas.size() - 1));
+                    }
+                }
+                avisar(siguiente, filas.size());
+                if (siguiente == pagina || filas.size() < tamanoPagina) {
+                    return;
+                }
+            }
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "No se pudo cargar la página " + pagina, e);
+        } finally {
+            synchronized (this) {
+                pendientes.remove(pagina);
+            }
+        }
+    }
+
+    private void avisar(int pagina, int filas) {
+        int desde = pagina * tamanoPagina;
+        int hasta = Math.min(desde + filas, total);
+        if (hasta <= desde) {
+            return;
+        }
+        entrega.execute(() -> {
+            if (cerrada) {
+                return;
+            }
+            // Las filas pasaron de vacías (null) a cargadas
+            beginChange();
+            nextReplace(desde, hasta, Collections.nCopies(hasta - desde, null));
+            endChange();
+        });
+    }
+}
@@ -0,0 +1,138 @@
+package com.distribuciones.omega.utils;
+
+import ch.qos.logback.classic.LoggerContext;
+import io.github.cdimascio.dotenv.Dotenv;
+import org.slf4j.ILoggerFactory;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+import org.slf4j.bridge.SLF4JBridgeHandler;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Configuración del registro y campos de contexto.
+ *
+ * Las clases siguen usando java.util.logging; {@link #configurar()} redirige esos
+ * registros a logback (ver logback.xml), que los escribe de forma asíncrona. Los
+ * campos de contexto (factura, sku, cliente...) viajan en el MDC y salen como campos
+ * propios en el archivo JSON; el identificador de la terminal se agrega a todos.
+ *
+ * En las rutas de venta, los mensajes de detalle van con nivel FINE y con el
+ * proveedor del mensaje ({@code LOGGER.fine(() -> ...)}) o detrás de
+ * {@code LOGGER.isLoggable(Level.FINE)}, para no armar textos que no se escriben.
+ */
+public final class LogUtil {
+
+    private static boolean configurado;
+
+    private LogUtil() {
+    }
+
+    /**
+     * Instala el puente java.util.logging → SLF4J y fija nivel, carpeta y terminal
+     * desde el .env (LOG_NIVEL, LOG_DIR, TERMINAL_ID). Debe llamarse al arrancar,
+     * antes de registrar nada.
+     */
+    public static synchronized void configurar() {
+        if (configurado) {
+            return;
+        }
+        Dotenv dotenv = Dotenv.configure().directory(".").ignoreIfMissing().load();
+        copiarPropiedad(dotenv, "LOG_NIVEL");
+        copiarPropiedad(dotenv, "LOG_DIR");
+
+        SLF4JBridgeHandler.removeHandlersForRootLogger();
+        SLF4JBridgeHandler.install();
+
+        String terminal = dotenv.get("TERMINAL_ID");
+        if (terminal == null || terminal.isBlank()) {
+            terminal = SecuenciaDocumentos.nombreEquipo();
+        }
+        ILoggerFactory fabrica = LoggerFactory.getILoggerFactory();
+        if (fabrica instanceof LoggerContext) {
+            ((LoggerContext) fabrica).putProperty("terminal", terminal.trim());
+        }
+        configurado = true;
+    }
+
+    // logback resuelve ${LOG_NIVEL} y ${LOG_DIR} desde las propiedades del sistema
+    private static void copiarPropiedad(Dotenv dotenv, String clave) {
+        String valor = dotenv.get(clave);
+        if (valor != null && !valor.isBlank() && System.getProperty(clave) == null) {
+            System.setProperty(clave, valor.trim());
+        }
+    }
+
+    /**
+     * Vacía las colas de los appenders asíncronos. Se llama al cerrar la aplicación.
+     */
+    public static void cerrar() {
+        ILoggerFactory fabrica = LoggerFactory.getILoggerFactory();
+        if (fabrica instanceof LoggerContext) {
+            ((LoggerContext) fabrica).stop();
+        }
+    }
+
+    /**
+     * Agrega campos de contexto a todos los registros del hilo actual hasta cerrar
+     * el resultado:
+     * <pre>
+     * try (LogUtil.Contexto ctx = LogUtil.con("factura", numero)) { ... }
+     * </pre>
+     * @param campos Pares clave, valor
+     */
+    public static Contexto con(Object... campos) {
+        return new Contexto(campos);
+    }
+
+    /**
+     * Registra un evento con campos estructurados, solo si el nivel está habilitado
+     * @param logger Logger de la clase
+     * @param nivel Nivel del evento
+     * @param mensaje Mensaje fijo (los datos variables van en los campos)
+     * @param campos Pares clave, valor
+     */
+    @SuppressWarnings("try") // El contexto solo rodea el registro
+    public static void evento(Logger logger, Level nivel, String mensaje, Object... campos) {
+        if (!logger.isLoggable(nivel)) {
+            return;
+        }
+        try (Contexto contexto = new Contexto(campos)) {
+            logger.log(nivel, mensaje);
+        }
+    }
+
+    /**
+     * Campos de contexto activos; al cerrarse restaura los valores anteriores
+     */
+    public static final class Contexto implements AutoCloseable {
+        private final String[] claves;
+        private final String[] anteriores;
+
+        private Contexto(Object[] campos) {
+            int pares = campos.length / 2;
+            claves = new String[pares];
+            anteriores = new String[pares];
+            for (int i = 0; i < pares; i++) {
+                claves[i] = String.valueOf(campos[2 * i]);
+                anteriores[i] = MDC.get(claves[i]);
+                Object valor = campos[2 * i + 1];
+                if (valor != null) {
+                    MDC.put(claves[i], String.valueOf(valor));
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            for (int i = claves.length - 1; i >= 0; i--) {
+                if (anteriores[i] == null) {
+                    MDC.remove(claves[i]);
+                } else {
+                    MDC.put(claves[i], anteriores[i]);
+                }
+            }
+        }
+    }
+}
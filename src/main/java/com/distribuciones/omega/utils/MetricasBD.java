@@ -0,0 +1,495 @@
+package com.distribuciones.omega.utils;
+
+import io.github.cdimascio.dotenv.Dotenv;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.FileHandler;
+import java.util.logging.Logger;
+import java.util.logging.SimpleFormatter;
+import java.util.regex.Pattern;
+
+/**
+ * Métricas de la capa de acceso a datos.
+ *
+ * DBUtil entrega las conexiones envueltas por {@link #instrumentar(Connection)}, así
+ * que todos los repositorios y DAOs quedan cubiertos sin tocarlos: por cada sentencia
+ * (con los literales reemplazados por "?") se cuentan ejecuciones, filas, errores y un
+ * histograma de tiempos. También se registra la espera por conexiones del pool y las
+ * operaciones de {@link Traza}. Las sentencias que superan SQL_LENTO_MS (500 ms por
+ * defecto) van al registro de consultas lentas, y a SQL_LENTO_ARCHIVO si se configuró.
+ *
+ * {@link #exportarPrometheus(StringBuilder)} produce el formato de texto de Prometheus;
+ * ExportadorMetricas lo publica en un archivo o en un endpoint local.
+ */
+public class MetricasBD {
+
+    private static final Logger LOGGER = Logger.getLogger(MetricasBD.class.getName());
+    private static final Logger LOGGER_LENTAS = Logger.getLogger("com.distribuciones.omega.sql.lentas");
+
+    /** Límites de los histogramas, en segundos */
+    static final double[] LIMITES = {0.001, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+
+    // Máximo de sentencias distintas; las demás se acumulan juntas
+    private static final int MAXIMO_SENTENCIAS = 500;
+    private static final int MAXIMO_LARGO_SQL = 200;
+    private static final String OTRAS = "(otras)";
+
+    private static final Pattern TEXTO = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMERO = Pattern.compile("\\b\\d+(?:\\.\\d+)?\\b");
+    private static final Pattern ESPACIOS = Pattern.compile("\\s+");
+
+    private static MetricasBD instance;
+
+    private final boolean habilitado;
+    private final long umbralLentoNanos;
+
+    private final Map<String, Sentencia> porSql = new ConcurrentHashMap<>();
+    private final Map<String, Sentencia> porSentencia = new ConcurrentHashMap<>();
+    private final Map<String, Operacion> operaciones = new ConcurrentHashMap<>();
+    private final Histograma esperaConexion = new Histograma();
+    private final LongAdder fallosConexion = new LongAdder();
+    private volatile long msHastaLogin = -1;
+    private final LongAdder consultasLentas = new LongAdder();
+
+    MetricasBD(boolean habilitado, long umbralLentoMs) {
+        this.habilitado = habilitado;
+        this.umbralLentoNanos = umbralLentoMs < 0 ? Long.MAX_VALUE : umbralLentoMs * 1_000_000L;
+    }
+
+    /**
+     * Obtiene la instancia compartida, configurada con METRICAS_BD (true por defecto),
+     * SQL_LENTO_MS y SQL_LENTO_ARCHIVO
+     */
+    public static synchronized MetricasBD getInstance() {
+        if (instance == null) {
+            Dotenv dotenv = Dotenv.configure().directory(".").ignoreIfMissing().load();
+            boolean habilitado = !"false".equalsIgnoreCase(valor(dotenv, "METRICAS_BD"));
+            long umbral = 500;
+            try {
+                String texto = valor(dotenv, "SQL_LENTO_MS");
+                if (texto != null) {
+                    umbral = Long.parseLong(texto);
+                }
+            } catch (NumberFormatException e) {
+                LOGGER.warning("SQL_LENTO_MS inválido, usando " + umbral);
+            }
+            configurarArchivoLentas(valor(dotenv, "SQL_LENTO_ARCHIVO"));
+            instance = new MetricasBD(habilitado, umbral);
+        }
+        return instance;
+    }
+
+    private static String valor(Dotenv dotenv, String clave) {
+        String valor = dotenv.get(clave);
+        return valor == null || valor.isBlank() ? null : valor.trim();
+    }
+
+    private static void configurarArchivoLentas(String archivo) {
+        if (archivo == null) {
+            return;
+        }
+        try {
+            FileHandler handler = new FileHandler(archivo, 5_000_000, 3, true);
+            handler.setFormatter(new SimpleFormatter());
+            LOGGER_LENTAS.addHandler(handler);
+        } catch (IOException e) {
+            LOGGER.warning("No se pudo abrir el registro de consultas lentas " + archivo + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Envuelve una conexión para medir todas las sentencias que se creen con ella
+     * @param conexion Conexión del pool
+     * @return La conexión instrumentada (o la misma si las métricas están deshabilitadas)
+     */
+    public Connection instrumentar(Connection conexion) {
+        if (!habilitado || conexion == null) {
+            return conexion;
+        }
+        return (Connection) crearProxy(Connection.class, (p, metodo, args) -> {
+            Object resultado = invocar(conexion, metodo, args);
+            String nombre = metodo.getName();
+            if (resultado instanceof Statement) {
+                Sentencia sentencia = nombre.startsWith("prepare") && args != null && args[0] instanceof String
+                        ? sentencia((String) args[0])
+                        : null;
+                return envolverSentencia((Statement) resultado, sentencia);
+            }
+            return resultado;
+        });
+    }
+
+    private Object envolverSentencia(Statement statement, Sentencia preparada) {
+        Class<? extends Statement> tipo = statement instanceof CallableStatement ? CallableStatement.class
+                : statement instanceof PreparedStatement ? PreparedStatement.class
+                : Statement.class;
+        // SQL del primer addBatch(String) de una sentencia simple
+        String[] sqlLote = new String[1];
+
+        return crearProxy(tipo, (p, metodo, args) -> {
+            String nombre = metodo.getName();
+            if (nombre.equals("addBatch") && args != null && args.length == 1 && sqlLote[0] == null) {
+                sqlLote[0] = (String) args[0];
+            }
+            if (!nombre.startsWith("execute")) {
+                return invocar(statement, metodo, args);
+            }
+
+            Sentencia sentencia = args != null && args.length > 0 && args[0] instanceof String
+                    ? sentencia((String) args[0])
+                    : preparada != null ? preparada
+                    : sentencia(sqlLote[0] != null ? sqlLote[0] : "(lote)");
+            long inicio = System.nanoTime();
+            Object resultado;
+            try {
+                resultado = invocar(statement, metodo, args);
+            } catch (Throwable t) {
+                long nanos = System.nanoTime() - inicio;
+                sentencia.errores.increment();
+                sentencia.tiempos.registrar(nanos);
+                Traza.registrarConsulta(nanos);
+                throw t;
+            }
+            long nanos = System.nanoTime() - inicio;
+            sentencia.tiempos.registrar(nanos);
+            Traza.registrarConsulta(nanos);
+
+            long filas = filasAfectadas(statement, resultado);
+            if (filas > 0) {
+                sentencia.filas.add(filas);
+            }
+            if (nanos >= umbralLentoNanos) {
+                registrarLenta(sentencia, nanos, filas);
+            }
+            if (resultado instanceof ResultSet) {
+                return contarFilas((ResultSet) resultado, sentencia);
+            }
+            return resultado;
+        });
+    }
+
+    private static long filasAfectadas(Statement statement, Object resultado) throws Exception {
+        if (resultado instanceof Integer) {
+            return (Integer) resultado;
+        }
+        if (resultado instanceof Long) {
+            return (Long) resultado;
+        }
+        if (resultado instanceof int[]) {
+            long total = 0;
+            for (int n : (int[]) resultado) {
+                total += Math.max(n, 0);
+            }
+            return total;
+        }
+        if (resultado instanceof long[]) {
+            long total = 0;
+            for (long n : (long[]) resultado) {
+                total += Math.max(n, 0);
+            }
+            return total;
+        }
+        if (Boolean.FALSE.equals(resultado)) {
+            return statement.getUpdateCount();
+        }
+        return 0;
+    }
+
+    /**
+     * Cuenta las filas leídas del resultado de una consulta
+     */
+    private Object contarFilas(ResultSet resultSet, Sentencia sentencia) {
+        return crearProxy(ResultSet.class, (p, metodo, args) -> {
+            Object resultado = invocar(resultSet, metodo, args);
+            if (Boolean.TRUE.equals(resultado) && metodo.getName().equals("next")) {
+                sentencia.filas.increment();
+            }
+            return resultado;
+        });
+    }
+
+    private void registrarLenta(Sentencia sentencia, long nanos, long filas) {
+        consultasLentas.increment();
+        Traza traza = Traza.actual();
+        LOGGER_LENTAS.warning(String.format("Consulta lenta: %.1f ms%s%s - %s",
+                nanos / 1e6,
+                filas > 0 ? ", " + filas + " filas" : "",
+                traza != null ? ", en " + traza.getOperacion() : "",
+                sentencia.sql));
+    }
+
+    /**
+     * Registra el tiempo que tardó DBUtil en obtener una conexión del pool
+     */
+    public void registrarEsperaConexion(long nanos, boolean exitosa) {
+        esperaConexion.registrar(nanos);
+        if (!exitosa) {
+            fallosConexion.increment();
+        }
+    }
+
+    /**
+     * Registra cuánto tardó la pantalla de login en estar lista desde el inicio de la JVM
+     */
+    public void registrarTiempoHastaLogin(long ms) {
+        msHastaLogin = ms;
+    }
+
+    /**
+     * Registra una operación terminada de {@link Traza}
+     */
+    void registrarOperacion(String operacion, long nanos, long consultas, long nanosBD) {
+        Operacion o = operaciones.computeIfAbsent(operacion, Operacion::new);
+        o.tiempos.registrar(nanos);
+        o.consultas.add(consultas);
+        o.nanosBD.add(nanosBD);
+    }
+
+    private Sentencia sentencia(String sql) {
+        Sentencia sentencia = porSql.get(sql);
+        if (sentencia != null) {
+            return sentencia;
+        }
+        String normalizada = normalizar(sql);
+        sentencia = porSentencia.get(normalizada);
+        if (sentencia == null) {
+            String clave = porSentencia.size() < MAXIMO_SENTENCIAS ? normalizada : OTRAS;
+            sentencia = porSentencia.computeIfAbsent(clave, Sentencia::new);
+        }
+        if (porSql.size() < MAXIMO_SENTENCIAS * 4) {
+            porSql.put(sql, sentencia);
+        }
+        return sentencia;
+    }
+
+    /**
+     * Quita literales y espacios repetidos para agrupar las sentencias que solo
+     * difieren en sus valores
+     */
+    static String normalizar(String sql) {
+        String s = TEXTO.matcher(sql).replaceAll("?");
+        s = NUMERO.matcher(s).replaceAll("?");
+        s = ESPACIOS.matcher(s).replaceAll(" ").trim();
+        return s.length() > MAXIMO_LARGO_SQL ? s.substring(0, MAXIMO_LARGO_SQL) + "..." : s;
+    }
+
+    private static Object invocar(Object destino, Method metodo, Object[] args) throws Throwable {
+        try {
+            return metodo.invoke(destino, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static Object crearProxy(Class<?> interfaz, InvocationHandler handler) {
+        return Proxy.newProxyInstance(MetricasBD.class.getClassLoader(), new Class<?>[] {interfaz}, handler);
+    }
+
+    /**
+     * Estadísticas acumuladas de una sentencia, de mayor a menor tiempo total
+     */
+    public List<EstadisticasSentencia> getEstadisticasSentencias() {
+        List<EstadisticasSentencia> lista = new ArrayList<>();
+        for (Sentencia s : porSentencia.values()) {
+            lista.add(new EstadisticasSentencia(s.sql, s.tiempos.cantidad(), s.filas.sum(), s.errores.sum(),
+                    s.tiempos.sumaNanos() / 1e6, s.tiempos.maximoNanos() / 1e6));
+        }
+        lista.sort(Comparator.comparingDouble(EstadisticasSentencia::getTiempoTotalMs).reversed());
+        return lista;
+    }
+
+    public long getConsultasLentas() {
+        return consultasLentas.sum();
+    }
+
+    /**
+     * Agrega todas las métricas en formato de texto de Prometheus (0.0.4)
+     */
+    public void exportarPrometheus(StringBuilder sb) {
+        sb.append("# HELP omega_sql_duracion_segundos Duración de la ejecución de sentencias SQL\n");
+        sb.append("# TYPE omega_sql_duracion_segundos histogram\n");
+        for (Sentencia s : porSentencia.values()) {
+            s.tiempos.exportar(sb, "omega_sql_duracion_segundos", "sentencia", s.sql);
+        }
+        sb.append("# HELP omega_sql_filas_total Filas leídas o modificadas por sentencia\n");
+        sb.append("# TYPE omega_sql_filas_total counter\n");
+        for (Sentencia s : porSentencia.values()) {
+            linea(sb, "omega_sql_filas_total", "sentencia", s.sql, s.filas.sum());
+        }
+        sb.append("# HELP omega_sql_errores_total Ejecuciones de sentencias que lanzaron una excepción\n");
+        sb.append("# TYPE omega_sql_errores_total counter\n");
+        for (Sentencia s : porSentencia.values()) {
+            linea(sb, "omega_sql_errores_total", "sentencia", s.sql, s.errores.sum());
+        }
+        sb.append("# HELP omega_sql_lentas_total Sentencias que superaron el umbral de consulta lenta\n");
+        sb.append("# TYPE omega_sql_lentas_total counter\n");
+        sb.append("omega_sql_lentas_total ").append(consultasLentas.sum()).append('\n');
+
+        sb.append("# HELP omega_conexion_espera_segundos Espera para obtener una conexión del pool\n");
+        sb.append("# TYPE omega_conexion_espera_segundos histogram\n");
+        esperaConexion.exportar(sb, "omega_conexion_espera_segundos", null, null);
+        sb.append("# HELP omega_conexion_fallos_total Conexiones que no se pudieron obtener\n");
+        sb.append("# TYPE omega_conexion_fallos_total counter\n");
+        sb.append("omega_conexion_fallos_total ").append(fallosConexion.sum()).append('\n');
+
+        if (msHastaLogin >= 0) {
+            sb.append("# HELP omega_arranque_hasta_login_segundos Tiempo desde el inicio de la JVM hasta el login\n");
+            sb.append("# TYPE omega_arranque_hasta_login_segundos gauge\n");
+            sb.append("omega_arranque_hasta_login_segundos ").append(msHastaLogin / 1e3).append('\n');
+        }
+
+        sb.append("# HELP omega_operacion_duracion_segundos Duración de las operaciones trazadas\n");
+        sb.append("# TYPE omega_operacion_duracion_segundos histogram\n");
+        for (Operacion o : operaciones.values()) {
+            o.tiempos.exportar(sb, "omega_operacion_duracion_segundos", "operacion", o.nombre);
+        }
+        sb.append("# HELP omega_operacion_consultas_total Sentencias SQL ejecutadas dentro de cada operación\n");
+        sb.append("# TYPE omega_operacion_consultas_total counter\n");
+        for (Operacion o : operaciones.values()) {
+            linea(sb, "omega_operacion_consultas_total", "operacion", o.nombre, o.consultas.sum());
+        }
+        sb.append("# HELP omega_operacion_bd_segundos_total Tiempo en la base de datos dentro de cada operación\n");
+        sb.append("# TYPE omega_operacion_bd_segundos_total counter\n");
+        for (Operacion o : operaciones.values()) {
+            linea(sb, "omega_operacion_bd_segundos_total", "operacion", o.nombre, o.nanosBD.sum() / 1e9);
+        }
+    }
+
+    private static void linea(StringBuilder sb, String nombre, String etiqueta, String valorEtiqueta, Object valor) {
+        sb.append(nombre).append('{').append(etiqueta).append("=\"").append(escapar(valorEtiqueta)).append("\"} ")
+          .append(valor).append('\n');
+    }
+
+    static String escapar(String valor) {
+        return valor.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * Histograma acumulado de duraciones con los límites de {@link #LIMITES}
+     */
+    static final class Histograma {
+        private final LongAdder[] cubetas = new LongAdder[LIMITES.length];
+        private final LongAdder cantidad = new LongAdder();
+        private final LongAdder sumaNanos = new LongAdder();
+        private final AtomicLong maximoNanos = new AtomicLong();
+
+        Histograma() {
+            for (int i = 0; i < cubetas.length; i++) {
+                cubetas[i] = new LongAdder();
+            }
+        }
+
+        void registrar(long nanos) {
+            double segundos = nanos / 1e9;
+            for (int i = 0; i < LIMITES.length; i++) {
+                if (segundos <= LIMITES[i]) {
+                    cubetas[i].increment();
+                    break;
+                }
+            }
+            cantidad.increment();
+            sumaNanos.add(nanos);
+            maximoNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        long cantidad() {
+            return cantidad.sum();
+        }
+
+        long sumaNanos() {
+            return sumaNanos.sum();
+        }
+
+        long maximoNanos() {
+            return maximoNanos.get();
+        }
+
+        void exportar(StringBuilder sb, String nombre, String etiqueta, String valorEtiqueta) {
+            String prefijo = etiqueta == null ? "" : etiqueta + "=\"" + escapar(valorEtiqueta) + "\",";
+            long acumulado = 0;
+            for (int i = 0; i < LIMITES.length; i++) {
+                acumulado += cubetas[i].sum();
+                sb.append(nombre).append("_bucket{").append(prefijo).append("le=\"").append(LIMITES[i]).append("\"} ")
+                  .append(acumulado).append('\n');
+            }
+            long total = cantidad.sum();
+            sb.append(nombre).append("_bucket{").append(prefijo).append("le=\"+Inf\"} ").append(total).append('\n');
+            String etiquetas = etiqueta == null ? "" : "{" + prefijo.substring(0, prefijo.length() - 1) + "}";
+            sb.append(nombre).append("_sum").append(etiquetas).append(' ').append(sumaNanos.sum() / 1e9).append('\n');
+            sb.append(nombre).append("_count").append(etiquetas).append(' ').append(total).append('\n');
+        }
+    }
+
+    private static final class Sentencia {
+        private final String sql;
+        private final Histograma tiempos = new Histograma();
+        private final LongAdder filas = new LongAdder();
+        private final LongAdder errores = new LongAdder();
+
+        Sentencia(String sql) {
+            this.sql = sql;
+        }
+    }
+
+    private static final class Operacion {
+        private final String nombre;
+        private final Histograma tiempos = new Histograma();
+        private final LongAdder consultas = new LongAdder();
+        private final LongAdder nanosBD = new LongAdder();
+
+        Operacion(String nombre) {
+            this.nombre = nombre;
+        }
+    }
+
+    /**
+     * Instantánea de las métricas de una sentencia
+     */
+    public static class EstadisticasSentencia {
+        private final String sql;
+        private final long ejecuciones;
+        private final long filas;
+        private final long errores;
+        private final double tiempoTotalMs;
+        private final double tiempoMaximoMs;
+
+        public EstadisticasSentencia(String sql, long ejecuciones, long filas, long errores,
+                                     double tiempoTotalMs, double tiempoMaximoMs) {
+            this.sql = sql;
+            this.ejecuciones = ejecuciones;
+            this.filas = filas;
+            this.errores = errores;
+            this.tiempoTotalMs = tiempoTotalMs;
+            this.tiempoMaximoMs = tiempoMaximoMs;
+        }
+
+        public String getSql() { return sql; }
+        public long getEjecuciones() { return ejecuciones; }
+        public long getFilas() { return filas; }
+        public long getErrores() { return errores; }
+        public double getTiempoTotalMs() { return tiempoTotalMs; }
+        public double getTiempoMaximoMs() { return tiempoMaximoMs; }
+
+        @Override
+        public String toString() {
+            return String.format("Sentencia{ejecuciones=%d, filas=%d, errores=%d, total=%.1fms, maximo=%.1fms, sql=%s}",
+                                 ejecuciones, filas, errores, tiempoTotalMs, tiempoMaximoMs, sql);
+        }
+    }
+}
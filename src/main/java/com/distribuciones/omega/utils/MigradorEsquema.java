@@ -0,0 +1,428 @@
+package com.distribuciones.omega.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Aplica las migraciones del esquema en orden de versión y registra cada una en la
+ * tabla esquema_version (versión, descripción, checksum, fecha y duración).
+ *
+ * En un inicio normal, con todo aplicado, basta una consulta a esquema_version: no se
+ * revisa tabla por tabla. Si el checksum de una migración ya aplicada no coincide con
+ * el registrado se informa, pero no se vuelve a aplicar; los cambios al esquema van
+ * siempre en una migración nueva.
+ *
+ * Con MySQL, las terminales que arrancan a la vez se turnan con GET_LOCK, y cada
+ * migración debe poder repetirse sin error (CREATE TABLE IF NOT EXISTS...).
+ */
+public class MigradorEsquema {
+
+    private static final Logger LOGGER = Logger.getLogger(MigradorEsquema.class.getName());
+
+    static final String TABLA = "esquema_version";
+    private static final String BLOQUEO = "omega_migraciones";
+    private static final int ESPERA_BLOQUEO_SEG = 60;
+
+    // Checksum de V4__indices_facturas.sql, con el que quedó registrada la versión 4
+    // en las bases que la aplicaron antes de pasar a Java
+    private static final String CHECKSUM_V4_SQL = "dcea541b8d65df7b8dc0d97afed38d72683f99b1639588efb2a25ce73020bcfc";
+
+    private final List<Migracion> migraciones;
+    private final List<Integer> modificadas = new ArrayList<>();
+
+    public MigradorEsquema(List<Migracion> migraciones) {
+        List<Migracion> ordenadas = new ArrayList<>(migraciones);
+        ordenadas.sort((a, b) -> Integer.compare(a.getVersion(), b.getVersion()));
+        this.migraciones = Collections.unmodifiableList(ordenadas);
+    }
+
+    /**
+     * Migraciones de la aplicación
+     */
+    public static MigradorEsquema predeterminado() {
+        List<Migracion> migraciones = new ArrayList<>();
+        // Esquema con el que arrancaban las instalaciones anteriores; sobre una base
+        // existente solo crea lo que falte
+        migraciones.add(Migracion.java(1, "Esquema base", "1",
+                conn -> DatabaseInitializer.crearEsquemaBase()));
+        migraciones.add(Migracion.sql(2, "Órdenes de venta", "/db/migraciones/V2__ordenes.sql"));
+        migraciones.add(Migracion.sql(3, "Promociones", "/db/migraciones/V3__promociones.sql"));
+        // Índices para recorrer facturas por rango de fechas en orden (fecha, id) descendente:
+        // el reporte de facturación pide páginas por clave ("después de esta fecha e id").
+        // Antes era un script con CREATE INDEX, que fallaba si el índice ya existía.
+        migraciones.add(Migracion.java(4, "Índices de facturas por fecha", "2", conn -> {
+            crearIndiceSiFalta(conn, "facturas", "idx_facturas_fecha_id", "fecha, id_factura");
+            crearIndiceSiFalta(conn, "facturas", "idx_facturas_vendedor_fecha_id", "vendedor_id, fecha, id_factura");
+        }).reemplazaA(CHECKSUM_V4_SQL));
+        // Las versiones anteriores la agregaban al arrancar, así que puede existir ya
+        migraciones.add(Migracion.java(5, "Última modificación de productos", "1",
+                conn -> agregarColumnaSiFalta(conn, "productos", "ultima_modificacion",
+                        "TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP")));
+        migraciones.add(Migracion.sql(6, "Acumulados de ventas en DECIMAL", "/db/migraciones/V6__ventas_diarias_decimal.sql"));
+        return new MigradorEsquema(migraciones);
+    }
+
+    /**
+     * Aplica las migraciones pendientes
+     * @return Cantidad de migraciones aplicadas
+     * @throws SQLException si una migración falla; las anteriores quedan registradas
+     */
+    public int migrar() throws SQLException {
+        modificadas.clear();
+        try (Connection conn = DBUtil.getConnection()) {
+            Map<Integer, String> aplicadas = leerAplicadas(conn);
+            if (aplicadas != null && pendientes(aplicadas).isEmpty()) {
+                verificarChecksums(aplicadas);
+                LOGGER.fine(() -> "Esquema al día en la versión " + getVersionActual());
+                return 0;
+            }
+
+            if (aplicadas == null) {
+                crearTablaVersiones(conn);
+            }
+            boolean bloqueado = bloquear(conn);
+            try {
+                // Otra terminal pudo migrar mientras se esperaba el bloqueo
+                aplicadas = leerAplicadas(conn);
+                verificarChecksums(aplicadas);
+                List<Migracion> pendientes = pendientes(aplicadas);
+                for (Migracion migracion : pendientes) {
+                    aplicar(conn, migracion);
+                }
+                return pendientes.size();
+            } finally {
+                if (bloqueado) {
+                    liberar(conn);
+                }
+            }
+        }
+    }
+
+    /**
+     * Versión más alta que conoce la aplicación
+     */
+    public int getVersionActual() {
+        return migraciones.isEmpty() ? 0 : migraciones.get(migraciones.size() - 1).getVersion();
+    }
+
+    /**
+     * Versiones ya aplicadas cuyo checksum difiere del registrado (tras {@link #migrar()})
+     */
+    public List<Integer> getModificadas() {
+        return Collections.unmodifiableList(modificadas);
+    }
+
+    private void aplicar(Connection conn, Migracion migracion) throws SQLException {
+        LOGGER.info("Aplicando migración " + migracion.getVersion() + ": " + migracion.getDescripcion());
+        long inicio = System.nanoTime();
+        boolean autoCommit = conn.getAutoCommit();
+        try {
+            migracion.aplicar(conn);
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+        long duracionMs = (System.nanoTime() - inicio) / 1_000_000;
+
+        String sql = "INSERT INTO " + TABLA + " (version, descripcion, checksum, aplicada_en, duracion_ms) " +
+                     "VALUES (?, ?, ?, ?, ?)";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, migracion.getVersion());
+            stmt.setString(2, migracion.getDescripcion());
+            stmt.setString(3, migracion.getChecksum());
+            stmt.setTimestamp(4, Timestamp.valueOf(LocalDateTime.now()));
+            stmt.setLong(5, duracionMs);
+            stmt.executeUpdate();
+        }
+        LOGGER.info("Migración " + migracion.getVersion() + " aplicada en " + duracionMs + " ms");
+    }
+
+    private List<Migracion> pendientes(Map<Integer, String> aplicadas) {
+        List<Migracion> pendientes = new ArrayList<>();
+        for (Migracion migracion : migraciones) {
+            if (!aplicadas.containsKey(migracion.getVersion())) {
+                pendientes.add(migracion);
+            }
+        }
+        return pendientes;
+    }
+
+    private void verificarChecksums(Map<Integer, String> aplicadas) {
+        for (Migracion migracion : migraciones) {
+            String registrado = aplicadas.get(migracion.getVersion());
+            if (registrado != null && !migracion.coincide(registrado)) {
+                modificadas.add(migracion.getVersion());
+                LOGGER.severe("La migración " + migracion.getVersion() + " (" + migracion.getDescripcion() +
+                              ") cambió después de aplicarse; el cambio debe ir en una migración nueva");
+            }
+        }
+    }
+
+    /**
+     * Lee las versiones aplicadas con su checksum
+     * @return Versiones aplicadas o null si la tabla de versiones todavía no existe
+     */
+    private Map<Integer, String> leerAplicadas(Connection conn) throws SQLException {
+        Map<Integer, String> aplicadas = new HashMap<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT version, checksum FROM " + TABLA)) {
+            while (rs.next()) {
+                aplicadas.put(rs.getInt("version"), rs.getString("checksum"));
+            }
+            return aplicadas;
+        } catch (SQLException e) {
+            // Solo en el primer inicio: se confirma con los metadatos que falte la tabla
+            if (!existeTablaVersiones(conn)) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    private boolean existeTablaVersiones(Connection conn) throws SQLException {
+        DatabaseMetaData meta = conn.getMetaData();
+        for (String nombre : new String[] {TABLA, TABLA.toUpperCase()}) {
+            try (ResultSet rs = meta.getTables(conn.getCatalog(), null, nombre, new String[] {"TABLE"})) {
+                if (rs.next()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Agrega una columna si la tabla todavía no la tiene
+     * @param definicion Tipo y restricciones de la columna
+     */
+    static void agregarColumnaSiFalta(Connection conn, String tabla, String columna, String definicion)
+            throws SQLException {
+        DatabaseMetaData meta = conn.getMetaData();
+        for (String[] nombres : new String[][] {{tabla, columna}, {tabla.toUpperCase(), columna.toUpperCase()}}) {
+            try (ResultSet rs = meta.getColumns(conn.getCatalog(), null, nombres[0], nombres[1])) {
+                if (rs.next()) {
+                    return;
+                }
+            }
+        }
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("ALTER TABLE " + tabla + " ADD COLUMN " + columna + " " + definicion);
+        }
+    }
+
+    /**
+     * Crea un índice si la tabla todavía no tiene uno con ese nombre
+     * @param columnas Columnas del índice, separadas por comas
+     */
+    static void crearIndiceSiFalta(Connection conn, String tabla, String indice, String columnas)
+            throws SQLException {
+        DatabaseMetaData meta = conn.getMetaData();
+        for (String nombre : new String[] {tabla, tabla.toUpperCase()}) {
+            try (ResultSet rs = meta.getIndexInfo(conn.getCatalog(), null, nombre, false, false)) {
+                while (rs.next()) {
+                    if (indice.equalsIgnoreCase(rs.getString("INDEX_NAME"))) {
+                        return;
+                    }
+                }
+            }
+        }
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("CREATE INDEX " + indice + " ON " + tabla + " (" + columnas + ")");
+        }
+    }
+
+    private void crearTablaVersiones(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("CREATE TABLE IF NOT EXISTS " + TABLA + " (" +
+                               "version INT PRIMARY KEY, " +
+                               "descripcion VARCHAR(200) NOT NULL, " +
+                               "checksum VARCHAR(64) NOT NULL, " +
+                               "aplicada_en TIMESTAMP NOT NULL, " +
+                               "duracion_ms BIGINT NOT NULL)");
+        }
+    }
+
+    private boolean bloquear(Connection conn) throws SQLException {
+        if (!esMySQL(conn)) {
+            return false;
+        }
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT GET_LOCK(?, ?)")) {
+            stmt.setString(1, BLOQUEO);
+            stmt.setInt(2, ESPERA_BLOQUEO_SEG);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next() && rs.getInt(1) == 1) {
+                    return true;
+                }
+            }
+        }
+        throw new SQLException("Otra terminal está migrando el esquema; no se obtuvo el bloqueo en " +
+                               ESPERA_BLOQUEO_SEG + " s");
+    }
+
+    private void liberar(Connection conn) {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+            stmt.setString(1, BLOQUEO);
+            stmt.executeQuery().close();
+        } catch (SQLException e) {
+            LOGGER.log(Level.WARNING, "No se pudo liberar el bloqueo de migraciones", e);
+        }
+    }
+
+    private static boolean esMySQL(Connection conn) throws SQLException {
+        return conn.getMetaData().getDatabaseProductName().toLowerCase().contains("mysql");
+    }
+
+    /**
+     * Paso de una migración escrita en Java
+     */
+    @FunctionalInterface
+    public interface Paso {
+        void aplicar(Connection conn) throws SQLException;
+    }
+
+    /**
+     * Una versión del esquema
+     */
+    public static final class Migracion {
+        private final int version;
+        private final String descripcion;
+        private final String checksum;
+        private final Paso paso;
+        // Checksums con los que pudo quedar registrada antes de reescribirse
+        private final List<String> anteriores;
+
+        private Migracion(int version, String descripcion, String checksum, Paso paso, List<String> anteriores) {
+            this.version = version;
+            this.descripcion = descripcion;
+            this.checksum = checksum;
+            this.paso = paso;
+            this.anteriores = anteriores;
+        }
+
+        private Migracion(int version, String descripcion, String checksum, Paso paso) {
+            this(version, descripcion, checksum, paso, List.of());
+        }
+
+        /**
+         * La misma migración reescrita sin cambiar su efecto (por ejemplo, de script a
+         * Java para poder repetirla): las bases que la registraron con el checksum
+         * anterior no la informan como modificada
+         * @param checksumAnterior Checksum de la versión reemplazada
+         */
+        public Migracion reemplazaA(String checksumAnterior) {
+            List<String> todos = new ArrayList<>(anteriores);
+            todos.add(checksumAnterior);
+            return new Migracion(version, descripcion, checksum, paso, List.copyOf(todos));
+        }
+
+        /**
+         * Migración escrita en Java. Como no hay texto del cual calcular el checksum,
+         * se usa la revisión declarada: cambiarla equivale a modificar la migración.
+         * @param version Versión del esquema
+         * @param descripcion Descripción breve
+         * @param revision Revisión del código de la migración
+         * @param paso Cambios a aplicar
+         */
+        public static Migracion java(int version, String descripcion, String revision, Paso paso) {
+            return new Migracion(version, descripcion, sha256(descripcion + "\n" + revision), paso);
+        }
+
+        /**
+         * Migración en un script SQL del classpath; las sentencias terminan en ';' al
+         * final de la línea y las líneas que empiezan con '--' se ignoran
+         * @param version Versión del esquema
+         * @param descripcion Descripción breve
+         * @param recurso Ruta del script en el classpath
+         */
+        public static Migracion sql(int version, String descripcion, String recurso) {
+            String script = leerRecurso(recurso);
+            List<String> sentencias = separarSentencias(script);
+            return new Migracion(version, descripcion, sha256(script.replace("\r\n", "\n")), conn -> {
+                try (Statement stmt = conn.createStatement()) {
+                    for (String sentencia : sentencias) {
+                        stmt.execute(sentencia);
+                    }
+                }
+            });
+        }
+
+        public int getVersion() {
+            return version;
+        }
+
+        public String getDescripcion() {
+            return descripcion;
+        }
+
+        public String getChecksum() {
+            return checksum;
+        }
+
+        public void aplicar(Connection conn) throws SQLException {
+            paso.aplicar(conn);
+        }
+
+        boolean coincide(String registrado) {
+            return checksum.equals(registrado) || anteriores.contains(registrado);
+        }
+
+        static List<String> separarSentencias(String script) {
+            List<String> sentencias = new ArrayList<>();
+            StringBuilder actual = new StringBuilder();
+            for (String linea : script.split("\r?\n")) {
+                String limpia = linea.trim();
+                if (limpia.isEmpty() || limpia.startsWith("--")) {
+                    continue;
+                }
+                actual.append(linea).append('\n');
+                if (limpia.endsWith(";")) {
+                    String sentencia = actual.toString().trim();
+                    sentencias.add(sentencia.substring(0, sentencia.length() - 1));
+                    actual.setLength(0);
+                }
+            }
+            if (!actual.toString().isBlank()) {
+                sentencias.add(actual.toString().trim());
+            }
+            return sentencias;
+        }
+
+        private static String leerRecurso(String recurso) {
+            try (InputStream entrada = MigradorEsquema.class.getResourceAsStream(recurso)) {
+                if (entrada == null) {
+                    throw new IllegalArgumentException("No se encontró la migración " + recurso);
+                }
+                return new String(entrada.readAllBytes(), StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                throw new IllegalStateException("No se pudo leer la migración " + recurso, e);
+            }
+        }
+
+        private static String sha256(String texto) {
+            try {
+                MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                return HexFormat.of().formatHex(digest.digest(texto.getBytes(StandardCharsets.UTF_8)));
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
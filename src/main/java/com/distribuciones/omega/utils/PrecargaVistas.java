@@ -0,0 +1,76 @@
+package com.distribuciones.omega.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Precarga, fuera del hilo de JavaFX, las clases que usa una vista FXML: los
+ * controles de sus {@code <?import ...?>} y su controlador. La primera vez que se
+ * abre la vista, FXMLLoader ya no tiene que cargar e inicializar esas clases.
+ *
+ * No se construye la vista: los controladores arrancan relojes y consultas en
+ * initialize() y necesitan el usuario de la sesión.
+ */
+public final class PrecargaVistas {
+
+    private static final Logger LOGGER = Logger.getLogger(PrecargaVistas.class.getName());
+    private static final Pattern IMPORTACION = Pattern.compile("<\\?import\\s+([\\w.]+)\\s*\\?>");
+    private static final Pattern CONTROLADOR = Pattern.compile("fx:controller=\"([\\w.]+)\"");
+
+    private PrecargaVistas() {
+    }
+
+    /**
+     * Carga e inicializa las clases de las vistas indicadas
+     * @param recursos Rutas de los FXML en el classpath ("/fxml/dashboard.fxml")
+     * @return Cantidad de clases cargadas
+     */
+    public static int precargar(String... recursos) {
+        int cargadas = 0;
+        for (String recurso : recursos) {
+            for (String clase : clasesDe(leer(recurso))) {
+                try {
+                    Class.forName(clase, true, PrecargaVistas.class.getClassLoader());
+                    cargadas++;
+                } catch (ClassNotFoundException | LinkageError e) {
+                    // La vista fallará igual al abrirse; aquí solo se adelanta trabajo
+                    LOGGER.fine(() -> "No se pudo precargar " + clase + " de " + recurso + ": " + e);
+                }
+            }
+        }
+        return cargadas;
+    }
+
+    static List<String> clasesDe(String fxml) {
+        List<String> clases = new ArrayList<>();
+        Matcher importacion = IMPORTACION.matcher(fxml);
+        // Las importaciones con comodín (paquete.*) no coinciden con el patrón
+        while (importacion.find()) {
+            clases.add(importacion.group(1));
+        }
+        Matcher controlador = CONTROLADOR.matcher(fxml);
+        if (controlador.find()) {
+            clases.add(controlador.group(1));
+        }
+        return clases;
+    }
+
+    private static String leer(String recurso) {
+        try (InputStream entrada = PrecargaVistas.class.getResourceAsStream(recurso)) {
+            if (entrada == null) {
+                LOGGER.warning("No se encontró la vista " + recurso);
+                return "";
+            }
+            return new String(entrada.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            LOGGER.warning("No se pudo leer la vista " + recurso + ": " + e.getMessage());
+            return "";
+        }
+    }
+}
@@ -9,6 +9,7 @@ import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 
 import java.awt.Desktop;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
@@ -170,6 +171,17 @@ public class PrintUtil {
         }
     }
 
+    /**
+     * Convierte un HTML mínimo en memoria para cargar de antemano las clases, fuentes
+     * y estilos por defecto de iText; así el primer PDF de la sesión no paga esa demora.
+     * Se llama durante el arranque.
+     */
+    public static void precalentarPdf() {
+        HtmlConverter.convertToPdf("<html><body><p style=\"font-family: Helvetica\">Ómega</p>" +
+                                   "<table><tr><td>1</td><td>$ 0,00</td></tr></table></body></html>",
+                                   new ByteArrayOutputStream());
+    }
+
     /**
      * Imprime un archivo utilizando el visor predeterminado del sistema
      * @param rutaArchivo Ruta al archivo a imprimir
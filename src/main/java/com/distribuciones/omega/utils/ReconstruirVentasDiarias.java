@@ -0,0 +1,36 @@
+package com.distribuciones.omega.utils;
+
+import com.distribuciones.omega.repository.VentasDiariasRepository;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+
+/**
+ * Recalcula la tabla ventas_diarias a partir de facturas, ítems y pagos.
+ *
+ * Uso: ReconstruirVentasDiarias [desde yyyy-MM-dd] [hasta yyyy-MM-dd]
+ * Sin argumentos recalcula todo el histórico; con solo "desde", hasta hoy.
+ */
+public class ReconstruirVentasDiarias {
+
+    public static void main(String[] args) {
+        LocalDate desde = args.length > 0 ? LocalDate.parse(args[0]) : LocalDate.of(2000, 1, 1);
+        LocalDate hasta = args.length > 1 ? LocalDate.parse(args[1]) : LocalDate.now();
+
+        VentasDiariasRepository repository = new VentasDiariasRepository();
+        repository.createTableIfNotExists();
+
+        long inicio = System.currentTimeMillis();
+        try {
+            int filas = repository.reconstruir(desde, hasta);
+            System.out.println("Ventas diarias recalculadas del " + desde + " al " + hasta + ": " +
+                               filas + " filas en " + (System.currentTimeMillis() - inicio) + " ms");
+        } catch (SQLException e) {
+            System.err.println("Error al recalcular las ventas diarias: " + e.getMessage());
+            e.printStackTrace();
+            System.exit(1);
+        } finally {
+            DBUtil.cerrarPool();
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.distribuciones.omega.utils;
+
+import com.distribuciones.omega.repository.SecuenciaRepository;
+import io.github.cdimascio.dotenv.Dotenv;
+
+import java.net.InetAddress;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Generador de números de documento (FACT-YYYYMMDD-XXXX, ORD-..., COT-...) por bloques.
+ *
+ * Cada terminal reserva en la base de datos un bloque de números por prefijo y día
+ * y los entrega desde memoria hasta agotarlo, por lo que solo hay una consulta cada
+ * TAMANO_BLOQUE documentos. Los números son únicos entre procesos; los no usados de
+ * un bloque quedan registrados como huecos en bloques_secuencia.
+ */
+public class SecuenciaDocumentos {
+
+    private static final Logger LOGGER = Logger.getLogger(SecuenciaDocumentos.class.getName());
+    private static final DateTimeFormatter FORMATO_FECHA = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    /**
+     * Tipos de documento numerados y la tabla donde se guardan
+     */
+    public enum TipoDocumento {
+        FACTURA("FACT", "facturas", "numero_factura"),
+        ORDEN("ORD", "ordenes", "numero_orden"),
+        COTIZACION("COT", "cotizaciones", "numero_cotizacion");
+
+        private final String prefijo;
+        private final String tabla;
+        private final String columna;
+
+        TipoDocumento(String prefijo, String tabla, String columna) {
+            this.prefijo = prefijo;
+            this.tabla = tabla;
+            this.columna = columna;
+        }
+
+        public String getPrefijo() { return prefijo; }
+    }
+
+    private static SecuenciaDocumentos instance;
+
+    private final SecuenciaRepository repository;
+    private final String terminal;
+    private final int tamanoBloque;
+    private final Map<TipoDocumento, BloqueActivo> bloques = new EnumMap<>(TipoDocumento.class);
+
+    SecuenciaDocumentos(SecuenciaRepository repository, String terminal, int tamanoBloque) {
+        this.repository = repository;
+        this.terminal = terminal;
+        this.tamanoBloque = tamanoBloque;
+    }
+
+    /**
+     * Obtiene la instancia única del generador (Singleton)
+     * @return Instancia del generador
+     */
+    public static synchronized SecuenciaDocumentos getInstance() {
+        if (instance == null) {
+            Dotenv dotenv = Dotenv.configure().directory(".").ignoreIfMissing().load();
+            String terminal = dotenv.get("TERMINAL_ID");
+            if (terminal == null || terminal.isBlank()) {
+                terminal = nombreEquipo();
+            }
+            int tamano = 20;
+            try {
+                String valor = dotenv.get("SECUENCIA_BLOQUE");
+                if (valor != null && !valor.isBlank()) {
+                    tamano = Math.max(1, Integer.parseInt(valor.trim()));
+                }
+            } catch (NumberFormatException e) {
+                LOGGER.warning("SECUENCIA_BLOQUE inválido, usando " + tamano);
+            }
+            instance = new SecuenciaDocumentos(new SecuenciaRepository(), terminal.trim(), tamano);
+        }
+        return instance;
+    }
+
+    /**
+     * Entrega el siguiente número para el tipo de documento en la fecha actual
+     * @param tipo Tipo de documento
+     * @return Número con formato PREFIJO-YYYYMMDD-XXXX
+     * @throws SQLException Si no se pudo reservar un bloque nuevo
+     */
+    public String siguiente(TipoDocumento tipo) throws SQLException {
+        return siguiente(tipo, LocalDate.now());
+    }
+
+    /**
+     * Entrega el siguiente número para el tipo de documento en una fecha
+     * @param tipo Tipo de documento
+     * @param dia Día del documento
+     * @return Número con formato PREFIJO-YYYYMMDD-XXXX
+     * @throws SQLException Si no se pudo reservar un bloque nuevo
+     */
+    public synchronized String siguiente(TipoDocumento tipo, LocalDate dia) throws SQLException {
+        String fecha = dia.format(FORMATO_FECHA);
+        BloqueActivo activo = bloques.get(tipo);
+
+        if (activo == null || !activo.bloque.getFecha().equals(fecha) || activo.agotado()) {
+            if (activo != null) {
+                repository.registrarUltimoUsado(activo.bloque.getId(), activo.siguiente - 1);
+            }
+            SecuenciaRepository.Bloque nuevo = repository.reservarBloque(
+                    tipo.prefijo, fecha, terminal, tamanoBloque, tipo.tabla, tipo.columna);
+            activo = new BloqueActivo(nuevo);
+            bloques.put(tipo, activo);
+            LOGGER.fine("Bloque " + tipo.prefijo + "-" + fecha + " reservado: " + nuevo.getDesde() + "-" + nuevo.getHasta());
+        }
+
+        return String.format("%s-%s-%04d", tipo.prefijo, fecha, activo.siguiente++);
+    }
+
+    /**
+     * Registra el último número usado de los bloques activos (al cerrar la aplicación)
+     */
+    public synchronized void cerrar() {
+        for (BloqueActivo activo : bloques.values()) {
+            repository.registrarUltimoUsado(activo.bloque.getId(), activo.siguiente - 1);
+        }
+        bloques.clear();
+    }
+
+    public String getTerminal() {
+        return terminal;
+    }
+
+    static String nombreEquipo() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            return "terminal-desconocida";
+        }
+    }
+
+    private static class BloqueActivo {
+        private final SecuenciaRepository.Bloque bloque;
+        private int siguiente;
+
+        BloqueActivo(SecuenciaRepository.Bloque bloque) {
+            this.bloque = bloque;
+            this.siguiente = bloque.getDesde();
+        }
+
+        boolean agotado() {
+            return siguiente > bloque.getHasta();
+        }
+    }
+}
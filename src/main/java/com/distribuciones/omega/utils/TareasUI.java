@@ -0,0 +1,483 @@
+package com.distribuciones.omega.utils;
+
+import io.github.cdimascio.dotenv.Dotenv;
+import javafx.application.Platform;
+import javafx.beans.binding.Bindings;
+import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.beans.property.ReadOnlyBooleanWrapper;
+import javafx.concurrent.Task;
+import javafx.scene.Cursor;
+import javafx.scene.Node;
+import javafx.scene.Scene;
+import javafx.scene.control.ProgressIndicator;
+import javafx.scene.control.TableView;
+import javafx.stage.Window;
+import javafx.stage.WindowEvent;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Ejecuta fuera del hilo de JavaFX las llamadas de los controladores a los servicios
+ * (consultas, guardados) y entrega el resultado de vuelta en ese hilo.
+ *
+ * Cada trabajo pertenece a una vista (el controlador) y lleva una clave:
+ * <ul>
+ *   <li>Si se pide un trabajo con la misma clave mientras el anterior sigue en curso,
+ *       no se lanza otro: el doble clic en "Guardar" o recargar dos veces la tabla
+ *       hacen una sola consulta.</li>
+ *   <li>Al cerrar la ventana de la vista (o quitarla de la escena) se cancelan sus
+ *       trabajos y sus resultados ya no se entregan; los que ya corren terminan sin
+ *       interrumpirse para no dejar un guardado a medias.</li>
+ *   <li>Mientras la vista tiene trabajos en curso {@link #ocupado(Object)} es true;
+ *       {@link #vincular(Object, Node)} lo muestra con el cursor de espera y, en las
+ *       tablas, con un indicador de carga.</li>
+ * </ul>
+ *
+ * Los trabajos corren en un grupo fijo de UI_HILOS hilos (4 por defecto), del orden
+ * del pool de conexiones, para no encolar más consultas de las que la base atiende.
+ *
+ * {@link #iniciarMonitor()} mide cada 100 ms cuánto tarda el hilo de JavaFX en atender
+ * un aviso: es el tiempo que la pantalla estuvo congelada. Los bloqueos de más de
+ * FX_BLOQUEO_UMBRAL_MS (200 ms por defecto) se registran con la pila del hilo de JavaFX.
+ *
+ * <pre>
+ * TareasUI.getInstance().ejecutar(this, "clientes", clienteService::obtenerTodosClientes,
+ *         clientes -&gt; clientesCompletos.setAll(clientes));
+ * </pre>
+ */
+public class TareasUI {
+
+    private static final Logger LOGGER = Logger.getLogger(TareasUI.class.getName());
+
+    private static final long PERIODO_LATIDO_MS = 100;
+
+    private static TareasUI instance;
+
+    private final ExecutorService hilos;
+    private final Executor entrega;
+    private final long umbralBloqueoNanos;
+    private final Map<Object, Vista> vistas = new ConcurrentHashMap<>();
+    private ScheduledExecutorService monitor;
+    // Estado del latido: cuándo se envió el que falta atender y quién lo atiende
+    private final AtomicLong latidoPendiente = new AtomicLong();
+    private volatile Thread hiloFx;
+    private volatile boolean pilaRegistrada;
+
+    // Métricas
+    private final MetricasBD.Histograma bloqueos = new MetricasBD.Histograma();
+    private final Map<String, MetricasBD.Histograma> duraciones = new ConcurrentHashMap<>();
+    private final LongAdder ejecutadas = new LongAdder();
+    private final LongAdder agrupadas = new LongAdder();
+    private final LongAdder canceladas = new LongAdder();
+    private final LongAdder fallidas = new LongAdder();
+    private final LongAdder bloqueosLargos = new LongAdder();
+
+    TareasUI(int cantidadHilos, Executor entrega, long umbralBloqueoMs) {
+        AtomicInteger numero = new AtomicInteger();
+        ThreadPoolExecutor grupo = new ThreadPoolExecutor(cantidadHilos, cantidadHilos, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread hilo = new Thread(r, "tareas-ui-" + numero.incrementAndGet());
+                    hilo.setDaemon(true);
+                    return hilo;
+                });
+        grupo.allowCoreThreadTimeOut(true);
+        this.hilos = grupo;
+        this.entrega = entrega;
+        this.umbralBloqueoNanos = TimeUnit.MILLISECONDS.toNanos(umbralBloqueoMs);
+    }
+
+    public static synchronized TareasUI getInstance() {
+        if (instance == null) {
+            Dotenv dotenv = Dotenv.configure().directory(".").ignoreIfMissing().load();
+            instance = new TareasUI(leerEntero(dotenv, "UI_HILOS", 4), Platform::runLater,
+                    leerEntero(dotenv, "FX_BLOQUEO_UMBRAL_MS", 200));
+        }
+        return instance;
+    }
+
+    private static int leerEntero(Dotenv dotenv, String clave, int predeterminado) {
+        String valor = dotenv.get(clave);
+        if (valor == null || valor.isBlank()) {
+            return predeterminado;
+        }
+        try {
+            return Math.max(1, Integer.parseInt(valor.trim()));
+        } catch (NumberFormatException e) {
+            LOGGER.warning(clave + " inválido, usando " + predeterminado);
+            return predeterminado;
+        }
+    }
+
+    /**
+     * Trabajo sin resultado (guardar, eliminar...)
+     */
+    @FunctionalInterface
+    public interface Accion {
+        void ejecutar() throws Exception;
+    }
+
+    /**
+     * Ejecuta un trabajo de una vista; los errores se muestran en un diálogo
+     * @see #ejecutar(Object, String, Callable, Consumer, Consumer)
+     */
+    public <T> Future<T> ejecutar(Object vista, String clave, Callable<T> trabajo, Consumer<? super T> alTerminar) {
+        return ejecutar(vista, clave, trabajo, alTerminar, error -> mostrarError(clave, error));
+    }
+
+    /**
+     * Ejecuta un trabajo de una vista en segundo plano
+     * @param vista Dueña del trabajo (normalmente el controlador)
+     * @param clave Identifica el trabajo dentro de la vista; si ya hay uno en curso con
+     *              la misma clave se devuelve ese y no se lanza otro
+     * @param trabajo Llamada a los servicios; corre fuera del hilo de JavaFX
+     * @param alTerminar Recibe el resultado en el hilo de JavaFX
+     * @param alFallar Recibe el error en el hilo de JavaFX
+     * @return Trabajo en curso (sirve para cancelarlo)
+     */
+    public <T> Future<T> ejecutar(Object vista, String clave, Callable<T> trabajo, Consumer<? super T> alTerminar,
+                                  Consumer<Throwable> alFallar) {
+        Vista estado = vistas.computeIfAbsent(vista, v -> new Vista());
+        synchronized (estado) {
+            // Sigue en el mapa hasta que su resultado se entrega en el hilo de JavaFX
+            Trabajo<?> enCurso = estado.enCurso.get(clave);
+            if (enCurso != null) {
+                agrupadas.increment();
+                @SuppressWarnings("unchecked")
+                Future<T> mismo = (Future<T>) enCurso;
+                return mismo;
+            }
+            Trabajo<T> nuevo = new Trabajo<>(vista, clave, trabajo, alTerminar, alFallar);
+            estado.enCurso.put(clave, nuevo);
+            estado.activos++;
+            actualizarOcupado(estado);
+            hilos.execute(nuevo);
+            return nuevo;
+        }
+    }
+
+    /**
+     * Ejecuta un trabajo sin resultado; los errores se muestran en un diálogo
+     */
+    public Future<Void> ejecutarAccion(Object vista, String clave, Accion accion, Runnable alTerminar) {
+        return ejecutar(vista, clave, () -> {
+            accion.ejecutar();
+            return null;
+        }, resultado -> alTerminar.run());
+    }
+
+    /**
+     * Ejecuta una Task de JavaFX de la vista (por ejemplo con avance y mensajes).
+     * Sus manejadores setOnSucceeded/setOnFailed se invocan como siempre; aquí solo
+     * se agrupa y se cancela junto con la vista.
+     */
+    public Future<Void> ejecutar(Object vista, String clave, Task<?> tarea) {
+        Future<Void> trabajo = ejecutar(vista, clave, () -> {
+            tarea.run();
+            return null;
+        }, resultado -> { }, error -> { });
+        ((Trabajo<?>) trabajo).tarea = tarea;
+        return trabajo;
+    }
+
+    /**
+     * Cancela los trabajos en curso de una vista; sus resultados ya no se entregan.
+     * Los que ya corren no se interrumpen: pueden estar guardando (cotización, factura,
+     * diario contable) y cortarlos a medias dejaría la operación incompleta.
+     */
+    public void cancelar(Object vista) {
+        Vista estado = vistas.remove(vista);
+        if (estado == null) {
+            return;
+        }
+        List<Trabajo<?>> trabajos;
+        synchronized (estado) {
+            trabajos = new ArrayList<>(estado.enCurso.values());
+            estado.enCurso.clear();
+            estado.activos = 0;
+            actualizarOcupado(estado);
+        }
+        for (Trabajo<?> trabajo : trabajos) {
+            if (trabajo.cancel(false)) {
+                canceladas.increment();
+            }
+        }
+    }
+
+    /**
+     * Indica si la vista tiene trabajos en curso. Cambia en el hilo de JavaFX.
+     */
+    public ReadOnlyBooleanProperty ocupado(Object vista) {
+        return vistas.computeIfAbsent(vista, v -> new Vista()).ocupado.getReadOnlyProperty();
+    }
+
+    /**
+     * Asocia la vista a un nodo de su pantalla: mientras tenga trabajos en curso el
+     * nodo muestra el cursor de espera (y, si es una tabla, un indicador de carga en
+     * lugar del texto de tabla vacía), y al cerrar su ventana o quitarlo de la escena
+     * se cancelan los trabajos de la vista.
+     */
+    public void vincular(Object vista, Node nodo) {
+        ReadOnlyBooleanProperty ocupado = ocupado(vista);
+        nodo.cursorProperty().bind(Bindings.when(ocupado)
+                .then(Cursor.WAIT).otherwise(Cursor.DEFAULT));
+        if (nodo instanceof TableView) {
+            TableView<?> tabla = (TableView<?>) nodo;
+            Node vacia = tabla.getPlaceholder();
+            ProgressIndicator cargando = new ProgressIndicator();
+            cargando.setMaxSize(48, 48);
+            ocupado.addListener((obs, antes, ahora) -> tabla.setPlaceholder(ahora ? cargando : vacia));
+        }
+        nodo.sceneProperty().addListener((obs, anterior, escena) -> {
+            if (escena == null) {
+                cancelar(vista);
+            } else {
+                cancelarAlCerrar(vista, escena);
+            }
+        });
+        if (nodo.getScene() != null) {
+            cancelarAlCerrar(vista, nodo.getScene());
+        }
+    }
+
+    private void cancelarAlCerrar(Object vista, Scene escena) {
+        Consumer<Window> registrar = ventana ->
+                ventana.addEventHandler(WindowEvent.WINDOW_HIDDEN, e -> cancelar(vista));
+        if (escena.getWindow() != null) {
+            registrar.accept(escena.getWindow());
+        } else {
+            escena.windowProperty().addListener((obs, anterior, ventana) -> {
+                if (ventana != null) {
+                    registrar.accept(ventana);
+                }
+            });
+        }
+    }
+
+    private void actualizarOcupado(Vista estado) {
+        boolean ocupado = estado.activos > 0;
+        entrega.execute(() -> estado.ocupado.set(ocupado));
+    }
+
+    private void terminar(Trabajo<?> trabajo) {
+        Vista estado = vistas.get(trabajo.vista);
+        if (estado == null) {
+            return;
+        }
+        synchronized (estado) {
+            if (estado.enCurso.get(trabajo.clave) == trabajo) {
+                estado.enCurso.remove(trabajo.clave);
+                estado.activos--;
+                actualizarOcupado(estado);
+            }
+        }
+    }
+
+    private static void mostrarError(String clave, Throwable error) {
+        LOGGER.log(Level.WARNING, "Falló la tarea " + clave, error);
+        AlertUtils.mostrarError("Error", "No se pudo completar la operación: " + error.getMessage());
+    }
+
+    /**
+     * Inicia la medición de bloqueos del hilo de JavaFX
+     */
+    public synchronized void iniciarMonitor() {
+        if (monitor != null) {
+            return;
+        }
+        monitor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread hilo = new Thread(r, "monitor-fx");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        monitor.scheduleAtFixedRate(this::latir, PERIODO_LATIDO_MS, PERIODO_LATIDO_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Envía un latido al hilo de JavaFX; si el anterior sigue sin atenderse y ya pasó
+     * el umbral, registra (una vez por bloqueo) en qué está ocupado ese hilo
+     */
+    void latir() {
+        long pendiente = latidoPendiente.get();
+        if (pendiente != 0) {
+            long esperando = System.nanoTime() - pendiente;
+            Thread hilo = hiloFx;
+            if (!pilaRegistrada && esperando > umbralBloqueoNanos && hilo != null) {
+                pilaRegistrada = true;
+                registrarPila(hilo, esperando);
+            }
+            return;
+        }
+        long enviado = System.nanoTime();
+        latidoPendiente.set(enviado);
+        entrega.execute(() -> {
+            hiloFx = Thread.currentThread();
+            registrarLatido(System.nanoTime() - enviado);
+            pilaRegistrada = false;
+            latidoPendiente.set(0);
+        });
+    }
+
+    void registrarLatido(long nanos) {
+        bloqueos.registrar(nanos);
+        if (nanos > umbralBloqueoNanos) {
+            bloqueosLargos.increment();
+            LOGGER.warning("Hilo de JavaFX bloqueado " + TimeUnit.NANOSECONDS.toMillis(nanos) + " ms");
+        }
+    }
+
+    private static void registrarPila(Thread hilo, long nanos) {
+        StringBuilder pila = new StringBuilder("Hilo de JavaFX ocupado hace ")
+                .append(TimeUnit.NANOSECONDS.toMillis(nanos)).append(" ms en:");
+        for (StackTraceElement elemento : hilo.getStackTrace()) {
+            pila.append("\n\tat ").append(elemento);
+        }
+        LOGGER.warning(pila.toString());
+    }
+
+    /**
+     * Detiene el monitor y cancela los trabajos pendientes (al cerrar la aplicación);
+     * los que ya corren terminan sin interrumpirse
+     */
+    public synchronized void detener() {
+        if (monitor != null) {
+            monitor.shutdownNow();
+            monitor = null;
+        }
+        new ArrayList<>(vistas.keySet()).forEach(this::cancelar);
+        hilos.shutdown();
+    }
+
+    /**
+     * Resumen de las métricas, para el registro al cerrar
+     */
+    public String getEstadisticas() {
+        return String.format("tareas=%d agrupadas=%d canceladas=%d fallidas=%d bloqueosFx=%d (>%d ms) " +
+                             "bloqueoFxMaximo=%d ms",
+                ejecutadas.sum(), agrupadas.sum(), canceladas.sum(), fallidas.sum(), bloqueosLargos.sum(),
+                TimeUnit.NANOSECONDS.toMillis(umbralBloqueoNanos), getBloqueoMaximoMs());
+    }
+
+    /**
+     * Mayor demora medida del hilo de JavaFX en atender un latido
+     */
+    public long getBloqueoMaximoMs() {
+        return TimeUnit.NANOSECONDS.toMillis(bloqueos.maximoNanos());
+    }
+
+    public long getAgrupadas() {
+        return agrupadas.sum();
+    }
+
+    public long getCanceladas() {
+        return canceladas.sum();
+    }
+
+    /**
+     * Métricas en formato de texto de Prometheus
+     */
+    public void exportarPrometheus(StringBuilder sb) {
+        sb.append("# HELP omega_fx_bloqueo_segundos Demora del hilo de JavaFX en atender un latido\n");
+        sb.append("# TYPE omega_fx_bloqueo_segundos histogram\n");
+        bloqueos.exportar(sb, "omega_fx_bloqueo_segundos", null, null);
+        sb.append("# HELP omega_tarea_ui_duracion_segundos Duración de los trabajos de las pantallas\n");
+        sb.append("# TYPE omega_tarea_ui_duracion_segundos histogram\n");
+        for (Map.Entry<String, MetricasBD.Histograma> entrada : duraciones.entrySet()) {
+            entrada.getValue().exportar(sb, "omega_tarea_ui_duracion_segundos", "tarea", entrada.getKey());
+        }
+        sb.append("# HELP omega_tareas_ui_total Trabajos de las pantallas por resultado\n");
+        sb.append("# TYPE omega_tareas_ui_total counter\n");
+        sb.append("omega_tareas_ui_total{resultado=\"ejecutada\"} ").append(ejecutadas.sum()).append('\n');
+        sb.append("omega_tareas_ui_total{resultado=\"agrupada\"} ").append(agrupadas.sum()).append('\n');
+        sb.append("omega_tareas_ui_total{resultado=\"cancelada\"} ").append(canceladas.sum()).append('\n');
+        sb.append("omega_tareas_ui_total{resultado=\"fallida\"} ").append(fallidas.sum()).append('\n');
+    }
+
+    /**
+     * Trabajos en curso de una vista
+     */
+    private static final class Vista {
+        private final Map<String, Trabajo<?>> enCurso = new HashMap<>();
+        private final ReadOnlyBooleanWrapper ocupado = new ReadOnlyBooleanWrapper();
+        private int activos;
+    }
+
+    /**
+     * Trabajo en el grupo de hilos que, al terminar, entrega su resultado en el hilo
+     * de JavaFX si no se canceló
+     */
+    private final class Trabajo<T> extends FutureTask<T> {
+        private final Object vista;
+        private final String clave;
+        private final Consumer<? super T> alTerminar;
+        private final Consumer<Throwable> alFallar;
+        private final long inicio = System.nanoTime();
+        // Task de JavaFX que envuelve, si la hay, para cancelarla junto con el trabajo
+        private volatile Task<?> tarea;
+
+        Trabajo(Object vista, String clave, Callable<T> trabajo, Consumer<? super T> alTerminar,
+                Consumer<Throwable> alFallar) {
+            super(trabajo);
+            this.vista = vista;
+            this.clave = clave;
+            this.alTerminar = alTerminar;
+            this.alFallar = alFallar;
+        }
+
+        @Override
+        public boolean cancel(boolean interrumpir) {
+            if (tarea != null) {
+                tarea.cancel(interrumpir);
+            }
+            return super.cancel(interrumpir);
+        }
+
+        @Override
+        protected void done() {
+            duraciones.computeIfAbsent(clave, c -> new MetricasBD.Histograma()).registrar(System.nanoTime() - inicio);
+            if (isCancelled()) {
+                // Si se canceló solo este trabajo la vista sigue; deja de contarlo
+                entrega.execute(() -> terminar(this));
+                return;
+            }
+            entrega.execute(() -> {
+                terminar(this);
+                if (isCancelled()) {
+                    return;
+                }
+                T resultado;
+                try {
+                    resultado = get();
+                } catch (CancellationException | InterruptedException e) {
+                    return;
+                } catch (Exception e) {
+                    fallidas.increment();
+                    alFallar.accept(e.getCause() != null ? e.getCause() : e);
+                    return;
+                }
+                ejecutadas.increment();
+                alTerminar.accept(resultado);
+            });
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.distribuciones.omega.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Traza de una operación de negocio (por ejemplo "guardarYFacturar") y de sus pasos.
+ *
+ * Se abre con {@link #iniciar(String)} en un try-with-resources; las trazas abiertas
+ * dentro, en el mismo hilo, quedan como pasos de la actual. Mientras está abierta
+ * acumula las sentencias SQL que ejecuta el hilo y su tiempo en la base de datos.
+ * Al cerrarse registra la duración en {@link MetricasBD} y, si es la operación
+ * principal, deja en el log el desglose por pasos.
+ *
+ * <pre>
+ * try (Traza traza = Traza.iniciar("guardarYFacturar")) {
+ *     ...
+ * }
+ * </pre>
+ */
+public final class Traza implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(Traza.class.getName());
+    private static final ThreadLocal<Traza> ACTUAL = new ThreadLocal<>();
+
+    private final String operacion;
+    private final Traza padre;
+    private final long inicio = System.nanoTime();
+    private List<Traza> pasos;
+    private long duracionNanos = -1;
+    private long consultas;
+    private long nanosBD;
+    private boolean resumenEnLog = true;
+
+    private Traza(String operacion, Traza padre) {
+        this.operacion = operacion;
+        this.padre = padre;
+    }
+
+    /**
+     * Abre una traza en el hilo actual
+     * @param operacion Nombre de la operación o paso
+     * @return La traza, que se debe cerrar en el mismo hilo
+     */
+    public static Traza iniciar(String operacion) {
+        Traza padre = ACTUAL.get();
+        Traza traza = new Traza(operacion, padre);
+        if (padre != null) {
+            if (padre.pasos == null) {
+                padre.pasos = new ArrayList<>();
+            }
+            padre.pasos.add(traza);
+        }
+        ACTUAL.set(traza);
+        return traza;
+    }
+
+    /**
+     * Como {@link #iniciar(String)}, pero sin dejar el desglose en el log al cerrarse;
+     * para quien informa los tiempos por su cuenta (ver {@link Arranque})
+     */
+    static Traza iniciarSinResumen(String operacion) {
+        Traza traza = iniciar(operacion);
+        traza.resumenEnLog = false;
+        return traza;
+    }
+
+    /**
+     * Traza abierta en el hilo actual, o null
+     */
+    public static Traza actual() {
+        return ACTUAL.get();
+    }
+
+    /**
+     * Suma una sentencia SQL a la traza abierta en el hilo actual, si la hay
+     */
+    static void registrarConsulta(long nanos) {
+        Traza traza = ACTUAL.get();
+        if (traza != null) {
+            traza.consultas++;
+            traza.nanosBD += nanos;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (duracionNanos >= 0) {
+            return;
+        }
+        duracionNanos = System.nanoTime() - inicio;
+        // Restaurar la traza exterior aunque se cierren fuera de orden
+        if (ACTUAL.get() == this) {
+            ACTUAL.set(padre);
+        }
+        if (padre != null) {
+            padre.consultas += consultas;
+            padre.nanosBD += nanosBD;
+        }
+        MetricasBD.getInstance().registrarOperacion(operacion, duracionNanos, consultas, nanosBD);
+        if (padre == null && resumenEnLog) {
+            LOGGER.info(resumen());
+        }
+    }
+
+    public String getOperacion() {
+        return operacion;
+    }
+
+    public long getConsultas() {
+        return consultas;
+    }
+
+    public List<Traza> getPasos() {
+        return pasos == null ? List.of() : pasos;
+    }
+
+    /**
+     * Duración en milisegundos (hasta ahora, si sigue abierta)
+     */
+    public double getDuracionMs() {
+        return (duracionNanos >= 0 ? duracionNanos : System.nanoTime() - inicio) / 1e6;
+    }
+
+    /**
+     * Desglose de la operación: "guardarYFacturar 84.1 ms (12 consultas, 30.2 ms en BD) [cotizacion 10.3 ms (3), ...]"
+     */
+    public String resumen() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%s %.1f ms (%d consultas, %.1f ms en BD)",
+                                operacion, getDuracionMs(), consultas, nanosBD / 1e6));
+        if (pasos != null) {
+            sb.append(" [");
+            for (int i = 0; i < pasos.size(); i++) {
+                Traza paso = pasos.get(i);
+                if (i > 0) {
+                    sb.append(", ");
+                }
+                sb.append(String.format("%s %.1f ms (%d)", paso.operacion, paso.getDuracionMs(), paso.consultas));
+            }
+            sb.append(']');
+        }
+        return sb.toString();
+    }
+}
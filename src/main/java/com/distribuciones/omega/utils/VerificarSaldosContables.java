@@ -0,0 +1,45 @@
+package com.distribuciones.omega.utils;
+
+import com.distribuciones.omega.repository.MovimientoContableRepository;
+import com.distribuciones.omega.repository.SaldosContablesRepository;
+
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Concilia los saldos contables (acumulados y fotos de cada cierre) contra los
+ * movimientos registrados.
+ *
+ * Uso: VerificarSaldosContables [--reparar]
+ * Con --reparar recalcula los saldos acumulados si no coinciden; las fotos de los
+ * cierres nunca se modifican, solo se informan. Termina con código 2 si hay diferencias.
+ */
+public class VerificarSaldosContables {
+
+    public static void main(String[] args) {
+        boolean reparar = args.length > 0 && "--reparar".equals(args[0]);
+
+        long inicio = System.currentTimeMillis();
+        int codigo = 0;
+        try {
+            new MovimientoContableRepository().createTableIfNotExists();
+            List<String> diferencias = new SaldosContablesRepository().verificar(reparar);
+            if (diferencias.isEmpty()) {
+                System.out.println("Saldos contables conciliados sin diferencias en " +
+                                   (System.currentTimeMillis() - inicio) + " ms");
+            } else {
+                diferencias.forEach(d -> System.out.println("Diferencia: " + d));
+                System.out.println(diferencias.size() + " diferencias" +
+                                   (reparar ? "; saldos acumulados recalculados" : ""));
+                codigo = 2;
+            }
+        } catch (SQLException e) {
+            System.err.println("Error al verificar los saldos contables: " + e.getMessage());
+            e.printStackTrace();
+            codigo = 1;
+        } finally {
+            DBUtil.cerrarPool();
+        }
+        System.exit(codigo);
+    }
+}
@@ -0,0 +1,26 @@
+-- Órdenes de venta generadas desde cotizaciones (OrdenRepository).
+-- Hasta esta versión ninguna parte de la aplicación creaba estas tablas.
+CREATE TABLE IF NOT EXISTS ordenes (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    numero_orden VARCHAR(50) NOT NULL UNIQUE,
+    cliente_id BIGINT NOT NULL,
+    vendedor_id BIGINT NOT NULL,
+    fecha TIMESTAMP NOT NULL,
+    cotizacion_id BIGINT,
+    subtotal DECIMAL(10,2) NOT NULL,
+    descuento DECIMAL(10,2) NOT NULL DEFAULT 0,
+    iva DECIMAL(10,2) NOT NULL,
+    total DECIMAL(10,2) NOT NULL,
+    facturada BOOLEAN NOT NULL DEFAULT FALSE,
+    factura_id BIGINT
+);
+
+CREATE TABLE IF NOT EXISTS items_orden (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    orden_id BIGINT NOT NULL,
+    producto_id BIGINT NOT NULL,
+    cantidad INT NOT NULL,
+    precio_unitario DECIMAL(10,2) NOT NULL,
+    subtotal DECIMAL(10,2) NOT NULL,
+    INDEX idx_items_orden (orden_id)
+);
@@ -0,0 +1,18 @@
+-- Promociones (PromocionRepository, MotorPromociones).
+-- codigo_producto guarda la lista de códigos y categorías separada por comas, o TODAS.
+CREATE TABLE IF NOT EXISTS promociones (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    descripcion VARCHAR(200) NOT NULL,
+    tipo VARCHAR(20) NOT NULL,
+    valor DOUBLE NOT NULL,
+    codigo_producto VARCHAR(500),
+    fecha_inicio DATE NOT NULL,
+    fecha_fin DATE NOT NULL,
+    activa BOOLEAN DEFAULT TRUE
+);
+
+ALTER TABLE promociones MODIFY COLUMN codigo_producto VARCHAR(500);
+
+-- Los 2x1 se reconocían por la descripción; ahora tienen su propio tipo
+UPDATE promociones SET tipo = '2X1'
+WHERE tipo <> 'PORCENTAJE' AND UPPER(descripcion) LIKE '%2X1%';
@@ -0,0 +1,4 @@
+-- Los acumulados de ventas se suman con total = total + ?; en DOUBLE cada suma
+-- arrastra error de redondeo. DECIMAL(15,2) guarda los centavos exactos.
+ALTER TABLE ventas_diarias MODIFY total DECIMAL(15,2) NOT NULL DEFAULT 0;
+ALTER TABLE ventas_diarias MODIFY total_anulado DECIMAL(15,2) NOT NULL DEFAULT 0;
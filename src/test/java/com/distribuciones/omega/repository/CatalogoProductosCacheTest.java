@@ -0,0 +1,161 @@
+package com.distribuciones.omega.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.distribuciones.omega.model.ProductoInventario;
+import com.distribuciones.omega.utils.DBUtil;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Verifica que el catálogo en memoria atienda las lecturas sin ir a la base de datos,
+ * que las escrituras lo invaliden y que el refresco por diferencias recoja los cambios
+ * hechos desde otra terminal.
+ */
+class CatalogoProductosCacheTest {
+
+    private static JdbcDataSource h2;
+
+    @BeforeAll
+    static void prepararBaseDeDatos() throws Exception {
+        h2 = new JdbcDataSource();
+        h2.setURL("jdbc:h2:mem:catalogo;MODE=MySQL;DB_CLOSE_DELAY=-1");
+        h2.setUser("sa");
+
+        try (Connection conn = h2.getConnection(); Statement st = conn.createStatement()) {
+            st.execute("CREATE TABLE productos (id VARCHAR(50) PRIMARY KEY, nombre VARCHAR(100), precio DOUBLE, " +
+                    "cantidad INT, categoria VARCHAR(50), activo BOOLEAN DEFAULT TRUE, " +
+                    // La agrega la migración 5
+                    "ultima_modificacion TIMESTAMP DEFAULT CURRENT_TIMESTAMP)");
+        }
+        DBUtil.usarDataSource(h2);
+    }
+
+    @AfterAll
+    static void liberar() {
+        CatalogoProductosCache.getInstance().detenerRefresco();
+        CatalogoProductosCache.getInstance().invalidarTodo();
+        DBUtil.cerrarPool();
+    }
+
+    @BeforeEach
+    void reiniciarProductos() throws Exception {
+        try (Connection conn = h2.getConnection(); Statement st = conn.createStatement()) {
+            st.execute("DELETE FROM productos");
+            st.execute("INSERT INTO productos (id, nombre, precio, cantidad) VALUES ('P1', 'Portátil', 2500000, 10)");
+            st.execute("INSERT INTO productos (id, nombre, precio, cantidad) VALUES ('P2', 'Mouse', 50000, 50)");
+        }
+        CatalogoProductosCache.getInstance().invalidarTodo();
+    }
+
+    @Test
+    void lecturasRepetidasNoConsultanLaBaseDeDatos() {
+        CatalogoProductosCache catalogo = new CatalogoProductosCache(new InventarioRepository());
+
+        assertEquals(2, catalogo.obtenerTodos().size());
+        assertEquals(2, catalogo.obtenerTodos().size());
+        ProductoInventario p1 = catalogo.obtenerPorCodigo("P1");
+        assertEquals(10, p1.getCantidad());
+        assertNull(catalogo.obtenerPorCodigo("NO-EXISTE"));
+
+        // Se entregan copias: modificar una no altera el catálogo
+        p1.setCantidad(0);
+        assertNotSame(p1, catalogo.obtenerPorCodigo("P1"));
+        assertEquals(10, catalogo.obtenerPorCodigo("P1").getCantidad());
+
+        CatalogoProductosCache.EstadisticasCatalogo estadisticas = catalogo.getEstadisticas();
+        assertEquals(1, estadisticas.getRecargasCompletas());
+        assertEquals(4, estadisticas.getAciertos());
+        assertEquals(2, estadisticas.getFallos());
+    }
+
+    @Test
+    void escriturasDelRepositorioInvalidanLaEntrada() {
+        CatalogoProductosCache catalogo = CatalogoProductosCache.getInstance();
+        assertEquals(10, catalogo.obtenerPorCodigo("P1").getCantidad());
+
+        ProductoInventario cambio = new ProductoInventario("P1", "Portátil", 2500000, 7);
+        new InventarioRepository().update(cambio);
+
+        assertEquals(7, catalogo.obtenerPorCodigo("P1").getCantidad());
+        assertEquals(7, catalogo.obtenerTodos().stream()
+                .filter(p -> "P1".equals(p.getCodigo())).findFirst().get().getCantidad());
+    }
+
+    @Test
+    void refrescoPorDiferenciasRecogeCambiosDeOtraTerminal() throws Exception {
+        CatalogoProductosCache catalogo = CatalogoProductosCache.getInstance();
+        catalogo.iniciarRefresco(3600);
+        try {
+            assertEquals(2, catalogo.obtenerTodos().size());
+            long recargas = catalogo.getEstadisticas().getRecargasCompletas();
+
+            // Otra terminal vende unidades sin pasar por este proceso
+            try (Connection conn = h2.getConnection(); Statement st = conn.createStatement()) {
+                st.execute("UPDATE productos SET cantidad = 3, " +
+                        "ultima_modificacion = DATEADD('SECOND', 5, CURRENT_TIMESTAMP) WHERE id = 'P2'");
+            }
+            assertEquals(50, catalogo.obtenerPorCodigo("P2").getCantidad());
+
+            catalogo.refrescar();
+
+            assertEquals(3, catalogo.obtenerPorCodigo("P2").getCantidad());
+            assertEquals(10, catalogo.obtenerPorCodigo("P1").getCantidad());
+            assertEquals(recargas, catalogo.getEstadisticas().getRecargasCompletas());
+            assertEquals(1, catalogo.getEstadisticas().getRefrescosDelta());
+        } finally {
+            catalogo.detenerRefresco();
+        }
+    }
+
+    @Test
+    void unaRecargaLentaNoDetieneLasLecturasNiPisaLoInvalidado() throws Exception {
+        // La recarga se queda esperando con una lectura ya vieja de P1
+        CountDownLatch leyendo = new CountDownLatch(1);
+        CountDownLatch continuar = new CountDownLatch(1);
+        CatalogoProductosCache catalogo = new CatalogoProductosCache(new InventarioRepository() {
+            @Override
+            public List<ProductoInventario> findAll() {
+                List<ProductoInventario> productos = super.findAll();
+                leyendo.countDown();
+                try {
+                    continuar.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return productos;
+            }
+        });
+        assertEquals(10, catalogo.obtenerPorCodigo("P1").getCantidad());
+        CompletableFuture<List<ProductoInventario>> recarga = CompletableFuture.supplyAsync(catalogo::obtenerTodos);
+        assertTrue(leyendo.await(5, TimeUnit.SECONDS));
+
+        try (Connection conn = h2.getConnection(); Statement st = conn.createStatement()) {
+            st.execute("UPDATE productos SET cantidad = 4 WHERE id = 'P1'");
+        }
+        assertTimeoutPreemptively(Duration.ofSeconds(2), () -> {
+            catalogo.invalidar("P1");
+            assertEquals(4, catalogo.obtenerPorCodigo("P1").getCantidad());
+            assertEquals(50, catalogo.obtenerPorCodigo("P2").getCantidad());
+        });
+
+        continuar.countDown();
+        assertEquals(2, recarga.get(5, TimeUnit.SECONDS).size());
+        // La lectura completa empezó antes del cambio y no debe reemplazarlo
+        assertEquals(4, catalogo.obtenerPorCodigo("P1").getCantidad());
+    }
+}
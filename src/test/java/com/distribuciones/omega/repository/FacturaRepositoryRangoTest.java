@@ -0,0 +1,233 @@
+package com.distribuciones.omega.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.distribuciones.omega.model.Factura;
+import com.distribuciones.omega.utils.DBUtil;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import javax.sql.DataSource;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Verifica que las consultas por rango de fechas usen un número constante de
+ * sentencias SQL sin importar cuántas facturas devuelvan (sin N+1), y que las
+ * páginas por clave recorran el mismo rango en el mismo orden.
+ */
+class FacturaRepositoryRangoTest {
+
+    private static final int DIAS = 90;
+    private static final int FACTURAS_POR_DIA = 20;
+    private static final LocalDateTime FIN = LocalDateTime.of(2025, 3, 31, 23, 59, 59);
+
+    private static final AtomicInteger sentencias = new AtomicInteger();
+
+    @BeforeAll
+    static void prepararBaseDeDatos() throws Exception {
+        JdbcDataSource h2 = new JdbcDataSource();
+        h2.setURL("jdbc:h2:mem:facturas_rango;MODE=MySQL;DB_CLOSE_DELAY=-1");
+        h2.setUser("sa");
+
+        try (Connection conn = h2.getConnection(); Statement st = conn.createStatement()) {
+            st.execute("CREATE TABLE clientes (id_cliente BIGINT AUTO_INCREMENT PRIMARY KEY, nombre VARCHAR(100), " +
+                    "id VARCHAR(20), email VARCHAR(100), telefono VARCHAR(20), direccion VARCHAR(200), " +
+                    "activo BOOLEAN DEFAULT TRUE, mayorista BOOLEAN DEFAULT FALSE, limite_credito DOUBLE DEFAULT 0)");
+            st.execute("CREATE TABLE usuarios (id_usuario BIGINT AUTO_INCREMENT PRIMARY KEY, username VARCHAR(50), " +
+                    "password VARCHAR(100), nombre VARCHAR(100), rol VARCHAR(20), activo BOOLEAN DEFAULT TRUE)");
+            st.execute("CREATE TABLE productos (id VARCHAR(50) PRIMARY KEY, nombre VARCHAR(100), precio DOUBLE, " +
+                    "cantidad INT, categoria VARCHAR(50), activo BOOLEAN DEFAULT TRUE)");
+            st.execute("CREATE TABLE facturas (id_factura BIGINT AUTO_INCREMENT PRIMARY KEY, numero_factura VARCHAR(50), " +
+                    "cliente_id BIGINT, vendedor_id BIGINT, fecha TIMESTAMP, orden_id BIGINT, subtotal DOUBLE, " +
+                    "descuento DOUBLE, iva DOUBLE, total DOUBLE, anulada BOOLEAN DEFAULT FALSE, " +
+                    "motivo_anulacion VARCHAR(255), fecha_anulacion TIMESTAMP, forma_pago VARCHAR(50), " +
+                    "pagada BOOLEAN DEFAULT FALSE, fecha_pago TIMESTAMP)");
+            st.execute("CREATE TABLE items_factura (id BIGINT AUTO_INCREMENT PRIMARY KEY, factura_id BIGINT, " +
+                    "producto_id VARCHAR(50), cantidad INT, precio_unitario DOUBLE, descuento DOUBLE, subtotal DOUBLE)");
+            st.execute("CREATE TABLE detalle_factura (id_detalle BIGINT AUTO_INCREMENT PRIMARY KEY, id_factura BIGINT, " +
+                    "id VARCHAR(50), cantidad INT, precio_unitario DOUBLE, subtotal DOUBLE)");
+
+            for (int i = 1; i <= 5; i++) {
+                st.execute("INSERT INTO clientes (nombre, id, email) VALUES ('Cliente " + i + "', '10" + i + "', 'c" + i + "@omega.com')");
+                st.execute("INSERT INTO usuarios (username, nombre, rol) VALUES ('vendedor" + i + "', 'Vendedor " + i + "', 'VENDEDOR')");
+            }
+            for (int i = 1; i <= 10; i++) {
+                st.execute("INSERT INTO productos (id, nombre, precio, cantidad) VALUES ('P" + i + "', 'Producto " + i + "', " + (i * 1000) + ", 100)");
+            }
+
+            try (PreparedStatement factura = conn.prepareStatement(
+                    "INSERT INTO facturas (numero_factura, cliente_id, vendedor_id, fecha, subtotal, descuento, iva, total, forma_pago) " +
+                    "VALUES (?, ?, ?, ?, 3000, 0, 570, 3570, 'EFECTIVO')", Statement.RETURN_GENERATED_KEYS);
+                 PreparedStatement item = conn.prepareStatement(
+                    "INSERT INTO items_factura (factura_id, producto_id, cantidad, precio_unitario, descuento, subtotal) " +
+                    "VALUES (?, ?, 1, 1000, 0, 1000)")) {
+                int n = 0;
+                for (int dia = 0; dia < DIAS; dia++) {
+                    for (int j = 0; j < FACTURAS_POR_DIA; j++, n++) {
+                        factura.setString(1, "FACT-" + n);
+                        factura.setLong(2, n % 5 + 1);
+                        factura.setLong(3, n % 5 + 1);
+                        factura.setTimestamp(4, Timestamp.valueOf(FIN.minusDays(dia).minusMinutes(j)));
+                        factura.executeUpdate();
+                        try (var keys = factura.getGeneratedKeys()) {
+                            keys.next();
+                            long id = keys.getLong(1);
+                            for (int k = 0; k < 3; k++) {
+                                item.setLong(1, id);
+                                item.setString(2, "P" + ((n + k) % 10 + 1));
+                                item.addBatch();
+                            }
+                        }
+                    }
+                    item.executeBatch();
+                }
+            }
+        }
+
+        DBUtil.usarDataSource(contarSentencias(h2));
+    }
+
+    @AfterAll
+    static void liberar() {
+        DBUtil.cerrarPool();
+    }
+
+    @Test
+    void consultasPorRangoUsanNumeroConstanteDeSentencias() {
+        FacturaRepository repository = new FacturaRepository();
+        int referencia = -1;
+
+        for (int dias : new int[] {1, 7, 30, 90}) {
+            LocalDateTime inicio = FIN.minusDays(dias).plusSeconds(1);
+
+            sentencias.set(0);
+            long t0 = System.nanoTime();
+            List<Factura> facturas = repository.buscarFacturasPorRango(inicio, FIN);
+            long ms = (System.nanoTime() - t0) / 1_000_000;
+            int consultas = sentencias.get();
+
+            System.out.printf("Rango %2d días: %5d facturas, %d consultas, %d ms%n",
+                    dias, facturas.size(), consultas, ms);
+
+            assertEquals(dias * FACTURAS_POR_DIA, facturas.size());
+            Factura primera = facturas.get(0);
+            assertNotNull(primera.getCliente());
+            assertNotNull(primera.getVendedor());
+            assertEquals(3, primera.getItems().size());
+            assertNotNull(primera.getItems().get(0).getProducto().getDescripcion());
+
+            if (referencia < 0) {
+                referencia = consultas;
+            }
+            assertEquals(referencia, consultas, "El número de consultas no debe crecer con el rango");
+        }
+    }
+
+    @Test
+    void consultaPorVendedorFiltraConColumnasReales() {
+        FacturaRepository repository = new FacturaRepository();
+
+        sentencias.set(0);
+        List<Factura> facturas = repository.buscarFacturasPorVendedorYRango(2L, FIN.minusDays(30), FIN);
+
+        assertFalse(facturas.isEmpty());
+        facturas.forEach(f -> assertEquals(2L, f.getVendedor().getIdUsuario()));
+        assertEquals(2, sentencias.get());
+    }
+
+    @Test
+    void recorrerCabecerasEntregaFilaAFilaConUnaConsulta() {
+        FacturaRepository repository = new FacturaRepository();
+        LocalDateTime inicio = FIN.minusDays(DIAS);
+
+        sentencias.set(0);
+        AtomicInteger conCliente = new AtomicInteger();
+        int recorridas = repository.recorrerCabecerasPorRango(null, inicio, FIN, f -> {
+            if (f.getCliente() != null && f.getVendedor() != null) {
+                conCliente.incrementAndGet();
+            }
+        });
+
+        assertEquals(1, sentencias.get());
+        assertEquals(DIAS * FACTURAS_POR_DIA, recorridas);
+        assertEquals(recorridas, conCliente.get());
+        assertEquals(recorridas, repository.contarFacturasPorRango(null, inicio, FIN));
+        assertEquals(recorridas / 5, repository.contarFacturasPorRango(3L, inicio, FIN));
+    }
+
+    @Test
+    void paginasPorClaveRecorrenElRangoConUnaConsultaCadaUna() {
+        FacturaRepository repository = new FacturaRepository();
+        LocalDateTime inicio = FIN.minusDays(30).plusSeconds(1);
+        List<Factura> completo = repository.buscarFacturasPorRango(inicio, FIN);
+
+        sentencias.set(0);
+        List<Factura> paginado = new ArrayList<>();
+        List<Factura> pagina = repository.buscarPaginaPorRango(null, inicio, FIN, null, 70);
+        int paginas = 1;
+        while (!pagina.isEmpty()) {
+            assertTrue(pagina.get(0).getItems().isEmpty(), "Las páginas traen solo cabeceras");
+            paginado.addAll(pagina);
+            pagina = repository.buscarPaginaPorRango(null, inicio, FIN, pagina.get(pagina.size() - 1), 70);
+            paginas++;
+        }
+
+        assertEquals(paginas, sentencias.get());
+        assertEquals(completo.stream().map(Factura::getId).collect(Collectors.toList()),
+                paginado.stream().map(Factura::getId).collect(Collectors.toList()));
+
+        // Ítems solo de las facturas que se abren
+        sentencias.set(0);
+        List<Factura> abiertas = paginado.subList(0, 5);
+        repository.cargarItems(abiertas);
+        assertEquals(1, sentencias.get());
+        abiertas.forEach(f -> assertEquals(3, f.getItems().size()));
+        assertEquals(3570_00L * completo.size(), repository.sumarTotalesPorRango(null, inicio, FIN));
+    }
+
+    /**
+     * Envuelve el DataSource para contar cada sentencia que preparan los repositorios
+     */
+    private static DataSource contarSentencias(DataSource destino) {
+        return (DataSource) Proxy.newProxyInstance(
+                DataSource.class.getClassLoader(), new Class<?>[] {DataSource.class},
+                (proxy, metodo, args) -> {
+                    Object resultado = invocar(destino, metodo, args);
+                    if (!"getConnection".equals(metodo.getName())) {
+                        return resultado;
+                    }
+                    Connection conn = (Connection) resultado;
+                    return Proxy.newProxyInstance(
+                            Connection.class.getClassLoader(), new Class<?>[] {Connection.class},
+                            (p, m, a) -> {
+                                if (m.getName().equals("prepareStatement") || m.getName().equals("createStatement")) {
+                                    sentencias.incrementAndGet();
+                                }
+                                return invocar(conn, m, a);
+                            });
+                });
+    }
+
+    private static Object invocar(Object destino, Method metodo, Object[] args) throws Throwable {
+        try {
+            return metodo.invoke(destino, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
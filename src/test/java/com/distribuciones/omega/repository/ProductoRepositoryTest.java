@@ -0,0 +1,172 @@
+package com.distribuciones.omega.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.distribuciones.omega.model.Categoria;
+import com.distribuciones.omega.model.InsumoOficina;
+import com.distribuciones.omega.model.Producto;
+import com.distribuciones.omega.model.ProductoMobilario;
+import com.distribuciones.omega.model.ProductoTecnologico;
+import com.distribuciones.omega.utils.DBUtil;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sql.DataSource;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Verifica que el catálogo se cargue con una sola consulta (sin una consulta
+ * por producto para su subtipo) y que cada fila se materialice en la clase correcta.
+ */
+class ProductoRepositoryTest {
+
+    private static final int PRODUCTOS_POR_TIPO = 500;
+
+    private static final AtomicInteger sentencias = new AtomicInteger();
+
+    @BeforeAll
+    static void prepararBaseDeDatos() throws Exception {
+        JdbcDataSource h2 = new JdbcDataSource();
+        h2.setURL("jdbc:h2:mem:productos_subtipos;MODE=MySQL;DB_CLOSE_DELAY=-1");
+        h2.setUser("sa");
+
+        try (Connection conn = h2.getConnection(); Statement st = conn.createStatement()) {
+            st.execute("CREATE TABLE productos (id VARCHAR(20) PRIMARY KEY, id_producto VARCHAR(20), " +
+                    "nombre VARCHAR(100) NOT NULL, precio DOUBLE NOT NULL, cantidad INT NOT NULL, " +
+                    "categoria VARCHAR(50) NOT NULL, tipo_producto VARCHAR(50) NOT NULL)");
+            st.execute("CREATE TABLE insumos_oficina (producto_id VARCHAR(20) PRIMARY KEY, presentacion VARCHAR(50), " +
+                    "tipo_papel VARCHAR(50), cantidad_por_paquete INT)");
+            st.execute("CREATE TABLE productos_mobiliarios (producto_id VARCHAR(20) PRIMARY KEY, " +
+                    "tipo_mobiliario VARCHAR(50), material VARCHAR(50), color VARCHAR(50), dimensiones VARCHAR(50))");
+            st.execute("CREATE TABLE productos_tecnologicos (producto_id VARCHAR(20) PRIMARY KEY, marca VARCHAR(50), " +
+                    "modelo VARCHAR(50), numero_serie VARCHAR(50), garantia_meses INT, especificaciones_tecnicas TEXT)");
+
+            try (PreparedStatement producto = conn.prepareStatement(
+                    "INSERT INTO productos (id, nombre, precio, cantidad, categoria, tipo_producto) VALUES (?, ?, 1000, 10, ?, ?)");
+                 PreparedStatement insumo = conn.prepareStatement(
+                    "INSERT INTO insumos_oficina VALUES (?, 'Resma', 'Bond', 500)");
+                 PreparedStatement mobiliario = conn.prepareStatement(
+                    "INSERT INTO productos_mobiliarios VALUES (?, 'Silla', 'Madera', 'Negro', '60x60')");
+                 PreparedStatement tecnologico = conn.prepareStatement(
+                    "INSERT INTO productos_tecnologicos VALUES (?, 'Samsung', 'S24', 'SN-1', 12, 'Full HD')")) {
+                for (int i = 1; i <= PRODUCTOS_POR_TIPO; i++) {
+                    agregar(producto, insumo, String.format("INS%06d", i), "INSUMO_OFICINA", "InsumoOficina");
+                    agregar(producto, mobiliario, String.format("MOB%06d", i), "PRODUCTO_MOBILIARIO", "ProductoMobiliario");
+                    agregar(producto, tecnologico, String.format("TEC%06d", i), "PRODUCTO_TECNOLOGICO", "ProductoTecnologico");
+                }
+                producto.executeBatch();
+                insumo.executeBatch();
+                mobiliario.executeBatch();
+                tecnologico.executeBatch();
+            }
+            // Producto de un subtipo sin fila en su tabla específica: no se puede cargar completo
+            st.execute("INSERT INTO productos (id, nombre, precio, cantidad, categoria, tipo_producto) " +
+                    "VALUES ('TEC999999', 'Incompleto', 1, 1, 'PRODUCTO_TECNOLOGICO', 'ProductoTecnologico')");
+        }
+
+        DBUtil.usarDataSource(contarSentencias(h2));
+    }
+
+    @AfterAll
+    static void liberar() {
+        DBUtil.cerrarPool();
+    }
+
+    @Test
+    void findAllUsaUnaSolaConsulta() {
+        sentencias.set(0);
+        List<Producto> productos = new ProductoRepository().findAll();
+
+        assertEquals(1, sentencias.get());
+        assertEquals(3 * PRODUCTOS_POR_TIPO, productos.size());
+        assertEquals(PRODUCTOS_POR_TIPO, productos.stream().filter(p -> p instanceof InsumoOficina).count());
+        assertEquals(PRODUCTOS_POR_TIPO, productos.stream().filter(p -> p instanceof ProductoMobilario).count());
+        assertEquals(PRODUCTOS_POR_TIPO, productos.stream().filter(p -> p instanceof ProductoTecnologico).count());
+    }
+
+    @Test
+    void recorrerTodosEntregaLosProductosSinAcumularlos() {
+        AtomicInteger tecnologicos = new AtomicInteger();
+        int total = new ProductoRepository().recorrerTodos(p -> {
+            if (p instanceof ProductoTecnologico) {
+                tecnologicos.incrementAndGet();
+            }
+        });
+
+        assertEquals(3 * PRODUCTOS_POR_TIPO, total);
+        assertEquals(PRODUCTOS_POR_TIPO, tecnologicos.get());
+    }
+
+    @Test
+    void findByIdYFiltrosMaterializanElSubtipo() {
+        ProductoRepository repository = new ProductoRepository();
+
+        ProductoTecnologico tecno = (ProductoTecnologico) repository.findById("TEC000007");
+        assertEquals("Samsung", tecno.getMarca());
+        assertEquals(12, tecno.getGarantiaMeses());
+        assertEquals("Full HD", tecno.getEspecificacionesTecnicas());
+        assertEquals(Categoria.PRODUCTO_TECNOLOGICO, tecno.getCategoria());
+
+        InsumoOficina insumo = (InsumoOficina) repository.findById("INS000001");
+        assertEquals(500, insumo.getCantidadPorPaquete());
+        assertNull(repository.findById("TEC999999"));
+
+        sentencias.set(0);
+        List<Producto> mobiliarios = repository.findByCategoria(Categoria.PRODUCTO_MOBILIARIO);
+        assertEquals(1, sentencias.get());
+        assertEquals(PRODUCTOS_POR_TIPO, mobiliarios.size());
+        assertTrue(mobiliarios.stream().allMatch(p -> "Madera".equals(((ProductoMobilario) p).getMaterial())));
+    }
+
+    private static void agregar(PreparedStatement producto, PreparedStatement subtipo, String id,
+                                String categoria, String tipo) throws Exception {
+        producto.setString(1, id);
+        producto.setString(2, "Producto " + id);
+        producto.setString(3, categoria);
+        producto.setString(4, tipo);
+        producto.addBatch();
+        subtipo.setString(1, id);
+        subtipo.addBatch();
+    }
+
+    /**
+     * Envuelve el DataSource para contar cada sentencia que preparan los repositorios
+     */
+    private static DataSource contarSentencias(DataSource destino) {
+        return (DataSource) Proxy.newProxyInstance(
+                DataSource.class.getClassLoader(), new Class<?>[] {DataSource.class},
+                (proxy, metodo, args) -> {
+                    Object resultado = invocar(destino, metodo, args);
+                    if (!"getConnection".equals(metodo.getName())) {
+                        return resultado;
+                    }
+                    Connection conn = (Connection) resultado;
+                    return Proxy.newProxyInstance(
+                            Connection.class.getClassLoader(), new Class<?>[] {Connection.class},
+                            (p, m, a) -> {
+                                if (m.getName().equals("prepareStatement") || m.getName().equals("createStatement")) {
+                                    sentencias.incrementAndGet();
+                                }
+                                return invocar(conn, m, a);
+                            });
+                });
+    }
+
+    private static Object invocar(Object destino, Method metodo, Object[] args) throws Throwable {
+        try {
+            return metodo.invoke(destino, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.distribuciones.omega.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.distribuciones.omega.model.Cliente;
+import com.distribuciones.omega.model.Factura;
+import com.distribuciones.omega.model.ItemFactura;
+import com.distribuciones.omega.model.ProductoInventario;
+import com.distribuciones.omega.model.Usuario;
+import com.distribuciones.omega.repository.VentasDiariasRepository.Dimension;
+import com.distribuciones.omega.utils.DBUtil;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Verifica que los acumulados diarios se mantengan al guardar y anular facturas y
+ * al aprobar pagos, que la reconstrucción desde cero obtenga los mismos valores y
+ * que un pago que no se pudo acumular se recupere al consultar.
+ */
+class VentasDiariasRepositoryTest {
+
+    private static final LocalDate DIA = LocalDate.of(2025, 3, 10);
+
+    private static JdbcDataSource h2;
+
+    @BeforeAll
+    static void prepararBaseDeDatos() throws Exception {
+        h2 = new JdbcDataSource();
+        h2.setURL("jdbc:h2:mem:ventas_diarias;MODE=MySQL;DB_CLOSE_DELAY=-1");
+        h2.setUser("sa");
+
+        try (Connection conn = h2.getConnection(); Statement st = conn.createStatement()) {
+            st.execute("CREATE TABLE clientes (id_cliente BIGINT AUTO_INCREMENT PRIMARY KEY, nombre VARCHAR(100))");
+            st.execute("CREATE TABLE usuarios (id_usuario BIGINT AUTO_INCREMENT PRIMARY KEY, nombre VARCHAR(100))");
+            st.execute("CREATE TABLE productos (id VARCHAR(50) PRIMARY KEY, nombre VARCHAR(100), precio DOUBLE, " +
+                    "cantidad INT, categoria VARCHAR(50))");
+            st.execute("CREATE TABLE facturas (id_factura BIGINT AUTO_INCREMENT PRIMARY KEY, numero_factura VARCHAR(50), " +
+                    "cliente_id BIGINT, vendedor_id BIGINT, fecha TIMESTAMP, orden_id BIGINT, subtotal DOUBLE, " +
+                    "descuento DOUBLE, iva DOUBLE, total DOUBLE, anulada BOOLEAN DEFAULT FALSE, " +
+                    "motivo_anulacion VARCHAR(255), fecha_anulacion TIMESTAMP, forma_pago VARCHAR(50), " +
+                    "pagada BOOLEAN DEFAULT FALSE, fecha_pago TIMESTAMP)");
+            st.execute("CREATE TABLE items_factura (id BIGINT AUTO_INCREMENT PRIMARY KEY, factura_id BIGINT, " +
+                    "producto_id VARCHAR(50), cantidad INT, precio_unitario DOUBLE, descuento DOUBLE, subtotal DOUBLE)");
+            st.execute("CREATE TABLE detalle_factura (id_detalle BIGINT AUTO_INCREMENT PRIMARY KEY, id_factura BIGINT, " +
+                    "id VARCHAR(50), cantidad INT, precio_unitario DOUBLE, subtotal DOUBLE)");
+            st.execute("CREATE TABLE pagos (id BIGINT AUTO_INCREMENT PRIMARY KEY, factura_id BIGINT, monto DOUBLE, " +
+                    "metodo_pago VARCHAR(50), referencia VARCHAR(100), fecha_pago TIMESTAMP, aprobado BOOLEAN, " +
+                    "observaciones VARCHAR(255))");
+
+            st.execute("INSERT INTO clientes (nombre) VALUES ('Papelería Central'), ('Colegio Andino')");
+            st.execute("INSERT INTO usuarios (nombre) VALUES ('Ana'), ('Luis')");
+            st.execute("INSERT INTO productos VALUES ('P1', 'Resma A4', 5000, 100, 'INSUMO_OFICINA'), " +
+                    "('P2', 'Silla', 300000, 10, 'PRODUCTO_MOBILIARIO'), ('P3', 'Monitor', 800000, 5, 'PRODUCTO_TECNOLOGICO')");
+        }
+        DBUtil.usarDataSource(h2);
+        new VentasDiariasRepository().createTableIfNotExists();
+    }
+
+    @AfterAll
+    static void liberar() {
+        DBUtil.cerrarPool();
+    }
+
+    @Test
+    void acumulaFacturasAnulacionesYPagosComoLaReconstruccion() throws Exception {
+        FacturaRepository facturas = new FacturaRepository();
+        VentasDiariasRepository ventas = new VentasDiariasRepository();
+
+        // Ana: dos facturas el día 10 y una el 11; Luis: una el día 10
+        Factura f1 = facturas.save(factura(1, 1, DIA.atTime(9, 0), item("P1", 10, 5000), item("P2", 1, 300000)));
+        Factura f2 = facturas.save(factura(1, 2, DIA.atTime(15, 0), item("P3", 1, 800000)));
+        facturas.save(factura(1, 1, DIA.plusDays(1).atTime(10, 0), item("P1", 4, 5000)));
+        facturas.save(factura(2, 2, DIA.atTime(11, 0), item("P2", 2, 300000)));
+        assertNotNull(f1);
+        assertNotNull(f2);
+
+        Map<String, Double> porVendedor = ventas.totalesPorClave(Dimension.VENDEDOR, DIA, DIA.plusDays(1));
+        assertEquals(350000 + 800000 + 20000, porVendedor.get("Ana"), 0.001);
+        assertEquals(600000, porVendedor.get("Luis"), 0.001);
+        assertEquals(List.of("Ana", "Luis"), new ArrayList<>(porVendedor.keySet()));
+
+        Map<String, Double> porCategoria = ventas.totalesPorClave(Dimension.CATEGORIA, DIA, DIA);
+        assertEquals(50000, porCategoria.get("INSUMO_OFICINA"), 0.001);
+        assertEquals(900000, porCategoria.get("PRODUCTO_MOBILIARIO"), 0.001);
+
+        // Anular la factura del monitor la quita de su día, una sola vez
+        assertTrue(facturas.anular(f2.getId(), "Devolución"));
+        assertFalse(facturas.anular(f2.getId(), "Devolución repetida"));
+
+        Map<LocalDate, Double> diasAna = ventas.totalesPorDia(Dimension.VENDEDOR, "1", DIA, DIA.plusDays(1));
+        assertEquals(350000, diasAna.get(DIA), 0.001);
+        assertEquals(20000, diasAna.get(DIA.plusDays(1)), 0.001);
+        assertEquals(0, ventas.totalesPorClave(Dimension.CATEGORIA, DIA, DIA).get("PRODUCTO_TECNOLOGICO"), 0.001);
+
+        // Pago aprobado: se registra en pagos y se acumula por método
+        try (Connection conn = h2.getConnection(); Statement st = conn.createStatement()) {
+            st.execute("INSERT INTO pagos (factura_id, monto, metodo_pago, fecha_pago, aprobado) " +
+                    "VALUES (" + f1.getId() + ", 350000, 'EFECTIVO', TIMESTAMP '2025-03-10 12:00:00', TRUE)");
+        }
+        assertTrue(ventas.registrarPago("EFECTIVO", 350000, DIA.atTime(12, 0)));
+        assertEquals(350000, ventas.totalesPorClave(Dimension.METODO_PAGO, DIA, DIA).get("EFECTIVO"), 0.001);
+
+        // Recalcular desde cero debe dar exactamente lo mismo que lo acumulado
+        List<String> incremental = leerAcumulados();
+        int filas = ventas.reconstruir(DIA.minusDays(5), DIA.plusDays(5));
+        assertEquals(incremental.size(), filas);
+        assertEquals(incremental, leerAcumulados());
+    }
+
+    @Test
+    void elDiaDeUnPagoNoAcumuladoSeReconstruyeAlConsultar() throws Exception {
+        VentasDiariasRepository ventas = new VentasDiariasRepository();
+        LocalDate dia = DIA.plusDays(20);
+        try (Connection conn = h2.getConnection(); Statement st = conn.createStatement()) {
+            st.execute("INSERT INTO pagos (factura_id, monto, metodo_pago, fecha_pago, aprobado) " +
+                    "VALUES (1, 120000.10, 'TARJETA_CREDITO', TIMESTAMP '2025-03-30 09:00:00', TRUE)");
+            // Sin la tabla de acumulados la escritura falla
+            st.execute("ALTER TABLE ventas_diarias RENAME TO ventas_diarias_fuera");
+        }
+        try {
+            assertFalse(ventas.registrarPago("TARJETA_CREDITO", 120000.10, dia.atTime(9, 0)));
+        } finally {
+            try (Connection conn = h2.getConnection(); Statement st = conn.createStatement()) {
+                st.execute("ALTER TABLE ventas_diarias_fuera RENAME TO ventas_diarias");
+            }
+        }
+        assertEquals(List.of(dia), ventas.getDiasPendientes());
+
+        assertEquals(120000.10, ventas.totalesPorClave(Dimension.METODO_PAGO, dia, dia).get("TARJETA_CREDITO"), 0.001);
+        assertTrue(ventas.getDiasPendientes().isEmpty());
+    }
+
+    @Test
+    void unaFacturaConAcumuladosFallidosNoDejaIncrementosParciales() throws Exception {
+        FacturaRepository facturas = new FacturaRepository();
+        VentasDiariasRepository ventas = new VentasDiariasRepository();
+        LocalDate dia = DIA.plusDays(30);
+
+        // El vendedor se acumula, pero la etiqueta del cliente no entra en la columna
+        Factura factura = factura(2, 1, dia.atTime(10, 0), item("P2", 2, 300000));
+        factura.getCliente().setNombre("X".repeat(200));
+        assertNotNull(facturas.save(factura));
+
+        assertEquals(List.of(dia), ventas.getDiasPendientes());
+        try (Connection conn = h2.getConnection(); Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM ventas_diarias WHERE fecha = DATE '2025-04-09'")) {
+            rs.next();
+            assertEquals(0, rs.getInt(1));
+        }
+
+        assertEquals(600000, ventas.totalesPorClave(Dimension.VENDEDOR, dia, dia).get("Luis"), 0.001);
+        assertTrue(ventas.getDiasPendientes().isEmpty());
+
+        // Fuera del rango que compara la reconstrucción de los otros tests
+        try (Connection conn = h2.getConnection(); Statement st = conn.createStatement()) {
+            st.execute("DELETE FROM ventas_diarias WHERE fecha = DATE '2025-04-09'");
+            st.execute("DELETE FROM items_factura WHERE factura_id = " + factura.getId());
+            st.execute("DELETE FROM facturas WHERE id_factura = " + factura.getId());
+        }
+    }
+
+    private static List<String> leerAcumulados() throws Exception {
+        List<String> filas = new ArrayList<>();
+        try (Connection conn = h2.getConnection(); Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT * FROM ventas_diarias ORDER BY fecha, dimension, clave")) {
+            while (rs.next()) {
+                filas.add(String.format("%s %s %s %s f=%d u=%d t=%.2f fa=%d ta=%.2f",
+                        rs.getDate("fecha"), rs.getString("dimension"), rs.getString("clave"), rs.getString("etiqueta"),
+                        rs.getInt("facturas"), rs.getInt("unidades"), rs.getDouble("total"),
+                        rs.getInt("facturas_anuladas"), rs.getDouble("total_anulado")));
+            }
+        }
+        return filas;
+    }
+
+    private static Factura factura(long vendedorId, long clienteId, LocalDateTime fecha, ItemFactura... items) {
+        Usuario vendedor = new Usuario();
+        vendedor.setIdUsuario(vendedorId);
+        vendedor.setNombre(vendedorId == 1 ? "Ana" : "Luis");
+        Cliente cliente = new Cliente();
+        cliente.setIdCliente(clienteId);
+        cliente.setNombre(clienteId == 1 ? "Papelería Central" : "Colegio Andino");
+
+        Factura factura = new Factura();
+        factura.setNumeroFactura("FACT-" + fecha + "-" + vendedorId);
+        factura.setVendedor(vendedor);
+        factura.setCliente(cliente);
+        factura.setFecha(fecha);
+        for (ItemFactura item : items) {
+            factura.getItems().add(item);
+            factura.setSubtotal(factura.getSubtotal() + item.getSubtotal());
+        }
+        factura.setTotal(factura.getSubtotal());
+        return factura;
+    }
+
+    private static ItemFactura item(String codigo, int cantidad, double precio) {
+        ItemFactura item = new ItemFactura();
+        item.setProducto(new ProductoInventario(codigo, codigo, precio, 0));
+        item.setCantidad(cantidad);
+        item.setPrecioUnitario(precio);
+        item.setSubtotal(cantidad * precio);
+        return item;
+    }
+}
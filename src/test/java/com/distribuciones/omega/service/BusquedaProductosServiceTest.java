@@ -0,0 +1,162 @@
+package com.distribuciones.omega.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.distribuciones.omega.model.ProductoInventario;
+import com.distribuciones.omega.repository.CatalogoProductosCache;
+import com.distribuciones.omega.repository.InventarioRepository;
+import com.distribuciones.omega.utils.DBUtil;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Verifica la búsqueda de productos: sin tildes, por prefijo de código y por
+ * fragmento de descripción, con orden por relevancia, actualización incremental
+ * desde el catálogo y tiempos de respuesta con un catálogo grande.
+ */
+class BusquedaProductosServiceTest {
+
+    private static JdbcDataSource h2;
+
+    @BeforeAll
+    static void prepararBaseDeDatos() throws Exception {
+        h2 = new JdbcDataSource();
+        h2.setURL("jdbc:h2:mem:busqueda_productos;MODE=MySQL;DB_CLOSE_DELAY=-1");
+        h2.setUser("sa");
+
+        try (Connection conn = h2.getConnection(); Statement st = conn.createStatement()) {
+            st.execute("CREATE TABLE productos (id VARCHAR(50) PRIMARY KEY, nombre VARCHAR(100), precio DOUBLE, " +
+                    "cantidad INT, categoria VARCHAR(50), activo BOOLEAN DEFAULT TRUE, " +
+                    "ultima_modificacion TIMESTAMP DEFAULT CURRENT_TIMESTAMP)");
+            st.execute("INSERT INTO productos (id, nombre, precio, cantidad) VALUES ('TEC001', 'Cámara Web HD', 90000, 5)");
+            st.execute("INSERT INTO productos (id, nombre, precio, cantidad) VALUES ('MOB001', 'Silla Ergonómica', 450000, 3)");
+        }
+        DBUtil.usarDataSource(h2);
+        CatalogoProductosCache.getInstance().invalidarTodo();
+    }
+
+    @AfterAll
+    static void liberar() {
+        CatalogoProductosCache.getInstance().invalidarTodo();
+        DBUtil.cerrarPool();
+    }
+
+    @Test
+    void buscaSinTildesYOrdenaPorRelevancia() {
+        BusquedaProductosService busqueda = new BusquedaProductosService(null);
+        busqueda.indexar(new ProductoInventario("TEC010", "Cámara de seguridad", 300000, 4));
+        busqueda.indexar(new ProductoInventario("TEC011", "Soporte para camara", 40000, 0));
+        busqueda.indexar(new ProductoInventario("TEC1", "Teclado inalámbrico", 80000, 10));
+        busqueda.indexar(new ProductoInventario("MOB020", "Silla ergonómica negra", 450000, 2));
+
+        // La palabra que empieza con el término pesa más que el fragmento
+        assertEquals(List.of("TEC010", "TEC011"), codigos(busqueda.buscar("CAMARA", false, 0)));
+        assertEquals(List.of("TEC010"), codigos(busqueda.buscar("camara", true, 0)));
+
+        // Fragmento en medio de una palabra
+        assertEquals(List.of("TEC1"), codigos(busqueda.buscar("lambri", false, 0)));
+
+        // Código exacto primero, luego los que lo tienen como prefijo
+        assertEquals("TEC1", codigos(busqueda.buscar("tec1", false, 0)).get(0));
+        assertEquals(List.of("TEC010", "TEC011"), codigos(busqueda.buscar("tec01", false, 0)));
+
+        // Todas las palabras deben coincidir, en cualquier orden
+        assertEquals(List.of("MOB020"), codigos(busqueda.buscar("negra ergonomica", false, 0)));
+        assertTrue(busqueda.buscar("silla azul", false, 0).isEmpty());
+
+        // Vacío lista todo en el orden del catálogo
+        assertEquals(List.of("TEC010", "TEC011", "TEC1", "MOB020"), codigos(busqueda.buscar("  ", false, 0)));
+    }
+
+    @Test
+    void terminosCortosBuscanFragmentosYSeRespetaElLimite() {
+        BusquedaProductosService busqueda = new BusquedaProductosService(null);
+        busqueda.indexar(new ProductoInventario("TEC010", "Cámara de seguridad", 300000, 4));
+        busqueda.indexar(new ProductoInventario("TEC011", "Soporte para camara", 40000, 0));
+        busqueda.indexar(new ProductoInventario("MOB020", "Silla ergonómica negra", 450000, 2));
+
+        // Menos de 3 letras: coincide en medio de la palabra, como el filtro anterior
+        assertEquals(List.of("MOB020"), codigos(busqueda.buscar("gr", false, 0)));
+        assertEquals(List.of("TEC010"), codigos(busqueda.buscar("gu", false, 0)));
+
+        // Con límite se conservan los mejores
+        assertEquals(List.of("TEC010"), codigos(busqueda.buscar("camara", false, 1)));
+        assertEquals(2, busqueda.buscar("", false, 2).size());
+    }
+
+    @Test
+    void quitarProductosPodaElTrieDeCodigos() {
+        BusquedaProductosService busqueda = new BusquedaProductosService(null);
+        int nodosVacio = busqueda.getNodosTrie();
+        busqueda.indexar(new ProductoInventario("TEC010", "Cámara de seguridad", 300000, 4));
+        busqueda.indexar(new ProductoInventario("TEC011", "Soporte para camara", 40000, 0));
+        int nodosConAmbos = busqueda.getNodosTrie();
+
+        busqueda.quitar("TEC011");
+        assertEquals(nodosConAmbos - 1, busqueda.getNodosTrie());
+        assertEquals(List.of("TEC010"), codigos(busqueda.buscar("tec01", false, 0)));
+
+        busqueda.quitar("TEC010");
+        assertEquals(nodosVacio, busqueda.getNodosTrie());
+    }
+
+    @Test
+    void seActualizaConLosCambiosDelCatalogo() throws Exception {
+        BusquedaProductosService busqueda = new BusquedaProductosService(CatalogoProductosCache.getInstance());
+        assertEquals(List.of("TEC001"), codigos(busqueda.buscar("camara", true, 0)));
+
+        // Se agota el stock: deja de aparecer entre los disponibles
+        new InventarioRepository().update(new ProductoInventario("TEC001", "Cámara Web HD", 90000, 0));
+        assertTrue(busqueda.buscar("camara", true, 0).isEmpty());
+        assertEquals(1, busqueda.buscar("camara", false, 0).size());
+
+        // Se elimina un producto en la base de datos
+        try (Connection conn = h2.getConnection(); Statement st = conn.createStatement()) {
+            st.execute("DELETE FROM productos WHERE id = 'MOB001'");
+        }
+        CatalogoProductosCache.getInstance().invalidar("MOB001");
+        assertTrue(busqueda.buscar("silla", false, 0).isEmpty());
+        assertEquals(1, busqueda.getTamano());
+    }
+
+    @Test
+    void respondeRapidoConCatalogoGrande() {
+        BusquedaProductosService busqueda = new BusquedaProductosService(null);
+        String[] nombres = {"Cámara", "Silla", "Escritorio", "Teclado", "Monitor", "Resma", "Archivador", "Lámpara"};
+        String[] atributos = {"negra", "ergonómica", "inalámbrico", "HD", "A4", "metálico", "de madera", "LED"};
+        for (int i = 0; i < 50_000; i++) {
+            String descripcion = nombres[i % nombres.length] + " " + atributos[(i / 8) % atributos.length] + " modelo " + i;
+            busqueda.indexar(new ProductoInventario(String.format("SKU%06d", i), descripcion, 1000, i % 7));
+        }
+
+        String[] consultas = {"camara", "lampara led", "sku0123", "escritorio madera", "modelo 4999", "ergo", "tecl inal"};
+        // Calentamiento
+        for (String consulta : consultas) {
+            busqueda.buscar(consulta, true, 50);
+        }
+
+        int repeticiones = 100;
+        long inicio = System.nanoTime();
+        for (int r = 0; r < repeticiones; r++) {
+            for (String consulta : consultas) {
+                busqueda.buscar(consulta, true, 50);
+            }
+        }
+        double promedioMs = (System.nanoTime() - inicio) / 1_000_000.0 / (repeticiones * consultas.length);
+        System.out.printf("Búsqueda sobre 50000 productos: %.3f ms promedio%n", promedioMs);
+
+        assertEquals("SKU000123", codigos(busqueda.buscar("sku000123", false, 1)).get(0));
+        assertTrue(promedioMs < 20, "La búsqueda tardó " + promedioMs + " ms en promedio");
+    }
+
+    private static List<String> codigos(List<ProductoInventario> productos) {
+        return productos.stream().map(ProductoInventario::getCodigo).collect(Collectors.toList());
+    }
+}
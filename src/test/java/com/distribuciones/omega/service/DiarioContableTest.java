@@ -0,0 +1,243 @@
+package com.distribuciones.omega.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.distribuciones.omega.model.MovimientoContable;
+import com.distribuciones.omega.repository.MovimientoContableRepository;
+import com.distribuciones.omega.utils.DBUtil;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Verifica el diario contable: guardado por lotes en segundo plano, lectura
+ * consistente desde ContabilidadService y recuperación desde el archivo tras una caída.
+ */
+class DiarioContableTest {
+
+    private static JdbcDataSource h2;
+
+    @TempDir
+    Path carpeta;
+
+    @BeforeAll
+    static void prepararBaseDeDatos() throws Exception {
+        h2 = new JdbcDataSource();
+        h2.setURL("jdbc:h2:mem:diario_contable;MODE=MySQL;DB_CLOSE_DELAY=-1");
+        h2.setUser("sa");
+        DBUtil.usarDataSource(h2);
+        new MovimientoContableRepository().createTableIfNotExists();
+    }
+
+    @AfterAll
+    static void liberar() {
+        DBUtil.cerrarPool();
+    }
+
+    @BeforeEach
+    void limpiar() throws Exception {
+        try (Connection conn = h2.getConnection(); Statement st = conn.createStatement()) {
+            st.execute("DELETE FROM movimientos_contables");
+            st.execute("DELETE FROM saldos_contables");
+        }
+    }
+
+    @Test
+    void guardaPorLotesSinBloquearAQuienRegistra() throws Exception {
+        Path archivo = carpeta.resolve("diario.wal");
+        DiarioContable diario = new DiarioContable(new MovimientoContableRepository(), archivo, 1000);
+        ContabilidadService contabilidad = new ContabilidadService(new MovimientoContableRepository(), diario);
+
+        int cajas = 4;
+        int porCaja = 250;
+        List<Thread> hilos = new ArrayList<>();
+        for (int c = 0; c < cajas; c++) {
+            Thread hilo = new Thread(() -> {
+                for (int i = 0; i < porCaja; i++) {
+                    contabilidad.registrarIngreso(10.0, "Pago de factura\tcon\ttabs\ny saltos", "EFECTIVO");
+                }
+            });
+            hilos.add(hilo);
+            hilo.start();
+        }
+        for (Thread hilo : hilos) {
+            hilo.join();
+        }
+
+        // El resumen espera a que el diario guarde lo pendiente
+        ContabilidadService.ResumenContable resumen = contabilidad.generarResumenContable();
+        assertEquals(cajas * porCaja * 10.0, resumen.getTotalIngresos(), 0.001);
+        assertEquals(cajas * porCaja, contarMovimientos());
+
+        DiarioContable.EstadisticasDiario estadisticas = diario.getEstadisticas();
+        System.out.println("Diario contable: " + estadisticas);
+        assertEquals(cajas * porCaja, estadisticas.getEscritos());
+        assertEquals(0, estadisticas.getPendientes());
+        assertTrue(estadisticas.getLotes() < cajas * porCaja, "Debe agrupar varios movimientos por transacción");
+
+        // Con todo confirmado el archivo vuelve a quedar vacío
+        assertEquals(0, Files.size(archivo));
+
+        diario.cerrar();
+        try (Connection conn = h2.getConnection(); Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT descripcion FROM movimientos_contables LIMIT 1")) {
+            assertTrue(rs.next());
+            assertEquals("Pago de factura\tcon\ttabs\ny saltos", rs.getString(1));
+        }
+    }
+
+    @Test
+    void recuperaDelArchivoLoQueNoAlcanzoAGuardarse() throws Exception {
+        Path archivo = carpeta.resolve("diario.wal");
+
+        // Base de datos caída: los movimientos solo quedan anotados en el archivo
+        DiarioContable caido = new DiarioContable(new MovimientoContableRepository() {
+            @Override
+            public int guardarLote(List<MovimientoContable> movimientos) throws SQLException {
+                throw new SQLException("Sin conexión");
+            }
+        }, archivo, 1000);
+        List<MovimientoContable> registrados = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            MovimientoContable movimiento = movimiento("FACT-" + i, 100.0 * i);
+            caido.registrar(movimiento);
+            registrados.add(movimiento);
+        }
+
+        // El primero sí llegó a la base antes de la caída, pero sin confirmación en el archivo
+        new MovimientoContableRepository().guardarLote(List.of(registrados.get(0)));
+        // Y la caída dejó una línea a medio escribir
+        Files.write(archivo, "M\tincompleto".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        // Al reiniciar se recupera lo pendiente sin duplicar el que ya estaba
+        DiarioContable reiniciado = new DiarioContable(new MovimientoContableRepository(), archivo, 1000);
+        reiniciado.iniciar();
+        assertEquals(3, contarMovimientos());
+        assertEquals(2, reiniciado.getEstadisticas().getReprocesados());
+        assertEquals(0, Files.size(archivo));
+
+        try (Connection conn = h2.getConnection(); Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT SUM(monto) FROM movimientos_contables")) {
+            assertTrue(rs.next());
+            assertEquals(600.0, rs.getDouble(1), 0.001);
+        }
+
+        reiniciado.cerrar();
+        caido.cerrar();
+    }
+
+    @Test
+    void reintentaLosGuardadosDirectosQueFallan() throws Exception {
+        Path archivo = carpeta.resolve("diario.wal");
+        AtomicBoolean caida = new AtomicBoolean(true);
+        // Cola de uno: con la base caída los demás se guardan directo y fallan
+        DiarioContable diario = new DiarioContable(new MovimientoContableRepository() {
+            @Override
+            public int guardarLote(List<MovimientoContable> movimientos) throws SQLException {
+                if (caida.get()) {
+                    throw new SQLException("Sin conexión");
+                }
+                return super.guardarLote(movimientos);
+            }
+        }, archivo, 1);
+        for (int i = 1; i <= 4; i++) {
+            diario.registrar(movimiento("FACT-" + i, 10.0));
+        }
+        assertEquals(4, diario.getEstadisticas().getPendientes());
+
+        caida.set(false);
+        assertTrue(diario.esperarPendientes(10_000));
+        assertEquals(4, contarMovimientos());
+        assertEquals(0, Files.size(archivo));
+        diario.cerrar();
+    }
+
+    @Test
+    void reintentaLoPendienteDelInicioSiLaBaseEstaCaida() throws Exception {
+        Path archivo = carpeta.resolve("diario.wal");
+        DiarioContable anterior = new DiarioContable(new MovimientoContableRepository() {
+            @Override
+            public int guardarLote(List<MovimientoContable> movimientos) throws SQLException {
+                throw new SQLException("Sin conexión");
+            }
+        }, archivo, 1000);
+        anterior.registrar(movimiento("FACT-1", 100.0));
+        anterior.registrar(movimiento("FACT-2", 200.0));
+        anterior.cerrar();
+
+        AtomicBoolean caida = new AtomicBoolean(true);
+        DiarioContable reiniciado = new DiarioContable(new MovimientoContableRepository() {
+            @Override
+            public int guardarLote(List<MovimientoContable> movimientos) throws SQLException {
+                if (caida.get()) {
+                    throw new SQLException("Sin conexión");
+                }
+                return super.guardarLote(movimientos);
+            }
+        }, archivo, 1000);
+        reiniciado.iniciar();
+        assertEquals(2, reiniciado.getEstadisticas().getPendientes());
+
+        caida.set(false);
+        assertTrue(reiniciado.esperarPendientes(10_000));
+        assertEquals(2, contarMovimientos());
+        assertEquals(0, Files.size(archivo));
+        reiniciado.cerrar();
+    }
+
+    @Test
+    void unHiloInterrumpidoNoCierraElArchivo() throws Exception {
+        Path archivo = carpeta.resolve("diario.wal");
+        DiarioContable diario = new DiarioContable(new MovimientoContableRepository() {
+            @Override
+            public int guardarLote(List<MovimientoContable> movimientos) throws SQLException {
+                throw new SQLException("Sin conexión");
+            }
+        }, archivo, 1000);
+
+        Thread.currentThread().interrupt();
+        try {
+            diario.registrar(movimiento("FACT-1", 100.0));
+        } finally {
+            // Se conserva la marca de interrupción de quien registra
+            assertTrue(Thread.interrupted());
+        }
+        diario.registrar(movimiento("FACT-2", 200.0));
+
+        String contenido = new String(Files.readAllBytes(archivo), StandardCharsets.UTF_8);
+        assertTrue(contenido.contains("FACT-1") && contenido.contains("FACT-2"), contenido);
+        diario.cerrar();
+    }
+
+    private static MovimientoContable movimiento(String numero, double monto) {
+        MovimientoContable movimiento = new MovimientoContable(LocalDateTime.of(2025, 3, 10, 12, 0),
+                "FACTURA", numero, "Factura " + numero, monto, "DEBITO");
+        movimiento.setUsuario("Ana");
+        movimiento.setEntidadRelacionada("Papelería Central");
+        return movimiento;
+    }
+
+    private static int contarMovimientos() throws Exception {
+        try (Connection conn = h2.getConnection(); Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM movimientos_contables")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.distribuciones.omega.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.distribuciones.omega.model.Cotizacion;
+import com.distribuciones.omega.model.ItemCotizacion;
+import com.distribuciones.omega.model.ProductoInventario;
+import com.distribuciones.omega.model.ResultadoStock;
+import com.distribuciones.omega.utils.DBUtil;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Verifica que el descuento de stock no permita sobreventa con varias terminales
+ * vendiendo el mismo producto y que una cotización se descuente completa o no se descuente.
+ */
+class InventarioServiceStockTest {
+
+    private static JdbcDataSource h2;
+
+    @BeforeAll
+    static void prepararBaseDeDatos() throws Exception {
+        h2 = new JdbcDataSource();
+        h2.setURL("jdbc:h2:mem:inventario_stock;MODE=MySQL;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000");
+        h2.setUser("sa");
+
+        try (Connection conn = h2.getConnection(); Statement st = conn.createStatement()) {
+            st.execute("CREATE TABLE productos (id VARCHAR(50) PRIMARY KEY, nombre VARCHAR(100), precio DOUBLE, " +
+                    "cantidad INT, categoria VARCHAR(50), activo BOOLEAN DEFAULT TRUE)");
+        }
+        DBUtil.usarDataSource(h2);
+    }
+
+    @AfterAll
+    static void liberar() {
+        DBUtil.cerrarPool();
+    }
+
+    @BeforeEach
+    void reiniciarStock() throws Exception {
+        try (Connection conn = h2.getConnection(); Statement st = conn.createStatement()) {
+            st.execute("DELETE FROM productos");
+            st.execute("INSERT INTO productos (id, nombre, precio, cantidad) VALUES ('P1', 'Portátil', 2500000, 100)");
+            st.execute("INSERT INTO productos (id, nombre, precio, cantidad) VALUES ('P2', 'Mouse', 50000, 50)");
+            st.execute("INSERT INTO productos (id, nombre, precio, cantidad) VALUES ('P3', 'Teclado', 80000, 2)");
+        }
+    }
+
+    @Test
+    void ventasConcurrentesNoSobrevenden() throws Exception {
+        InventarioService service = new InventarioService();
+        int terminales = 8;
+        int intentosPorTerminal = 40;
+        AtomicInteger vendidas = new AtomicInteger();
+        CountDownLatch inicio = new CountDownLatch(1);
+
+        ExecutorService pool = Executors.newFixedThreadPool(terminales);
+        List<Future<?>> tareas = new ArrayList<>();
+        for (int t = 0; t < terminales; t++) {
+            tareas.add(pool.submit(() -> {
+                inicio.await();
+                for (int i = 0; i < intentosPorTerminal; i++) {
+                    // Cada terminal trabaja con su propia copia (posiblemente desactualizada) del producto
+                    ProductoInventario producto = new ProductoInventario("P1", "Portátil", 2500000, 100);
+                    if (service.descontarStock(producto, 1).isExitoso()) {
+                        vendidas.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        inicio.countDown();
+        for (Future<?> tarea : tareas) {
+            tarea.get();
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(100, vendidas.get());
+        assertEquals(0, cantidadEnBase("P1"));
+    }
+
+    @Test
+    void cotizacionConLineaSinStockNoDescuentaNada() throws Exception {
+        InventarioService service = new InventarioService();
+        Cotizacion cotizacion = new Cotizacion();
+        cotizacion.getItems().add(item("P1", "Portátil", 3));
+        cotizacion.getItems().add(item("P2", "Mouse", 5));
+        cotizacion.getItems().add(item("P3", "Teclado", 4));
+
+        ResultadoStock resultado = service.descontarStockCotizacion(cotizacion);
+
+        assertFalse(resultado.isExitoso());
+        assertEquals(1, resultado.getFallos().size());
+        ResultadoStock.LineaFallida fallo = resultado.getFallos().get(0);
+        assertEquals("P3", fallo.getCodigo());
+        assertEquals(4, fallo.getSolicitado());
+        assertEquals(2, fallo.getDisponible());
+
+        assertEquals(100, cantidadEnBase("P1"));
+        assertEquals(50, cantidadEnBase("P2"));
+        assertEquals(2, cantidadEnBase("P3"));
+    }
+
+    @Test
+    void cotizacionAgrupaLineasDelMismoProducto() throws Exception {
+        InventarioService service = new InventarioService();
+        Cotizacion cotizacion = new Cotizacion();
+        cotizacion.getItems().add(item("P2", "Mouse", 30));
+        cotizacion.getItems().add(item("P2", "Mouse", 30));
+
+        ResultadoStock resultado = service.descontarStockCotizacion(cotizacion);
+
+        assertFalse(resultado.isExitoso());
+        assertEquals(60, resultado.getFallos().get(0).getSolicitado());
+        assertEquals(50, cantidadEnBase("P2"));
+
+        cotizacion.getItems().remove(1);
+        resultado = service.descontarStockCotizacion(cotizacion);
+
+        assertTrue(resultado.isExitoso());
+        assertEquals(20, resultado.getStockResultante().get("P2"));
+        assertEquals(20, cantidadEnBase("P2"));
+        assertEquals(20, cotizacion.getItems().get(0).getProducto().getCantidad());
+    }
+
+    private static ItemCotizacion item(String codigo, String descripcion, int cantidad) {
+        ItemCotizacion item = new ItemCotizacion();
+        item.setProducto(new ProductoInventario(codigo, descripcion, 1000, 0));
+        item.setCantidad(cantidad);
+        return item;
+    }
+
+    private static int cantidadEnBase(String codigo) throws Exception {
+        try (Connection conn = h2.getConnection(); Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT cantidad FROM productos WHERE id = '" + codigo + "'")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+}
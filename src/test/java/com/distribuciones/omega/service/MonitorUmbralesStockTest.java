@@ -0,0 +1,99 @@
+package com.distribuciones.omega.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.distribuciones.omega.model.ProductoInventario;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Verifica la detección de productos bajo mínimo por eventos de stock: un aviso
+ * por cruce, salida al reponer y conciliación de los cambios no informados.
+ */
+class MonitorUmbralesStockTest {
+
+    @Test
+    void avisaUnaVezPorCruceYVuelveAAvisarTrasReponer() throws Exception {
+        List<ProductoInventario> catalogo = new ArrayList<>();
+        MonitorUmbralesStock monitor = new MonitorUmbralesStock(() -> catalogo);
+        BlockingQueue<List<String>> avisos = new LinkedBlockingQueue<>();
+        monitor.agregarOyente(productos -> avisos.add(codigos(productos)));
+
+        ProductoInventario resma = producto("INS001", 8, 5);
+        assertFalse(monitor.registrarCambioStock(resma));
+
+        // Baja de 8 a 4: cruza el mínimo de 5
+        resma.setCantidad(4);
+        assertTrue(monitor.registrarCambioStock(resma));
+        assertEquals(List.of("INS001"), avisos.poll(5, TimeUnit.SECONDS));
+
+        // Sigue bajando: ya estaba bajo mínimo, no se repite el aviso
+        resma.setCantidad(2);
+        assertFalse(monitor.registrarCambioStock(resma));
+        assertTrue(monitor.estaBajoMinimo("INS001"));
+
+        // Se repone por encima del mínimo y vuelve a cruzar
+        resma.setCantidad(20);
+        assertFalse(monitor.registrarCambioStock(resma));
+        assertFalse(monitor.estaBajoMinimo("INS001"));
+        resma.setCantidad(0);
+        assertTrue(monitor.registrarCambioStock(resma));
+        assertEquals(List.of("INS001"), avisos.poll(5, TimeUnit.SECONDS));
+        assertTrue(avisos.isEmpty());
+
+        // El mínimo general configurado en las alertas actúa como piso
+        ProductoInventario silla = producto("MOB001", 3, 2);
+        assertFalse(monitor.registrarCambioStock(silla));
+        monitor.setUmbralGeneral(4);
+        assertTrue(monitor.registrarCambioStock(silla));
+
+        MonitorUmbralesStock.EstadisticasUmbrales estadisticas = monitor.getEstadisticas();
+        assertEquals(2, estadisticas.getBajoMinimo());
+        assertEquals(3, estadisticas.getCruces());
+    }
+
+    @Test
+    void laConciliacionRecogeLosCambiosNoInformados() throws Exception {
+        List<ProductoInventario> catalogo = new ArrayList<>();
+        catalogo.add(producto("TEC001", 10, 5));
+        catalogo.add(producto("TEC002", 1, 5));
+        catalogo.add(producto("MOB001", 0, 2));
+        MonitorUmbralesStock monitor = new MonitorUmbralesStock(() -> catalogo);
+        BlockingQueue<List<String>> avisos = new LinkedBlockingQueue<>();
+        monitor.agregarOyente(productos -> avisos.add(codigos(productos)));
+
+        // Primera conciliación: avisa de todos los que ya estaban bajo mínimo, en un solo aviso
+        assertEquals(2, monitor.reconciliar());
+        assertEquals(List.of("TEC002", "MOB001"), avisos.poll(5, TimeUnit.SECONDS));
+
+        // Otra terminal vendió TEC001 y repuso MOB001; TEC002 se eliminó del catálogo
+        catalogo.get(0).setCantidad(3);
+        catalogo.get(2).setCantidad(10);
+        catalogo.remove(1);
+        assertEquals(1, monitor.reconciliar());
+        assertEquals(List.of("TEC001"), avisos.poll(5, TimeUnit.SECONDS));
+        assertEquals(List.of("TEC001"), codigos(monitor.obtenerBajoMinimo()));
+
+        // Sin cambios no hay avisos nuevos
+        assertEquals(0, monitor.reconciliar());
+        assertTrue(avisos.isEmpty());
+        assertEquals(3, monitor.getEstadisticas().getReconciliaciones());
+    }
+
+    private static ProductoInventario producto(String codigo, int cantidad, int minimo) {
+        ProductoInventario producto = new ProductoInventario(codigo, codigo, 1000, cantidad);
+        producto.setCantidadMinima(minimo);
+        return producto;
+    }
+
+    private static List<String> codigos(List<ProductoInventario> productos) {
+        return productos.stream().map(ProductoInventario::getCodigo).collect(Collectors.toList());
+    }
+}
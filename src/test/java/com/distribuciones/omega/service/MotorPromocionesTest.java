@@ -0,0 +1,212 @@
+package com.distribuciones.omega.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.distribuciones.omega.model.Promocion;
+import com.distribuciones.omega.repository.PromocionRepository;
+import com.distribuciones.omega.utils.DBUtil;
+import com.distribuciones.omega.utils.MigradorEsquema;
+import com.distribuciones.omega.utils.Traza;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Verifica que las promociones se resuelvan por igualdad exacta de código y
+ * categoría, dentro de su vigencia, eligiendo el mayor descuento, y que el índice
+ * se recargue al guardar sin consultar la base en cada búsqueda, en segundo plano
+ * al vencer y sin perder el índice anterior si la consulta falla.
+ */
+class MotorPromocionesTest {
+
+    private static final LocalDate HOY = LocalDate.now();
+
+    @BeforeAll
+    static void prepararBaseDeDatos() throws Exception {
+        JdbcDataSource h2 = new JdbcDataSource();
+        h2.setURL("jdbc:h2:mem:promociones;MODE=MySQL;DB_CLOSE_DELAY=-1");
+        h2.setUser("sa");
+        DBUtil.usarDataSource(h2);
+        new MigradorEsquema(List.of(
+                MigradorEsquema.Migracion.sql(3, "Promociones", "/db/migraciones/V3__promociones.sql"))).migrar();
+    }
+
+    @AfterAll
+    static void cerrar() {
+        DBUtil.cerrarPool();
+    }
+
+    @Test
+    void categoriaSoloCoincideCompleta() {
+        MotorPromociones motor = motorCon(
+                promocion(1, "Tecnología 10%", true, 10, "TECNOLOGICO, oficina"));
+
+        assertNull(motor.resolver("P-1", "TECNO", 1, 100, HOY));
+        assertEquals(10, motor.resolver("P-1", "TECNOLOGICO", 1, 100, HOY).getDescuento(), 0.001);
+        assertEquals(10, motor.resolver("P-1", "Oficina", 1, 100, HOY).getDescuento(), 0.001);
+    }
+
+    @Test
+    void respetaLaVigencia() {
+        Promocion futura = promocion(1, "Próxima semana", true, 20, "P-1");
+        futura.setFechaInicio(HOY.plusDays(7));
+        futura.setFechaFin(HOY.plusDays(14));
+        Promocion vencida = promocion(2, "Mes pasado", true, 30, "P-1");
+        vencida.setFechaInicio(HOY.minusMonths(2));
+        vencida.setFechaFin(HOY.minusMonths(1));
+        Promocion inactiva = promocion(3, "Inactiva", true, 40, "P-1");
+        inactiva.setActiva(false);
+        MotorPromociones motor = motorCon(futura, vencida, inactiva);
+
+        assertNull(motor.resolver("P-1", null, 1, 100, HOY));
+        assertEquals(20, motor.resolver("P-1", null, 1, 100, HOY.plusDays(7)).getDescuento(), 0.001);
+        assertTrue(motor.candidatas("P-1", null, HOY.plusDays(15)).isEmpty());
+    }
+
+    @Test
+    void eligeElMayorDescuentoYEnEmpateElDelProducto() {
+        Promocion producto = promocion(1, "Producto 5%", true, 5, "P-1");
+        Promocion categoria = promocion(2, "Categoría 10%", true, 10, "PAPELERIA");
+        Promocion general = promocion(3, "General 5%", true, 5, "TODAS");
+        MotorPromociones motor = motorCon(general, categoria, producto);
+
+        assertEquals(List.of(producto, categoria, general), motor.candidatas("P-1", "PAPELERIA", HOY));
+        assertEquals(categoria, motor.resolver("P-1", "PAPELERIA", 2, 50, HOY).getPromocion());
+        assertEquals(producto, motor.resolver("P-1", "MUEBLES", 2, 50, HOY).getPromocion());
+    }
+
+    @Test
+    void elDosPorUnoRegalaUnaUnidadPorCadaDos() {
+        Promocion dosPorUno = promocion(1, "Lleva dos", false, 0, "P-1");
+        dosPorUno.setDosPorUno(true);
+        MotorPromociones motor = motorCon(dosPorUno);
+
+        assertNull(motor.resolver("P-1", null, 1, 100, HOY));
+        assertEquals(100, motor.resolver("P-1", null, 3, 100, HOY).getDescuento(), 0.001);
+        assertEquals(200, motor.resolver("P-1", null, 4, 100, HOY).getDescuento(), 0.001);
+    }
+
+    @Test
+    void guardarRecargaElIndiceYBuscarNoConsulta() {
+        MotorPromociones motor = new MotorPromociones(new PromocionRepository(), Long.MAX_VALUE);
+        PromocionService service = new PromocionService(new PromocionRepository(), motor);
+
+        Promocion dosPorUno = promocion(0, "Cuadernos", false, 0, "CUAD-01, CUAD-02");
+        dosPorUno.setDosPorUno(true);
+        assertNotNull(service.guardarPromocion(dosPorUno));
+        assertTrue(service.tienePromocion2x1("cuad-02"));
+
+        try (Traza traza = Traza.iniciar("cotizacion")) {
+            for (int i = 0; i < 100; i++) {
+                assertNotNull(service.buscarPromocionAplicable("CUAD-01", "PAPELERIA"));
+                assertNull(service.buscarPromocionAplicable("LAP-" + i, "TECNO"));
+            }
+            assertEquals(0, traza.getConsultas());
+        }
+
+        assertNotNull(service.guardarPromocion(promocion(0, "Tecnología 15%", true, 15, "TECNOLOGICO")));
+        assertEquals(15, service.buscarMejorPromocion("LAP-1", "TECNOLOGICO", 1, 100).getDescuento(), 0.001);
+    }
+
+    @Test
+    void unaRecargaFallidaConservaElIndiceAnterior() {
+        RepositorioControlado repositorio = new RepositorioControlado();
+        repositorio.promociones = List.of(promocion(1, "Producto 10%", true, 10, "P-1"));
+        MotorPromociones motor = new MotorPromociones(repositorio, Long.MAX_VALUE);
+        assertTrue(motor.recargar());
+
+        repositorio.fallar = true;
+        assertFalse(motor.recargar());
+        assertEquals(10, motor.resolver("P-1", null, 1, 100, HOY).getDescuento(), 0.001);
+    }
+
+    @Test
+    void sinIndiceYConLaBaseCaidaNoHayPromociones() {
+        RepositorioControlado repositorio = new RepositorioControlado();
+        repositorio.fallar = true;
+        MotorPromociones motor = new MotorPromociones(repositorio, Long.MAX_VALUE);
+
+        assertNull(motor.resolver("P-1", null, 1, 100, HOY));
+        // El reintento espera REINTENTO_MS: la segunda búsqueda no vuelve a consultar
+        assertNull(motor.resolver("P-1", null, 1, 100, HOY));
+        assertEquals(1, repositorio.consultas);
+    }
+
+    @Test
+    void elIndiceVencidoSeRecargaEnSegundoPlano() throws Exception {
+        RepositorioControlado repositorio = new RepositorioControlado();
+        repositorio.promociones = List.of(promocion(1, "Producto 10%", true, 10, "P-1"));
+        MotorPromociones motor = new MotorPromociones(repositorio, 0);
+        assertEquals(10, motor.resolver("P-1", null, 1, 100, HOY).getDescuento(), 0.001);
+
+        // Con la recarga bloqueada la búsqueda responde con el índice anterior
+        repositorio.bloqueo = new CountDownLatch(1);
+        repositorio.promociones = List.of(promocion(2, "Producto 20%", true, 20, "P-1"));
+        assertEquals(10, motor.resolver("P-1", null, 1, 100, HOY).getDescuento(), 0.001);
+
+        repositorio.bloqueo.countDown();
+        long limite = System.currentTimeMillis() + 5_000;
+        while (motor.resolver("P-1", null, 1, 100, HOY).getDescuento() != 20
+                && System.currentTimeMillis() < limite) {
+            Thread.sleep(10);
+        }
+        assertEquals(20, motor.resolver("P-1", null, 1, 100, HOY).getDescuento(), 0.001);
+    }
+
+    /**
+     * Repositorio en memoria que puede fallar o quedarse esperando al consultar
+     */
+    private static final class RepositorioControlado extends PromocionRepository {
+        volatile List<Promocion> promociones = List.of();
+        volatile boolean fallar;
+        volatile CountDownLatch bloqueo;
+        volatile int consultas;
+
+        @Override
+        public List<Promocion> findAll() throws SQLException {
+            consultas++;
+            if (fallar) {
+                throw new SQLException("Base de datos no disponible");
+            }
+            CountDownLatch espera = bloqueo;
+            if (espera != null) {
+                try {
+                    espera.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return promociones;
+        }
+    }
+
+    private static MotorPromociones motorCon(Promocion... promociones) {
+        MotorPromociones motor = new MotorPromociones(new PromocionRepository(), Long.MAX_VALUE);
+        motor.cargar(List.of(promociones));
+        return motor;
+    }
+
+    private static Promocion promocion(int id, String descripcion, boolean porcentaje, double valor,
+                                       String aplicables) {
+        Promocion promocion = new Promocion();
+        promocion.setId(id);
+        promocion.setDescripcion(descripcion);
+        promocion.setPorcentaje(porcentaje);
+        promocion.setValor(valor);
+        promocion.setCategoriasAplicables(aplicables);
+        promocion.setFechaInicio(HOY.minusDays(1));
+        promocion.setFechaFin(HOY.plusDays(30));
+        promocion.setActiva(true);
+        return promocion;
+    }
+}
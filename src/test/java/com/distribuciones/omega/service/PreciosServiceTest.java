@@ -0,0 +1,116 @@
+package com.distribuciones.omega.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import com.distribuciones.omega.model.Cliente;
+import com.distribuciones.omega.model.Cotizacion;
+import com.distribuciones.omega.model.ItemCotizacion;
+import com.distribuciones.omega.model.ItemFactura;
+import com.distribuciones.omega.model.Liquidacion;
+import com.distribuciones.omega.model.Liquidacion.Ajustes;
+import com.distribuciones.omega.model.ProductoInventario;
+import com.distribuciones.omega.model.Promocion;
+import com.distribuciones.omega.repository.PromocionRepository;
+import java.time.LocalDate;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Verifica que la liquidación combine descuentos manuales, promociones, descuento
+ * mayorista e IVA en una pasada y que se reutilice mientras los ítems no cambien.
+ */
+class PreciosServiceTest {
+
+    private static final double DELTA = 0.0001;
+
+    @Test
+    void combinaLosDescuentosYCalculaElIva() {
+        PreciosService service = new PreciosService(motorCon());
+        Promocion tecnologia = new Promocion();
+        tecnologia.setDescripcion("Tecnología 20%");
+        tecnologia.setPorcentaje(true);
+        tecnologia.setValor(20);
+        tecnologia.setCategoriasAplicables("TECNOLOGICO");
+
+        List<ItemCotizacion> items = List.of(
+                item("LAP-1", "TECNOLOGICO", 2, 500, 0),   // promoción: 200
+                item("CUA-1", "PAPELERIA", 10, 10, 5),     // mayorista: 10 > manual 5
+                item("SIL-1", "TECNO", 1, 100, 50));       // manual 50; "TECNO" no es "TECNOLOGICO"
+
+        Liquidacion liquidacion = service.liquidar(items, mayorista(),
+                Ajustes.ninguno().conPromocion(tecnologia).conDescuentoMayorista());
+
+        assertEquals(200, liquidacion.getDescuento(0), DELTA);
+        assertEquals(10, liquidacion.getDescuento(1), DELTA);
+        assertEquals(50, liquidacion.getDescuento(2), DELTA);
+        assertEquals(1200, liquidacion.getSubtotal(), DELTA);
+        assertEquals(260, liquidacion.getDescuento(), DELTA);
+        assertEquals(940 * PreciosService.TASA_IVA, liquidacion.getIva(), DELTA);
+        assertEquals(940 * (1 + PreciosService.TASA_IVA), liquidacion.getTotal(), DELTA);
+        // Los ítems quedan con el descuento aplicado sin perder el manual
+        assertEquals(10, items.get(1).getDescuento(), DELTA);
+        assertEquals(5, items.get(1).getDescuentoManual(), DELTA);
+        assertEquals(90, items.get(1).getSubtotal(), DELTA);
+    }
+
+    @Test
+    void buscaLaMejorPromocionVigenteDeCadaLinea() {
+        Promocion dosPorUno = new Promocion();
+        dosPorUno.setId(1);
+        dosPorUno.setDescripcion("Cuadernos 2x1");
+        dosPorUno.setDosPorUno(true);
+        dosPorUno.setCategoriasAplicables("CUA-1");
+        dosPorUno.setActiva(true);
+        PreciosService service = new PreciosService(motorCon(dosPorUno));
+
+        Liquidacion liquidacion = service.liquidar(List.of(item("CUA-1", "PAPELERIA", 5, 10, 0)), null,
+                Ajustes.ninguno().conPromocionesVigentes());
+
+        assertEquals(20, liquidacion.getDescuento(), DELTA);
+    }
+
+    @Test
+    void reutilizaLaLiquidacionHastaQueCambianLosItems() {
+        PreciosService service = new PreciosService(motorCon());
+        Cotizacion cotizacion = new Cotizacion();
+        cotizacion.setCliente(mayorista());
+        cotizacion.agregarItem(item("CUA-1", "PAPELERIA", 10, 10, 0));
+        Liquidacion inicial = service.liquidar(cotizacion, Ajustes.ninguno().conDescuentoMayorista());
+
+        // Factura y contabilidad piden la misma liquidación: no se recalcula
+        assertSame(inicial, service.liquidar(cotizacion));
+        List<ItemFactura> itemsFactura = service.liquidar(cotizacion).itemsFactura(cotizacion.getItems());
+        assertEquals(90, itemsFactura.get(0).getSubtotal(), DELTA);
+        assertEquals(1, service.getCalculos());
+        assertEquals(2, service.getReutilizadas());
+
+        // Con menos unidades se recalcula con los mismos ajustes
+        cotizacion.getItems().get(0).setCantidad(2);
+        Liquidacion recalculada = service.liquidar(cotizacion);
+        assertEquals(2, recalculada.getDescuento(), DELTA);
+        assertEquals(recalculada.getTotal(), cotizacion.getTotal(), DELTA);
+        assertEquals(2, service.getCalculos());
+    }
+
+    private static MotorPromociones motorCon(Promocion... promociones) {
+        MotorPromociones motor = new MotorPromociones(new PromocionRepository(), Long.MAX_VALUE);
+        motor.cargar(List.of(promociones));
+        return motor;
+    }
+
+    private static Cliente mayorista() {
+        Cliente cliente = new Cliente();
+        cliente.setMayorista(true);
+        return cliente;
+    }
+
+    private static ItemCotizacion item(String codigo, String categoria, int cantidad, double precio,
+                                       double descuento) {
+        ProductoInventario producto = new ProductoInventario(codigo, codigo, precio, 100);
+        producto.setCategoria(categoria);
+        ItemCotizacion item = new ItemCotizacion(producto, cantidad, precio);
+        item.setDescuento(descuento);
+        return item;
+    }
+}
@@ -0,0 +1,196 @@
+package com.distribuciones.omega.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.distribuciones.omega.model.Cotizacion;
+import com.distribuciones.omega.model.ItemCotizacion;
+import com.distribuciones.omega.model.ProductoInventario;
+import com.distribuciones.omega.model.ResultadoStock;
+import com.distribuciones.omega.utils.DBUtil;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Verifica que las reservas bloqueen unidades entre cotizaciones, venzan por TTL
+ * y se confirmen descontando el stock en base de datos.
+ */
+class ReservaStockServiceTest {
+
+    private static JdbcDataSource h2;
+
+    private RelojManual reloj;
+    private ReservaStockService reservas;
+
+    @BeforeAll
+    static void prepararBaseDeDatos() throws Exception {
+        h2 = new JdbcDataSource();
+        h2.setURL("jdbc:h2:mem:reserva_stock;MODE=MySQL;DB_CLOSE_DELAY=-1");
+        h2.setUser("sa");
+
+        try (Connection conn = h2.getConnection(); Statement st = conn.createStatement()) {
+            st.execute("CREATE TABLE productos (id VARCHAR(50) PRIMARY KEY, nombre VARCHAR(100), precio DOUBLE, " +
+                    "cantidad INT, categoria VARCHAR(50), activo BOOLEAN DEFAULT TRUE)");
+        }
+        DBUtil.usarDataSource(h2);
+    }
+
+    @AfterAll
+    static void liberar() {
+        DBUtil.cerrarPool();
+    }
+
+    @BeforeEach
+    void reiniciar() throws Exception {
+        try (Connection conn = h2.getConnection(); Statement st = conn.createStatement()) {
+            st.execute("DELETE FROM productos");
+            st.execute("INSERT INTO productos (id, nombre, precio, cantidad) VALUES ('P1', 'Impresora', 900000, 5)");
+        }
+        reloj = new RelojManual();
+        reservas = new ReservaStockService(new InventarioService(), reloj, Duration.ofMinutes(10));
+    }
+
+    @Test
+    void reservaVigenteBloqueaUnidadesHastaVencer() {
+        Cotizacion primera = cotizacion(4);
+        Cotizacion segunda = cotizacion(2);
+
+        assertTrue(reservas.reservar(primera).isExitoso());
+        assertNotNull(primera.getCodigoReserva());
+
+        ResultadoStock rechazada = reservas.reservar(segunda);
+        assertFalse(rechazada.isExitoso());
+        assertEquals(1, rechazada.getFallos().get(0).getDisponible());
+
+        reloj.avanzar(Duration.ofMinutes(11));
+
+        assertEquals(0, reservas.obtenerReservado("P1"));
+        assertTrue(reservas.reservar(segunda).isExitoso());
+    }
+
+    @Test
+    void confirmarDescuentaEnBaseYLiberaReserva() throws Exception {
+        Cotizacion cotizacion = cotizacion(3);
+        assertTrue(reservas.reservar(cotizacion).isExitoso());
+
+        ResultadoStock confirmada = reservas.confirmar(cotizacion);
+
+        assertTrue(confirmada.isExitoso());
+        assertEquals(2, cantidadEnBase("P1"));
+        assertEquals(0, reservas.obtenerReservado("P1"));
+        assertEquals(2, reservas.obtenerDisponible(cotizacion.getItems().get(0).getProducto()));
+        assertNull(cotizacion.getCodigoReserva());
+    }
+
+    @Test
+    void confirmarReservaVencidaReservaDeNuevo() throws Exception {
+        Cotizacion cotizacion = cotizacion(5);
+        assertTrue(reservas.reservar(cotizacion).isExitoso());
+        reloj.avanzar(Duration.ofMinutes(30));
+
+        assertTrue(reservas.confirmar(cotizacion).isExitoso());
+        assertEquals(0, cantidadEnBase("P1"));
+    }
+
+    @Test
+    void confirmarConStockAgotadoEnOtraTerminalFalla() throws Exception {
+        Cotizacion cotizacion = cotizacion(4);
+        assertTrue(reservas.reservar(cotizacion).isExitoso());
+
+        // Otra terminal vendió directamente en la base de datos
+        try (Connection conn = h2.getConnection(); Statement st = conn.createStatement()) {
+            st.execute("UPDATE productos SET cantidad = 1 WHERE id = 'P1'");
+        }
+
+        ResultadoStock resultado = reservas.confirmar(cotizacion);
+
+        assertFalse(resultado.isExitoso());
+        assertEquals(1, cantidadEnBase("P1"));
+        assertEquals(1, reservas.obtenerDisponible(cotizacion.getItems().get(0).getProducto()));
+    }
+
+    @Test
+    void reservaRechazadaReleeStockDeLaBase() throws Exception {
+        assertTrue(reservas.confirmar(cotizacion(5)).isExitoso());
+        assertEquals(0, reservas.obtenerDisponible(cotizacion(1).getItems().get(0).getProducto()));
+
+        // Reposición hecha en otra pantalla o terminal
+        try (Connection conn = h2.getConnection(); Statement st = conn.createStatement()) {
+            st.execute("UPDATE productos SET cantidad = 4 WHERE id = 'P1'");
+        }
+
+        assertTrue(reservas.reservar(cotizacion(3)).isExitoso());
+        assertEquals(3, reservas.obtenerReservado("P1"));
+    }
+
+    @Test
+    void reservaDeCotizacionGuardadaSeConfirmaConOtraInstancia() throws Exception {
+        Cotizacion guardada = cotizacion(4);
+        guardada.setId(7L);
+        assertTrue(reservas.reservar(guardada).isExitoso());
+
+        // La cotización se vuelve a leer más tarde para facturarla
+        Cotizacion leida = cotizacion(4);
+        leida.setId(7L);
+        assertTrue(reservas.tieneReserva(leida));
+        assertFalse(reservas.reservar(cotizacion(2)).isExitoso());
+
+        assertTrue(reservas.confirmar(leida).isExitoso());
+        assertEquals(1, cantidadEnBase("P1"));
+        assertEquals(0, reservas.obtenerReservado("P1"));
+        assertFalse(reservas.tieneReserva(guardada));
+    }
+
+    private static Cotizacion cotizacion(int cantidad) {
+        ItemCotizacion item = new ItemCotizacion();
+        item.setProducto(new ProductoInventario("P1", "Impresora", 900000, 5));
+        item.setCantidad(cantidad);
+        Cotizacion cotizacion = new Cotizacion();
+        cotizacion.getItems().add(item);
+        return cotizacion;
+    }
+
+    private static int cantidadEnBase(String codigo) throws Exception {
+        try (Connection conn = h2.getConnection(); Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT cantidad FROM productos WHERE id = '" + codigo + "'")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    private static class RelojManual extends Clock {
+        private Instant ahora = Instant.parse("2025-03-01T10:00:00Z");
+
+        void avanzar(Duration duracion) {
+            ahora = ahora.plus(duracion);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneId.of("UTC");
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return ahora;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.distribuciones.omega.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.distribuciones.omega.model.MovimientoContable;
+import com.distribuciones.omega.repository.MovimientoContableRepository;
+import com.distribuciones.omega.repository.SaldosContablesRepository;
+import com.distribuciones.omega.utils.DBUtil;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.List;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Verifica los saldos contables: totales acumulados al guardar, foto de saldos en
+ * cada cierre y conciliación contra los movimientos.
+ */
+class SaldosContablesTest {
+
+    private static JdbcDataSource h2;
+
+    @TempDir
+    Path carpeta;
+
+    @BeforeAll
+    static void prepararBaseDeDatos() throws Exception {
+        h2 = new JdbcDataSource();
+        h2.setURL("jdbc:h2:mem:saldos_contables;MODE=MySQL;DB_CLOSE_DELAY=-1");
+        h2.setUser("sa");
+        DBUtil.usarDataSource(h2);
+        new MovimientoContableRepository().createTableIfNotExists();
+    }
+
+    @AfterAll
+    static void liberar() {
+        DBUtil.cerrarPool();
+    }
+
+    @BeforeEach
+    void limpiar() throws Exception {
+        ejecutar("DELETE FROM movimientos_contables", "DELETE FROM saldos_contables",
+                 "DELETE FROM cierres_contables", "DELETE FROM saldos_cierre");
+    }
+
+    @Test
+    void calculaLosSaldosDeUnLibroAnterior() throws Exception {
+        // Libro creado antes de existir los saldos
+        ejecutar("DROP TABLE saldos_contables",
+                 "INSERT INTO movimientos_contables (fecha, tipo_documento, numero_documento, descripcion, monto, " +
+                 "tipo_movimiento, usuario, entidad_relacionada) VALUES " +
+                 "(NOW(), 'FACTURA', 'F-1', 'Factura', 150.25, 'DEBITO', 'Ana', 'Cliente'), " +
+                 "(NOW(), 'FACTURA', 'F-2', 'Factura', 49.75, 'DEBITO', 'Ana', 'Cliente'), " +
+                 "(NOW(), 'COTIZACION', 'C-1', 'Cotización', 80.00, 'CREDITO', 'Ana', 'Cliente')");
+
+        SaldosContablesRepository repository = new SaldosContablesRepository();
+        repository.createTableIfNotExists();
+
+        SaldosContablesRepository.Saldos saldos = repository.leerSaldos();
+        assertEquals(200.0, saldos.getTotalMovimiento("DEBITO"), 0.001);
+        assertEquals(80.0, saldos.getTotalMovimiento("CREDITO"), 0.001);
+        assertEquals(2, saldos.getCantidadDocumentos("FACTURA"));
+        assertEquals(1, saldos.getCantidadDocumentos("COTIZACION"));
+        assertTrue(repository.verificar(false).isEmpty());
+    }
+
+    @Test
+    void elResumenYElCierreLeenLosSaldosSinRecorrerElLibro() throws Exception {
+        DiarioContable diario = new DiarioContable(new MovimientoContableRepository(),
+                                                   carpeta.resolve("diario.wal"), 100);
+        ContabilidadService contabilidad = new ContabilidadService(new MovimientoContableRepository(), diario);
+
+        for (int i = 0; i < 40; i++) {
+            contabilidad.registrarIngreso(10.005, "Venta de mostrador", "EFECTIVO");
+        }
+        MovimientoContableRepository repository = new MovimientoContableRepository();
+        repository.save(movimiento("FACTURA", "F-1", 300.0, "DEBITO"));
+        repository.save(movimiento("COTIZACION", "C-1", 120.0, "CREDITO"));
+
+        ContabilidadService.ResumenContable resumen = contabilidad.generarResumenContable();
+        assertEquals(sumar("DEBITO"), resumen.getTotalIngresos(), 0.001);
+        assertEquals(120.0, resumen.getTotalEgresos(), 0.001);
+        assertEquals(1, resumen.getTotalFacturas());
+        assertEquals(1, resumen.getTotalCotizaciones());
+
+        // El cierre guarda su movimiento y la foto de los saldos en la misma transacción
+        MovimientoContable cierre = contabilidad.realizarCierrePeriodo(LocalDateTime.of(2025, 3, 31, 23, 0), "Marzo");
+        assertEquals(sumar("DEBITO") - cierre.getMonto() - 120.0, cierre.getMonto(), 0.001);
+        List<SaldosContablesRepository.CierreContable> cierres = new SaldosContablesRepository().listarCierres();
+        assertEquals(1, cierres.size());
+        assertEquals("2025-03", cierres.get(0).getPeriodo());
+        assertEquals(cierre.getId(), cierres.get(0).getHastaMovimientoId());
+
+        repository.save(movimiento("FACTURA", "F-2", 75.5, "DEBITO"));
+        resumen = contabilidad.generarResumenContable();
+        assertEquals(sumar("DEBITO"), resumen.getTotalIngresos(), 0.001);
+        assertEquals(2, resumen.getTotalFacturas());
+        assertTrue(contabilidad.verificarSaldos(false).isEmpty());
+
+        diario.cerrar();
+    }
+
+    @Test
+    void laVerificacionDetectaYReparaLasDiferencias() throws Exception {
+        DiarioContable diario = new DiarioContable(new MovimientoContableRepository(),
+                                                   carpeta.resolve("diario.wal"), 100);
+        ContabilidadService contabilidad = new ContabilidadService(new MovimientoContableRepository(), diario);
+        MovimientoContableRepository repository = new MovimientoContableRepository();
+        repository.guardarLote(List.of(movimiento("FACTURA", "F-1", 100.0, "DEBITO"),
+                                       movimiento("FACTURA", "F-2", 60.0, "DEBITO")));
+        contabilidad.realizarCierrePeriodo(LocalDateTime.of(2025, 4, 30, 23, 0), "Abril");
+        repository.save(movimiento("COTIZACION", "C-1", 20.0, "CREDITO"));
+
+        // Un saldo acumulado alterado a mano y una foto de cierre que no cuadra
+        ejecutar("UPDATE saldos_contables SET total = total + 5 WHERE clave = 'CREDITO'",
+                 "UPDATE saldos_cierre SET cantidad = cantidad + 1 WHERE clave = 'FACTURA'");
+
+        List<String> diferencias = contabilidad.verificarSaldos(false);
+        assertEquals(2, diferencias.size(), diferencias.toString());
+        assertTrue(diferencias.get(0).startsWith("Cierre 2025-04"));
+        assertTrue(diferencias.get(1).startsWith("Saldos acumulados: MOVIMIENTO CREDITO"));
+
+        // La reparación recalcula los acumulados desde la foto del último cierre más los movimientos posteriores
+        contabilidad.verificarSaldos(true);
+        assertEquals(20.0, new SaldosContablesRepository().leerSaldos().getTotalMovimiento("CREDITO"), 0.001);
+        assertEquals(1, contabilidad.verificarSaldos(false).size());
+
+        diario.cerrar();
+    }
+
+    @Test
+    void unLoteQueEsperaAlCierreQuedaDespuesDeEl() throws Exception {
+        MovimientoContableRepository repository = new MovimientoContableRepository();
+        SaldosContablesRepository saldosRepository = new SaldosContablesRepository();
+        repository.save(movimiento("FACTURA", "F-1", 100.0, "DEBITO"));
+
+        Thread lote;
+        try (Connection conn = DBUtil.getConnection()) {
+            DBUtil.beginTransaction(conn);
+            saldosRepository.bloquearParaCierre(conn);
+
+            // Llega un lote mientras el cierre tiene los saldos bloqueados
+            lote = new Thread(() -> {
+                try {
+                    repository.guardarLote(List.of(movimiento("FACTURA", "F-2", 50.0, "DEBITO")));
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            lote.start();
+            Thread.sleep(200);
+
+            MovimientoContable cierre = repository.save(conn, movimiento("CIERRE_PERIODO", "CIERRE-1", 100.0, "DEBITO"));
+            saldosRepository.registrarCierre(conn, "2025-03", LocalDateTime.of(2025, 3, 31, 23, 0),
+                    cierre.getId(), cierre.getId(), saldosRepository.leerSaldos(conn, false));
+            DBUtil.commitTransaction(conn);
+        }
+        lote.join(5_000);
+
+        // El lote tomó un ID posterior al cierre: cuenta en los saldos pero no en la foto
+        assertEquals(3, contar());
+        assertTrue(saldosRepository.verificar(false).isEmpty(), saldosRepository.verificar(false).toString());
+        assertEquals(250.0, saldosRepository.leerSaldos().getTotalMovimiento("DEBITO"), 0.001);
+    }
+
+    private static MovimientoContable movimiento(String tipoDocumento, String numero, double monto, String tipo) {
+        MovimientoContable movimiento = new MovimientoContable(LocalDateTime.of(2025, 3, 10, 12, 0),
+                tipoDocumento, numero, tipoDocumento + " " + numero, monto, tipo);
+        movimiento.setUsuario("Ana");
+        movimiento.setEntidadRelacionada("Papelería Central");
+        return movimiento;
+    }
+
+    private static double sumar(String tipoMovimiento) throws Exception {
+        try (Connection conn = h2.getConnection(); Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COALESCE(SUM(monto), 0) FROM movimientos_contables " +
+                                            "WHERE tipo_movimiento = '" + tipoMovimiento + "'")) {
+            rs.next();
+            return rs.getDouble(1);
+        }
+    }
+
+    private static int contar() throws Exception {
+        try (Connection conn = h2.getConnection(); Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM movimientos_contables")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    private static void ejecutar(String... sentencias) throws Exception {
+        try (Connection conn = h2.getConnection(); Statement st = conn.createStatement()) {
+            for (String sql : sentencias) {
+                st.execute(sql);
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.distribuciones.omega.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Verifica que las etapas respeten sus dependencias, que las independientes corran
+ * a la vez y que un error detenga solo a las etapas que dependen de la fallida.
+ */
+class ArranqueTest {
+
+    @Test
+    void respetaDependenciasYCorreEnParalelo() throws Exception {
+        List<String> orden = new CopyOnWriteArrayList<>();
+        // "a" y "b" solo terminan si ambas están corriendo al mismo tiempo
+        CountDownLatch juntas = new CountDownLatch(2);
+        AtomicInteger ultimoAvance = new AtomicInteger();
+
+        Arranque arranque = new Arranque()
+                .etapa("a", "A", () -> {
+                    juntas.countDown();
+                    assertTrue(juntas.await(5, TimeUnit.SECONDS));
+                    orden.add("a");
+                })
+                .etapa("b", "B", () -> {
+                    juntas.countDown();
+                    assertTrue(juntas.await(5, TimeUnit.SECONDS));
+                    orden.add("b");
+                })
+                .etapa("c", "C", () -> orden.add("c"), "a", "b");
+
+        arranque.ejecutar((terminadas, total, mensaje) -> ultimoAvance.set(terminadas * 10 + total));
+
+        assertEquals("c", orden.get(2));
+        assertEquals(33, ultimoAvance.get());
+        assertEquals(3, arranque.getTiempos().size());
+        assertTrue(arranque.resumen().startsWith("Arranque en "));
+    }
+
+    @Test
+    void unErrorDetieneSoloLasEtapasDependientes() {
+        AtomicBoolean dependiente = new AtomicBoolean();
+        AtomicBoolean independiente = new AtomicBoolean();
+
+        Arranque arranque = new Arranque()
+                .etapa("conexion", "", () -> {
+                    throw new SQLException("Sin conexión");
+                })
+                .etapa("esquema", "", () -> dependiente.set(true), "conexion")
+                .etapa("vistas", "", () -> independiente.set(true));
+
+        SQLException error = assertThrows(SQLException.class, () -> arranque.ejecutar((t, total, m) -> { }));
+        assertEquals("Sin conexión", error.getMessage());
+        assertFalse(dependiente.get());
+        assertTrue(independiente.get());
+    }
+
+    @Test
+    void rechazaDependenciasNoDeclaradas() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new Arranque().etapa("esquema", "", () -> { }, "conexion"));
+    }
+
+    @Test
+    void encuentraLasClasesDeUnaVista() {
+        List<String> clases = PrecargaVistas.clasesDe(
+                "<?import javafx.scene.control.Button?>\n<?import javafx.scene.layout.*?>\n" +
+                "<VBox fx:controller=\"com.distribuciones.omega.controllers.LoginController\"/>");
+        assertEquals(List.of("javafx.scene.control.Button", "com.distribuciones.omega.controllers.LoginController"),
+                     clases);
+    }
+}
@@ -0,0 +1,237 @@
+package com.distribuciones.omega.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.distribuciones.omega.repository.CorreoPendienteRepository;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Verifica la bandeja de salida contra un servidor SMTP local mínimo: agrupación
+ * por destinatario en una sola conexión, reintento tras un rechazo, purga de los
+ * enviados y métricas.
+ */
+class BandejaSalidaCorreoTest {
+
+    private static JdbcDataSource h2;
+
+    private ServidorSmtp servidor;
+    private BandejaSalidaCorreo bandeja;
+
+    @BeforeAll
+    static void prepararBaseDeDatos() {
+        h2 = new JdbcDataSource();
+        h2.setURL("jdbc:h2:mem:correos_pendientes;MODE=MySQL;DB_CLOSE_DELAY=-1");
+        h2.setUser("sa");
+        DBUtil.usarDataSource(h2);
+        new CorreoPendienteRepository().createTableIfNotExists();
+    }
+
+    @AfterAll
+    static void liberar() {
+        DBUtil.cerrarPool();
+    }
+
+    @BeforeEach
+    void iniciarServidor() throws Exception {
+        ejecutar("DELETE FROM correos_pendientes");
+        servidor = new ServidorSmtp();
+        bandeja = new BandejaSalidaCorreo(new CorreoPendienteRepository(),
+                new BandejaSalidaCorreo.TransporteSmtp(EmailUtil.crearSesion("localhost", servidor.getPuerto(), null, null)),
+                0);
+    }
+
+    @AfterEach
+    void detenerServidor() throws Exception {
+        bandeja.detener();
+        servidor.close();
+    }
+
+    @Test
+    void agrupaPorDestinatarioEnUnaSolaConexion() {
+        assertTrue(bandeja.encolar("admin@omega.com", "Stock bajo TEC001", "Quedan 0", "STOCK:TEC001"));
+        assertTrue(bandeja.encolar("admin@omega.com", "Stock bajo MOB001", "Quedan 1", "STOCK:MOB001"));
+        assertTrue(bandeja.encolar("ADMIN@omega.com", "Stock bajo TEC001", "Quedan 0 (repetido)", "STOCK:TEC001"));
+        assertTrue(bandeja.encolar("bodega@omega.com", "Stock bajo INS001", "Quedan 2", null));
+        assertFalse(bandeja.encolar(" ", "Sin destinatario", "-", null));
+
+        assertEquals(4, bandeja.procesar());
+
+        // Un resumen para admin (el aviso repetido de TEC001 se descarta) y un correo simple para bodega
+        assertEquals(2, servidor.mensajes.size());
+        assertEquals(1, servidor.conexiones.get());
+        String resumen = servidor.mensajes.get(0);
+        assertTrue(resumen.contains("Resumen de alertas"), resumen);
+        assertTrue(resumen.contains("Quedan 0 (repetido)"), resumen);
+        assertTrue(resumen.contains("Stock bajo MOB001"), resumen);
+        assertTrue(servidor.mensajes.get(1).contains("Subject: Stock bajo INS001"));
+
+        BandejaSalidaCorreo.EstadisticasCorreo estadisticas = bandeja.getEstadisticas();
+        assertEquals(0, estadisticas.getPendientes());
+        assertEquals(4, estadisticas.getEncolados());
+        assertEquals(4, estadisticas.getAvisosEnviados());
+        assertEquals(2, estadisticas.getCorreosEnviados());
+        assertEquals(1, estadisticas.getResumenes());
+        assertEquals(1, estadisticas.getDescartados());
+
+        // Ya enviados: una nueva pasada no repite nada
+        assertEquals(0, bandeja.procesar());
+        assertEquals(2, servidor.mensajes.size());
+    }
+
+    @Test
+    void reprogramaLosRechazosConEsperaYLuegoLosEnvia() throws Exception {
+        servidor.rechazos.set(1);
+        bandeja.encolar("admin@omega.com", "Stock bajo TEC001", "Quedan 0", "STOCK:TEC001");
+
+        assertEquals(0, bandeja.procesar());
+        assertEquals(1, bandeja.getEstadisticas().getFallosEnvio());
+        assertEquals(1, bandeja.getEstadisticas().getPendientes());
+
+        // El reintento queda programado a futuro: no se vuelve a tomar enseguida
+        assertEquals(0, bandeja.procesar());
+        try (Connection conn = h2.getConnection(); Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT intentos, estado, ultimo_error, " +
+                     "proximo_intento > CURRENT_TIMESTAMP FROM correos_pendientes")) {
+            assertTrue(rs.next());
+            assertEquals(1, rs.getInt(1));
+            assertEquals(CorreoPendienteRepository.PENDIENTE, rs.getString(2));
+            assertTrue(rs.getString(3).contains("451"), rs.getString(3));
+            assertTrue(rs.getBoolean(4));
+        }
+
+        // Cuando vence la espera se envía por una conexión nueva
+        ejecutar("UPDATE correos_pendientes SET proximo_intento = DATEADD('SECOND', -1, CURRENT_TIMESTAMP)");
+        assertEquals(1, bandeja.procesar());
+        assertEquals(1, servidor.mensajes.size());
+        assertEquals(0, bandeja.getEstadisticas().getPendientes());
+    }
+
+    @Test
+    void elHiloDeEnvioVaciaLaBandejaTrasEncolar() throws Exception {
+        bandeja.iniciar(3600);
+        bandeja.encolar("admin@omega.com", "Stock bajo TEC001", "Quedan 0", null);
+
+        long limite = System.currentTimeMillis() + 10_000;
+        while (servidor.mensajes.isEmpty() && System.currentTimeMillis() < limite) {
+            Thread.sleep(20);
+        }
+        assertEquals(1, servidor.mensajes.size());
+    }
+
+    @Test
+    void purgaLosEnviadosMasViejosQueLaRetencion() throws Exception {
+        bandeja.encolar("admin@omega.com", "Aviso viejo", "-", "VIEJO");
+        bandeja.encolar("bodega@omega.com", "Aviso reciente", "-", "RECIENTE");
+        assertEquals(2, bandeja.procesar());
+        ejecutar("UPDATE correos_pendientes SET enviado = DATEADD('DAY', -40, CURRENT_TIMESTAMP) WHERE clave = 'VIEJO'");
+
+        // La purga corre en la pasada siguiente del hilo de envío
+        BandejaSalidaCorreo otra = new BandejaSalidaCorreo(new CorreoPendienteRepository(),
+                new BandejaSalidaCorreo.TransporteSmtp(EmailUtil.crearSesion("localhost", servidor.getPuerto(), null, null)),
+                0, 30);
+        assertEquals(0, otra.procesar());
+
+        try (Connection conn = h2.getConnection(); Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT clave FROM correos_pendientes")) {
+            assertTrue(rs.next());
+            assertEquals("RECIENTE", rs.getString(1));
+            assertFalse(rs.next());
+        }
+    }
+
+    private static void ejecutar(String sql) throws Exception {
+        try (Connection conn = h2.getConnection(); Statement st = conn.createStatement()) {
+            st.execute(sql);
+        }
+    }
+
+    /**
+     * Servidor SMTP mínimo: acepta todo salvo los MAIL FROM que se pidan rechazar
+     */
+    private static class ServidorSmtp implements AutoCloseable {
+        private final ServerSocket socket;
+        final List<String> mensajes = new CopyOnWriteArrayList<>();
+        final AtomicInteger conexiones = new AtomicInteger();
+        final AtomicInteger rechazos = new AtomicInteger();
+
+        ServidorSmtp() throws IOException {
+            socket = new ServerSocket(0);
+            Thread hilo = new Thread(this::aceptar, "smtp-prueba");
+            hilo.setDaemon(true);
+            hilo.start();
+        }
+
+        int getPuerto() {
+            return socket.getLocalPort();
+        }
+
+        private void aceptar() {
+            while (!socket.isClosed()) {
+                try (Socket cliente = socket.accept()) {
+                    conexiones.incrementAndGet();
+                    atender(cliente);
+                } catch (IOException e) {
+                    // Servidor cerrado o cliente desconectado
+                }
+            }
+        }
+
+        private void atender(Socket cliente) throws IOException {
+            BufferedReader entrada = new BufferedReader(
+                    new InputStreamReader(cliente.getInputStream(), StandardCharsets.UTF_8));
+            PrintWriter salida = new PrintWriter(cliente.getOutputStream(), true);
+            responder(salida, "220 localhost");
+            String linea;
+            while ((linea = entrada.readLine()) != null) {
+                String comando = linea.toUpperCase();
+                if (comando.startsWith("MAIL FROM") && rechazos.get() > 0) {
+                    rechazos.decrementAndGet();
+                    responder(salida, "451 Servicio no disponible temporalmente");
+                } else if (comando.startsWith("DATA")) {
+                    responder(salida, "354 Fin con <CRLF>.<CRLF>");
+                    StringBuilder mensaje = new StringBuilder();
+                    while ((linea = entrada.readLine()) != null && !linea.equals(".")) {
+                        mensaje.append(linea).append('\n');
+                    }
+                    mensajes.add(mensaje.toString());
+                    responder(salida, "250 OK");
+                } else if (comando.startsWith("QUIT")) {
+                    responder(salida, "221 Adiós");
+                    return;
+                } else {
+                    responder(salida, "250 OK");
+                }
+            }
+        }
+
+        private static void responder(PrintWriter salida, String linea) {
+            salida.print(linea + "\r\n");
+            salida.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.distribuciones.omega.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Collections;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Verifica que los montos se conviertan a centavos sin error de representación,
+ * que la división redondee igual que BigDecimal y que las sumas no acumulen error.
+ */
+class DineroTest {
+
+    @Test
+    void convierteSinErrorDeRepresentacion() {
+        assertEquals(1, Dinero.deDouble(0.01));
+        assertEquals(115, Dinero.deDouble(1.15));
+        assertEquals(-1005, Dinero.deDouble(-10.05));
+        // Más de dos decimales: se redondea según el modo
+        assertEquals(1235, Dinero.deDouble(12.345));
+        assertEquals(1234, Dinero.deDouble(12.345, RoundingMode.HALF_EVEN));
+        assertEquals(1234, Dinero.deDouble(12.349, RoundingMode.DOWN));
+        assertEquals(new BigDecimal("12.34"), Dinero.aDecimal(1234));
+        assertThrows(ArithmeticException.class, () -> Dinero.deDouble(Double.NaN));
+    }
+
+    @Test
+    void divideComoBigDecimal() {
+        long[] dividendos = {0, 1, 5, 15, 25, 149, 150, 151, -1, -5, -15, -25, -150, -151, 1234567};
+        long[] divisores = {10, -10, 100, 3};
+        for (RoundingMode modo : RoundingMode.values()) {
+            if (modo == RoundingMode.UNNECESSARY) {
+                continue;
+            }
+            for (long dividendo : dividendos) {
+                for (long divisor : divisores) {
+                    long esperado = BigDecimal.valueOf(dividendo)
+                            .divide(BigDecimal.valueOf(divisor), 0, modo).longValueExact();
+                    assertEquals(esperado, Dinero.dividir(dividendo, divisor, modo),
+                            dividendo + " / " + divisor + " " + modo);
+                }
+            }
+        }
+        assertThrows(ArithmeticException.class, () -> Dinero.dividir(5, 10, RoundingMode.UNNECESSARY));
+    }
+
+    @Test
+    void sumaSinAcumularError() {
+        List<Double> montos = Collections.nCopies(1_000, 0.10);
+        double conDouble = 0;
+        for (double monto : montos) {
+            conDouble += monto;
+        }
+
+        assertEquals(10_000, Dinero.sumar(montos, Double::doubleValue));
+        assertEquals(100.0, Dinero.aDouble(Dinero.sumar(montos, Double::doubleValue)));
+        // La suma directa en double ya no da exactamente 100
+        assertNotEquals(100.0, conDouble);
+        // 12 % de 10.05 = 1.206
+        assertEquals(121, Dinero.porcentaje(1005, 1200, RoundingMode.HALF_UP));
+        assertEquals(1200, Dinero.puntosBasicos(0.12));
+    }
+}
@@ -0,0 +1,104 @@
+package com.distribuciones.omega.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Verifica la exportación en streaming a Excel y CSV: todas las filas llegan al
+ * archivo, el avance se notifica y una cancelación no deja archivos a medias.
+ */
+class ExportarUtilTest {
+
+    private static final String[] COLUMNAS = {"Nº Factura", "Fecha", "Cliente", "Vendedor", "Total", "Estado"};
+
+    @TempDir
+    Path directorio;
+
+    @Test
+    void excelRecibeTodasLasFilasYNotificaElAvance() throws Exception {
+        int filas = 25_000;
+        Path archivo = directorio.resolve("reporte.xlsx");
+        List<Long> avances = new ArrayList<>();
+
+        long t0 = System.nanoTime();
+        long escritas = ExportarUtil.exportarExcel(archivo.toString(), "Reporte", "Período", Map.of("Total", "1"),
+                COLUMNAS, generarFilas(filas), filas, (n, total) -> avances.add(n));
+        System.out.printf("Excel en streaming: %d filas en %d ms, %d KB%n",
+                filas, (System.nanoTime() - t0) / 1_000_000, Files.size(archivo) / 1024);
+
+        assertEquals(filas, escritas);
+        assertEquals(filas / 1000 + 1, avances.size());
+        assertEquals(filas, avances.get(avances.size() - 1));
+
+        try (InputStream in = Files.newInputStream(archivo); XSSFWorkbook libro = new XSSFWorkbook(in)) {
+            Sheet hoja = libro.getSheetAt(0);
+            Row ultima = hoja.getRow(hoja.getLastRowNum());
+            assertEquals("FACT-" + (filas - 1), ultima.getCell(0).getStringCellValue());
+            assertEquals(filas - 1, ultima.getCell(4).getNumericCellValue());
+            // Título, subtítulo, blanco, estadísticas (2), blanco y encabezados antes de los datos
+            assertEquals(6 + filas, hoja.getLastRowNum());
+        }
+    }
+
+    @Test
+    void csvEscapaSeparadoresYComillas() throws Exception {
+        Path archivo = directorio.resolve("reporte.csv");
+        long escritas = ExportarUtil.exportarCSV(archivo.toString(), COLUMNAS, destino -> {
+            destino.accept(new Object[] {"FACT-1", "01/03/2025 10:00", "Pérez, Juan", "Ana \"La Jefa\"", 3570.0, "Pagada"});
+            destino.accept(new Object[] {"FACT-2", "01/03/2025 11:00", null, "Ana", 10.5, "Pendiente"});
+        }, 2, null);
+
+        assertEquals(2, escritas);
+        List<String> lineas = Files.readAllLines(archivo, StandardCharsets.UTF_8);
+        assertEquals(3, lineas.size());
+        assertEquals("﻿Nº Factura,Fecha,Cliente,Vendedor,Total,Estado", lineas.get(0));
+        assertEquals("FACT-1,01/03/2025 10:00,\"Pérez, Juan\",\"Ana \"\"La Jefa\"\"\",3570.0,Pagada", lineas.get(1));
+        assertEquals("FACT-2,01/03/2025 11:00,,Ana,10.5,Pendiente", lineas.get(2));
+    }
+
+    @Test
+    void cancelarBorraElArchivoIncompleto() {
+        Path csv = directorio.resolve("cancelado.csv");
+        Path xlsx = directorio.resolve("cancelado.xlsx");
+        ExportarUtil.ProgresoExportacion cancelarA5000 = (n, total) -> {
+            if (n >= 5000) {
+                throw new CancellationException();
+            }
+        };
+
+        assertThrows(CancellationException.class, () ->
+                ExportarUtil.exportarCSV(csv.toString(), COLUMNAS, generarFilas(20_000), 20_000, cancelarA5000));
+        assertThrows(CancellationException.class, () ->
+                ExportarUtil.exportarExcel(xlsx.toString(), "Reporte", "", null, COLUMNAS,
+                        generarFilas(20_000), 20_000, cancelarA5000));
+
+        assertFalse(Files.exists(csv));
+        assertFalse(Files.exists(xlsx));
+        assertTrue(Files.isDirectory(directorio));
+    }
+
+    private static ExportarUtil.OrigenFilas generarFilas(int filas) {
+        return destino -> {
+            for (int i = 0; i < filas; i++) {
+                destino.accept(new Object[] {"FACT-" + i, "01/03/2025 10:00", "Cliente " + (i % 50),
+                        "Vendedor " + (i % 5), (double) i, i % 2 == 0 ? "Pagada" : "Pendiente"});
+            }
+        };
+    }
+}
@@ -0,0 +1,70 @@
+package com.distribuciones.omega.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import javafx.collections.ListChangeListener;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Verifica que la lista paginada cargue solo las páginas pedidas y sus vecinas,
+ * encadenando la clave de la página anterior, y que avise a la tabla al llegar.
+ */
+class ListaPaginadaTest {
+
+    private static final int TOTAL = 1_000;
+
+    @Test
+    void cargaLaPaginaPedidaYSusVecinas() {
+        List<Runnable> enCola = new ArrayList<>();
+        AtomicInteger avisos = new AtomicInteger();
+        ListaPaginada<Integer> lista = new ListaPaginada<>(TOTAL, 10, 5, ListaPaginadaTest::pagina,
+                enCola::add, Runnable::run);
+        lista.addListener((ListChangeListener<Integer>) cambio -> avisos.incrementAndGet());
+
+        // La primera vez la fila llega vacía y se encolan su página y la siguiente
+        assertNull(lista.get(5));
+        assertEquals(2, enCola.size());
+        ejecutar(enCola);
+
+        assertEquals(5, lista.get(5));
+        assertEquals(15, lista.get(15));
+        assertEquals(2, lista.getCargas());
+        assertEquals(2, avisos.get());
+    }
+
+    @Test
+    void unaPaginaLejanaCargaAntesLasAnteriores() {
+        List<Integer> despuesDe = new ArrayList<>();
+        ListaPaginada<Integer> lista = new ListaPaginada<>(TOTAL, 100, 3, (ultima, limite) -> {
+            despuesDe.add(ultima);
+            return pagina(ultima, limite);
+        }, Runnable::run, Runnable::run);
+
+        assertEquals(450, lista.get(450));
+        // Páginas 0..4 en orden, luego la vecina 5 (la 3 ya se cargó)
+        assertEquals(List.of(-1, 99, 199, 299, 399, 499),
+                despuesDe.stream().map(d -> d == null ? -1 : d).collect(Collectors.toList()));
+
+        // Solo quedan en memoria las últimas páginas, pero la clave de las anteriores se recuerda
+        assertEquals(0, lista.get(0));
+        assertEquals(IntStream.range(0, TOTAL).boxed().collect(Collectors.toList()),
+                IntStream.range(0, TOTAL).mapToObj(lista::get).collect(Collectors.toList()));
+    }
+
+    private static List<Integer> pagina(Integer despuesDe, int limite) {
+        int desde = despuesDe == null ? 0 : despuesDe + 1;
+        return IntStream.range(desde, Math.min(desde + limite, TOTAL)).boxed().collect(Collectors.toList());
+    }
+
+    private static void ejecutar(List<Runnable> enCola) {
+        List<Runnable> tareas = new ArrayList<>(enCola);
+        enCola.clear();
+        tareas.forEach(Runnable::run);
+    }
+}
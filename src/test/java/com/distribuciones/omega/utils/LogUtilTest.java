@@ -0,0 +1,67 @@
+package com.distribuciones.omega.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import org.junit.jupiter.api.Test;
+import org.slf4j.MDC;
+
+/**
+ * Verifica que los campos de contexto se restauren al cerrar y que los eventos
+ * con un nivel deshabilitado no lleguen a registrarse.
+ */
+class LogUtilTest {
+
+    @Test
+    void restauraLosCamposAnterioresAlCerrar() {
+        try (LogUtil.Contexto factura = LogUtil.con("factura", "F-001")) {
+            try (LogUtil.Contexto linea = LogUtil.con("factura", "F-002", "sku", "P1")) {
+                assertEquals("F-002", MDC.get("factura"));
+                assertEquals("P1", MDC.get("sku"));
+            }
+            assertEquals("F-001", MDC.get("factura"));
+            assertNull(MDC.get("sku"));
+        }
+        assertNull(MDC.get("factura"));
+    }
+
+    @Test
+    void registraEventosSoloSiElNivelEstaHabilitado() {
+        Logger logger = Logger.getLogger("com.distribuciones.omega.prueba.LogUtil");
+        logger.setUseParentHandlers(false);
+        List<String> registros = new ArrayList<>();
+        Handler captura = new Handler() {
+            @Override
+            public void publish(LogRecord registro) {
+                registros.add(registro.getMessage() + " sku=" + MDC.get("sku"));
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        logger.addHandler(captura);
+        try {
+            logger.setLevel(Level.INFO);
+            LogUtil.evento(logger, Level.FINE, "Descontando stock", "sku", "P1");
+            assertEquals(0, registros.size());
+
+            logger.setLevel(Level.FINE);
+            LogUtil.evento(logger, Level.FINE, "Descontando stock", "sku", "P1");
+            assertEquals(List.of("Descontando stock sku=P1"), registros);
+            assertNull(MDC.get("sku"));
+        } finally {
+            logger.removeHandler(captura);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.distribuciones.omega.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Verifica que las conexiones instrumentadas cuenten ejecuciones, filas y errores
+ * por sentencia, agrupen las que solo difieren en literales y exporten el formato
+ * de Prometheus.
+ */
+class MetricasBDTest {
+
+    private static JdbcDataSource h2;
+
+    @BeforeAll
+    static void prepararBaseDeDatos() throws Exception {
+        h2 = new JdbcDataSource();
+        h2.setURL("jdbc:h2:mem:metricas;MODE=MySQL;DB_CLOSE_DELAY=-1");
+        h2.setUser("sa");
+        try (Connection conn = h2.getConnection(); Statement st = conn.createStatement()) {
+            st.execute("CREATE TABLE productos (id VARCHAR(20) PRIMARY KEY, cantidad INT NOT NULL)");
+        }
+    }
+
+    @Test
+    void cuentaEjecucionesFilasYErroresPorSentencia() throws Exception {
+        MetricasBD metricas = new MetricasBD(true, -1);
+        try (Connection conn = metricas.instrumentar(h2.getConnection())) {
+            try (PreparedStatement ps = conn.prepareStatement("INSERT INTO productos (id, cantidad) VALUES (?, ?)")) {
+                for (int i = 0; i < 5; i++) {
+                    ps.setString(1, "P" + i);
+                    ps.setInt(2, 10);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+            try (PreparedStatement ps = conn.prepareStatement("SELECT id FROM productos WHERE cantidad >= ?")) {
+                ps.setInt(1, 1);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        // Solo recorrer
+                    }
+                }
+            }
+            try (Statement st = conn.createStatement()) {
+                st.executeUpdate("UPDATE productos SET cantidad = cantidad - 1 WHERE id = 'P1'");
+                st.executeUpdate("UPDATE productos SET cantidad = cantidad - 2 WHERE id = 'P2'");
+                assertThrows(SQLException.class, () -> st.executeQuery("SELECT columna_inexistente FROM productos"));
+            }
+        }
+
+        List<MetricasBD.EstadisticasSentencia> sentencias = metricas.getEstadisticasSentencias();
+        MetricasBD.EstadisticasSentencia insercion = buscar(sentencias, "INSERT INTO productos");
+        assertEquals(1, insercion.getEjecuciones());
+        assertEquals(5, insercion.getFilas());
+
+        assertEquals(5, buscar(sentencias, "SELECT id FROM productos").getFilas());
+
+        // Los dos UPDATE con literales distintos se agrupan en una sola sentencia
+        MetricasBD.EstadisticasSentencia actualizacion = buscar(sentencias, "UPDATE productos");
+        assertEquals("UPDATE productos SET cantidad = cantidad - ? WHERE id = ?", actualizacion.getSql());
+        assertEquals(2, actualizacion.getEjecuciones());
+        assertEquals(2, actualizacion.getFilas());
+
+        assertEquals(1, buscar(sentencias, "SELECT columna_inexistente").getErrores());
+    }
+
+    @Test
+    void registraConsultasLentasYTrazas() throws Exception {
+        MetricasBD metricas = new MetricasBD(true, 0);
+        try (Traza traza = Traza.iniciar("operacionDePrueba");
+             Connection conn = metricas.instrumentar(h2.getConnection());
+             Statement st = conn.createStatement()) {
+            try (Traza paso = Traza.iniciar("paso")) {
+                st.executeQuery("SELECT COUNT(*) FROM productos").close();
+                st.executeQuery("SELECT COUNT(*) FROM productos").close();
+            }
+            st.executeQuery("SELECT 1").close();
+
+            assertEquals(3, traza.getConsultas());
+            assertEquals(2, traza.getPasos().get(0).getConsultas());
+        }
+        // Con umbral 0 toda sentencia cuenta como lenta
+        assertEquals(3, metricas.getConsultasLentas());
+        assertEquals(null, Traza.actual());
+    }
+
+    @Test
+    void exportaFormatoPrometheus() throws Exception {
+        MetricasBD metricas = new MetricasBD(true, -1);
+        try (Connection conn = metricas.instrumentar(h2.getConnection()); Statement st = conn.createStatement()) {
+            st.executeQuery("SELECT * FROM productos WHERE id = 'a\"b'").close();
+        }
+        metricas.registrarEsperaConexion(2_000_000, true);
+
+        StringBuilder sb = new StringBuilder();
+        metricas.exportarPrometheus(sb);
+        String texto = sb.toString();
+
+        assertTrue(texto.contains("# TYPE omega_sql_duracion_segundos histogram"));
+        assertTrue(texto.contains("omega_sql_duracion_segundos_count{sentencia=\"SELECT * FROM productos WHERE id = ?\"} 1"));
+        assertTrue(texto.contains("omega_conexion_espera_segundos_bucket{le=\"0.005\"} 1"));
+        assertTrue(texto.contains("omega_conexion_espera_segundos_count 1"));
+        assertEquals("a\\\"b", MetricasBD.escapar("a\"b"));
+    }
+
+    private static MetricasBD.EstadisticasSentencia buscar(List<MetricasBD.EstadisticasSentencia> sentencias,
+                                                          String prefijo) {
+        return sentencias.stream()
+                .filter(s -> s.getSql().startsWith(prefijo))
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("Sin métricas para " + prefijo));
+    }
+}
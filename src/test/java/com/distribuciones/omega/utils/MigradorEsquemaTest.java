@@ -0,0 +1,168 @@
+package com.distribuciones.omega.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Verifica que las migraciones se apliquen una sola vez, que un inicio con el
+ * esquema al día haga una única consulta y que se detecten migraciones modificadas.
+ */
+class MigradorEsquemaTest {
+
+    private static final AtomicInteger EJECUCIONES_BASE = new AtomicInteger();
+
+    @BeforeAll
+    static void prepararBaseDeDatos() {
+        JdbcDataSource h2 = new JdbcDataSource();
+        h2.setURL("jdbc:h2:mem:migraciones;MODE=MySQL;DB_CLOSE_DELAY=-1");
+        h2.setUser("sa");
+        DBUtil.usarDataSource(h2);
+    }
+
+    @AfterAll
+    static void cerrar() {
+        DBUtil.cerrarPool();
+    }
+
+    @Test
+    void aplicaUnaVezYLuegoSoloConsultaLaVersion() throws Exception {
+        MigradorEsquema migrador = migrador("1");
+
+        assertEquals(2, migrador.migrar());
+        assertEquals(1, EJECUCIONES_BASE.get());
+        try (Connection conn = DBUtil.getConnection(); Statement st = conn.createStatement()) {
+            st.executeUpdate("INSERT INTO ordenes (numero_orden, cliente_id, vendedor_id, fecha, subtotal, iva, total) " +
+                             "VALUES ('ORD-1', 1, 1, CURRENT_TIMESTAMP, 100, 19, 119)");
+            try (ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM " + MigradorEsquema.TABLA)) {
+                rs.next();
+                assertEquals(2, rs.getInt(1));
+            }
+        }
+
+        try (Traza traza = Traza.iniciar("arranque")) {
+            assertEquals(0, migrador("1").migrar());
+            assertEquals(1, traza.getConsultas());
+        }
+        assertEquals(1, EJECUCIONES_BASE.get());
+
+        // Cambiar una migración ya aplicada se informa, pero no se vuelve a aplicar
+        MigradorEsquema modificado = migrador("2");
+        assertEquals(0, modificado.migrar());
+        assertEquals(List.of(1), modificado.getModificadas());
+        assertEquals(1, EJECUCIONES_BASE.get());
+    }
+
+    @Test
+    void separaSentenciasIgnorandoComentarios() {
+        List<String> sentencias = MigradorEsquema.Migracion.separarSentencias(
+                "-- comentario\nCREATE TABLE a (\n  id INT\n);\n\nINSERT INTO a VALUES (1);\nSELECT 1");
+        assertEquals(3, sentencias.size());
+        assertTrue(sentencias.get(0).startsWith("CREATE TABLE a ("));
+        assertTrue(sentencias.get(0).endsWith(")"));
+        assertEquals("INSERT INTO a VALUES (1)", sentencias.get(1));
+        assertEquals("SELECT 1", sentencias.get(2));
+    }
+
+    @Test
+    void agregaLaColumnaSoloSiFalta() throws Exception {
+        try (Connection conn = DBUtil.getConnection(); Statement st = conn.createStatement()) {
+            st.executeUpdate("CREATE TABLE productos_columna (id VARCHAR(50) PRIMARY KEY)");
+
+            // La segunda vez la columna ya existe (instalaciones que la agregaban al arrancar)
+            MigradorEsquema.agregarColumnaSiFalta(conn, "productos_columna", "ultima_modificacion",
+                    "TIMESTAMP DEFAULT CURRENT_TIMESTAMP");
+            MigradorEsquema.agregarColumnaSiFalta(conn, "productos_columna", "ultima_modificacion",
+                    "TIMESTAMP DEFAULT CURRENT_TIMESTAMP");
+
+            st.executeUpdate("INSERT INTO productos_columna (id) VALUES ('P1')");
+            try (ResultSet rs = st.executeQuery("SELECT ultima_modificacion FROM productos_columna")) {
+                assertTrue(rs.next());
+                assertNotNull(rs.getTimestamp(1));
+            }
+        }
+    }
+
+    @Test
+    void creaElIndiceSoloSiFalta() throws Exception {
+        try (Connection conn = DBUtil.getConnection(); Statement st = conn.createStatement()) {
+            st.executeUpdate("CREATE TABLE facturas_indice (id_factura BIGINT PRIMARY KEY, fecha TIMESTAMP)");
+            // Bases en las que el script anterior ya lo había creado
+            st.executeUpdate("CREATE INDEX idx_facturas_indice_fecha ON facturas_indice (fecha, id_factura)");
+
+            MigradorEsquema.crearIndiceSiFalta(conn, "facturas_indice", "idx_facturas_indice_fecha", "fecha, id_factura");
+            MigradorEsquema.crearIndiceSiFalta(conn, "facturas_indice", "idx_facturas_indice_id", "id_factura, fecha");
+            MigradorEsquema.crearIndiceSiFalta(conn, "facturas_indice", "idx_facturas_indice_id", "id_factura, fecha");
+
+            try (ResultSet rs = conn.getMetaData().getIndexInfo(conn.getCatalog(), null, "FACTURAS_INDICE", false, false)) {
+                List<String> indices = new ArrayList<>();
+                while (rs.next()) {
+                    String nombre = rs.getString("INDEX_NAME");
+                    if (nombre.toLowerCase().startsWith("idx_") && !indices.contains(nombre.toLowerCase())) {
+                        indices.add(nombre.toLowerCase());
+                    }
+                }
+                assertEquals(List.of("idx_facturas_indice_fecha", "idx_facturas_indice_id"), indices.stream().sorted().toList());
+            }
+        }
+    }
+
+    @Test
+    void unaMigracionReescritaAceptaSuChecksumAnterior() {
+        MigradorEsquema.Migracion script = MigradorEsquema.Migracion.sql(2, "Órdenes de venta", "/db/migraciones/V2__ordenes.sql");
+        MigradorEsquema.Migracion java = MigradorEsquema.Migracion.java(2, "Órdenes de venta", "1", conn -> { })
+                .reemplazaA(script.getChecksum());
+
+        assertTrue(java.coincide(java.getChecksum()));
+        assertTrue(java.coincide(script.getChecksum()));
+        assertFalse(java.coincide("otro"));
+    }
+
+    @Test
+    void pasaLosAcumuladosDeVentasADecimal() throws Exception {
+        try (Connection conn = DBUtil.getConnection(); Statement st = conn.createStatement()) {
+            st.executeUpdate("CREATE TABLE ventas_diarias (fecha DATE NOT NULL, dimension VARCHAR(20) NOT NULL, " +
+                    "clave VARCHAR(100) NOT NULL, total DOUBLE NOT NULL DEFAULT 0, " +
+                    "total_anulado DOUBLE NOT NULL DEFAULT 0, PRIMARY KEY (fecha, dimension, clave))");
+            st.executeUpdate("INSERT INTO ventas_diarias VALUES (DATE '2025-03-10', 'VENDEDOR', '1', 0.1 + 0.2, 0)");
+
+            // Se ejecuta el script sin registrarlo, para no alterar las versiones de las otras pruebas
+            String script = new String(MigradorEsquemaTest.class
+                    .getResourceAsStream("/db/migraciones/V6__ventas_diarias_decimal.sql").readAllBytes(),
+                    StandardCharsets.UTF_8);
+            for (String sentencia : MigradorEsquema.Migracion.separarSentencias(script)) {
+                st.executeUpdate(sentencia);
+            }
+
+            try (ResultSet rs = st.executeQuery("SELECT total FROM ventas_diarias")) {
+                assertTrue(rs.next());
+                assertEquals(new BigDecimal("0.30"), rs.getBigDecimal(1));
+            }
+        }
+    }
+
+    private static MigradorEsquema migrador(String revisionBase) {
+        return new MigradorEsquema(List.of(
+                MigradorEsquema.Migracion.sql(2, "Órdenes de venta", "/db/migraciones/V2__ordenes.sql"),
+                MigradorEsquema.Migracion.java(1, "Esquema de prueba", revisionBase, conn -> {
+                    EJECUCIONES_BASE.incrementAndGet();
+                    try (Statement st = conn.createStatement()) {
+                        st.executeUpdate("CREATE TABLE IF NOT EXISTS clientes (id BIGINT PRIMARY KEY)");
+                    }
+                })));
+    }
+}
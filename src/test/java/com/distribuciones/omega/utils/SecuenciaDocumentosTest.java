@@ -0,0 +1,113 @@
+package com.distribuciones.omega.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.distribuciones.omega.repository.SecuenciaRepository;
+import com.distribuciones.omega.utils.SecuenciaDocumentos.TipoDocumento;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Verifica que la numeración por bloques no repita números entre terminales,
+ * continúe la numeración existente y deje registrados los huecos.
+ */
+class SecuenciaDocumentosTest {
+
+    private static final LocalDate DIA = LocalDate.of(2025, 3, 1);
+
+    @BeforeAll
+    static void prepararBaseDeDatos() throws Exception {
+        JdbcDataSource h2 = new JdbcDataSource();
+        h2.setURL("jdbc:h2:mem:secuencias;MODE=MySQL;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000");
+        h2.setUser("sa");
+
+        try (Connection conn = h2.getConnection(); Statement st = conn.createStatement()) {
+            st.execute("CREATE TABLE facturas (id_factura BIGINT AUTO_INCREMENT PRIMARY KEY, numero_factura VARCHAR(50))");
+            st.execute("INSERT INTO facturas (numero_factura) VALUES ('FACT-20250301-0007'), ('FACT-20250301-0012')");
+        }
+        DBUtil.usarDataSource(h2);
+        new SecuenciaRepository().createTableIfNotExists();
+    }
+
+    @AfterAll
+    static void liberar() {
+        DBUtil.cerrarPool();
+    }
+
+    @Test
+    void terminalesConcurrentesNoRepitenNumeros() throws Exception {
+        int terminales = 4;
+        int numerosPorTerminal = 240;
+        Set<String> emitidos = ConcurrentHashMap.newKeySet();
+
+        ExecutorService pool = Executors.newFixedThreadPool(terminales);
+        List<Future<?>> tareas = new ArrayList<>();
+        for (int t = 0; t < terminales; t++) {
+            // Cada instancia simula un proceso distinto con su propio bloque en memoria
+            SecuenciaDocumentos secuencia = new SecuenciaDocumentos(new SecuenciaRepository(), "caja-" + t, 20);
+            tareas.add(pool.submit(() -> {
+                for (int i = 0; i < numerosPorTerminal; i++) {
+                    assertTrue(emitidos.add(secuencia.siguiente(TipoDocumento.ORDEN, DIA)), "Número repetido");
+                }
+                secuencia.cerrar();
+                return null;
+            }));
+        }
+        for (Future<?> tarea : tareas) {
+            tarea.get();
+        }
+        pool.shutdown();
+
+        assertEquals(terminales * numerosPorTerminal, emitidos.size());
+
+        // Una reserva por bloque, no una consulta por número
+        List<SecuenciaRepository.Bloque> bloques = new SecuenciaRepository().findBloques("ORD", "20250301");
+        assertEquals(terminales * numerosPorTerminal / 20, bloques.size());
+        bloques.forEach(b -> assertEquals(b.getHasta(), b.getUltimoUsado()));
+    }
+
+    @Test
+    void continuaDespuesDeLaUltimaFacturaYRegistraHuecos() throws Exception {
+        SecuenciaDocumentos secuencia = new SecuenciaDocumentos(new SecuenciaRepository(), "caja-1", 10);
+
+        assertEquals("FACT-20250301-0013", secuencia.siguiente(TipoDocumento.FACTURA, DIA));
+        assertEquals("FACT-20250301-0014", secuencia.siguiente(TipoDocumento.FACTURA, DIA));
+
+        // Otra terminal toma el bloque siguiente
+        SecuenciaDocumentos otra = new SecuenciaDocumentos(new SecuenciaRepository(), "caja-2", 10);
+        assertEquals("FACT-20250301-0023", otra.siguiente(TipoDocumento.FACTURA, DIA));
+
+        secuencia.cerrar();
+        otra.cerrar();
+
+        List<SecuenciaRepository.Bloque> bloques = new SecuenciaRepository().findBloques("FACT", "20250301");
+        assertEquals(2, bloques.size());
+        assertEquals(13, bloques.get(0).getDesde());
+        assertEquals(14, bloques.get(0).getUltimoUsado());
+        assertEquals(22, bloques.get(0).getHasta());
+        assertEquals("caja-2", bloques.get(1).getTerminal());
+        assertEquals(23, bloques.get(1).getUltimoUsado());
+    }
+
+    @Test
+    void errorAlCrearLaSecuenciaSePropaga() {
+        // Prefijo más largo que la columna: el INSERT falla y no es una clave repetida
+        assertThrows(SQLException.class, () -> new SecuenciaRepository().reservarBloque(
+                "PREFIJO-DEMASIADO-LARGO", "20250301", "caja-1", 10, "facturas", "numero_factura"));
+    }
+}
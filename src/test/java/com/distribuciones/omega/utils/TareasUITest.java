@@ -0,0 +1,150 @@
+package com.distribuciones.omega.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Verifica que los trabajos de las pantallas se agrupen por clave, se cancelen con
+ * su vista, entreguen el resultado en el hilo de entrega y que se midan los bloqueos
+ * de ese hilo.
+ */
+class TareasUITest {
+
+    // Hace de hilo de JavaFX: una sola cola atendida por el test
+    private final LinkedBlockingQueue<Runnable> hiloFx = new LinkedBlockingQueue<>();
+    private final TareasUI tareas = new TareasUI(2, hiloFx::add, 200);
+
+    @AfterEach
+    void detener() {
+        tareas.detener();
+    }
+
+    @Test
+    void agrupaPedidosIgualesYEntregaEnElHiloDeLaPantalla() throws Exception {
+        Object vista = new Object();
+        CountDownLatch liberar = new CountDownLatch(1);
+        AtomicInteger consultas = new AtomicInteger();
+        List<String> entregados = new ArrayList<>();
+
+        Future<String> primero = tareas.ejecutar(vista, "clientes", () -> {
+            consultas.incrementAndGet();
+            liberar.await();
+            return "lista";
+        }, entregados::add);
+        Future<String> segundo = tareas.ejecutar(vista, "clientes", () -> "otra", entregados::add);
+
+        assertSame(primero, segundo);
+        assertEquals(1, tareas.getAgrupadas());
+        liberar.countDown();
+        primero.get(5, TimeUnit.SECONDS);
+        atender();
+
+        assertEquals(1, consultas.get());
+        assertEquals(List.of("lista"), entregados);
+        assertFalse(tareas.ocupado(vista).get());
+    }
+
+    @Test
+    void cerrarLaVistaCancelaSusTrabajos() throws Exception {
+        Object vista = new Object();
+        CountDownLatch iniciado = new CountDownLatch(1);
+        CountDownLatch liberar = new CountDownLatch(1);
+        CountDownLatch terminado = new CountDownLatch(1);
+        AtomicBoolean interrumpido = new AtomicBoolean();
+        List<Object> entregados = new ArrayList<>();
+
+        Future<Object> trabajo = tareas.ejecutar(vista, "productos", () -> {
+            iniciado.countDown();
+            try {
+                liberar.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                interrumpido.set(true);
+            }
+            terminado.countDown();
+            return "tarde";
+        }, entregados::add, entregados::add);
+        assertTrue(iniciado.await(5, TimeUnit.SECONDS));
+        atender();
+        assertTrue(tareas.ocupado(vista).get());
+
+        tareas.cancelar(vista);
+        atender();
+
+        assertTrue(trabajo.isCancelled());
+        assertEquals(1, tareas.getCanceladas());
+
+        // El trabajo que ya corría termina sin interrumpirse, pero no se entrega
+        liberar.countDown();
+        assertTrue(terminado.await(5, TimeUnit.SECONDS));
+        atender();
+        assertFalse(interrumpido.get());
+        assertTrue(entregados.isEmpty());
+    }
+
+    @Test
+    void losErroresLleganAlManejador() throws Exception {
+        List<Throwable> errores = new ArrayList<>();
+        Future<Object> trabajo = tareas.ejecutar(new Object(), "guardar", () -> {
+            throw new IllegalStateException("Sin conexión");
+        }, resultado -> { }, errores::add);
+        try {
+            trabajo.get(5, TimeUnit.SECONDS);
+        } catch (Exception esperado) {
+            // El error se entrega por el manejador
+        }
+        atender();
+
+        assertEquals(1, errores.size());
+        assertEquals("Sin conexión", errores.get(0).getMessage());
+    }
+
+    @Test
+    void mideElBloqueoDelHiloDeLaPantalla() throws Exception {
+        ExecutorService hiloLento = Executors.newSingleThreadExecutor();
+        TareasUI conHilo = new TareasUI(1, hiloLento, 200);
+        try {
+            hiloLento.execute(() -> dormir(300));
+            conHilo.latir();
+            conHilo.latir();
+            hiloLento.submit(() -> { }).get(5, TimeUnit.SECONDS);
+
+            assertTrue(conHilo.getBloqueoMaximoMs() >= 250, "Bloqueo medido: " + conHilo.getBloqueoMaximoMs());
+            StringBuilder sb = new StringBuilder();
+            conHilo.exportarPrometheus(sb);
+            assertTrue(sb.toString().contains("omega_fx_bloqueo_segundos_count 1"));
+        } finally {
+            conHilo.detener();
+            hiloLento.shutdownNow();
+        }
+    }
+
+    private void atender() throws InterruptedException {
+        Runnable tarea;
+        while ((tarea = hiloFx.poll(100, TimeUnit.MILLISECONDS)) != null) {
+            tarea.run();
+        }
+    }
+
+    private static void dormir(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}